@@ -5,6 +5,7 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.util.unit.DataSize;
 
 import java.time.Duration;
 
@@ -48,8 +49,110 @@ public class PnDeliveryConfigs {
 
     private NotificationQRDao notificationQRDao;
 
+    private NotificationActivityDao notificationActivityDao;
+
+    private NotificationSubjectIndexDao notificationSubjectIndexDao;
+
+    private NotificationStatusCounterDao notificationStatusCounterDao;
+
+    private NotificationViewedDao notificationViewedDao;
+
     private Integer maxPageSize;
 
+    private Integer searchPartitionsFanOut;
+
+    private Integer searchExecutorPoolSize;
+
+    private Boolean searchPageSizeAdaptive;
+
+    private Integer searchPageSizeSketchSlots;
+
+    private Duration searchPageSizeDecayHalfLife;
+
+    private String searchActivityIndexSince;
+
+    private String searchSubjectIndexSince;
+
+    private Duration searchPageCacheTtl;
+
+    private Integer searchPageCacheMaxEntries;
+
+    private Boolean searchPageCacheReadAhead;
+
+    private Integer searchPageCacheReadAheadPoolSize;
+
+    private String searchCursorMacKey;
+
+    private Boolean searchCursorAcceptLegacy;
+
+    private Integer searchExportPageSize;
+
+    private Integer searchExportPrefetchPages;
+
+    private Integer searchExportMaxConcurrent;
+
+    private Duration dataVaultCacheIdTtl;
+
+    private Duration dataVaultCacheDenominationTtl;
+
+    private Integer dataVaultCacheMaxEntries;
+
+    private Duration paGroupsCacheRefreshAfter;
+
+    private Duration paGroupsCacheTtl;
+
+    private Duration paGroupsCacheNegativeTtl;
+
+    private Duration mandateCacheTtl;
+
+    private Integer mandateCacheMaxEntries;
+
+    private Duration notificationEntityCacheTtl;
+
+    private DataSize notificationEntityCacheMaxSize;
+
+    private Duration timelineCacheRefreshAfter;
+
+    private Duration timelineCacheTtl;
+
+    private Integer timelineCacheMaxEntries;
+
+    private Integer detailExecutorPoolSize;
+
+    private Duration detailDataVaultTimeout;
+
+    private Duration detailTimelineTimeout;
+
+    private Duration detailGroupsTimeout;
+
+    private Duration detailPaymentInfoTimeout;
+
+    private Integer detailBulkMaxConcurrency;
+
+    private Integer submitExecutorPoolSize;
+
+    private Integer submitBulkMaxConcurrency;
+
+    private Duration notificationViewedDedupTtl;
+
+    private Duration notificationStatusCounterMarkerTtl;
+
+    private Integer notificationViewedRecentSetMaxEntries;
+
+    private Boolean sqsBatchEnabled;
+
+    private Duration sqsBatchLinger;
+
+    private Integer sqsBatchBufferSize;
+
+    private Duration sqsBatchBufferTimeout;
+
+    private Integer sqsBatchMaxAttempts;
+
+    private Duration sqsBatchAckTimeout;
+
+    private Integer sqsBatchSenders;
+
     private String maxDocumentsAvailableDays;
 
     private String maxFirstNoticeCodeDays;
@@ -88,4 +191,24 @@ public class PnDeliveryConfigs {
         private String tableName;
     }
 
+    @Data
+    public static class NotificationActivityDao {
+        private String tableName;
+    }
+
+    @Data
+    public static class NotificationSubjectIndexDao {
+        private String tableName;
+    }
+
+    @Data
+    public static class NotificationStatusCounterDao {
+        private String tableName;
+    }
+
+    @Data
+    public static class NotificationViewedDao {
+        private String tableName;
+    }
+
 }
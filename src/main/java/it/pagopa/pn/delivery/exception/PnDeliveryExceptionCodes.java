@@ -16,12 +16,23 @@ public class PnDeliveryExceptionCodes extends PnExceptionsCodes {
     public static final String ERROR_CODE_DELIVERY_NOTIFICATIONWITHOUTPAYMENTATTACHMENT = "PN_DELIVERY_NOTIFICATIONWITHOUTPAYMENTATTACHMENT";
 
     public static final String ERROR_CODE_DELIVERY_INVALIDPARAMETER_GROUP = "PN_DELIVERY_INVALIDPARAMETER_GROUP";
+    public static final String ERROR_CODE_DELIVERY_INVALIDPARAMETER_SUBJECT = "PN_DELIVERY_INVALIDPARAMETER_SUBJECT";
+    public static final String ERROR_CODE_DELIVERY_INVALIDPARAMETER_MONTH = "PN_DELIVERY_INVALIDPARAMETER_MONTH";
+    public static final String ERROR_CODE_DELIVERY_INVALIDPARAMETER_IUNS = "PN_DELIVERY_INVALIDPARAMETER_IUNS";
+    public static final String ERROR_CODE_DELIVERY_INVALIDPARAMETER_NOTIFICATIONS = "PN_DELIVERY_INVALIDPARAMETER_NOTIFICATIONS";
     public static final String ERROR_CODE_DELIVERY_UNSUPPORTED_CX_TYPE = "PN_DELIVERY_UNSUPPORTED_CX_TYPE";
     public static final String ERROR_CODE_DELIVERY_UNSUPPORTED_PHYSICALCOMMUNICATIONTYPE = "PN_DELIVERY_UNSUPPORTED_PHYSICALCOMMUNICATIONTYPE";
     public static final String ERROR_CODE_DELIVERY_UNSUPPORTED_INDEX_NAME = "PN_DELIVERY_UNSUPPORTED_INDEX_NAME";
     public static final String ERROR_CODE_DELIVERY_UNSUPPORTED_LAST_EVALUATED_KEY = "PN_DELIVERY_UNSUPPORTED_LAST_EVALUATED_KEY";
+    public static final String ERROR_CODE_DELIVERY_SEARCH_CURSOR_MAC_KEY_MISSING = "PN_DELIVERY_SEARCH_CURSOR_MAC_KEY_MISSING";
     public static final String ERROR_CODE_DELIVERY_UNSUPPORTED_NOTIFICATION_METADATA = "PN_DELIVERY_UNSUPPORTED_NOTIFICATION_METADATA";
+    public static final String ERROR_CODE_DELIVERY_PARTITION_SEARCH_FAILED = "PN_DELIVERY_PARTITION_SEARCH_FAILED";
+    public static final String ERROR_CODE_DELIVERY_SEARCH_EXPORT_FAILED = "PN_DELIVERY_SEARCH_EXPORT_FAILED";
+    public static final String ERROR_CODE_DELIVERY_NOTIFICATION_DETAIL_FAILED = "PN_DELIVERY_NOTIFICATION_DETAIL_FAILED";
+    public static final String ERROR_CODE_DELIVERY_NOTIFICATION_DETAIL_TIMEOUT = "PN_DELIVERY_NOTIFICATION_DETAIL_TIMEOUT";
+    public static final String ERROR_CODE_DELIVERY_NOTIFICATION_SUBMIT_FAILED = "PN_DELIVERY_NOTIFICATION_SUBMIT_FAILED";
 
     public static final String ERROR_CODE_DELIVERY_HANDLEEVENTFAILED = "PN_DELIVERY_HANDLEEVENTFAILED";
+    public static final String ERROR_CODE_DELIVERY_SQS_SEND_FAILED = "PN_DELIVERY_SQS_SEND_FAILED";
 
 }
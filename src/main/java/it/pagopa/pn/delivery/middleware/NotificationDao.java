@@ -10,7 +10,11 @@ import it.pagopa.pn.delivery.models.PageSearchTrunk;
 import it.pagopa.pn.delivery.svc.search.IndexNameAndPartitions;
 import it.pagopa.pn.delivery.svc.search.PnLastEvaluatedKey;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public interface NotificationDao {
 
@@ -20,6 +24,29 @@ public interface NotificationDao {
 
     Optional<InternalNotification> getNotificationByIun(String iun);
 
+    /**
+     * Legge una notifica per IUN
+     * @param iun IUN della notifica
+     * @param withRecipientsDetail false per non leggere dal data vault i dati in chiaro dei destinatari,
+     *                             che il chiamante legge e applica in autonomia
+     * @return notifica, vuoto se non esiste
+     */
+    Optional<InternalNotification> getNotificationByIun(String iun, boolean withRecipientsDetail);
+
+    /**
+     * Legge più notifiche per IUN, senza i dati in chiaro dei destinatari, che il chiamante legge e applica in autonomia.
+     * L'implementazione di default legge le notifiche una alla volta.
+     * @param iuns IUN delle notifiche
+     * @return notifiche trovate per IUN; gli IUN non trovati non sono presenti
+     */
+    default Map<String, InternalNotification> getNotificationsByIun(Collection<String> iuns) {
+        Map<String, InternalNotification> result = new LinkedHashMap<>();
+        for ( String iun : iuns ) {
+            getNotificationByIun( iun, false ).ifPresent( notification -> result.put( iun, notification ) );
+        }
+        return result;
+    }
+
     Optional<String> getRequestId( String senderId, String paProtocolNumber, String idempotenceToken );
 
     PageSearchTrunk<NotificationMetadataEntity> searchForOneMonth(
@@ -38,6 +65,42 @@ public interface NotificationDao {
             PnLastEvaluatedKey lastEvaluatedKey
     );
 
+    /**
+     * Versione asincrona di {@link #searchForOneMonth}, usata dalle ricerche multi-pagina.
+     * L'implementazione di default adatta il metodo sincrono.
+     */
+    default CompletableFuture<PageSearchTrunk<NotificationMetadataEntity>> searchForOneMonthAsync(
+            InputSearchNotificationDto inputSearchNotificationDto,
+            String indexName,
+            String partitionValue,
+            int size,
+            PnLastEvaluatedKey lastEvaluatedKey
+    ) {
+        try {
+            return CompletableFuture.completedFuture( searchForOneMonth( inputSearchNotificationDto, indexName, partitionValue, size, lastEvaluatedKey ) );
+        } catch (RuntimeException exc) {
+            return CompletableFuture.failedFuture( exc );
+        }
+    }
+
+    /**
+     * Versione asincrona di {@link #searchDelegatedForOneMonth}, usata dalla ricerca delle notifiche delegate.
+     * L'implementazione di default adatta il metodo sincrono.
+     */
+    default CompletableFuture<PageSearchTrunk<NotificationDelegationMetadataEntity>> searchDelegatedForOneMonthAsync(
+            InputSearchNotificationDelegatedDto searchDto,
+            IndexNameAndPartitions.SearchIndexEnum indexName,
+            String partitionValue,
+            int size,
+            PnLastEvaluatedKey lastEvaluatedKey
+    ) {
+        try {
+            return CompletableFuture.completedFuture( searchDelegatedForOneMonth( searchDto, indexName, partitionValue, size, lastEvaluatedKey ) );
+        } catch (RuntimeException exc) {
+            return CompletableFuture.failedFuture( exc );
+        }
+    }
+
     PageSearchTrunk<NotificationMetadataEntity> searchByIUN(
             InputSearchNotificationDto inputSearchNotificationDto
     );
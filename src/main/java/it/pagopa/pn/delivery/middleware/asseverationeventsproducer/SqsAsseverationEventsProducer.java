@@ -1,16 +1,49 @@
 package it.pagopa.pn.delivery.middleware.asseverationeventsproducer;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import it.pagopa.pn.api.dto.events.AbstractSqsMomProducer;
 import it.pagopa.pn.delivery.PnDeliveryConfigs;
 import it.pagopa.pn.delivery.middleware.AsseverationEventsProducer;
+import it.pagopa.pn.delivery.middleware.batchproducer.SqsMessageBatcher;
 import it.pagopa.pn.delivery.models.AsseverationEvent;
 import org.springframework.stereotype.Component;
 import software.amazon.awssdk.services.sqs.SqsClient;
 
+import javax.annotation.PreDestroy;
+import java.util.List;
+
 @Component
 public class SqsAsseverationEventsProducer extends AbstractSqsMomProducer<AsseverationEvent> implements AsseverationEventsProducer {
-    public SqsAsseverationEventsProducer(SqsClient sqsClient, ObjectMapper objectMapper, PnDeliveryConfigs cfg) {
+
+    // gli eventi di asseverazione non condizionano la risposta: vengono solo accodati, gli errori di invio sono loggati
+    private final SqsMessageBatcher<AsseverationEvent> batcher;
+
+    public SqsAsseverationEventsProducer(SqsClient sqsClient, ObjectMapper objectMapper, PnDeliveryConfigs cfg, MeterRegistry meterRegistry) {
         super(sqsClient, cfg.getTopics().getAsseverationEvents(), objectMapper, AsseverationEvent.class);
+        this.batcher = SqsMessageBatcher.isEnabled( cfg ) ? new SqsMessageBatcher<>( sqsClient, cfg.getTopics().getAsseverationEvents(), objectMapper,
+                null, null, cfg, meterRegistry ) : null;
+    }
+
+    @Override
+    public void push(AsseverationEvent msg) {
+        if ( batcher != null )
+            batcher.submit( msg );
+        else
+            super.push( msg );
+    }
+
+    @Override
+    public void push(List<AsseverationEvent> msges) {
+        if ( batcher != null )
+            batcher.submitAll( msges );
+        else
+            super.push( msges );
+    }
+
+    @PreDestroy
+    public void closeBatcher() {
+        if ( batcher != null )
+            batcher.close();
     }
 }
@@ -0,0 +1,424 @@
+package it.pagopa.pn.delivery.middleware.batchproducer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.pagopa.pn.api.dto.events.GenericEvent;
+import it.pagopa.pn.api.dto.events.StandardEventHeader;
+import it.pagopa.pn.commons.exceptions.PnInternalException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.*;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static it.pagopa.pn.api.dto.events.GenericEventHeader.*;
+import static it.pagopa.pn.api.dto.events.StandardEventHeader.PN_EVENT_HEADER_IUN;
+import static it.pagopa.pn.delivery.exception.PnDeliveryExceptionCodes.ERROR_CODE_DELIVERY_SQS_SEND_FAILED;
+
+/**
+ * Invio a lotti dei messaggi di una coda SQS.
+ * <p>
+ * I messaggi vengono accodati in un buffer limitato; un thread dedicato compone i lotti, fino a 10 messaggi o 256KB
+ * per richiesta, e li invia con SendMessageBatch su un pool di thread, con più richieste in corso contemporaneamente.
+ * Un lotto parte quando è pieno o dopo il tempo di attesa dal primo messaggio.
+ * Vengono ritentati solo i messaggi rifiutati per errori non imputabili al mittente, fino al numero massimo di
+ * tentativi. Se il buffer è pieno l'accodamento attende fino al timeout e poi fallisce, così i chiamanti rallentano
+ * invece di far crescere la memoria. I messaggi la cui conferma è stata annullata non vengono più inviati.
+ * <p>
+ * I messaggi hanno lo stesso formato dell'invio singolo: il corpo è il payload e gli attributi sono i campi
+ * dell'header dell'evento. Sulle code FIFO è in corso una sola richiesta alla volta, e l'ordine è garantito solo
+ * tra messaggi inviati senza errori.
+ *
+ * @param <T> tipo di evento
+ */
+@Slf4j
+public class SqsMessageBatcher<T extends GenericEvent<StandardEventHeader, ?>> implements AutoCloseable {
+
+    static final int MAX_BATCH_ENTRIES = 10;
+    static final int MAX_BATCH_BYTES = 256 * 1024;
+    static final String METRIC_BATCH_SIZE = "pn.delivery.sqs.batch.size";
+    static final String METRIC_MESSAGES = "pn.delivery.sqs.batch.messages";
+    private static final String TAG_QUEUE = "queue";
+    private static final String TAG_RESULT = "result";
+    private static final long IDLE_POLL_MILLIS = 200;
+    private static final long RETRY_BACKOFF_MILLIS = 100;
+    private static final int DEFAULT_SENDERS = 4;
+
+    private record Pending<T>(T event, SendMessageBatchRequestEntry entry, int bytes, CompletableFuture<Void> ack, int attempt) {
+        Pending<T> nextAttempt() {
+            return new Pending<>( event, entry, bytes, ack, attempt + 1 );
+        }
+    }
+
+    private final SqsClient sqsClient;
+    private final String queueName;
+    private final ObjectMapper objectMapper;
+    private final Function<T, String> messageGroupId;
+    private final Function<T, String> messageDeduplicationId;
+    private final MeterRegistry meterRegistry;
+    private final long lingerNanos;
+    private final long bufferTimeoutMillis;
+    private final long ackTimeoutMillis;
+    private final int maxAttempts;
+    private final BlockingQueue<Pending<T>> buffer;
+    // messaggi rimandati al lotto successivo: troppo grandi per il lotto in composizione o da ritentare
+    private final BlockingDeque<Pending<T>> carried = new LinkedBlockingDeque<>();
+    private final int senders;
+    // richieste in corso, al più una per thread di invio
+    private final Semaphore inFlight;
+    private final ExecutorService senderPool;
+    private final Thread batcher;
+    private volatile String queueUrl;
+    private volatile boolean running = true;
+
+    /**
+     * @param sqsClient client SQS
+     * @param queueName nome della coda
+     * @param objectMapper serializzazione dei payload
+     * @param messageGroupId gruppo dei messaggi per le code FIFO, null per le code standard
+     * @param messageDeduplicationId id di deduplica per le code FIFO, null per le code standard
+     * @param cfg configurazione dell'invio a lotti
+     * @param meterRegistry metriche
+     */
+    public SqsMessageBatcher(SqsClient sqsClient, String queueName, ObjectMapper objectMapper,
+                             Function<T, String> messageGroupId, Function<T, String> messageDeduplicationId,
+                             PnDeliveryConfigs cfg, MeterRegistry meterRegistry) {
+        this.sqsClient = sqsClient;
+        this.queueName = queueName;
+        this.objectMapper = objectMapper;
+        this.messageGroupId = messageGroupId;
+        this.messageDeduplicationId = messageDeduplicationId;
+        this.meterRegistry = meterRegistry;
+        this.lingerNanos = millisOrDefault( cfg.getSqsBatchLinger(), 20 ) * 1_000_000L;
+        this.bufferTimeoutMillis = millisOrDefault( cfg.getSqsBatchBufferTimeout(), 1000 );
+        this.ackTimeoutMillis = millisOrDefault( cfg.getSqsBatchAckTimeout(), 5000 );
+        this.maxAttempts = cfg.getSqsBatchMaxAttempts() != null && cfg.getSqsBatchMaxAttempts() > 0 ? cfg.getSqsBatchMaxAttempts() : 3;
+        int bufferSize = cfg.getSqsBatchBufferSize() != null && cfg.getSqsBatchBufferSize() > 0 ? cfg.getSqsBatchBufferSize() : 1000;
+        this.buffer = new ArrayBlockingQueue<>( bufferSize );
+        // sulle code FIFO richieste in parallelo potrebbero invertire l'ordine dei messaggi dello stesso gruppo
+        this.senders = messageGroupId != null ? 1
+                : cfg.getSqsBatchSenders() != null && cfg.getSqsBatchSenders() > 0 ? cfg.getSqsBatchSenders() : DEFAULT_SENDERS;
+        this.inFlight = new Semaphore( senders );
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.senderPool = Executors.newFixedThreadPool( senders, runnable -> {
+            Thread thread = new Thread( runnable, "sqs-batch-" + queueName + "-sender-" + threadCounter.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        });
+        this.batcher = new Thread( this::run, "sqs-batch-" + queueName );
+        this.batcher.setDaemon( true );
+        this.batcher.start();
+        log.info( "sqs batch producer started queue={} linger={}ms bufferSize={} maxAttempts={} senders={}",
+                queueName, lingerNanos / 1_000_000L, bufferSize, maxAttempts, senders );
+    }
+
+    /**
+     * @return true se la configurazione abilita l'invio a lotti
+     */
+    public static boolean isEnabled(PnDeliveryConfigs cfg) {
+        return Boolean.TRUE.equals( cfg.getSqsBatchEnabled() );
+    }
+
+    private static long millisOrDefault(Duration value, long defaultMillis) {
+        return value != null && !value.isNegative() ? value.toMillis() : defaultMillis;
+    }
+
+    /**
+     * Accoda un messaggio senza attendere l'invio
+     * @param event evento da inviare
+     * @return completato all'invio del messaggio, o in errore se l'invio fallisce dopo tutti i tentativi
+     */
+    public CompletableFuture<Void> submit(T event) {
+        Pending<T> pending = toPending( event );
+        try {
+            if ( !running || !buffer.offer( pending, bufferTimeoutMillis, TimeUnit.MILLISECONDS ) ) {
+                count( "rejected", 1 );
+                throw new PnInternalException( "SQS batch buffer full queue=" + queueName, ERROR_CODE_DELIVERY_SQS_SEND_FAILED );
+            }
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new PnInternalException( "Interrupted while queueing SQS message queue=" + queueName, ERROR_CODE_DELIVERY_SQS_SEND_FAILED, exc );
+        }
+        return pending.ack();
+    }
+
+    /**
+     * Accoda i messaggi senza attendere l'invio
+     * @param events eventi da inviare
+     * @return completato all'invio di tutti i messaggi
+     */
+    public CompletableFuture<Void> submitAll(List<T> events) {
+        return CompletableFuture.allOf( events.stream()
+                .map( this::submit )
+                .toArray( CompletableFuture[]::new ) );
+    }
+
+    /**
+     * Accoda i messaggi e attende la conferma dell'invio, per i flussi che rispondono al chiamante solo dopo l'invio.
+     * Se l'invio fallisce o la conferma non arriva entro il timeout i messaggi non ancora inviati vengono scartati,
+     * così il chiamante non riceve un errore per messaggi che partono dopo; quelli già in una richiesta in corso
+     * possono comunque essere consegnati.
+     * @param events eventi da inviare
+     */
+    public void send(List<T> events) {
+        List<CompletableFuture<Void>> acks = new ArrayList<>( events.size() );
+        boolean sent = false;
+        try {
+            events.forEach( event -> acks.add( submit( event ) ) );
+            CompletableFuture.allOf( acks.toArray( CompletableFuture[]::new ) ).get( ackTimeoutMillis, TimeUnit.MILLISECONDS );
+            sent = true;
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new PnInternalException( "Interrupted while sending SQS messages queue=" + queueName, ERROR_CODE_DELIVERY_SQS_SEND_FAILED, exc );
+        } catch (ExecutionException exc) {
+            throw new PnInternalException( "Error sending SQS messages queue=" + queueName, ERROR_CODE_DELIVERY_SQS_SEND_FAILED, exc.getCause() );
+        } catch (TimeoutException exc) {
+            throw new PnInternalException( "Timeout sending SQS messages queue=" + queueName, ERROR_CODE_DELIVERY_SQS_SEND_FAILED, exc );
+        } finally {
+            if ( !sent )
+                acks.forEach( ack -> ack.cancel( false ) );
+        }
+    }
+
+    /**
+     * Invia i messaggi accodati e ferma i thread di invio
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            batcher.join( ackTimeoutMillis );
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+        senderPool.shutdown();
+    }
+
+    private Pending<T> toPending(T event) {
+        StandardEventHeader header = event.getHeader();
+        Map<String, MessageAttributeValue> attributes = new HashMap<>();
+        putAttribute( attributes, PN_EVENT_HEADER_EVENT_ID, header.getEventId() );
+        putAttribute( attributes, PN_EVENT_HEADER_IUN, header.getIun() );
+        putAttribute( attributes, PN_EVENT_HEADER_EVENT_TYPE, header.getEventType() );
+        putAttribute( attributes, PN_EVENT_HEADER_CREATED_AT, header.getCreatedAt() != null ? header.getCreatedAt().toString() : null );
+        putAttribute( attributes, PN_EVENT_HEADER_PUBLISHER, header.getPublisher() );
+
+        String body;
+        try {
+            body = objectMapper.writeValueAsString( event.getPayload() );
+        } catch (JsonProcessingException exc) {
+            throw new PnInternalException( "Unable to serialize SQS message eventId=" + header.getEventId(), ERROR_CODE_DELIVERY_SQS_SEND_FAILED, exc );
+        }
+
+        SendMessageBatchRequestEntry.Builder entry = SendMessageBatchRequestEntry.builder()
+                .messageBody( body )
+                .messageAttributes( attributes );
+        if ( messageGroupId != null )
+            entry.messageGroupId( messageGroupId.apply( event ) );
+        if ( messageDeduplicationId != null )
+            entry.messageDeduplicationId( messageDeduplicationId.apply( event ) );
+
+        int bytes = body.getBytes( StandardCharsets.UTF_8 ).length;
+        for ( Map.Entry<String, MessageAttributeValue> attribute : attributes.entrySet() ) {
+            bytes += attribute.getKey().length() + attribute.getValue().dataType().length() + attribute.getValue().stringValue().getBytes( StandardCharsets.UTF_8 ).length;
+        }
+        return new Pending<>( event, entry.build(), bytes, new CompletableFuture<>(), 1 );
+    }
+
+    private static void putAttribute(Map<String, MessageAttributeValue> attributes, String name, String value) {
+        if ( value != null ) {
+            attributes.put( name, MessageAttributeValue.builder()
+                    .dataType( "String" )
+                    .stringValue( value )
+                    .build() );
+        }
+    }
+
+    private void run() {
+        while ( running || !buffer.isEmpty() || !carried.isEmpty() || inFlight.availablePermits() < senders ) {
+            List<Pending<T>> batch = new ArrayList<>( MAX_BATCH_ENTRIES );
+            try {
+                // il lotto viene composto solo quando c'è un thread di invio libero, così si riempie mentre si attende
+                inFlight.acquire();
+                fill( batch );
+            } catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if ( batch.isEmpty() ) {
+                inFlight.release();
+                continue;
+            }
+            try {
+                senderPool.execute( () -> sendBatchAndRelease( batch ) );
+            } catch (RejectedExecutionException exc) {
+                inFlight.release();
+                log.error( "sqs batch sender pool rejected batch queue={}", queueName, exc );
+                batch.forEach( pending -> pending.ack().completeExceptionally( exc ) );
+            }
+        }
+        failRemaining();
+        senderPool.shutdown();
+    }
+
+    private void fill(List<Pending<T>> batch) throws InterruptedException {
+        Pending<T> first = null;
+        while ( first == null ) {
+            first = carried.poll();
+            if ( first == null )
+                first = buffer.poll( IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS );
+            if ( first == null )
+                return;
+            if ( isCancelled( first ) )
+                first = null;
+        }
+
+        batch.add( first );
+        int bytes = first.bytes();
+        long deadline = System.nanoTime() + lingerNanos;
+        while ( batch.size() < MAX_BATCH_ENTRIES ) {
+            Pending<T> next = carried.poll();
+            if ( next == null ) {
+                // attesa a intervalli limitati, per inviare subito i messaggi accodati alla chiusura
+                long remaining = running ? deadline - System.nanoTime() : 0;
+                long wait = Math.min( remaining, TimeUnit.MILLISECONDS.toNanos( IDLE_POLL_MILLIS ) );
+                next = wait > 0 ? buffer.poll( wait, TimeUnit.NANOSECONDS ) : buffer.poll();
+                if ( next == null && wait < remaining )
+                    continue;
+            }
+            if ( next == null )
+                break;
+            if ( isCancelled( next ) )
+                continue;
+            if ( bytes + next.bytes() > MAX_BATCH_BYTES ) {
+                carried.addFirst( next );
+                break;
+            }
+            batch.add( next );
+            bytes += next.bytes();
+        }
+    }
+
+    /**
+     * Un messaggio la cui conferma è già completata, tipicamente annullata per il timeout del chiamante, non va inviato
+     */
+    private boolean isCancelled(Pending<T> pending) {
+        if ( !pending.ack().isDone() )
+            return false;
+        count( "cancelled", 1 );
+        return true;
+    }
+
+    private void sendBatchAndRelease(List<Pending<T>> batch) {
+        try {
+            sendBatch( batch );
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException exc) {
+            log.error( "unexpected error in sqs batch producer queue={}", queueName, exc );
+            batch.forEach( pending -> pending.ack().completeExceptionally( exc ) );
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    private void sendBatch(List<Pending<T>> batch) throws InterruptedException {
+        // messaggi annullati durante l'attesa del lotto
+        batch.removeIf( this::isCancelled );
+        if ( batch.isEmpty() )
+            return;
+
+        List<SendMessageBatchRequestEntry> entries = new ArrayList<>( batch.size() );
+        for ( int i = 0; i < batch.size(); i++ ) {
+            entries.add( batch.get( i ).entry().toBuilder().id( Integer.toString( i ) ).build() );
+        }
+        DistributionSummary.builder( METRIC_BATCH_SIZE )
+                .tag( TAG_QUEUE, queueName )
+                .register( meterRegistry )
+                .record( batch.size() );
+
+        SendMessageBatchResponse response;
+        try {
+            response = sqsClient.sendMessageBatch( SendMessageBatchRequest.builder()
+                    .queueUrl( queueUrl() )
+                    .entries( entries )
+                    .build() );
+        } catch (SdkException exc) {
+            log.warn( "sqs batch request failed queue={} entries={}", queueName, batch.size(), exc );
+            // i messaggi tornano disponibili per un nuovo lotto solo dopo l'attesa
+            Thread.sleep( RETRY_BACKOFF_MILLIS );
+            for ( Pending<T> pending : batch ) {
+                retryOrFail( pending, exc );
+            }
+            return;
+        }
+
+        for ( SendMessageBatchResultEntry sent : response.successful() ) {
+            batch.get( Integer.parseInt( sent.id() ) ).ack().complete( null );
+        }
+        count( "sent", response.successful().size() );
+        for ( BatchResultErrorEntry failed : response.failed() ) {
+            Pending<T> pending = batch.get( Integer.parseInt( failed.id() ) );
+            String eventId = pending.event().getHeader().getEventId();
+            PnInternalException cause = new PnInternalException( String.format( "SQS message rejected queue=%s eventId=%s code=%s message=%s",
+                    queueName, eventId, failed.code(), failed.message() ), ERROR_CODE_DELIVERY_SQS_SEND_FAILED );
+            if ( Boolean.TRUE.equals( failed.senderFault() ) ) {
+                log.error( "sqs message rejected queue={} eventId={} code={}", queueName, eventId, failed.code() );
+                count( "failed", 1 );
+                pending.ack().completeExceptionally( cause );
+            } else {
+                retryOrFail( pending, cause );
+            }
+        }
+    }
+
+    private void retryOrFail(Pending<T> pending, Exception cause) {
+        if ( pending.attempt() < maxAttempts ) {
+            count( "retried", 1 );
+            carried.addLast( pending.nextAttempt() );
+        } else {
+            log.error( "sqs message not sent after {} attempts queue={} eventId={}", pending.attempt(), queueName,
+                    pending.event().getHeader().getEventId() );
+            count( "failed", 1 );
+            pending.ack().completeExceptionally( cause );
+        }
+    }
+
+    private void failRemaining() {
+        PnInternalException cause = new PnInternalException( "SQS batch producer stopped queue=" + queueName, ERROR_CODE_DELIVERY_SQS_SEND_FAILED );
+        Pending<T> pending;
+        while ( (pending = carried.poll()) != null ) {
+            pending.ack().completeExceptionally( cause );
+        }
+        while ( (pending = buffer.poll()) != null ) {
+            pending.ack().completeExceptionally( cause );
+        }
+    }
+
+    private String queueUrl() {
+        if ( queueUrl == null ) {
+            queueUrl = sqsClient.getQueueUrl( GetQueueUrlRequest.builder()
+                    .queueName( queueName )
+                    .build() ).queueUrl();
+        }
+        return queueUrl;
+    }
+
+    private void count(String result, int amount) {
+        Counter.builder( METRIC_MESSAGES )
+                .tag( TAG_QUEUE, queueName )
+                .tag( TAG_RESULT, result )
+                .register( meterRegistry )
+                .increment( amount );
+    }
+}
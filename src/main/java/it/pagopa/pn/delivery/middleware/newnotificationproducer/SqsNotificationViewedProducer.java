@@ -1,18 +1,49 @@
 package it.pagopa.pn.delivery.middleware.newnotificationproducer;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import it.pagopa.pn.api.dto.events.AbstractSqsFifoMomProducer;
 import it.pagopa.pn.api.dto.events.PnDeliveryNotificationViewedEvent;
 import it.pagopa.pn.delivery.PnDeliveryConfigs;
 import it.pagopa.pn.delivery.middleware.NotificationViewedProducer;
+import it.pagopa.pn.delivery.middleware.batchproducer.SqsMessageBatcher;
 import org.springframework.stereotype.Component;
 import software.amazon.awssdk.services.sqs.SqsClient;
 
+import javax.annotation.PreDestroy;
+import java.util.List;
+
 @Component
 public class SqsNotificationViewedProducer extends AbstractSqsFifoMomProducer<PnDeliveryNotificationViewedEvent> implements NotificationViewedProducer {
 
-    public SqsNotificationViewedProducer(SqsClient sqsClient, ObjectMapper objectMapper, PnDeliveryConfigs cfg ) {
+    // la visualizzazione viene registrata solo dopo l'invio, quindi l'invio attende la conferma del lotto
+    private final SqsMessageBatcher<PnDeliveryNotificationViewedEvent> batcher;
+
+    public SqsNotificationViewedProducer(SqsClient sqsClient, ObjectMapper objectMapper, PnDeliveryConfigs cfg, MeterRegistry meterRegistry ) {
         super(sqsClient, cfg.getTopics().getNewNotifications(), objectMapper, PnDeliveryNotificationViewedEvent.class);
+        this.batcher = SqsMessageBatcher.isEnabled( cfg ) ? new SqsMessageBatcher<>( sqsClient, cfg.getTopics().getNewNotifications(), objectMapper,
+                PnDeliveryNotificationViewedEvent::getMessageGroupId, PnDeliveryNotificationViewedEvent::getMessageDeduplicationId, cfg, meterRegistry ) : null;
+    }
+
+    @Override
+    public void push(PnDeliveryNotificationViewedEvent msg) {
+        if ( batcher != null )
+            batcher.send( List.of( msg ) );
+        else
+            super.push( msg );
     }
 
+    @Override
+    public void push(List<PnDeliveryNotificationViewedEvent> msges) {
+        if ( batcher != null )
+            batcher.send( msges );
+        else
+            super.push( msges );
+    }
+
+    @PreDestroy
+    public void closeBatcher() {
+        if ( batcher != null )
+            batcher.close();
+    }
 }
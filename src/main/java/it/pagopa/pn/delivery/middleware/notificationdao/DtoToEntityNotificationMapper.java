@@ -6,7 +6,6 @@ import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationRecipie
 import it.pagopa.pn.delivery.middleware.notificationdao.entities.*;
 import it.pagopa.pn.delivery.models.InternalNotification;
 import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
@@ -15,7 +14,7 @@ import java.util.List;
 @RequiredArgsConstructor
 public class DtoToEntityNotificationMapper {
 
-    private final ModelMapper modelMapper;
+    private final NotificationRecipientMapper recipientMapper;
 
     public NotificationEntity dto2Entity(InternalNotification dto) {
         NotificationEntity.NotificationEntityBuilder builder = NotificationEntity.builder()
@@ -47,7 +46,7 @@ public class DtoToEntityNotificationMapper {
             List<NotificationRecipient> recipients
     ) {
         return recipients.stream()
-               .map( r -> modelMapper.map( r, NotificationRecipientEntity.class ))
+               .map( recipientMapper::toEntity )
                .toList();
     }
 
@@ -0,0 +1,57 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import it.pagopa.pn.delivery.utils.MdcUtils;
+import org.slf4j.MDC;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Utilità per le query asincrone del client enhanced: lettura della sola prima pagina di una query
+ * e attesa sincrona del risultato per i metodi che mantengono il contratto sincrono.
+ */
+final class DynamoQueryPages {
+
+    private DynamoQueryPages() {}
+
+    /**
+     * Richiede a dynamo la sola prima pagina della query, senza occupare thread durante l'attesa.
+     * Il future viene completato con il contesto MDC del chiamante, così le elaborazioni concatenate
+     * (log compresi) mantengono il traceId della richiesta.
+     * @param pages publisher delle pagine della query
+     * @return future della prima pagina, vuota se la query non restituisce pagine
+     */
+    static <T> CompletableFuture<Page<T>> firstPage(SdkPublisher<Page<T>> pages) {
+        Map<String, String> mdcContext = MDC.getCopyOfContextMap();
+        CompletableFuture<Page<T>> result = new CompletableFuture<>();
+        pages.limit(1)
+                .subscribe(page -> MdcUtils.run(mdcContext, () -> result.complete(page)))
+                .whenComplete((ignored, exc) -> MdcUtils.run(mdcContext, () -> {
+                    if (exc != null)
+                        result.completeExceptionally(exc);
+                    else
+                        result.complete(Page.create(Collections.emptyList()));
+                }));
+        return result;
+    }
+
+    /**
+     * Attende il risultato di una query asincrona, rilanciando l'eccezione originale
+     * @param future future della query
+     * @return risultato della query
+     */
+    static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException | CancellationException exc) {
+            if (exc.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            throw exc;
+        }
+    }
+}
@@ -7,7 +7,6 @@ import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationEnt
 import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationRecipientEntity;
 import it.pagopa.pn.delivery.models.InternalNotification;
 import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
 import org.springframework.stereotype.Component;
 
 import java.time.ZoneOffset;
@@ -20,7 +19,7 @@ import static it.pagopa.pn.delivery.exception.PnDeliveryExceptionCodes.ERROR_COD
 @RequiredArgsConstructor
 public class EntityToDtoNotificationMapper {
 
-    private final ModelMapper modelMapper;
+    private final NotificationRecipientMapper recipientMapper;
 
     public InternalNotification entity2Dto(NotificationEntity entity) {
     	if ( entity.getPhysicalCommunicationType() == null ) {
@@ -59,7 +58,7 @@ public class EntityToDtoNotificationMapper {
 
     private List<NotificationRecipient> entity2RecipientDto(List<NotificationRecipientEntity> recipients) {
         return recipients.stream()
-                .map( r -> modelMapper.map(r, NotificationRecipient.class))
+                .map( recipientMapper::toDto )
                 .toList();
     }
 
@@ -15,15 +15,15 @@ import java.util.Map;
 @Component
 public class EntityToDtoNotificationMetadataMapper {
 
-    private static final String TABLE_ROW_ACCEPTED_AT = "acceptedAt";
-    private static final String TABLE_ROW_SENDER_DENOMINATION = "senderDenomination";
-    private static final String TABLE_ROW_SUBJECT = "subject";
-    private static final String TABLE_ROW_PA_PROTOCOL_NUMBER = "paProtocolNumber";
+    static final String TABLE_ROW_ACCEPTED_AT = "acceptedAt";
+    static final String TABLE_ROW_SENDER_DENOMINATION = "senderDenomination";
+    static final String TABLE_ROW_SUBJECT = "subject";
+    static final String TABLE_ROW_PA_PROTOCOL_NUMBER = "paProtocolNumber";
 
     public NotificationSearchRow entity2Dto(NotificationMetadataEntity entity) {
         OffsetDateTime requestAcceptedAt = null;
 
-        final Map<String, String> tableRow = entity.getTableRow();
+        final Map<String, String> tableRow = tableRowOf( entity.getTableRow() );
         if ( (tableRow.get( TABLE_ROW_ACCEPTED_AT ) != null) ) {
             requestAcceptedAt = OffsetDateTime.parse( tableRow.get( TABLE_ROW_ACCEPTED_AT ) );
         }
@@ -44,7 +44,7 @@ public class EntityToDtoNotificationMetadataMapper {
     public NotificationSearchRow entity2Dto(NotificationDelegationMetadataEntity entity) {
         OffsetDateTime requestAcceptedAt = null;
 
-        final Map<String, String> tableRow = entity.getTableRow();
+        final Map<String, String> tableRow = tableRowOf(entity.getTableRow());
         if (tableRow.get(TABLE_ROW_ACCEPTED_AT) != null) {
             requestAcceptedAt = OffsetDateTime.parse(tableRow.get(TABLE_ROW_ACCEPTED_AT));
         }
@@ -61,4 +61,9 @@ public class EntityToDtoNotificationMetadataMapper {
                 .mandateId(entity.getMandateId())
                 .build();
     }
+
+    // con la proiezione delle query tableRow può non essere letta: i campi della riga restano vuoti
+    private static Map<String, String> tableRowOf(Map<String, String> tableRow) {
+        return tableRow != null ? tableRow : Map.of();
+    }
 }
@@ -0,0 +1,14 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import it.pagopa.pn.commons.abstractions.KeyValueStore;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationActivityEntity;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+
+import java.util.Map;
+
+public interface NotificationActivityEntityDao extends KeyValueStore<Key, NotificationActivityEntity> {
+
+    void markMonthActive(String activityKey, int year, int month);
+
+    Map<Integer, Integer> getMonthBitmaps(String activityKey, int fromYear, int toYear);
+}
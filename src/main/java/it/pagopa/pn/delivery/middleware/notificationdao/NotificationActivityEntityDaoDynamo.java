@@ -0,0 +1,69 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import it.pagopa.pn.commons.abstractions.impl.AbstractDynamoKeyValueStore;
+import it.pagopa.pn.commons.exceptions.PnIdConflictException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationActivityEntity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.PutItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.UpdateItemEnhancedRequest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Component
+@Slf4j
+public class NotificationActivityEntityDaoDynamo extends AbstractDynamoKeyValueStore<NotificationActivityEntity> implements NotificationActivityEntityDao {
+
+    protected NotificationActivityEntityDaoDynamo(DynamoDbEnhancedClient dynamoDbEnhancedClient, PnDeliveryConfigs cfg) {
+        super(dynamoDbEnhancedClient.table(tableName( cfg ), TableSchema.fromClass(NotificationActivityEntity.class)));
+    }
+
+    private static String tableName( PnDeliveryConfigs cfg ) {
+        return cfg.getNotificationActivityDao().getTableName();
+    }
+
+    @Override
+    public void putIfAbsent(NotificationActivityEntity notificationActivityEntity) throws PnIdConflictException {
+        PutItemEnhancedRequest<NotificationActivityEntity> request = PutItemEnhancedRequest.
+                builder(NotificationActivityEntity.class)
+                .item( notificationActivityEntity )
+                .build();
+        table.putItem( request );
+    }
+
+    @Override
+    public void markMonthActive(String activityKey, int year, int month) {
+        log.debug( "mark month active activityKey={} year={} month={}", activityKey, year, month );
+        // vengono scritti solo gli attributi valorizzati: chiave e mese, gli altri mesi restano invariati
+        UpdateItemEnhancedRequest<NotificationActivityEntity> request = UpdateItemEnhancedRequest
+                .builder(NotificationActivityEntity.class)
+                .item( NotificationActivityEntity.ofMonth( activityKey, year, month ) )
+                .ignoreNulls( true )
+                .build();
+        table.updateItem( request );
+    }
+
+    @Override
+    public Map<Integer, Integer> getMonthBitmaps(String activityKey, int fromYear, int toYear) {
+        QueryConditional yearsConditional = QueryConditional.sortBetween(
+                Key.builder().partitionValue( activityKey ).sortValue( fromYear ).build(),
+                Key.builder().partitionValue( activityKey ).sortValue( toYear ).build() );
+
+        Map<Integer, Integer> bitmaps = new HashMap<>();
+        table.query( QueryEnhancedRequest.builder()
+                        .queryConditional( yearsConditional )
+                        .consistentRead( true )
+                        .build() )
+                .items()
+                .forEach( item -> bitmaps.put( item.getYear(), item.getMonthBitmap() ) );
+        log.debug( "read month bitmaps activityKey={} fromYear={} toYear={} years={}", activityKey, fromYear, toYear, bitmaps.keySet() );
+        return bitmaps;
+    }
+}
@@ -1,7 +1,9 @@
 package it.pagopa.pn.delivery.middleware.notificationdao;
 
 
+import io.micrometer.core.instrument.MeterRegistry;
 import it.pagopa.pn.commons.exceptions.PnIdConflictException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
 import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.*;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationDigitalAddress;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationDocument;
@@ -21,12 +23,12 @@ import it.pagopa.pn.delivery.svc.search.PnLastEvaluatedKey;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 
+import java.time.Clock;
 import java.util.*;
-import java.util.function.Predicate;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
 
 @Component
 @Slf4j
@@ -38,23 +40,35 @@ public class NotificationDaoDynamo implements NotificationDao {
 	private final DtoToEntityNotificationMapper dto2entityMapper;
 	private final EntityToDtoNotificationMapper entity2DtoMapper;
 	private final PnDataVaultClientImpl pnDataVaultClient;
+	private final NotificationEntityCache entityCache;
 
 	public NotificationDaoDynamo(NotificationEntityDao entityDao,
 								 NotificationMetadataEntityDao metadataEntityDao,
 								 NotificationDelegationMetadataEntityDao delegationMetadataEntityDao,
 								 DtoToEntityNotificationMapper dto2entityMapper,
 								 EntityToDtoNotificationMapper entity2DtoMapper,
-								 PnDataVaultClientImpl pnDataVaultClient) {
+								 PnDataVaultClientImpl pnDataVaultClient,
+								 PnDeliveryConfigs cfg,
+								 Clock clock,
+								 MeterRegistry meterRegistry) {
 		this.entityDao = entityDao;
 		this.metadataEntityDao = metadataEntityDao;
 		this.delegationMetadataEntityDao = delegationMetadataEntityDao;
 		this.dto2entityMapper = dto2entityMapper;
 		this.entity2DtoMapper = entity2DtoMapper;
 		this.pnDataVaultClient = pnDataVaultClient;
+		long maxSize = cfg.getNotificationEntityCacheMaxSize() != null ? cfg.getNotificationEntityCacheMaxSize().toBytes() : 0;
+		this.entityCache = new NotificationEntityCache( cfg.getNotificationEntityCacheTtl(), maxSize, clock, meterRegistry );
 	}
 
 	@Override
 	public void addNotification(InternalNotification internalNotification  ) throws PnIdConflictException {
+		// i mittenti ripetono spesso l'invio della stessa notifica: il duplicato viene riconosciuto
+		// prima delle chiamate al data vault e della transazione di scrittura
+		if ( StringUtils.hasText( internalNotification.getIdempotenceToken() ) ) {
+			entityDao.checkIdempotenceToken( internalNotification.getSenderPaId(),
+					internalNotification.getPaProtocolNumber(), internalNotification.getIdempotenceToken() );
+		}
 
 		List<NotificationRecipientAddressesDto> recipientAddressesDtoList = new ArrayList<>();
 		List<NotificationRecipient> cleanedRecipientList = new ArrayList<>();
@@ -75,6 +89,7 @@ public class NotificationDaoDynamo implements NotificationDao {
 		NotificationEntity entity = dto2entityMapper.dto2Entity( internalNotification );
 
 		entityDao.putIfAbsent( entity );
+		entityCache.put( entity );
 	}
 
 	private NotificationRecipient removeConfidantialInfo(NotificationRecipient recipient) {
@@ -104,19 +119,44 @@ public class NotificationDaoDynamo implements NotificationDao {
 
 	@Override
 	public Optional<InternalNotification> getNotificationByIun(String iun) {
+		return getNotificationByIun( iun, true );
+	}
+
+	@Override
+	public Optional<InternalNotification> getNotificationByIun(String iun, boolean withRecipientsDetail) {
 		Key keyToSearch = Key.builder()
 				.partitionValue(iun)
 				.build();
-		Optional<InternalNotification> daoResult = entityDao.get( keyToSearch )
+		Optional<InternalNotification> daoResult = entityCache.get( iun, () -> entityDao.get( keyToSearch ) )
 				.map( entity2DtoMapper::entity2Dto );
 
 		if(daoResult.isPresent()) {
-			handleRecipients(daoResult.get());
+			if ( withRecipientsDetail ) {
+				handleRecipients(daoResult.get());
+			}
 			handleDocuments(daoResult.get());
 		}
 		return daoResult;
 	}
 
+	@Override
+	public Map<String, InternalNotification> getNotificationsByIun(Collection<String> iuns) {
+		Map<String, NotificationEntity> entities = entityCache.getAll( iuns, missing -> entityDao.batchGetItems( missing.stream()
+				.map( iun -> Key.builder().partitionValue( iun ).build() )
+				.toList() ) );
+
+		Map<String, InternalNotification> result = new LinkedHashMap<>();
+		for ( String iun : iuns ) {
+			NotificationEntity entity = entities.get( iun );
+			if ( entity != null && !result.containsKey( iun ) ) {
+				InternalNotification notification = entity2DtoMapper.entity2Dto( entity );
+				handleDocuments( notification );
+				result.put( iun, notification );
+			}
+		}
+		return result;
+	}
+
 	@Override
 	public Optional<String> getRequestId( String senderId, String paProtocolNumber, String idempotenceToken ) {
 		Key keyToSearch = Key.builder()
@@ -128,49 +168,11 @@ public class NotificationDaoDynamo implements NotificationDao {
 	}
 
 	private void handleRecipients(InternalNotification daoResult) {
-		List<NotificationRecipient> daoNotificationRecipientList = daoResult.getRecipients();
-
-		Set<String> opaqueIds = daoNotificationRecipientList.stream()
-				.map(NotificationRecipient::getInternalId)
-				.collect(Collectors.toSet());
-
 		List<BaseRecipientDto> baseRecipientDtoList =
-				pnDataVaultClient.getRecipientDenominationByInternalId( new ArrayList<>(opaqueIds) );
+				pnDataVaultClient.getRecipientDenominationByInternalId( NotificationRecipientsDetail.internalIds( daoResult ) );
 
 		List<NotificationRecipientAddressesDto> notificationRecipientAddressesDtoList = pnDataVaultClient.getNotificationAddressesByIun( daoResult.getIun() );
-		List<String> opaqueRecipientsIds = new ArrayList<>();
-		int recipientIndex = 0;
-		for ( NotificationRecipient recipient : daoNotificationRecipientList ) {
-			String opaqueTaxId = recipient.getInternalId();
-			opaqueRecipientsIds.add( opaqueTaxId );
-
-			BaseRecipientDto baseRec = baseRecipientDtoList.stream()
-					.filter( el ->Objects.equals( opaqueTaxId, el.getInternalId()) )
-					.findAny()
-					.orElse( null );
-
-			NotificationRecipientAddressesDto clearDataAddresses =
-					recipientIndex < notificationRecipientAddressesDtoList.size()
-							? notificationRecipientAddressesDtoList.get( recipientIndex ) : null;
-
-
-			if ( baseRec != null) {
-				recipient.setTaxId(baseRec.getTaxId());
-			}
-			else {
-				log.error( "Unable to find any recipient info from data-vault for recipient={}", opaqueTaxId );
-			}
-
-			if ( clearDataAddresses != null ) {
-				recipient.setDenomination(clearDataAddresses.getDenomination());
-				recipient.setDigitalDomicile( setNotificationDigitalAddress( clearDataAddresses.getDigitalAddress() ));
-				recipient.setPhysicalAddress( setNotificationPhysicalAddress( clearDataAddresses.getPhysicalAddress() ) );
-			} else {
-				log.error( "Unable to find any recipient addresses from data-vault for recipient={}", opaqueTaxId );
-			}
-			recipientIndex += 1;
-		}
-		daoResult.setRecipientIds( opaqueRecipientsIds );
+		NotificationRecipientsDetail.complete( daoResult, baseRecipientDtoList, notificationRecipientAddressesDtoList );
 	}
 
 	private void handleDocuments(InternalNotification daoResult) {
@@ -181,26 +183,6 @@ public class NotificationDaoDynamo implements NotificationDao {
 		}
 	}
 
-	private NotificationDigitalAddress setNotificationDigitalAddress( AddressDto addressDto ) {
-		return addressDto == null ? null : NotificationDigitalAddress.builder()
-				.type( NotificationDigitalAddress.TypeEnum.PEC )
-				.address( addressDto.getValue() )
-				.build();
-	}
-
-	private NotificationPhysicalAddress setNotificationPhysicalAddress( AnalogDomicile analogDomicile ) {
-		return analogDomicile == null ? null : NotificationPhysicalAddress.builder()
-				.foreignState( analogDomicile.getState() )
-				.address( analogDomicile.getAddress() )
-				.addressDetails( analogDomicile.getAddressDetails() )
-				.at( analogDomicile.getAt() )
-				.zip( analogDomicile.getCap() )
-				.province( analogDomicile.getProvince() )
-				.municipality( analogDomicile.getMunicipality() )
-				.municipalityDetails(analogDomicile.getMunicipalityDetails() )
-				.build();
-	}
-
 	@Override
 	public PageSearchTrunk<NotificationMetadataEntity> searchForOneMonth(InputSearchNotificationDto inputSearchNotificationDto, String indexName, String partitionValue, int size, PnLastEvaluatedKey lastEvaluatedKey) {
 		return this.metadataEntityDao.searchForOneMonth( inputSearchNotificationDto, indexName, partitionValue, size, lastEvaluatedKey );
@@ -215,6 +197,20 @@ public class NotificationDaoDynamo implements NotificationDao {
 		return delegationMetadataEntityDao.searchForOneMonth(searchDto, indexName, partitionValue, size, lastEvaluatedKey);
 	}
 
+	@Override
+	public CompletableFuture<PageSearchTrunk<NotificationMetadataEntity>> searchForOneMonthAsync(InputSearchNotificationDto inputSearchNotificationDto, String indexName, String partitionValue, int size, PnLastEvaluatedKey lastEvaluatedKey) {
+		return this.metadataEntityDao.searchForOneMonthAsync( inputSearchNotificationDto, indexName, partitionValue, size, lastEvaluatedKey );
+	}
+
+	@Override
+	public CompletableFuture<PageSearchTrunk<NotificationDelegationMetadataEntity>> searchDelegatedForOneMonthAsync(InputSearchNotificationDelegatedDto searchDto,
+																													 IndexNameAndPartitions.SearchIndexEnum indexName,
+																													 String partitionValue,
+																													 int size,
+																													 PnLastEvaluatedKey lastEvaluatedKey) {
+		return delegationMetadataEntityDao.searchForOneMonthAsync(searchDto, indexName, partitionValue, size, lastEvaluatedKey);
+	}
+
 	@Override
 	public PageSearchTrunk<NotificationMetadataEntity> searchByIUN(InputSearchNotificationDto inputSearchNotificationDto) {
 		log.debug("searchByIUN iun={}", inputSearchNotificationDto.getIunMatch());
@@ -224,7 +220,7 @@ public class NotificationDaoDynamo implements NotificationDao {
 		Key keyToSearch = Key.builder()
 				.partitionValue(iun)
 				.build();
-		Optional<NotificationEntity> daoResult = entityDao.get( keyToSearch );
+		Optional<NotificationEntity> daoResult = entityCache.get( iun, () -> entityDao.get( keyToSearch ) );
 
 		if(daoResult.isPresent()) {
 			// controllo se lo IUN richiesto fa parte di una PA su cui ho il permesso.
@@ -245,17 +241,4 @@ public class NotificationDaoDynamo implements NotificationDao {
 
 		return new PageSearchTrunk<>();
 	}
-
-
-
-	Predicate<String> buildRegexpPredicate(String subjectRegExp) {
-		Predicate<String> matchSubject;
-		if (subjectRegExp != null) {
-			matchSubject = Objects::nonNull;
-			matchSubject = matchSubject.and(Pattern.compile("^" + subjectRegExp + "$").asMatchPredicate());
-		} else {
-			matchSubject = x -> true;
-		}
-		return matchSubject;
-	}
 }
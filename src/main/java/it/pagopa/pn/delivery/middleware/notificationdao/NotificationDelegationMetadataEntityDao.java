@@ -10,6 +10,7 @@ import software.amazon.awssdk.enhanced.dynamodb.Key;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public interface NotificationDelegationMetadataEntityDao extends KeyValueStore<Key, NotificationDelegationMetadataEntity> {
 
@@ -20,6 +21,26 @@ public interface NotificationDelegationMetadataEntityDao extends KeyValueStore<K
                                                                             String partitionValue,
                                                                             int size,
                                                                             PnLastEvaluatedKey lastEvaluatedKey);
+
+    /**
+     * Versione asincrona di {@link #searchForOneMonth}: legge una pagina della partizione senza tenere
+     * occupato il thread chiamante durante la query.
+     * Le righe restituite possono essere proiettate sui soli attributi della riga di risultato, del cursore e del controllo delle deleghe,
+     * quindi non vanno usate per riscrivere l'item.
+     * L'implementazione di default adatta il metodo sincrono.
+     */
+    default CompletableFuture<PageSearchTrunk<NotificationDelegationMetadataEntity>> searchForOneMonthAsync(InputSearchNotificationDelegatedDto searchDto,
+                                                                                                             IndexNameAndPartitions.SearchIndexEnum indexName,
+                                                                                                             String partitionValue,
+                                                                                                             int size,
+                                                                                                             PnLastEvaluatedKey lastEvaluatedKey) {
+        try {
+            return CompletableFuture.completedFuture(searchForOneMonth(searchDto, indexName, partitionValue, size, lastEvaluatedKey));
+        } catch (RuntimeException exc) {
+            return CompletableFuture.failedFuture(exc);
+        }
+    }
+
     PageSearchTrunk<NotificationDelegationMetadataEntity> searchDelegatedByMandateId(String mandateId,
                                                                                      int size,
                                                                                      PnLastEvaluatedKey lastEvaluatedKey);
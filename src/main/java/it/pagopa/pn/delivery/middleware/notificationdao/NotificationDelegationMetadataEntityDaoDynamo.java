@@ -24,6 +24,7 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import static it.pagopa.pn.delivery.exception.PnDeliveryExceptionCodes.ERROR_CODE_DELIVERY_UNSUPPORTED_INDEX_NAME;
 
@@ -34,14 +35,17 @@ public class NotificationDelegationMetadataEntityDaoDynamo
         implements NotificationDelegationMetadataEntityDao {
 
     private final DynamoDbEnhancedClient dynamoDbEnhancedClient;
+    private final DynamoDbAsyncTable<NotificationDelegationMetadataEntity> asyncTable;
 
 
     private static final int DYNAMODB_MAX_BATCH_WRITE_ITEMS = 25;
 
     protected NotificationDelegationMetadataEntityDaoDynamo(DynamoDbEnhancedClient dynamoDbEnhancedClient,
+                                                            DynamoDbEnhancedAsyncClient dynamoDbEnhancedAsyncClient,
                                                             PnDeliveryConfigs cfg) {
         super(dynamoDbEnhancedClient.table(tableName(cfg), TableSchema.fromClass(NotificationDelegationMetadataEntity.class)));
         this.dynamoDbEnhancedClient = dynamoDbEnhancedClient;
+        this.asyncTable = dynamoDbEnhancedAsyncClient.table(tableName(cfg), TableSchema.fromClass(NotificationDelegationMetadataEntity.class));
     }
 
     private static String tableName(PnDeliveryConfigs cfg) {
@@ -99,6 +103,24 @@ public class NotificationDelegationMetadataEntityDaoDynamo
                                                                                    String partitionValue,
                                                                                    int size,
                                                                                    PnLastEvaluatedKey lastEvaluatedKey) {
+        return DynamoQueryPages.join(queryOneMonth(searchDto, indexName, partitionValue, size, lastEvaluatedKey, false));
+    }
+
+    @Override
+    public CompletableFuture<PageSearchTrunk<NotificationDelegationMetadataEntity>> searchForOneMonthAsync(InputSearchNotificationDelegatedDto searchDto,
+                                                                                                          IndexNameAndPartitions.SearchIndexEnum indexName,
+                                                                                                          String partitionValue,
+                                                                                                          int size,
+                                                                                                          PnLastEvaluatedKey lastEvaluatedKey) {
+        return queryOneMonth(searchDto, indexName, partitionValue, size, lastEvaluatedKey, true);
+    }
+
+    private CompletableFuture<PageSearchTrunk<NotificationDelegationMetadataEntity>> queryOneMonth(InputSearchNotificationDelegatedDto searchDto,
+                                                                                                  IndexNameAndPartitions.SearchIndexEnum indexName,
+                                                                                                  String partitionValue,
+                                                                                                  int size,
+                                                                                                  PnLastEvaluatedKey lastEvaluatedKey,
+                                                                                                  boolean searchProjection) {
         log.debug("START search for one month");
         Instant startDate = searchDto.getStartDate();
         Instant endDate = searchDto.getEndDate();
@@ -110,7 +132,7 @@ public class NotificationDelegationMetadataEntityDaoDynamo
 
         QueryConditional betweenConditional = QueryConditional.sortBetween(key1, key2);
 
-        DynamoDbIndex<NotificationDelegationMetadataEntity> index = table.index(indexName.getValue());
+        DynamoDbAsyncIndex<NotificationDelegationMetadataEntity> index = asyncTable.index(indexName.getValue());
 
         QueryEnhancedRequest.Builder requestBuilder = QueryEnhancedRequest.builder();
 
@@ -120,6 +142,11 @@ public class NotificationDelegationMetadataEntityDaoDynamo
 
         addFilterExpression(searchDto, requestBuilder);
 
+        if (searchProjection) {
+            // leggo solo gli attributi necessari alla riga di risultato, al cursore ed al controllo delle deleghe
+            SearchProjection.applyDelegation(requestBuilder, indexName);
+        }
+
         if (lastEvaluatedKey != null && !lastEvaluatedKey.getInternalLastEvaluatedKey().isEmpty()) {
             String attributeName = retrieveAttributeName(indexName);
             if (lastEvaluatedKey.getInternalLastEvaluatedKey().get(attributeName).s().equals(partitionValue)) {
@@ -128,16 +155,15 @@ public class NotificationDelegationMetadataEntityDaoDynamo
         }
 
         log.debug("START query execution");
-        SdkIterable<Page<NotificationDelegationMetadataEntity>> pages = index.query(requestBuilder.build());
-        log.debug("END query execution");
-
-        Page<NotificationDelegationMetadataEntity> page = pages.iterator().next();
-
-        PageSearchTrunk<NotificationDelegationMetadataEntity> response = new PageSearchTrunk<>();
-        response.setResults(page.items());
-        response.setLastEvaluatedKey(page.lastEvaluatedKey());
-        log.debug("END search for one month");
-        return response;
+        return DynamoQueryPages.firstPage(index.query(requestBuilder.build()))
+                .thenApply(page -> {
+                    log.debug("END query execution");
+                    PageSearchTrunk<NotificationDelegationMetadataEntity> response = new PageSearchTrunk<>();
+                    response.setResults(page.items());
+                    response.setLastEvaluatedKey(page.lastEvaluatedKey());
+                    log.debug("END search for one month");
+                    return response;
+                });
     }
 
     private void addFilterExpression(InputSearchNotificationDelegatedDto searchDto,
@@ -148,9 +174,10 @@ public class NotificationDelegationMetadataEntityDaoDynamo
         addStatusFilterExpression(searchDto.getStatuses(), filterExpressionBuilder, expressionBuilder);
         addSenderFilterExpression(searchDto.getSenderId(), filterExpressionBuilder, expressionBuilder);
         addReceiverFilterExpression(searchDto.getReceiverId(), filterExpressionBuilder, expressionBuilder);
+        addMandateValidityFilterExpression(Instant.now(), filterExpressionBuilder, expressionBuilder);
 
         requestBuilder.filterExpression(filterExpressionBuilder
-                .expression(expressionBuilder.length() > 0 ? expressionBuilder.toString() : null)
+                .expression(expressionBuilder.toString())
                 .build());
     }
 
@@ -193,6 +220,27 @@ public class NotificationDelegationMetadataEntityDaoDynamo
         addEqStringFilterExpression(receiverId, NotificationDelegationMetadataEntity.FIELD_RECIPIENT_ID, ":recipientId", filterExpressionBuilder, expressionBuilder);
     }
 
+    /**
+     * Scarta le righe la cui delega non è valida adesso. Le righe senza la versione corrente degli attributi
+     * della delega passano il filtro e vengono verificate sul servizio delle deleghe.
+     * Il confronto dell'invio con la validità è fatto in memoria: sentAt è chiave dell'indice e non può
+     * comparire nel filtro.
+     */
+    private void addMandateValidityFilterExpression(Instant now,
+                                                    Expression.Builder filterExpressionBuilder,
+                                                    StringBuilder expressionBuilder) {
+        addEventuallyAnd(expressionBuilder);
+        expressionBuilder.append("attribute_not_exists(").append(NotificationDelegationMetadataEntity.FIELD_MANDATE_VERSION).append(")")
+                .append(" OR ").append(NotificationDelegationMetadataEntity.FIELD_MANDATE_VERSION).append(" < :mandateVersion")
+                .append(" OR ((attribute_not_exists(").append(NotificationDelegationMetadataEntity.FIELD_MANDATE_VALID_FROM).append(")")
+                .append(" OR ").append(NotificationDelegationMetadataEntity.FIELD_MANDATE_VALID_FROM).append(" <= :now)")
+                .append(" AND (attribute_not_exists(").append(NotificationDelegationMetadataEntity.FIELD_MANDATE_VALID_TO).append(")")
+                .append(" OR ").append(NotificationDelegationMetadataEntity.FIELD_MANDATE_VALID_TO).append(" >= :now)))");
+        filterExpressionBuilder.putExpressionValue(":mandateVersion", AttributeValue.builder()
+                .n(Integer.toString(NotificationDelegationMetadataEntity.MANDATE_ATTRIBUTES_VERSION)).build());
+        filterExpressionBuilder.putExpressionValue(":now", AttributeValue.builder().s(now.toString()).build());
+    }
+
     private void addEqStringFilterExpression(String value, String fieldName, String filterName, Expression.Builder filterExpressionBuilder, StringBuilder expressionBuilder) {
         addEventuallyAnd(expressionBuilder);
         expressionBuilder.append(fieldName).append(" = ").append(filterName).append(")");
@@ -0,0 +1,197 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.DocumentAttachmentEntity;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationEntity;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationRecipientEntity;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Cache delle notifiche lette dalla tabella delle notifiche, per IUN.
+ * <p>
+ * Una notifica non viene modificata dopo l'inserimento, quindi gli elementi non vengono invalidati ma solo rimossi
+ * alla scadenza o quando il peso stimato complessivo supera il massimo, a partire dai meno usati di recente.
+ * Gli elementi contengono solo gli id opachi dei destinatari: denominazioni e indirizzi letti dal data vault
+ * vengono aggiunti ad ogni lettura e non sono conservati qui. Le notifiche non trovate non vengono conservate.
+ * Gli elementi sono condivisi tra le letture e non devono essere modificati.
+ */
+@Slf4j
+class NotificationEntityCache {
+
+    static final String METRIC_LOOKUPS = "pn.delivery.notification-entity.cache";
+    static final String METRIC_WEIGHT = "pn.delivery.notification-entity.cache.weight";
+    private static final String TAG_RESULT = "result";
+
+    private static final int BASE_WEIGHT = 512;
+    private static final int RECIPIENT_WEIGHT = 256;
+    private static final int DOCUMENT_WEIGHT = 256;
+
+    private record Entry(NotificationEntity entity, long weight, long expiresAt) {}
+
+    private final long ttlMillis;
+    private final long maxWeight;
+    private final Clock clock;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    NotificationEntityCache(Duration ttl, long maxWeight, Clock clock, MeterRegistry meterRegistry) {
+        this.ttlMillis = ttl != null && !ttl.isNegative() && maxWeight > 0 ? ttl.toMillis() : 0;
+        this.maxWeight = maxWeight;
+        this.clock = clock;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder(METRIC_WEIGHT, this, NotificationEntityCache::weight)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        log.info("notification entity cache enabled={} ttl={} maxWeight={}", isEnabled(), ttl, maxWeight);
+    }
+
+    boolean isEnabled() {
+        return ttlMillis > 0;
+    }
+
+    /**
+     * Restituisce la notifica di uno IUN, leggendola dalla tabella se non presente
+     * @param iun IUN della notifica
+     * @param loader lettura dalla tabella delle notifiche
+     * @return notifica, da non modificare
+     */
+    Optional<NotificationEntity> get(String iun, Supplier<Optional<NotificationEntity>> loader) {
+        if (!isEnabled())
+            return loader.get();
+
+        NotificationEntity cached = lookup(iun);
+        if (cached != null) {
+            count("hit");
+            return Optional.of(cached);
+        }
+        count("miss");
+
+        Optional<NotificationEntity> entity = loader.get();
+        entity.ifPresent(this::put);
+        return entity;
+    }
+
+    /**
+     * Restituisce le notifiche di più IUN, leggendo con una sola invocazione del loader quelle non presenti
+     * @param iuns IUN delle notifiche
+     * @param loader lettura dalla tabella delle notifiche mancanti
+     * @return notifiche trovate per IUN, da non modificare
+     */
+    Map<String, NotificationEntity> getAll(Collection<String> iuns, Function<List<String>, List<NotificationEntity>> loader) {
+        Map<String, NotificationEntity> result = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for (String iun : new LinkedHashSet<>(iuns)) {
+            NotificationEntity cached = lookup(iun);
+            if (cached != null) {
+                count("hit");
+                result.put(iun, cached);
+            } else {
+                if (isEnabled())
+                    count("miss");
+                missing.add(iun);
+            }
+        }
+        if (missing.isEmpty())
+            return result;
+
+        for (NotificationEntity entity : loader.apply(new ArrayList<>(missing))) {
+            put(entity);
+            result.put(entity.getIun(), entity);
+        }
+        return result;
+    }
+
+    /**
+     * @return notifica in cache, null se non presente o scaduta
+     */
+    synchronized NotificationEntity lookup(String iun) {
+        if (!isEnabled())
+            return null;
+        Entry entry = entries.get(iun);
+        if (entry == null)
+            return null;
+        if (entry.expiresAt() <= clock.millis()) {
+            remove(iun);
+            return null;
+        }
+        return entry.entity();
+    }
+
+    /**
+     * Conserva una notifica letta o appena inserita; le notifiche più pesanti del massimo non vengono conservate
+     */
+    synchronized void put(NotificationEntity entity) {
+        if (!isEnabled() || entity.getIun() == null)
+            return;
+        long entityWeight = weigh(entity);
+        if (entityWeight > maxWeight)
+            return;
+
+        remove(entity.getIun());
+        entries.put(entity.getIun(), new Entry(entity, entityWeight, clock.millis() + ttlMillis));
+        weight += entityWeight;
+
+        var eldest = entries.entrySet().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            weight -= eldest.next().getValue().weight();
+            eldest.remove();
+        }
+    }
+
+    synchronized long weight() {
+        return weight;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private void remove(String iun) {
+        Entry previous = entries.remove(iun);
+        if (previous != null)
+            weight -= previous.weight();
+    }
+
+    /**
+     * Stima l'occupazione in memoria di una notifica: una quota fissa per l'oggetto, i destinatari e i documenti,
+     * più due byte per carattere dei testi liberi
+     */
+    static long weigh(NotificationEntity entity) {
+        long result = BASE_WEIGHT
+                + chars(entity.getSubject())
+                + chars(entity.getNotificationAbstract())
+                + chars(entity.getSenderDenomination())
+                + chars(entity.getPaNotificationId())
+                + chars(entity.getIdempotenceToken())
+                + chars(entity.getRequestId());
+        List<NotificationRecipientEntity> recipients = entity.getRecipients();
+        if (recipients != null) {
+            for (NotificationRecipientEntity recipient : recipients)
+                result += RECIPIENT_WEIGHT + chars(recipient.getRecipientId()) + chars(recipient.getDenomination());
+        }
+        List<DocumentAttachmentEntity> documents = entity.getDocuments();
+        if (documents != null)
+            result += (long) documents.size() * DOCUMENT_WEIGHT;
+        return result;
+    }
+
+    private static long chars(String value) {
+        return value != null ? 2L * value.length() : 0;
+    }
+
+    private void count(String result) {
+        Counter.builder(METRIC_LOOKUPS)
+                .tag(TAG_RESULT, result)
+                .register(meterRegistry)
+                .increment();
+    }
+}
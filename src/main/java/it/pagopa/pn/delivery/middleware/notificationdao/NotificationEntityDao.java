@@ -1,9 +1,26 @@
 package it.pagopa.pn.delivery.middleware.notificationdao;
 
 import it.pagopa.pn.commons.abstractions.KeyValueStore;
+import it.pagopa.pn.commons.exceptions.PnIdConflictException;
 import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationEntity;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 
+import java.util.List;
+
 public interface NotificationEntityDao extends KeyValueStore<Key, NotificationEntity> {
     String IMPLEMENTATION_TYPE_PROPERTY_NAME = "pn.middleware.impl.notification-dao";
+
+    /**
+     * Legge le notifiche con le chiavi indicate
+     * @param keys chiavi (iun) delle notifiche
+     * @return notifiche trovate, in ordine qualsiasi
+     */
+    List<NotificationEntity> batchGetItems(List<Key> keys);
+
+    /**
+     * Verifica con una lettura consistente che il mittente non abbia già inviato una notifica
+     * con lo stesso numero di protocollo e token di idempotenza
+     * @throws PnIdConflictException se la notifica è già stata inviata
+     */
+    void checkIdempotenceToken(String senderPaId, String paProtocolNumber, String idempotenceToken) throws PnIdConflictException;
 }
@@ -13,6 +13,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.util.Base64Utils;
 import software.amazon.awssdk.enhanced.dynamodb.*;
 import software.amazon.awssdk.enhanced.dynamodb.model.*;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
 import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
 
 import java.nio.charset.StandardCharsets;
@@ -21,6 +22,15 @@ import java.util.*;
 @Component
 @Slf4j
 public class NotificationEntityDaoDynamo extends AbstractDynamoKeyValueStore<NotificationEntity> implements NotificationEntityDao {
+
+    private static final int DYNAMODB_MAX_BATCH_GET_ITEMS = 100;
+    private static final String CONDITIONAL_CHECK_FAILED = "ConditionalCheckFailed";
+
+    static final String DUPLICATED_IUN = "Duplicated notification for iun";
+    static final String DUPLICATED_IDEMPOTENCE_TOKEN = "Duplicated notification for senderPaId##paProtocolNumber##idempotenceToken";
+    static final String DUPLICATED_NOTICE_CODE = "Duplicated notification for creditorTaxId##noticeCode";
+    static final String DUPLICATED_AAR_QR_CODE = "Duplicated notification for aarQRCodeValue";
+
     private final DynamoDbEnhancedClient dynamoDbEnhancedClient;
     private final DynamoDbTable<NotificationEntity> dynamoDbTable;
     private final DynamoDbTable<NotificationCostEntity> dynamoDbCostTable;
@@ -42,6 +52,42 @@ public class NotificationEntityDaoDynamo extends AbstractDynamoKeyValueStore<Not
     }
     private static String qrTableName(PnDeliveryConfigs cfg) { return cfg.getNotificationQRDao().getTableName(); }
 
+    @Override
+    public List<NotificationEntity> batchGetItems(List<Key> keys) {
+        log.debug( "batch get notifications of {} elements", keys.size() );
+        List<NotificationEntity> result = new ArrayList<>();
+        for (int start = 0; start < keys.size(); start = start + DYNAMODB_MAX_BATCH_GET_ITEMS) {
+            int end = Math.min( start + DYNAMODB_MAX_BATCH_GET_ITEMS, keys.size() );
+            log.trace( "chunk start={} end={}", start, end );
+
+            ReadBatch.Builder<NotificationEntity> builder = ReadBatch.builder( NotificationEntity.class )
+                    .mappedTableResource( dynamoDbTable );
+            keys.subList( start, end ).forEach( builder::addGetItem );
+
+            // le notifiche possono superare il limite di 16MB per risposta: le pagine successive contengono
+            // le chiavi non elaborate, che il client enhanced richiede di nuovo
+            dynamoDbEnhancedClient.batchGetItem( BatchGetItemEnhancedRequest.builder()
+                            .readBatches( builder.build() )
+                            .build() )
+                    .resultsForTable( dynamoDbTable )
+                    .forEach( result::add );
+        }
+        return result;
+    }
+
+    @Override
+    public void checkIdempotenceToken(String senderPaId, String paProtocolNumber, String idempotenceToken) throws PnIdConflictException {
+        String controlIdempotenceToken = senderPaId + "##" + paProtocolNumber + "##" + idempotenceToken;
+        NotificationEntity idempotenceTokenDuplicated = dynamoDbTable.getItem( GetItemEnhancedRequest.builder()
+                .key( Key.builder().partitionValue( controlIdempotenceToken ).build() )
+                .consistentRead( true )
+                .build() );
+        if ( idempotenceTokenDuplicated != null ) {
+            log.info( "Notification already sent controlIdempotenceToken={} requestId={}", controlIdempotenceToken, idempotenceTokenDuplicated.getRequestId() );
+            throw new PnIdConflictException( Map.of( DUPLICATED_IDEMPOTENCE_TOKEN, controlIdempotenceToken ) );
+        }
+    }
+
     @Override
     public void putIfAbsent(NotificationEntity notificationEntity) throws PnIdConflictException {
         List<TransactPutItemEnhancedRequest<NotificationEntity>> notificationRequestList = createNotificationPutItemRequests( notificationEntity );
@@ -59,7 +105,12 @@ public class NotificationEntityDaoDynamo extends AbstractDynamoKeyValueStore<Not
         try {
             dynamoDbEnhancedClient.transactWriteItems( enhancedRequest );
         } catch (TransactionCanceledException ex) {
-            Map<String,String> duplicatedErrors = getDuplicationErrors(notificationEntity, notificationCostEntityList);
+            Map<String,String> duplicatedErrors = getDuplicationErrors( ex, notificationEntity, notificationCostEntityList, notificationQREntityList );
+            if ( duplicatedErrors.isEmpty() ) {
+                // nessuna condizione di unicità fallita (ad esempio conflitto con un'altra transazione): non è un duplicato
+                log.warn( "Notification transaction canceled without duplicates iun={} reasons={}", notificationEntity.getIun(), ex.cancellationReasons() );
+                throw ex;
+            }
             throw new PnIdConflictException( duplicatedErrors );
         }
     }
@@ -98,36 +149,31 @@ public class NotificationEntityDaoDynamo extends AbstractDynamoKeyValueStore<Not
                 + "##" + notificationEntity.getIdempotenceToken();
     }
 
+    /**
+     * Ricava le chiavi duplicate dai motivi di annullamento della transazione, che DynamoDB restituisce
+     * nello stesso ordine delle scritture (vedi createTransactWriteItems): non servono altre letture
+     */
     @NotNull
-    private Map<String,String> getDuplicationErrors(NotificationEntity notificationEntity, List<NotificationCostEntity> notificationCostEntityList) {
-        NotificationEntity iunDuplicated = dynamoDbTable.getItem( Key.builder()
-                .partitionValue( notificationEntity.getIun() )
-                .build() );
-
-
-        String controlIdempotenceToken = getControlIdempotenceToken( notificationEntity );
-        NotificationEntity idempotenceTokenDuplicated = dynamoDbTable.getItem( Key.builder()
-                .partitionValue( controlIdempotenceToken )
-                .build() );
-
-        List<NotificationCostEntity> costEntitiesDuplicated = new ArrayList<>();
-        for ( NotificationCostEntity notificationCostEntity : notificationCostEntityList) {
-            NotificationCostEntity costEntityDuplicated = dynamoDbCostTable.getItem( Key.builder()
-                    .partitionValue( notificationCostEntity.getCreditorTaxIdNoticeCode() )
-                    .build());
-            if ( costEntityDuplicated != null ) {
-                costEntitiesDuplicated.add( costEntityDuplicated );
-            }
-        }
-        Map<String,String> duplicatedErrors = new HashMap<>();
-        if ( Objects.nonNull( iunDuplicated ) ) {
-            duplicatedErrors.put( "Duplicated notification for iun", notificationEntity.getIun() );
+    private Map<String,String> getDuplicationErrors(TransactionCanceledException ex, NotificationEntity notificationEntity,
+                                                    List<NotificationCostEntity> notificationCostEntityList,
+                                                    List<NotificationQREntity> notificationQREntityList) {
+        List<Map.Entry<String,String>> uniqueKeys = new ArrayList<>();
+        uniqueKeys.add( Map.entry( DUPLICATED_IUN, notificationEntity.getIun() ) );
+        uniqueKeys.add( Map.entry( DUPLICATED_IDEMPOTENCE_TOKEN, getControlIdempotenceToken( notificationEntity ) ) );
+        for ( NotificationCostEntity nce : notificationCostEntityList ) {
+            uniqueKeys.add( Map.entry( DUPLICATED_NOTICE_CODE, nce.getCreditorTaxIdNoticeCode() ) );
         }
-        if ( Objects.nonNull( idempotenceTokenDuplicated ) ) {
-            duplicatedErrors.put("Duplicated notification for senderPaId##paProtocolNumber##idempotenceToken" , controlIdempotenceToken );
+        for ( NotificationQREntity nqe : notificationQREntityList ) {
+            uniqueKeys.add( Map.entry( DUPLICATED_AAR_QR_CODE, nqe.getAarQRCodeValue() ) );
         }
-        for ( NotificationCostEntity nce : costEntitiesDuplicated ) {
-            duplicatedErrors.put("Duplicated notification for creditorTaxId##noticeCode", nce.getCreditorTaxIdNoticeCode());
+
+        Map<String,String> duplicatedErrors = new HashMap<>();
+        List<CancellationReason> reasons = ex.hasCancellationReasons() ? ex.cancellationReasons() : List.of();
+        for ( int i = 0; i < reasons.size() && i < uniqueKeys.size(); i++ ) {
+            if ( CONDITIONAL_CHECK_FAILED.equals( reasons.get( i ).code() ) ) {
+                Map.Entry<String,String> uniqueKey = uniqueKeys.get( i );
+                duplicatedErrors.put( uniqueKey.getKey(), uniqueKey.getValue() );
+            }
         }
         return duplicatedErrors;
     }
@@ -8,6 +8,9 @@ import it.pagopa.pn.delivery.models.PageSearchTrunk;
 import it.pagopa.pn.delivery.svc.search.PnLastEvaluatedKey;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 public interface NotificationMetadataEntityDao extends KeyValueStore<Key, NotificationMetadataEntity> {
     String IMPLEMENTATION_TYPE_PROPERTY_NAME = "pn.middleware.impl.notification-dao";
 
@@ -19,9 +22,37 @@ public interface NotificationMetadataEntityDao extends KeyValueStore<Key, Notifi
             PnLastEvaluatedKey lastEvaluatedKey
     );
 
+    /**
+     * Versione asincrona di {@link #searchForOneMonth}: legge una pagina della partizione senza tenere
+     * occupato il thread chiamante durante la query.
+     * Le righe restituite possono essere proiettate sui soli attributi della riga di risultato e del cursore,
+     * quindi non vanno usate per riscrivere l'item.
+     * L'implementazione di default adatta il metodo sincrono.
+     */
+    default CompletableFuture<PageSearchTrunk<NotificationMetadataEntity>> searchForOneMonthAsync(
+            InputSearchNotificationDto inputSearchNotificationDto,
+            String indexName,
+            String partitionValue,
+            int size,
+            PnLastEvaluatedKey lastEvaluatedKey
+    ) {
+        try {
+            return CompletableFuture.completedFuture( searchForOneMonth( inputSearchNotificationDto, indexName, partitionValue, size, lastEvaluatedKey ) );
+        } catch (RuntimeException exc) {
+            return CompletableFuture.failedFuture( exc );
+        }
+    }
+
     PageSearchTrunk<NotificationMetadataEntity> searchByIun(
             InputSearchNotificationDto inputSearchNotificationDto,
             String partitionValue,
             String sentValue
     );
+
+    /**
+     * Legge le righe di metadati con le chiavi indicate
+     * @param keys chiavi (iun_recipientId, sentAt) delle righe
+     * @return righe trovate, in ordine qualsiasi
+     */
+    List<NotificationMetadataEntity> batchGetItems(List<Key> keys);
 }
@@ -13,13 +13,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
-import software.amazon.awssdk.core.pagination.sync.SdkIterable;
 import software.amazon.awssdk.enhanced.dynamodb.*;
 import software.amazon.awssdk.enhanced.dynamodb.model.*;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static it.pagopa.pn.delivery.exception.PnDeliveryExceptionCodes.ERROR_CODE_DELIVERY_UNSUPPORTED_INDEX_NAME;
 
@@ -27,8 +28,17 @@ import static it.pagopa.pn.delivery.exception.PnDeliveryExceptionCodes.ERROR_COD
 @Slf4j
 public class NotificationMetadataEntityDaoDynamo extends AbstractDynamoKeyValueStore<NotificationMetadataEntity> implements NotificationMetadataEntityDao {
 
-    protected NotificationMetadataEntityDaoDynamo(DynamoDbEnhancedClient dynamoDbEnhancedClient, PnDeliveryConfigs cfg) {
+    private static final int DYNAMODB_MAX_BATCH_GET_ITEMS = 100;
+
+    private final DynamoDbEnhancedClient dynamoDbEnhancedClient;
+    private final DynamoDbAsyncTable<NotificationMetadataEntity> asyncTable;
+
+    protected NotificationMetadataEntityDaoDynamo(DynamoDbEnhancedClient dynamoDbEnhancedClient,
+                                                  DynamoDbEnhancedAsyncClient dynamoDbEnhancedAsyncClient,
+                                                  PnDeliveryConfigs cfg) {
         super(dynamoDbEnhancedClient.table(tableName( cfg ), TableSchema.fromClass(NotificationMetadataEntity.class)));
+        this.dynamoDbEnhancedClient = dynamoDbEnhancedClient;
+        this.asyncTable = dynamoDbEnhancedAsyncClient.table(tableName( cfg ), TableSchema.fromClass(NotificationMetadataEntity.class));
     }
 
     private static String tableName( PnDeliveryConfigs cfg ) {
@@ -103,6 +113,28 @@ public class NotificationMetadataEntityDaoDynamo extends AbstractDynamoKeyValueS
         return res;
     }
 
+    @Override
+    public List<NotificationMetadataEntity> batchGetItems(List<Key> keys) {
+        log.debug( "batch get metadata of {} elements", keys.size() );
+        List<NotificationMetadataEntity> result = new ArrayList<>();
+        for (int start = 0; start < keys.size(); start = start + DYNAMODB_MAX_BATCH_GET_ITEMS) {
+            int end = Math.min( start + DYNAMODB_MAX_BATCH_GET_ITEMS, keys.size() );
+            log.trace( "chunk start={} end={}", start, end );
+
+            ReadBatch.Builder<NotificationMetadataEntity> builder = ReadBatch.builder( NotificationMetadataEntity.class )
+                    .mappedTableResource( table );
+            keys.subList( start, end ).forEach( builder::addGetItem );
+
+            // le pagine successive contengono le chiavi non elaborate, che il client enhanced richiede di nuovo
+            dynamoDbEnhancedClient.batchGetItem( BatchGetItemEnhancedRequest.builder()
+                            .readBatches( builder.build() )
+                            .build() )
+                    .resultsForTable( table )
+                    .forEach( result::add );
+        }
+        return result;
+    }
+
     @Override
     public PageSearchTrunk<NotificationMetadataEntity> searchForOneMonth(
             InputSearchNotificationDto inputSearchNotificationDto,
@@ -110,6 +142,29 @@ public class NotificationMetadataEntityDaoDynamo extends AbstractDynamoKeyValueS
             String partitionValue,
             int size,
             PnLastEvaluatedKey lastEvaluatedKey
+    ) {
+        // righe complete: il metodo sincrono è usato anche per duplicare le righe sulle deleghe
+        return DynamoQueryPages.join( queryOneMonth( inputSearchNotificationDto, indexName, partitionValue, size, lastEvaluatedKey, false ) );
+    }
+
+    @Override
+    public CompletableFuture<PageSearchTrunk<NotificationMetadataEntity>> searchForOneMonthAsync(
+            InputSearchNotificationDto inputSearchNotificationDto,
+            String indexName,
+            String partitionValue,
+            int size,
+            PnLastEvaluatedKey lastEvaluatedKey
+    ) {
+        return queryOneMonth( inputSearchNotificationDto, indexName, partitionValue, size, lastEvaluatedKey, true );
+    }
+
+    private CompletableFuture<PageSearchTrunk<NotificationMetadataEntity>> queryOneMonth(
+            InputSearchNotificationDto inputSearchNotificationDto,
+            String indexName,
+            String partitionValue,
+            int size,
+            PnLastEvaluatedKey lastEvaluatedKey,
+            boolean searchProjection
     ) {
         log.trace( "START search for one month" );
         Instant startDate = inputSearchNotificationDto.getStartDate();
@@ -130,7 +185,7 @@ public class NotificationMetadataEntityDaoDynamo extends AbstractDynamoKeyValueS
         QueryConditional betweenConditional = QueryConditional
                 .sortBetween( key1, key2 );
 
-        DynamoDbIndex<NotificationMetadataEntity> index = table.index( indexName );
+        DynamoDbAsyncIndex<NotificationMetadataEntity> index = asyncTable.index( indexName );
 
         QueryEnhancedRequest.Builder requestBuilder = QueryEnhancedRequest.builder();
 
@@ -143,6 +198,11 @@ public class NotificationMetadataEntityDaoDynamo extends AbstractDynamoKeyValueS
         addFilterExpression(inputSearchNotificationDto, requestBuilder);
         log.trace( "END add filter expression" );
 
+        if ( searchProjection ) {
+            // leggo solo gli attributi necessari alla riga di risultato ed al cursore
+            SearchProjection.applyMetadata( requestBuilder, indexName );
+        }
+
         // se query su partizione precedente ha restituito una LEK
         // recupero nome dell'attributo in base all'indice di ricerca ed imposto
         // l'ultimo elemento valutato nella query precedente come exclusiveStartKey della query che segue
@@ -158,13 +218,18 @@ public class NotificationMetadataEntityDaoDynamo extends AbstractDynamoKeyValueS
 
         log.trace( "START query execution index={}", index.indexName()  );
 
-        SdkIterable<Page<NotificationMetadataEntity>> notificationMetadataPages = index.query( queryEnhancedRequest );
+        // viene richiesta la sola prima pagina: il thread non resta in attesa della risposta
+        return DynamoQueryPages.firstPage( index.query( queryEnhancedRequest ) )
+                .thenApply( page -> toPageSearchTrunk( page, index.indexName(), queryEnhancedRequest, key1, key2 ) );
+    }
 
+    private PageSearchTrunk<NotificationMetadataEntity> toPageSearchTrunk(Page<NotificationMetadataEntity> page,
+                                                                          String indexName,
+                                                                          QueryEnhancedRequest queryEnhancedRequest,
+                                                                          Key key1,
+                                                                          Key key2) {
         log.trace( "END query execution" );
 
-        // recupero i risultati della query
-        Page<NotificationMetadataEntity> page = notificationMetadataPages.iterator().next();
-
         // imposto i risultati della query mappandoli da NotificationMetadata a NotificationSearchRow
 
         PageSearchTrunk<NotificationMetadataEntity> res = new PageSearchTrunk<>();
@@ -172,7 +237,7 @@ public class NotificationMetadataEntityDaoDynamo extends AbstractDynamoKeyValueS
         res.setLastEvaluatedKey(page.lastEvaluatedKey());
 
         log.info( "DONE search for one month index={} requiredSize={} exclusiveStartKey={} startKeyPartition/Range={} endKeyPartition/Range={} expression={} expressionValues={} readRows={} lastEvaluatedKey={}",
-                index.indexName(),
+                indexName,
                 queryEnhancedRequest.limit(),
                 queryEnhancedRequest.exclusiveStartKey(),
                 key1.partitionKeyValue() + "/" + key1.sortKeyValue(),
@@ -262,8 +327,9 @@ public class NotificationMetadataEntityDaoDynamo extends AbstractDynamoKeyValueS
                                           StringBuilder expressionBuilder) {
         if ( !CollectionUtils.isEmpty( groupList )) {
             // restituire anche le notifiche con gruppo <stringa_vuota>
+            // lavoro su una copia, la lista di input è condivisa tra le query (anche parallele) della stessa ricerca
+            groupList = new ArrayList<>( groupList );
             if (!groupList.contains("")) {
-                // aggiungo se non presente, dato che la lista è sempre la stessa nelle varie iterazioni della ricerca
                 groupList.add("");
             }
 
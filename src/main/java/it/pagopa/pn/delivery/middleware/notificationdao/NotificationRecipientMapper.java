@@ -0,0 +1,21 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationRecipient;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationRecipientEntity;
+import it.pagopa.pn.delivery.utils.MapStructConfig;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+
+/**
+ * Conversione dei destinatari tra il modello esposto e la tabella delle notifiche: nella tabella il destinatario
+ * è identificato dall'id opaco, salvato in recipientId
+ */
+@Mapper(config = MapStructConfig.class)
+public interface NotificationRecipientMapper {
+
+    @Mapping(target = "internalId", source = "recipientId")
+    NotificationRecipient toDto(NotificationRecipientEntity entity);
+
+    @Mapping(target = "recipientId", source = "taxId")
+    NotificationRecipientEntity toEntity(NotificationRecipient dto);
+}
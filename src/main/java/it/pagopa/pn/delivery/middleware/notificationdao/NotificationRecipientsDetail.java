@@ -0,0 +1,97 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.AddressDto;
+import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.AnalogDomicile;
+import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.BaseRecipientDto;
+import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.NotificationRecipientAddressesDto;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationDigitalAddress;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationPhysicalAddress;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationRecipient;
+import it.pagopa.pn.delivery.models.InternalNotification;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Completamento dei destinatari di una notifica con i dati in chiaro letti dal data vault.
+ * <p>
+ * Le due letture dal data vault (denominazioni per id opaco e indirizzi per IUN) sono indipendenti:
+ * chi legge il dettaglio può eseguirle in parallelo e applicarne qui i risultati.
+ */
+@Slf4j
+public final class NotificationRecipientsDetail {
+
+    private NotificationRecipientsDetail() {}
+
+    /**
+     * @return id opachi distinti dei destinatari, nell'ordine dei destinatari
+     */
+    public static List<String> internalIds(InternalNotification notification) {
+        return new ArrayList<>(notification.getRecipients().stream()
+                .map(NotificationRecipient::getInternalId)
+                .collect(LinkedHashSet::new, LinkedHashSet::add, LinkedHashSet::addAll));
+    }
+
+    /**
+     * Valorizza codice fiscale, denominazione e domicili dei destinatari.
+     * I recipientIds non vengono modificati: coincidono con gli internalId già impostati dalla lettura dell'entità.
+     * @param notification notifica letta senza dati in chiaro
+     * @param baseRecipients risposta del data vault per id opaco
+     * @param recipientsAddresses risposta del data vault per IUN, nell'ordine dei destinatari
+     */
+    public static void complete(InternalNotification notification, List<BaseRecipientDto> baseRecipients,
+                                List<NotificationRecipientAddressesDto> recipientsAddresses) {
+        int recipientIndex = 0;
+        for ( NotificationRecipient recipient : notification.getRecipients() ) {
+            String opaqueTaxId = recipient.getInternalId();
+
+            BaseRecipientDto baseRec = baseRecipients.stream()
+                    .filter( el -> Objects.equals( opaqueTaxId, el.getInternalId()) )
+                    .findAny()
+                    .orElse( null );
+
+            NotificationRecipientAddressesDto clearDataAddresses =
+                    recipientIndex < recipientsAddresses.size()
+                            ? recipientsAddresses.get( recipientIndex ) : null;
+
+            if ( baseRec != null) {
+                recipient.setTaxId(baseRec.getTaxId());
+            }
+            else {
+                log.error( "Unable to find any recipient info from data-vault for recipient={}", opaqueTaxId );
+            }
+
+            if ( clearDataAddresses != null ) {
+                recipient.setDenomination(clearDataAddresses.getDenomination());
+                recipient.setDigitalDomicile( toNotificationDigitalAddress( clearDataAddresses.getDigitalAddress() ));
+                recipient.setPhysicalAddress( toNotificationPhysicalAddress( clearDataAddresses.getPhysicalAddress() ) );
+            } else {
+                log.error( "Unable to find any recipient addresses from data-vault for recipient={}", opaqueTaxId );
+            }
+            recipientIndex += 1;
+        }
+    }
+
+    private static NotificationDigitalAddress toNotificationDigitalAddress( AddressDto addressDto ) {
+        return addressDto == null ? null : NotificationDigitalAddress.builder()
+                .type( NotificationDigitalAddress.TypeEnum.PEC )
+                .address( addressDto.getValue() )
+                .build();
+    }
+
+    private static NotificationPhysicalAddress toNotificationPhysicalAddress( AnalogDomicile analogDomicile ) {
+        return analogDomicile == null ? null : NotificationPhysicalAddress.builder()
+                .foreignState( analogDomicile.getState() )
+                .address( analogDomicile.getAddress() )
+                .addressDetails( analogDomicile.getAddressDetails() )
+                .at( analogDomicile.getAt() )
+                .zip( analogDomicile.getCap() )
+                .province( analogDomicile.getProvince() )
+                .municipality( analogDomicile.getMunicipality() )
+                .municipalityDetails(analogDomicile.getMunicipalityDetails() )
+                .build();
+    }
+}
@@ -0,0 +1,17 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import it.pagopa.pn.commons.abstractions.KeyValueStore;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationStatusCounterEntity;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface NotificationStatusCounterEntityDao extends KeyValueStore<Key, NotificationStatusCounterEntity> {
+
+    Optional<String> getCountedStatus(String markerKey);
+
+    boolean moveCounters(String markerKey, String previousStatus, String nextStatus, long markerTtl, List<String> decrementKeys, List<String> incrementKeys);
+
+    List<NotificationStatusCounterEntity> batchGetItems(List<Key> keys);
+}
@@ -0,0 +1,139 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import it.pagopa.pn.commons.abstractions.impl.AbstractDynamoKeyValueStore;
+import it.pagopa.pn.commons.exceptions.PnIdConflictException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationStatusCounterEntity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchGetItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.GetItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.PutItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.ReadBatch;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.*;
+
+import static it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationStatusCounterEntity.*;
+
+@Component
+@Slf4j
+public class NotificationStatusCounterEntityDaoDynamo extends AbstractDynamoKeyValueStore<NotificationStatusCounterEntity> implements NotificationStatusCounterEntityDao {
+
+    private static final int DYNAMODB_MAX_BATCH_GET_ITEMS = 100;
+
+    private final DynamoDbEnhancedClient dynamoDbEnhancedClient;
+    private final DynamoDbClient dynamoDbClient;
+    private final String tableName;
+
+    protected NotificationStatusCounterEntityDaoDynamo(DynamoDbEnhancedClient dynamoDbEnhancedClient,
+                                                       DynamoDbClient dynamoDbClient,
+                                                       PnDeliveryConfigs cfg) {
+        super(dynamoDbEnhancedClient.table(tableName( cfg ), TableSchema.fromClass(NotificationStatusCounterEntity.class)));
+        this.dynamoDbEnhancedClient = dynamoDbEnhancedClient;
+        this.dynamoDbClient = dynamoDbClient;
+        this.tableName = tableName( cfg );
+    }
+
+    private static String tableName( PnDeliveryConfigs cfg ) {
+        return cfg.getNotificationStatusCounterDao().getTableName();
+    }
+
+    @Override
+    public void putIfAbsent(NotificationStatusCounterEntity notificationStatusCounterEntity) throws PnIdConflictException {
+        PutItemEnhancedRequest<NotificationStatusCounterEntity> request = PutItemEnhancedRequest.
+                builder(NotificationStatusCounterEntity.class)
+                .item( notificationStatusCounterEntity )
+                .build();
+        table.putItem( request );
+    }
+
+    @Override
+    public Optional<String> getCountedStatus(String markerKey) {
+        NotificationStatusCounterEntity marker = table.getItem( GetItemEnhancedRequest.builder()
+                .key( Key.builder().partitionValue( markerKey ).build() )
+                .consistentRead( true )
+                .build() );
+        return Optional.ofNullable( marker ).map( NotificationStatusCounterEntity::getCountedStatus );
+    }
+
+    @Override
+    public boolean moveCounters(String markerKey, String previousStatus, String nextStatus, long markerTtl, List<String> decrementKeys, List<String> incrementKeys) {
+        log.debug( "move counters markerKey={} previousStatus={} nextStatus={} decrement={} increment={}",
+                markerKey, previousStatus, nextStatus, decrementKeys.size(), incrementKeys.size() );
+
+        // il client enhanced non supporta le espressioni ADD, la transazione usa il client di basso livello
+        List<TransactWriteItem> transactItems = new ArrayList<>();
+        transactItems.add( TransactWriteItem.builder().update( markerUpdate( markerKey, previousStatus, nextStatus, markerTtl ) ).build() );
+        decrementKeys.forEach( key -> transactItems.add( TransactWriteItem.builder().update( counterUpdate( key, -1 ) ).build() ) );
+        incrementKeys.forEach( key -> transactItems.add( TransactWriteItem.builder().update( counterUpdate( key, 1 ) ).build() ) );
+
+        try {
+            dynamoDbClient.transactWriteItems( TransactWriteItemsRequest.builder()
+                    .transactItems( transactItems )
+                    .build() );
+            return true;
+        } catch (TransactionCanceledException ex) {
+            // il marcatore è cambiato dopo la lettura o c'è un aggiornamento concorrente: nessun contatore è stato modificato
+            log.warn( "counters transaction canceled markerKey={} reasons={}", markerKey, ex.cancellationReasons() );
+            return false;
+        }
+    }
+
+    private Update markerUpdate(String markerKey, String previousStatus, String nextStatus, long markerTtl) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put( ":next", AttributeValue.builder().s( nextStatus ).build() );
+        values.put( ":ttl", AttributeValue.builder().n( Long.toString( markerTtl ) ).build() );
+        String condition = "attribute_not_exists(#status)";
+        if ( previousStatus != null ) {
+            values.put( ":previous", AttributeValue.builder().s( previousStatus ).build() );
+            condition = "#status = :previous";
+        }
+        return Update.builder()
+                .tableName( tableName )
+                .key( Map.of( FIELD_COUNTER_KEY, AttributeValue.builder().s( markerKey ).build() ) )
+                .updateExpression( "SET #status = :next, #ttl = :ttl" )
+                .conditionExpression( condition )
+                .expressionAttributeNames( Map.of( "#status", FIELD_COUNTED_STATUS, "#ttl", FIELD_TTL ) )
+                .expressionAttributeValues( values )
+                .build();
+    }
+
+    private Update counterUpdate(String counterKey, int delta) {
+        // count è una parola riservata di DynamoDB
+        return Update.builder()
+                .tableName( tableName )
+                .key( Map.of( FIELD_COUNTER_KEY, AttributeValue.builder().s( counterKey ).build() ) )
+                .updateExpression( "ADD #count :delta" )
+                .expressionAttributeNames( Map.of( "#count", FIELD_COUNT ) )
+                .expressionAttributeValues( Map.of( ":delta", AttributeValue.builder().n( Integer.toString( delta ) ).build() ) )
+                .build();
+    }
+
+    /**
+     * Legge i contatori con BatchGetItem, in blocchi di 100 chiavi: i 12 mesi per tutti gli stati richiedono due richieste
+     */
+    @Override
+    public List<NotificationStatusCounterEntity> batchGetItems(List<Key> keys) {
+        log.debug( "batch get counters of {} elements", keys.size() );
+        List<NotificationStatusCounterEntity> result = new ArrayList<>();
+        for (int start = 0; start < keys.size(); start = start + DYNAMODB_MAX_BATCH_GET_ITEMS) {
+            int end = Math.min( start + DYNAMODB_MAX_BATCH_GET_ITEMS, keys.size() );
+
+            ReadBatch.Builder<NotificationStatusCounterEntity> builder = ReadBatch.builder( NotificationStatusCounterEntity.class )
+                    .mappedTableResource( table );
+            keys.subList( start, end ).forEach( builder::addGetItem );
+
+            dynamoDbEnhancedClient.batchGetItem( BatchGetItemEnhancedRequest.builder()
+                            .readBatches( builder.build() )
+                            .build() )
+                    .resultsForTable( table )
+                    .forEach( result::add );
+        }
+        return result;
+    }
+}
@@ -0,0 +1,34 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import it.pagopa.pn.commons.abstractions.KeyValueStore;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationSubjectTokenEntity;
+import it.pagopa.pn.delivery.models.PageSearchTrunk;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+public interface NotificationSubjectIndexEntityDao extends KeyValueStore<Key, NotificationSubjectTokenEntity> {
+
+    /**
+     * Scrive le occorrenze dei termini
+     * @param items occorrenze da scrivere
+     * @return occorrenze non scritte
+     */
+    List<NotificationSubjectTokenEntity> batchPutItems(List<NotificationSubjectTokenEntity> items);
+
+    /**
+     * Legge una pagina delle occorrenze di un termine nelle date di invio indicate, dalla più recente
+     * @param partitionKey indice e partizione di ricerca
+     * @param term termine
+     * @param startDate data di invio minima (inclusa)
+     * @param endDate data di invio massima (inclusa)
+     * @param exclusiveStartKey chiave da cui riprendere la lettura (esclusa), null per partire dalla più recente
+     * @param size numero massimo di occorrenze da leggere
+     * @return occorrenze lette e chiave per la pagina successiva, null se non ce ne sono altre
+     */
+    PageSearchTrunk<NotificationSubjectTokenEntity> searchByTerm(String partitionKey, String term, Instant startDate, Instant endDate,
+                                                                 Map<String, AttributeValue> exclusiveStartKey, int size);
+}
@@ -0,0 +1,94 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import it.pagopa.pn.commons.abstractions.impl.AbstractDynamoKeyValueStore;
+import it.pagopa.pn.commons.exceptions.PnIdConflictException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationSubjectTokenEntity;
+import it.pagopa.pn.delivery.models.PageSearchTrunk;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.*;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Component
+@Slf4j
+public class NotificationSubjectIndexEntityDaoDynamo extends AbstractDynamoKeyValueStore<NotificationSubjectTokenEntity> implements NotificationSubjectIndexEntityDao {
+
+    private static final int DYNAMODB_MAX_BATCH_WRITE_ITEMS = 25;
+    // maggiore di qualsiasi iun_recipientId: include le occorrenze inviate esattamente alla data massima
+    private static final String TERM_KEY_UPPER_BOUND = "\uffff";
+
+    private final DynamoDbEnhancedClient dynamoDbEnhancedClient;
+
+    protected NotificationSubjectIndexEntityDaoDynamo(DynamoDbEnhancedClient dynamoDbEnhancedClient, PnDeliveryConfigs cfg) {
+        super(dynamoDbEnhancedClient.table(tableName( cfg ), TableSchema.fromClass(NotificationSubjectTokenEntity.class)));
+        this.dynamoDbEnhancedClient = dynamoDbEnhancedClient;
+    }
+
+    private static String tableName( PnDeliveryConfigs cfg ) {
+        return cfg.getNotificationSubjectIndexDao().getTableName();
+    }
+
+    @Override
+    public void putIfAbsent(NotificationSubjectTokenEntity notificationSubjectTokenEntity) throws PnIdConflictException {
+        PutItemEnhancedRequest<NotificationSubjectTokenEntity> request = PutItemEnhancedRequest.
+                builder(NotificationSubjectTokenEntity.class)
+                .item( notificationSubjectTokenEntity )
+                .build();
+        table.putItem( request );
+    }
+
+    @Override
+    public List<NotificationSubjectTokenEntity> batchPutItems(List<NotificationSubjectTokenEntity> items) {
+        log.debug("batch put subject terms of {} elements", items.size());
+        List<NotificationSubjectTokenEntity> unprocessed = new ArrayList<>();
+        for (int start = 0; start < items.size(); start = start + DYNAMODB_MAX_BATCH_WRITE_ITEMS) {
+            int end = Math.min(start + DYNAMODB_MAX_BATCH_WRITE_ITEMS, items.size());
+            log.trace("chunk start={} end={}", start, end);
+
+            WriteBatch.Builder<NotificationSubjectTokenEntity> builder = WriteBatch.builder(NotificationSubjectTokenEntity.class)
+                    .mappedTableResource(table);
+            items.subList(start, end).forEach(entity -> builder.addPutItem(req -> req.item(entity)));
+
+            BatchWriteResult writeResult = dynamoDbEnhancedClient.batchWriteItem(BatchWriteItemEnhancedRequest.builder()
+                    .addWriteBatch(builder.build())
+                    .build());
+            unprocessed.addAll(writeResult.unprocessedPutItemsForTable(table));
+        }
+        if (!unprocessed.isEmpty()) {
+            log.warn("batchPutItems has {} unprocessed subject terms", unprocessed.size());
+        }
+        return unprocessed;
+    }
+
+    @Override
+    public PageSearchTrunk<NotificationSubjectTokenEntity> searchByTerm(String partitionKey, String term, Instant startDate, Instant endDate,
+                                                                        Map<String, AttributeValue> exclusiveStartKey, int size) {
+        // la data di invio segue il termine nella chiave di ordinamento: il range di date è una condizione sulla chiave
+        Key.Builder builder = Key.builder().partitionValue( partitionKey );
+        Key fromKey = builder.sortValue( term + NotificationSubjectTokenEntity.KEY_SEPARATOR + startDate ).build();
+        Key toKey = builder.sortValue( term + NotificationSubjectTokenEntity.KEY_SEPARATOR + endDate
+                + NotificationSubjectTokenEntity.KEY_SEPARATOR + TERM_KEY_UPPER_BOUND ).build();
+
+        QueryEnhancedRequest.Builder requestBuilder = QueryEnhancedRequest.builder()
+                .queryConditional( QueryConditional.sortBetween( fromKey, toKey ) )
+                .limit( size )
+                .scanIndexForward( false );
+        if ( exclusiveStartKey != null )
+            requestBuilder.exclusiveStartKey( exclusiveStartKey );
+
+        // viene letta la sola prima pagina, il chiamante prosegue con la lastEvaluatedKey solo se gli servono altre occorrenze
+        Page<NotificationSubjectTokenEntity> page = table.query( requestBuilder.build() ).iterator().next();
+        log.debug( "read subject terms partitionKey={} term={} exclusiveStartKey={} items={} lastEvaluatedKey={}",
+                partitionKey, term, exclusiveStartKey, page.items().size(), page.lastEvaluatedKey() );
+        return new PageSearchTrunk<>( page.items(), page.lastEvaluatedKey() );
+    }
+}
@@ -0,0 +1,15 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import it.pagopa.pn.commons.abstractions.KeyValueStore;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationViewedEntity;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+
+public interface NotificationViewedEntityDao extends KeyValueStore<Key, NotificationViewedEntity> {
+
+    /**
+     * Scrive il marcatore della visualizzazione se non esiste già
+     * @param notificationViewedEntity marcatore
+     * @return true se il marcatore è stato scritto, false se la visualizzazione era già registrata
+     */
+    boolean putIfFirstView(NotificationViewedEntity notificationViewedEntity);
+}
@@ -0,0 +1,61 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import it.pagopa.pn.commons.abstractions.impl.AbstractDynamoKeyValueStore;
+import it.pagopa.pn.commons.exceptions.PnIdConflictException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationViewedEntity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.PutItemEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+
+@Component
+@Slf4j
+public class NotificationViewedEntityDaoDynamo extends AbstractDynamoKeyValueStore<NotificationViewedEntity> implements NotificationViewedEntityDao {
+
+    protected NotificationViewedEntityDaoDynamo(DynamoDbEnhancedClient dynamoDbEnhancedClient, PnDeliveryConfigs cfg) {
+        super(dynamoDbEnhancedClient.table(tableName( cfg ), TableSchema.fromClass(NotificationViewedEntity.class)));
+    }
+
+    private static String tableName( PnDeliveryConfigs cfg ) {
+        return cfg.getNotificationViewedDao().getTableName();
+    }
+
+    @Override
+    public void putIfAbsent(NotificationViewedEntity notificationViewedEntity) throws PnIdConflictException {
+        PutItemEnhancedRequest<NotificationViewedEntity> request = PutItemEnhancedRequest.
+                builder(NotificationViewedEntity.class)
+                .item( notificationViewedEntity )
+                .build();
+        table.putItem( request );
+    }
+
+    @Override
+    public boolean putIfFirstView(NotificationViewedEntity notificationViewedEntity) {
+        // il ttl viene applicato da DynamoDB in ritardo: un marcatore scaduto ma non ancora eliminato
+        // vale come assente
+        Expression conditionExpressionPut = Expression.builder()
+                .expression( "attribute_not_exists(" + NotificationViewedEntity.FIELD_VIEW_KEY + ") OR #ttl < :now" )
+                .putExpressionName( "#ttl", NotificationViewedEntity.FIELD_TTL )
+                .putExpressionValue( ":now", AttributeValue.builder()
+                        .n( Long.toString( notificationViewedEntity.getViewedAt().getEpochSecond() ) )
+                        .build() )
+                .build();
+        PutItemEnhancedRequest<NotificationViewedEntity> request = PutItemEnhancedRequest.
+                builder(NotificationViewedEntity.class)
+                .item( notificationViewedEntity )
+                .conditionExpression( conditionExpressionPut )
+                .build();
+        try {
+            table.putItem( request );
+            return true;
+        } catch (ConditionalCheckFailedException ex) {
+            log.debug( "notification view already registered viewKey={}", notificationViewedEntity.getViewKey() );
+            return false;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import it.pagopa.pn.commons.exceptions.PnInternalException;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationDelegationMetadataEntity;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.svc.search.IndexNameAndPartitions;
+import software.amazon.awssdk.enhanced.dynamodb.NestedAttributeName;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static it.pagopa.pn.delivery.exception.PnDeliveryExceptionCodes.ERROR_CODE_DELIVERY_UNSUPPORTED_INDEX_NAME;
+
+/**
+ * Profili di proiezione delle query di ricerca.
+ * <p>
+ * Per ogni indice vengono letti solo gli attributi usati da {@link EntityToDtoNotificationMetadataMapper}
+ * per comporre la riga di risultato, quelli usati per costruire il cursore della pagina successiva e, per le
+ * righe delle deleghe, quelli usati nel controllo delle deleghe. Della mappa tableRow vengono letti solo i campi
+ * mostrati in lista. Le righe lette con un profilo sono quindi parziali e non vanno usate per riscrivere l'item.
+ */
+final class SearchProjection {
+
+    private static final List<NestedAttributeName> TABLE_ROW_FIELDS = List.of(
+            NestedAttributeName.create(NotificationMetadataEntity.FIELD_TABLE_ROW, EntityToDtoNotificationMetadataMapper.TABLE_ROW_ACCEPTED_AT),
+            NestedAttributeName.create(NotificationMetadataEntity.FIELD_TABLE_ROW, EntityToDtoNotificationMetadataMapper.TABLE_ROW_SENDER_DENOMINATION),
+            NestedAttributeName.create(NotificationMetadataEntity.FIELD_TABLE_ROW, EntityToDtoNotificationMetadataMapper.TABLE_ROW_SUBJECT),
+            NestedAttributeName.create(NotificationMetadataEntity.FIELD_TABLE_ROW, EntityToDtoNotificationMetadataMapper.TABLE_ROW_PA_PROTOCOL_NUMBER)
+    );
+
+    private static final Map<String, List<NestedAttributeName>> METADATA_PROFILES = Map.of(
+            NotificationMetadataEntity.INDEX_SENDER_ID, metadataProfile(NotificationMetadataEntity.FIELD_SENDER_ID_CREATION_MONTH),
+            NotificationMetadataEntity.INDEX_RECIPIENT_ID, metadataProfile(NotificationMetadataEntity.FIELD_RECIPIENT_ID_CREATION_MONTH),
+            NotificationMetadataEntity.INDEX_SENDER_ID_RECIPIENT_ID, metadataProfile(NotificationMetadataEntity.FIELD_SENDER_ID_RECIPIENT_ID)
+    );
+
+    private static final Map<IndexNameAndPartitions.SearchIndexEnum, List<NestedAttributeName>> DELEGATION_PROFILES = Map.of(
+            IndexNameAndPartitions.SearchIndexEnum.INDEX_BY_DELEGATE, delegationProfile(NotificationDelegationMetadataEntity.FIELD_DELEGATE_ID_CREATION_MONTH),
+            IndexNameAndPartitions.SearchIndexEnum.INDEX_BY_DELEGATE_GROUP, delegationProfile(NotificationDelegationMetadataEntity.FIELD_DELEGATE_ID_GROUP_ID_CREATION_MONTH)
+    );
+
+    private SearchProjection() {}
+
+    /**
+     * Imposta sulla query la proiezione delle righe di ricerca delle notifiche
+     * @param requestBuilder query da proiettare
+     * @param indexName indice interrogato
+     */
+    static void applyMetadata(QueryEnhancedRequest.Builder requestBuilder, String indexName) {
+        requestBuilder.addNestedAttributesToProject(requireProfile(METADATA_PROFILES.get(indexName), indexName));
+    }
+
+    /**
+     * Imposta sulla query la proiezione delle righe di ricerca delle notifiche delegate
+     * @param requestBuilder query da proiettare
+     * @param indexName indice interrogato
+     */
+    static void applyDelegation(QueryEnhancedRequest.Builder requestBuilder, IndexNameAndPartitions.SearchIndexEnum indexName) {
+        requestBuilder.addNestedAttributesToProject(requireProfile(DELEGATION_PROFILES.get(indexName), indexName));
+    }
+
+    private static List<NestedAttributeName> requireProfile(List<NestedAttributeName> profile, Object indexName) {
+        if (profile == null) {
+            String msg = String.format("Unable to retrieve search projection by indexName=%s", indexName);
+            throw new PnInternalException(msg, ERROR_CODE_DELIVERY_UNSUPPORTED_INDEX_NAME);
+        }
+        return profile;
+    }
+
+    private static List<NestedAttributeName> metadataProfile(String indexPartitionKey) {
+        return profile(List.of(
+                NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID,
+                NotificationMetadataEntity.FIELD_SENT_AT,
+                indexPartitionKey,
+                NotificationMetadataEntity.FIELD_RECIPIENT_IDS,
+                NotificationMetadataEntity.FIELD_NOTIFICATION_GROUP,
+                NotificationMetadataEntity.FIELD_NOTIFICATION_STATUS
+        ));
+    }
+
+    private static List<NestedAttributeName> delegationProfile(String indexPartitionKey) {
+        return profile(List.of(
+                NotificationDelegationMetadataEntity.FIELD_IUN_RECIPIENT_ID_DELEGATE_ID_GROUP_ID,
+                NotificationDelegationMetadataEntity.FIELD_SENT_AT,
+                indexPartitionKey,
+                NotificationDelegationMetadataEntity.FIELD_RECIPIENT_IDS,
+                NotificationDelegationMetadataEntity.FIELD_NOTIFICATION_STATUS,
+                NotificationDelegationMetadataEntity.FIELD_MANDATE_ID,
+                NotificationDelegationMetadataEntity.FIELD_SENDER_ID,
+                NotificationDelegationMetadataEntity.FIELD_RECIPIENT_ID,
+                NotificationDelegationMetadataEntity.FIELD_MANDATE_VALID_FROM,
+                NotificationDelegationMetadataEntity.FIELD_MANDATE_VALID_TO,
+                NotificationDelegationMetadataEntity.FIELD_MANDATE_VISIBILITY_IDS,
+                NotificationDelegationMetadataEntity.FIELD_MANDATE_VERSION
+        ));
+    }
+
+    private static List<NestedAttributeName> profile(List<String> attributes) {
+        List<NestedAttributeName> profile = new ArrayList<>();
+        attributes.forEach(attribute -> profile.add(NestedAttributeName.create(attribute)));
+        profile.addAll(TABLE_ROW_FIELDS);
+        return List.copyOf(profile);
+    }
+}
@@ -0,0 +1,85 @@
+package it.pagopa.pn.delivery.middleware.notificationdao.entities;
+
+import lombok.*;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbAttribute;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbIgnore;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortKey;
+
+/**
+ * Riepilogo dei mesi in cui una partizione di ricerca (mittente, destinatario, delegato) contiene notifiche.
+ * Un elemento per anno; ogni mese è un attributo distinto, così la marcatura di un mese è un update
+ * che non richiede di leggere l'elemento e non sovrascrive gli altri mesi.
+ */
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+@DynamoDbBean
+public class NotificationActivityEntity {
+
+    public static final String FIELD_ACTIVITY_KEY = "activityKey";
+    public static final String FIELD_YEAR = "year";
+    public static final String FIELD_MONTH_PREFIX = "m";
+
+    @Getter(onMethod=@__({@DynamoDbPartitionKey, @DynamoDbAttribute(FIELD_ACTIVITY_KEY)})) private String activityKey;
+    @Getter(onMethod=@__({@DynamoDbSortKey, @DynamoDbAttribute(FIELD_YEAR)})) private Integer year;
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_MONTH_PREFIX + "01")})) private Boolean m01;
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_MONTH_PREFIX + "02")})) private Boolean m02;
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_MONTH_PREFIX + "03")})) private Boolean m03;
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_MONTH_PREFIX + "04")})) private Boolean m04;
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_MONTH_PREFIX + "05")})) private Boolean m05;
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_MONTH_PREFIX + "06")})) private Boolean m06;
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_MONTH_PREFIX + "07")})) private Boolean m07;
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_MONTH_PREFIX + "08")})) private Boolean m08;
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_MONTH_PREFIX + "09")})) private Boolean m09;
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_MONTH_PREFIX + "10")})) private Boolean m10;
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_MONTH_PREFIX + "11")})) private Boolean m11;
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_MONTH_PREFIX + "12")})) private Boolean m12;
+
+    /**
+     * Elemento con il solo mese indicato valorizzato, da scrivere ignorando gli attributi nulli
+     * @param activityKey chiave della partizione
+     * @param year anno
+     * @param month mese (1-12)
+     * @return elemento da scrivere
+     */
+    public static NotificationActivityEntity ofMonth(String activityKey, int year, int month) {
+        NotificationActivityEntity entity = new NotificationActivityEntity();
+        entity.setActivityKey( activityKey );
+        entity.setYear( year );
+        switch ( month ) {
+            case 1 -> entity.setM01( true );
+            case 2 -> entity.setM02( true );
+            case 3 -> entity.setM03( true );
+            case 4 -> entity.setM04( true );
+            case 5 -> entity.setM05( true );
+            case 6 -> entity.setM06( true );
+            case 7 -> entity.setM07( true );
+            case 8 -> entity.setM08( true );
+            case 9 -> entity.setM09( true );
+            case 10 -> entity.setM10( true );
+            case 11 -> entity.setM11( true );
+            case 12 -> entity.setM12( true );
+            default -> throw new IllegalArgumentException( "Invalid month " + month );
+        }
+        return entity;
+    }
+
+    /**
+     * @return bitmap dei mesi con notifiche, il bit 0 corrisponde a gennaio
+     */
+    @DynamoDbIgnore
+    public int getMonthBitmap() {
+        Boolean[] months = { m01, m02, m03, m04, m05, m06, m07, m08, m09, m10, m11, m12 };
+        int bitmap = 0;
+        for (int i = 0; i < months.length; i++) {
+            if ( Boolean.TRUE.equals( months[i] ) )
+                bitmap |= 1 << i;
+        }
+        return bitmap;
+    }
+}
@@ -29,6 +29,16 @@ public class NotificationDelegationMetadataEntity {
     public static final String FIELD_RECIPIENT_ID_CREATION_MONTH = "recipientId_creationMonth";
     public static final String FIELD_SENDER_ID_RECIPIENT_ID = "senderId_recipientId";
     public static final String FIELD_TABLE_ROW = "tableRow";
+    public static final String FIELD_MANDATE_VALID_FROM = "mandateValidFrom";
+    public static final String FIELD_MANDATE_VALID_TO = "mandateValidTo";
+    public static final String FIELD_MANDATE_VISIBILITY_IDS = "mandateVisibilityIds";
+    public static final String FIELD_MANDATE_VERSION = "mandateVersion";
+
+    /**
+     * Versione degli attributi della delega copiati sulla riga: le righe senza versione o con versione precedente
+     * vanno verificate sul servizio delle deleghe
+     */
+    public static final int MANDATE_ATTRIBUTES_VERSION = 1;
 
     public static final String INDEX_DELEGATE_ID = "delegateId";
     public static final String INDEX_DELEGATE_ID_GROUP_ID = "delegateId_groupId";
@@ -105,4 +115,24 @@ public class NotificationDelegationMetadataEntity {
     }))
     private Map<String, String> tableRow;
 
+    @Getter(onMethod = @__({
+            @DynamoDbAttribute(value = FIELD_MANDATE_VALID_FROM)
+    }))
+    private Instant mandateValidFrom;
+
+    @Getter(onMethod = @__({
+            @DynamoDbAttribute(value = FIELD_MANDATE_VALID_TO)
+    }))
+    private Instant mandateValidTo;
+
+    @Getter(onMethod = @__({
+            @DynamoDbAttribute(value = FIELD_MANDATE_VISIBILITY_IDS)
+    }))
+    private List<String> mandateVisibilityIds;
+
+    @Getter(onMethod = @__({
+            @DynamoDbAttribute(value = FIELD_MANDATE_VERSION)
+    }))
+    private Integer mandateVersion;
+
 }
@@ -0,0 +1,36 @@
+package it.pagopa.pn.delivery.middleware.notificationdao.entities;
+
+import lombok.*;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbAttribute;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+
+/**
+ * Elemento della tabella dei contatori di stato. La tabella contiene due tipi di elemento:
+ * <ul>
+ *     <li>i contatori, con chiave partizione mensile di mittente o destinatario e stato
+ *     (es. senderId##202303##ACCEPTED), valorizzano solo {@link #count}</li>
+ *     <li>i marcatori, uno per notifica (IUN##iun), valorizzano {@link #countedStatus}:
+ *     lo stato già conteggiato, che rende idempotente l'aggiornamento dei contatori, e {@link #ttl},
+ *     rinnovato ad ogni cambio di stato, alla cui scadenza DynamoDB elimina il marcatore</li>
+ * </ul>
+ */
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+@DynamoDbBean
+public class NotificationStatusCounterEntity {
+
+    public static final String FIELD_COUNTER_KEY = "counterKey";
+    public static final String FIELD_COUNT = "count";
+    public static final String FIELD_COUNTED_STATUS = "countedStatus";
+    public static final String FIELD_TTL = "ttl";
+
+    @Getter(onMethod=@__({@DynamoDbPartitionKey, @DynamoDbAttribute(FIELD_COUNTER_KEY)})) private String counterKey;
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_COUNT)})) private Long count;
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_COUNTED_STATUS)})) private String countedStatus;
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_TTL)})) private Long ttl;
+}
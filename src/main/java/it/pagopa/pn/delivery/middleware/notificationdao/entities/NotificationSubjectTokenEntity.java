@@ -0,0 +1,65 @@
+package it.pagopa.pn.delivery.middleware.notificationdao.entities;
+
+import lombok.*;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbAttribute;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortKey;
+
+import java.time.Instant;
+
+/**
+ * Occorrenza di un termine dell'oggetto in una partizione mensile di ricerca.
+ * La chiave di partizione è {@code <indice>##<partizione di ricerca>}, la chiave di ordinamento
+ * {@code <termine>##<sentAt>##<iun_recipientId>}: i termini hanno tutti la stessa lunghezza, quindi una query
+ * between su {@code <termine>##<data minima>} e {@code <termine>##<data massima>} restituisce le righe di metadati
+ * il cui oggetto contiene il termine nel range di date richiesto, già ordinate per data di invio.
+ */
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+@DynamoDbBean
+public class NotificationSubjectTokenEntity {
+
+    public static final String FIELD_PARTITION_KEY = "partitionKey";
+    public static final String FIELD_TERM_KEY = "termKey";
+    public static final String FIELD_IUN_RECIPIENT_ID = "iun_recipientId";
+    public static final String FIELD_SENT_AT = "sentAt";
+    public static final String KEY_SEPARATOR = "##";
+
+    @Getter(onMethod=@__({@DynamoDbPartitionKey, @DynamoDbAttribute(FIELD_PARTITION_KEY)})) private String partitionKey;
+    @Getter(onMethod=@__({@DynamoDbSortKey, @DynamoDbAttribute(FIELD_TERM_KEY)})) private String termKey;
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_IUN_RECIPIENT_ID)})) private String iunRecipientId;
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_SENT_AT)})) private Instant sentAt;
+
+    /**
+     * Occorrenza di un termine per una riga di metadati
+     * @param partitionKey indice e partizione di ricerca
+     * @param term termine normalizzato
+     * @param sentAt data di invio della notifica
+     * @param iunRecipientId chiave della riga di metadati
+     * @return elemento da scrivere
+     */
+    public static NotificationSubjectTokenEntity of(String partitionKey, String term, Instant sentAt, String iunRecipientId) {
+        return NotificationSubjectTokenEntity.builder()
+                .partitionKey( partitionKey )
+                .termKey( termKey( term, sentAt, iunRecipientId ) )
+                .iunRecipientId( iunRecipientId )
+                .sentAt( sentAt )
+                .build();
+    }
+
+    /**
+     * Chiave di ordinamento dell'occorrenza di un termine
+     * @param term termine normalizzato
+     * @param sentAt data di invio della notifica
+     * @param iunRecipientId chiave della riga di metadati
+     * @return chiave di ordinamento
+     */
+    public static String termKey(String term, Instant sentAt, String iunRecipientId) {
+        return term + KEY_SEPARATOR + sentAt + KEY_SEPARATOR + iunRecipientId;
+    }
+}
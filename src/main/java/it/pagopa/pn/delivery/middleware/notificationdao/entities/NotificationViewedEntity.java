@@ -0,0 +1,37 @@
+package it.pagopa.pn.delivery.middleware.notificationdao.entities;
+
+import lombok.*;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbAttribute;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+
+import java.time.Instant;
+
+/**
+ * Marcatore della prima visualizzazione di una notifica da parte di un destinatario, direttamente o tramite
+ * un delegato. La chiave è iun##indice destinatario##delegato; l'elemento viene scritto solo se assente ed
+ * eliminato da DynamoDB alla scadenza di {@link #ttl}.
+ */
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+@DynamoDbBean
+public class NotificationViewedEntity {
+
+    public static final String FIELD_VIEW_KEY = "viewKey";
+    public static final String FIELD_IUN = "iun";
+    public static final String FIELD_RECIPIENT_INDEX = "recipientIndex";
+    public static final String FIELD_DELEGATE_ID = "delegateId";
+    public static final String FIELD_VIEWED_AT = "viewedAt";
+    public static final String FIELD_TTL = "ttl";
+
+    @Getter(onMethod=@__({@DynamoDbPartitionKey, @DynamoDbAttribute(FIELD_VIEW_KEY)})) private String viewKey;
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_IUN)})) private String iun;
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_RECIPIENT_INDEX)})) private Integer recipientIndex;
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_DELEGATE_ID)})) private String delegateId;
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_VIEWED_AT)})) private Instant viewedAt;
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_TTL)})) private Long ttl;
+}
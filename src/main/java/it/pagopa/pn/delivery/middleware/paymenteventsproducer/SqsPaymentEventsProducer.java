@@ -1,16 +1,49 @@
 package it.pagopa.pn.delivery.middleware.paymenteventsproducer;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import it.pagopa.pn.api.dto.events.AbstractSqsFifoMomProducer;
 import it.pagopa.pn.api.dto.events.PnDeliveryPaymentEvent;
 import it.pagopa.pn.delivery.PnDeliveryConfigs;
 import it.pagopa.pn.delivery.middleware.PaymentEventsProducer;
+import it.pagopa.pn.delivery.middleware.batchproducer.SqsMessageBatcher;
 import org.springframework.stereotype.Component;
 import software.amazon.awssdk.services.sqs.SqsClient;
 
+import javax.annotation.PreDestroy;
+import java.util.List;
+
 @Component
 public class SqsPaymentEventsProducer extends AbstractSqsFifoMomProducer<PnDeliveryPaymentEvent> implements PaymentEventsProducer {
-    public SqsPaymentEventsProducer(SqsClient sqsClient, ObjectMapper objectMapper, PnDeliveryConfigs cfg) {
+
+    // la risposta alla PA conferma la presa in carico dei pagamenti, quindi l'invio attende la conferma dei lotti
+    private final SqsMessageBatcher<PnDeliveryPaymentEvent> batcher;
+
+    public SqsPaymentEventsProducer(SqsClient sqsClient, ObjectMapper objectMapper, PnDeliveryConfigs cfg, MeterRegistry meterRegistry) {
         super(sqsClient, cfg.getTopics().getPaymentEvents(), objectMapper, PnDeliveryPaymentEvent.class);
+        this.batcher = SqsMessageBatcher.isEnabled( cfg ) ? new SqsMessageBatcher<>( sqsClient, cfg.getTopics().getPaymentEvents(), objectMapper,
+                PnDeliveryPaymentEvent::getMessageGroupId, PnDeliveryPaymentEvent::getMessageDeduplicationId, cfg, meterRegistry ) : null;
+    }
+
+    @Override
+    public void push(PnDeliveryPaymentEvent msg) {
+        if ( batcher != null )
+            batcher.send( List.of( msg ) );
+        else
+            super.push( msg );
+    }
+
+    @Override
+    public void push(List<PnDeliveryPaymentEvent> msges) {
+        if ( batcher != null )
+            batcher.send( msges );
+        else
+            super.push( msges );
+    }
+
+    @PreDestroy
+    public void closeBatcher() {
+        if ( batcher != null )
+            batcher.close();
     }
 }
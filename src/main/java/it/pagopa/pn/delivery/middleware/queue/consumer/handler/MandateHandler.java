@@ -3,6 +3,7 @@ package it.pagopa.pn.delivery.middleware.queue.consumer.handler;
 import it.pagopa.pn.api.dto.events.EventType;
 import it.pagopa.pn.api.dto.events.PnMandateEvent;
 import it.pagopa.pn.delivery.middleware.queue.consumer.handler.utils.HandleEventUtils;
+import it.pagopa.pn.delivery.pnclient.mandate.PnMandateClientImpl;
 import it.pagopa.pn.delivery.svc.NotificationDelegatedService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
@@ -16,9 +17,11 @@ import java.util.function.Consumer;
 public class MandateHandler {
 
     private final NotificationDelegatedService notificationDelegatedService;
+    private final PnMandateClientImpl mandateClient;
 
-    public MandateHandler(NotificationDelegatedService notificationDelegatedService) {
+    public MandateHandler(NotificationDelegatedService notificationDelegatedService, PnMandateClientImpl mandateClient) {
         this.notificationDelegatedService = notificationDelegatedService;
+        this.mandateClient = mandateClient;
     }
 
     @Bean
@@ -26,6 +29,7 @@ public class MandateHandler {
         return message -> {
             try {
                 log.debug("pnDeliveryAcceptMandateConsumer - message: {}", message);
+                invalidateMandates(message.getPayload());
                 notificationDelegatedService.handleAcceptedMandate(message.getPayload(), EventType.MANDATE_ACCEPTED);
             } catch (Exception e) {
                 HandleEventUtils.handleException(message.getHeaders(), e);
@@ -39,6 +43,7 @@ public class MandateHandler {
         return message ->  {
             try {
                 log.debug("pnDeliveryRejectedMandateConsumer - message: {}", message);
+                invalidateMandates(message.getPayload());
                 notificationDelegatedService.deleteNotificationDelegatedByMandateId(message.getPayload().getMandateId(), EventType.MANDATE_REJECTED);
             } catch (Exception e) {
                 HandleEventUtils.handleException(message.getHeaders(), e);
@@ -52,6 +57,7 @@ public class MandateHandler {
         return message -> {
             try {
                 log.debug("pnDeliveryRevokedMandateConsumer - message: {}", message);
+                invalidateMandates(message.getPayload());
                 notificationDelegatedService.deleteNotificationDelegatedByMandateId(message.getPayload().getMandateId(), EventType.MANDATE_REVOKED);
             } catch (Exception e) {
                 HandleEventUtils.handleException(message.getHeaders(), e);
@@ -65,6 +71,7 @@ public class MandateHandler {
         return message -> {
             try {
                 log.debug("pnDeliveryExpiredMandateConsumer - message: {}", message);
+                invalidateMandates(message.getPayload());
                 notificationDelegatedService.deleteNotificationDelegatedByMandateId(message.getPayload().getMandateId(), EventType.MANDATE_EXPIRED);
             } catch (Exception e) {
                 HandleEventUtils.handleException(message.getHeaders(), e);
@@ -73,4 +80,12 @@ public class MandateHandler {
         };
     }
 
+    /**
+     * Le deleghe in cache di delegante e delegato vengono invalidate prima di gestire l'evento,
+     * così che la gestione legga le deleghe aggiornate
+     */
+    private void invalidateMandates(PnMandateEvent.Payload payload) {
+        mandateClient.invalidateMandates(payload.getDelegatorId(), payload.getDelegateId());
+    }
+
 }
@@ -0,0 +1,176 @@
+package it.pagopa.pn.delivery.pnclient.datavault;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Cache in memoria, limitata nel numero di elementi e con scadenza, delle risposte del data vault.
+ * <p>
+ * Le letture concorrenti della stessa chiave mancante vengono unite: solo il primo chiamante invoca il data vault,
+ * gli altri attendono la sua risposta. Le chiavi mancanti di una stessa richiesta vengono lette con una sola
+ * invocazione. Le risposte vuote non vengono conservate.
+ *
+ * @param <V> tipo dei valori
+ */
+@Slf4j
+class DataVaultCache<V> {
+
+    static final String METRIC_LOOKUPS = "pn.delivery.datavault.cache";
+    private static final String TAG_CACHE = "cache";
+    private static final String TAG_RESULT = "result";
+
+    private record Entry<V>(V value, long expiresAt) {}
+
+    private final String name;
+    private final long ttlMillis;
+    private final Clock clock;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Entry<V>> entries;
+    private final ConcurrentHashMap<String, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    DataVaultCache(String name, Duration ttl, int maxEntries, Clock clock, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.ttlMillis = ttl != null && !ttl.isNegative() ? ttl.toMillis() : 0;
+        this.clock = clock;
+        this.meterRegistry = meterRegistry;
+        this.entries = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+                return size() > maxEntries;
+            }
+        });
+        log.info("datavault cache name={} enabled={} ttl={} maxEntries={}", name, isEnabled(), ttl, maxEntries);
+    }
+
+    boolean isEnabled() {
+        return ttlMillis > 0;
+    }
+
+    /**
+     * Restituisce il valore di una chiave, leggendolo dal data vault se non presente
+     * @param key chiave
+     * @param loader lettura dal data vault, può restituire null
+     * @return valore, null se il data vault non lo restituisce
+     */
+    V get(String key, Supplier<V> loader) {
+        return getAll(List.of(key), misses -> {
+            V value = loader.get();
+            return value != null ? Map.of(key, value) : Map.of();
+        }).get(key);
+    }
+
+    /**
+     * Restituisce i valori di più chiavi, leggendo quelle non presenti con una sola invocazione del data vault
+     * @param keys chiavi
+     * @param loader lettura dal data vault delle chiavi mancanti, restituisce i valori trovati per chiave
+     * @return valori trovati per chiave
+     */
+    Map<String, V> getAll(Collection<String> keys, Function<List<String>, Map<String, V>> loader) {
+        if (!isEnabled()) {
+            return loader.apply(new ArrayList<>(new LinkedHashSet<>(keys)));
+        }
+
+        Map<String, V> result = new HashMap<>();
+        Map<String, CompletableFuture<V>> owned = new LinkedHashMap<>();
+        Map<String, CompletableFuture<V>> awaited = new HashMap<>();
+        for (String key : new LinkedHashSet<>(keys)) {
+            V cached = lookup(key);
+            if (cached != null) {
+                result.put(key, cached);
+                count("hit");
+                continue;
+            }
+            CompletableFuture<V> future = new CompletableFuture<>();
+            CompletableFuture<V> running = inFlight.putIfAbsent(key, future);
+            if (running != null) {
+                awaited.put(key, running);
+                count("coalesced");
+            } else {
+                owned.put(key, future);
+                count("miss");
+            }
+        }
+
+        // le chiavi lette da questo chiamante vengono completate prima di attendere quelle lette da altri
+        if (!owned.isEmpty()) {
+            load(owned, loader, result);
+        }
+        awaited.forEach((key, future) -> {
+            V value = await(future);
+            if (value != null)
+                result.put(key, value);
+        });
+        return result;
+    }
+
+    private void load(Map<String, CompletableFuture<V>> owned, Function<List<String>, Map<String, V>> loader, Map<String, V> result) {
+        try {
+            Map<String, V> loaded = loader.apply(new ArrayList<>(owned.keySet()));
+            long expiresAt = clock.millis() + ttlMillis;
+            owned.forEach((key, future) -> {
+                V value = loaded != null ? loaded.get(key) : null;
+                if (value != null) {
+                    entries.put(key, new Entry<>(value, expiresAt));
+                    result.put(key, value);
+                }
+                future.complete(value);
+            });
+        } catch (RuntimeException exc) {
+            owned.values().forEach(future -> future.completeExceptionally(exc));
+            throw exc;
+        } finally {
+            owned.forEach(inFlight::remove);
+        }
+    }
+
+    private V await(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException exc) {
+            if (exc.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            throw exc;
+        }
+    }
+
+    private V lookup(String key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null)
+            return null;
+        if (entry.expiresAt() <= clock.millis()) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value();
+    }
+
+    /**
+     * Conserva un valore ottenuto da un'altra risposta del data vault
+     */
+    void put(String key, V value) {
+        if (isEnabled() && value != null)
+            entries.put(key, new Entry<>(value, clock.millis() + ttlMillis));
+    }
+
+    void invalidate(String key) {
+        entries.remove(key);
+    }
+
+    private void count(String result) {
+        Counter.builder(METRIC_LOOKUPS)
+                .tag(TAG_CACHE, name)
+                .tag(TAG_RESULT, result)
+                .register(meterRegistry)
+                .increment();
+    }
+}
@@ -1,5 +1,6 @@
 package it.pagopa.pn.delivery.pnclient.datavault;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import it.pagopa.pn.delivery.PnDeliveryConfigs;
 import it.pagopa.pn.delivery.generated.openapi.clients.datavault.ApiClient;
 import it.pagopa.pn.delivery.generated.openapi.clients.datavault.api.NotificationsApi;
@@ -12,37 +13,86 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
-import java.util.List;
+import java.time.Clock;
+import java.util.*;
 
+/**
+ * Client del data vault. Le risposte sono conservate in cache: l'associazione tra codice fiscale e id opaco
+ * non cambia mai una volta assegnata, denominazioni e indirizzi vengono conservati per un tempo più breve.
+ */
 @Component
 @Slf4j
 public class PnDataVaultClientImpl {
 
+    static final int DEFAULT_CACHE_MAX_ENTRIES = 50000;
+
     private final RecipientsApi recipientsApi;
     private final NotificationsApi notificationsApi;
+    private final DataVaultCache<String> internalIdCache;
+    private final DataVaultCache<BaseRecipientDto> denominationCache;
+    private final DataVaultCache<List<NotificationRecipientAddressesDto>> addressesCache;
 
-    public PnDataVaultClientImpl(@Qualifier("withTracing") RestTemplate restTemplate, PnDeliveryConfigs cfg) {
+    public PnDataVaultClientImpl(@Qualifier("withTracing") RestTemplate restTemplate, PnDeliveryConfigs cfg,
+                                 Clock clock, MeterRegistry meterRegistry) {
         ApiClient newApiClient = new ApiClient( restTemplate );
         newApiClient.setBasePath( cfg.getDataVaultBaseUrl() );
 
         this.recipientsApi = new RecipientsApi( newApiClient );
         this.notificationsApi = new NotificationsApi( newApiClient );
+
+        int maxEntries = cfg.getDataVaultCacheMaxEntries() != null && cfg.getDataVaultCacheMaxEntries() > 0
+                ? cfg.getDataVaultCacheMaxEntries() : DEFAULT_CACHE_MAX_ENTRIES;
+        this.internalIdCache = new DataVaultCache<>( "internalId", cfg.getDataVaultCacheIdTtl(), maxEntries, clock, meterRegistry );
+        this.denominationCache = new DataVaultCache<>( "denomination", cfg.getDataVaultCacheDenominationTtl(), maxEntries, clock, meterRegistry );
+        this.addressesCache = new DataVaultCache<>( "addresses", cfg.getDataVaultCacheDenominationTtl(), maxEntries, clock, meterRegistry );
     }
 
     public String ensureRecipientByExternalId(RecipientType recipientType, String taxId ){
-        return recipientsApi.ensureRecipientByExternalId( recipientType, taxId );
+        return internalIdCache.get( externalIdKey( recipientType, taxId ),
+                () -> recipientsApi.ensureRecipientByExternalId( recipientType, taxId ) );
     }
 
     public void updateNotificationAddressesByIun(String iun, List<NotificationRecipientAddressesDto> notificationRecipientAddressesDto) {
         notificationsApi.updateNotificationAddressesByIun( iun, notificationRecipientAddressesDto );
+        addressesCache.invalidate( iun );
     }
 
     public List<BaseRecipientDto> getRecipientDenominationByInternalId(List<String> internalId) {
-        return recipientsApi.getRecipientDenominationByInternalId( internalId );
+        Map<String, BaseRecipientDto> recipients = denominationCache.getAll( internalId, this::readRecipientDenominations );
+        return internalId.stream()
+                .distinct()
+                .map( recipients::get )
+                .filter( Objects::nonNull )
+                .toList();
+    }
+
+    private Map<String, BaseRecipientDto> readRecipientDenominations(List<String> internalIds) {
+        log.debug( "read recipient denominations from data vault size={}", internalIds.size() );
+        List<BaseRecipientDto> recipients = recipientsApi.getRecipientDenominationByInternalId( internalIds );
+        if ( recipients == null )
+            return Map.of();
+
+        Map<String, BaseRecipientDto> recipientsByInternalId = new HashMap<>();
+        for ( BaseRecipientDto recipient : recipients ) {
+            if ( recipient.getInternalId() == null )
+                continue;
+            recipientsByInternalId.putIfAbsent( recipient.getInternalId(), recipient );
+            // la risposta riporta anche l'associazione inversa, valida per sempre
+            if ( recipient.getRecipientType() != null && recipient.getTaxId() != null )
+                internalIdCache.put( externalIdKey( recipient.getRecipientType(), recipient.getTaxId() ), recipient.getInternalId() );
+        }
+        return recipientsByInternalId;
     }
 
     public List<NotificationRecipientAddressesDto> getNotificationAddressesByIun(String iun) {
-        return notificationsApi.getNotificationAddressesByIun( iun );
+        return addressesCache.get( iun, () -> {
+            List<NotificationRecipientAddressesDto> response = notificationsApi.getNotificationAddressesByIun( iun );
+            return response != null ? List.copyOf( response ) : null;
+        } );
+    }
+
+    private static String externalIdKey(RecipientType recipientType, String taxId) {
+        return recipientType + "##" + taxId;
     }
 
 }
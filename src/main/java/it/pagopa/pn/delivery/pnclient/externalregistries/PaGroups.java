@@ -0,0 +1,40 @@
+package it.pagopa.pn.delivery.pnclient.externalregistries;
+
+import it.pagopa.pn.delivery.generated.openapi.clients.externalregistries.model.PaGroup;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gruppi di una PA, con accesso diretto per id del gruppo
+ * @param groups gruppi nell'ordine restituito da external registries
+ * @param groupsById gruppi per id
+ */
+public record PaGroups(List<PaGroup> groups, Map<String, PaGroup> groupsById) {
+
+    public static final PaGroups EMPTY = new PaGroups(List.of(), Map.of());
+
+    public static PaGroups of(List<PaGroup> groups) {
+        if (groups == null || groups.isEmpty())
+            return EMPTY;
+        Map<String, PaGroup> groupsById = new HashMap<>();
+        for (PaGroup group : groups) {
+            if (group.getId() != null)
+                groupsById.putIfAbsent(group.getId(), group);
+        }
+        return new PaGroups(List.copyOf(groups), Map.copyOf(groupsById));
+    }
+
+    /**
+     * @param groupId id del gruppo
+     * @return gruppo con l'id indicato, null se la PA non ha il gruppo
+     */
+    public PaGroup get(String groupId) {
+        return groupId != null ? groupsById.get(groupId) : null;
+    }
+
+    public boolean isEmpty() {
+        return groups.isEmpty();
+    }
+}
@@ -0,0 +1,150 @@
+package it.pagopa.pn.delivery.pnclient.externalregistries;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.pagopa.pn.delivery.generated.openapi.clients.externalregistries.model.PaGroup;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * Cache dei gruppi per PA con aggiornamento anticipato.
+ * <p>
+ * Un elemento è fresco fino a refreshAfter; da lì fino a ttl viene ancora restituito, mentre un solo aggiornamento
+ * viene eseguito in background. Oltre ttl la lettura è sincrona e le letture concorrenti della stessa PA vengono
+ * unite in una sola chiamata. Le PA senza gruppi vengono conservate per negativeTtl, senza aggiornamento anticipato.
+ * Gli errori di lettura non vengono conservati: durante l'aggiornamento in background resta valido l'elemento
+ * precedente.
+ */
+@Slf4j
+class PaGroupsCache {
+
+    static final String METRIC_LOOKUPS = "pn.delivery.pa-groups.cache";
+    private static final String TAG_RESULT = "result";
+
+    private record Entry(PaGroups groups, long refreshAt, long expiresAt) {}
+
+    private final Function<String, List<PaGroup>> loader;
+    private final long refreshAfterMillis;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final Clock clock;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService refreshExecutor;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<PaGroups>> inFlight = new ConcurrentHashMap<>();
+
+    PaGroupsCache(Function<String, List<PaGroup>> loader, Duration refreshAfter, Duration ttl, Duration negativeTtl,
+                  Clock clock, MeterRegistry meterRegistry, ExecutorService refreshExecutor) {
+        this.loader = loader;
+        this.ttlMillis = millis(ttl);
+        this.refreshAfterMillis = Math.min(millis(refreshAfter) > 0 ? millis(refreshAfter) : ttlMillis, ttlMillis);
+        this.negativeTtlMillis = Math.min(millis(negativeTtl), ttlMillis);
+        this.clock = clock;
+        this.meterRegistry = meterRegistry;
+        this.refreshExecutor = refreshExecutor;
+        log.info("pa groups cache enabled={} refreshAfter={} ttl={} negativeTtl={}", isEnabled(), refreshAfter, ttl, negativeTtl);
+    }
+
+    private static long millis(Duration duration) {
+        return duration != null && !duration.isNegative() ? duration.toMillis() : 0;
+    }
+
+    boolean isEnabled() {
+        return ttlMillis > 0;
+    }
+
+    /**
+     * @param senderId id della PA
+     * @return gruppi della PA
+     * @throws RuntimeException se la lettura da external registries fallisce e non c'è un elemento valido
+     */
+    PaGroups get(String senderId) {
+        if (!isEnabled())
+            return PaGroups.of(loader.apply(senderId));
+
+        long now = clock.millis();
+        Entry entry = entries.get(senderId);
+        if (entry != null && now < entry.expiresAt()) {
+            if (now >= entry.refreshAt()) {
+                count("stale");
+                refreshInBackground(senderId);
+            } else {
+                count(entry.groups().isEmpty() ? "negative-hit" : "hit");
+            }
+            return entry.groups();
+        }
+
+        count("miss");
+        return await(load(senderId, false));
+    }
+
+    private void refreshInBackground(String senderId) {
+        if (inFlight.containsKey(senderId))
+            return;
+        try {
+            refreshExecutor.execute(() -> load(senderId, true).exceptionally(exc -> {
+                log.warn("pa groups refresh failed senderId={}, keeping cached groups", senderId, exc);
+                return null;
+            }));
+        } catch (RejectedExecutionException exc) {
+            // verrà ritentato alla prossima lettura
+            log.debug("pa groups refresh rejected senderId={}", senderId);
+        }
+    }
+
+    /**
+     * Legge i gruppi della PA, a meno che una lettura in corso o appena conclusa non li abbia già aggiornati
+     * @param senderId id della PA
+     * @param refresh true per l'aggiornamento anticipato, false per la lettura di un elemento mancante o scaduto
+     */
+    private CompletableFuture<PaGroups> load(String senderId, boolean refresh) {
+        CompletableFuture<PaGroups> future = new CompletableFuture<>();
+        CompletableFuture<PaGroups> running = inFlight.putIfAbsent(senderId, future);
+        if (running != null)
+            return running;
+
+        try {
+            Entry current = entries.get(senderId);
+            long checkedAt = clock.millis();
+            if (current != null && checkedAt < (refresh ? current.refreshAt() : current.expiresAt())) {
+                future.complete(current.groups());
+                return future;
+            }
+
+            PaGroups groups = PaGroups.of(loader.apply(senderId));
+            long now = clock.millis();
+            Entry entry = groups.isEmpty()
+                    ? new Entry(groups, now + negativeTtlMillis, now + negativeTtlMillis)
+                    : new Entry(groups, now + refreshAfterMillis, now + ttlMillis);
+            entries.put(senderId, entry);
+            future.complete(groups);
+        } catch (RuntimeException exc) {
+            future.completeExceptionally(exc);
+        } finally {
+            inFlight.remove(senderId, future);
+        }
+        return future;
+    }
+
+    private static PaGroups await(CompletableFuture<PaGroups> future) {
+        try {
+            return future.join();
+        } catch (CompletionException exc) {
+            if (exc.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            throw exc;
+        }
+    }
+
+    private void count(String result) {
+        Counter.builder(METRIC_LOOKUPS)
+                .tag(TAG_RESULT, result)
+                .register(meterRegistry)
+                .increment();
+    }
+}
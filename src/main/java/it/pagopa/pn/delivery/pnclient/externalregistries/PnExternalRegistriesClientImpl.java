@@ -1,18 +1,21 @@
 package it.pagopa.pn.delivery.pnclient.externalregistries;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import it.pagopa.pn.delivery.PnDeliveryConfigs;
 import it.pagopa.pn.delivery.generated.openapi.clients.externalregistries.ApiClient;
 import it.pagopa.pn.delivery.generated.openapi.clients.externalregistries.api.InternalOnlyApi;
 import it.pagopa.pn.delivery.generated.openapi.clients.externalregistries.api.PaymentInfoApi;
 import it.pagopa.pn.delivery.generated.openapi.clients.externalregistries.model.PaGroup;
 import it.pagopa.pn.delivery.generated.openapi.clients.externalregistries.model.PaymentInfo;
+import it.pagopa.pn.delivery.springbootcfg.SearchExecutorConfig;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
-import java.util.Collections;
+import java.time.Clock;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 @Slf4j
 @Component
@@ -20,12 +23,18 @@ public class PnExternalRegistriesClientImpl {
 
     private final PaymentInfoApi paymentInfoApi;
     private final InternalOnlyApi internalOnlyApi;
+    private final PaGroupsCache paGroupsCache;
 
-    public PnExternalRegistriesClientImpl(@Qualifier("withTracing") RestTemplate restTemplate, PnDeliveryConfigs cfg) {
+    public PnExternalRegistriesClientImpl(@Qualifier("withTracing") RestTemplate restTemplate, PnDeliveryConfigs cfg,
+                                          Clock clock, MeterRegistry meterRegistry,
+                                          @Qualifier(SearchExecutorConfig.PA_GROUPS_REFRESH_EXECUTOR_BEAN_NAME) ExecutorService paGroupsRefreshExecutor) {
         ApiClient newApiClient = new ApiClient( restTemplate );
         newApiClient.setBasePath( cfg.getExternalRegistriesBaseUrl() );
         this.paymentInfoApi = new PaymentInfoApi( newApiClient );
         this.internalOnlyApi = new InternalOnlyApi( newApiClient );
+        this.paGroupsCache = new PaGroupsCache( senderId -> internalOnlyApi.getAllGroupsPrivate( senderId, null ),
+                cfg.getPaGroupsCacheRefreshAfter(), cfg.getPaGroupsCacheTtl(), cfg.getPaGroupsCacheNegativeTtl(),
+                clock, meterRegistry, paGroupsRefreshExecutor );
     }
 
     public PaymentInfo getPaymentInfo( String paTaxId, String noticeNumber ) {
@@ -33,11 +42,20 @@ public class PnExternalRegistriesClientImpl {
     }
 
     public List<PaGroup> getGroups(String senderId) {
+        return getPaGroups(senderId).groups();
+    }
+
+    /**
+     * Gruppi della PA, letti dalla cache
+     * @param senderId id della PA
+     * @return gruppi della PA, vuoto se la PA non ha gruppi o se la lettura fallisce
+     */
+    public PaGroups getPaGroups(String senderId) {
         try {
-            return internalOnlyApi.getAllGroupsPrivate(senderId, null);
+            return paGroupsCache.get(senderId);
         } catch (Exception exc) {
             log.error("Error during retrieve of the groups", exc);
-            return Collections.emptyList();
+            return PaGroups.EMPTY;
         }
     }
 }
@@ -0,0 +1,187 @@
+package it.pagopa.pn.delivery.pnclient.mandate;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.pagopa.pn.delivery.generated.openapi.clients.mandate.model.InternalMandateDto;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Cache delle deleghe lette dal servizio delle deleghe.
+ * <p>
+ * Ogni elemento è associato ai deleganti e ai delegati che lo riguardano; gli eventi del ciclo di vita delle deleghe
+ * invalidano tutti gli elementi di delegante e delegato coinvolti. La scadenza breve copre gli eventi non ricevuti:
+ * ogni evento viene consumato da una sola istanza, le altre vedono la modifica alla scadenza dei propri elementi.
+ * Una lettura iniziata prima di un'invalidazione non viene conservata.
+ */
+@Slf4j
+class MandateCache {
+
+    static final String METRIC_LOOKUPS = "pn.delivery.mandate.cache";
+    private static final String TAG_RESULT = "result";
+    private static final String DELEGATOR_PREFIX = "delegator:";
+    private static final String DELEGATE_PREFIX = "delegate:";
+
+    private record Entry(List<InternalMandateDto> mandates, Set<String> owners, long expiresAt) {}
+
+    private final long ttlMillis;
+    private final Clock clock;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Entry> entries;
+    private final Map<String, Set<String>> keysByOwner = new HashMap<>();
+    private long invalidations;
+
+    MandateCache(Duration ttl, int maxEntries, Clock clock, MeterRegistry meterRegistry) {
+        this.ttlMillis = ttl != null && !ttl.isNegative() ? ttl.toMillis() : 0;
+        this.clock = clock;
+        this.meterRegistry = meterRegistry;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= maxEntries)
+                    return false;
+                unindex(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+        };
+        log.info("mandate cache enabled={} ttl={} maxEntries={}", isEnabled(), ttl, maxEntries);
+    }
+
+    boolean isEnabled() {
+        return ttlMillis > 0;
+    }
+
+    static String delegatorOwner(String delegatorId) {
+        return DELEGATOR_PREFIX + delegatorId;
+    }
+
+    static String delegateOwner(String delegateId) {
+        return DELEGATE_PREFIX + delegateId;
+    }
+
+    /**
+     * Restituisce le deleghe di una chiave, leggendole dal servizio delle deleghe se non presenti
+     * @param key chiave della lettura
+     * @param owners deleganti e delegati noti prima della lettura
+     * @param loader lettura dal servizio delle deleghe
+     * @return deleghe, immutabili
+     */
+    List<InternalMandateDto> get(String key, Collection<String> owners, Supplier<List<InternalMandateDto>> loader) {
+        if (!isEnabled())
+            return loader.get();
+
+        List<InternalMandateDto> cached = lookup(key);
+        if (cached != null) {
+            count("hit");
+            return cached;
+        }
+        count("miss");
+
+        long invalidationsBeforeLoad = invalidations();
+        List<InternalMandateDto> mandates = loader.get();
+        List<InternalMandateDto> value = mandates != null ? List.copyOf(mandates) : List.of();
+        store(key, owners, value, invalidationsBeforeLoad);
+        return value;
+    }
+
+    /**
+     * @return deleghe in cache per la chiave, null se non presenti o scadute
+     */
+    synchronized List<InternalMandateDto> lookup(String key) {
+        if (!isEnabled())
+            return null;
+        Entry entry = entries.get(key);
+        if (entry == null)
+            return null;
+        if (entry.expiresAt() <= clock.millis()) {
+            entries.remove(key);
+            unindex(key, entry);
+            return null;
+        }
+        return entry.mandates();
+    }
+
+    synchronized long invalidations() {
+        return invalidations;
+    }
+
+    /**
+     * Conserva le deleghe lette, a meno che un evento non abbia invalidato la cache durante la lettura
+     * @param invalidationsBeforeLoad valore di {@link #invalidations()} prima della lettura
+     */
+    synchronized void store(String key, Collection<String> owners, List<InternalMandateDto> mandates, long invalidationsBeforeLoad) {
+        if (!isEnabled() || invalidations != invalidationsBeforeLoad)
+            return;
+
+        Set<String> allOwners = new HashSet<>(owners);
+        for (InternalMandateDto mandate : mandates) {
+            if (mandate.getDelegator() != null)
+                allOwners.add(delegatorOwner(mandate.getDelegator()));
+            if (mandate.getDelegate() != null)
+                allOwners.add(delegateOwner(mandate.getDelegate()));
+        }
+        Entry previous = entries.put(key, new Entry(List.copyOf(mandates), Set.copyOf(allOwners), clock.millis() + ttlMillis));
+        if (previous != null)
+            unindex(key, previous);
+        allOwners.forEach(owner -> keysByOwner.computeIfAbsent(owner, o -> new HashSet<>()).add(key));
+    }
+
+    /**
+     * Invalida le deleghe di un delegante e di un delegato; se nessuno dei due è noto invalida tutta la cache
+     */
+    synchronized void invalidate(String delegatorId, String delegateId) {
+        invalidations++;
+        if (delegatorId == null && delegateId == null) {
+            entries.clear();
+            keysByOwner.clear();
+            log.info("mandate cache cleared");
+            return;
+        }
+
+        int removed = 0;
+        for (String owner : ownersOf(delegatorId, delegateId)) {
+            Set<String> keys = keysByOwner.remove(owner);
+            if (keys == null)
+                continue;
+            for (String key : keys) {
+                Entry entry = entries.remove(key);
+                if (entry != null) {
+                    unindex(key, entry);
+                    removed++;
+                }
+            }
+        }
+        log.debug("mandate cache invalidated delegatorId={} delegateId={} entries={}", delegatorId, delegateId, removed);
+    }
+
+    private static List<String> ownersOf(String delegatorId, String delegateId) {
+        List<String> owners = new ArrayList<>(2);
+        if (delegatorId != null)
+            owners.add(delegatorOwner(delegatorId));
+        if (delegateId != null)
+            owners.add(delegateOwner(delegateId));
+        return owners;
+    }
+
+    private void unindex(String key, Entry entry) {
+        for (String owner : entry.owners()) {
+            Set<String> keys = keysByOwner.get(owner);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty())
+                    keysByOwner.remove(owner);
+            }
+        }
+    }
+
+    void count(String result) {
+        Counter.builder(METRIC_LOOKUPS)
+                .tag(TAG_RESULT, result)
+                .register(meterRegistry)
+                .increment();
+    }
+}
@@ -1,5 +1,6 @@
 package it.pagopa.pn.delivery.pnclient.mandate;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import it.pagopa.pn.delivery.PnDeliveryConfigs;
 import it.pagopa.pn.delivery.generated.openapi.clients.mandate.ApiClient;
 import it.pagopa.pn.delivery.generated.openapi.clients.mandate.api.MandatePrivateServiceApi;
@@ -12,35 +13,114 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
-import java.util.List;
+import java.time.Clock;
+import java.util.*;
+import java.util.stream.Collectors;
 
+/**
+ * Client del servizio delle deleghe. Le risposte sono conservate in cache e invalidate dagli eventi delle deleghe
+ * ricevuti da {@link it.pagopa.pn.delivery.middleware.queue.consumer.handler.MandateHandler}.
+ */
 @Slf4j
 @Component
 public class PnMandateClientImpl {
 
+    static final int DEFAULT_CACHE_MAX_ENTRIES = 10000;
+
     private final MandatePrivateServiceApi mandatesApi;
+    private final MandateCache mandateCache;
 
-    public PnMandateClientImpl(@Qualifier("withTracing") RestTemplate restTemplate, PnDeliveryConfigs cfg) {
+    public PnMandateClientImpl(@Qualifier("withTracing") RestTemplate restTemplate, PnDeliveryConfigs cfg,
+                               Clock clock, MeterRegistry meterRegistry) {
         ApiClient newApiClient = new ApiClient(restTemplate);
         newApiClient.setBasePath(cfg.getMandateBaseUrl());
         this.mandatesApi = new MandatePrivateServiceApi(newApiClient);
+
+        int maxEntries = cfg.getMandateCacheMaxEntries() != null && cfg.getMandateCacheMaxEntries() > 0
+                ? cfg.getMandateCacheMaxEntries() : DEFAULT_CACHE_MAX_ENTRIES;
+        this.mandateCache = new MandateCache(cfg.getMandateCacheTtl(), maxEntries, clock, meterRegistry);
     }
 
     public List<InternalMandateDto> listMandatesByDelegate(String delegated, String mandateId, CxTypeAuthFleet cxType, List<String> cxGroups) {
-        log.debug("Start get mandates for delegated={} and mandateId={}", delegated, mandateId);
-        return mandatesApi.listMandatesByDelegate(delegated, cxType, mandateId, cxGroups);
+        String key = cacheKey("delegate", delegated, mandateId, cxType, sorted(cxGroups));
+        return mandateCache.get(key, List.of(MandateCache.delegateOwner(delegated)), () -> {
+            log.debug("Start get mandates for delegated={} and mandateId={}", delegated, mandateId);
+            return mandatesApi.listMandatesByDelegate(delegated, cxType, mandateId, cxGroups);
+        });
     }
 
     public List<InternalMandateDto> listMandatesByDelegator(String delegator, String mandateId,
                                                             CxTypeAuthFleet cxType, List<String> cxGroups, String cxRole,
                                                             DelegateType delegateType) {
-        log.debug("Start get mandates for delegator={} and mandateId={}", delegator, mandateId);
-        return mandatesApi.listMandatesByDelegator(delegator, cxType, mandateId, cxGroups, cxRole, delegateType);
+        String key = cacheKey("delegator", delegator, mandateId, cxType, sorted(cxGroups), cxRole, delegateType);
+        return mandateCache.get(key, List.of(MandateCache.delegatorOwner(delegator)), () -> {
+            log.debug("Start get mandates for delegator={} and mandateId={}", delegator, mandateId);
+            return mandatesApi.listMandatesByDelegator(delegator, cxType, mandateId, cxGroups, cxRole, delegateType);
+        });
     }
 
+    /**
+     * Le deleghe vengono conservate per coppia delegante e delega richiesta: solo le coppie non presenti in cache
+     * vengono lette, con una sola chiamata.
+     */
     public List<InternalMandateDto> listMandatesByDelegators(DelegateType delegateType, List<String> cxGroups, List<MandateByDelegatorRequestDto> requestBody) {
-        log.debug("Start get mandates for delegators");
-        return mandatesApi.listMandatesByDelegators(delegateType, cxGroups, requestBody);
+        if (!mandateCache.isEnabled()) {
+            log.debug("Start get mandates for delegators");
+            return mandatesApi.listMandatesByDelegators(delegateType, cxGroups, requestBody);
+        }
+
+        String groups = sorted(cxGroups);
+        Map<MandateByDelegatorRequestDto, String> keys = new LinkedHashMap<>();
+        requestBody.forEach(request -> keys.putIfAbsent(request,
+                cacheKey("delegators", delegateType, groups, request.getDelegatorId(), request.getMandateId())));
+
+        List<InternalMandateDto> result = new ArrayList<>();
+        List<MandateByDelegatorRequestDto> misses = new ArrayList<>();
+        keys.forEach((request, key) -> {
+            List<InternalMandateDto> cached = mandateCache.lookup(key);
+            if (cached != null) {
+                mandateCache.count("hit");
+                result.addAll(cached);
+            } else {
+                mandateCache.count("miss");
+                misses.add(request);
+            }
+        });
+        if (misses.isEmpty())
+            return result;
+
+        log.debug("Start get mandates for delegators size={} cached={}", misses.size(), keys.size() - misses.size());
+        long invalidationsBeforeLoad = mandateCache.invalidations();
+        List<InternalMandateDto> loaded = mandatesApi.listMandatesByDelegators(delegateType, cxGroups, misses);
+        Map<String, List<InternalMandateDto>> loadedByMandateId = loaded == null ? Map.of() : loaded.stream()
+                .filter(mandate -> mandate.getMandateId() != null)
+                .collect(Collectors.groupingBy(InternalMandateDto::getMandateId));
+        for (MandateByDelegatorRequestDto request : misses) {
+            List<InternalMandateDto> mandates = loadedByMandateId.getOrDefault(request.getMandateId(), List.of());
+            mandateCache.store(keys.get(request), List.of(MandateCache.delegatorOwner(request.getDelegatorId())),
+                    mandates, invalidationsBeforeLoad);
+            result.addAll(mandates);
+        }
+        return result;
+    }
+
+    /**
+     * Invalida le deleghe in cache di un delegante e di un delegato, a seguito di un evento sulla delega
+     */
+    public void invalidateMandates(String delegatorId, String delegateId) {
+        mandateCache.invalidate(delegatorId, delegateId);
+    }
+
+    private static String cacheKey(Object... parts) {
+        return Arrays.stream(parts)
+                .map(String::valueOf)
+                .collect(Collectors.joining("|"));
+    }
+
+    private static String sorted(List<String> values) {
+        if (values == null)
+            return "null";
+        return values.stream().sorted().collect(Collectors.joining(",", "[", "]"));
     }
 
 }
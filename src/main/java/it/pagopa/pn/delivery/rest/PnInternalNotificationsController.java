@@ -12,14 +12,20 @@ import it.pagopa.pn.delivery.models.InternalAuthHeader;
 import it.pagopa.pn.delivery.models.InternalNotification;
 import it.pagopa.pn.delivery.models.ResultPaginationDto;
 import it.pagopa.pn.delivery.svc.*;
+import it.pagopa.pn.delivery.svc.search.NotificationExportService;
 import it.pagopa.pn.delivery.svc.search.NotificationRetrieverService;
 import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.InputStream;
 import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.Map;
@@ -28,23 +34,27 @@ import java.util.Map;
 @RestController
 public class PnInternalNotificationsController implements InternalOnlyApi {
 
+    private static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
     private final NotificationRetrieverService retrieveSvc;
     private final StatusService statusService;
     private final NotificationPriceService priceService;
     private final NotificationQRService qrService;
     private final NotificationAttachmentService notificationAttachmentService;
     private final PaymentEventsService paymentEventsService;
+    private final NotificationExportService exportService;
 
     private final ModelMapper modelMapper;
 
 
-    public PnInternalNotificationsController(NotificationRetrieverService retrieveSvc, StatusService statusService, NotificationPriceService priceService, NotificationQRService qrService, NotificationAttachmentService notificationAttachmentService, PaymentEventsService paymentEventsService, ModelMapper modelMapper) {
+    public PnInternalNotificationsController(NotificationRetrieverService retrieveSvc, StatusService statusService, NotificationPriceService priceService, NotificationQRService qrService, NotificationAttachmentService notificationAttachmentService, PaymentEventsService paymentEventsService, NotificationExportService exportService, ModelMapper modelMapper) {
         this.retrieveSvc = retrieveSvc;
         this.statusService = statusService;
         this.priceService = priceService;
         this.qrService = qrService;
         this.notificationAttachmentService = notificationAttachmentService;
         this.paymentEventsService = paymentEventsService;
+        this.exportService = exportService;
         this.modelMapper = modelMapper;
     }
 
@@ -171,6 +181,43 @@ public class PnInternalNotificationsController implements InternalOnlyApi {
 
     }
 
+    @Override
+    public ResponseEntity<Resource> exportNotificationsPrivate(OffsetDateTime startDate, OffsetDateTime endDate,
+                                                               String recipientId, Boolean recipientIdOpaque,
+                                                               String senderId, List<NotificationStatus> status,
+                                                               String fromKey) {
+
+        PnAuditLogBuilder auditLogBuilder = new PnAuditLogBuilder();
+        PnAuditLogEvent logEvent = auditLogBuilder
+                .before(PnAuditLogEventType.AUD_NT_SEARCH_SND, "exportNotificationsPrivate")
+                .build();
+        logEvent.log();
+        if (StringUtils.hasText( recipientId ) && StringUtils.hasText( senderId )) {
+            throw new IllegalArgumentException( "Please specify alternatively recipientId or senderId search params" );
+        }
+        InputSearchNotificationDto searchDto = new InputSearchNotificationDto().toBuilder()
+                .bySender( StringUtils.hasText( senderId ) )
+                .senderReceiverId( StringUtils.hasText( recipientId )? recipientId : senderId)
+                .startDate(startDate.toInstant())
+                .endDate(endDate.toInstant())
+                .statuses(status==null?List.of():status)
+                .receiverIdIsOpaque(recipientIdOpaque)
+                .build();
+        InputStream exportStream;
+        try {
+            exportStream = exportService.exportNotifications( searchDto, fromKey );
+            // le righe vengono scritte dopo la risposta: l'esito registrato riguarda l'avvio dell'esportazione
+            logEvent.generateSuccess().log();
+        } catch (PnRuntimeException exc) {
+            logEvent.generateFailure("" + exc.getProblem()).log();
+            throw exc;
+        }
+        return ResponseEntity.ok()
+                .contentType( MediaType.parseMediaType( NDJSON_MEDIA_TYPE ) )
+                .header( HttpHeaders.CONTENT_ENCODING, "gzip" )
+                .body( new InputStreamResource( exportStream ) );
+    }
+
     @Override
     public ResponseEntity<NotificationAttachmentDownloadMetadataResponse> getReceivedNotificationAttachmentPrivate(String iun, String attachmentName, String recipientInternalId, String mandateId) {
         PnAuditLogBuilder auditLogBuilder = new PnAuditLogBuilder();
@@ -11,12 +11,14 @@ import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.*;
 import it.pagopa.pn.delivery.svc.NotificationAttachmentService;
 import it.pagopa.pn.delivery.svc.NotificationReceiverService;
 import lombok.extern.slf4j.Slf4j;
+import org.modelmapper.ModelMapper;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.Base64Utils;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.validation.constraints.NotNull;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 
 import static it.pagopa.pn.commons.exceptions.PnExceptionsCodes.ERROR_CODE_PN_GENERIC_INVALIDPARAMETER_SIZE;
@@ -29,11 +31,13 @@ public class PnNotificationInputController implements NewNotificationApi {
     private final PnDeliveryConfigs cfgs;
     private final NotificationReceiverService svc;
     private final NotificationAttachmentService notificationAttachmentService;
+    private final ModelMapper modelMapper;
 
-    public PnNotificationInputController(PnDeliveryConfigs cfgs, NotificationReceiverService svc, NotificationAttachmentService notificationAttachmentService) {
+    public PnNotificationInputController(PnDeliveryConfigs cfgs, NotificationReceiverService svc, NotificationAttachmentService notificationAttachmentService, ModelMapper modelMapper) {
         this.cfgs = cfgs;
         this.svc = svc;
         this.notificationAttachmentService = notificationAttachmentService;
+        this.modelMapper = modelMapper;
     }
 
     @Override
@@ -59,6 +63,40 @@ public class PnNotificationInputController implements NewNotificationApi {
         return ResponseEntity.accepted().body( svcRes );
     }
 
+    @Override
+    public ResponseEntity<NewNotificationsResponse> sendNewNotifications(String xPagopaPnUid, CxTypeAuthFleet xPagopaPnCxType, String xPagopaPnCxId, String xPagopaPnSrcCh, NewNotificationsRequest newNotificationsRequest, List<String> xPagopaPnCxGroups) {
+        List<NewNotificationRequest> requests = newNotificationsRequest.getNotifications();
+        List<NotificationReceiverService.NewNotificationResult> results = svc.receiveNotifications(xPagopaPnCxId, requests, xPagopaPnSrcCh, xPagopaPnCxGroups);
+        List<NewNotificationResult> items = new ArrayList<>( results.size() );
+        for ( int i = 0; i < results.size(); i++ ) {
+            NewNotificationRequest request = requests.get( i );
+            NotificationReceiverService.NewNotificationResult result = results.get( i );
+            // un evento di audit per ogni notifica, come nell'invio della singola notifica
+            PnAuditLogEvent logEvent = new PnAuditLogBuilder()
+                    .before(PnAuditLogEventType.AUD_NT_INSERT, "sendNewNotifications for protocolNumber={}", request.getPaProtocolNumber())
+                    .build();
+            logEvent.log();
+            NewNotificationResult item = new NewNotificationResult();
+            item.setPaProtocolNumber( request.getPaProtocolNumber() );
+            item.setIdempotenceToken( request.getIdempotenceToken() );
+            if ( result.error() != null ) {
+                logEvent.generateFailure("[protocolNumber={}, idempotenceToken={}] " + result.error().getProblem(),
+                        request.getPaProtocolNumber(), request.getIdempotenceToken()).log();
+                item.setError( modelMapper.map( result.error().getProblem(), Problem.class ) );
+            } else {
+                String requestId = result.response().getNotificationRequestId();
+                String iun = new String(Base64Utils.decodeFromString(requestId), StandardCharsets.UTF_8);
+                logEvent.getMdc().put("iun", iun);
+                logEvent.generateSuccess("sendNewNotifications requestId={}, protocolNumber={}", requestId, request.getPaProtocolNumber()).log();
+                item.setResponse( result.response() );
+            }
+            items.add( item );
+        }
+        NewNotificationsResponse response = new NewNotificationsResponse();
+        response.setResults( items );
+        return ResponseEntity.accepted().body( response );
+    }
+
     @Override
     public ResponseEntity<List<PreLoadResponse>> presignedUploadRequest(
             String xPagopaPnUid, CxTypeAuthFleet xPagopaPnCxType, String xPagopaPnCxId, List<PreLoadRequest> preLoadRequest) {
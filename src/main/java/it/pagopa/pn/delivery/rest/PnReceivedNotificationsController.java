@@ -5,19 +5,22 @@ import it.pagopa.pn.commons.log.PnAuditLogBuilder;
 import it.pagopa.pn.commons.log.PnAuditLogEvent;
 import it.pagopa.pn.commons.log.PnAuditLogEventType;
 import it.pagopa.pn.commons.utils.LogUtils;
+import it.pagopa.pn.delivery.exception.PnBadRequestException;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.api.RecipientReadApi;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.*;
 import it.pagopa.pn.delivery.models.InputSearchNotificationDelegatedDto;
 import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
 import it.pagopa.pn.delivery.models.InternalAuthHeader;
-import it.pagopa.pn.delivery.models.InternalNotification;
 import it.pagopa.pn.delivery.models.ResultPaginationDto;
 import it.pagopa.pn.delivery.svc.NotificationAttachmentService;
 import it.pagopa.pn.delivery.svc.NotificationQRService;
+import it.pagopa.pn.delivery.svc.NotificationStatusCounterService;
 import it.pagopa.pn.delivery.svc.search.NotificationRetrieverService;
 import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -26,6 +29,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
+import static it.pagopa.pn.delivery.exception.PnDeliveryExceptionCodes.ERROR_CODE_DELIVERY_INVALIDPARAMETER_GROUP;
+
 @Slf4j
 @RestController
 public class PnReceivedNotificationsController implements RecipientReadApi {
@@ -34,13 +39,15 @@ public class PnReceivedNotificationsController implements RecipientReadApi {
     private final NotificationQRService notificationQRService;
 
     private final ModelMapper modelMapper;
+    private final NotificationStatusCounterService statusCounterService;
 
 
-    public PnReceivedNotificationsController(NotificationRetrieverService retrieveSvc, NotificationAttachmentService notificationAttachmentService, NotificationQRService notificationQRService, ModelMapper modelMapper) {
+    public PnReceivedNotificationsController(NotificationRetrieverService retrieveSvc, NotificationAttachmentService notificationAttachmentService, NotificationQRService notificationQRService, ModelMapper modelMapper, NotificationStatusCounterService statusCounterService) {
         this.retrieveSvc = retrieveSvc;
         this.notificationAttachmentService = notificationAttachmentService;
         this.notificationQRService = notificationQRService;
         this.modelMapper = modelMapper;
+        this.statusCounterService = statusCounterService;
     }
 
     @Override
@@ -131,7 +138,29 @@ public class PnReceivedNotificationsController implements RecipientReadApi {
     }
 
     @Override
-    public ResponseEntity<FullReceivedNotification> getReceivedNotification(String xPagopaPnUid, CxTypeAuthFleet xPagopaPnCxType, String xPagopaPnCxId, String iun, List<String> xPagopaPnCxGroups, String mandateId) {
+    public ResponseEntity<NotificationStatusCountResponse> countReceivedNotification(String xPagopaPnUid, CxTypeAuthFleet xPagopaPnCxType, String xPagopaPnCxId, String startMonth, String endMonth, List<String> xPagopaPnCxGroups, List<NotificationStatus> status) {
+        PnAuditLogBuilder auditLogBuilder = new PnAuditLogBuilder();
+        PnAuditLogEvent logEvent = auditLogBuilder
+                .before(PnAuditLogEventType.AUD_NT_SEARCH_RCP, "countReceivedNotification startMonth={} endMonth={}", startMonth, endMonth)
+                .build();
+        logEvent.log();
+        NotificationStatusCountResponse response;
+        try {
+            // i contatori non sono suddivisi per gruppo
+            if ( !CollectionUtils.isEmpty( xPagopaPnCxGroups ) ) {
+                throw new PnBadRequestException( "Invalid groups", "Counts are not available to users restricted to groups", ERROR_CODE_DELIVERY_INVALIDPARAMETER_GROUP );
+            }
+            response = statusCounterService.countByMonthAndStatus( xPagopaPnCxId, startMonth, endMonth, status );
+            logEvent.generateSuccess().log();
+        } catch (PnRuntimeException exc) {
+            logEvent.generateFailure("" + exc.getProblem()).log();
+            throw exc;
+        }
+        return ResponseEntity.ok( response );
+    }
+
+    @Override
+    public ResponseEntity<FullReceivedNotification> getReceivedNotification(String xPagopaPnUid, CxTypeAuthFleet xPagopaPnCxType, String xPagopaPnCxId, String iun, List<String> xPagopaPnCxGroups, String mandateId, String ifNoneMatch) {
         PnAuditLogBuilder auditLogBuilder = new PnAuditLogBuilder();
         FullReceivedNotification result = null;
         PnAuditLogEventType eventType = PnAuditLogEventType.AUD_NT_VIEW_RCP;
@@ -145,17 +174,22 @@ public class PnReceivedNotificationsController implements RecipientReadApi {
                 .iun(iun)
                 .build();
         logEvent.log();
+        NotificationRetrieverService.VersionedNotification versioned;
         try {
             InternalAuthHeader internalAuthHeader = new InternalAuthHeader(xPagopaPnCxType.getValue(), xPagopaPnCxId, xPagopaPnUid, xPagopaPnCxGroups);
-            InternalNotification internalNotification = retrieveSvc.getNotificationAndNotifyViewedEvent(iun, internalAuthHeader, mandateId);
-            result = modelMapper.map(internalNotification, FullReceivedNotification.class);
+            versioned = retrieveSvc.getVersionedNotificationAndNotifyViewedEvent(iun, internalAuthHeader, mandateId, ifNoneMatch);
+            if ( versioned.notModified() ) {
+                logEvent.generateSuccess("Notification not modified etag={}", versioned.etag()).log();
+                return ResponseEntity.status( HttpStatus.NOT_MODIFIED ).eTag( versioned.etag() ).build();
+            }
+            result = modelMapper.map(versioned.notification(), FullReceivedNotification.class);
 
             logEvent.generateSuccess().log();
         } catch (PnRuntimeException exc) {
             logEvent.generateFailure("" + exc.getProblem()).log();
             throw exc;
         }
-        return ResponseEntity.ok(result);
+        return ResponseEntity.ok().eTag( versioned.etag() ).body(result);
     }
 
     @Override
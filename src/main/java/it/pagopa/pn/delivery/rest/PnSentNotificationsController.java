@@ -4,6 +4,7 @@ import it.pagopa.pn.commons.exceptions.PnRuntimeException;
 import it.pagopa.pn.commons.log.PnAuditLogBuilder;
 import it.pagopa.pn.commons.log.PnAuditLogEvent;
 import it.pagopa.pn.commons.log.PnAuditLogEventType;
+import it.pagopa.pn.delivery.exception.PnBadRequestException;
 import it.pagopa.pn.delivery.exception.PnInvalidInputException;
 import it.pagopa.pn.delivery.exception.PnNotificationNotFoundException;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.api.SenderReadB2BApi;
@@ -14,9 +15,11 @@ import it.pagopa.pn.delivery.models.InternalAuthHeader;
 import it.pagopa.pn.delivery.models.InternalNotification;
 import it.pagopa.pn.delivery.models.ResultPaginationDto;
 import it.pagopa.pn.delivery.svc.NotificationAttachmentService;
+import it.pagopa.pn.delivery.svc.NotificationStatusCounterService;
 import it.pagopa.pn.delivery.svc.search.NotificationRetrieverService;
 import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.Base64Utils;
 import org.springframework.util.CollectionUtils;
@@ -26,10 +29,12 @@ import org.springframework.web.context.request.NativeWebRequest;
 import it.pagopa.pn.delivery.svc.NotificationAttachmentService.InternalAttachmentWithFileKey;
 import java.nio.charset.StandardCharsets;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
 import static it.pagopa.pn.commons.exceptions.PnExceptionsCodes.ERROR_CODE_PN_GENERIC_INVALIDPARAMETER_REQUIRED;
+import static it.pagopa.pn.delivery.exception.PnDeliveryExceptionCodes.ERROR_CODE_DELIVERY_INVALIDPARAMETER_GROUP;
 
 
 @RestController
@@ -39,22 +44,29 @@ public class PnSentNotificationsController implements SenderReadB2BApi,SenderRea
     private final NotificationRetrieverService retrieveSvc;
     private final NotificationAttachmentService notificationAttachmentService;
     private final ModelMapper modelMapper;
+    private final NotificationStatusCounterService statusCounterService;
 
-    public PnSentNotificationsController(NotificationRetrieverService retrieveSvc, NotificationAttachmentService notificationAttachmentService, ModelMapper modelMapper) {
+    public PnSentNotificationsController(NotificationRetrieverService retrieveSvc, NotificationAttachmentService notificationAttachmentService, ModelMapper modelMapper, NotificationStatusCounterService statusCounterService) {
         this.retrieveSvc = retrieveSvc;
         this.notificationAttachmentService = notificationAttachmentService;
         this.modelMapper = modelMapper;
+        this.statusCounterService = statusCounterService;
     }
 
     @Override
-    public ResponseEntity<FullSentNotification> getSentNotification(String xPagopaPnUid, CxTypeAuthFleet xPagopaPnCxType, String xPagopaPnCxId, String iun, List<String> xPagopaPnCxGroups) {
-        InternalNotification internalNotification = retrieveSvc.getNotificationInformationWithSenderIdCheck( iun, xPagopaPnCxId, xPagopaPnCxGroups );
+    public ResponseEntity<FullSentNotification> getSentNotification(String xPagopaPnUid, CxTypeAuthFleet xPagopaPnCxType, String xPagopaPnCxId, String iun, List<String> xPagopaPnCxGroups, String ifNoneMatch) {
+        NotificationRetrieverService.VersionedNotification versioned = retrieveSvc.getVersionedNotificationWithSenderIdCheck( iun, xPagopaPnCxId, xPagopaPnCxGroups, ifNoneMatch );
         PnAuditLogBuilder auditLogBuilder = new PnAuditLogBuilder();
         PnAuditLogEvent logEvent = auditLogBuilder
                 .before(PnAuditLogEventType.AUD_NT_VIEW_SND, "getSenderNotification")
                 .iun(iun)
                 .build();
         logEvent.log();
+        if ( versioned.notModified() ) {
+            logEvent.generateSuccess("Notification not modified etag={}", versioned.etag()).log();
+            return ResponseEntity.status( HttpStatus.NOT_MODIFIED ).eTag( versioned.etag() ).build();
+        }
+        InternalNotification internalNotification = versioned.notification();
         if ( NotificationStatus.IN_VALIDATION.equals( internalNotification.getNotificationStatus() )
                 || NotificationStatus.REFUSED.equals( internalNotification.getNotificationStatus() ) ) {
             logEvent.generateFailure("Unable to find notification with iun={} cause status={}", internalNotification.getIun(), internalNotification.getNotificationStatus()).log();
@@ -62,10 +74,37 @@ public class PnSentNotificationsController implements SenderReadB2BApi,SenderRea
         }
         FullSentNotification result = modelMapper.map( internalNotification, FullSentNotification.class );
         logEvent.generateSuccess().log();
-        return ResponseEntity.ok( result );
+        return ResponseEntity.ok().eTag( versioned.etag() ).body( result );
     }
 
 
+    @Override
+    public ResponseEntity<SentNotificationDetailsResponse> getSentNotificationDetails(String xPagopaPnUid, CxTypeAuthFleet xPagopaPnCxType, String xPagopaPnCxId, SentNotificationDetailsRequest sentNotificationDetailsRequest, List<String> xPagopaPnCxGroups) {
+        List<NotificationRetrieverService.NotificationResult> results = retrieveSvc.getNotificationsInformationWithSenderIdCheck(
+                sentNotificationDetailsRequest.getIuns(), xPagopaPnCxId, xPagopaPnCxGroups );
+        List<SentNotificationDetailResult> items = new ArrayList<>( results.size() );
+        for ( NotificationRetrieverService.NotificationResult result : results ) {
+            // un evento di audit per ogni notifica letta, come nella lettura del singolo dettaglio
+            PnAuditLogEvent logEvent = new PnAuditLogBuilder()
+                    .before(PnAuditLogEventType.AUD_NT_VIEW_SND, "getSentNotificationDetails")
+                    .iun(result.iun())
+                    .build();
+            logEvent.log();
+            SentNotificationDetailResult item = new SentNotificationDetailResult();
+            item.setIun( result.iun() );
+            if ( result.error() != null ) {
+                logEvent.generateFailure("" + result.error().getProblem()).log();
+                item.setError( modelMapper.map( result.error().getProblem(), Problem.class ) );
+            } else {
+                item.setNotification( modelMapper.map( result.notification(), FullSentNotification.class ) );
+                logEvent.generateSuccess().log();
+            }
+            items.add( item );
+        }
+        SentNotificationDetailsResponse response = new SentNotificationDetailsResponse();
+        response.setResults( items );
+        return ResponseEntity.ok( response );
+    }
 
     @Override
     public ResponseEntity<NotificationSearchResponse> searchSentNotification(String xPagopaPnUid, CxTypeAuthFleet xPagopaPnCxType, String xPagopaPnCxId, OffsetDateTime startDate, OffsetDateTime endDate, List<String> xPagopaPnCxGroups, String recipientId, NotificationStatus status, String subjectRegExp, String iunMatch, Integer size, String nextPagesKey) {
@@ -102,6 +141,28 @@ public class PnSentNotificationsController implements SenderReadB2BApi,SenderRea
         return ResponseEntity.ok( response );
     }
 
+    @Override
+    public ResponseEntity<NotificationStatusCountResponse> countSentNotification(String xPagopaPnUid, CxTypeAuthFleet xPagopaPnCxType, String xPagopaPnCxId, String startMonth, String endMonth, List<String> xPagopaPnCxGroups, List<NotificationStatus> status) {
+        PnAuditLogBuilder auditLogBuilder = new PnAuditLogBuilder();
+        PnAuditLogEvent logEvent = auditLogBuilder
+                .before(PnAuditLogEventType.AUD_NT_SEARCH_SND, "countSentNotification startMonth={} endMonth={}", startMonth, endMonth)
+                .build();
+        logEvent.log();
+        NotificationStatusCountResponse response;
+        try {
+            // i contatori non sono suddivisi per gruppo
+            if ( !CollectionUtils.isEmpty( xPagopaPnCxGroups ) ) {
+                throw new PnBadRequestException( "Invalid groups", "Counts are not available to users restricted to groups", ERROR_CODE_DELIVERY_INVALIDPARAMETER_GROUP );
+            }
+            response = statusCounterService.countByMonthAndStatus( xPagopaPnCxId, startMonth, endMonth, status );
+            logEvent.generateSuccess().log();
+        } catch (PnRuntimeException exc) {
+            logEvent.generateFailure("" + exc.getProblem()).log();
+            throw exc;
+        }
+        return ResponseEntity.ok( response );
+    }
+
     @Override
     public Optional<NativeWebRequest> getRequest() {
         return SenderReadB2BApi.super.getRequest();
@@ -8,11 +8,11 @@ import it.pagopa.pn.delivery.generated.openapi.appio.v1.api.AppIoPnNotificationA
 import it.pagopa.pn.delivery.generated.openapi.appio.v1.dto.CxTypeAuthFleet;
 import it.pagopa.pn.delivery.generated.openapi.appio.v1.dto.ThirdPartyMessage;
 import it.pagopa.pn.delivery.models.InternalAuthHeader;
-import it.pagopa.pn.delivery.models.InternalNotification;
 import it.pagopa.pn.delivery.svc.search.NotificationRetrieverService;
 import it.pagopa.pn.delivery.utils.io.IOMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -28,7 +28,8 @@ public class PnReceivedIONotificationsController implements AppIoPnNotificationA
 
     @Override
     public ResponseEntity<ThirdPartyMessage> getReceivedNotification(String xPagopaPnUid, CxTypeAuthFleet xPagopaPnCxType,
-                                                                     String xPagopaPnCxId, String iun, List<String> xPagopaPnCxGroups) {
+                                                                     String xPagopaPnCxId, String iun, List<String> xPagopaPnCxGroups,
+                                                                     String ifNoneMatch) {
         PnAuditLogBuilder auditLogBuilder = new PnAuditLogBuilder();
         ThirdPartyMessage result;
         PnAuditLogEvent logEvent = auditLogBuilder
@@ -36,15 +37,20 @@ public class PnReceivedIONotificationsController implements AppIoPnNotificationA
                 .iun(iun)
                 .build();
         logEvent.log();
+        NotificationRetrieverService.VersionedNotification versioned;
         try {
             InternalAuthHeader internalAuthHeader = new InternalAuthHeader(xPagopaPnCxType.getValue(), xPagopaPnCxId, xPagopaPnUid, xPagopaPnCxGroups);
-            InternalNotification internalNotification = retrieveSvc.getNotificationAndNotifyViewedEvent(iun, internalAuthHeader, null);
-            result = ioMapper.mapToThirdPartMessage(internalNotification);
+            versioned = retrieveSvc.getVersionedNotificationAndNotifyViewedEvent(iun, internalAuthHeader, null, ifNoneMatch);
+            if ( versioned.notModified() ) {
+                logEvent.generateSuccess("Notification not modified etag={}", versioned.etag()).log();
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(versioned.etag()).build();
+            }
+            result = ioMapper.mapToThirdPartMessage(versioned.notification());
             logEvent.generateSuccess().log();
         } catch (PnRuntimeException exc) {
             logEvent.generateFailure("" + exc.getProblem()).log();
             throw exc;
         }
-        return ResponseEntity.ok(result);
+        return ResponseEntity.ok().eTag(versioned.etag()).body(result);
     }
 }
@@ -0,0 +1,174 @@
+package it.pagopa.pn.delivery.springbootcfg;
+
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class SearchExecutorConfig {
+
+    public static final String SEARCH_EXECUTOR_BEAN_NAME = "searchPartitionsExecutor";
+    public static final String SEARCH_READ_AHEAD_EXECUTOR_BEAN_NAME = "searchReadAheadExecutor";
+    public static final String SEARCH_EXPORT_EXECUTOR_BEAN_NAME = "searchExportExecutor";
+    public static final String PA_GROUPS_REFRESH_EXECUTOR_BEAN_NAME = "paGroupsRefreshExecutor";
+    public static final String NOTIFICATION_DETAIL_EXECUTOR_BEAN_NAME = "notificationDetailExecutor";
+    public static final String NOTIFICATION_SUBMIT_EXECUTOR_BEAN_NAME = "notificationSubmitExecutor";
+
+    private static final int DEFAULT_POOL_SIZE = 16;
+    private static final int QUEUE_SIZE_PER_THREAD = 4;
+    private static final int DEFAULT_READ_AHEAD_POOL_SIZE = 2;
+    private static final int DEFAULT_EXPORT_MAX_CONCURRENT = 4;
+    // lettura delle pagine e scrittura del flusso
+    private static final int THREADS_PER_EXPORT = 2;
+    private static final int PA_GROUPS_REFRESH_QUEUE_SIZE = 64;
+    private static final int DEFAULT_DETAIL_POOL_SIZE = 32;
+    private static final int DEFAULT_SUBMIT_POOL_SIZE = 16;
+
+    /**
+     * Executor limitato su cui vengono elaborate le risposte delle query asincrone sulle partizioni mensili,
+     * così l'elaborazione non occupa i thread del client dynamo.
+     * Quando la coda è piena il task viene eseguito dal thread che ha completato la query invece di fallire.
+     */
+    @Bean(name = SEARCH_EXECUTOR_BEAN_NAME, destroyMethod = "shutdown")
+    public ExecutorService searchPartitionsExecutor(PnDeliveryConfigs cfg) {
+        int poolSize = cfg.getSearchExecutorPoolSize() != null && cfg.getSearchExecutorPoolSize() > 0
+                ? cfg.getSearchExecutorPoolSize() : DEFAULT_POOL_SIZE;
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "search-partition-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        return new ThreadPoolExecutor(poolSize, poolSize,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(poolSize * QUEUE_SIZE_PER_THREAD),
+                threadFactory,
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Executor usato per leggere in anticipo le pagine successive di una ricerca.
+     * La lettura anticipata è facoltativa: quando la coda è piena il task viene rifiutato e il chiamante lo ignora.
+     */
+    @Bean(name = SEARCH_READ_AHEAD_EXECUTOR_BEAN_NAME, destroyMethod = "shutdown")
+    public ExecutorService searchReadAheadExecutor(PnDeliveryConfigs cfg) {
+        int poolSize = cfg.getSearchPageCacheReadAheadPoolSize() != null && cfg.getSearchPageCacheReadAheadPoolSize() > 0
+                ? cfg.getSearchPageCacheReadAheadPoolSize() : DEFAULT_READ_AHEAD_POOL_SIZE;
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "search-read-ahead-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        return new ThreadPoolExecutor(poolSize, poolSize,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(poolSize * QUEUE_SIZE_PER_THREAD),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Executor delle esportazioni dei risultati di ricerca: ogni esportazione occupa un thread di lettura
+     * e uno di scrittura per tutta la sua durata. Non c'è coda: oltre il numero massimo di esportazioni
+     * contemporanee il task viene rifiutato.
+     */
+    @Bean(name = SEARCH_EXPORT_EXECUTOR_BEAN_NAME, destroyMethod = "shutdownNow")
+    public ExecutorService searchExportExecutor(PnDeliveryConfigs cfg) {
+        int maxConcurrent = cfg.getSearchExportMaxConcurrent() != null && cfg.getSearchExportMaxConcurrent() > 0
+                ? cfg.getSearchExportMaxConcurrent() : DEFAULT_EXPORT_MAX_CONCURRENT;
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "search-export-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        return new ThreadPoolExecutor(0, maxConcurrent * THREADS_PER_EXPORT,
+                60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Executor su cui vengono riletti in background i gruppi delle PA in cache, usati per etichettare i risultati
+     * di ricerca e per validare il gruppo delle nuove notifiche.
+     * L'aggiornamento è facoltativo: quando la coda è piena il task viene rifiutato e ritentato alla lettura successiva.
+     */
+    @Bean(name = PA_GROUPS_REFRESH_EXECUTOR_BEAN_NAME, destroyMethod = "shutdown")
+    public ExecutorService paGroupsRefreshExecutor() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "pa-groups-refresh-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        return new ThreadPoolExecutor(1, 1,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(PA_GROUPS_REFRESH_QUEUE_SIZE),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Executor su cui vengono eseguite in parallelo le letture del dettaglio notifica (data vault, timeline, gruppi,
+     * informazioni di pagamento). Quando la coda è piena il task viene rifiutato e la lettura fallisce come scaduta:
+     * eseguita dal thread chiamante non sarebbe limitata dal proprio timeout.
+     */
+    @Bean(name = NOTIFICATION_DETAIL_EXECUTOR_BEAN_NAME, destroyMethod = "shutdown")
+    public ExecutorService notificationDetailExecutor(PnDeliveryConfigs cfg) {
+        int poolSize = cfg.getDetailExecutorPoolSize() != null && cfg.getDetailExecutorPoolSize() > 0
+                ? cfg.getDetailExecutorPoolSize() : DEFAULT_DETAIL_POOL_SIZE;
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "notification-detail-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        return new ThreadPoolExecutor(poolSize, poolSize,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(poolSize * QUEUE_SIZE_PER_THREAD),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Executor su cui vengono eseguite in parallelo validazioni, risoluzione degli id opachi e scritture
+     * dell'invio di più notifiche. Quando la coda è piena il task viene rifiutato: il chiamante esegue il lavoro
+     * nel proprio thread se l'executor è saturo e lo fa fallire se l'executor è in chiusura.
+     */
+    @Bean(name = NOTIFICATION_SUBMIT_EXECUTOR_BEAN_NAME, destroyMethod = "shutdown")
+    public ExecutorService notificationSubmitExecutor(PnDeliveryConfigs cfg) {
+        int poolSize = cfg.getSubmitExecutorPoolSize() != null && cfg.getSubmitExecutorPoolSize() > 0
+                ? cfg.getSubmitExecutorPoolSize() : DEFAULT_SUBMIT_POOL_SIZE;
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "notification-submit-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        return new ThreadPoolExecutor(poolSize, poolSize,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(poolSize * QUEUE_SIZE_PER_THREAD),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+}
@@ -0,0 +1,15 @@
+package it.pagopa.pn.delivery.svc;
+
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NewNotificationRequest;
+import it.pagopa.pn.delivery.models.InternalNotification;
+import it.pagopa.pn.delivery.utils.MapStructConfig;
+import org.mapstruct.Mapper;
+
+/**
+ * Conversione della richiesta di invio nella notifica da salvare
+ */
+@Mapper(config = MapStructConfig.class)
+public interface NewNotificationRequestMapper {
+
+    InternalNotification toInternalNotification(NewNotificationRequest request);
+}
@@ -0,0 +1,143 @@
+package it.pagopa.pn.delivery.svc;
+
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.middleware.notificationdao.NotificationActivityEntityDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationDelegationMetadataEntity;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.svc.search.IndexNameAndPartitions;
+import it.pagopa.pn.delivery.svc.search.IndexNameAndPartitions.SearchIndexEnum;
+import it.pagopa.pn.delivery.svc.search.PnLastEvaluatedKey;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.time.YearMonth;
+import java.util.*;
+
+/**
+ * Mantiene e consulta il riepilogo dei mesi in cui le partizioni mensili di ricerca contengono notifiche.
+ * Le partizioni mensili hanno la forma {@code <prefisso>YYYYMM}: per ogni coppia (indice, prefisso) viene scritto
+ * un elemento per anno con i mesi attivi, così una ricerca su più anni interroga solo i mesi che contengono dati.
+ * I mesi precedenti a pn.delivery.search-activity-index-since non sono coperti dal riepilogo e vengono sempre interrogati;
+ * se la proprietà non è valorizzata il riepilogo viene solo alimentato e non viene usato nelle ricerche.
+ * <p>
+ * I mesi marcati non vengono mai azzerati: ogni istanza ricorda gli ultimi mesi che ha già marcato e non li riscrive,
+ * così le notifiche di uno stesso mittente o delegato nello stesso mese producono una sola scrittura per istanza.
+ */
+@Slf4j
+@Service
+public class NotificationActivityService {
+
+    private static final int MONTH_SUFFIX_LENGTH = 6;
+    private static final int MAX_MARKED_MONTHS = 10000;
+    private static final Set<SearchIndexEnum> MONTHLY_INDEXES = EnumSet.of(
+            SearchIndexEnum.INDEX_BY_SENDER,
+            SearchIndexEnum.INDEX_BY_RECEIVER,
+            SearchIndexEnum.INDEX_BY_DELEGATE,
+            SearchIndexEnum.INDEX_BY_DELEGATE_GROUP);
+
+    private final NotificationActivityEntityDao notificationActivityEntityDao;
+    private final YearMonth activityIndexSince;
+    // mesi già marcati dall'istanza, i meno recenti vengono dimenticati oltre MAX_MARKED_MONTHS
+    private final Set<String> markedMonths = Collections.synchronizedSet( Collections.newSetFromMap( new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_MARKED_MONTHS;
+        }
+    } ) );
+
+    public NotificationActivityService(NotificationActivityEntityDao notificationActivityEntityDao, PnDeliveryConfigs cfg) {
+        this.notificationActivityEntityDao = notificationActivityEntityDao;
+        this.activityIndexSince = StringUtils.hasText( cfg.getSearchActivityIndexSince() ) ? YearMonth.parse( cfg.getSearchActivityIndexSince() ) : null;
+    }
+
+    /**
+     * Marca come attivi i mesi delle partizioni per mittente e destinatario della riga di metadati
+     * @param metadata riga di metadati che sta per essere scritta
+     */
+    public void markActive(NotificationMetadataEntity metadata) {
+        markPartitionActive( SearchIndexEnum.INDEX_BY_SENDER, metadata.getSenderIdCreationMonth() );
+        markPartitionActive( SearchIndexEnum.INDEX_BY_RECEIVER, metadata.getRecipientIdCreationMonth() );
+    }
+
+    /**
+     * Marca come attivi i mesi delle partizioni per delegato (ed eventualmente gruppo) delle righe di metadati delegati
+     * @param delegationMetadata righe di metadati delegati che stanno per essere scritte
+     */
+    public void markActive(Collection<NotificationDelegationMetadataEntity> delegationMetadata) {
+        for (NotificationDelegationMetadataEntity entity : delegationMetadata) {
+            markPartitionActive( SearchIndexEnum.INDEX_BY_DELEGATE, entity.getDelegateIdCreationMonth() );
+            markPartitionActive( SearchIndexEnum.INDEX_BY_DELEGATE_GROUP, entity.getDelegateIdGroupIdCreationMonth() );
+        }
+    }
+
+    private void markPartitionActive(SearchIndexEnum indexName, String partition) {
+        if ( !isMonthlyPartition( partition ) )
+            return;
+        YearMonth month = monthOf( partition );
+        String activityKey = activityKey( indexName, partition );
+        String markedMonth = activityKey + IndexNameAndPartitions.PARTITION_KEY_SEPARATOR + month;
+        if ( markedMonths.contains( markedMonth ) )
+            return;
+        notificationActivityEntityDao.markMonthActive( activityKey, month.getYear(), month.getMonthValue() );
+        markedMonths.add( markedMonth );
+    }
+
+    /**
+     * Restituisce gli indici e partizioni da interrogare togliendo i mesi senza notifiche.
+     * La partizione dell'eventuale lastEvaluatedKey viene sempre mantenuta; in caso di errore nella lettura del
+     * riepilogo vengono restituite tutte le partizioni.
+     * @param indexNameAndPartitions indice e partizioni calcolati dai filtri di ricerca
+     * @param lastEvaluatedKey eventuale chiave da cui riprendere la ricerca
+     * @return indice e partizioni da interrogare
+     */
+    public IndexNameAndPartitions retainActivePartitions(IndexNameAndPartitions indexNameAndPartitions, PnLastEvaluatedKey lastEvaluatedKey) {
+        if ( activityIndexSince == null
+                || !MONTHLY_INDEXES.contains( indexNameAndPartitions.getIndexName() )
+                || indexNameAndPartitions.getPartitions().isEmpty() )
+            return indexNameAndPartitions;
+
+        List<String> partitions = indexNameAndPartitions.getPartitions();
+        try {
+            // tutte le partizioni della ricerca hanno lo stesso prefisso
+            String activityKey = activityKey( indexNameAndPartitions.getIndexName(), partitions.get( 0 ) );
+            int fromYear = monthOf( partitions.get( partitions.size() - 1 ) ).getYear();
+            int toYear = monthOf( partitions.get( 0 ) ).getYear();
+            Map<Integer, Integer> bitmaps = notificationActivityEntityDao.getMonthBitmaps( activityKey, fromYear, toYear );
+
+            String lastEvaluatedPartition = lastEvaluatedKey != null ? lastEvaluatedKey.getExternalLastEvaluatedKey() : null;
+            List<String> activePartitions = partitions.stream()
+                    .filter( partition -> partition.equals( lastEvaluatedPartition ) || isActive( partition, bitmaps ) )
+                    .toList();
+
+            log.info( "retained active partitions indexName={} activityKey={} partitions={} activePartitions={}",
+                    indexNameAndPartitions.getIndexName(), activityKey, partitions.size(), activePartitions.size() );
+            return new IndexNameAndPartitions( indexNameAndPartitions.getIndexName(), activePartitions );
+        } catch (RuntimeException exc) {
+            log.warn( "unable to read activity index, searching all partitions indexName={}", indexNameAndPartitions.getIndexName(), exc );
+            return indexNameAndPartitions;
+        }
+    }
+
+    private boolean isActive(String partition, Map<Integer, Integer> bitmaps) {
+        YearMonth month = monthOf( partition );
+        if ( month.isBefore( activityIndexSince ) )
+            return true;
+        int bitmap = bitmaps.getOrDefault( month.getYear(), 0 );
+        return (bitmap & (1 << (month.getMonthValue() - 1))) != 0;
+    }
+
+    private static boolean isMonthlyPartition(String partition) {
+        return partition != null && partition.length() > MONTH_SUFFIX_LENGTH;
+    }
+
+    private static String activityKey(SearchIndexEnum indexName, String partition) {
+        return indexName.getValue() + IndexNameAndPartitions.PARTITION_KEY_SEPARATOR
+                + partition.substring( 0, partition.length() - MONTH_SUFFIX_LENGTH );
+    }
+
+    private static YearMonth monthOf(String partition) {
+        String suffix = partition.substring( partition.length() - MONTH_SUFFIX_LENGTH );
+        return YearMonth.of( Integer.parseInt( suffix.substring( 0, 4 ) ), Integer.parseInt( suffix.substring( 4 ) ) );
+    }
+}
@@ -12,7 +12,6 @@ import it.pagopa.pn.delivery.generated.openapi.clients.safestorage.model.FileCre
 import it.pagopa.pn.delivery.generated.openapi.clients.safestorage.model.FileDownloadResponse;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.*;
 import it.pagopa.pn.delivery.middleware.NotificationDao;
-import it.pagopa.pn.delivery.middleware.NotificationViewedProducer;
 import it.pagopa.pn.delivery.models.InputDownloadDto;
 import it.pagopa.pn.delivery.models.InternalAuthHeader;
 import it.pagopa.pn.delivery.models.InternalNotification;
@@ -48,14 +47,14 @@ public class NotificationAttachmentService {
     private final PnSafeStorageClientImpl safeStorageClient;
     private final NotificationDao notificationDao;
     private final CheckAuthComponent checkAuthComponent;
-    private final NotificationViewedProducer notificationViewedProducer;
+    private final NotificationViewedService notificationViewedService;
     private final MVPParameterConsumer mvpParameterConsumer;
 
-    public NotificationAttachmentService(PnSafeStorageClientImpl safeStorageClient, NotificationDao notificationDao, CheckAuthComponent checkAuthComponent, NotificationViewedProducer notificationViewedProducer, MVPParameterConsumer mvpParameterConsumer) {
+    public NotificationAttachmentService(PnSafeStorageClientImpl safeStorageClient, NotificationDao notificationDao, CheckAuthComponent checkAuthComponent, NotificationViewedService notificationViewedService, MVPParameterConsumer mvpParameterConsumer) {
         this.safeStorageClient = safeStorageClient;
         this.notificationDao = notificationDao;
         this.checkAuthComponent = checkAuthComponent;
-        this.notificationViewedProducer = notificationViewedProducer;
+        this.notificationViewedService = notificationViewedService;
         this.mvpParameterConsumer = mvpParameterConsumer;
     }
 
@@ -231,7 +230,7 @@ public class NotificationAttachmentService {
                             .operatorUuid( uid )
                             .build();
                 }
-                notificationViewedProducer.sendNotificationViewed( iun, Instant.now(), authorizationOutcome.getEffectiveRecipientIdx(), delegateInfo );
+                notificationViewedService.notifyViewed( iun, Instant.now(), authorizationOutcome.getEffectiveRecipientIdx(), delegateInfo );
             }
 
             return InternalAttachmentWithFileKey.of(NotificationAttachmentDownloadMetadataResponse.builder()
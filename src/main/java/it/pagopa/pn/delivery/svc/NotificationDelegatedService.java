@@ -34,15 +34,18 @@ public class NotificationDelegatedService {
     private final NotificationMetadataEntityDao notificationMetadataEntityDao;
     private final NotificationDelegationMetadataEntityDao notificationDelegationMetadataEntityDao;
     private final PnMandateClientImpl mandateClient;
+    private final NotificationActivityService notificationActivityService;
 
     private static final int DEFAULT_DYNAMO_QUERY_SIZE = 1000;
 
     public NotificationDelegatedService(NotificationMetadataEntityDao notificationMetadataEntityDao,
                                         NotificationDelegationMetadataEntityDao notificationDelegationMetadataEntityDao,
-                                        PnMandateClientImpl mandateClient) {
+                                        PnMandateClientImpl mandateClient,
+                                        NotificationActivityService notificationActivityService) {
         this.notificationMetadataEntityDao = notificationMetadataEntityDao;
         this.notificationDelegationMetadataEntityDao = notificationDelegationMetadataEntityDao;
         this.mandateClient = mandateClient;
+        this.notificationActivityService = notificationActivityService;
     }
 
 
@@ -115,6 +118,7 @@ public class NotificationDelegatedService {
                 .flatMap(metadata -> computeDelegationMetadataEntries(metadata, listOfOneMandate))
                 .toList();
         log.debug("saving {} delegation metadata entries", entries.size());
+        notificationActivityService.markActive(entries);
         List<NotificationDelegationMetadataEntity> unprocessed = notificationDelegationMetadataEntityDao.batchPutItems(entries);
         if (!unprocessed.isEmpty()) {
             log.error("can not save all delegation metadata entities - unprocessed entries = {}", unprocessed.size());
@@ -209,6 +213,10 @@ public class NotificationDelegatedService {
                 .recipientIdCreationMonth(metadata.getRecipientIdCreationMonth())
                 .senderIdRecipientId(metadata.getSenderIdRecipientId())
                 .tableRow(metadata.getTableRow())
+                .mandateValidFrom(mandate.getDatefrom() != null ? Instant.parse(mandate.getDatefrom()) : null)
+                .mandateValidTo(mandate.getDateto() != null ? Instant.parse(mandate.getDateto()) : null)
+                .mandateVisibilityIds(mandate.getVisibilityIds())
+                .mandateVersion(NotificationDelegationMetadataEntity.MANDATE_ATTRIBUTES_VERSION)
                 .build();
     }
 
@@ -1,17 +1,26 @@
 package it.pagopa.pn.delivery.svc;
 
 import it.pagopa.pn.commons.exceptions.PnIdConflictException;
+import it.pagopa.pn.commons.exceptions.PnInternalException;
+import it.pagopa.pn.commons.exceptions.PnRuntimeException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.exception.PnBadRequestException;
 import it.pagopa.pn.delivery.exception.PnInvalidInputException;
+import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.RecipientType;
 import it.pagopa.pn.delivery.generated.openapi.clients.externalregistries.model.PaGroup;
 import it.pagopa.pn.delivery.generated.openapi.clients.externalregistries.model.PaGroupStatus;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NewNotificationRequest;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NewNotificationResponse;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationRecipient;
 import it.pagopa.pn.delivery.middleware.NotificationDao;
 import it.pagopa.pn.delivery.models.InternalNotification;
+import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
 import it.pagopa.pn.delivery.pnclient.externalregistries.PnExternalRegistriesClientImpl;
+import it.pagopa.pn.delivery.utils.MdcUtils;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Base64Utils;
 import org.springframework.util.CollectionUtils;
@@ -21,21 +30,39 @@ import java.nio.charset.StandardCharsets;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.ZoneOffset;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
 
-import static it.pagopa.pn.delivery.exception.PnDeliveryExceptionCodes.ERROR_CODE_DELIVERY_INVALIDPARAMETER_GROUP;
+import static it.pagopa.pn.delivery.exception.PnDeliveryExceptionCodes.*;
+import static it.pagopa.pn.delivery.springbootcfg.SearchExecutorConfig.NOTIFICATION_SUBMIT_EXECUTOR_BEAN_NAME;
 
 @Service
 @Slf4j
 public class NotificationReceiverService {
 
+	static final int MAX_BULK_NOTIFICATIONS = 100;
+	static final int DEFAULT_BULK_MAX_CONCURRENCY = 8;
+
+	/**
+	 * Esito dell'invio di una notifica di una richiesta multipla: è valorizzata la risposta oppure l'errore
+	 */
+	public record NewNotificationResult(@Nullable NewNotificationResponse response, @Nullable PnRuntimeException error) {}
+
 	private final Clock clock;
 	private final NotificationDao notificationDao;
 	private final NotificationReceiverValidator validator;
-	private final ModelMapper modelMapper;
+	private final NewNotificationRequestMapper newNotificationRequestMapper;
 
 	private final PnExternalRegistriesClientImpl pnExternalRegistriesClient;
+	private final PnDataVaultClientImpl pnDataVaultClient;
+	private final PnDeliveryConfigs cfg;
+	private final ExecutorService submitExecutor;
 
 	private final IunGenerator iunGenerator = new IunGenerator();
 
@@ -44,13 +71,19 @@ public class NotificationReceiverService {
 			Clock clock,
 			NotificationDao notificationDao,
 			NotificationReceiverValidator validator,
-			ModelMapper modelMapper,
-			PnExternalRegistriesClientImpl pnExternalRegistriesClient) {
+			NewNotificationRequestMapper newNotificationRequestMapper,
+			PnExternalRegistriesClientImpl pnExternalRegistriesClient,
+			PnDataVaultClientImpl pnDataVaultClient,
+			PnDeliveryConfigs cfg,
+			@Qualifier(NOTIFICATION_SUBMIT_EXECUTOR_BEAN_NAME) ExecutorService submitExecutor) {
 		this.clock = clock;
 		this.notificationDao = notificationDao;
 		this.validator = validator;
-		this.modelMapper = modelMapper;
+		this.newNotificationRequestMapper = newNotificationRequestMapper;
 		this.pnExternalRegistriesClient = pnExternalRegistriesClient;
+		this.pnDataVaultClient = pnDataVaultClient;
+		this.cfg = cfg;
+		this.submitExecutor = submitExecutor;
 	}
 
 	/**
@@ -72,34 +105,192 @@ public class NotificationReceiverService {
 		log.info("New notification storing START");
 		log.debug("New notification storing START paProtocolNumber={} idempotenceToken={}",
 				newNotificationRequest.getPaProtocolNumber(), newNotificationRequest.getIdempotenceToken());
+		InternalNotification internalNotification = prepareNotification(xPagopaPnCxId, newNotificationRequest, xPagopaPnSrcCh, xPagopaPnCxGroups);
+
+		String iun = doSaveWithRethrow(internalNotification);
+
+		NewNotificationResponse response = generateResponse(internalNotification, iun);
+
+		log.info("New notification storing END {}", response);
+		return response;
+	}
+
+	/**
+	 * Store metadata and documents of many new notification requests, each one with its own outcome
+	 *
+	 * @param xPagopaPnCxId Public Administration id
+	 * @param newNotificationRequests notification requests, at most {@value MAX_BULK_NOTIFICATIONS}
+	 * @param xPagopaPnCxGroups PA Group id List
+	 * @return one result for each request, in request order
+	 */
+	public List<NewNotificationResult> receiveNotifications(
+			String xPagopaPnCxId,
+			List<NewNotificationRequest> newNotificationRequests,
+			String xPagopaPnSrcCh,
+			List<String> xPagopaPnCxGroups
+	) {
+		if ( CollectionUtils.isEmpty( newNotificationRequests ) || newNotificationRequests.size() > MAX_BULK_NOTIFICATIONS ) {
+			String logMessage = String.format( "Notifications size=%d not in range 1-%d",
+					newNotificationRequests == null ? 0 : newNotificationRequests.size(), MAX_BULK_NOTIFICATIONS );
+			throw new PnBadRequestException( "Invalid notifications", logMessage, ERROR_CODE_DELIVERY_INVALIDPARAMETER_NOTIFICATIONS );
+		}
+		log.info( "New notifications storing START size={}", newNotificationRequests.size() );
+		Semaphore permits = new Semaphore( bulkMaxConcurrency() );
+
+		// validazione e conversione di ogni richiesta
+		List<CompletableFuture<InternalNotification>> prepared = new ArrayList<>( newNotificationRequests.size() );
+		for ( NewNotificationRequest request : newNotificationRequests ) {
+			prepared.add( bounded( permits, () -> prepareNotification( xPagopaPnCxId, request, xPagopaPnSrcCh, xPagopaPnCxGroups ) ) );
+		}
+		NewNotificationResult[] results = new NewNotificationResult[ newNotificationRequests.size() ];
+		List<InternalNotification> notifications = new ArrayList<>( Collections.nCopies( results.length, null ) );
+		Set<String> idempotenceKeys = new HashSet<>();
+		for ( int i = 0; i < results.length; i++ ) {
+			try {
+				InternalNotification notification = join( prepared.get( i ) );
+				// le richieste ripetute nello stesso invio sono in conflitto con la prima, come se fossero inviate dopo
+				String idempotenceKey = xPagopaPnCxId + "##" + notification.getPaProtocolNumber() + "##" + notification.getIdempotenceToken();
+				if ( !idempotenceKeys.add( idempotenceKey ) )
+					throw new PnIdConflictException( Map.of( "Duplicated notification for senderPaId##paProtocolNumber##idempotenceToken", idempotenceKey ) );
+				notifications.set( i, notification );
+			} catch (PnRuntimeException exc) {
+				results[ i ] = failure( newNotificationRequests.get( i ), exc );
+			}
+		}
+
+		// una sola risoluzione dell'id opaco per ogni destinatario distinto: le scritture la ritrovano nella cache del client
+		Map<String, CompletableFuture<String>> recipientIds = new HashMap<>();
+		for ( InternalNotification notification : notifications ) {
+			if ( notification == null )
+				continue;
+			for ( NotificationRecipient recipient : notification.getRecipients() ) {
+				RecipientType recipientType = RecipientType.fromValue( recipient.getRecipientType().getValue() );
+				String taxId = recipient.getTaxId();
+				recipientIds.computeIfAbsent( recipientKey( recipient ), key -> bounded( permits,
+						() -> pnDataVaultClient.ensureRecipientByExternalId( recipientType, taxId ) ) );
+			}
+		}
+
+		// scrittura di ogni notifica, ciascuna con il proprio controllo di idempotenza
+		List<CompletableFuture<String>> saved = new ArrayList<>( Collections.nCopies( results.length, null ) );
+		for ( int i = 0; i < results.length; i++ ) {
+			InternalNotification notification = notifications.get( i );
+			if ( notification == null )
+				continue;
+			try {
+				for ( NotificationRecipient recipient : notification.getRecipients() ) {
+					join( recipientIds.get( recipientKey( recipient ) ) );
+				}
+				saved.set( i, bounded( permits, () -> doSaveWithRethrow( notification ) ) );
+			} catch (PnRuntimeException exc) {
+				results[ i ] = failure( newNotificationRequests.get( i ), exc );
+			}
+		}
+		for ( int i = 0; i < results.length; i++ ) {
+			if ( saved.get( i ) == null )
+				continue;
+			try {
+				String iun = join( saved.get( i ) );
+				results[ i ] = new NewNotificationResult( generateResponse( notifications.get( i ), iun ), null );
+			} catch (PnRuntimeException exc) {
+				results[ i ] = failure( newNotificationRequests.get( i ), exc );
+			}
+		}
+
+		log.info( "New notifications storing END size={} failed={}", results.length,
+				Arrays.stream( results ).filter( result -> result.error() != null ).count() );
+		return Arrays.asList( results );
+	}
+
+	private InternalNotification prepareNotification(
+			String xPagopaPnCxId,
+			NewNotificationRequest newNotificationRequest,
+			String xPagopaPnSrcCh,
+			List<String> xPagopaPnCxGroups
+	) {
 		validator.checkNewNotificationRequestBeforeInsertAndThrow(newNotificationRequest);
 		log.debug("Validation OK for paProtocolNumber={}", newNotificationRequest.getPaProtocolNumber() );
 
 		String notificationGroup = newNotificationRequest.getGroup();
 		checkGroup(xPagopaPnCxId, notificationGroup, xPagopaPnCxGroups);
 
-		InternalNotification internalNotification = modelMapper.map(newNotificationRequest, InternalNotification.class);
+		InternalNotification internalNotification = newNotificationRequestMapper.toInternalNotification(newNotificationRequest);
 
 		internalNotification.setSenderPaId( xPagopaPnCxId );
 		internalNotification.setSourceChannel( xPagopaPnSrcCh );
+		return internalNotification;
+	}
 
-		String iun = doSaveWithRethrow(internalNotification);
+	private static String recipientKey(NotificationRecipient recipient) {
+		return recipient.getRecipientType().getValue() + "##" + recipient.getTaxId();
+	}
 
-		NewNotificationResponse response = generateResponse(internalNotification, iun);
+	private static NewNotificationResult failure(NewNotificationRequest request, PnRuntimeException exc) {
+		log.warn( "New notification storing failed paProtocolNumber={} idempotenceToken={} problem={}",
+				request.getPaProtocolNumber(), request.getIdempotenceToken(), exc.getProblem() );
+		return new NewNotificationResult( null, exc );
+	}
 
-		log.info("New notification storing END {}", response);
-		return response;
+	private int bulkMaxConcurrency() {
+		Integer maxConcurrency = cfg.getSubmitBulkMaxConcurrency();
+		return maxConcurrency != null && maxConcurrency > 0 ? maxConcurrency : DEFAULT_BULK_MAX_CONCURRENCY;
+	}
+
+	/**
+	 * Esegue un'operazione sull'executor degli invii, attendendo che le operazioni in corso della stessa richiesta
+	 * siano meno del massimo configurato
+	 */
+	private <T> CompletableFuture<T> bounded(Semaphore permits, Supplier<T> call) {
+		try {
+			permits.acquire();
+		} catch (InterruptedException exc) {
+			Thread.currentThread().interrupt();
+			throw new PnInternalException( "Interrupted while storing notifications", ERROR_CODE_DELIVERY_NOTIFICATION_SUBMIT_FAILED, exc );
+		}
+		CompletableFuture<T> result = new CompletableFuture<>();
+		result.whenComplete( (value, exc) -> permits.release() );
+		Callable<Void> body = () -> {
+			try {
+				result.complete( call.get() );
+			} catch (RuntimeException | Error exc) {
+				result.completeExceptionally( exc );
+			}
+			return null;
+		};
+		try {
+			MdcUtils.submit( submitExecutor, body );
+		} catch (RejectedExecutionException exc) {
+			if ( submitExecutor.isShutdown() ) {
+				// executor in chiusura: l'operazione non verrà eseguita, la notifica fallisce invece di restare in attesa
+				result.completeExceptionally( new PnInternalException( "Notification submit executor is shutting down",
+						ERROR_CODE_DELIVERY_NOTIFICATION_SUBMIT_FAILED, exc ) );
+			} else {
+				// executor saturo: l'operazione viene eseguita dal thread chiamante, che rallenta così l'invio
+				MdcUtils.submit( null, body );
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Attende l'esito di un'operazione; gli errori inattesi diventano errori interni della singola notifica
+	 */
+	private static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException exc) {
+			Throwable cause = exc.getCause() != null ? exc.getCause() : exc;
+			if ( cause instanceof PnRuntimeException pnRuntimeException )
+				throw pnRuntimeException;
+			throw new PnInternalException( "Unable to store notification", ERROR_CODE_DELIVERY_NOTIFICATION_SUBMIT_FAILED, cause );
+		}
 	}
 
 	private void checkGroup(String senderId, String notificationGroup, List<String> xPagopaPnCxGroups) {
 
 		if( StringUtils.hasText( notificationGroup ) ) {
 
-			List<PaGroup> paGroups = pnExternalRegistriesClient.getGroups( senderId );
-			PaGroup paGroup = paGroups.stream().filter(elem -> {
-				assert elem.getId() != null;
-				return elem.getId().equals(notificationGroup);
-			}).findAny().orElse(null);
+			PaGroup paGroup = pnExternalRegistriesClient.getPaGroups( senderId ).get( notificationGroup );
 
 			if( paGroup == null || Objects.equals(paGroup.getStatus(), PaGroupStatus.SUSPENDED)){
 				String logMessage = String.format("Group=%s not present or suspended in pa_groups=%s", notificationGroup, paGroup);
@@ -0,0 +1,166 @@
+package it.pagopa.pn.delivery.svc;
+
+import it.pagopa.pn.commons.exceptions.PnInternalException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.exception.PnBadRequestException;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatus;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatusCount;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatusCountResponse;
+import it.pagopa.pn.delivery.middleware.notificationdao.NotificationStatusCounterEntityDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.utils.DataUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.util.CollectionUtils;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+import static it.pagopa.pn.delivery.exception.PnDeliveryExceptionCodes.ERROR_CODE_DELIVERY_HANDLEEVENTFAILED;
+import static it.pagopa.pn.delivery.exception.PnDeliveryExceptionCodes.ERROR_CODE_DELIVERY_INVALIDPARAMETER_MONTH;
+
+/**
+ * Contatori precalcolati del numero di notifiche per mese di invio e stato, per mittente e per destinatario.
+ * Ad ogni cambio di stato il contatore dello stato precedente viene decrementato e quello del nuovo stato
+ * incrementato in un'unica transazione, condizionata al marcatore che registra lo stato già conteggiato
+ * per la notifica: la ripetizione dello stesso evento non modifica i contatori.
+ * <p>
+ * Il marcatore scade dopo pn.delivery.notification-status-counter-marker-ttl dall'ultimo cambio di stato: un cambio
+ * di stato successivo alla scadenza incrementa il nuovo stato senza decrementare il precedente.
+ * <p>
+ * I conteggi di 12 mesi per tutti gli stati superano le 100 chiavi di una BatchGetItem e vengono letti con due richieste.
+ */
+@Slf4j
+@Service
+public class NotificationStatusCounterService {
+
+    public static final int MAX_COUNT_MONTHS = 12;
+    private static final int MAX_ATTEMPTS = 3;
+    // marcatore più decremento e incremento dei contatori di mittente e destinatari
+    private static final int DYNAMODB_MAX_TRANSACTION_ITEMS = 100;
+    private static final String MARKER_PREFIX = "IUN";
+    private static final DateTimeFormatter PARTITION_MONTH_FORMAT = DateTimeFormatter.ofPattern( "yyyyMM" );
+    private static final Duration DEFAULT_MARKER_TTL = Duration.ofDays( 365 );
+
+    private final NotificationStatusCounterEntityDao notificationStatusCounterEntityDao;
+    private final Clock clock;
+    private final Duration markerTtl;
+
+    public NotificationStatusCounterService(NotificationStatusCounterEntityDao notificationStatusCounterEntityDao,
+                                            PnDeliveryConfigs cfg,
+                                            Clock clock) {
+        this.notificationStatusCounterEntityDao = notificationStatusCounterEntityDao;
+        this.clock = clock;
+        Duration ttl = cfg.getNotificationStatusCounterMarkerTtl();
+        this.markerTtl = ttl != null && !ttl.isNegative() && !ttl.isZero() ? ttl : DEFAULT_MARKER_TTL;
+    }
+
+    /**
+     * Sposta i contatori di mittente e destinatari della notifica dallo stato già conteggiato al nuovo stato
+     * @param iun identificativo della notifica
+     * @param nextStatus nuovo stato
+     * @param metadata righe di metadati della notifica, una per destinatario
+     */
+    public void updateCounters(String iun, NotificationStatus nextStatus, List<NotificationMetadataEntity> metadata) {
+        if ( metadata.isEmpty() )
+            return;
+        String markerKey = DataUtils.createConcatenation( MARKER_PREFIX, iun );
+        String senderPartition = metadata.get( 0 ).getSenderIdCreationMonth();
+        List<String> recipientPartitions = metadata.stream()
+                .map( NotificationMetadataEntity::getRecipientIdCreationMonth )
+                .toList();
+        if ( 1 + 2 * (1 + recipientPartitions.size()) > DYNAMODB_MAX_TRANSACTION_ITEMS ) {
+            log.warn( "too many recipients to update status counters iun={} recipients={}", iun, recipientPartitions.size() );
+            return;
+        }
+
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            String previousStatus = notificationStatusCounterEntityDao.getCountedStatus( markerKey ).orElse( null );
+            if ( nextStatus.getValue().equals( previousStatus ) ) {
+                log.debug( "status already counted iun={} status={}", iun, nextStatus );
+                return;
+            }
+
+            List<String> decrementKeys = previousStatus == null ? List.of() : counterKeys( senderPartition, recipientPartitions, previousStatus );
+            List<String> incrementKeys = counterKeys( senderPartition, recipientPartitions, nextStatus.getValue() );
+            long markerExpiration = clock.instant().plus( markerTtl ).getEpochSecond();
+            if ( notificationStatusCounterEntityDao.moveCounters( markerKey, previousStatus, nextStatus.getValue(), markerExpiration, decrementKeys, incrementKeys ) ) {
+                log.debug( "counters updated iun={} previousStatus={} nextStatus={}", iun, previousStatus, nextStatus );
+                return;
+            }
+            log.info( "counters update conflict iun={} attempt={}", iun, attempt );
+        }
+
+        String msg = String.format( "Unable to update status counters of iun=%s nextStatus=%s", iun, nextStatus );
+        throw new PnInternalException( msg, ERROR_CODE_DELIVERY_HANDLEEVENTFAILED );
+    }
+
+    private static List<String> counterKeys(String senderPartition, List<String> recipientPartitions, String status) {
+        List<String> keys = new ArrayList<>();
+        keys.add( DataUtils.createConcatenation( senderPartition, status ) );
+        recipientPartitions.forEach( partition -> keys.add( DataUtils.createConcatenation( partition, status ) ) );
+        return keys;
+    }
+
+    /**
+     * Conteggi per mese e stato di un mittente o di un destinatario
+     * @param senderOrRecipientId identificativo del mittente o identificativo interno del destinatario
+     * @param startMonth primo mese (AAAA-MM)
+     * @param endMonth ultimo mese (AAAA-MM), al più {@value #MAX_COUNT_MONTHS} mesi dopo il primo
+     * @param statuses stati richiesti, tutti se vuoto
+     * @return un conteggio per ogni combinazione di mese e stato, dal mese più recente
+     */
+    public NotificationStatusCountResponse countByMonthAndStatus(String senderOrRecipientId, String startMonth, String endMonth,
+                                                                 List<NotificationStatus> statuses) {
+        YearMonth start = parseMonth( startMonth );
+        YearMonth end = parseMonth( endMonth );
+        if ( end.isBefore( start ) || !end.isBefore( start.plusMonths( MAX_COUNT_MONTHS ) ) ) {
+            throw new PnBadRequestException( "Invalid month range",
+                    "endMonth must follow startMonth by less than " + MAX_COUNT_MONTHS + " months",
+                    ERROR_CODE_DELIVERY_INVALIDPARAMETER_MONTH );
+        }
+        List<NotificationStatus> requestedStatuses = CollectionUtils.isEmpty( statuses ) ? List.of( NotificationStatus.values() ) : statuses;
+
+        List<NotificationStatusCount> counts = new ArrayList<>();
+        List<Key> keys = new ArrayList<>();
+        for (YearMonth month = end; !month.isBefore( start ); month = month.minusMonths( 1 )) {
+            String partition = DataUtils.createConcatenation( senderOrRecipientId, month.format( PARTITION_MONTH_FORMAT ) );
+            for (NotificationStatus status : requestedStatuses) {
+                counts.add( NotificationStatusCount.builder()
+                        .month( month.toString() )
+                        .status( status )
+                        .count( 0L )
+                        .build() );
+                keys.add( Key.builder().partitionValue( DataUtils.createConcatenation( partition, status.getValue() ) ).build() );
+            }
+        }
+
+        // i contatori mai incrementati non esistono e restano a 0
+        Map<String, Long> byKey = new HashMap<>();
+        notificationStatusCounterEntityDao.batchGetItems( keys )
+                .forEach( counter -> byKey.put( counter.getCounterKey(), Optional.ofNullable( counter.getCount() ).orElse( 0L ) ) );
+        for (int i = 0; i < counts.size(); i++) {
+            String counterKey = keys.get( i ).partitionKeyValue().s();
+            counts.get( i ).setCount( byKey.getOrDefault( counterKey, 0L ) );
+        }
+        log.debug( "count by month and status id={} startMonth={} endMonth={} counters={} found={}",
+                senderOrRecipientId, start, end, keys.size(), byKey.size() );
+
+        return NotificationStatusCountResponse.builder()
+                .counts( counts )
+                .build();
+    }
+
+    private static YearMonth parseMonth(String month) {
+        try {
+            return YearMonth.parse( month );
+        } catch (DateTimeParseException exc) {
+            throw new PnBadRequestException( "Invalid month", "Month must be in the format YYYY-MM", ERROR_CODE_DELIVERY_INVALIDPARAMETER_MONTH, exc );
+        }
+    }
+}
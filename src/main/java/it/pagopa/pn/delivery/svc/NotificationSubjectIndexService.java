@@ -0,0 +1,331 @@
+package it.pagopa.pn.delivery.svc;
+
+import it.pagopa.pn.commons.exceptions.PnInternalException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.exception.PnBadRequestException;
+import it.pagopa.pn.delivery.middleware.notificationdao.NotificationMetadataEntityDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.NotificationSubjectIndexEntityDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationSubjectTokenEntity;
+import it.pagopa.pn.delivery.models.PageSearchTrunk;
+import it.pagopa.pn.delivery.svc.search.IndexNameAndPartitions;
+import it.pagopa.pn.delivery.svc.search.IndexNameAndPartitions.SearchIndexEnum;
+import it.pagopa.pn.delivery.svc.search.SubjectTerms;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static it.pagopa.pn.delivery.exception.PnDeliveryExceptionCodes.ERROR_CODE_DELIVERY_HANDLEEVENTFAILED;
+import static it.pagopa.pn.delivery.exception.PnDeliveryExceptionCodes.ERROR_CODE_DELIVERY_INVALIDPARAMETER_SUBJECT;
+
+/**
+ * Mantiene e consulta l'indice per oggetto delle notifiche.
+ * Per ogni riga di metadati vengono scritte le occorrenze dei termini dell'oggetto nelle partizioni mensili per
+ * mittente e per destinatario; una ricerca per oggetto legge a pagine le occorrenze dei termini letterali
+ * dell'espressione regolare, ne fa l'intersezione e verifica l'espressione solo sulle righe candidate.
+ * I mesi precedenti a pn.delivery.search-subject-index-since non sono coperti dall'indice e non vengono interrogati;
+ * se la proprietà non è valorizzata l'indice viene solo alimentato e il filtro per oggetto non viene applicato.
+ */
+@Slf4j
+@Service
+public class NotificationSubjectIndexService {
+
+    private static final int MONTH_SUFFIX_LENGTH = 6;
+    private static final int MAX_CACHED_PATTERNS = 1024;
+
+    /**
+     * Riga di metadati candidata per una ricerca per oggetto
+     * @param iunRecipientId chiave della riga di metadati
+     * @param sentAt data di invio, chiave di ordinamento della riga
+     */
+    public record Candidate(String iunRecipientId, Instant sentAt) {
+
+        /**
+         * @return posizione della candidata nell'ordinamento delle occorrenze di ogni termine
+         */
+        String position() {
+            return sentAt + NotificationSubjectTokenEntity.KEY_SEPARATOR + iunRecipientId;
+        }
+    }
+
+    private final NotificationSubjectIndexEntityDao notificationSubjectIndexEntityDao;
+    private final NotificationMetadataEntityDao notificationMetadataEntityDao;
+    private final YearMonth subjectIndexSince;
+    private final Map<String, Pattern> patterns = new ConcurrentHashMap<>();
+
+    public NotificationSubjectIndexService(NotificationSubjectIndexEntityDao notificationSubjectIndexEntityDao,
+                                           NotificationMetadataEntityDao notificationMetadataEntityDao,
+                                           PnDeliveryConfigs cfg) {
+        this.notificationSubjectIndexEntityDao = notificationSubjectIndexEntityDao;
+        this.notificationMetadataEntityDao = notificationMetadataEntityDao;
+        this.subjectIndexSince = StringUtils.hasText( cfg.getSearchSubjectIndexSince() ) ? YearMonth.parse( cfg.getSearchSubjectIndexSince() ) : null;
+    }
+
+    /**
+     * @return true se le ricerche possono usare l'indice per oggetto
+     */
+    public boolean isEnabled() {
+        return subjectIndexSince != null;
+    }
+
+    /**
+     * Scrive le occorrenze dei termini dell'oggetto nelle partizioni per mittente e destinatario della riga di metadati.
+     * L'oggetto di una notifica non cambia, quindi l'indice va scritto una volta sola, all'accettazione.
+     * @param metadata riga di metadati che sta per essere scritta
+     */
+    public void indexSubject(NotificationMetadataEntity metadata) {
+        String subject = metadata.getTableRow() == null ? null : metadata.getTableRow().get( "subject" );
+        Set<String> terms = SubjectTerms.indexTerms( subject );
+        if ( terms.isEmpty() )
+            return;
+
+        List<NotificationSubjectTokenEntity> items = new ArrayList<>();
+        addPostings( items, SearchIndexEnum.INDEX_BY_SENDER, metadata.getSenderIdCreationMonth(), terms, metadata );
+        addPostings( items, SearchIndexEnum.INDEX_BY_RECEIVER, metadata.getRecipientIdCreationMonth(), terms, metadata );
+        log.debug( "index subject iunRecipientId={} terms={} items={}", metadata.getIunRecipientId(), terms.size(), items.size() );
+
+        List<NotificationSubjectTokenEntity> unprocessed = notificationSubjectIndexEntityDao.batchPutItems( items );
+        if ( !unprocessed.isEmpty() ) {
+            String msg = String.format( "Unable to index subject of iunRecipientId=%s unprocessed=%d", metadata.getIunRecipientId(), unprocessed.size() );
+            throw new PnInternalException( msg, ERROR_CODE_DELIVERY_HANDLEEVENTFAILED );
+        }
+    }
+
+    private static void addPostings(List<NotificationSubjectTokenEntity> items, SearchIndexEnum indexName, String partition,
+                                    Set<String> terms, NotificationMetadataEntity metadata) {
+        if ( partition == null )
+            return;
+        String partitionKey = partitionKey( indexName, partition );
+        terms.forEach( term -> items.add( NotificationSubjectTokenEntity.of( partitionKey, term, metadata.getSentAt(), metadata.getIunRecipientId() ) ) );
+    }
+
+    /**
+     * Restituisce le partizioni coperte dall'indice per oggetto
+     * @param indexNameAndPartitions indice e partizioni calcolati dai filtri di ricerca
+     * @return indice e partizioni da interrogare
+     */
+    public IndexNameAndPartitions retainIndexedPartitions(IndexNameAndPartitions indexNameAndPartitions) {
+        List<String> partitions = indexNameAndPartitions.getPartitions().stream()
+                .filter( partition -> !monthOf( partition ).isBefore( subjectIndexSince ) )
+                .toList();
+        if ( partitions.size() < indexNameAndPartitions.getPartitions().size() )
+            log.info( "subject search limited to indexed months indexName={} partitions={} indexedPartitions={} since={}",
+                    indexNameAndPartitions.getIndexName(), indexNameAndPartitions.getPartitions().size(), partitions.size(), subjectIndexSince );
+        return new IndexNameAndPartitions( indexNameAndPartitions.getIndexName(), partitions );
+    }
+
+    /**
+     * Righe candidate di una partizione: contengono nell'oggetto tutti i termini indicati.
+     * Le occorrenze dei termini vengono lette a pagine solo quando servono nuove candidate.
+     * @param indexName indice della ricerca
+     * @param partition partizione mensile
+     * @param terms termini richiesti
+     * @param startDate data di invio minima
+     * @param endDate data di invio massima
+     * @param startAfter candidata da cui riprendere la ricerca (esclusa), null per partire dalla più recente
+     * @param pageSize occorrenze lette per ogni query
+     * @return lettore delle candidate, ordinate per data di invio decrescente
+     */
+    public CandidateReader candidates(SearchIndexEnum indexName, String partition, List<String> terms, Instant startDate, Instant endDate,
+                                      Candidate startAfter, int pageSize) {
+        String partitionKey = partitionKey( indexName, partition );
+        String from = startDate.toString();
+        String to = endDate.toString();
+        // le occorrenze di ogni termine hanno lo stesso ordinamento: una sola posizione riprende tutte le letture,
+        // purché sia nel range di date della query
+        Candidate resumeAfter = startAfter != null && startAfter.sentAt().toString().compareTo( to ) <= 0 ? startAfter : null;
+        boolean exhausted = resumeAfter != null && resumeAfter.sentAt().toString().compareTo( from ) < 0;
+
+        List<TermReader> readers = new ArrayList<>();
+        for (String term : terms)
+            readers.add( new TermReader( partitionKey, term, startDate, endDate, resumeAfter, pageSize ) );
+        return new CandidateReader( partitionKey, readers, exhausted || readers.isEmpty() );
+    }
+
+    /**
+     * Intersezione delle occorrenze dei termini di una partizione. Le occorrenze di ogni termine sono ordinate per
+     * data di invio e iun_recipientId decrescenti, quindi l'intersezione procede come una merge join.
+     */
+    public static class CandidateReader {
+
+        private final String partitionKey;
+        private final List<TermReader> readers;
+        private boolean exhausted;
+
+        private CandidateReader(String partitionKey, List<TermReader> readers, boolean exhausted) {
+            this.partitionKey = partitionKey;
+            this.readers = readers;
+            this.exhausted = exhausted;
+        }
+
+        /**
+         * @param maxCandidates numero massimo di candidate da restituire
+         * @return candidate che seguono quelle già restituite, vuota se non ce ne sono altre
+         */
+        public List<Candidate> next(int maxCandidates) {
+            List<Candidate> result = new ArrayList<>();
+            while ( !exhausted && result.size() < maxCandidates ) {
+                Candidate candidate = nextMatch();
+                if ( candidate == null )
+                    exhausted = true;
+                else
+                    result.add( candidate );
+            }
+            log.debug( "found subject candidates partitionKey={} candidates={} exhausted={}", partitionKey, result.size(), exhausted );
+            return result;
+        }
+
+        private Candidate nextMatch() {
+            while ( true ) {
+                // la testa più avanzata: le occorrenze che la precedono negli altri termini non sono nell'intersezione
+                Candidate lowest = null;
+                boolean aligned = true;
+                for (TermReader reader : readers) {
+                    Candidate head = reader.peek();
+                    if ( head == null )
+                        return null;
+                    if ( lowest == null ) {
+                        lowest = head;
+                    } else {
+                        int cmp = head.position().compareTo( lowest.position() );
+                        aligned = aligned && cmp == 0;
+                        if ( cmp < 0 )
+                            lowest = head;
+                    }
+                }
+
+                if ( aligned ) {
+                    readers.forEach( TermReader::poll );
+                    return lowest;
+                }
+                for (TermReader reader : readers)
+                    reader.skipBefore( lowest );
+            }
+        }
+    }
+
+    /**
+     * Lettura a pagine delle occorrenze di un termine
+     */
+    private class TermReader {
+
+        private final String partitionKey;
+        private final String term;
+        private final Instant startDate;
+        private final Instant endDate;
+        private final int pageSize;
+        private final Deque<Candidate> buffer = new ArrayDeque<>();
+        private Map<String, AttributeValue> lastEvaluatedKey;
+        private boolean lastPage;
+
+        private TermReader(String partitionKey, String term, Instant startDate, Instant endDate, Candidate startAfter, int pageSize) {
+            this.partitionKey = partitionKey;
+            this.term = term;
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.pageSize = pageSize;
+            if ( startAfter != null )
+                this.lastEvaluatedKey = Map.of(
+                        NotificationSubjectTokenEntity.FIELD_PARTITION_KEY, AttributeValue.builder().s( partitionKey ).build(),
+                        NotificationSubjectTokenEntity.FIELD_TERM_KEY, AttributeValue.builder()
+                                .s( NotificationSubjectTokenEntity.termKey( term, startAfter.sentAt(), startAfter.iunRecipientId() ) ).build() );
+        }
+
+        private Candidate peek() {
+            while ( buffer.isEmpty() && !lastPage )
+                readPage();
+            return buffer.peekFirst();
+        }
+
+        private void poll() {
+            buffer.pollFirst();
+        }
+
+        private void skipBefore(Candidate candidate) {
+            Candidate head = peek();
+            while ( head != null && head.position().compareTo( candidate.position() ) > 0 ) {
+                poll();
+                head = peek();
+            }
+        }
+
+        private void readPage() {
+            PageSearchTrunk<NotificationSubjectTokenEntity> page = notificationSubjectIndexEntityDao.searchByTerm( partitionKey, term,
+                    startDate, endDate, lastEvaluatedKey, pageSize );
+            page.getResults().forEach( item -> buffer.add( new Candidate( item.getIunRecipientId(), item.getSentAt() ) ) );
+            lastEvaluatedKey = page.getLastEvaluatedKey();
+            lastPage = CollectionUtils.isEmpty( lastEvaluatedKey );
+        }
+    }
+
+    /**
+     * Legge le righe di metadati delle candidate
+     * @param candidates candidate, al più 100
+     * @return righe trovate, nell'ordine delle candidate
+     */
+    public List<NotificationMetadataEntity> readMetadata(List<Candidate> candidates) {
+        List<Key> keys = candidates.stream()
+                .map( candidate -> Key.builder()
+                        .partitionValue( candidate.iunRecipientId() )
+                        .sortValue( candidate.sentAt().toString() )
+                        .build() )
+                .toList();
+
+        Map<Candidate, NotificationMetadataEntity> byCandidate = new HashMap<>();
+        notificationMetadataEntityDao.batchGetItems( keys )
+                .forEach( entity -> byCandidate.put( new Candidate( entity.getIunRecipientId(), entity.getSentAt() ), entity ) );
+
+        return candidates.stream()
+                .map( byCandidate::get )
+                .filter( Objects::nonNull )
+                .toList();
+    }
+
+    /**
+     * Compila l'espressione regolare di ricerca sull'oggetto, che deve corrispondere all'intero oggetto
+     * @param subjectRegExp espressione regolare
+     * @return espressione compilata
+     * @throws PnBadRequestException se l'espressione non è valida o non contiene una sequenza letterale
+     *          di almeno {@value SubjectTerms#TERM_LENGTH} caratteri da cercare nell'indice
+     */
+    public Pattern subjectPattern(String subjectRegExp) {
+        Pattern pattern = patterns.get( subjectRegExp );
+        if ( pattern != null )
+            return pattern;
+
+        try {
+            pattern = Pattern.compile( subjectRegExp );
+        } catch (PatternSyntaxException exc) {
+            throw new PnBadRequestException( "Invalid subjectRegExp", exc.getDescription(), ERROR_CODE_DELIVERY_INVALIDPARAMETER_SUBJECT, exc );
+        }
+        if ( SubjectTerms.requiredTerms( subjectRegExp ).isEmpty() ) {
+            throw new PnBadRequestException( "Invalid subjectRegExp",
+                    "subjectRegExp must contain at least " + SubjectTerms.TERM_LENGTH + " consecutive literal characters",
+                    ERROR_CODE_DELIVERY_INVALIDPARAMETER_SUBJECT );
+        }
+
+        if ( patterns.size() >= MAX_CACHED_PATTERNS )
+            patterns.clear();
+        patterns.put( subjectRegExp, pattern );
+        return pattern;
+    }
+
+    private static String partitionKey(SearchIndexEnum indexName, String partition) {
+        return indexName.getValue() + IndexNameAndPartitions.PARTITION_KEY_SEPARATOR + partition;
+    }
+
+    private static YearMonth monthOf(String partition) {
+        String suffix = partition.substring( partition.length() - MONTH_SUFFIX_LENGTH );
+        return YearMonth.of( Integer.parseInt( suffix.substring( 0, 4 ) ), Integer.parseInt( suffix.substring( 4 ) ) );
+    }
+}
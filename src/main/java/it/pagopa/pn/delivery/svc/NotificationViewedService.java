@@ -0,0 +1,157 @@
+package it.pagopa.pn.delivery.svc;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.pagopa.pn.api.dto.events.NotificationViewDelegateInfo;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.middleware.NotificationViewedProducer;
+import it.pagopa.pn.delivery.middleware.notificationdao.NotificationViewedEntityDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationViewedEntity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Invio degli eventi NOTIFICATION_VIEWED.
+ * <p>
+ * Delivery-push registra solo la prima visualizzazione di un destinatario, mentre la stessa notifica viene letta più
+ * volte (dettaglio, allegati, web e IO): viene inviato un evento solo per la prima visualizzazione di ogni
+ * (iun, destinatario, delegato). Le visualizzazioni già inviate dall'istanza sono conservate in memoria; tra istanze
+ * diverse la prima visualizzazione è quella che scrive il marcatore nella tabella delle visualizzazioni, con
+ * scrittura condizionale. Se l'invio fallisce il marcatore viene rimosso, così la visualizzazione successiva
+ * riprova l'invio; se la tabella non è raggiungibile l'evento viene inviato comunque.
+ */
+@Slf4j
+@Service
+public class NotificationViewedService {
+
+    static final String METRIC_VIEWS = "pn.delivery.notification-viewed.dedup";
+    private static final String TAG_RESULT = "result";
+    private static final String NO_DELEGATE = "-";
+
+    private final NotificationViewedProducer notificationViewedProducer;
+    private final NotificationViewedEntityDao notificationViewedEntityDao;
+    private final MeterRegistry meterRegistry;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final Map<String, Long> recentViews = new LinkedHashMap<>(16, 0.75f, true);
+
+    public NotificationViewedService(NotificationViewedProducer notificationViewedProducer,
+                                     NotificationViewedEntityDao notificationViewedEntityDao,
+                                     PnDeliveryConfigs cfg,
+                                     MeterRegistry meterRegistry) {
+        this.notificationViewedProducer = notificationViewedProducer;
+        this.notificationViewedEntityDao = notificationViewedEntityDao;
+        this.meterRegistry = meterRegistry;
+        Duration ttl = cfg.getNotificationViewedDedupTtl();
+        this.ttlMillis = ttl != null && !ttl.isNegative() ? ttl.toMillis() : 0;
+        this.maxEntries = cfg.getNotificationViewedRecentSetMaxEntries() != null ? cfg.getNotificationViewedRecentSetMaxEntries() : 0;
+        log.info("notification viewed dedup enabled={} ttl={} recentSetMaxEntries={}", isEnabled(), ttl, maxEntries);
+    }
+
+    boolean isEnabled() {
+        return ttlMillis > 0;
+    }
+
+    /**
+     * Invia l'evento di visualizzazione se è la prima visualizzazione del destinatario, o del delegato per suo conto
+     * @param iun IUN della notifica
+     * @param when istante della visualizzazione
+     * @param recipientIndex indice del destinatario
+     * @param delegateInfo delegato che ha visualizzato la notifica, null se visualizzata dal destinatario
+     */
+    public void notifyViewed(String iun, Instant when, int recipientIndex, @Nullable NotificationViewDelegateInfo delegateInfo) {
+        if ( !isEnabled() ) {
+            notificationViewedProducer.sendNotificationViewed( iun, when, recipientIndex, delegateInfo );
+            return;
+        }
+
+        String delegateId = delegateInfo != null && delegateInfo.getInternalId() != null ? delegateInfo.getInternalId() : NO_DELEGATE;
+        String viewKey = viewKey( iun, recipientIndex, delegateId );
+        long now = when.toEpochMilli();
+        if ( isRecent( viewKey, now ) ) {
+            count( "recent" );
+            return;
+        }
+
+        boolean marked = false;
+        try {
+            marked = notificationViewedEntityDao.putIfFirstView( NotificationViewedEntity.builder()
+                    .viewKey( viewKey )
+                    .iun( iun )
+                    .recipientIndex( recipientIndex )
+                    .delegateId( delegateId )
+                    .viewedAt( when )
+                    .ttl( ( now + ttlMillis ) / 1000 )
+                    .build() );
+            if ( !marked ) {
+                count( "registered" );
+                addRecent( viewKey, now );
+                return;
+            }
+        } catch (RuntimeException ex) {
+            log.warn( "unable to register notification view viewKey={}, sending event", viewKey, ex );
+        }
+
+        try {
+            notificationViewedProducer.sendNotificationViewed( iun, when, recipientIndex, delegateInfo );
+        } catch (RuntimeException ex) {
+            if ( marked )
+                removeMarker( viewKey );
+            throw ex;
+        }
+        count( "sent" );
+        addRecent( viewKey, now );
+    }
+
+    private void removeMarker(String viewKey) {
+        try {
+            notificationViewedEntityDao.delete( Key.builder().partitionValue( viewKey ).build() );
+        } catch (RuntimeException ex) {
+            log.error( "unable to remove notification view viewKey={} after send failure", viewKey, ex );
+        }
+    }
+
+    static String viewKey(String iun, int recipientIndex, String delegateId) {
+        return iun + "##" + recipientIndex + "##" + delegateId;
+    }
+
+    private synchronized boolean isRecent(String viewKey, long now) {
+        Long expiresAt = recentViews.get( viewKey );
+        if ( expiresAt == null )
+            return false;
+        if ( expiresAt <= now ) {
+            recentViews.remove( viewKey );
+            return false;
+        }
+        return true;
+    }
+
+    private synchronized void addRecent(String viewKey, long now) {
+        if ( maxEntries <= 0 )
+            return;
+        recentViews.put( viewKey, now + ttlMillis );
+        var eldest = recentViews.entrySet().iterator();
+        while ( recentViews.size() > maxEntries && eldest.hasNext() ) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    synchronized int recentSize() {
+        return recentViews.size();
+    }
+
+    private void count(String result) {
+        Counter.builder( METRIC_VIEWS )
+                .tag( TAG_RESULT, result )
+                .register( meterRegistry )
+                .increment();
+    }
+}
@@ -12,6 +12,7 @@ import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationDel
 import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
 import it.pagopa.pn.delivery.models.InternalNotification;
 import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
+import it.pagopa.pn.delivery.svc.search.NotificationTimelineCache;
 import it.pagopa.pn.delivery.utils.DataUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
@@ -32,20 +33,34 @@ public class StatusService {
     private final NotificationDelegationMetadataEntityDao notificationDelegationMetadataEntityDao;
     private final NotificationDelegatedService notificationDelegatedService;
     private final PnDataVaultClientImpl dataVaultClient;
+    private final NotificationActivityService notificationActivityService;
+    private final NotificationSubjectIndexService notificationSubjectIndexService;
+    private final NotificationStatusCounterService notificationStatusCounterService;
+    private final NotificationTimelineCache notificationTimelineCache;
 
     public StatusService(NotificationDao notificationDao,
                          NotificationMetadataEntityDao notificationMetadataEntityDao,
                          NotificationDelegationMetadataEntityDao notificationDelegationMetadataEntityDao,
                          NotificationDelegatedService notificationDelegatedService,
-                         PnDataVaultClientImpl dataVaultClient) {
+                         PnDataVaultClientImpl dataVaultClient,
+                         NotificationActivityService notificationActivityService,
+                         NotificationSubjectIndexService notificationSubjectIndexService,
+                         NotificationStatusCounterService notificationStatusCounterService,
+                         NotificationTimelineCache notificationTimelineCache) {
         this.notificationDao = notificationDao;
         this.notificationMetadataEntityDao = notificationMetadataEntityDao;
         this.notificationDelegationMetadataEntityDao = notificationDelegationMetadataEntityDao;
         this.notificationDelegatedService = notificationDelegatedService;
         this.dataVaultClient = dataVaultClient;
+        this.notificationActivityService = notificationActivityService;
+        this.notificationSubjectIndexService = notificationSubjectIndexService;
+        this.notificationStatusCounterService = notificationStatusCounterService;
+        this.notificationTimelineCache = notificationTimelineCache;
     }
     
     public void updateStatus(RequestUpdateStatusDto dto) {
+        // il cambio di stato aggiunge elementi alla timeline: il prossimo dettaglio la rilegge da delivery-push
+        notificationTimelineCache.invalidate( dto.getIun() );
         Optional<InternalNotification> notificationOptional = notificationDao.getNotificationByIun(dto.getIun());
         
         if (notificationOptional.isPresent()) {
@@ -70,11 +85,24 @@ public class StatusService {
             }
 
             List<NotificationMetadataEntity> nextMetadataEntry = computeMetadataEntry(dto, notification, acceptedAt);
+            boolean accepted = NotificationStatus.ACCEPTED.equals( dto.getNextStatus() );
             nextMetadataEntry.forEach(metadata -> {
+                // il riepilogo dei mesi attivi viene aggiornato prima dei metadati, così una ricerca non salta mai un mese con dati;
+                // le partizioni di mittente e destinatario dipendono solo da sentAt e vengono marcate una volta all'accettazione,
+                // come le occorrenze dei termini dell'oggetto, che non cambia
+                if ( accepted ) {
+                    notificationActivityService.markActive(metadata);
+                    notificationSubjectIndexService.indexSubject(metadata);
+                }
                 notificationMetadataEntityDao.put(metadata);
+                // le deleghe possono nascere dopo l'accettazione: i loro mesi vengono marcati ad ogni cambio di stato,
+                // ma il servizio scrive solo i mesi che l'istanza non ha già marcato
                 List<NotificationDelegationMetadataEntity> delegationMetadata = notificationDelegatedService.computeDelegationMetadataEntries(metadata);
+                notificationActivityService.markActive(delegationMetadata);
                 delegationMetadata.forEach(notificationDelegationMetadataEntityDao::put);
             });
+            // dopo i metadati: se l'aggiornamento fallisce l'evento viene ripetuto e i contatori restano idempotenti
+            notificationStatusCounterService.updateCounters(notification.getIun(), dto.getNextStatus(), nextMetadataEntry);
         } else {
             throw new PnInternalException("Try to update status for non existing iun=" + dto.getIun(),
                     ERROR_CODE_DELIVERY_NOTIFICATIONNOTFOUND);
@@ -0,0 +1,205 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+import static it.pagopa.pn.delivery.svc.search.NotificationSearchMultiPage.MAX_DYNAMO_SIZE;
+
+/**
+ * Sceglie il limit della prima query in base al rapporto righe valutate / righe restituite osservato
+ * nelle ricerche precedenti con la stessa forma (indice, filtri, proprietario).
+ * Le osservazioni sono mantenute in uno sketch a dimensione fissa (gli slot vengono condivisi in caso di collisione)
+ * e decadono esponenzialmente, così la memoria resta limitata e la stima segue le variazioni dei dati.
+ * Ogni forma viene osservata sia per proprietario sia in forma aggregata: se il proprietario non ha abbastanza
+ * osservazioni si usa l'aggregato e, in mancanza anche di questo, la strategia fissa.
+ */
+@Component
+@Slf4j
+public class AdaptiveDynamoDbPageSizeStrategy implements DynamoDbPageSizeStrategy {
+
+    static final int DEFAULT_SKETCH_SLOTS = 4096;
+    static final Duration DEFAULT_DECAY_HALF_LIFE = Duration.ofMinutes(30);
+
+    // righe valutate (decadute) necessarie perché una stima sia considerata affidabile
+    static final double MIN_OBSERVED_ROWS = 500;
+    // margine sulla stima per ridurre la probabilità di dover leggere una seconda pagina
+    static final double HEADROOM = 1.25;
+
+    private static final String METRIC_INITIAL_PAGE_SIZE = "pn.delivery.search.dynamo.initial-page-size";
+    private static final String METRIC_PAGES_READ = "pn.delivery.search.dynamo.pages";
+    private static final String METRIC_SELECTIVITY = "pn.delivery.search.dynamo.selectivity";
+    private static final String TAG_INDEX = "index";
+    private static final String TAG_FILTERS = "filters";
+    private static final String TAG_SOURCE = "source";
+
+    private final boolean enabled;
+    private final double halfLifeNanos;
+    private final LongSupplier nanoClock;
+    private final RatioSlot[] sketch;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public AdaptiveDynamoDbPageSizeStrategy(PnDeliveryConfigs cfg, MeterRegistry meterRegistry) {
+        this(cfg, meterRegistry, System::nanoTime);
+    }
+
+    AdaptiveDynamoDbPageSizeStrategy(PnDeliveryConfigs cfg, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.enabled = !Boolean.FALSE.equals(cfg.getSearchPageSizeAdaptive());
+        int slots = cfg.getSearchPageSizeSketchSlots() != null && cfg.getSearchPageSizeSketchSlots() > 0
+                ? cfg.getSearchPageSizeSketchSlots() : DEFAULT_SKETCH_SLOTS;
+        Duration halfLife = cfg.getSearchPageSizeDecayHalfLife() != null && !cfg.getSearchPageSizeDecayHalfLife().isZero()
+                ? cfg.getSearchPageSizeDecayHalfLife() : DEFAULT_DECAY_HALF_LIFE;
+        this.halfLifeNanos = halfLife.toNanos();
+        this.nanoClock = nanoClock;
+        this.meterRegistry = meterRegistry;
+        this.sketch = new RatioSlot[slots];
+        for (int i = 0; i < slots; i++)
+            sketch[i] = new RatioSlot();
+        log.info("dynamo page size strategy enabled={} sketchSlots={} decayHalfLife={}", enabled, slots, halfLife);
+    }
+
+    @Override
+    public int initialPageSize(SearchShape shape, int requiredSize) {
+        int pageSize;
+        String source;
+        if (!enabled || !shape.hasFilters()) {
+            // senza filter expression dynamo restituisce tutte le righe valutate
+            pageSize = DynamoDbPageSizeStrategy.fixedMultiplier().initialPageSize(shape, requiredSize);
+            source = "fixed";
+        }
+        else {
+            long now = nanoClock.getAsLong();
+            double readsPerRow = estimateReadsPerRow(ownerKey(shape), now);
+            source = "owner";
+            if (Double.isNaN(readsPerRow)) {
+                readsPerRow = estimateReadsPerRow(aggregateKey(shape), now);
+                source = "aggregate";
+            }
+
+            if (Double.isNaN(readsPerRow)) {
+                pageSize = DynamoDbPageSizeStrategy.fixedMultiplier().initialPageSize(shape, requiredSize);
+                source = "fixed";
+            }
+            else {
+                long estimated = (long) Math.ceil(requiredSize * readsPerRow * HEADROOM);
+                pageSize = (int) Math.max(requiredSize, Math.min(estimated, MAX_DYNAMO_SIZE));
+            }
+        }
+
+        log.debug("initial dynamo page size index={} filters={} requiredSize={} pageSize={} source={}",
+                shape.indexName(), shape.filterShape(), requiredSize, pageSize, source);
+        DistributionSummary.builder(METRIC_INITIAL_PAGE_SIZE)
+                .tag(TAG_INDEX, String.valueOf(shape.indexName()))
+                .tag(TAG_FILTERS, shape.filterShape())
+                .tag(TAG_SOURCE, source)
+                .register(meterRegistry)
+                .record(pageSize);
+        return pageSize;
+    }
+
+    @Override
+    public void recordPage(SearchShape shape, int pageSize, int rowsReturned, boolean hasMoreRows) {
+        Counter.builder(METRIC_PAGES_READ)
+                .tag(TAG_INDEX, String.valueOf(shape.indexName()))
+                .tag(TAG_FILTERS, shape.filterShape())
+                .register(meterRegistry)
+                .increment();
+
+        // se la partizione è terminata non si sa quante righe siano state valutate, l'osservazione non è utilizzabile
+        if (!enabled || !shape.hasFilters() || !hasMoreRows || pageSize <= 0)
+            return;
+
+        DistributionSummary.builder(METRIC_SELECTIVITY)
+                .tag(TAG_INDEX, String.valueOf(shape.indexName()))
+                .tag(TAG_FILTERS, shape.filterShape())
+                .register(meterRegistry)
+                .record((double) rowsReturned / pageSize);
+
+        long now = nanoClock.getAsLong();
+        observe(ownerKey(shape), pageSize, rowsReturned, now);
+        observe(aggregateKey(shape), pageSize, rowsReturned, now);
+    }
+
+    private double estimateReadsPerRow(String key, long now) {
+        return slotFor(key).estimate(fingerprint(key), now, halfLifeNanos);
+    }
+
+    private void observe(String key, int rowsRead, int rowsReturned, long now) {
+        slotFor(key).observe(fingerprint(key), rowsRead, rowsReturned, now, halfLifeNanos);
+    }
+
+    private RatioSlot slotFor(String key) {
+        return sketch[Math.floorMod(key.hashCode(), sketch.length)];
+    }
+
+    private static long fingerprint(String key) {
+        // hash indipendente da hashCode per riconoscere le collisioni sullo slot
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static String aggregateKey(SearchShape shape) {
+        return shape.indexName() + "|" + shape.filterShape();
+    }
+
+    private static String ownerKey(SearchShape shape) {
+        return aggregateKey(shape) + "|" + shape.ownerId();
+    }
+
+    /**
+     * Slot dello sketch: somme decadute delle righe valutate e restituite per la chiave che lo occupa.
+     * In caso di collisione lo slot viene ceduto alla nuova chiave solo se le osservazioni presenti sono
+     * ormai decadute sotto la soglia di affidabilità.
+     */
+    private static final class RatioSlot {
+        private long owner;
+        private double rowsRead;
+        private double rowsReturned;
+        private long lastUpdate;
+
+        synchronized double estimate(long key, long now, double halfLifeNanos) {
+            if (owner != key)
+                return Double.NaN;
+            decay(now, halfLifeNanos);
+            if (rowsRead < MIN_OBSERVED_ROWS)
+                return Double.NaN;
+            // +1 evita la divisione per zero quando i filtri non hanno restituito nulla
+            return Math.max(1.0, (rowsRead + 1) / (rowsReturned + 1));
+        }
+
+        synchronized void observe(long key, int read, int returned, long now, double halfLifeNanos) {
+            decay(now, halfLifeNanos);
+            if (owner != key) {
+                if (rowsRead >= MIN_OBSERVED_ROWS)
+                    return;
+                owner = key;
+                rowsRead = 0;
+                rowsReturned = 0;
+            }
+            rowsRead += read;
+            rowsReturned += returned;
+        }
+
+        private void decay(long now, double halfLifeNanos) {
+            long elapsed = now - lastUpdate;
+            if (elapsed > 0) {
+                double factor = Math.pow(0.5, elapsed / halfLifeNanos);
+                rowsRead *= factor;
+                rowsReturned *= factor;
+            }
+            lastUpdate = now;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Strategia di scelta della dimensione della pagina (limit) da chiedere a dynamo nelle ricerche paginate.
+ * Il limit di dynamo si applica alle righe valutate PRIMA della filter expression, quindi la dimensione ottimale
+ * dipende da quante righe vengono scartate dai filtri.
+ */
+public interface DynamoDbPageSizeStrategy {
+
+    int FILTER_EXPRESSION_APPLIED_MULTIPLIER = 4;
+
+    /**
+     * Dimensione della prima pagina da leggere
+     * @param shape forma della ricerca
+     * @param requiredSize numero di righe richieste
+     * @return limit da usare nella prima query
+     */
+    int initialPageSize(SearchShape shape, int requiredSize);
+
+    /**
+     * Notifica l'esito della lettura di una pagina
+     * @param shape forma della ricerca
+     * @param pageSize limit usato nella query
+     * @param rowsReturned righe restituite dopo la filter expression
+     * @param hasMoreRows true se dynamo ha restituito una lastEvaluatedKey (sono state valutate esattamente pageSize righe)
+     */
+    void recordPage(SearchShape shape, int pageSize, int rowsReturned, boolean hasMoreRows);
+
+    /**
+     * Strategia storica: se sono presenti filtri il limit viene moltiplicato per FILTER_EXPRESSION_APPLIED_MULTIPLIER
+     */
+    static DynamoDbPageSizeStrategy fixedMultiplier() {
+        return FixedMultiplier.INSTANCE;
+    }
+
+    /**
+     * Forma della ricerca: indice interrogato, combinazione dei filtri applicati e proprietario della ricerca
+     * (mittente, destinatario o delegato)
+     */
+    record SearchShape(String indexName, String filterShape, String ownerId) {
+
+        public static final String NO_FILTERS = "none";
+
+        public static SearchShape of(String indexName, String ownerId, String... appliedFilters) {
+            String filterShape = Arrays.stream(appliedFilters)
+                    .filter(Objects::nonNull)
+                    .sorted()
+                    .collect(Collectors.joining("+"));
+            return new SearchShape(indexName, filterShape.isEmpty() ? NO_FILTERS : filterShape, ownerId);
+        }
+
+        public boolean hasFilters() {
+            return !NO_FILTERS.equals(filterShape);
+        }
+    }
+
+    final class FixedMultiplier implements DynamoDbPageSizeStrategy {
+
+        private static final FixedMultiplier INSTANCE = new FixedMultiplier();
+
+        private FixedMultiplier() {
+        }
+
+        @Override
+        public int initialPageSize(SearchShape shape, int requiredSize) {
+            // se ho dei filtri ulteriori, suppongo che i dati vengano ulteriormente filtrati, quindi aumento il numero di elementi da leggere
+            return shape.hasFilters() ? requiredSize * FILTER_EXPRESSION_APPLIED_MULTIPLIER : requiredSize;
+        }
+
+        @Override
+        public void recordPage(SearchShape shape, int pageSize, int rowsReturned, boolean hasMoreRows) {
+            // la strategia fissa non impara dalle letture
+        }
+    }
+}
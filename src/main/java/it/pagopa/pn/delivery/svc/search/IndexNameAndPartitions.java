@@ -82,6 +82,15 @@ public class IndexNameAndPartitions {
         return new IndexNameAndPartitions( indexName, partitions );
     }
 
+    /**
+     * Indice e partizioni mensili di una ricerca per oggetto: le occorrenze dei termini sono indicizzate
+     * solo per mittente e per destinatario, gli altri filtri vengono verificati sulle righe candidate
+     */
+    public static IndexNameAndPartitions selectSubjectIndexAndPartitions(InputSearchNotificationDto searchParams) {
+        SearchIndexEnum indexName = searchParams.isBySender() ? SearchIndexEnum.INDEX_BY_SENDER : SearchIndexEnum.INDEX_BY_RECEIVER;
+        return new IndexNameAndPartitions( indexName, idAndMonthsPartitionsListBuilder( searchParams ) );
+    }
+
     public static IndexNameAndPartitions selectDelegatedIndexAndPartitions(InputSearchNotificationDelegatedDto searchParams) {
         SearchIndexEnum index = chooseDelegatedIndex(searchParams);
         if (index == null) {
@@ -10,7 +10,6 @@ import it.pagopa.pn.delivery.middleware.NotificationDao;
 import it.pagopa.pn.delivery.middleware.notificationdao.EntityToDtoNotificationMetadataMapper;
 import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationDelegationMetadataEntity;
 import it.pagopa.pn.delivery.models.InputSearchNotificationDelegatedDto;
-import it.pagopa.pn.delivery.models.PageSearchTrunk;
 import it.pagopa.pn.delivery.models.ResultPaginationDto;
 import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
 import it.pagopa.pn.delivery.pnclient.mandate.PnMandateClientImpl;
@@ -21,6 +20,7 @@ import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -29,7 +29,6 @@ import static it.pagopa.pn.delivery.exception.PnDeliveryExceptionCodes.ERROR_COD
 @Slf4j
 public class NotificationDelegatedSearchMultiPage extends NotificationSearch {
 
-    public static final int FILTER_EXPRESSION_APPLIED_MULTIPLIER = 4;
     public static final int MAX_DYNAMO_SIZE = 2000;
 
     private final NotificationDao notificationDao;
@@ -38,6 +37,9 @@ public class NotificationDelegatedSearchMultiPage extends NotificationSearch {
     private final PnDeliveryConfigs cfg;
     private final IndexNameAndPartitions indexNameAndPartitions;
     private final PnMandateClientImpl mandateClient;
+    private final DynamoDbPageSizeStrategy pageSizeStrategy;
+    private final DynamoDbPageSizeStrategy.SearchShape searchShape;
+    private final ExecutorService partitionsExecutor;
 
     public NotificationDelegatedSearchMultiPage(NotificationDao notificationDao,
                                                 EntityToDtoNotificationMetadataMapper entityToDto,
@@ -47,13 +49,34 @@ public class NotificationDelegatedSearchMultiPage extends NotificationSearch {
                                                 PnDataVaultClientImpl dataVaultClient,
                                                 PnMandateClientImpl mandateClient,
                                                 IndexNameAndPartitions indexNameAndPartitions) {
+        this(notificationDao, entityToDto, searchDto, lastEvaluatedKey, cfg, dataVaultClient, mandateClient, indexNameAndPartitions, null, null);
+    }
+
+    public NotificationDelegatedSearchMultiPage(NotificationDao notificationDao,
+                                                EntityToDtoNotificationMetadataMapper entityToDto,
+                                                InputSearchNotificationDelegatedDto searchDto,
+                                                PnLastEvaluatedKey lastEvaluatedKey,
+                                                PnDeliveryConfigs cfg,
+                                                PnDataVaultClientImpl dataVaultClient,
+                                                PnMandateClientImpl mandateClient,
+                                                IndexNameAndPartitions indexNameAndPartitions,
+                                                ExecutorService partitionsExecutor,
+                                                DynamoDbPageSizeStrategy pageSizeStrategy) {
         super(dataVaultClient, entityToDto);
+        this.partitionsExecutor = partitionsExecutor;
         this.notificationDao = notificationDao;
         this.searchDto = searchDto;
         this.lastEvaluatedKey = lastEvaluatedKey;
         this.cfg = cfg;
         this.mandateClient = mandateClient;
         this.indexNameAndPartitions = indexNameAndPartitions;
+        this.pageSizeStrategy = pageSizeStrategy != null ? pageSizeStrategy : DynamoDbPageSizeStrategy.fixedMultiplier();
+        this.searchShape = DynamoDbPageSizeStrategy.SearchShape.of(
+                indexNameAndPartitions.getIndexName().getValue(),
+                searchDto.getDelegateId(),
+                CollectionUtils.isEmpty(searchDto.getStatuses()) ? null : "status",
+                StringUtils.hasText(searchDto.getSenderId()) ? "sender" : null,
+                StringUtils.hasText(searchDto.getReceiverId()) ? "receiver" : null);
     }
 
     @Override
@@ -63,12 +86,7 @@ public class NotificationDelegatedSearchMultiPage extends NotificationSearch {
         Integer maxPageNumber = searchDto.getMaxPageNumber() != null ? searchDto.getMaxPageNumber() : cfg.getMaxPageSize();
 
         int requiredSize = searchDto.getSize() * maxPageNumber + 1;
-        int dynamoDbPageSize = requiredSize;
-        if (!CollectionUtils.isEmpty(searchDto.getStatuses())
-                || StringUtils.hasText(searchDto.getSenderId())
-                || StringUtils.hasText(searchDto.getReceiverId())) {
-            dynamoDbPageSize = dynamoDbPageSize * FILTER_EXPRESSION_APPLIED_MULTIPLIER;
-        }
+        int dynamoDbPageSize = pageSizeStrategy.initialPageSize(searchShape, requiredSize);
 
         PnLastEvaluatedKey startEvaluatedKey = lastEvaluatedKey;
 
@@ -96,9 +114,6 @@ public class NotificationDelegatedSearchMultiPage extends NotificationSearch {
     }
 
     private ResultPaginationDto<NotificationDelegationMetadataEntity, PnLastEvaluatedKey> search(int requiredSize, int dynamoDbPageSize, PnLastEvaluatedKey startEvaluatedKey) {
-        int logItemCount = 0;
-
-        List<NotificationDelegationMetadataEntity> dataRead = new ArrayList<>();
         int startIndex = 0;
         PnLastEvaluatedKey searchLastEvaluateKey = null;
 
@@ -107,19 +122,29 @@ public class NotificationDelegatedSearchMultiPage extends NotificationSearch {
             log.debug("startEvaluatedKey is not null, starting search from index={}", startIndex);
         }
 
-        for (int pIdx = startIndex; pIdx < indexNameAndPartitions.getPartitions().size(); pIdx++) {
-            String currentPartition = indexNameAndPartitions.getPartitions().get(pIdx);
-            logItemCount += readDataFromPartition(1, currentPartition, dataRead, startEvaluatedKey, requiredSize, dynamoDbPageSize);
-            startEvaluatedKey = null;
-            if (dataRead.size() >= requiredSize) {
-                log.debug("reached required size, ending search");
-                searchLastEvaluateKey = computeLastEvaluatedKey(dataRead.get(dataRead.size() - 1));
-                searchLastEvaluateKey.setExternalLastEvaluatedKey(currentPartition);
-                break;
-            }
+        PartitionPagePipeline<NotificationDelegationMetadataEntity> pipeline = new PartitionPagePipeline<>(
+                (partition, pageSize, pageKey) -> notificationDao.searchDelegatedForOneMonthAsync(searchDto,
+                        indexNameAndPartitions.getIndexName(),
+                        partition,
+                        pageSize,
+                        pageKey),
+                (pageSize, page) -> pageSizeStrategy.recordPage(searchShape, pageSize,
+                        page.getResults() == null ? 0 : page.getResults().size(),
+                        !CollectionUtils.isEmpty(page.getLastEvaluatedKey())),
+                partitionsExecutor);
+        int fanOut = cfg.getSearchPartitionsFanOut() != null && cfg.getSearchPartitionsFanOut() > 1 ? cfg.getSearchPartitionsFanOut() : 1;
+
+        // le partizioni vengono lette in parallelo, ma il thread della richiesta resta bloccato fino al risultato complessivo
+        PartitionPagePipeline.Result<NotificationDelegationMetadataEntity> pipelineResult = NotificationSearchMultiPage.waitFuture(
+                pipeline.readPartitions(indexNameAndPartitions.getPartitions(), startIndex, startEvaluatedKey, requiredSize, dynamoDbPageSize, fanOut));
+        List<NotificationDelegationMetadataEntity> dataRead = pipelineResult.rows();
+
+        if (dataRead.size() >= requiredSize) {
+            searchLastEvaluateKey = computeLastEvaluatedKey(dataRead.get(dataRead.size() - 1));
+            searchLastEvaluateKey.setExternalLastEvaluatedKey(pipelineResult.lastPartition());
         }
 
-        log.info("search request completed, totalDbQueryCount={}, totalRowRead={}", logItemCount, dataRead.size());
+        log.info("search request completed, totalDbQueryCount={}, totalRowRead={}", pipelineResult.queryCount(), dataRead.size());
 
         ResultPaginationDto<NotificationDelegationMetadataEntity, PnLastEvaluatedKey> result = new ResultPaginationDto<>();
         result.setResultsPage(dataRead);
@@ -127,48 +152,6 @@ public class NotificationDelegatedSearchMultiPage extends NotificationSearch {
         return result;
     }
 
-    private int readDataFromPartition(int currentRequest, String partition, List<NotificationDelegationMetadataEntity> cumulativeQueryResult,
-                                      PnLastEvaluatedKey lastEvaluatedKey,
-                                      int requiredSize, int dynamoDbPageSize) {
-        log.debug("START compute partition read trunk partition={} indexName={} currentRequest={} dynamoDbPageSize={}",
-                partition, indexNameAndPartitions.getIndexName(), currentRequest, dynamoDbPageSize);
-
-        PageSearchTrunk<NotificationDelegationMetadataEntity> oneQueryResult =
-                notificationDao.searchDelegatedForOneMonth(searchDto,
-                        indexNameAndPartitions.getIndexName(),
-                        partition,
-                        dynamoDbPageSize,
-                        lastEvaluatedKey);
-        log.debug("END search for one month indexName={} partitionValue={} dynamoDbPageSize={}",
-                indexNameAndPartitions.getIndexName(), partition, dynamoDbPageSize);
-
-        if (!CollectionUtils.isEmpty(oneQueryResult.getResults())) {
-            cumulativeQueryResult.addAll(oneQueryResult.getResults());
-        }
-
-        if (cumulativeQueryResult.size() >= requiredSize) {
-            log.debug("ending search, requiredSize reached - partition={} currentRequest={}", partition, currentRequest);
-            return currentRequest;
-        }
-
-        if (oneQueryResult.getLastEvaluatedKey() != null) {
-            log.debug("There are more data to read for partition={} currentRequest={} currentReadSize={}",
-                    partition, currentRequest, cumulativeQueryResult.size());
-            PnLastEvaluatedKey nextEvaluationKeyForSearch = new PnLastEvaluatedKey();
-            nextEvaluationKeyForSearch.setExternalLastEvaluatedKey(partition);
-            nextEvaluationKeyForSearch.setInternalLastEvaluatedKey(oneQueryResult.getLastEvaluatedKey());
-
-            float multiplier = 2 - Math.min(oneQueryResult.getResults().size() / (float) requiredSize, 1);
-            dynamoDbPageSize = Math.round(dynamoDbPageSize * multiplier);
-            dynamoDbPageSize = Math.min(dynamoDbPageSize, MAX_DYNAMO_SIZE);
-
-            return readDataFromPartition(currentRequest + 1, partition, cumulativeQueryResult, nextEvaluationKeyForSearch, requiredSize, dynamoDbPageSize);
-        } else {
-            log.debug("no more data to read for partition={} currentRequest={} currentReadSize={}", partition, currentRequest, cumulativeQueryResult.size());
-            return currentRequest;
-        }
-    }
-
     private ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> prepareGlobalResult(List<NotificationDelegationMetadataEntity> queryResult,
                                                                                                int requiredSize) {
         ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> globalResult = new ResultPaginationDto<>();
@@ -223,23 +206,54 @@ public class NotificationDelegatedSearchMultiPage extends NotificationSearch {
         return pageLastEvaluatedKey;
     }
 
+    /**
+     * Le righe che riportano la versione corrente degli attributi della delega sono verificate in memoria:
+     * la validità rispetto ad adesso è già stata filtrata da dynamo. Solo le righe scritte prima
+     * dell'introduzione degli attributi sono verificate sul servizio delle deleghe.
+     */
     private List<NotificationDelegationMetadataEntity> checkMandates(List<NotificationDelegationMetadataEntity> queryResult) {
         if (CollectionUtils.isEmpty(queryResult)) {
             log.debug("skip check mandates - query result is empty");
             return queryResult;
         }
-        List<InternalMandateDto> mandates = getMandates(queryResult);
-        if (mandates.isEmpty()) {
-            log.info("no valid mandate found");
-            return Collections.emptyList();
+        List<NotificationDelegationMetadataEntity> staleRows = queryResult.stream()
+                .filter(row -> !hasCurrentMandateAttributes(row))
+                .toList();
+        log.debug("check mandates - rows={} rowsToCheckRemotely={}", queryResult.size(), staleRows.size());
+
+        Map<String, InternalMandateDto> mapMandates = Collections.emptyMap();
+        if (!staleRows.isEmpty()) {
+            List<InternalMandateDto> mandates = getMandates(staleRows);
+            if (mandates.isEmpty()) {
+                log.info("no valid mandate found for rows without mandate attributes");
+            }
+            mapMandates = mandates.stream()
+                    .collect(Collectors.toMap(InternalMandateDto::getMandateId, Function.identity()));
         }
-        Map<String, InternalMandateDto> mapMandates = mandates.stream()
-                .collect(Collectors.toMap(InternalMandateDto::getMandateId, Function.identity()));
+
+        Map<String, InternalMandateDto> remoteMandates = mapMandates;
         return queryResult.stream()
-                .filter(row -> isMandateValid(mapMandates.get(row.getMandateId()), row))
+                .filter(row -> hasCurrentMandateAttributes(row)
+                        ? isMandateAttributesValid(row)
+                        : isMandateValid(remoteMandates.get(row.getMandateId()), row))
                 .toList();
     }
 
+    private static boolean hasCurrentMandateAttributes(NotificationDelegationMetadataEntity entity) {
+        return entity.getMandateVersion() != null
+                && entity.getMandateVersion() >= NotificationDelegationMetadataEntity.MANDATE_ATTRIBUTES_VERSION;
+    }
+
+    private static boolean isMandateAttributesValid(NotificationDelegationMetadataEntity entity) {
+        return isSentInMandateWindow(entity.getSentAt(), entity.getMandateValidFrom(), entity.getMandateValidTo())
+                && (CollectionUtils.isEmpty(entity.getMandateVisibilityIds()) || entity.getMandateVisibilityIds().contains(entity.getSenderId()));
+    }
+
+    private static boolean isSentInMandateWindow(Instant sentAt, Instant mandateStartDate, Instant mandateEndDate) {
+        return (mandateStartDate == null || sentAt.compareTo(mandateStartDate) >= 0) // sent after start mandate
+                && (mandateEndDate == null || sentAt.compareTo(mandateEndDate) <= 0); // sent before end mandate
+    }
+
     private boolean isMandateValid(InternalMandateDto mandate, NotificationDelegationMetadataEntity entity) {
         if (mandate == null) {
             return false;
@@ -247,8 +261,7 @@ public class NotificationDelegatedSearchMultiPage extends NotificationSearch {
         Instant mandateStartDate = mandate.getDatefrom() != null ? Instant.parse(mandate.getDatefrom()) : null;
         Instant mandateEndDate = mandate.getDateto() != null ? Instant.parse(mandate.getDateto()) : null;
         return entity.getRecipientId().equals(mandate.getDelegator())
-                && (mandateStartDate == null || entity.getSentAt().compareTo(mandateStartDate) >= 0) // sent after start mandate
-                && (mandateEndDate == null || entity.getSentAt().compareTo(mandateEndDate) <= 0) // sent before end mandate
+                && isSentInMandateWindow(entity.getSentAt(), mandateStartDate, mandateEndDate)
                 && (CollectionUtils.isEmpty(mandate.getVisibilityIds()) || mandate.getVisibilityIds().contains(entity.getSenderId()));
     }
 
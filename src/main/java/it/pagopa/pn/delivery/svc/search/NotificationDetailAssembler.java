@@ -0,0 +1,502 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.pagopa.pn.commons.exceptions.PnHttpResponseException;
+import it.pagopa.pn.commons.exceptions.PnInternalException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.exception.PnNotificationNotFoundException;
+import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.BaseRecipientDto;
+import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.NotificationRecipientAddressesDto;
+import it.pagopa.pn.delivery.generated.openapi.clients.externalregistries.model.PaymentInfo;
+import it.pagopa.pn.delivery.middleware.NotificationDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.NotificationRecipientsDetail;
+import it.pagopa.pn.delivery.models.InternalNotification;
+import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
+import it.pagopa.pn.delivery.pnclient.deliverypush.PnDeliveryPushClientImpl;
+import it.pagopa.pn.delivery.pnclient.externalregistries.PaGroups;
+import it.pagopa.pn.delivery.pnclient.externalregistries.PnExternalRegistriesClientImpl;
+import it.pagopa.pn.delivery.utils.MdcUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static it.pagopa.pn.delivery.exception.PnDeliveryExceptionCodes.ERROR_CODE_DELIVERY_NOTIFICATION_DETAIL_FAILED;
+import static it.pagopa.pn.delivery.exception.PnDeliveryExceptionCodes.ERROR_CODE_DELIVERY_NOTIFICATION_DETAIL_TIMEOUT;
+import static it.pagopa.pn.delivery.springbootcfg.SearchExecutorConfig.NOTIFICATION_DETAIL_EXECUTOR_BEAN_NAME;
+
+/**
+ * Composizione del dettaglio di una notifica.
+ * <p>
+ * Dopo la lettura dell'entità, le letture che dipendono solo da IUN e destinatari (denominazioni e indirizzi dal
+ * data vault, timeline da delivery-push, gruppi della PA) vengono eseguite in parallelo, ciascuna con il proprio
+ * timeout: la latenza del dettaglio è quella della lettura più lenta invece della somma delle letture.
+ * Se una lettura necessaria fallisce le altre vengono annullate. I risultati vengono applicati alla notifica
+ * sempre nello stesso ordine, indipendentemente dall'ordine di completamento.
+ * Per ogni lettura viene registrata la durata nella metrica {@value #METRIC_STAGE}.
+ */
+@Slf4j
+@Component
+public class NotificationDetailAssembler {
+
+    static final String METRIC_STAGE = "pn.delivery.notification.detail.stage";
+    static final String STAGE_ENTITY = "entity";
+    static final String STAGE_DENOMINATIONS = "denominations";
+    static final String STAGE_ADDRESSES = "addresses";
+    static final String STAGE_TIMELINE = "timeline";
+    static final String STAGE_GROUPS = "groups";
+    static final String STAGE_PAYMENT_INFO = "payment-info";
+    static final int DEFAULT_BULK_MAX_CONCURRENCY = 10;
+    private static final String TAG_STAGE = "stage";
+    private static final String TAG_OUTCOME = "outcome";
+
+    private final NotificationDao notificationDao;
+    private final PnDataVaultClientImpl dataVaultClient;
+    private final PnDeliveryPushClientImpl pnDeliveryPushClient;
+    private final PnExternalRegistriesClientImpl pnExternalRegistriesClient;
+    private final NotificationTimelineCache timelineCache;
+    private final PnDeliveryConfigs cfg;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService detailExecutor;
+
+    public NotificationDetailAssembler(NotificationDao notificationDao,
+                                       PnDataVaultClientImpl dataVaultClient,
+                                       PnDeliveryPushClientImpl pnDeliveryPushClient,
+                                       PnExternalRegistriesClientImpl pnExternalRegistriesClient,
+                                       NotificationTimelineCache timelineCache,
+                                       PnDeliveryConfigs cfg,
+                                       MeterRegistry meterRegistry,
+                                       @Qualifier(NOTIFICATION_DETAIL_EXECUTOR_BEAN_NAME) ExecutorService detailExecutor) {
+        this.notificationDao = notificationDao;
+        this.dataVaultClient = dataVaultClient;
+        this.pnDeliveryPushClient = pnDeliveryPushClient;
+        this.pnExternalRegistriesClient = pnExternalRegistriesClient;
+        this.timelineCache = timelineCache;
+        this.cfg = cfg;
+        this.meterRegistry = meterRegistry;
+        this.detailExecutor = detailExecutor;
+    }
+
+    /**
+     * Dettaglio letto: notifica con i dati in chiaro dei destinatari, timeline e gruppi ancora da applicare
+     * @param notification notifica con i destinatari completi
+     * @param timeline timeline e storico degli stati, null se non richiesti
+     * @param groups gruppi della PA, vuoti se non richiesti o non disponibili
+     */
+    public record NotificationDetail(InternalNotification notification,
+                                     @Nullable NotificationTimelineCache.Timeline timeline,
+                                     PaGroups groups) {}
+
+    /**
+     * Legge il dettaglio di una notifica
+     * @param iun IUN della notifica
+     * @param withTimeline true per leggere timeline e storico degli stati
+     * @param senderId PA per cui etichettare il gruppo della notifica, null per non leggere i gruppi
+     * @param entityCheck verifica sull'entità letta, eseguita prima delle altre letture
+     * @return dettaglio della notifica
+     * @throws PnNotificationNotFoundException se la notifica non esiste
+     */
+    public NotificationDetail assemble(String iun, boolean withTimeline, @Nullable String senderId,
+                                       Consumer<InternalNotification> entityCheck) {
+        InternalNotification notification = readEntity( iun );
+        entityCheck.accept( notification );
+
+        List<String> internalIds = NotificationRecipientsDetail.internalIds( notification );
+        int numberOfRecipients = notification.getRecipients().size();
+        OffsetDateTime createdAt = notification.getSentAt();
+
+        List<Stage<?>> required = new ArrayList<>();
+        Stage<List<BaseRecipientDto>> denominations = start( STAGE_DENOMINATIONS, cfg.getDetailDataVaultTimeout(),
+                () -> dataVaultClient.getRecipientDenominationByInternalId( internalIds ) );
+        required.add( denominations );
+        Stage<List<NotificationRecipientAddressesDto>> addresses = start( STAGE_ADDRESSES, cfg.getDetailDataVaultTimeout(),
+                () -> dataVaultClient.getNotificationAddressesByIun( iun ) );
+        required.add( addresses );
+        Stage<NotificationTimelineCache.Timeline> timeline = null;
+        if ( withTimeline ) {
+            timeline = start( STAGE_TIMELINE, cfg.getDetailTimelineTimeout(),
+                    () -> readTimeline( iun, numberOfRecipients, createdAt ) );
+            required.add( timeline );
+        }
+        // i gruppi servono solo per l'etichetta: se non arrivano in tempo la notifica mantiene l'id del gruppo
+        Stage<PaGroups> groups = null;
+        if ( StringUtils.hasText( notification.getGroup() ) && senderId != null ) {
+            groups = tolerant( start( STAGE_GROUPS, cfg.getDetailGroupsTimeout(),
+                    () -> pnExternalRegistriesClient.getPaGroups( senderId ) ), iun, PaGroups.EMPTY );
+        }
+
+        List<Stage<?>> all = new ArrayList<>( required );
+        if ( groups != null )
+            all.add( groups );
+        awaitAll( iun, all );
+
+        NotificationRecipientsDetail.complete( notification, nonNull( denominations.join() ), nonNull( addresses.join() ) );
+        return new NotificationDetail(
+                notification,
+                timeline != null ? timeline.join() : null,
+                groups != null ? groups.join() : PaGroups.EMPTY
+        );
+    }
+
+    /**
+     * Esito della lettura del dettaglio di una notifica in una lettura di più notifiche
+     * @param iun IUN della notifica
+     * @param detail dettaglio letto, null in caso di errore
+     * @param error errore della lettura, null se il dettaglio è stato letto
+     */
+    public record NotificationDetailResult(String iun,
+                                           @Nullable NotificationDetail detail,
+                                           @Nullable RuntimeException error) {}
+
+    /**
+     * Legge il dettaglio, con timeline, di più notifiche.
+     * <p>
+     * Le entità vengono lette con una sola lettura a lotti e verificate in memoria; le denominazioni dei destinatari
+     * di tutte le notifiche vengono lette con una sola invocazione del data vault e i gruppi della PA una sola volta.
+     * Indirizzi e timeline si leggono per IUN, con al più {@code detail-bulk-max-concurrency} letture in corso.
+     * Un errore su una notifica (non trovata, verifica fallita, indirizzi o timeline non letti) ne determina solo
+     * l'esito; gli errori nella lettura delle denominazioni interrompono l'intera lettura.
+     * @param iuns IUN delle notifiche, senza ripetizioni
+     * @param senderId PA per cui etichettare il gruppo delle notifiche, null per non leggere i gruppi
+     * @param entityCheck verifica su ciascuna entità letta, eseguita prima delle altre letture
+     * @return esiti nell'ordine degli IUN
+     */
+    public List<NotificationDetailResult> assembleAll(List<String> iuns, @Nullable String senderId,
+                                                      Consumer<InternalNotification> entityCheck) {
+        Map<String, InternalNotification> entities = timed( STAGE_ENTITY, () -> notificationDao.getNotificationsByIun( iuns ) );
+
+        Map<String, RuntimeException> errors = new HashMap<>();
+        List<InternalNotification> found = new ArrayList<>();
+        for ( String iun : iuns ) {
+            InternalNotification notification = entities.get( iun );
+            try {
+                if ( notification == null )
+                    throw notFound( iun );
+                entityCheck.accept( notification );
+                found.add( notification );
+            } catch (RuntimeException exc) {
+                errors.put( iun, exc );
+            }
+        }
+
+        String logIuns = String.join( ",", iuns );
+        List<Stage<?>> shared = new ArrayList<>();
+        List<String> internalIds = found.stream()
+                .flatMap( notification -> NotificationRecipientsDetail.internalIds( notification ).stream() )
+                .distinct()
+                .toList();
+        Stage<List<BaseRecipientDto>> denominations = null;
+        if ( !internalIds.isEmpty() ) {
+            denominations = start( STAGE_DENOMINATIONS, cfg.getDetailDataVaultTimeout(),
+                    () -> dataVaultClient.getRecipientDenominationByInternalId( internalIds ) );
+            shared.add( denominations );
+        }
+        Stage<PaGroups> groups = null;
+        if ( senderId != null && found.stream().anyMatch( notification -> StringUtils.hasText( notification.getGroup() ) ) ) {
+            groups = tolerant( start( STAGE_GROUPS, cfg.getDetailGroupsTimeout(),
+                    () -> pnExternalRegistriesClient.getPaGroups( senderId ) ), logIuns, PaGroups.EMPTY );
+            shared.add( groups );
+        }
+
+        // il data vault espone gli indirizzi solo per IUN: indirizzi e timeline vengono letti con concorrenza limitata
+        Semaphore permits = new Semaphore( bulkMaxConcurrency() );
+        Map<String, Stage<List<NotificationRecipientAddressesDto>>> addresses = new HashMap<>();
+        Map<String, Stage<NotificationTimelineCache.Timeline>> timelines = new HashMap<>();
+        List<Stage<?>> all = new ArrayList<>();
+        try {
+            for ( InternalNotification notification : found ) {
+                String iun = notification.getIun();
+                int numberOfRecipients = notification.getRecipients().size();
+                OffsetDateTime createdAt = notification.getSentAt();
+                Stage<List<NotificationRecipientAddressesDto>> addressesStage = bounded( permits, STAGE_ADDRESSES,
+                        cfg.getDetailDataVaultTimeout(), () -> dataVaultClient.getNotificationAddressesByIun( iun ) );
+                addresses.put( iun, addressesStage );
+                all.add( addressesStage );
+                Stage<NotificationTimelineCache.Timeline> timelineStage = bounded( permits, STAGE_TIMELINE,
+                        cfg.getDetailTimelineTimeout(), () -> readTimeline( iun, numberOfRecipients, createdAt ) );
+                timelines.put( iun, timelineStage );
+                all.add( timelineStage );
+            }
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            all.forEach( Stage::cancel );
+            shared.forEach( Stage::cancel );
+            throw new PnInternalException( "Interrupted while reading notification details", ERROR_CODE_DELIVERY_NOTIFICATION_DETAIL_FAILED, exc );
+        }
+
+        try {
+            awaitAll( logIuns, shared );
+        } catch (RuntimeException exc) {
+            all.forEach( Stage::cancel );
+            throw exc;
+        }
+        List<BaseRecipientDto> recipients = denominations != null ? nonNull( denominations.join() ) : List.of();
+        PaGroups paGroups = groups != null ? groups.join() : PaGroups.EMPTY;
+
+        List<NotificationDetailResult> results = new ArrayList<>( iuns.size() );
+        Iterator<InternalNotification> foundIterator = found.iterator();
+        for ( String iun : iuns ) {
+            RuntimeException error = errors.get( iun );
+            if ( error != null ) {
+                results.add( new NotificationDetailResult( iun, null, error ) );
+                continue;
+            }
+            InternalNotification notification = foundIterator.next();
+            try {
+                List<NotificationRecipientAddressesDto> notificationAddresses = joinStage( iun, addresses.get( iun ) );
+                NotificationTimelineCache.Timeline timeline = joinStage( iun, timelines.get( iun ) );
+                NotificationRecipientsDetail.complete( notification, recipients, nonNull( notificationAddresses ) );
+                results.add( new NotificationDetailResult( iun, new NotificationDetail( notification, timeline, paGroups ), null ) );
+            } catch (RuntimeException exc) {
+                results.add( new NotificationDetailResult( iun, null, exc ) );
+            }
+        }
+        return results;
+    }
+
+    private int bulkMaxConcurrency() {
+        Integer maxConcurrency = cfg.getDetailBulkMaxConcurrency();
+        return maxConcurrency != null && maxConcurrency > 0 ? maxConcurrency : DEFAULT_BULK_MAX_CONCURRENCY;
+    }
+
+    /**
+     * Avvia una lettura solo quando le letture in corso sono meno dei permessi; il permesso viene rilasciato
+     * al termine della lettura, anche per timeout
+     */
+    private <T> Stage<T> bounded(Semaphore permits, String name, Duration timeout, Supplier<T> call) throws InterruptedException {
+        permits.acquire();
+        Stage<T> stage = start( name, timeout, call );
+        stage.result().whenComplete( (value, exc) -> permits.release() );
+        return stage;
+    }
+
+    private static <T> T joinStage(String iun, Stage<T> stage) {
+        try {
+            return stage.join();
+        } catch (CompletionException | CancellationException exc) {
+            throw stageFailure( iun, stage.name(), exc );
+        }
+    }
+
+    /**
+     * Legge solo l'entità e la timeline di una notifica, senza i dati in chiaro dei destinatari e senza i gruppi:
+     * basta per calcolarne la versione quando il client ne ha già una copia
+     * @param iun IUN della notifica
+     * @param entityCheck verifica sull'entità letta, eseguita prima della lettura della timeline
+     * @return dettaglio con i soli id opachi dei destinatari
+     * @throws PnNotificationNotFoundException se la notifica non esiste
+     */
+    public NotificationDetail probe(String iun, Consumer<InternalNotification> entityCheck) {
+        InternalNotification notification = readEntity( iun );
+        entityCheck.accept( notification );
+        NotificationTimelineCache.Timeline timeline = timed( STAGE_TIMELINE,
+                () -> readTimeline( iun, notification.getRecipients().size(), notification.getSentAt() ) );
+        return new NotificationDetail( notification, timeline, PaGroups.EMPTY );
+    }
+
+    private InternalNotification readEntity(String iun) {
+        return timed( STAGE_ENTITY, () -> notificationDao.getNotificationByIun( iun, false ) )
+                .orElseThrow( () -> notFound( iun ) );
+    }
+
+    private static PnNotificationNotFoundException notFound(String iun) {
+        String msg = String.format( "Error retrieving Internal Notification with iun=%s", iun );
+        log.debug( msg );
+        return new PnNotificationNotFoundException( msg );
+    }
+
+    /**
+     * Legge timeline e storico degli stati di una notifica, da delivery-push o dalla cache delle timeline
+     * @param iun IUN della notifica
+     * @param numberOfRecipients numero di destinatari della notifica
+     * @param createdAt data di invio della notifica
+     * @return timeline, da non modificare
+     */
+    public NotificationTimelineCache.Timeline readTimeline(String iun, int numberOfRecipients, OffsetDateTime createdAt) {
+        return timelineCache.get( iun, () -> pnDeliveryPushClient.getTimelineAndStatusHistory( iun, numberOfRecipients, createdAt ) );
+    }
+
+    /**
+     * Legge in parallelo le informazioni di pagamento di più avvisi
+     * @param iun IUN della notifica, per i log
+     * @param notices coppie codice fiscale dell'ente creditore e codice avviso
+     * @return informazioni di pagamento nell'ordine degli avvisi; null per gli avvisi per cui external-registries
+     *         risponde con errore o non risponde entro il timeout
+     */
+    public List<PaymentInfo> getPaymentInfos(String iun, List<PaymentNotice> notices) {
+        List<Stage<PaymentInfo>> stages = new ArrayList<>( notices.size() );
+        for ( PaymentNotice notice : notices ) {
+            log.debug( "Start getPaymentInfo iun={} creditorTaxId={} noticeCode={}", iun, notice.creditorTaxId(), notice.noticeCode() );
+            stages.add( tolerant( start( STAGE_PAYMENT_INFO, cfg.getDetailPaymentInfoTimeout(),
+                    () -> pnExternalRegistriesClient.getPaymentInfo( notice.creditorTaxId(), notice.noticeCode() ) ), iun, null ) );
+        }
+        awaitAll( iun, new ArrayList<>( stages ) );
+        return stages.stream()
+                .map( Stage::join )
+                .toList();
+    }
+
+    /**
+     * Avviso di cui leggere le informazioni di pagamento
+     */
+    public record PaymentNotice(String creditorTaxId, String noticeCode) {}
+
+    private record Stage<T>(String name, CompletableFuture<T> result, Future<?> task) {
+
+        void cancel() {
+            result.cancel( false );
+            task.cancel( true );
+        }
+
+        T join() {
+            return result.join();
+        }
+    }
+
+    private <T> Stage<T> start(String name, Duration timeout, Supplier<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long startedAt = System.nanoTime();
+        result.whenComplete( (value, exc) -> record( name, outcome( exc ), System.nanoTime() - startedAt ) );
+        long timeoutMillis = timeout != null && !timeout.isNegative() ? timeout.toMillis() : 0;
+        if ( timeoutMillis > 0 )
+            result.orTimeout( timeoutMillis, TimeUnit.MILLISECONDS );
+
+        Callable<Void> body = () -> {
+            try {
+                result.complete( call.get() );
+            } catch (RuntimeException | Error exc) {
+                result.completeExceptionally( exc );
+            }
+            return null;
+        };
+        Future<?> task;
+        try {
+            task = MdcUtils.submit( detailExecutor, body );
+        } catch (RejectedExecutionException exc) {
+            // executor saturo o in chiusura: eseguita dal thread della richiesta la lettura non sarebbe limitata
+            // dal timeout, quindi fallisce subito come una lettura scaduta
+            log.warn( "Notification detail executor rejected stage={}", name );
+            result.completeExceptionally( new TimeoutException( "Notification detail executor rejected stage=" + name ) );
+            return new Stage<>( name, result, result );
+        }
+        // una lettura scaduta o annullata ancora in coda non viene eseguita; una chiamata http già avviata
+        // non è interrompibile e resta limitata dai timeout del client
+        result.whenComplete( (value, exc) -> {
+            if ( exc != null )
+                task.cancel( true );
+        });
+        return new Stage<>( name, result, task );
+    }
+
+    /**
+     * Una lettura facoltativa che fallisce con errore HTTP o per timeout restituisce il valore di default
+     * invece di interrompere il dettaglio
+     */
+    private <T> Stage<T> tolerant(Stage<T> stage, String iun, T fallback) {
+        CompletableFuture<T> result = stage.result().handle( (value, exc) -> {
+            if ( exc == null )
+                return value;
+            Throwable cause = unwrap( exc );
+            if ( cause instanceof PnHttpResponseException || cause instanceof TimeoutException ) {
+                log.error( "Unable to read stage={} of notification detail iun={} caused by ex={}", stage.name(), iun, cause.toString() );
+                return fallback;
+            }
+            throw exc instanceof CompletionException completionException ? completionException : new CompletionException( cause );
+        });
+        return new Stage<>( stage.name(), result, stage.task() );
+    }
+
+    /**
+     * Attende il completamento di tutte le letture; alla prima lettura fallita annulla le altre e ne rilancia l'errore
+     */
+    private void awaitAll(String iun, List<Stage<?>> stages) {
+        if ( stages.isEmpty() )
+            return;
+
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger( stages.size() );
+        for ( Stage<?> stage : stages ) {
+            stage.result().whenComplete( (value, exc) -> {
+                if ( exc != null )
+                    done.completeExceptionally( stageFailure( iun, stage.name(), exc ) );
+                else if ( pending.decrementAndGet() == 0 )
+                    done.complete( null );
+            });
+        }
+
+        try {
+            done.join();
+        } catch (CompletionException exc) {
+            stages.forEach( Stage::cancel );
+            throw (RuntimeException) exc.getCause();
+        }
+    }
+
+    private static RuntimeException stageFailure(String iun, String stage, Throwable exc) {
+        Throwable cause = unwrap( exc );
+        if ( cause instanceof TimeoutException ) {
+            String msg = String.format( "Timeout reading stage=%s of notification detail iun=%s", stage, iun );
+            log.error( msg );
+            return new PnInternalException( msg, ERROR_CODE_DELIVERY_NOTIFICATION_DETAIL_TIMEOUT, cause );
+        }
+        if ( cause instanceof RuntimeException runtimeException ) {
+            // l'errore del client viene rilanciato così com'è, come nella lettura sequenziale
+            return runtimeException;
+        }
+        return new PnInternalException( String.format( "Error reading stage=%s of notification detail iun=%s", stage, iun ),
+                ERROR_CODE_DELIVERY_NOTIFICATION_DETAIL_FAILED, cause );
+    }
+
+    private static Throwable unwrap(Throwable exc) {
+        Throwable cause = exc;
+        while ( (cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null )
+            cause = cause.getCause();
+        return cause;
+    }
+
+    private static <T> List<T> nonNull(List<T> values) {
+        return values != null ? values : List.of();
+    }
+
+    private <T> T timed(String stage, Supplier<T> call) {
+        long startedAt = System.nanoTime();
+        Throwable failure = null;
+        try {
+            return call.get();
+        } catch (RuntimeException exc) {
+            failure = exc;
+            throw exc;
+        } finally {
+            record( stage, outcome( failure ), System.nanoTime() - startedAt );
+        }
+    }
+
+    private static String outcome(Throwable exc) {
+        Throwable cause = exc != null ? unwrap( exc ) : null;
+        if ( cause == null )
+            return "success";
+        if ( cause instanceof TimeoutException )
+            return "timeout";
+        if ( cause instanceof CancellationException )
+            return "cancelled";
+        return "failure";
+    }
+
+    private void record(String stage, String outcome, long nanos) {
+        Timer.builder( METRIC_STAGE )
+                .tag( TAG_STAGE, stage )
+                .tag( TAG_OUTCOME, outcome )
+                .register( meterRegistry )
+                .record( nanos, TimeUnit.NANOSECONDS );
+    }
+}
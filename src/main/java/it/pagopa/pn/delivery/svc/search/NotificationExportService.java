@@ -0,0 +1,118 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import it.pagopa.pn.commons.exceptions.PnInternalException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationExportRow;
+import it.pagopa.pn.delivery.middleware.NotificationDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.EntityToDtoNotificationMetadataMapper;
+import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
+import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
+import it.pagopa.pn.delivery.svc.NotificationActivityService;
+import it.pagopa.pn.delivery.springbootcfg.SearchExecutorConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import static it.pagopa.pn.delivery.exception.PnDeliveryExceptionCodes.ERROR_CODE_DELIVERY_UNSUPPORTED_LAST_EVALUATED_KEY;
+import static it.pagopa.pn.delivery.svc.search.NotificationRetrieverService.PN_EPOCH;
+
+/**
+ * Esportazione completa dei risultati della ricerca privata per mittente o per destinatario
+ */
+@Slf4j
+@Service
+public class NotificationExportService {
+
+    static final int DEFAULT_PAGE_SIZE = 500;
+    static final int DEFAULT_PREFETCH_PAGES = 4;
+
+    private final NotificationDao notificationDao;
+    private final EntityToDtoNotificationMetadataMapper entityToDto;
+    private final PnDataVaultClientImpl dataVaultClient;
+    private final NotificationActivityService notificationActivityService;
+    private final PnLastEvaluatedKeyCodec lastEvaluatedKeyCodec;
+    private final ObjectWriter rowWriter;
+    private final ExecutorService searchExportExecutor;
+    private final int dynamoDbPageSize;
+    private final int prefetchPages;
+
+    public NotificationExportService(NotificationDao notificationDao,
+                                     EntityToDtoNotificationMetadataMapper entityToDto,
+                                     PnDataVaultClientImpl dataVaultClient,
+                                     NotificationActivityService notificationActivityService,
+                                     PnLastEvaluatedKeyCodec lastEvaluatedKeyCodec,
+                                     ObjectMapper objectMapper,
+                                     @Qualifier(SearchExecutorConfig.SEARCH_EXPORT_EXECUTOR_BEAN_NAME) ExecutorService searchExportExecutor,
+                                     PnDeliveryConfigs cfg) {
+        this.notificationDao = notificationDao;
+        this.entityToDto = entityToDto;
+        this.dataVaultClient = dataVaultClient;
+        this.notificationActivityService = notificationActivityService;
+        this.lastEvaluatedKeyCodec = lastEvaluatedKeyCodec;
+        this.rowWriter = objectMapper.writerFor( NotificationExportRow.class );
+        this.searchExportExecutor = searchExportExecutor;
+        this.dynamoDbPageSize = Math.min( positiveOrDefault( cfg.getSearchExportPageSize(), DEFAULT_PAGE_SIZE ), NotificationSearchMultiPage.MAX_DYNAMO_SIZE );
+        this.prefetchPages = positiveOrDefault( cfg.getSearchExportPrefetchPages(), DEFAULT_PREFETCH_PAGES );
+    }
+
+    private static int positiveOrDefault(Integer value, int defaultValue) {
+        return value != null && value > 0 ? value : defaultValue;
+    }
+
+    /**
+     * Esporta tutte le notifiche che corrispondono ai parametri di ricerca, nell'ordine della ricerca
+     * @param searchDto parametri di ricerca; size e cursore di pagina non sono usati
+     * @param fromKey chiave dell'ultima riga ricevuta da un'esportazione interrotta, null per iniziare dalla prima
+     * @return flusso NDJSON compresso gzip di {@link NotificationExportRow}
+     */
+    public InputStream exportNotifications(InputSearchNotificationDto searchDto, @Nullable String fromKey) {
+        if( PN_EPOCH.isAfter( searchDto.getStartDate() ) ) {
+            log.info("Start date is={} but Piattaforma Notifiche exists since={} ", searchDto.getStartDate(), PN_EPOCH);
+            searchDto.setStartDate( PN_EPOCH );
+        }
+
+        log.info( "Start export notification - senderReceiverId={} resumed={}", searchDto.getSenderReceiverId(), fromKey != null );
+        // l'esportazione non è paginata: la dimensione di pagina è quella delle letture da dynamo
+        searchDto.setSize( dynamoDbPageSize );
+        NotificationRetrieverService.validateInput( searchDto );
+
+        PnLastEvaluatedKey startKey = fromKey != null ? lastEvaluatedKeyCodec.decode( fromKey ) : null;
+
+        IndexNameAndPartitions indexNameAndPartitions;
+        if ( PN_EPOCH.isAfter( searchDto.getEndDate() ) ) {
+            log.info("End date is={} but Piattaforma Notifiche exists since={}", searchDto.getEndDate(), PN_EPOCH);
+            indexNameAndPartitions = new IndexNameAndPartitions( IndexNameAndPartitions.selectIndexAndPartitions( searchDto ).getIndexName(), List.of() );
+        } else {
+            indexNameAndPartitions = IndexNameAndPartitions.selectIndexAndPartitions( searchDto );
+            indexNameAndPartitions = notificationActivityService.retainActivePartitions( indexNameAndPartitions, startKey );
+            indexNameAndPartitions = fromStartKey( indexNameAndPartitions, startKey );
+        }
+
+        return new NotificationSearchExport( notificationDao, entityToDto, dataVaultClient, lastEvaluatedKeyCodec, rowWriter,
+                searchDto, indexNameAndPartitions, startKey, dynamoDbPageSize, prefetchPages )
+                .start( searchExportExecutor );
+    }
+
+    /**
+     * Le partizioni precedenti a quella della chiave di ripresa sono già state esportate
+     */
+    private static IndexNameAndPartitions fromStartKey(IndexNameAndPartitions indexNameAndPartitions, PnLastEvaluatedKey startKey) {
+        if ( startKey == null )
+            return indexNameAndPartitions;
+        List<String> partitions = indexNameAndPartitions.getPartitions();
+        int startIndex = partitions.indexOf( startKey.getExternalLastEvaluatedKey() );
+        if ( startIndex < 0 ) {
+            String msg = String.format( "Export key partition=%s does not belong to the search", startKey.getExternalLastEvaluatedKey() );
+            log.warn( msg );
+            throw new PnInternalException( msg, ERROR_CODE_DELIVERY_UNSUPPORTED_LAST_EVALUATED_KEY );
+        }
+        return new IndexNameAndPartitions( indexNameAndPartitions.getIndexName(), partitions.subList( startIndex, partitions.size() ) );
+    }
+}
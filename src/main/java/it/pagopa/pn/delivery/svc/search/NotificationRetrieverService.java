@@ -1,6 +1,5 @@
 package it.pagopa.pn.delivery.svc.search;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import it.pagopa.pn.api.dto.events.NotificationViewDelegateInfo;
 import it.pagopa.pn.commons.configs.MVPParameterConsumer;
 import it.pagopa.pn.commons.exceptions.*;
@@ -8,7 +7,6 @@ import it.pagopa.pn.commons.exceptions.dto.ProblemError;
 import it.pagopa.pn.delivery.PnDeliveryConfigs;
 import it.pagopa.pn.delivery.exception.*;
 import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.RecipientType;
-import it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.NotificationHistoryResponse;
 import it.pagopa.pn.delivery.generated.openapi.clients.externalregistries.model.PaGroup;
 import it.pagopa.pn.delivery.generated.openapi.clients.externalregistries.model.PaymentInfo;
 import it.pagopa.pn.delivery.generated.openapi.clients.externalregistries.model.PaymentStatus;
@@ -16,20 +14,20 @@ import it.pagopa.pn.delivery.generated.openapi.clients.mandate.model.CxTypeAuthF
 import it.pagopa.pn.delivery.generated.openapi.clients.mandate.model.InternalMandateDto;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.*;
 import it.pagopa.pn.delivery.middleware.NotificationDao;
-import it.pagopa.pn.delivery.middleware.NotificationViewedProducer;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
 import it.pagopa.pn.delivery.models.InputSearchNotificationDelegatedDto;
 import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
 import it.pagopa.pn.delivery.models.InternalAuthHeader;
 import it.pagopa.pn.delivery.models.InternalNotification;
 import it.pagopa.pn.delivery.models.ResultPaginationDto;
 import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
-import it.pagopa.pn.delivery.pnclient.deliverypush.PnDeliveryPushClientImpl;
+import it.pagopa.pn.delivery.pnclient.externalregistries.PaGroups;
 import it.pagopa.pn.delivery.pnclient.externalregistries.PnExternalRegistriesClientImpl;
 import it.pagopa.pn.delivery.pnclient.mandate.PnMandateClientImpl;
+import it.pagopa.pn.delivery.svc.NotificationViewedService;
 import it.pagopa.pn.delivery.svc.authorization.CxType;
 import it.pagopa.pn.delivery.utils.RefinementLocalDate;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
@@ -53,47 +51,53 @@ import static it.pagopa.pn.delivery.utils.PgUtils.checkAuthorizationPG;
 @Slf4j
 public class NotificationRetrieverService {
 
-	private static final Instant PN_EPOCH = Instant.ofEpochSecond( 1651399200 ); // 2022-05-01T12:00:00.000 GMT+2:00
+	static final Instant PN_EPOCH = Instant.ofEpochSecond( 1651399200 ); // 2022-05-01T12:00:00.000 GMT+2:00
+	private static final String SENDER_VIEW = "sender";
+	private static final String RECIPIENT_VIEW = "recipient:";
+	static final int MAX_BULK_DETAIL_IUNS = 100;
 
 	private final Clock clock;
-	private final NotificationViewedProducer notificationAcknowledgementProducer;
+	private final NotificationViewedService notificationViewedService;
 	private final NotificationDao notificationDao;
-	private final PnDeliveryPushClientImpl pnDeliveryPushClient;
 	private final PnMandateClientImpl pnMandateClient;
 	private final PnDataVaultClientImpl dataVaultClient;
 	private final PnExternalRegistriesClientImpl pnExternalRegistriesClient;
-	private final ModelMapper modelMapper;
 	private final NotificationSearchFactory notificationSearchFactory;
 	private final RefinementLocalDate refinementLocalDateUtils;
 	private final MVPParameterConsumer mvpParameterConsumer;
 	private final PnDeliveryConfigs cfg;
+	private final SearchPageCache searchPageCache;
+	private final PnLastEvaluatedKeyCodec lastEvaluatedKeyCodec;
+	private final NotificationDetailAssembler notificationDetailAssembler;
 
 
 	@Autowired
 	public NotificationRetrieverService(Clock clock,
-										NotificationViewedProducer notificationAcknowledgementProducer,
+										NotificationViewedService notificationViewedService,
 										NotificationDao notificationDao,
-										PnDeliveryPushClientImpl pnDeliveryPushClient,
 										PnMandateClientImpl pnMandateClient,
 										PnDataVaultClientImpl dataVaultClient,
 										PnExternalRegistriesClientImpl pnExternalRegistriesClient,
-										ModelMapper modelMapper,
 										NotificationSearchFactory notificationSearchFactory,
 										RefinementLocalDate refinementLocalDateUtils,
 										MVPParameterConsumer mvpParameterConsumer,
-										PnDeliveryConfigs cfg) {
+										PnDeliveryConfigs cfg,
+										SearchPageCache searchPageCache,
+										PnLastEvaluatedKeyCodec lastEvaluatedKeyCodec,
+										NotificationDetailAssembler notificationDetailAssembler) {
 		this.clock = clock;
-		this.notificationAcknowledgementProducer = notificationAcknowledgementProducer;
+		this.notificationViewedService = notificationViewedService;
 		this.notificationDao = notificationDao;
-		this.pnDeliveryPushClient = pnDeliveryPushClient;
 		this.pnMandateClient = pnMandateClient;
 		this.dataVaultClient = dataVaultClient;
 		this.pnExternalRegistriesClient = pnExternalRegistriesClient;
-		this.modelMapper = modelMapper;
 		this.notificationSearchFactory = notificationSearchFactory;
 		this.refinementLocalDateUtils = refinementLocalDateUtils;
 		this.mvpParameterConsumer = mvpParameterConsumer;
 		this.cfg = cfg;
+		this.searchPageCache = searchPageCache;
+		this.lastEvaluatedKeyCodec = lastEvaluatedKeyCodec;
+		this.notificationDetailAssembler = notificationDetailAssembler;
 	}
 
 	public ResultPaginationDto<NotificationSearchRow, String> searchNotification(InputSearchNotificationDto searchDto,
@@ -120,6 +124,9 @@ public class NotificationRetrieverService {
 
 		validateInput(searchDto);
 
+		// identità del chiamante, prima che un'eventuale delega sostituisca il destinatario della ricerca
+		String callerId = String.join( "|", searchDto.getSenderReceiverId(), String.valueOf( recipientType ), String.valueOf( cxGroups ) );
+
 		if ( !searchDto.isBySender() ) {
 			log.debug( "Search from receiver" );
 			String mandateId = searchDto.getMandateId();
@@ -133,13 +140,7 @@ public class NotificationRetrieverService {
 
 		PnLastEvaluatedKey lastEvaluatedKey = null;
 		if ( searchDto.getNextPagesKey() != null ) {
-			try {
-				lastEvaluatedKey = PnLastEvaluatedKey.deserializeInternalLastEvaluatedKey( searchDto.getNextPagesKey() );
-			} catch (JsonProcessingException e) {
-				throw new PnInternalException( "Unable to deserialize lastEvaluatedKey",
-						ERROR_CODE_DELIVERY_UNSUPPORTED_LAST_EVALUATED_KEY,
-						e );
-			}
+			lastEvaluatedKey = lastEvaluatedKeyCodec.decode( searchDto.getNextPagesKey() );
 		} else {
 			log.debug( "First page search" );
 		}
@@ -150,6 +151,10 @@ public class NotificationRetrieverService {
 		NotificationSearch pageSearch = notificationSearchFactory.getMultiPageSearch(
 				searchDto,
 				lastEvaluatedKey);
+		if ( pageSearch instanceof NotificationSearchMultiPage multiPageSearch && searchPageCache.isEnabled() ) {
+			multiPageSearch.usePageCache( searchPageCache.scope( callerId, searchDto,
+					(cursor, requiredSize) -> readAhead( searchDto, cursor, requiredSize ) ) );
+		}
 
 		log.debug( "START search notification metadata" );
 		ResultPaginationDto<NotificationSearchRow,PnLastEvaluatedKey> searchResult = pageSearch.searchNotificationMetadata();
@@ -163,7 +168,7 @@ public class NotificationRetrieverService {
 				.resultsPage( searchResult.getResultsPage() );
 		if ( !CollectionUtils.isEmpty(searchResult.getNextPagesKey()) ) {
 			builder.nextPagesKey( searchResult.getNextPagesKey()
-					.stream().map(PnLastEvaluatedKey::serializeInternalLastEvaluatedKey)
+					.stream().map(lastEvaluatedKeyCodec::encode)
 					.toList() );
 		}
 		else
@@ -171,6 +176,14 @@ public class NotificationRetrieverService {
 		return builder.build();
 	}
 
+	private List<NotificationMetadataEntity> readAhead(InputSearchNotificationDto searchDto, PnLastEvaluatedKey cursor, int requiredSize) {
+		log.debug( "Read ahead search notification metadata" );
+		NotificationSearch pageSearch = notificationSearchFactory.getMultiPageSearch( searchDto, cursor );
+		if ( pageSearch instanceof NotificationSearchMultiPage multiPageSearch )
+			return multiPageSearch.readRows( requiredSize );
+		return Collections.emptyList();
+	}
+
 	public ResultPaginationDto<NotificationSearchRow, String> searchNotificationDelegated(InputSearchNotificationDelegatedDto searchDto) {
 		Instant startDate = searchDto.getStartDate();
 		if (PN_EPOCH.isAfter(startDate)) {
@@ -200,11 +213,7 @@ public class NotificationRetrieverService {
 		PnLastEvaluatedKey lastEvaluatedKey = null;
 
 		if (searchDto.getNextPageKey() != null) {
-			try {
-				lastEvaluatedKey = PnLastEvaluatedKey.deserializeInternalLastEvaluatedKey(searchDto.getNextPageKey());
-			} catch (JsonProcessingException e) {
-				throw new PnInternalException("Unable to deserialize lastEvaluatedKey", ERROR_CODE_DELIVERY_UNSUPPORTED_LAST_EVALUATED_KEY, e);
-			}
+			lastEvaluatedKey = lastEvaluatedKeyCodec.decode(searchDto.getNextPageKey());
 		} else {
 			log.debug("first page search");
 		}
@@ -219,7 +228,7 @@ public class NotificationRetrieverService {
 				.resultsPage(result.getResultsPage());
 		if (!CollectionUtils.isEmpty(result.getNextPagesKey())) {
 			builder.nextPagesKey(result.getNextPagesKey().stream()
-							.map(PnLastEvaluatedKey::serializeInternalLastEvaluatedKey)
+							.map(lastEvaluatedKeyCodec::encode)
 							.toList())
 					.build();
 		} else {
@@ -323,7 +332,7 @@ public class NotificationRetrieverService {
 		return  true;
 	}
 
-	private void validateInput(InputSearchNotificationDto searchDto) {
+	static void validateInput(InputSearchNotificationDto searchDto) {
 		ValidatorFactory factory = Validation.buildDefaultValidatorFactory();
 		Validator validator = factory.getValidator();
 
@@ -350,17 +359,6 @@ public class NotificationRetrieverService {
 		log.debug("validation search input succeeded - delegateId {}", searchDto.getDelegateId());
 	}
 
-	private InternalNotification getInternalNotification(String iun) {
-		Optional<InternalNotification> optNotification = notificationDao.getNotificationByIun(iun);
-		if (optNotification.isPresent()) {
-			return optNotification.get();
-		} else {
-			String msg = String.format( "Error retrieving Internal Notification with iun=%s", iun );
-			log.debug( msg );
-			throw new PnNotificationNotFoundException(  msg );
-		}
-	}
-
 	/**
 	 * Get the full detail of a notification by IUN
 	 *
@@ -374,23 +372,40 @@ public class NotificationRetrieverService {
 	 */
 	public InternalNotification getNotificationInformation(String iun, boolean withTimeline, boolean requestBySender, String senderId) {
 		log.debug( "Retrieve notification by iun={} withTimeline={} requestBySender={} START", iun, withTimeline, requestBySender );
-		InternalNotification notification = getInternalNotification( iun );
+		NotificationDetailAssembler.NotificationDetail detail = notificationDetailAssembler.assemble( iun, withTimeline, senderId, notification -> {} );
+		InternalNotification notification = detail.notification();
 		if (withTimeline) {
-			completeInternalNotificationWithTimeline(iun, requestBySender, notification);
+			completeInternalNotificationWithTimeline(iun, requestBySender, notification, detail.timeline());
 		}
-		labelizeGroup(notification, senderId);
+		labelizeGroup(notification, detail.groups());
 		return notification;
 	}
 
-	private void completeInternalNotificationWithTimeline(String iun, boolean requestBySender, InternalNotification notification) {
-		notification = enrichWithTimelineAndStatusHistory(iun, notification);
+	private void completeInternalNotificationWithTimeline(String iun, boolean requestBySender, InternalNotification notification, NotificationTimelineCache.Timeline timeline) {
+		notification = enrichWithTimelineAndStatusHistory(iun, notification, timeline);
 		OffsetDateTime refinementDate = findRefinementDate( notification.getTimeline(), notification.getIun() );
 		checkDocumentsAvailability(notification, refinementDate );
-		if ( !requestBySender && Boolean.TRUE.equals( mvpParameterConsumer.isMvp( notification.getSenderTaxId() ) ) ) {
+		if ( computesNoticeCodeToReturn( requestBySender, notification ) ) {
 			computeNoticeCodeToReturn(notification, refinementDate );
 		}
 	}
 
+	private boolean computesNoticeCodeToReturn(boolean requestBySender, InternalNotification notification) {
+		return !requestBySender && Boolean.TRUE.equals( mvpParameterConsumer.isMvp( notification.getSenderTaxId() ) );
+	}
+
+	/**
+	 * @return true se il codice avviso da restituire dipende dallo stato del pagamento letto da external-registries
+	 */
+	private boolean requiresPaymentInfo(InternalNotification notification, NotificationTimelineCache.Timeline timeline) {
+		if ( !computesNoticeCodeToReturn( false, notification ) )
+			return false;
+		boolean hasAlternativeNoticeCode = notification.getRecipients().stream()
+				.anyMatch( recipient -> recipient.getPayment() != null && recipient.getPayment().getNoticeCodeAlternative() != null );
+		return hasAlternativeNoticeCode && NoticeCodeToReturn.SECOND_NOTICE_CODE.equals(
+				findNoticeCodeToReturn( notification.getIun(), findRefinementDate( timeline.elements(), notification.getIun() ) ) );
+	}
+
 	/**
 	 * Get the full detail of a notification by IUN with senderId check
 	 *
@@ -403,13 +418,112 @@ public class NotificationRetrieverService {
 	 */
 	public InternalNotification getNotificationInformationWithSenderIdCheck(String iun, String senderId, List<String> groups) {
 		log.debug( "Retrieve complete notification with sender check by iun={} senderId={} START", iun, senderId );
-		InternalNotification notification = getInternalNotification( iun );
-		checkSenderId( iun, notification.getSenderPaId(), senderId, notification.getGroup(), groups );
-		completeInternalNotificationWithTimeline(iun, true, notification);
-		labelizeGroup(notification, senderId);
+		NotificationDetailAssembler.NotificationDetail detail = notificationDetailAssembler.assemble( iun, true, senderId,
+				entity -> checkSenderId( iun, entity.getSenderPaId(), senderId, entity.getGroup(), groups ) );
+		InternalNotification notification = detail.notification();
+		completeInternalNotificationWithTimeline(iun, true, notification, detail.timeline());
+		labelizeGroup(notification, detail.groups());
 		return notification;
 	}
 
+	/**
+	 * Dettaglio di una notifica con la sua versione (ETag)
+	 * @param notification notifica letta, null se la copia del client è ancora valida
+	 * @param etag versione corrente del dettaglio
+	 */
+	public record VersionedNotification(@Nullable InternalNotification notification, String etag) {
+
+		public boolean notModified() {
+			return notification == null;
+		}
+	}
+
+	/**
+	 * Get the full detail of a notification by IUN with senderId check, unless the client copy is still current
+	 *
+	 * @param iun unique identifier of a Notification
+	 * @param senderId unique identifier of the sender
+	 * @param groups sender groups
+	 * @param ifNoneMatch value of the If-None-Match header, null if absent
+	 * @throws PnNotificationNotFoundException if sender is not notification sender
+	 *
+	 * @return Notification DTO and its version, without the notification if the version matches ifNoneMatch
+	 */
+	public VersionedNotification getVersionedNotificationWithSenderIdCheck(String iun, String senderId, List<String> groups, @Nullable String ifNoneMatch) {
+		if ( StringUtils.hasText( ifNoneMatch ) ) {
+			// la versione si calcola da entità e timeline, senza leggere il data vault
+			NotificationDetailAssembler.NotificationDetail probe = notificationDetailAssembler.probe( iun,
+					entity -> checkSenderId( iun, entity.getSenderPaId(), senderId, entity.getGroup(), groups ) );
+			InternalNotification notification = probe.notification();
+			completeInternalNotificationWithTimeline(iun, true, notification, probe.timeline());
+			String etag = NotificationVersion.of( notification, SENDER_VIEW );
+			// le notifiche non ancora accettate non sono visibili al mittente: il dettaglio completo restituisce 404
+			if ( isVisibleToSender( notification ) && NotificationVersion.matches( ifNoneMatch, etag ) ) {
+				log.debug( "Notification iun={} not modified etag={}", iun, etag );
+				return new VersionedNotification( null, etag );
+			}
+		}
+		InternalNotification notification = getNotificationInformationWithSenderIdCheck( iun, senderId, groups );
+		return new VersionedNotification( notification, NotificationVersion.of( notification, SENDER_VIEW ) );
+	}
+
+	/**
+	 * Esito della lettura del dettaglio di una notifica in una lettura di più notifiche
+	 * @param iun IUN della notifica
+	 * @param notification dettaglio della notifica, null in caso di errore
+	 * @param error errore della lettura, null se il dettaglio è stato letto
+	 */
+	public record NotificationResult(String iun, @Nullable InternalNotification notification, @Nullable PnRuntimeException error) {}
+
+	/**
+	 * Get the full detail of many notifications with senderId check
+	 *
+	 * @param iuns unique identifiers of the notifications, at most {@value #MAX_BULK_DETAIL_IUNS}
+	 * @param senderId unique identifier of the sender
+	 * @param groups sender groups
+	 * @throws PnBadRequestException if no IUN or too many IUNs are requested
+	 *
+	 * @return one result for each distinct IUN, in request order, with the notification or the reading error
+	 */
+	public List<NotificationResult> getNotificationsInformationWithSenderIdCheck(List<String> iuns, String senderId, List<String> groups) {
+		List<String> distinctIuns = iuns != null ? iuns.stream().distinct().toList() : List.of();
+		if ( distinctIuns.isEmpty() || distinctIuns.size() > MAX_BULK_DETAIL_IUNS ) {
+			throw new PnBadRequestException( "Invalid iuns", String.format( "Between 1 and %d IUNs can be requested", MAX_BULK_DETAIL_IUNS ),
+					ERROR_CODE_DELIVERY_INVALIDPARAMETER_IUNS );
+		}
+		log.debug( "Retrieve complete notifications with sender check size={} senderId={} START", distinctIuns.size(), senderId );
+
+		List<NotificationResult> results = new ArrayList<>( distinctIuns.size() );
+		for ( NotificationDetailAssembler.NotificationDetailResult item : notificationDetailAssembler.assembleAll( distinctIuns, senderId,
+				entity -> checkSenderId( entity.getIun(), entity.getSenderPaId(), senderId, entity.getGroup(), groups ) ) ) {
+			String iun = item.iun();
+			try {
+				if ( item.error() != null )
+					throw item.error();
+				InternalNotification notification = item.detail().notification();
+				completeInternalNotificationWithTimeline( iun, true, notification, item.detail().timeline() );
+				labelizeGroup( notification, item.detail().groups() );
+				if ( !isVisibleToSender( notification ) ) {
+					throw new PnNotificationNotFoundException( String.format( "Unable to find notification with iun=%s cause status=%s",
+							iun, notification.getNotificationStatus() ) );
+				}
+				results.add( new NotificationResult( iun, notification, null ) );
+			} catch (PnRuntimeException exc) {
+				results.add( new NotificationResult( iun, null, exc ) );
+			} catch (RuntimeException exc) {
+				log.error( "Unable to read notification detail iun={}", iun, exc );
+				results.add( new NotificationResult( iun, null, new PnInternalException( "Error reading notification detail iun=" + iun,
+						ERROR_CODE_DELIVERY_NOTIFICATION_DETAIL_FAILED, exc ) ) );
+			}
+		}
+		return results;
+	}
+
+	private static boolean isVisibleToSender(InternalNotification notification) {
+		return !NotificationStatus.IN_VALIDATION.equals( notification.getNotificationStatus() )
+				&& !NotificationStatus.REFUSED.equals( notification.getNotificationStatus() );
+	}
+
 	private void checkSenderId(String iun, String notificationSenderPaId, String senderId, String notificationGroup, List<String> groups) {
 		if ( !notificationSenderPaId.equals( senderId ) )
 			throw new PnNotificationNotFoundException(
@@ -484,6 +598,8 @@ public class NotificationRetrieverService {
 	}
 
 	private void setNoticeCodeToReturn(List<NotificationRecipient> recipientList, NoticeCodeToReturn noticeCodeToReturn, String iun) {
+		List<NotificationPaymentInfo> paymentsToVerify = new ArrayList<>();
+		List<String> alternativeNoticeCodes = new ArrayList<>();
 		for ( NotificationRecipient recipient : recipientList ) {
 			NotificationPaymentInfo notificationPaymentInfo = recipient.getPayment();
 			if ( notificationPaymentInfo != null) {
@@ -496,8 +612,9 @@ public class NotificationRetrieverService {
     					}
     					// - se devo restituire il notice code alternativo...
     					case SECOND_NOTICE_CODE: {
-    						// - ...verifico che il primo notice code non è stato già pagato
-    						setNoticeCodePayment(iun, notificationPaymentInfo, creditorTaxId, noticeCode);
+    						// - ...verifico che il primo notice code non è stato già pagato, per tutti i destinatari insieme
+    						paymentsToVerify.add( notificationPaymentInfo );
+    						alternativeNoticeCodes.add( notificationPaymentInfo.getNoticeCodeAlternative() );
     						break;
     					}
     					case NO_NOTICE_CODE: {
@@ -513,32 +630,38 @@ public class NotificationRetrieverService {
     			}
 			}
 		}
+		setNoticeCodePayments(iun, paymentsToVerify, alternativeNoticeCodes);
 	}
 
-	private void setNoticeCodePayment(String iun, NotificationPaymentInfo notificationPaymentInfo, String creditorTaxId, String noticeCode) {
-		log.debug( "Start getPaymentInfo iun={} creditorTaxId={} noticeCode={}", iun, creditorTaxId, noticeCode);
-		try {
-			PaymentInfo paymentInfo = this.pnExternalRegistriesClient.getPaymentInfo(creditorTaxId, noticeCode);
-			if ( paymentInfo != null ) {
-				log.debug( "End getPaymentInfo iun={} creditorTaxId={} noticeCode={} paymentStatus={}", iun, creditorTaxId, noticeCode, paymentInfo.getStatus() );
-				// - se il primo notice code NON è stato già pagato
-				if ( !PaymentStatus.SUCCEEDED.equals( paymentInfo.getStatus() ) ) {
-					// - restituisco il notice code alternativo
-					log.info( "Return for iun={} alternative notice code={}", iun, notificationPaymentInfo.getNoticeCodeAlternative() );
-					notificationPaymentInfo.setNoticeCode( notificationPaymentInfo.getNoticeCodeAlternative() );
-				}
-				// - il primo notice code è stato già pagato quindi lo restituisco
-			} else {
-				// - External-registries non risponde quindi non restituisco nessun notice code
-				log.debug( "Unable to getPaymentInfo iun={} creditorTaxId={} noticeCode={}", iun, creditorTaxId, noticeCode);
-				notificationPaymentInfo.setNoticeCode( null );
+	private void setNoticeCodePayments(String iun, List<NotificationPaymentInfo> paymentsToVerify, List<String> alternativeNoticeCodes) {
+		if ( paymentsToVerify.isEmpty() ) {
+			return;
+		}
+		List<PaymentInfo> paymentInfos = notificationDetailAssembler.getPaymentInfos( iun, paymentsToVerify.stream()
+				.map( payment -> new NotificationDetailAssembler.PaymentNotice( payment.getCreditorTaxId(), payment.getNoticeCode() ) )
+				.toList() );
+		for ( int i = 0; i < paymentsToVerify.size(); i++ ) {
+			setNoticeCodePayment( iun, paymentsToVerify.get( i ), alternativeNoticeCodes.get( i ), paymentInfos.get( i ) );
+		}
+	}
+
+	private void setNoticeCodePayment(String iun, NotificationPaymentInfo notificationPaymentInfo, String noticeCodeAlternative, PaymentInfo paymentInfo) {
+		String creditorTaxId = notificationPaymentInfo.getCreditorTaxId();
+		String noticeCode = notificationPaymentInfo.getNoticeCode();
+		if ( paymentInfo != null ) {
+			log.debug( "End getPaymentInfo iun={} creditorTaxId={} noticeCode={} paymentStatus={}", iun, creditorTaxId, noticeCode, paymentInfo.getStatus() );
+			// - se il primo notice code NON è stato già pagato
+			if ( !PaymentStatus.SUCCEEDED.equals( paymentInfo.getStatus() ) ) {
+				// - restituisco il notice code alternativo
+				log.info( "Return for iun={} alternative notice code={}", iun, noticeCodeAlternative );
+				notificationPaymentInfo.setNoticeCode( noticeCodeAlternative );
 			}
-		} catch ( PnHttpResponseException ex ) {
+			// - il primo notice code è stato già pagato quindi lo restituisco
+		} else {
 			// - External-registries non risponde quindi non restituisco nessun notice code
-			log.error( "Unable to getPaymentInfo iun={} creditorTaxId={} noticeCode={} caused by ex={}", iun, creditorTaxId, noticeCode, ex);
+			log.debug( "Unable to getPaymentInfo iun={} creditorTaxId={} noticeCode={}", iun, creditorTaxId, noticeCode);
 			notificationPaymentInfo.setNoticeCode( null );
 		}
-
 	}
 
 	public enum NoticeCodeToReturn {
@@ -585,12 +708,73 @@ public class NotificationRetrieverService {
 																	String mandateId) {
 		log.debug("Start getNotificationAndSetViewed for {}", iun);
 
-		String delegatorId = null;
-		NotificationViewDelegateInfo delegateInfo = null;
 		// cerco prima la notifica in DB, poi controllo la delega, visto che mi serve il paId
 		// Il caso più comune infatti è che l'utente abbia il permesso di vedere una certa notifica
 		InternalNotification notification = getNotificationInformation(iun);
+		RecipientView view = checkRecipientView(notification, internalAuthHeader, mandateId);
+		filterByRecipient(notification, internalAuthHeader, view);
+		notifyNotificationViewedEvent(notification, view.recipientIndex(), view.delegateInfo());
+		return notification;
+	}
+
+	/**
+	 * Get the full detail of a notification by IUN and notify viewed event, unless the client copy is still current.
+	 * The viewed event is notified also when the client copy is current.
+	 *
+	 * @param iun                	unique identifier of a Notification
+	 * @param internalAuthHeader	header cx-*
+	 * @param mandateId 	 		id delega (opzionale)
+	 * @param ifNoneMatch			value of the If-None-Match header, null if absent
+	 * @return Notification and its version, without the notification if the version matches ifNoneMatch
+	 */
+	public VersionedNotification getVersionedNotificationAndNotifyViewedEvent(String iun,
+																			  InternalAuthHeader internalAuthHeader,
+																			  String mandateId,
+																			  @Nullable String ifNoneMatch) {
+		log.debug("Start getVersionedNotificationAndSetViewed for {}", iun);
+
+		RecipientView view = null;
+		if ( StringUtils.hasText( ifNoneMatch ) ) {
+			// la versione si calcola da entità e timeline: data vault e informazioni di pagamento non vengono letti
+			NotificationDetailAssembler.NotificationDetail probe = notificationDetailAssembler.probe( iun, entity -> {} );
+			InternalNotification notification = probe.notification();
+			view = checkRecipientView(notification, internalAuthHeader, mandateId);
+			if ( !requiresPaymentInfo( notification, probe.timeline() ) ) {
+				completeInternalNotificationWithTimeline(iun, false, notification, probe.timeline());
+				filterByRecipient(notification, internalAuthHeader, view);
+				String etag = NotificationVersion.of( notification, recipientView( view ) );
+				if ( NotificationVersion.matches( ifNoneMatch, etag ) ) {
+					log.debug( "Notification iun={} not modified etag={}", iun, etag );
+					notifyNotificationViewedEvent(notification, view.recipientIndex(), view.delegateInfo());
+					return new VersionedNotification( null, etag );
+				}
+			}
+		}
+
+		InternalNotification notification = getNotificationInformation(iun);
+		if ( view == null ) {
+			view = checkRecipientView(notification, internalAuthHeader, mandateId);
+		}
+		filterByRecipient(notification, internalAuthHeader, view);
+		notifyNotificationViewedEvent(notification, view.recipientIndex(), view.delegateInfo());
+		return new VersionedNotification( notification, NotificationVersion.of( notification, recipientView( view ) ) );
+	}
+
+	/**
+	 * Destinatario per cui viene letta una notifica
+	 * @param recipientIndex indice del destinatario, o del delegante
+	 * @param delegateInfo delega usata, null se letta dal destinatario
+	 */
+	private record RecipientView(int recipientIndex, @Nullable NotificationViewDelegateInfo delegateInfo) {}
+
+	private static String recipientView(RecipientView view) {
+		return RECIPIENT_VIEW + view.recipientIndex();
+	}
 
+	private RecipientView checkRecipientView(InternalNotification notification, InternalAuthHeader internalAuthHeader, String mandateId) {
+		String iun = notification.getIun();
+		String delegatorId = null;
+		NotificationViewDelegateInfo delegateInfo = null;
 		if ( StringUtils.hasText( mandateId ) ) {
 			delegatorId = checkMandateForNotificationDetail(internalAuthHeader.xPagopaPnCxId(), mandateId, notification.getSenderPaId(), iun, internalAuthHeader.cxType(), internalAuthHeader.xPagopaPnCxGroups());
 			delegateInfo = NotificationViewDelegateInfo.builder()
@@ -606,10 +790,12 @@ public class NotificationRetrieverService {
 
 		String recipientId = delegatorId != null ? delegatorId : internalAuthHeader.xPagopaPnCxId();
 		int recipientIndex = getRecipientIndexFromRecipientId(notification, recipientId);
-		filterTimelinesByRecipient(notification, internalAuthHeader, recipientIndex);
-		filterRecipients(notification, internalAuthHeader, recipientIndex);
-		notifyNotificationViewedEvent(notification, recipientIndex, delegateInfo);
-		return notification;
+		return new RecipientView(recipientIndex, delegateInfo);
+	}
+
+	private void filterByRecipient(InternalNotification notification, InternalAuthHeader internalAuthHeader, RecipientView view) {
+		filterTimelinesByRecipient(notification, internalAuthHeader, view.recipientIndex());
+		filterRecipients(notification, internalAuthHeader, view.recipientIndex());
 	}
 
 	private void filterTimelinesByRecipient(InternalNotification internalNotification, InternalAuthHeader internalAuthHeader, int recipientIndex) {
@@ -730,29 +916,19 @@ public class NotificationRetrieverService {
 		int numberOfRecipients = notification.getRecipients().size();
 		OffsetDateTime createdAt =  notification.getSentAt();
 
-		NotificationHistoryResponse timelineStatusHistoryDto =  pnDeliveryPushClient.getTimelineAndStatusHistory(iun,numberOfRecipients, createdAt);
-
-
-		List<it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.TimelineElement> timelineList = timelineStatusHistoryDto.getTimeline()
-				.stream()
-				.sorted( Comparator.comparing(it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.TimelineElement::getTimestamp))
-				.toList();
-
-		log.debug( "Retrieve status history for notification created at={}", createdAt );
-
-		List<it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.NotificationStatusHistoryElement> statusHistory = timelineStatusHistoryDto.getNotificationStatusHistory();
+		NotificationTimelineCache.Timeline timeline = notificationDetailAssembler.readTimeline(iun, numberOfRecipients, createdAt);
+		return enrichWithTimelineAndStatusHistory(iun, notification, timeline);
+	}
 
-		FullSentNotification resultFullSent = notification
-				.timeline( timelineList.stream()
-						.map( timelineElement -> modelMapper.map(timelineElement, TimelineElement.class ) )
-						.toList()  )
-				.notificationStatusHistory( statusHistory.stream()
-						.map( el -> modelMapper.map( el, NotificationStatusHistoryElement.class ))
-						.toList()
-				)
-				.notificationStatus( NotificationStatus.fromValue( timelineStatusHistoryDto.getNotificationStatus().getValue() ));
+	private InternalNotification enrichWithTimelineAndStatusHistory(String iun, InternalNotification notification, NotificationTimelineCache.Timeline timeline) {
+		log.debug( "Apply timeline version={} to notification iun={}", timeline.version(), iun );
 
-		return modelMapper.map( resultFullSent, InternalNotification.class );
+		// gli elementi di timeline sono condivisi con la cache delle timeline e non vengono modificati;
+		// la notifica è già una InternalNotification e viene completata senza conversione
+		notification.setTimeline( timeline.elements() );
+		notification.setNotificationStatusHistory( timeline.statusHistory() );
+		notification.setNotificationStatus( timeline.status() );
+		return notification;
 	}
 
 
@@ -760,24 +936,18 @@ public class NotificationRetrieverService {
 		String iun = notification.getIun();
 		log.info("Send \"notification acknowlwdgement\" event for iun={}", iun);
 		Instant createdAt = clock.instant();
-		notificationAcknowledgementProducer.sendNotificationViewed( iun, createdAt, recipientIndex, delegateInfo );
+		notificationViewedService.notifyViewed( iun, createdAt, recipientIndex, delegateInfo );
 	}
 
-	private void labelizeGroup(InternalNotification notification, String senderId) {
+	private void labelizeGroup(InternalNotification notification, PaGroups groups) {
 		String notificationGroup = notification.getGroup();
-		// no notification or no sender id
-		if (notificationGroup == null || notificationGroup.isEmpty() || senderId == null) {
+		// no notification group or groups not read
+		if (notificationGroup == null || notificationGroup.isEmpty() || groups.isEmpty()) {
 			return;
 		}
-		List<PaGroup> groups = pnExternalRegistriesClient.getGroups(senderId);
-		if (!groups.isEmpty()) {
-			PaGroup group = groups.stream()
-					.filter(g -> g.getId().equals(notificationGroup))
-					.findAny()
-					.orElse(null);
-			if (group != null) {
-				notification.setGroup(group.getName());
-			}
+		PaGroup group = groups.get(notificationGroup);
+		if (group != null) {
+			notification.setGroup(group.getName());
 		}
 	}
 
@@ -791,17 +961,14 @@ public class NotificationRetrieverService {
 		if (notifications == null || notifications.isEmpty() || senderId == null) {
 			return;
 		}
-		List<PaGroup> groups = pnExternalRegistriesClient.getGroups(senderId);
+		PaGroups groups = pnExternalRegistriesClient.getPaGroups(senderId);
+		if (groups.isEmpty()) {
+			return;
+		}
 		for (NotificationSearchRow notification : notifications) {
-			String notificationGroup = notification.getGroup();
-			if (!groups.isEmpty() && notificationGroup != null && !notificationGroup.isEmpty()) {
-				PaGroup group = groups.stream()
-						.filter(g -> g.getId().equals(notificationGroup))
-						.findAny()
-						.orElse(null);
-				if (group != null) {
-					notification.setGroup(group.getName());
-				}
+			PaGroup group = groups.get(notification.getGroup());
+			if (group != null) {
+				notification.setGroup(group.getName());
 			}
 		}
 	}
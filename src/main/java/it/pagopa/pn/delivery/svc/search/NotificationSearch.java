@@ -27,14 +27,23 @@ public abstract class NotificationSearch {
 
 
     protected void deanonimizeResults(ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> globalResult){
+        deanonimizeRows(dataVaultClient, globalResult.getResultsPage());
+    }
+
+    /**
+     * Sostituisce gli identificativi opachi dei destinatari delle righe con i CF in chiaro
+     * @param dataVaultClient client di data-vault
+     * @param rows righe da deanonimizzare
+     */
+    static void deanonimizeRows(PnDataVaultClientImpl dataVaultClient, List<NotificationSearchRow> rows){
         // faccio richiesta a data-vault per restituire i CF non opachi al FE
-        if ( !CollectionUtils.isEmpty( globalResult.getResultsPage() ) ) {
-            Set<String> opaqueTaxIds = globalResult.getResultsPage().stream()
+        if ( !CollectionUtils.isEmpty( rows ) ) {
+            Set<String> opaqueTaxIds = rows.stream()
                     .map( NotificationSearchRow::getRecipients )
                     .flatMap( Collection::stream )
                     .collect( Collectors.toSet() );
             if (!opaqueTaxIds.isEmpty()) {
-                setRecipientsId(globalResult, opaqueTaxIds);
+                setRecipientsId(dataVaultClient, rows, opaqueTaxIds);
             } else {
                 log.debug( "Unable to deanonimize results. No opaqueTaxIds in resultsPage" );
             }
@@ -43,11 +52,11 @@ public abstract class NotificationSearch {
         }
     }
 
-    private void setRecipientsId(ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> globalResult, Set<String> opaqueTaxIds) {
+    private static void setRecipientsId(PnDataVaultClientImpl dataVaultClient, List<NotificationSearchRow> rows, Set<String> opaqueTaxIds) {
         log.debug( "Deanonimize results. Opaque tax ids={}", opaqueTaxIds);
         List<BaseRecipientDto> dataVaultResults = dataVaultClient.getRecipientDenominationByInternalId(new ArrayList<>(opaqueTaxIds));
         if ( !dataVaultResults.isEmpty() ) {
-            for (NotificationSearchRow searchRow : globalResult.getResultsPage()) {
+            for (NotificationSearchRow searchRow : rows) {
                 List<String> realTaxIds = new ArrayList<>();
                 for (String internalId : searchRow.getRecipients() ) {
                     Optional<BaseRecipientDto> match = dataVaultResults.stream().filter(r -> internalId.equals( r.getInternalId() ) ).findFirst();
@@ -0,0 +1,246 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import it.pagopa.pn.commons.exceptions.PnInternalException;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationExportRow;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationSearchRow;
+import it.pagopa.pn.delivery.middleware.NotificationDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.EntityToDtoNotificationMetadataMapper;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
+import it.pagopa.pn.delivery.models.PageSearchTrunk;
+import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
+import it.pagopa.pn.delivery.utils.MdcUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.CollectionUtils;
+
+import java.io.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.zip.GZIPOutputStream;
+
+import static it.pagopa.pn.delivery.exception.PnDeliveryExceptionCodes.*;
+
+/**
+ * Esportazione di tutte le righe di una ricerca come flusso NDJSON compresso gzip.
+ * <p>
+ * Un thread legge le pagine dynamo delle partizioni mensili, nell'ordine della ricerca, e le accoda in una coda
+ * limitata; un secondo thread le preleva, le converte in righe di risultato e le scrive nel flusso restituito al
+ * chiamante. La memoria occupata è limitata alle pagine in coda più il buffer del flusso, qualunque sia il numero
+ * di righe esportate: quando il chiamante non consuma il flusso la scrittura si blocca e con essa, a coda piena,
+ * la lettura.
+ * <p>
+ * Ogni riga riporta la propria chiave nell'indice, che permette di riprendere un'esportazione interrotta dalla
+ * riga successiva. In caso di errore il flusso viene chiuso senza il trailer gzip, così il chiamante può
+ * distinguere un'esportazione interrotta da una completa.
+ */
+@Slf4j
+class NotificationSearchExport {
+
+    static final int PIPE_BUFFER_SIZE = 64 * 1024;
+    private static final int GZIP_BUFFER_SIZE = 8 * 1024;
+    private static final long OFFER_TIMEOUT_SECONDS = 1;
+
+    private record Page(List<NotificationMetadataEntity> rows, RuntimeException error) {}
+
+    private static final Page END = new Page( List.of(), null );
+
+    private final NotificationDao notificationDao;
+    private final EntityToDtoNotificationMetadataMapper entityToDto;
+    private final PnDataVaultClientImpl dataVaultClient;
+    private final PnLastEvaluatedKeyCodec lastEvaluatedKeyCodec;
+    private final ObjectWriter rowWriter;
+    private final InputSearchNotificationDto inputSearchNotificationDto;
+    private final IndexNameAndPartitions.SearchIndexEnum indexName;
+    private final List<String> partitions;
+    private final PnLastEvaluatedKey startKey;
+    private final int dynamoDbPageSize;
+    private final BlockingQueue<Page> prefetchedPages;
+    private volatile boolean stopped;
+
+    NotificationSearchExport(NotificationDao notificationDao,
+                             EntityToDtoNotificationMetadataMapper entityToDto,
+                             PnDataVaultClientImpl dataVaultClient,
+                             PnLastEvaluatedKeyCodec lastEvaluatedKeyCodec,
+                             ObjectWriter rowWriter,
+                             InputSearchNotificationDto inputSearchNotificationDto,
+                             IndexNameAndPartitions indexNameAndPartitions,
+                             PnLastEvaluatedKey startKey,
+                             int dynamoDbPageSize,
+                             int prefetchPages) {
+        this.notificationDao = notificationDao;
+        this.entityToDto = entityToDto;
+        this.dataVaultClient = dataVaultClient;
+        this.lastEvaluatedKeyCodec = lastEvaluatedKeyCodec;
+        this.rowWriter = rowWriter;
+        this.inputSearchNotificationDto = inputSearchNotificationDto;
+        this.indexName = indexNameAndPartitions.getIndexName();
+        this.partitions = indexNameAndPartitions.getPartitions();
+        this.startKey = startKey;
+        this.dynamoDbPageSize = dynamoDbPageSize;
+        this.prefetchedPages = new ArrayBlockingQueue<>( prefetchPages );
+    }
+
+    /**
+     * Avvia lettura e scrittura sull'executor delle esportazioni
+     * @param executor executor delle esportazioni
+     * @return flusso NDJSON compresso gzip, da chiudere al termine della lettura
+     */
+    InputStream start(ExecutorService executor) {
+        PipedInputStream exportStream = new PipedInputStream( PIPE_BUFFER_SIZE );
+        PipedOutputStream exportSink;
+        try {
+            exportSink = new PipedOutputStream( exportStream );
+        } catch (IOException exc) {
+            throw new PnInternalException( "Unable to open export stream", ERROR_CODE_DELIVERY_SEARCH_EXPORT_FAILED, exc );
+        }
+
+        try {
+            executor.execute( MdcUtils.wrap( this::readPages ) );
+            executor.execute( MdcUtils.wrap( () -> writeRows( exportSink ) ) );
+        } catch (RejectedExecutionException exc) {
+            stopped = true;
+            closeQuietly( exportSink );
+            throw new PnInternalException( "Too many concurrent search exports", ERROR_CODE_DELIVERY_SEARCH_EXPORT_FAILED, exc );
+        }
+        log.info( "search export started indexName={} partitions={} resumed={}", indexName, partitions.size(), startKey != null );
+        return exportStream;
+    }
+
+    private void readPages() {
+        try {
+            for (int i = 0; i < partitions.size() && !stopped; i++) {
+                String partition = partitions.get( i );
+                // la chiave di ripresa riguarda solo la prima partizione
+                PnLastEvaluatedKey pageKey = i == 0 ? startKey : null;
+                do {
+                    PageSearchTrunk<NotificationMetadataEntity> page = waitPage( notificationDao.searchForOneMonthAsync(
+                            inputSearchNotificationDto, indexName.getValue(), partition, dynamoDbPageSize, pageKey ) );
+                    if ( !CollectionUtils.isEmpty( page.getResults() ) )
+                        enqueue( new Page( page.getResults(), null ) );
+                    pageKey = nextPageKey( partition, page );
+                } while ( pageKey != null && !stopped );
+            }
+            enqueue( END );
+        } catch (RuntimeException exc) {
+            enqueue( new Page( List.of(), exc ) );
+        }
+    }
+
+    private static PnLastEvaluatedKey nextPageKey(String partition, PageSearchTrunk<NotificationMetadataEntity> page) {
+        if ( CollectionUtils.isEmpty( page.getLastEvaluatedKey() ) )
+            return null;
+        PnLastEvaluatedKey nextKey = new PnLastEvaluatedKey();
+        nextKey.setExternalLastEvaluatedKey( partition );
+        nextKey.setInternalLastEvaluatedKey( page.getLastEvaluatedKey() );
+        return nextKey;
+    }
+
+    private void enqueue(Page page) {
+        try {
+            // a coda piena attende lo scrittore, che se si interrompe non preleva più pagine
+            while ( !stopped && !prefetchedPages.offer( page, OFFER_TIMEOUT_SECONDS, TimeUnit.SECONDS ) ) {
+                log.trace( "search export queue full" );
+            }
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            stopped = true;
+        }
+    }
+
+    private void writeRows(OutputStream exportSink) {
+        long rows = 0;
+        long pages = 0;
+        GZIPOutputStream gzip = null;
+        try {
+            gzip = new GZIPOutputStream( exportSink, GZIP_BUFFER_SIZE, true );
+            Page page;
+            while ( (page = takePage()) != END ) {
+                if ( page.error() != null )
+                    throw page.error();
+                rows += writePage( gzip, page.rows() );
+                pages++;
+                // rende disponibile al chiamante la pagina appena scritta
+                gzip.flush();
+            }
+            gzip.close();
+            log.info( "search export completed indexName={} rows={} pages={}", indexName, rows, pages );
+        } catch (IOException exc) {
+            log.warn( "search export closed by reader indexName={} rows={} pages={}", indexName, rows, pages, exc );
+            abort( exportSink, gzip );
+        } catch (RuntimeException exc) {
+            log.error( "search export failed indexName={} rows={} pages={}", indexName, rows, pages, exc );
+            abort( exportSink, gzip );
+        } finally {
+            stopped = true;
+            prefetchedPages.clear();
+        }
+    }
+
+    private Page takePage() {
+        try {
+            return prefetchedPages.take();
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new PnInternalException( "Interrupted while exporting search results", ERROR_CODE_DELIVERY_SEARCH_EXPORT_FAILED, exc );
+        }
+    }
+
+    private int writePage(OutputStream out, List<NotificationMetadataEntity> entities) throws IOException {
+        List<NotificationSearchRow> searchRows = entities.stream()
+                .map( this::toSearchRow )
+                .toList();
+        NotificationSearch.deanonimizeRows( dataVaultClient, searchRows );
+
+        for (int i = 0; i < entities.size(); i++) {
+            String rowKey = lastEvaluatedKeyCodec.encode(
+                    NotificationSearchMultiPage.lastEvaluatedKeyOf( indexName, entities.get( i ) ) );
+            NotificationExportRow exportRow = NotificationExportRow.builder()
+                    .row( searchRows.get( i ) )
+                    .key( rowKey )
+                    .build();
+            out.write( rowWriter.writeValueAsBytes( exportRow ) );
+            out.write( '\n' );
+        }
+        return entities.size();
+    }
+
+    private NotificationSearchRow toSearchRow(NotificationMetadataEntity notificationMetadata) {
+        try {
+            return entityToDto.entity2Dto( notificationMetadata );
+        } catch (Exception exc) {
+            String excMessage = String.format("Exception in mapping result for notificationMetadata iun###recipient_id=%s", notificationMetadata.getIunRecipientId());
+            throw new PnInternalException(excMessage, ERROR_CODE_DELIVERY_UNSUPPORTED_NOTIFICATION_METADATA, exc);
+        }
+    }
+
+    /**
+     * Chiude il flusso prima del gzip: il chiamante riceve uno stream troncato, senza trailer
+     */
+    private static void abort(OutputStream exportSink, GZIPOutputStream gzip) {
+        closeQuietly( exportSink );
+        if ( gzip != null )
+            closeQuietly( gzip );
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException exc) {
+            log.trace( "ignored error closing search export stream", exc );
+        }
+    }
+
+    private static PageSearchTrunk<NotificationMetadataEntity> waitPage(CompletableFuture<PageSearchTrunk<NotificationMetadataEntity>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new PnInternalException( "Interrupted while reading search partitions", ERROR_CODE_DELIVERY_PARTITION_SEARCH_FAILED, exc );
+        } catch (ExecutionException exc) {
+            if (exc.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            throw new PnInternalException( "Error reading search partition", ERROR_CODE_DELIVERY_PARTITION_SEARCH_FAILED, exc.getCause() );
+        }
+    }
+}
@@ -7,9 +7,15 @@ import it.pagopa.pn.delivery.models.InputSearchNotificationDelegatedDto;
 import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
 import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
 import it.pagopa.pn.delivery.pnclient.mandate.PnMandateClientImpl;
+import it.pagopa.pn.delivery.svc.NotificationActivityService;
+import it.pagopa.pn.delivery.svc.NotificationSubjectIndexService;
+import it.pagopa.pn.delivery.springbootcfg.SearchExecutorConfig;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
+import java.util.concurrent.ExecutorService;
+
 @Component
 public class NotificationSearchFactory {
 
@@ -18,17 +24,29 @@ public class NotificationSearchFactory {
     private final PnDeliveryConfigs cfg;
     private final PnDataVaultClientImpl dataVaultClient;
     private final PnMandateClientImpl mandateClient;
+    private final ExecutorService searchPartitionsExecutor;
+    private final DynamoDbPageSizeStrategy pageSizeStrategy;
+    private final NotificationActivityService notificationActivityService;
+    private final NotificationSubjectIndexService notificationSubjectIndexService;
 
     public NotificationSearchFactory(NotificationDao notificationDao,
                                      EntityToDtoNotificationMetadataMapper entityToDto,
                                      PnDeliveryConfigs cfg,
                                      PnDataVaultClientImpl dataVaultClient,
-                                     PnMandateClientImpl mandateClient) {
+                                     PnMandateClientImpl mandateClient,
+                                     @Qualifier(SearchExecutorConfig.SEARCH_EXECUTOR_BEAN_NAME) ExecutorService searchPartitionsExecutor,
+                                     DynamoDbPageSizeStrategy pageSizeStrategy,
+                                     NotificationActivityService notificationActivityService,
+                                     NotificationSubjectIndexService notificationSubjectIndexService) {
         this.notificationDao = notificationDao;
         this.entityToDto = entityToDto;
         this.cfg = cfg;
         this.dataVaultClient = dataVaultClient;
         this.mandateClient = mandateClient;
+        this.searchPartitionsExecutor = searchPartitionsExecutor;
+        this.pageSizeStrategy = pageSizeStrategy;
+        this.notificationActivityService = notificationActivityService;
+        this.notificationSubjectIndexService = notificationSubjectIndexService;
     }
 
     public NotificationSearch getMultiPageSearch(InputSearchNotificationDto inputSearchNotificationDto,
@@ -38,17 +56,26 @@ public class NotificationSearchFactory {
 
         if (indexNameAndPartitions.getIndexName().equals(IndexNameAndPartitions.SearchIndexEnum.INDEX_BY_IUN))
             return new NotificationSearchExact(notificationDao, entityToDto, inputSearchNotificationDto, dataVaultClient);
+        else if ( StringUtils.hasText( inputSearchNotificationDto.getSubjectRegExp() ) && notificationSubjectIndexService.isEnabled() ) {
+            // il filtro per oggetto usa il proprio indice, gli altri filtri sono verificati sulle righe candidate
+            IndexNameAndPartitions subjectIndexAndPartitions = IndexNameAndPartitions.selectSubjectIndexAndPartitions(inputSearchNotificationDto);
+            subjectIndexAndPartitions = notificationActivityService.retainActivePartitions(subjectIndexAndPartitions, lastEvaluatedKey);
+            subjectIndexAndPartitions = notificationSubjectIndexService.retainIndexedPartitions(subjectIndexAndPartitions);
+            return new NotificationSearchMultiPageBySubject(notificationDao, entityToDto, inputSearchNotificationDto, lastEvaluatedKey, cfg, dataVaultClient, subjectIndexAndPartitions, notificationSubjectIndexService);
+        }
         else if ( StringUtils.hasText( inputSearchNotificationDto.getOpaqueFilterIdPF() ) &&
                 StringUtils.hasText( inputSearchNotificationDto.getOpaqueFilterIdPG() ) ) {
-            return new NotificationSearchMultiPageByPFAndPGOnly(notificationDao, entityToDto, inputSearchNotificationDto, lastEvaluatedKey, cfg, dataVaultClient, indexNameAndPartitions);
+            return new NotificationSearchMultiPageByPFAndPGOnly(notificationDao, entityToDto, inputSearchNotificationDto, lastEvaluatedKey, cfg, dataVaultClient, indexNameAndPartitions, pageSizeStrategy);
         } else {
-            return new NotificationSearchMultiPageByPFOrPG(notificationDao, entityToDto, inputSearchNotificationDto, lastEvaluatedKey, cfg, dataVaultClient, indexNameAndPartitions);
+            indexNameAndPartitions = notificationActivityService.retainActivePartitions(indexNameAndPartitions, lastEvaluatedKey);
+            return new NotificationSearchMultiPageByPFOrPG(notificationDao, entityToDto, inputSearchNotificationDto, lastEvaluatedKey, cfg, dataVaultClient, indexNameAndPartitions, searchPartitionsExecutor, pageSizeStrategy);
         }
     }
 
     public NotificationSearch getMultiPageDelegatedSearch(InputSearchNotificationDelegatedDto searchDto,
                                                           PnLastEvaluatedKey lastEvaluatedKey) {
         IndexNameAndPartitions indexNameAndPartitions = IndexNameAndPartitions.selectDelegatedIndexAndPartitions(searchDto);
-        return new NotificationDelegatedSearchMultiPage(notificationDao, entityToDto, searchDto, lastEvaluatedKey, cfg, dataVaultClient, mandateClient, indexNameAndPartitions);
+        indexNameAndPartitions = notificationActivityService.retainActivePartitions(indexNameAndPartitions, lastEvaluatedKey);
+        return new NotificationDelegatedSearchMultiPage(notificationDao, entityToDto, searchDto, lastEvaluatedKey, cfg, dataVaultClient, mandateClient, indexNameAndPartitions, searchPartitionsExecutor, pageSizeStrategy);
     }
 }
@@ -20,13 +20,14 @@ import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.*;
 
+import static it.pagopa.pn.delivery.exception.PnDeliveryExceptionCodes.ERROR_CODE_DELIVERY_PARTITION_SEARCH_FAILED;
 import static it.pagopa.pn.delivery.exception.PnDeliveryExceptionCodes.ERROR_CODE_DELIVERY_UNSUPPORTED_NOTIFICATION_METADATA;
 
 @Slf4j
 public abstract class NotificationSearchMultiPage extends NotificationSearch {
 
-    public static final int FILTER_EXPRESSION_APPLIED_MULTIPLIER = 4;
     public static final int MAX_DYNAMO_SIZE = 2000;
 
     protected final NotificationDao notificationDao;
@@ -34,6 +35,9 @@ public abstract class NotificationSearchMultiPage extends NotificationSearch {
     protected final InputSearchNotificationDto inputSearchNotificationDto;
     protected final PnDeliveryConfigs cfg;
     protected final IndexNameAndPartitions indexNameAndPartitions;
+    protected final DynamoDbPageSizeStrategy pageSizeStrategy;
+    protected final DynamoDbPageSizeStrategy.SearchShape searchShape;
+    private SearchPageCache.Scope pageCacheScope;
 
     protected NotificationSearchMultiPage(NotificationDao notificationDao,
                                        EntityToDtoNotificationMetadataMapper entityToDto,
@@ -41,12 +45,29 @@ public abstract class NotificationSearchMultiPage extends NotificationSearch {
                                        PnLastEvaluatedKey lastEvaluatedKey,
                                        PnDeliveryConfigs cfg, PnDataVaultClientImpl dataVaultClient,
                                        IndexNameAndPartitions indexNameAndPartitions) {
+        this(notificationDao, entityToDto, inputSearchNotificationDto, lastEvaluatedKey, cfg, dataVaultClient, indexNameAndPartitions, null);
+    }
+
+    protected NotificationSearchMultiPage(NotificationDao notificationDao,
+                                       EntityToDtoNotificationMetadataMapper entityToDto,
+                                       InputSearchNotificationDto inputSearchNotificationDto,
+                                       PnLastEvaluatedKey lastEvaluatedKey,
+                                       PnDeliveryConfigs cfg, PnDataVaultClientImpl dataVaultClient,
+                                       IndexNameAndPartitions indexNameAndPartitions,
+                                       DynamoDbPageSizeStrategy pageSizeStrategy) {
         super(dataVaultClient, entityToDto);
         this.notificationDao = notificationDao;
         this.inputSearchNotificationDto = inputSearchNotificationDto;
         this.lastEvaluatedKey = lastEvaluatedKey;
         this.cfg = cfg;
         this.indexNameAndPartitions = indexNameAndPartitions;
+        this.pageSizeStrategy = pageSizeStrategy != null ? pageSizeStrategy : DynamoDbPageSizeStrategy.fixedMultiplier();
+        this.searchShape = DynamoDbPageSizeStrategy.SearchShape.of(
+                indexNameAndPartitions.getIndexName().getValue(),
+                inputSearchNotificationDto.getSenderReceiverId(),
+                CollectionUtils.isEmpty(inputSearchNotificationDto.getStatuses()) ? null : "status",
+                CollectionUtils.isEmpty(inputSearchNotificationDto.getGroups()) ? null : "group",
+                inputSearchNotificationDto.isBySender() && StringUtils.hasText(inputSearchNotificationDto.getFilterId()) ? "filterId" : null);
     }
 
     abstract List<NotificationMetadataEntity> getDataRead( int requiredSize, int dynamoDbPageSize );
@@ -55,22 +76,72 @@ public abstract class NotificationSearchMultiPage extends NotificationSearch {
 
         log.info( "notification paged search indexName={}", indexNameAndPartitions.getIndexName() );
 
+        // numero di elementi totali da cercare, di fatto la size della pagina * il numero di pagine + 1, così so per certo se ci sono altri elementi dopo o no.
+        int requiredSize = requiredSize();
+
+        SearchPageCache.CachedRows cachedRows = pageCacheScope != null ? pageCacheScope.lookup( lastEvaluatedKey, requiredSize ) : null;
+        List<NotificationMetadataEntity> dataRead;
+        if ( cachedRows != null ) {
+            if ( !cachedRows.lastPage() )
+                pageCacheScope.readAhead( cachedRows.rows(), cachedRows.expiresAt(), inputSearchNotificationDto.getSize(), requiredSize, this::getPnLastEvaluatedKey );
+            // le righe in cache possono essere più di quelle richieste: i cursori restituiti devono essere gli stessi della lettura da dynamo
+            dataRead = cachedRows.rows().size() > requiredSize ? cachedRows.rows().subList( 0, requiredSize ) : cachedRows.rows();
+        }
+        else {
+            dataRead = readRows( requiredSize );
+            storeFollowingPages( dataRead, requiredSize );
+        }
+
+        return prepareGlobalResult(dataRead, requiredSize);
+    }
+
+    /**
+     * Numero di elementi da leggere per calcolare la pagina richiesta e i cursori delle pagine successive
+     * @return size della pagina * numero di pagine + 1
+     */
+    int requiredSize() {
         // - le API private impostano il numero di pagine richiesto. Le API esposte il valore è definito in configurazione
         Integer maxPageNumber = inputSearchNotificationDto.getMaxPageNumber() != null? inputSearchNotificationDto.getMaxPageNumber() : cfg.getMaxPageSize();
+        return inputSearchNotificationDto.getSize() * maxPageNumber + 1;
+    }
 
-        // numero di elementi totali da cercare, di fatto la size della pagina * il numero di pagine + 1, così so per certo se ci sono altri elementi dopo o no.
-        int requiredSize = inputSearchNotificationDto.getSize() * maxPageNumber + 1;
-        // numero di elementi da chiedere a dynamoDb
-        int dynamoDbPageSize = requiredSize;
-        // se ho dei filtri ulteriori, suppongo che i dati vengano ulteriormente filtrati, quindi aumento il numero di elementi da leggere
-        if (!CollectionUtils.isEmpty(inputSearchNotificationDto.getStatuses())
-            || !CollectionUtils.isEmpty(inputSearchNotificationDto.getGroups())
-            || (inputSearchNotificationDto.isBySender() && StringUtils.hasText(inputSearchNotificationDto.getFilterId())))
-            dynamoDbPageSize = dynamoDbPageSize * FILTER_EXPRESSION_APPLIED_MULTIPLIER;
+    /**
+     * Legge da dynamo le righe della ricerca a partire dal cursore
+     * @param requiredSize numero di righe richieste
+     * @return righe lette, possono essere più di quelle richieste
+     */
+    List<NotificationMetadataEntity> readRows(int requiredSize) {
+        // numero di elementi da chiedere a dynamoDb, se ho dei filtri ulteriori i dati vengono ulteriormente filtrati
+        // quindi la strategia stima quanti elementi leggere in base alla forma della ricerca
+        int dynamoDbPageSize = pageSizeStrategy.initialPageSize(searchShape, requiredSize);
 
-        List<NotificationMetadataEntity> dataRead = getDataRead( requiredSize, dynamoDbPageSize );
+        return getDataRead( requiredSize, dynamoDbPageSize );
+    }
 
-        return prepareGlobalResult(dataRead, requiredSize);
+    /**
+     * Abilita la cache delle pagine successive per questa ricerca
+     * @param pageCacheScope ambito di cache della ricerca, null per non usare la cache
+     */
+    void usePageCache(SearchPageCache.Scope pageCacheScope) {
+        this.pageCacheScope = isPageCacheSupported() ? pageCacheScope : null;
+    }
+
+    /**
+     * Indica se le righe lette possono essere riusate per le pagine successive: il cursore di una riga
+     * deve dipendere solo dalla riga stessa
+     * @return true se la ricerca può usare la cache delle pagine
+     */
+    protected boolean isPageCacheSupported() {
+        return true;
+    }
+
+    private void storeFollowingPages(List<NotificationMetadataEntity> dataRead, int requiredSize) {
+        if ( pageCacheScope == null )
+            return;
+        boolean lastPage = dataRead.size() < requiredSize;
+        long expiresAt = pageCacheScope.store( dataRead, lastPage, inputSearchNotificationDto.getSize(), this::getPnLastEvaluatedKey );
+        if ( !lastPage )
+            pageCacheScope.readAhead( dataRead, expiresAt, inputSearchNotificationDto.getSize(), requiredSize, this::getPnLastEvaluatedKey );
     }
 
     /**
@@ -123,9 +194,19 @@ public abstract class NotificationSearchMultiPage extends NotificationSearch {
 
     @NotNull
     protected PnLastEvaluatedKey getPnLastEvaluatedKey(NotificationMetadataEntity keyelement) {
+        return lastEvaluatedKeyOf(indexNameAndPartitions.getIndexName(), keyelement);
+    }
+
+    /**
+     * Cursore che riprende la lettura dell'indice subito dopo la riga
+     * @param indexName indice di ricerca
+     * @param keyelement riga letta
+     * @return chiave della riga nell'indice
+     */
+    static PnLastEvaluatedKey lastEvaluatedKeyOf(IndexNameAndPartitions.SearchIndexEnum indexName, NotificationMetadataEntity keyelement) {
         PnLastEvaluatedKey pageLastEvaluatedKey = new PnLastEvaluatedKey();
 
-        if (indexNameAndPartitions.getIndexName().equals(IndexNameAndPartitions.SearchIndexEnum.INDEX_BY_SENDER))
+        if (indexName.equals(IndexNameAndPartitions.SearchIndexEnum.INDEX_BY_SENDER))
         {
             pageLastEvaluatedKey.setExternalLastEvaluatedKey(keyelement.getSenderIdCreationMonth());
             pageLastEvaluatedKey.setInternalLastEvaluatedKey(Map.of(
@@ -133,14 +214,14 @@ public abstract class NotificationSearchMultiPage extends NotificationSearch {
                     NotificationMetadataEntity.FIELD_SENT_AT, AttributeValue.builder().s(keyelement.getSentAt().toString()).build(),
                     NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID, AttributeValue.builder().s(keyelement.getIunRecipientId()).build()));
         }
-        else if (indexNameAndPartitions.getIndexName().equals(IndexNameAndPartitions.SearchIndexEnum.INDEX_BY_RECEIVER))
+        else if (indexName.equals(IndexNameAndPartitions.SearchIndexEnum.INDEX_BY_RECEIVER))
         {
             pageLastEvaluatedKey.setExternalLastEvaluatedKey(keyelement.getRecipientIdCreationMonth());
             pageLastEvaluatedKey.setInternalLastEvaluatedKey(Map.of(
                     NotificationMetadataEntity.FIELD_RECIPIENT_ID_CREATION_MONTH, AttributeValue.builder().s(keyelement.getRecipientIdCreationMonth()).build(),
                     NotificationMetadataEntity.FIELD_SENT_AT, AttributeValue.builder().s(keyelement.getSentAt().toString()).build(),
                     NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID, AttributeValue.builder().s(keyelement.getIunRecipientId()).build()));
-        }  else if (indexNameAndPartitions.getIndexName().equals(IndexNameAndPartitions.SearchIndexEnum.INDEX_WITH_BOTH_IDS))
+        }  else if (indexName.equals(IndexNameAndPartitions.SearchIndexEnum.INDEX_WITH_BOTH_IDS))
         {
             pageLastEvaluatedKey.setExternalLastEvaluatedKey(keyelement.getSenderIdRecipientId());
             pageLastEvaluatedKey.setInternalLastEvaluatedKey(Map.of(
@@ -152,62 +233,40 @@ public abstract class NotificationSearchMultiPage extends NotificationSearch {
     }
 
     /**
-     * Recupero tutti i dati da una partizione (ricorsivamente)
-     * @param currentRequest indice inizio scansione partizione
-     * @param partition partizione di ricerca
-     * @param cumulativeQueryResult risultati cumulativi da aggiornare
-     * @param lastEvaluatedKey ultimo elemento letto nella partizione
-     * @param requiredSize dimensione totale richiesta
-     * @param dynamoDbPageSize dimensione della pagina da leggere in dynamo
-     * @return numero di query eseguite
+     * Calcolo la dimensione della prossima pagina da leggere in dynamo
+     * @param dynamoDbPageSize dimensione della pagina appena letta
+     * @param rowsRead righe restituite dalla pagina appena letta
+     * @param requiredSize dimensione totale richiesta (null se non definita)
+     * @return dimensione della prossima pagina
      */
-    protected int readDataFromPartition(int currentRequest, String partition, List<NotificationMetadataEntity> cumulativeQueryResult,
-                                      PnLastEvaluatedKey lastEvaluatedKey,
-                                      Integer requiredSize, int dynamoDbPageSize) {
-        log.trace( "START compute partition read trunk indexName={}  partition={} currentRequest={} dynamoDbPageSize={}",  indexNameAndPartitions.getIndexName(), partition, currentRequest++, dynamoDbPageSize );
-
-        PageSearchTrunk<NotificationMetadataEntity> oneQueryResult;
-        oneQueryResult = notificationDao.searchForOneMonth(
-                inputSearchNotificationDto,
-                indexNameAndPartitions.getIndexName().getValue(),
-                partition,
-                dynamoDbPageSize,
-                lastEvaluatedKey);
-        log.trace( "END search for one month indexName={} partitionValue={} dynamoDbPageSize={} rowsRead={}", indexNameAndPartitions.getIndexName(), partition, dynamoDbPageSize, (oneQueryResult.getResults()==null?0:oneQueryResult.getResults().size()) );
-
-        // inserisco i risultati della query ad una singola partizione nei risultati cumulativi di ricerca
-        // viene eseguito il "distinct" per IUN
-        if (!CollectionUtils.isEmpty(oneQueryResult.getResults()))
-            cumulativeQueryResult.addAll(oneQueryResult.getResults());
-
-        if (requiredSize != null && cumulativeQueryResult.size() >= requiredSize)
-        {
-            log.trace("ending search, requiredSize reached  partition={} currentRequest={}", partition, currentRequest);
-            return currentRequest;
-        }
-
-        if (oneQueryResult.getLastEvaluatedKey() != null)
-        {
-            log.trace("thare are more data to read for partition={} currentRequest={} currentReadSize={}", partition, currentRequest, cumulativeQueryResult.size());
-            PnLastEvaluatedKey nextEvaluationKeyForSearch = new PnLastEvaluatedKey();
-            nextEvaluationKeyForSearch.setExternalLastEvaluatedKey(partition);
-            nextEvaluationKeyForSearch.setInternalLastEvaluatedKey(oneQueryResult.getLastEvaluatedKey());
-
-            // mi adatto in base a quanti dati ho letto, se non leggo niente, di fatto raddoppio la size fino al MAX configurato
-            // se ho letto "abbastanza", di fatto leggo al più altrettanto
+    protected static int nextDynamoDbPageSize(int dynamoDbPageSize, int rowsRead, Integer requiredSize) {
+        float multiplier = 2;
+        if ( requiredSize != null )
+            multiplier = 2 - Math.min(((float)rowsRead / (float)requiredSize), 1);
+        return Math.min(Math.round(dynamoDbPageSize * multiplier), MAX_DYNAMO_SIZE);
+    }
 
-            float multiplier = 2;
-            if ( requiredSize != null )
-                multiplier = 2 - Math.min(((float)oneQueryResult.getResults().size() / (float)requiredSize), 1);
-            dynamoDbPageSize = Math.round(dynamoDbPageSize * multiplier);
-            dynamoDbPageSize = Math.min(dynamoDbPageSize, MAX_DYNAMO_SIZE);
+    /**
+     * Riporto alla strategia di dimensionamento l'esito della lettura di una pagina
+     * @param dynamoDbPageSize dimensione della pagina letta
+     * @param oneQueryResult risultato della query
+     */
+    protected void recordPage(int dynamoDbPageSize, PageSearchTrunk<NotificationMetadataEntity> oneQueryResult) {
+        pageSizeStrategy.recordPage(searchShape, dynamoDbPageSize,
+                oneQueryResult.getResults() == null ? 0 : oneQueryResult.getResults().size(),
+                !CollectionUtils.isEmpty(oneQueryResult.getLastEvaluatedKey()));
+    }
 
-            return readDataFromPartition(currentRequest, partition, cumulativeQueryResult, nextEvaluationKeyForSearch, requiredSize, dynamoDbPageSize);
-        }
-        else
-        {
-            log.trace("no more data to read for partition={} currentRequest={} currentReadSize={}", partition, currentRequest, cumulativeQueryResult.size());
-            return currentRequest;
+    protected static <T> T waitFuture(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new PnInternalException( "Interrupted while reading search partitions", ERROR_CODE_DELIVERY_PARTITION_SEARCH_FAILED, exc );
+        } catch (ExecutionException exc) {
+            if (exc.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            throw new PnInternalException( "Error reading search partition", ERROR_CODE_DELIVERY_PARTITION_SEARCH_FAILED, exc.getCause() );
         }
     }
 }
@@ -6,34 +6,54 @@ import it.pagopa.pn.delivery.middleware.NotificationDao;
 import it.pagopa.pn.delivery.middleware.notificationdao.EntityToDtoNotificationMetadataMapper;
 import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
 import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
+import it.pagopa.pn.delivery.models.PageSearchTrunk;
 import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
 import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.util.CollectionUtils;
 
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
-import java.util.stream.Stream;
+import java.util.*;
+import java.util.concurrent.Future;
 
 @Slf4j
 public class NotificationSearchMultiPageByPFAndPGOnly extends NotificationSearchMultiPage {
 
+    // per ogni riga restituita, la posizione raggiunta nell'altra partizione al momento del merge
+    private final Map<NotificationMetadataEntity, PnLastEvaluatedKey> otherPartitionPositions = new IdentityHashMap<>();
+
     public NotificationSearchMultiPageByPFAndPGOnly(NotificationDao notificationDao,
                                                     EntityToDtoNotificationMetadataMapper entityToDto,
                                                     InputSearchNotificationDto inputSearchNotificationDto,
                                                     PnLastEvaluatedKey lastEvaluatedKey,
                                                     PnDeliveryConfigs cfg, PnDataVaultClientImpl dataVaultClient,
                                                     IndexNameAndPartitions indexNameAndPartitions) {
-        super(notificationDao, entityToDto, inputSearchNotificationDto, lastEvaluatedKey, cfg, dataVaultClient, indexNameAndPartitions);
+        this(notificationDao, entityToDto, inputSearchNotificationDto, lastEvaluatedKey, cfg, dataVaultClient, indexNameAndPartitions, null);
+    }
+
+    public NotificationSearchMultiPageByPFAndPGOnly(NotificationDao notificationDao,
+                                                    EntityToDtoNotificationMetadataMapper entityToDto,
+                                                    InputSearchNotificationDto inputSearchNotificationDto,
+                                                    PnLastEvaluatedKey lastEvaluatedKey,
+                                                    PnDeliveryConfigs cfg, PnDataVaultClientImpl dataVaultClient,
+                                                    IndexNameAndPartitions indexNameAndPartitions,
+                                                    DynamoDbPageSizeStrategy pageSizeStrategy) {
+        super(notificationDao, entityToDto, inputSearchNotificationDto, lastEvaluatedKey, cfg, dataVaultClient, indexNameAndPartitions, pageSizeStrategy);
     }
 
 
     /**
-     * algoritmo: ricerca tutte le notifiche nella partizione senderId##recipientPF (più vecchie di eventuale lastEventKey passata)
-     * ricerca tutte le notifiche nella partizione senderId##recipientPG (più vecchie di eventuale lastEventKey passata)
-     * mergio risultati ordinandoli dal punto di vista temporale (sentAt)
-     * in caso partendo dall'ultimo elemento ritornato dall'iterazione precedente (lastEvaluatedKey)
-     * filtrando la size massima richiesta (requiredSize)
+     * algoritmo: merge in streaming delle partizioni senderId##recipientPF e senderId##recipientPG, entrambe
+     * già ordinate per sentAt decrescente da dynamo.
+     * Le prime pagine delle due partizioni vengono lette in parallelo, le successive solo quando il buffer
+     * della partizione si svuota; il merge si ferma appena sono state raccolte requiredSize righe.
+     * L'eventuale lastEvaluatedKey riporta la posizione in entrambe le partizioni, così la pagina successiva
+     * riprende la lettura di ognuna dal punto raggiunto senza rileggerla.
+     * Se l'altra partizione non ha ancora restituito righe, la sua posizione è una chiave senza attributi
+     * (lettura dall'inizio).
+     * Solo per compatibilità con le chiavi che riportano una sola partizione vengono scartate le righe non più
+     * vecchie del sentAt della chiave: con entrambe le posizioni lo scarto perderebbe le righe dell'altra
+     * partizione con lo stesso sentAt dell'ultima riga restituita.
      *
      *
      * @param requiredSize dimensione elementi pagina FE
@@ -44,51 +64,200 @@ public class NotificationSearchMultiPageByPFAndPGOnly extends NotificationSearch
 
         log.info( "notification paged search by PF and PG indexName={}", indexNameAndPartitions.getIndexName() );
 
-        int logItemCountPF = 0;
-        int logItemCountPG = 0;
-
-        List<NotificationMetadataEntity> dataReadPF = new ArrayList<>();
-        List<NotificationMetadataEntity> dataReadPG = new ArrayList<>();
+        String partitionPF = indexNameAndPartitions.getPartitions().get( 0 );
+        String partitionPG = indexNameAndPartitions.getPartitions().get( 1 );
 
         Instant lastEvalutatedSentAt;
         PnLastEvaluatedKey lastEvaluatedKeyPF = null;
         PnLastEvaluatedKey lastEvaluatedKeyPG = null;
         if (lastEvaluatedKey != null)
         {
-            // nel caso in cui sia arrivata una chiave, so per certo che posso iniziare a leggere i dati per quella partizione dalla chiave passata.
-            // non so nulla dell'altra partizione, che pertanto vien letta tutta.
-            if (indexNameAndPartitions.getPartitions().get( 0 ).equals(lastEvaluatedKey.getExternalLastEvaluatedKey()))
+            // la chiave riporta la posizione della partizione dell'ultimo elemento restituito e, se presente, quella dell'altra partizione
+            if (partitionPF.equals(lastEvaluatedKey.getExternalLastEvaluatedKey())) {
                 lastEvaluatedKeyPF = lastEvaluatedKey;
-            else
+                lastEvaluatedKeyPG = lastEvaluatedKey.getOtherPartitionLastEvaluatedKey();
+            }
+            else {
                 lastEvaluatedKeyPG = lastEvaluatedKey;
+                lastEvaluatedKeyPF = lastEvaluatedKey.getOtherPartitionLastEvaluatedKey();
+            }
+
+            if (lastEvaluatedKey.getOtherPartitionLastEvaluatedKey() == null)
+                // chiave con una sola partizione: nel campo sentAt, trovo il timestamp dell'ultimo record letto,
+                // mi interessano quelli "più vecchi" (l'ordinamento è decrescente)
+                lastEvalutatedSentAt = Instant.parse(lastEvaluatedKey.getInternalLastEvaluatedKey().get(NotificationMetadataEntity.FIELD_SENT_AT).s());
+            else
+                lastEvalutatedSentAt = null;
 
-            // nel campo sentAt, trovo il timestamp dell'ultimo record letto, mi interessano quelli "più vecchi" (l'ordinamento è decrescente)
-            lastEvalutatedSentAt = Instant.parse(lastEvaluatedKey.getInternalLastEvaluatedKey().get(NotificationMetadataEntity.FIELD_SENT_AT).s());
+            // l'altra partizione non aveva ancora restituito righe: va letta dall'inizio
+            if (isFromStart(lastEvaluatedKeyPF))
+                lastEvaluatedKeyPF = null;
+            if (isFromStart(lastEvaluatedKeyPG))
+                lastEvaluatedKeyPG = null;
         }
         else
             lastEvalutatedSentAt = null;
 
+        PartitionStream streamPF = new PartitionStream( partitionPF, lastEvaluatedKeyPF, requiredSize, dynamoDbPageSize );
+        PartitionStream streamPG = new PartitionStream( partitionPG, lastEvaluatedKeyPG, requiredSize, dynamoDbPageSize );
+
+        List<NotificationMetadataEntity> dataRead = new ArrayList<>();
+        int skippedRows = 0;
+        try {
+            // le prime pagine delle due partizioni vengono richieste insieme
+            streamPF.requestNextPage();
+            streamPG.requestNextPage();
+
+            while (dataRead.size() < requiredSize) {
+                NotificationMetadataEntity headPF = streamPF.peek();
+                NotificationMetadataEntity headPG = streamPG.peek();
+                if (headPF == null && headPG == null) {
+                    log.debug("no more data to read in both partitions");
+                    break;
+                }
+
+                // a parità di sentAt viene preso prima l'elemento PF
+                boolean takePF = headPG == null || (headPF != null && !headPF.getSentAt().isBefore(headPG.getSentAt()));
+                PartitionStream current = takePF ? streamPF : streamPG;
+                PartitionStream other = takePF ? streamPG : streamPF;
+
+                NotificationMetadataEntity row = current.poll();
+                if (lastEvalutatedSentAt != null && !row.getSentAt().isBefore(lastEvalutatedSentAt)) {
+                    skippedRows++;
+                    continue;
+                }
+
+                dataRead.add( row );
+                current.setLastMerged( row );
+                otherPartitionPositions.put( row, other.getPosition() );
+            }
+        } finally {
+            streamPF.cancel();
+            streamPG.cancel();
+        }
+
+        log.info("search request completed, totalDbQueryCount={} totalDbQueryCountPF={} totalDbQueryCountPG={} totalRowRead={} totalRowReadPF={} totalRowReadPG={} filteredRows={} skippedRows={}",
+                streamPF.queryCount + streamPG.queryCount, streamPF.queryCount, streamPG.queryCount,
+                streamPF.rowsRead + streamPG.rowsRead, streamPF.rowsRead, streamPG.rowsRead, dataRead.size(), skippedRows);
+        return dataRead;
+    }
+
+    @NotNull
+    @Override
+    protected PnLastEvaluatedKey getPnLastEvaluatedKey(NotificationMetadataEntity keyelement) {
+        PnLastEvaluatedKey pageLastEvaluatedKey = super.getPnLastEvaluatedKey(keyelement);
+        pageLastEvaluatedKey.setOtherPartitionLastEvaluatedKey( otherPartitionPositions.get( keyelement ) );
+        return pageLastEvaluatedKey;
+    }
+
+    private static boolean isFromStart(PnLastEvaluatedKey key) {
+        return key != null && CollectionUtils.isEmpty( key.getInternalLastEvaluatedKey() );
+    }
+
+    @Override
+    protected boolean isPageCacheSupported() {
+        // il cursore dipende anche dalla posizione raggiunta nell'altra partizione, nota solo alla ricerca che ha letto le righe
+        return false;
+    }
+
+    /**
+     * Lettura a pagine di una singola partizione: le righe lette sono tenute in un buffer e la pagina
+     * successiva viene richiesta solo quando il buffer è vuoto.
+     */
+    private class PartitionStream {
+        private final String partition;
+        private final Integer requiredSize;
+        private final Deque<NotificationMetadataEntity> buffer = new ArrayDeque<>();
+
+        private PnLastEvaluatedKey nextPageKey;
+        private int dynamoDbPageSize;
+        private boolean exhausted;
+        private Future<PageSearchTrunk<NotificationMetadataEntity>> pendingPage;
+
+        private NotificationMetadataEntity lastMerged;
+        private PnLastEvaluatedKey position;
+
+        private int queryCount;
+        private int rowsRead;
+
+        PartitionStream(String partition, PnLastEvaluatedKey startKey, Integer requiredSize, int dynamoDbPageSize) {
+            this.partition = partition;
+            this.nextPageKey = startKey;
+            this.position = startKey;
+            this.requiredSize = requiredSize;
+            this.dynamoDbPageSize = dynamoDbPageSize;
+        }
+
+        void requestNextPage() {
+            if (exhausted || pendingPage != null)
+                return;
 
-        // leggo TUTTE le righe di PF ( nella partizione 0 PF )
-        logItemCountPF += readDataFromPartition( 0, indexNameAndPartitions.getPartitions().get( 0 ), dataReadPF, lastEvaluatedKeyPF, null, dynamoDbPageSize );
-        // leggo TUTTE le righe di PG ( nella partizione 1 PG )
-        logItemCountPG += readDataFromPartition( 0, indexNameAndPartitions.getPartitions().get( 1 ), dataReadPG, lastEvaluatedKeyPG, null, dynamoDbPageSize );
+            PnLastEvaluatedKey pageKey = nextPageKey;
+            int pageSize = dynamoDbPageSize;
+            log.trace("request page partition={} dynamoDbPageSize={}", partition, pageSize);
+            // query asincrona: mentre si attende la risposta il merge può proseguire sull'altra partizione
+            pendingPage = notificationDao.searchForOneMonthAsync(
+                    inputSearchNotificationDto,
+                    indexNameAndPartitions.getIndexName().getValue(),
+                    partition,
+                    pageSize,
+                    pageKey );
+        }
 
-        List<NotificationMetadataEntity> dataRead = Stream.concat(dataReadPF.stream(), dataReadPG.stream()).toList();
+        NotificationMetadataEntity peek() {
+            while (buffer.isEmpty() && !exhausted) {
+                requestNextPage();
+                PageSearchTrunk<NotificationMetadataEntity> page = waitFuture( pendingPage );
+                pendingPage = null;
+                consumePage( page );
+            }
+            return buffer.peekFirst();
+        }
 
+        NotificationMetadataEntity poll() {
+            return buffer.pollFirst();
+        }
 
-        // faccio il merge in modo che dal punto di vista temporale siano ordinate
-        // ritornando solo quelle con data più recente rispetto all'eventuale paginazione richiesta
-        List<NotificationMetadataEntity> sortedNotificationMetadataEntities = dataRead.stream().sorted(
-                Comparator.comparing( NotificationMetadataEntity::getSentAt ).reversed()
-                )
-                .filter(notif -> lastEvalutatedSentAt == null || notif.getSentAt().isBefore(lastEvalutatedSentAt))
-                .limit(requiredSize)
-                .toList();
+        private void consumePage(PageSearchTrunk<NotificationMetadataEntity> page) {
+            queryCount++;
+            recordPage( dynamoDbPageSize, page );
+            int pageRows = CollectionUtils.isEmpty( page.getResults() ) ? 0 : page.getResults().size();
+            rowsRead += pageRows;
+            if (pageRows > 0)
+                buffer.addAll( page.getResults() );
 
-        log.info("search request completed, totalDbQueryCount={} totalDbQueryCountPF={} totalDbQueryCountPG={} totalRowRead={} totalRowReadPF={} totalRowReadPG={} filteredRows={}",
-                logItemCountPF + logItemCountPG, logItemCountPF, logItemCountPG, dataRead.size(), dataReadPF.size(), dataReadPG.size(), sortedNotificationMetadataEntities.size());
-        return sortedNotificationMetadataEntities;
+            if (CollectionUtils.isEmpty( page.getLastEvaluatedKey() )) {
+                log.trace("no more data to read for partition={} queryCount={}", partition, queryCount);
+                exhausted = true;
+            }
+            else {
+                nextPageKey = new PnLastEvaluatedKey();
+                nextPageKey.setExternalLastEvaluatedKey( partition );
+                nextPageKey.setInternalLastEvaluatedKey( page.getLastEvaluatedKey() );
+                dynamoDbPageSize = nextDynamoDbPageSize( dynamoDbPageSize, pageRows, requiredSize );
+            }
+        }
 
+        void setLastMerged(NotificationMetadataEntity row) {
+            this.lastMerged = row;
+            this.position = null;
+        }
+
+        PnLastEvaluatedKey getPosition() {
+            if (position == null && lastMerged != null)
+                position = NotificationSearchMultiPageByPFAndPGOnly.super.getPnLastEvaluatedKey( lastMerged );
+            if (position == null) {
+                // nessuna riga restituita: la posizione indica la lettura dall'inizio, distinguendo il cursore da quelli con una sola partizione
+                position = new PnLastEvaluatedKey();
+                position.setExternalLastEvaluatedKey( partition );
+                position.setInternalLastEvaluatedKey( Map.of() );
+            }
+            return position;
+        }
+
+        void cancel() {
+            if (pendingPage != null)
+                pendingPage.cancel( true );
+        }
     }
 }
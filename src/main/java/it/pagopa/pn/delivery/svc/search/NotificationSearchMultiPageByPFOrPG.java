@@ -9,13 +9,13 @@ import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
 import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 @Slf4j
 public class NotificationSearchMultiPageByPFOrPG extends NotificationSearchMultiPage {
 
-
+    private final ExecutorService partitionsExecutor;
 
     public NotificationSearchMultiPageByPFOrPG(NotificationDao notificationDao,
                                                EntityToDtoNotificationMetadataMapper entityToDto,
@@ -23,7 +23,19 @@ public class NotificationSearchMultiPageByPFOrPG extends NotificationSearchMulti
                                                PnLastEvaluatedKey lastEvaluatedKey,
                                                PnDeliveryConfigs cfg, PnDataVaultClientImpl dataVaultClient,
                                                IndexNameAndPartitions indexNameAndPartitions) {
-        super(notificationDao, entityToDto, inputSearchNotificationDto, lastEvaluatedKey, cfg, dataVaultClient, indexNameAndPartitions);
+        this(notificationDao, entityToDto, inputSearchNotificationDto, lastEvaluatedKey, cfg, dataVaultClient, indexNameAndPartitions, null, null);
+    }
+
+    public NotificationSearchMultiPageByPFOrPG(NotificationDao notificationDao,
+                                               EntityToDtoNotificationMetadataMapper entityToDto,
+                                               InputSearchNotificationDto inputSearchNotificationDto,
+                                               PnLastEvaluatedKey lastEvaluatedKey,
+                                               PnDeliveryConfigs cfg, PnDataVaultClientImpl dataVaultClient,
+                                               IndexNameAndPartitions indexNameAndPartitions,
+                                               ExecutorService partitionsExecutor,
+                                               DynamoDbPageSizeStrategy pageSizeStrategy) {
+        super(notificationDao, entityToDto, inputSearchNotificationDto, lastEvaluatedKey, cfg, dataVaultClient, indexNameAndPartitions, pageSizeStrategy);
+        this.partitionsExecutor = partitionsExecutor;
     }
 
 
@@ -32,11 +44,6 @@ public class NotificationSearchMultiPageByPFOrPG extends NotificationSearchMulti
 
         log.info( "notification paged search by PF or PG indexName={}", indexNameAndPartitions.getIndexName() );
 
-        int logItemCount = 0;
-
-        // mappa contenente le notifiche grezze, già filtrate per distinct, in modo che la size di questa mappa è congruente con il totale di elementi desiderati
-        // la mappa viene popolata man mano che vengono eseguite le query verso dynamo
-        List<NotificationMetadataEntity> dataRead = new ArrayList<>();
         int startIndex = 0;
         PnLastEvaluatedKey startEvaluatedKey = null;
         if (lastEvaluatedKey != null)
@@ -46,28 +53,29 @@ public class NotificationSearchMultiPageByPFOrPG extends NotificationSearchMulti
             log.debug("lastEvaluatedKey is not null, starting search from index={}", startIndex);
         }
 
+        int fanOut = getPartitionsFanOut();
+        PartitionPagePipeline<NotificationMetadataEntity> pipeline = new PartitionPagePipeline<>(
+                (partition, pageSize, pageKey) -> notificationDao.searchForOneMonthAsync(
+                        inputSearchNotificationDto,
+                        indexNameAndPartitions.getIndexName().getValue(),
+                        partition,
+                        pageSize,
+                        pageKey),
+                this::recordPage,
+                partitionsExecutor);
 
-        // ciclo per ogni partizione, eventualmente scartando quelle non interessate in base alla lastEvaluatedKey
-        for (int pIdx = startIndex;pIdx< indexNameAndPartitions.getPartitions().size();pIdx++ ) {
-
-            String currentpartition = indexNameAndPartitions.getPartitions().get( pIdx );
-
-            // legge tutti i dati dalla partizione
-            logItemCount += readDataFromPartition(0, currentpartition, dataRead, startEvaluatedKey, requiredSize,  dynamoDbPageSize);
+        // le partizioni vengono lette in parallelo, ma il thread della richiesta resta bloccato fino al risultato complessivo
+        PartitionPagePipeline.Result<NotificationMetadataEntity> result = waitFuture( pipeline.readPartitions(
+                indexNameAndPartitions.getPartitions(), startIndex, startEvaluatedKey, requiredSize, dynamoDbPageSize, fanOut ) );
 
-            // l'eventuale partizione iniziale ha senso SOLO per la prima partizione
-            startEvaluatedKey = null;
+        log.info("search request completed, totalDbQueryCount={} totalRowRead={} fanOut={}", result.queryCount(), result.rows().size(), fanOut);
 
-            // se i dati letti sono più di quelli richiesti, posso concludere qui la ricerca
-            if (dataRead.size() >= requiredSize)
-            {
-                log.debug("reached required size, ending search");
-                break;
-            }
-        }
-
-        log.info("search request completed, totalDbQueryCount={} totalRowRead={}", logItemCount, dataRead.size());
+        return result.rows();
+    }
 
-        return dataRead;
+    private int getPartitionsFanOut() {
+        if (cfg.getSearchPartitionsFanOut() == null || cfg.getSearchPartitionsFanOut() < 1)
+            return 1;
+        return cfg.getSearchPartitionsFanOut();
     }
 }
@@ -0,0 +1,137 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatus;
+import it.pagopa.pn.delivery.middleware.NotificationDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.EntityToDtoNotificationMetadataMapper;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
+import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
+import it.pagopa.pn.delivery.svc.NotificationSubjectIndexService;
+import it.pagopa.pn.delivery.svc.NotificationSubjectIndexService.Candidate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Ricerca per oggetto: le righe candidate di ogni partizione mensile vengono individuate con l'indice per oggetto,
+ * lette con una BatchGetItem e filtrate in memoria con l'espressione regolare e con gli altri filtri della ricerca.
+ * L'ordinamento e il cursore sono gli stessi della ricerca per mittente o destinatario: l'ultima riga restituita
+ * è anche la posizione da cui riprende l'intersezione delle occorrenze nella pagina successiva.
+ */
+@Slf4j
+public class NotificationSearchMultiPageBySubject extends NotificationSearchMultiPage {
+
+    private static final int METADATA_BATCH_SIZE = 100;
+
+    private final NotificationSubjectIndexService subjectIndexService;
+    private final Pattern subjectPattern;
+    private final List<String> terms;
+
+    public NotificationSearchMultiPageBySubject(NotificationDao notificationDao,
+                                                EntityToDtoNotificationMetadataMapper entityToDto,
+                                                InputSearchNotificationDto inputSearchNotificationDto,
+                                                PnLastEvaluatedKey lastEvaluatedKey,
+                                                PnDeliveryConfigs cfg, PnDataVaultClientImpl dataVaultClient,
+                                                IndexNameAndPartitions indexNameAndPartitions,
+                                                NotificationSubjectIndexService subjectIndexService) {
+        super(notificationDao, entityToDto, inputSearchNotificationDto, lastEvaluatedKey, cfg, dataVaultClient, indexNameAndPartitions);
+        this.subjectIndexService = subjectIndexService;
+        this.subjectPattern = subjectIndexService.subjectPattern(inputSearchNotificationDto.getSubjectRegExp());
+        this.terms = SubjectTerms.queryTerms(inputSearchNotificationDto.getSubjectRegExp());
+    }
+
+    @Override
+    List<NotificationMetadataEntity> getDataRead(int requiredSize, int dynamoDbPageSize) {
+
+        log.info( "notification paged search by subject indexName={} terms={}", indexNameAndPartitions.getIndexName(), terms );
+
+        List<String> partitions = indexNameAndPartitions.getPartitions();
+        int startIndex = 0;
+        Candidate startCandidate = null;
+        if (lastEvaluatedKey != null && partitions.contains(lastEvaluatedKey.getExternalLastEvaluatedKey())) {
+            startIndex = partitions.indexOf(lastEvaluatedKey.getExternalLastEvaluatedKey());
+            startCandidate = lastEvaluatedCandidate(lastEvaluatedKey);
+            log.debug("lastEvaluatedKey is not null, starting search from index={}", startIndex);
+        }
+
+        List<NotificationMetadataEntity> dataRead = new ArrayList<>();
+        int candidatesRead = 0;
+        for (int i = startIndex; i < partitions.size() && dataRead.size() < requiredSize; i++) {
+            // nella partizione del cursore l'intersezione riprende dopo l'ultima riga restituita
+            NotificationSubjectIndexService.CandidateReader reader = subjectIndexService.candidates(indexNameAndPartitions.getIndexName(),
+                    partitions.get(i), terms, inputSearchNotificationDto.getStartDate(), inputSearchNotificationDto.getEndDate(),
+                    i == startIndex ? startCandidate : null, dynamoDbPageSize);
+
+            List<Candidate> candidates = reader.next(Math.min(requiredSize, METADATA_BATCH_SIZE));
+            while (!candidates.isEmpty()) {
+                candidatesRead += candidates.size();
+                subjectIndexService.readMetadata(candidates).stream()
+                        .filter(this::matches)
+                        .forEach(dataRead::add);
+                candidates = dataRead.size() < requiredSize
+                        ? reader.next(Math.min(requiredSize - dataRead.size(), METADATA_BATCH_SIZE))
+                        : List.of();
+            }
+        }
+
+        log.info("search by subject completed, candidatesRead={} totalRowRead={}", candidatesRead, dataRead.size());
+        return dataRead;
+    }
+
+    private static Candidate lastEvaluatedCandidate(PnLastEvaluatedKey lastEvaluatedKey) {
+        Map<String, AttributeValue> internalKey = lastEvaluatedKey.getInternalLastEvaluatedKey();
+        if (CollectionUtils.isEmpty(internalKey)
+                || !internalKey.containsKey(NotificationMetadataEntity.FIELD_SENT_AT)
+                || !internalKey.containsKey(NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID))
+            return null;
+        return new Candidate(internalKey.get(NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID).s(),
+                Instant.parse(internalKey.get(NotificationMetadataEntity.FIELD_SENT_AT).s()));
+    }
+
+    private boolean matches(NotificationMetadataEntity entity) {
+        Instant sentAt = entity.getSentAt();
+        if (sentAt.isBefore(inputSearchNotificationDto.getStartDate()) || sentAt.isAfter(inputSearchNotificationDto.getEndDate()))
+            return false;
+
+        List<NotificationStatus> statuses = inputSearchNotificationDto.getStatuses();
+        if (!CollectionUtils.isEmpty(statuses) && !statuses.contains(NotificationStatus.fromValue(entity.getNotificationStatus())))
+            return false;
+
+        // anche le notifiche senza gruppo sono visibili a chi filtra per gruppi
+        List<String> groups = inputSearchNotificationDto.getGroups();
+        if (!CollectionUtils.isEmpty(groups) && StringUtils.hasText(entity.getNotificationGroup()) && !groups.contains(entity.getNotificationGroup()))
+            return false;
+
+        if (inputSearchNotificationDto.isBySender()) {
+            if (!matchesRecipientFilter(entity))
+                return false;
+        } else {
+            if (StringUtils.hasText(inputSearchNotificationDto.getFilterId()) && !inputSearchNotificationDto.getFilterId().equals(entity.getSenderId()))
+                return false;
+            List<String> mandateAllowedPaIds = inputSearchNotificationDto.getMandateAllowedPaIds();
+            if (!CollectionUtils.isEmpty(mandateAllowedPaIds) && !mandateAllowedPaIds.contains(entity.getSenderId()))
+                return false;
+        }
+
+        String subject = entity.getTableRow() == null ? null : entity.getTableRow().get("subject");
+        return subject != null && subjectPattern.matcher(subject).matches();
+    }
+
+    private boolean matchesRecipientFilter(NotificationMetadataEntity entity) {
+        String opaqueFilterIdPF = inputSearchNotificationDto.getOpaqueFilterIdPF();
+        String opaqueFilterIdPG = inputSearchNotificationDto.getOpaqueFilterIdPG();
+        if (StringUtils.hasText(opaqueFilterIdPF) || StringUtils.hasText(opaqueFilterIdPG))
+            return entity.getRecipientId() != null
+                    && (entity.getRecipientId().equals(opaqueFilterIdPF) || entity.getRecipientId().equals(opaqueFilterIdPG));
+        // senza destinatario una sola riga per notifica multidestinatario
+        return entity.isRecipientOne();
+    }
+}
@@ -0,0 +1,248 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.NotificationHistoryResponse;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatus;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatusHistoryElement;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.TimelineElement;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Cache per IUN della timeline e dello storico degli stati letti da delivery-push, già convertiti nel modello esposto.
+ * <p>
+ * Un elemento è fresco fino a refreshAfter e viene restituito senza chiamare delivery-push; da lì fino a ttl
+ * la timeline viene riletta e confrontata con la versione in cache. delivery-push non permette di leggere solo
+ * gli elementi successivi all'ultimo noto, quindi la risposta è sempre completa: se la versione non è cambiata
+ * viene restituita la timeline in cache, altrimenti vengono convertiti solo gli elementi con un elementId non
+ * ancora noto, perché gli elementi di timeline non cambiano dopo l'inserimento.
+ * Gli aggiornamenti di stato rendono non fresco l'elemento dello IUN, mantenendo gli elementi già convertiti.
+ * Le timeline restituite sono condivise tra le letture e non devono essere modificate.
+ */
+@Slf4j
+@Component
+public class NotificationTimelineCache {
+
+    static final String METRIC_LOOKUPS = "pn.delivery.timeline.cache";
+    static final String METRIC_ELEMENTS = "pn.delivery.timeline.cache.elements";
+    private static final String TAG_RESULT = "result";
+    private static final int DEFAULT_MAX_ENTRIES = 5000;
+
+    /**
+     * Timeline di una notifica
+     * @param elements elementi di timeline ordinati per timestamp
+     * @param statusHistory storico degli stati
+     * @param status stato corrente della notifica
+     * @param version impronta di elementId e timestamp degli elementi e dello storico degli stati
+     */
+    public record Timeline(List<TimelineElement> elements,
+                           List<NotificationStatusHistoryElement> statusHistory,
+                           NotificationStatus status,
+                           String version) {}
+
+    private record Entry(Timeline timeline, long refreshAt, long expiresAt) {}
+
+    private final TimelineElementMapper timelineElementMapper;
+    private final long refreshAfterMillis;
+    private final long ttlMillis;
+    private final Clock clock;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Entry> entries;
+    private long invalidations;
+
+    public NotificationTimelineCache(TimelineElementMapper timelineElementMapper, PnDeliveryConfigs cfg, Clock clock, MeterRegistry meterRegistry) {
+        this.timelineElementMapper = timelineElementMapper;
+        this.ttlMillis = millis( cfg.getTimelineCacheTtl() );
+        this.refreshAfterMillis = Math.min( millis( cfg.getTimelineCacheRefreshAfter() ), ttlMillis );
+        this.clock = clock;
+        this.meterRegistry = meterRegistry;
+        int maxEntries = cfg.getTimelineCacheMaxEntries() != null && cfg.getTimelineCacheMaxEntries() > 0
+                ? cfg.getTimelineCacheMaxEntries() : DEFAULT_MAX_ENTRIES;
+        this.entries = new LinkedHashMap<>( 16, 0.75f, true ) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        log.info( "timeline cache enabled={} refreshAfter={} ttl={} maxEntries={}", isEnabled(),
+                cfg.getTimelineCacheRefreshAfter(), cfg.getTimelineCacheTtl(), maxEntries );
+    }
+
+    private static long millis(Duration duration) {
+        return duration != null && !duration.isNegative() ? duration.toMillis() : 0;
+    }
+
+    boolean isEnabled() {
+        return ttlMillis > 0;
+    }
+
+    /**
+     * Restituisce la timeline di una notifica, rileggendola da delivery-push se non fresca
+     * @param iun IUN della notifica
+     * @param loader lettura di timeline e storico degli stati da delivery-push
+     * @return timeline, da non modificare
+     */
+    public Timeline get(String iun, Supplier<NotificationHistoryResponse> loader) {
+        if ( !isEnabled() )
+            return convert( loader.get(), null );
+
+        Entry entry = lookup( iun );
+        if ( entry != null && clock.millis() < entry.refreshAt() ) {
+            count( "hit" );
+            return entry.timeline();
+        }
+
+        long invalidationsBeforeLoad = invalidations();
+        NotificationHistoryResponse response = loader.get();
+        Timeline timeline;
+        if ( entry == null ) {
+            count( "miss" );
+            timeline = convert( response, null );
+        } else {
+            timeline = convert( response, entry.timeline() );
+            count( timeline == entry.timeline() ? "unchanged" : "delta" );
+        }
+        store( iun, timeline, invalidationsBeforeLoad );
+        return timeline;
+    }
+
+    /**
+     * Rende non fresca la timeline di una notifica: la prossima lettura chiamerà delivery-push
+     */
+    public synchronized void invalidate(String iun) {
+        invalidations++;
+        Entry entry = entries.get( iun );
+        if ( entry != null )
+            entries.put( iun, new Entry( entry.timeline(), 0, entry.expiresAt() ) );
+        log.debug( "timeline cache invalidated iun={}", iun );
+    }
+
+    /**
+     * @return timeline in cache, anche non fresca; null se non presente o scaduta
+     */
+    private synchronized Entry lookup(String iun) {
+        Entry entry = entries.get( iun );
+        if ( entry != null && entry.expiresAt() <= clock.millis() ) {
+            entries.remove( iun );
+            return null;
+        }
+        return entry;
+    }
+
+    private synchronized long invalidations() {
+        return invalidations;
+    }
+
+    /**
+     * Conserva la timeline letta; se un aggiornamento di stato è arrivato durante la lettura la timeline viene
+     * conservata non fresca, per riusarne gli elementi alla lettura successiva
+     */
+    private synchronized void store(String iun, Timeline timeline, long invalidationsBeforeLoad) {
+        long now = clock.millis();
+        long refreshAt = invalidations == invalidationsBeforeLoad ? now + refreshAfterMillis : 0;
+        entries.put( iun, new Entry( timeline, refreshAt, now + ttlMillis ) );
+    }
+
+    /**
+     * Converte la risposta di delivery-push riusando gli elementi di timeline già convertiti con lo stesso elementId
+     * @param response risposta di delivery-push
+     * @param cached timeline in cache, null se non presente
+     * @return la timeline in cache se la versione non è cambiata, altrimenti una nuova timeline
+     */
+    private Timeline convert(NotificationHistoryResponse response, Timeline cached) {
+        List<it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.TimelineElement> sorted = sortedTimeline( response );
+        String version = version( response, sorted );
+        if ( cached != null && cached.version().equals( version ) )
+            return cached;
+
+        Map<String, TimelineElement> knownById = new HashMap<>();
+        if ( cached != null ) {
+            for ( TimelineElement element : cached.elements() ) {
+                if ( element.getElementId() != null )
+                    knownById.put( element.getElementId(), element );
+            }
+        }
+
+        List<TimelineElement> elements = new ArrayList<>( sorted.size() );
+        int reused = 0;
+        for ( it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.TimelineElement source : sorted ) {
+            TimelineElement element = source.getElementId() != null ? knownById.get( source.getElementId() ) : null;
+            if ( element != null ) {
+                reused++;
+            } else {
+                element = timelineElementMapper.toTimelineElement( source );
+            }
+            elements.add( element );
+        }
+        countElements( "reused", reused );
+        countElements( "mapped", sorted.size() - reused );
+
+        List<NotificationStatusHistoryElement> statusHistory = response.getNotificationStatusHistory().stream()
+                .map( timelineElementMapper::toStatusHistoryElement )
+                .toList();
+
+        return new Timeline(
+                Collections.unmodifiableList( elements ),
+                statusHistory,
+                NotificationStatus.fromValue( response.getNotificationStatus().getValue() ),
+                version
+        );
+    }
+
+    private static List<it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.TimelineElement> sortedTimeline(NotificationHistoryResponse response) {
+        return response.getTimeline()
+                .stream()
+                .sorted( Comparator.comparing( it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.TimelineElement::getTimestamp ) )
+                .toList();
+    }
+
+    /**
+     * Impronta della risposta di delivery-push: stato corrente, elementId e timestamp degli elementi di timeline,
+     * stati dello storico con data di inizio ed elementi collegati
+     */
+    private static String version(NotificationHistoryResponse response,
+                                  List<it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.TimelineElement> sorted) {
+        StringBuilder builder = new StringBuilder()
+                .append( response.getNotificationStatus() != null ? response.getNotificationStatus().getValue() : null );
+        for ( var element : sorted ) {
+            builder.append( '|' ).append( element.getElementId() ).append( '@' ).append( element.getTimestamp() );
+        }
+        for ( var status : response.getNotificationStatusHistory() ) {
+            builder.append( '#' ).append( status.getStatus() != null ? status.getStatus().getValue() : null )
+                    .append( '@' ).append( status.getActiveFrom() )
+                    .append( status.getRelatedTimelineElements() );
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance( "SHA-256" ).digest( builder.toString().getBytes( StandardCharsets.UTF_8 ) );
+            return HexFormat.of().formatHex( digest, 0, 16 );
+        } catch (NoSuchAlgorithmException exc) {
+            throw new IllegalStateException( exc );
+        }
+    }
+
+    private void count(String result) {
+        Counter.builder( METRIC_LOOKUPS )
+                .tag( TAG_RESULT, result )
+                .register( meterRegistry )
+                .increment();
+    }
+
+    private void countElements(String result, int amount) {
+        if ( amount > 0 ) {
+            Counter.builder( METRIC_ELEMENTS )
+                    .tag( TAG_RESULT, result )
+                    .register( meterRegistry )
+                    .increment( amount );
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationPaymentInfo;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationRecipient;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatusHistoryElement;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.TimelineElement;
+import it.pagopa.pn.delivery.models.InternalNotification;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Validatore forte (ETag) del dettaglio di una notifica.
+ * <p>
+ * Il dettaglio cambia solo per i nuovi elementi di timeline, per gli stati e per la disponibilità dei documenti e
+ * dei codici avviso, che dipendono dalla data di perfezionamento. La versione è calcolata solo da questi dati e
+ * dagli id opachi dei destinatari, senza denominazioni e indirizzi: può essere calcolata sia sul dettaglio completo
+ * sia sulla sola entità con la timeline, senza leggere il data vault. Le etichette dei gruppi non sono considerate.
+ */
+final class NotificationVersion {
+
+    private NotificationVersion() {}
+
+    /**
+     * @param notification notifica completata con timeline e disponibilità dei documenti, filtrata per chi la legge
+     * @param view vista della notifica (mittente o indice del destinatario), perché il contenuto cambia con la vista
+     * @return ETag tra virgolette
+     */
+    static String of(InternalNotification notification, String view) {
+        StringBuilder builder = new StringBuilder()
+                .append( notification.getIun() )
+                .append( '|' ).append( view )
+                .append( '|' ).append( notification.getNotificationStatus() )
+                .append( '|' ).append( notification.getDocumentsAvailable() );
+        for ( TimelineElement element : nonNull( notification.getTimeline() ) ) {
+            builder.append( '|' ).append( element.getElementId() ).append( '@' ).append( element.getTimestamp() );
+        }
+        for ( NotificationStatusHistoryElement status : nonNull( notification.getNotificationStatusHistory() ) ) {
+            builder.append( '#' ).append( status.getStatus() ).append( '@' ).append( status.getActiveFrom() );
+        }
+        for ( NotificationRecipient recipient : nonNull( notification.getRecipients() ) ) {
+            builder.append( '$' ).append( recipient.getInternalId() );
+            NotificationPaymentInfo payment = recipient.getPayment();
+            if ( payment != null ) {
+                builder.append( ':' ).append( payment.getNoticeCode() )
+                        .append( ':' ).append( payment.getNoticeCodeAlternative() )
+                        .append( ':' ).append( payment.getPagoPaForm() != null );
+            }
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance( "SHA-256" ).digest( builder.toString().getBytes( StandardCharsets.UTF_8 ) );
+            return '"' + HexFormat.of().formatHex( digest, 0, 16 ) + '"';
+        } catch (NoSuchAlgorithmException exc) {
+            throw new IllegalStateException( exc );
+        }
+    }
+
+    /**
+     * Confronto dell'header If-None-Match con la versione corrente; per If-None-Match il confronto è debole,
+     * quindi il prefisso W/ viene ignorato
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if ( !StringUtils.hasText( ifNoneMatch ) )
+            return false;
+        for ( String candidate : ifNoneMatch.split( "," ) ) {
+            String tag = candidate.trim();
+            if ( tag.equals( "*" ) )
+                return true;
+            if ( tag.startsWith( "W/" ) )
+                tag = tag.substring( 2 );
+            if ( tag.equals( etag ) )
+                return true;
+        }
+        return false;
+    }
+
+    private static <T> List<T> nonNull(List<T> values) {
+        return values != null ? values : List.of();
+    }
+}
@@ -0,0 +1,296 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import it.pagopa.pn.delivery.models.PageSearchTrunk;
+import it.pagopa.pn.delivery.utils.MdcUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.util.CollectionUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Lettura in parallelo delle partizioni mensili di una ricerca.
+ * <p>
+ * Ogni partizione viene letta a pagine con un ciclo iterativo: la pagina successiva viene richiesta solo dopo
+ * aver elaborato la precedente, quindi per ogni partizione c'è al più una query in volo. Quando una query non è
+ * ancora completata il ciclo registra la propria continuazione e restituisce il thread, così nessun thread resta
+ * in attesa della risposta di dynamo; le risposte già disponibili vengono elaborate nello stesso ciclo, senza ricorsione.
+ * <p>
+ * Vengono lette in contemporanea al più fanOut partizioni consecutive e i risultati vengono accodati nell'ordine
+ * delle partizioni, così l'ordinamento per sentAt decrescente è lo stesso della lettura sequenziale.
+ * Ogni partizione legge solo le righe che possono ancora servire (requiredSize meno le righe già accodate quando
+ * la lettura parte); appena le righe accodate raggiungono requiredSize le letture in volo si fermano.
+ * <p>
+ * I controller sono sincroni: il thread della richiesta resta in attesa del risultato complessivo per tutta la
+ * durata della lettura, quindi il beneficio è il parallelismo tra le partizioni e non il rilascio del chiamante.
+ */
+@Slf4j
+class PartitionPagePipeline<T> {
+
+    /**
+     * Query di una pagina di una partizione
+     */
+    @FunctionalInterface
+    interface PageQuery<T> {
+        CompletableFuture<PageSearchTrunk<T>> query(String partition, int dynamoDbPageSize, PnLastEvaluatedKey lastEvaluatedKey);
+    }
+
+    /**
+     * Notifica della lettura di una pagina, usata per alimentare la strategia di dimensionamento delle pagine
+     */
+    @FunctionalInterface
+    interface PageListener<T> {
+        void onPage(int dynamoDbPageSize, PageSearchTrunk<T> page);
+    }
+
+    /**
+     * Risultato della lettura
+     * @param rows righe lette, nell'ordine delle partizioni
+     * @param queryCount numero di query eseguite sulle partizioni accodate
+     * @param lastPartition ultima partizione accodata, null se non è stata letta nessuna partizione
+     */
+    record Result<T>(List<T> rows, int queryCount, String lastPartition) {}
+
+    private final PageQuery<T> pageQuery;
+    private final PageListener<T> pageListener;
+    private final Executor continuationExecutor;
+    private final Map<String, String> mdcContext;
+
+    /**
+     * @param pageQuery query di una pagina
+     * @param pageListener notifica delle pagine lette
+     * @param continuationExecutor executor su cui elaborare le risposte arrivate in modo asincrono,
+     *                             null per elaborarle nel thread che completa la query
+     */
+    PartitionPagePipeline(PageQuery<T> pageQuery, PageListener<T> pageListener, Executor continuationExecutor) {
+        this.pageQuery = pageQuery;
+        this.pageListener = pageListener;
+        this.continuationExecutor = continuationExecutor;
+        this.mdcContext = MDC.getCopyOfContextMap();
+    }
+
+    /**
+     * Legge le partizioni a partire da startIndex finché non ha accodato requiredSize righe o le partizioni finiscono
+     * @param partitions partizioni della ricerca, dalla più recente
+     * @param startIndex indice della prima partizione da leggere
+     * @param startKey eventuale chiave da cui riprendere la lettura della prima partizione
+     * @param requiredSize numero di righe richieste
+     * @param dynamoDbPageSize dimensione della prima pagina letta in ogni partizione
+     * @param fanOut numero massimo di partizioni lette in contemporanea
+     * @return future del risultato
+     */
+    CompletableFuture<Result<T>> readPartitions(List<String> partitions, int startIndex, PnLastEvaluatedKey startKey,
+                                                int requiredSize, int dynamoDbPageSize, int fanOut) {
+        Run run = new Run(partitions, startIndex, startKey, requiredSize, dynamoDbPageSize, Math.max(fanOut, 1));
+        run.drain();
+        return run.result;
+    }
+
+    private void continueWhenDone(CompletableFuture<?> future, Runnable continuation) {
+        if (continuationExecutor != null)
+            future.whenCompleteAsync((ignored, exc) -> runWithMdc(continuation), continuationExecutor);
+        else
+            future.whenComplete((ignored, exc) -> runWithMdc(continuation));
+    }
+
+    private void runWithMdc(Runnable task) {
+        MdcUtils.run(mdcContext, task);
+    }
+
+    private CompletableFuture<PageSearchTrunk<T>> query(String partition, int dynamoDbPageSize, PnLastEvaluatedKey lastEvaluatedKey) {
+        try {
+            return pageQuery.query(partition, dynamoDbPageSize, lastEvaluatedKey);
+        } catch (RuntimeException exc) {
+            return CompletableFuture.failedFuture(exc);
+        }
+    }
+
+    private static Throwable unwrap(Throwable exc) {
+        if (exc instanceof CompletionException && exc.getCause() != null)
+            return exc.getCause();
+        return exc;
+    }
+
+    /**
+     * Stato di una singola lettura delle partizioni
+     */
+    private final class Run {
+        private final List<String> partitions;
+        private final int startIndex;
+        private final PnLastEvaluatedKey startKey;
+        private final int requiredSize;
+        private final int dynamoDbPageSize;
+        private final int fanOut;
+
+        private final Deque<PartitionRead> inFlight = new ArrayDeque<>();
+        private final List<T> rows = new ArrayList<>();
+        private final AtomicBoolean stopped = new AtomicBoolean();
+        private final CompletableFuture<Result<T>> result = new CompletableFuture<>();
+
+        private int nextIndex;
+        private int queryCount;
+        private String lastPartition;
+
+        Run(List<String> partitions, int startIndex, PnLastEvaluatedKey startKey, int requiredSize, int dynamoDbPageSize, int fanOut) {
+            this.partitions = partitions;
+            this.startIndex = startIndex;
+            this.startKey = startKey;
+            this.requiredSize = requiredSize;
+            this.dynamoDbPageSize = dynamoDbPageSize;
+            this.fanOut = fanOut;
+            this.nextIndex = startIndex;
+        }
+
+        /**
+         * Avvia le letture delle partizioni e accoda, nell'ordine, quelle concluse.
+         * Si ferma alla prima partizione non ancora conclusa, registrandosi come sua continuazione.
+         */
+        synchronized void drain() {
+            try {
+                while (!result.isDone()) {
+                    while (nextIndex < partitions.size() && inFlight.size() < fanOut) {
+                        PartitionRead read = new PartitionRead(this, partitions.get(nextIndex),
+                                nextIndex == startIndex ? startKey : null, requiredSize - rows.size());
+                        nextIndex++;
+                        inFlight.add(read);
+                        read.readPages();
+                    }
+
+                    PartitionRead head = inFlight.peek();
+                    if (head == null) {
+                        complete();
+                        return;
+                    }
+                    if (!head.done.isDone()) {
+                        continueWhenDone(head.done, this::drain);
+                        return;
+                    }
+
+                    inFlight.poll();
+                    head.done.join();
+                    rows.addAll(head.rows);
+                    queryCount += head.queryCount;
+                    lastPartition = head.partition;
+                    if (rows.size() >= requiredSize) {
+                        log.debug("reached required size, ending search");
+                        complete();
+                    }
+                }
+            } catch (CompletionException | CancellationException exc) {
+                fail(unwrap(exc));
+            } catch (RuntimeException exc) {
+                fail(exc);
+            }
+        }
+
+        private void complete() {
+            stopped.set(true);
+            result.complete(new Result<>(rows, queryCount, lastPartition));
+        }
+
+        private void fail(Throwable exc) {
+            stopped.set(true);
+            result.completeExceptionally(exc);
+        }
+    }
+
+    /**
+     * Lettura a pagine di una partizione
+     */
+    private final class PartitionRead {
+        private final Run run;
+        private final String partition;
+        private final int budget;
+        private final List<T> rows = new ArrayList<>();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private PnLastEvaluatedKey nextKey;
+        private int pageSize;
+        private int queryCount;
+
+        PartitionRead(Run run, String partition, PnLastEvaluatedKey startKey, int budget) {
+            this.run = run;
+            this.partition = partition;
+            this.nextKey = startKey;
+            this.budget = budget;
+            this.pageSize = run.dynamoDbPageSize;
+        }
+
+        /**
+         * Ciclo di lettura delle pagine: le risposte già disponibili vengono elaborate subito,
+         * alla prima risposta ancora in corso il ciclo si sospende e riprende dalla continuazione.
+         */
+        void readPages() {
+            while (!done.isDone()) {
+                if (run.stopped.get()) {
+                    log.trace("partition read stopped partition={} queryCount={}", partition, queryCount);
+                    done.complete(null);
+                    return;
+                }
+
+                log.trace("request page partition={} dynamoDbPageSize={}", partition, pageSize);
+                CompletableFuture<PageSearchTrunk<T>> page = query(partition, pageSize, nextKey);
+                if (!page.isDone()) {
+                    continueWhenDone(page, () -> {
+                        if (consume(page))
+                            readPages();
+                    });
+                    return;
+                }
+                if (!consume(page))
+                    return;
+            }
+        }
+
+        /**
+         * Elabora la risposta di una query
+         * @return true se ci sono altre pagine da leggere
+         */
+        private boolean consume(CompletableFuture<PageSearchTrunk<T>> pageFuture) {
+            try {
+                PageSearchTrunk<T> page = pageFuture.join();
+                queryCount++;
+                pageListener.onPage(pageSize, page);
+
+                int pageRows = CollectionUtils.isEmpty(page.getResults()) ? 0 : page.getResults().size();
+                log.trace("END search for one month partitionValue={} dynamoDbPageSize={} rowsRead={}", partition, pageSize, pageRows);
+                if (pageRows > 0)
+                    rows.addAll(page.getResults());
+
+                if (rows.size() >= budget) {
+                    log.trace("ending partition read, requiredSize reached partition={} queryCount={}", partition, queryCount);
+                    done.complete(null);
+                    return false;
+                }
+                if (CollectionUtils.isEmpty(page.getLastEvaluatedKey())) {
+                    log.trace("no more data to read for partition={} queryCount={} currentReadSize={}", partition, queryCount, rows.size());
+                    done.complete(null);
+                    return false;
+                }
+
+                log.trace("there are more data to read for partition={} queryCount={} currentReadSize={}", partition, queryCount, rows.size());
+                nextKey = new PnLastEvaluatedKey();
+                nextKey.setExternalLastEvaluatedKey(partition);
+                nextKey.setInternalLastEvaluatedKey(page.getLastEvaluatedKey());
+                // mi adatto in base a quanti dati ho letto, se non leggo niente, di fatto raddoppio la size fino al MAX configurato
+                pageSize = NotificationSearchMultiPage.nextDynamoDbPageSize(pageSize, pageRows, run.requiredSize);
+                return true;
+            } catch (CompletionException | CancellationException exc) {
+                done.completeExceptionally(unwrap(exc));
+                return false;
+            } catch (RuntimeException exc) {
+                done.completeExceptionally(exc);
+                return false;
+            }
+        }
+    }
+}
@@ -1,11 +1,11 @@
 package it.pagopa.pn.delivery.svc.search;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import it.pagopa.pn.commons.exceptions.PnInternalException;
-import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
@@ -28,6 +28,9 @@ public class PnLastEvaluatedKey {
     private String externalLastEvaluatedKey;
     @ToString.Include
     private Map<String, AttributeValue> internalLastEvaluatedKey;
+    // posizione raggiunta nell'altra partizione quando due partizioni vengono lette insieme (es. PF e PG)
+    @ToString.Include
+    private PnLastEvaluatedKey otherPartitionLastEvaluatedKey;
 
 
     public String getExternalLastEvaluatedKey() {
@@ -46,21 +49,36 @@ public class PnLastEvaluatedKey {
         this.internalLastEvaluatedKey = internalLastEvaluatedKey;
     }
 
+    public PnLastEvaluatedKey getOtherPartitionLastEvaluatedKey() {
+        return otherPartitionLastEvaluatedKey;
+    }
+
+    public void setOtherPartitionLastEvaluatedKey(PnLastEvaluatedKey otherPartitionLastEvaluatedKey) {
+        this.otherPartitionLastEvaluatedKey = otherPartitionLastEvaluatedKey;
+    }
+
     public static PnLastEvaluatedKey deserializeInternalLastEvaluatedKey( String encodedString ) throws JsonProcessingException {
         String jsonString = new String( Base64Utils.decodeFromUrlSafeString( encodedString ), StandardCharsets.UTF_8 );
         KeyPair keyPair = objectReader.readValue( jsonString );
         PnLastEvaluatedKey pnLastEvaluatedKey = new PnLastEvaluatedKey();
         pnLastEvaluatedKey.setExternalLastEvaluatedKey( keyPair.getEk() );
         pnLastEvaluatedKey.setInternalLastEvaluatedKey( keyPair.ik2dynamo() );
+        if ( keyPair.getOk() != null ) {
+            PnLastEvaluatedKey otherPartitionKey = new PnLastEvaluatedKey();
+            otherPartitionKey.setExternalLastEvaluatedKey( keyPair.getOk().getEk() );
+            otherPartitionKey.setInternalLastEvaluatedKey( keyPair.getOk().ik2dynamo() );
+            pnLastEvaluatedKey.setOtherPartitionLastEvaluatedKey( otherPartitionKey );
+        }
         return pnLastEvaluatedKey;
     }
 
     public String serializeInternalLastEvaluatedKey( ) {
-        Map<String,String> internalAttributesValues = new HashMap<>();
-        for (Map.Entry<String,AttributeValue> entry : this.internalLastEvaluatedKey.entrySet()) {
-            internalAttributesValues.put(entry.getKey(), entry.getValue().s());
+        KeyPair toSerialize = new KeyPair( this.externalLastEvaluatedKey, internalKeyToStrings( this.internalLastEvaluatedKey ) );
+        if ( this.otherPartitionLastEvaluatedKey != null ) {
+            // viene serializzato un solo livello di annidamento
+            toSerialize.setOk( new KeyPair( this.otherPartitionLastEvaluatedKey.getExternalLastEvaluatedKey(),
+                    internalKeyToStrings( this.otherPartitionLastEvaluatedKey.getInternalLastEvaluatedKey() ) ) );
         }
-        KeyPair toSerialize = new KeyPair( this.externalLastEvaluatedKey, internalAttributesValues );
         String result;
         try {
             result = objectWriter.writeValueAsString( toSerialize );
@@ -73,12 +91,26 @@ public class PnLastEvaluatedKey {
         return result;
     }
 
+    private static Map<String,String> internalKeyToStrings( Map<String,AttributeValue> internalKey ) {
+        Map<String,String> internalAttributesValues = new HashMap<>();
+        for (Map.Entry<String,AttributeValue> entry : internalKey.entrySet()) {
+            internalAttributesValues.put(entry.getKey(), entry.getValue().s());
+        }
+        return internalAttributesValues;
+    }
+
     @Data
-    @AllArgsConstructor
     @NoArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     public static class KeyPair {
         private String ek;
         private Map<String,String> ik;
+        private KeyPair ok;
+
+        public KeyPair(String ek, Map<String,String> ik) {
+            this.ek = ek;
+            this.ik = ik;
+        }
 
         private Map<String,AttributeValue> ik2dynamo() {
             Map<String,AttributeValue> result = new HashMap<>();
@@ -0,0 +1,466 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import it.pagopa.pn.commons.exceptions.PnInternalException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationDelegationMetadataEntity;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.utils.DataUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import static it.pagopa.pn.delivery.exception.PnDeliveryExceptionCodes.ERROR_CODE_DELIVERY_SEARCH_CURSOR_MAC_KEY_MISSING;
+import static it.pagopa.pn.delivery.exception.PnDeliveryExceptionCodes.ERROR_CODE_DELIVERY_UNSUPPORTED_LAST_EVALUATED_KEY;
+
+/**
+ * Codifica dei cursori di ricerca restituiti al client (nextPagesKey).
+ * <p>
+ * Formato binario versionato, codificato in base64url senza padding:
+ * <pre>
+ *   versione (1 byte) | chiave | altra partizione presente (1 byte) | [chiave altra partizione] | MAC (12 byte)
+ *   chiave = layout (1 byte) | campi del layout
+ * </pre>
+ * Per ogni indice noto il layout fissa i nomi degli attributi, che quindi non vengono scritti; la partizione
+ * mensile viene ricalcolata da sentAt e sentAt viene scritto come epoch. I numeri sono varint, le stringhe
+ * sono precedute dalla lunghezza in varint. Il MAC (HMAC-SHA256 troncato) impedisce di costruire cursori arbitrari.
+ * <p>
+ * La chiave del MAC (pn.delivery.search-cursor-mac-key) è obbligatoria: senza chiave l'applicazione non si avvia.
+ * <p>
+ * I cursori JSON della versione precedente (che iniziano con '{') sono accettati, salvo che
+ * pn.delivery.search-cursor-accept-legacy sia impostata a false, per non interrompere le paginazioni in corso durante
+ * la migrazione. Non essendo firmati vengono validati: una sola chiave annidata, al più 8 attributi e stringhe
+ * di lunghezza limitata, come per il formato binario.
+ */
+@Component
+@Slf4j
+public class PnLastEvaluatedKeyCodec {
+
+    static final byte VERSION_1 = 1;
+    static final int MAC_LENGTH = 12;
+    static final int MAX_TOKEN_LENGTH = 2048;
+
+    private static final byte LEGACY_JSON_FIRST_BYTE = '{';
+    private static final int MAX_STRING_LENGTH = 1024;
+    private static final int MAX_GENERIC_ATTRIBUTES = 8;
+    private static final int MONTH_SUFFIX_LENGTH = 6;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private static final int LAYOUT_GENERIC = 0;
+
+    private static final int FLAG_EK_IS_PARTITION = 1;
+    private static final int FLAG_MONTH_FROM_SENT_AT = 1 << 1;
+    private static final int FLAG_SENT_AT_EPOCH = 1 << 2;
+
+    /**
+     * Attributi della chiave di ogni indice di ricerca: partizione, sentAt e chiave della tabella
+     */
+    private enum Layout {
+        SENDER(1, NotificationMetadataEntity.FIELD_SENDER_ID_CREATION_MONTH, NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID, true),
+        RECEIVER(2, NotificationMetadataEntity.FIELD_RECIPIENT_ID_CREATION_MONTH, NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID, true),
+        SENDER_RECIPIENT(3, NotificationMetadataEntity.FIELD_SENDER_ID_RECIPIENT_ID, NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID, false),
+        DELEGATE(4, NotificationDelegationMetadataEntity.FIELD_DELEGATE_ID_CREATION_MONTH, NotificationDelegationMetadataEntity.FIELD_IUN_RECIPIENT_ID_DELEGATE_ID_GROUP_ID, true),
+        DELEGATE_GROUP(5, NotificationDelegationMetadataEntity.FIELD_DELEGATE_ID_GROUP_ID_CREATION_MONTH, NotificationDelegationMetadataEntity.FIELD_IUN_RECIPIENT_ID_DELEGATE_ID_GROUP_ID, true);
+
+        private final int id;
+        private final String partitionAttribute;
+        private final String tableKeyAttribute;
+        private final boolean monthly;
+
+        Layout(int id, String partitionAttribute, String tableKeyAttribute, boolean monthly) {
+            this.id = id;
+            this.partitionAttribute = partitionAttribute;
+            this.tableKeyAttribute = tableKeyAttribute;
+            this.monthly = monthly;
+        }
+
+        boolean matches(Map<String, AttributeValue> internalKey) {
+            return internalKey.size() == 3
+                    && hasString(internalKey, partitionAttribute)
+                    && hasString(internalKey, NotificationMetadataEntity.FIELD_SENT_AT)
+                    && hasString(internalKey, tableKeyAttribute);
+        }
+
+        static Layout of(Map<String, AttributeValue> internalKey) {
+            for (Layout layout : values()) {
+                if (layout.matches(internalKey))
+                    return layout;
+            }
+            return null;
+        }
+
+        static Layout byId(int id) {
+            for (Layout layout : values()) {
+                if (layout.id == id)
+                    return layout;
+            }
+            return null;
+        }
+
+        private static boolean hasString(Map<String, AttributeValue> internalKey, String attribute) {
+            AttributeValue value = internalKey.get(attribute);
+            return value != null && value.s() != null;
+        }
+    }
+
+    private final boolean acceptLegacy;
+    private final ThreadLocal<Mac> macs;
+
+    public PnLastEvaluatedKeyCodec(PnDeliveryConfigs cfg) {
+        this.acceptLegacy = !Boolean.FALSE.equals(cfg.getSearchCursorAcceptLegacy());
+        String macKey = cfg.getSearchCursorMacKey();
+        if (!StringUtils.hasText(macKey)) {
+            log.error("search cursor MAC key is blank, set pn.delivery.search-cursor-mac-key (PN_DELIVERY_SEARCHCURSORMACKEY)");
+            throw new PnInternalException("pn.delivery.search-cursor-mac-key is blank: the search cursor MAC key must be provisioned (PN_DELIVERY_SEARCHCURSORMACKEY)",
+                    ERROR_CODE_DELIVERY_SEARCH_CURSOR_MAC_KEY_MISSING);
+        }
+        if (acceptLegacy)
+            log.warn("legacy unsigned search cursors are accepted");
+        SecretKeySpec keySpec = new SecretKeySpec(macKey.getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM);
+        this.macs = ThreadLocal.withInitial(() -> newMac(keySpec));
+        // verifica subito che l'algoritmo sia disponibile
+        this.macs.get();
+    }
+
+    private static Mac newMac(SecretKeySpec keySpec) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(keySpec);
+            return mac;
+        } catch (GeneralSecurityException exc) {
+            throw new PnInternalException("Unable to initialize search cursor MAC", ERROR_CODE_DELIVERY_UNSUPPORTED_LAST_EVALUATED_KEY, exc);
+        }
+    }
+
+    /**
+     * Codifica il cursore da restituire al client
+     * @param lastEvaluatedKey cursore
+     * @return cursore codificato
+     */
+    public String encode(PnLastEvaluatedKey lastEvaluatedKey) {
+        Writer writer = new Writer();
+        writer.writeByte(VERSION_1);
+        writeKey(writer, lastEvaluatedKey);
+        PnLastEvaluatedKey other = lastEvaluatedKey.getOtherPartitionLastEvaluatedKey();
+        writer.writeByte(other != null ? 1 : 0);
+        if (other != null)
+            // viene codificato un solo livello di annidamento
+            writeKey(writer, other);
+
+        byte[] payload = writer.toByteArray();
+        byte[] token = Arrays.copyOf(payload, payload.length + MAC_LENGTH);
+        System.arraycopy(mac(payload, payload.length), 0, token, payload.length, MAC_LENGTH);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+    }
+
+    /**
+     * Decodifica il cursore ricevuto dal client, sia nel formato binario sia nel formato JSON precedente
+     * @param token cursore codificato
+     * @return cursore
+     * @throws PnInternalException se il cursore non è valido o non è integro
+     */
+    public PnLastEvaluatedKey decode(String token) {
+        if (token.length() > MAX_TOKEN_LENGTH)
+            throw invalid("search cursor too long length=" + token.length(), null);
+
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException exc) {
+            throw invalid("search cursor is not base64url", exc);
+        }
+
+        if (bytes.length > 0 && bytes[0] == LEGACY_JSON_FIRST_BYTE)
+            return decodeLegacy(token);
+        if (bytes.length == 0 || bytes[0] != VERSION_1)
+            throw invalid("unsupported search cursor version", null);
+        if (bytes.length <= 1 + MAC_LENGTH)
+            throw invalid("search cursor too short", null);
+
+        int payloadLength = bytes.length - MAC_LENGTH;
+        byte[] expectedMac = Arrays.copyOf(mac(bytes, payloadLength), MAC_LENGTH);
+        byte[] actualMac = Arrays.copyOfRange(bytes, payloadLength, bytes.length);
+        if (!MessageDigest.isEqual(expectedMac, actualMac))
+            throw invalid("search cursor integrity check failed", null);
+
+        try {
+            Reader reader = new Reader(bytes, 1, payloadLength);
+            PnLastEvaluatedKey lastEvaluatedKey = readKey(reader);
+            if (reader.readByte() == 1)
+                lastEvaluatedKey.setOtherPartitionLastEvaluatedKey(readKey(reader));
+            if (!reader.isConsumed())
+                throw invalid("unexpected trailing bytes in search cursor", null);
+            return lastEvaluatedKey;
+        } catch (IndexOutOfBoundsException | DateTimeException exc) {
+            throw invalid("malformed search cursor", exc);
+        }
+    }
+
+    private PnLastEvaluatedKey decodeLegacy(String token) {
+        if (!acceptLegacy)
+            throw invalid("legacy search cursor not accepted", null);
+        PnLastEvaluatedKey lastEvaluatedKey;
+        try {
+            lastEvaluatedKey = PnLastEvaluatedKey.deserializeInternalLastEvaluatedKey(token);
+        } catch (JsonProcessingException | RuntimeException exc) {
+            throw invalid("malformed legacy search cursor", exc);
+        }
+        validateLegacyKey(lastEvaluatedKey);
+        PnLastEvaluatedKey other = lastEvaluatedKey.getOtherPartitionLastEvaluatedKey();
+        if (other != null)
+            validateLegacyKey(other);
+        log.debug("legacy search cursor accepted");
+        return lastEvaluatedKey;
+    }
+
+    /**
+     * Il cursore JSON non è firmato: vengono applicati gli stessi limiti del formato binario
+     */
+    private static void validateLegacyKey(PnLastEvaluatedKey key) {
+        Map<String, AttributeValue> internalKey = key.getInternalLastEvaluatedKey();
+        if (internalKey == null || internalKey.isEmpty() || internalKey.size() > MAX_GENERIC_ATTRIBUTES)
+            throw invalid("invalid attributes in legacy search cursor", null);
+        checkLegacyString(key.getExternalLastEvaluatedKey(), false);
+        for (Map.Entry<String, AttributeValue> entry : internalKey.entrySet()) {
+            checkLegacyString(entry.getKey(), true);
+            checkLegacyString(entry.getValue().s(), true);
+        }
+    }
+
+    private static void checkLegacyString(String value, boolean required) {
+        if (value == null ? required : value.length() > MAX_STRING_LENGTH)
+            throw invalid("invalid value in legacy search cursor", null);
+    }
+
+    private static PnInternalException invalid(String message, Exception cause) {
+        log.warn("invalid search cursor: {}", message);
+        return cause != null
+                ? new PnInternalException("Unable to deserialize lastEvaluatedKey: " + message, ERROR_CODE_DELIVERY_UNSUPPORTED_LAST_EVALUATED_KEY, cause)
+                : new PnInternalException("Unable to deserialize lastEvaluatedKey: " + message, ERROR_CODE_DELIVERY_UNSUPPORTED_LAST_EVALUATED_KEY);
+    }
+
+    private byte[] mac(byte[] data, int length) {
+        Mac mac = macs.get();
+        mac.update(data, 0, length);
+        return mac.doFinal();
+    }
+
+    private static void writeKey(Writer writer, PnLastEvaluatedKey key) {
+        Map<String, AttributeValue> internalKey = key.getInternalLastEvaluatedKey() != null ? key.getInternalLastEvaluatedKey() : Map.of();
+        Layout layout = Layout.of(internalKey);
+        if (layout == null) {
+            writeGenericKey(writer, key.getExternalLastEvaluatedKey(), internalKey);
+            return;
+        }
+
+        String partition = internalKey.get(layout.partitionAttribute).s();
+        String sentAt = internalKey.get(NotificationMetadataEntity.FIELD_SENT_AT).s();
+        Instant sentAtInstant = parseInstant(sentAt);
+
+        int flags = 0;
+        if (partition.equals(key.getExternalLastEvaluatedKey()))
+            flags |= FLAG_EK_IS_PARTITION;
+        if (sentAtInstant != null && sentAtInstant.toString().equals(sentAt))
+            flags |= FLAG_SENT_AT_EPOCH;
+        if (layout.monthly && sentAtInstant != null && isMonthDerivable(partition, sentAtInstant))
+            flags |= FLAG_MONTH_FROM_SENT_AT;
+
+        writer.writeByte(layout.id);
+        writer.writeByte(flags);
+        if ((flags & FLAG_EK_IS_PARTITION) == 0)
+            writer.writeString(key.getExternalLastEvaluatedKey());
+        writer.writeString((flags & FLAG_MONTH_FROM_SENT_AT) != 0
+                ? partition.substring(0, partition.length() - MONTH_SUFFIX_LENGTH)
+                : partition);
+        if ((flags & FLAG_SENT_AT_EPOCH) != 0) {
+            writer.writeVarLong(zigZag(sentAtInstant.getEpochSecond()));
+            writer.writeVarLong(sentAtInstant.getNano());
+        }
+        else
+            writer.writeString(sentAt);
+        writer.writeString(internalKey.get(layout.tableKeyAttribute).s());
+    }
+
+    private static void writeGenericKey(Writer writer, String externalKey, Map<String, AttributeValue> internalKey) {
+        writer.writeByte(LAYOUT_GENERIC);
+        writer.writeString(externalKey);
+        writer.writeVarLong(internalKey.size());
+        for (Map.Entry<String, AttributeValue> entry : internalKey.entrySet()) {
+            writer.writeString(entry.getKey());
+            writer.writeString(entry.getValue().s());
+        }
+    }
+
+    private static PnLastEvaluatedKey readKey(Reader reader) {
+        int layoutId = reader.readByte();
+        PnLastEvaluatedKey key = new PnLastEvaluatedKey();
+        Map<String, AttributeValue> internalKey = new HashMap<>();
+
+        if (layoutId == LAYOUT_GENERIC) {
+            key.setExternalLastEvaluatedKey(reader.readString());
+            long attributes = reader.readVarLong();
+            if (attributes > MAX_GENERIC_ATTRIBUTES)
+                throw invalid("too many attributes in search cursor", null);
+            for (int i = 0; i < attributes; i++)
+                internalKey.put(reader.readRequiredString(), stringValue(reader.readString()));
+            key.setInternalLastEvaluatedKey(internalKey);
+            return key;
+        }
+
+        Layout layout = Layout.byId(layoutId);
+        if (layout == null)
+            throw invalid("unknown search cursor layout=" + layoutId, null);
+
+        int flags = reader.readByte();
+        String externalKey = (flags & FLAG_EK_IS_PARTITION) == 0 ? reader.readString() : null;
+        String partition = reader.readRequiredString();
+        String sentAt;
+        if ((flags & FLAG_SENT_AT_EPOCH) != 0) {
+            long epochSecond = unZigZag(reader.readVarLong());
+            long nanos = reader.readVarLong();
+            Instant sentAtInstant = Instant.ofEpochSecond(epochSecond, nanos);
+            sentAt = sentAtInstant.toString();
+            if ((flags & FLAG_MONTH_FROM_SENT_AT) != 0)
+                partition = partition + DataUtils.extractCreationMonth(sentAtInstant);
+        }
+        else {
+            sentAt = reader.readRequiredString();
+            if ((flags & FLAG_MONTH_FROM_SENT_AT) != 0)
+                partition = partition + DataUtils.extractCreationMonth(Instant.parse(sentAt));
+        }
+        String tableKey = reader.readRequiredString();
+
+        key.setExternalLastEvaluatedKey((flags & FLAG_EK_IS_PARTITION) != 0 ? partition : externalKey);
+        internalKey.put(layout.partitionAttribute, stringValue(partition));
+        internalKey.put(NotificationMetadataEntity.FIELD_SENT_AT, stringValue(sentAt));
+        internalKey.put(layout.tableKeyAttribute, stringValue(tableKey));
+        key.setInternalLastEvaluatedKey(internalKey);
+        return key;
+    }
+
+    private static boolean isMonthDerivable(String partition, Instant sentAt) {
+        return partition.length() > MONTH_SUFFIX_LENGTH
+                && partition.endsWith(DataUtils.extractCreationMonth(sentAt));
+    }
+
+    private static Instant parseInstant(String value) {
+        try {
+            return Instant.parse(value);
+        } catch (DateTimeException exc) {
+            return null;
+        }
+    }
+
+    private static AttributeValue stringValue(String value) {
+        return AttributeValue.builder().s(value).build();
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Scrittura di byte, varint e stringhe (lunghezza + 1 in varint, 0 per null, seguita dai byte UTF-8)
+     */
+    private static final class Writer {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream(96);
+
+        void writeByte(int value) {
+            out.write(value);
+        }
+
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length + 1L);
+            out.write(bytes, 0, bytes.length);
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Lettura limitata al payload: ogni lettura oltre il limite solleva IndexOutOfBoundsException
+     */
+    private static final class Reader {
+        private final byte[] data;
+        private final int limit;
+        private int position;
+
+        Reader(byte[] data, int offset, int limit) {
+            this.data = data;
+            this.position = offset;
+            this.limit = limit;
+        }
+
+        int readByte() {
+            if (position >= limit)
+                throw new IndexOutOfBoundsException("end of search cursor");
+            return data[position++] & 0xFF;
+        }
+
+        long readVarLong() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int current = readByte();
+                result |= (long) (current & 0x7F) << shift;
+                if ((current & 0x80) == 0)
+                    return result;
+            }
+            throw invalid("varint too long in search cursor", null);
+        }
+
+        String readString() {
+            long length = readVarLong();
+            if (length == 0)
+                return null;
+            if (length - 1 > MAX_STRING_LENGTH || length - 1 > limit - position)
+                throw new IndexOutOfBoundsException("string too long in search cursor");
+            String value = new String(data, position, (int) (length - 1), StandardCharsets.UTF_8);
+            position += (int) (length - 1);
+            return value;
+        }
+
+        String readRequiredString() {
+            String value = readString();
+            if (value == null)
+                throw invalid("missing value in search cursor", null);
+            return value;
+        }
+
+        boolean isConsumed() {
+            return position == limit;
+        }
+    }
+}
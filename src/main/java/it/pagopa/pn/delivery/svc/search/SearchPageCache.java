@@ -0,0 +1,272 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
+import it.pagopa.pn.delivery.springbootcfg.SearchExecutorConfig;
+import it.pagopa.pn.delivery.utils.MdcUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Cache in memoria delle righe già lette per le pagine successive di una ricerca multi-pagina.
+ * Ogni ricerca legge da dynamo le righe di tutte le pagine di cui restituisce il cursore: invece di scartarle
+ * vengono conservate, per un tempo limitato, sotto la chiave (chiamante, filtro normalizzato, cursore),
+ * così la richiesta della pagina successiva con lo stesso cursore viene servita senza interrogare dynamo.
+ * La prima pagina viene sempre letta da dynamo.
+ * Facoltativamente, dopo ogni ricerca, vengono lette in background le righe che seguono l'ultimo cursore.
+ */
+@Component
+@Slf4j
+public class SearchPageCache {
+
+    static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private static final String METRIC_LOOKUPS = "pn.delivery.search.page-cache";
+    private static final String METRIC_READ_AHEAD = "pn.delivery.search.page-cache.read-ahead";
+    private static final String TAG_RESULT = "result";
+
+    private final long ttlMillis;
+    private final boolean readAheadEnabled;
+    private final Clock clock;
+    private final ExecutorService readAheadExecutor;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Entry> entries;
+    private final Set<String> readAheadInProgress = ConcurrentHashMap.newKeySet();
+
+    public SearchPageCache(PnDeliveryConfigs cfg,
+                           Clock clock,
+                           MeterRegistry meterRegistry,
+                           @Qualifier(SearchExecutorConfig.SEARCH_READ_AHEAD_EXECUTOR_BEAN_NAME) ExecutorService readAheadExecutor) {
+        Duration ttl = cfg.getSearchPageCacheTtl();
+        this.ttlMillis = ttl != null && !ttl.isNegative() ? ttl.toMillis() : 0;
+        this.readAheadEnabled = Boolean.TRUE.equals(cfg.getSearchPageCacheReadAhead());
+        this.clock = clock;
+        this.meterRegistry = meterRegistry;
+        this.readAheadExecutor = readAheadExecutor;
+
+        int maxEntries = cfg.getSearchPageCacheMaxEntries() != null && cfg.getSearchPageCacheMaxEntries() > 0
+                ? cfg.getSearchPageCacheMaxEntries() : DEFAULT_MAX_ENTRIES;
+        this.entries = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        });
+        log.info("search page cache enabled={} ttl={} maxEntries={} readAhead={}", isEnabled(), ttl, maxEntries, readAheadEnabled);
+    }
+
+    public boolean isEnabled() {
+        return ttlMillis > 0;
+    }
+
+    /**
+     * Restituisce l'ambito di cache di una ricerca
+     * @param callerId identità del chiamante (prima di eventuali sostituzioni dovute a deleghe)
+     * @param searchDto filtri di ricerca, già validati e completati
+     * @param reader legge, a partire da un cursore, il numero di righe richiesto; usato per la lettura anticipata
+     * @return ambito di cache, null se la cache è disabilitata
+     */
+    public Scope scope(String callerId, InputSearchNotificationDto searchDto,
+                       BiFunction<PnLastEvaluatedKey, Integer, List<NotificationMetadataEntity>> reader) {
+        if (!isEnabled())
+            return null;
+        return new Scope(callerId + "|" + normalizedFilter(searchDto), reader);
+    }
+
+    static String normalizedFilter(InputSearchNotificationDto searchDto) {
+        return String.join("|",
+                String.valueOf(searchDto.getSenderReceiverId()),
+                String.valueOf(searchDto.isBySender()),
+                String.valueOf(searchDto.getStartDate()),
+                String.valueOf(searchDto.getEndDate()),
+                String.valueOf(searchDto.getMandateId()),
+                sorted(searchDto.getMandateAllowedPaIds()),
+                String.valueOf(searchDto.getFilterId()),
+                String.valueOf(searchDto.getOpaqueFilterIdPF()),
+                String.valueOf(searchDto.getOpaqueFilterIdPG()),
+                sorted(searchDto.getStatuses()),
+                sorted(searchDto.getGroups()),
+                String.valueOf(searchDto.getSubjectRegExp()),
+                String.valueOf(searchDto.getIunMatch()),
+                String.valueOf(searchDto.isReceiverIdIsOpaque()),
+                String.valueOf(searchDto.getSize()),
+                String.valueOf(searchDto.getMaxPageNumber()));
+    }
+
+    private static String sorted(Collection<?> values) {
+        if (values == null)
+            return "null";
+        return values.stream().map(String::valueOf).sorted().collect(Collectors.joining(",", "[", "]"));
+    }
+
+    private void countLookup(String result) {
+        Counter.builder(METRIC_LOOKUPS)
+                .tag(TAG_RESULT, result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private void countReadAhead(String result) {
+        Counter.builder(METRIC_READ_AHEAD)
+                .tag(TAG_RESULT, result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * Righe che seguono un cursore.
+     * @param rows righe successive al cursore, immutabili
+     * @param lastPage true se dopo le righe non ci sono altri risultati
+     * @param expiresAt istante di scadenza, calcolato dalla prima lettura delle righe
+     */
+    record Entry(List<NotificationMetadataEntity> rows, boolean lastPage, long expiresAt) {}
+
+    /**
+     * Righe restituite dalla cache per un cursore
+     * @param rows righe successive al cursore, possono essere più di quelle richieste
+     * @param lastPage true se dopo le righe non ci sono altri risultati
+     * @param expiresAt istante di scadenza delle righe
+     */
+    public record CachedRows(List<NotificationMetadataEntity> rows, boolean lastPage, long expiresAt) {}
+
+    /**
+     * Ambito di cache di una ricerca: chiamante e filtro normalizzato
+     */
+    public final class Scope {
+        private final String scopeKey;
+        private final BiFunction<PnLastEvaluatedKey, Integer, List<NotificationMetadataEntity>> reader;
+
+        private Scope(String scopeKey, BiFunction<PnLastEvaluatedKey, Integer, List<NotificationMetadataEntity>> reader) {
+            this.scopeKey = scopeKey;
+            this.reader = reader;
+        }
+
+        private String key(PnLastEvaluatedKey cursor) {
+            return scopeKey + "|" + cursor.serializeInternalLastEvaluatedKey();
+        }
+
+        /**
+         * Cerca le righe che seguono il cursore
+         * @param cursor cursore della pagina richiesta, null per la prima pagina
+         * @param requiredSize righe necessarie per calcolare la pagina e i cursori successivi
+         * @return righe in cache, null se non presenti, scadute o insufficienti
+         */
+        public CachedRows lookup(PnLastEvaluatedKey cursor, int requiredSize) {
+            if (cursor == null)
+                return null;
+
+            String key = key(cursor);
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                countLookup("miss");
+                return null;
+            }
+            if (entry.expiresAt() <= clock.millis()) {
+                entries.remove(key, entry);
+                countLookup("expired");
+                return null;
+            }
+            if (entry.rows().size() < requiredSize && !entry.lastPage()) {
+                // le righe lette non bastano a calcolare tutti i cursori successivi
+                countLookup("partial");
+                return null;
+            }
+
+            countLookup("hit");
+            log.debug("search page served from cache rows={} lastPage={}", entry.rows().size(), entry.lastPage());
+            return new CachedRows(entry.rows(), entry.lastPage(), entry.expiresAt());
+        }
+
+        /**
+         * Conserva le righe lette per ogni cursore di pagina che ricade al loro interno
+         * @param rows righe lette, nell'ordine della ricerca
+         * @param lastPage true se dopo le righe non ci sono altri risultati
+         * @param pageSize dimensione della pagina
+         * @param keyOf calcola il cursore che segue una riga
+         * @return istante di scadenza delle righe conservate
+         */
+        public long store(List<NotificationMetadataEntity> rows, boolean lastPage, int pageSize,
+                          Function<NotificationMetadataEntity, PnLastEvaluatedKey> keyOf) {
+            long expiresAt = clock.millis() + ttlMillis;
+            store(rows, lastPage, pageSize, keyOf, expiresAt);
+            return expiresAt;
+        }
+
+        private void store(List<NotificationMetadataEntity> rows, boolean lastPage, int pageSize,
+                           Function<NotificationMetadataEntity, PnLastEvaluatedKey> keyOf, long expiresAt) {
+            List<NotificationMetadataEntity> window = List.copyOf(rows);
+            for (int index = pageSize; index < window.size(); index += pageSize) {
+                PnLastEvaluatedKey cursor = keyOf.apply(window.get(index - 1));
+                entries.put(key(cursor), new Entry(window.subList(index, window.size()), lastPage, expiresAt));
+            }
+        }
+
+        /**
+         * Legge in background le righe che seguono l'ultima riga letta e le aggiunge alle righe conservate
+         * per i cursori, così anche le pagine oltre l'ultimo cursore restituito trovano abbastanza righe in cache.
+         * @param rows righe lette, nell'ordine della ricerca
+         * @param expiresAt scadenza delle righe lette
+         * @param pageSize dimensione della pagina
+         * @param requiredSize righe da leggere in anticipo
+         * @param keyOf calcola il cursore che segue una riga
+         */
+        public void readAhead(List<NotificationMetadataEntity> rows, long expiresAt, int pageSize, int requiredSize,
+                              Function<NotificationMetadataEntity, PnLastEvaluatedKey> keyOf) {
+            if (!readAheadEnabled || reader == null || rows.isEmpty())
+                return;
+
+            PnLastEvaluatedKey tailCursor = keyOf.apply(rows.get(rows.size() - 1));
+            String tailKey = key(tailCursor);
+            Entry tail = entries.get(tailKey);
+            if ((tail != null && tail.expiresAt() > clock.millis()) || !readAheadInProgress.add(tailKey))
+                return;
+
+            List<NotificationMetadataEntity> window = List.copyOf(rows);
+            try {
+                submitReadAhead(window, tailCursor, tailKey, expiresAt, pageSize, requiredSize, keyOf);
+            } catch (RejectedExecutionException exc) {
+                readAheadInProgress.remove(tailKey);
+                countReadAhead("rejected");
+                log.debug("search read ahead rejected, executor busy");
+            }
+        }
+
+        private void submitReadAhead(List<NotificationMetadataEntity> window, PnLastEvaluatedKey tailCursor, String tailKey,
+                                     long expiresAt, int pageSize, int requiredSize,
+                                     Function<NotificationMetadataEntity, PnLastEvaluatedKey> keyOf) {
+            MdcUtils.submit(readAheadExecutor, () -> {
+                try {
+                    List<NotificationMetadataEntity> following = reader.apply(tailCursor, requiredSize);
+                    boolean lastPage = following.size() < requiredSize;
+                    List<NotificationMetadataEntity> extended = new ArrayList<>(window.size() + following.size());
+                    extended.addAll(window);
+                    extended.addAll(following);
+                    store(extended, lastPage, pageSize, keyOf, expiresAt);
+                    entries.put(tailKey, new Entry(List.copyOf(following), lastPage, expiresAt));
+                    countReadAhead("completed");
+                    log.debug("search read ahead completed rows={} lastPage={}", following.size(), lastPage);
+                } catch (RuntimeException exc) {
+                    countReadAhead("failed");
+                    log.warn("search read ahead failed", exc);
+                } finally {
+                    readAheadInProgress.remove(tailKey);
+                }
+                return null;
+            });
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Termini dell'indice per oggetto delle notifiche.
+ * <p>
+ * L'oggetto viene normalizzato (minuscolo, senza accenti) e diviso in parole; per ogni parola vengono indicizzate
+ * tutte le sequenze di {@value #TERM_LENGTH} caratteri consecutivi (trigrammi).
+ * Così ogni sequenza letterale di almeno {@value #TERM_LENGTH} caratteri contenuta in una parola è coperta da termini
+ * indicizzati esattamente, e la ricerca di un termine può limitare il range di date sulla chiave di ordinamento.
+ */
+public final class SubjectTerms {
+
+    public static final int TERM_LENGTH = 3;
+    // termini intersecati per ogni ricerca
+    public static final int MAX_QUERY_TERMS = 3;
+
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    // escape seguiti da caratteri alfanumerici che non sono letterali (es. \x41, \p{L}, \1)
+    private static final String ESCAPES_WITH_ARGUMENT = "xucpPNkg0123456789";
+
+    private SubjectTerms() {}
+
+    /**
+     * Termini da indicizzare per un oggetto
+     * @param subject oggetto della notifica
+     * @return termini, senza duplicati
+     */
+    public static Set<String> indexTerms(String subject) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (subject == null)
+            return terms;
+        for (String word : WORD_SEPARATOR.split(normalize(subject))) {
+            for (int i = 0; i + TERM_LENGTH <= word.length(); i++)
+                terms.add(word.substring(i, i + TERM_LENGTH));
+        }
+        return terms;
+    }
+
+    /**
+     * Sequenze letterali che devono comparire in ogni oggetto che soddisfa l'espressione regolare.
+     * Vengono considerate solo le sequenze fuori da gruppi e classi di caratteri; un carattere seguito da un
+     * quantificatore che lo rende opzionale viene escluso. Se l'espressione contiene un'alternativa al primo livello
+     * nessuna sequenza è obbligatoria.
+     * @param regex espressione regolare sull'oggetto
+     * @return sequenze normalizzate di almeno {@value #TERM_LENGTH} caratteri, ordinate dalla più lunga; vuota se non ce ne sono
+     */
+    public static List<String> requiredTerms(String regex) {
+        List<String> runs = new ArrayList<>();
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        boolean inClass = false;
+        boolean inBraces = false;
+        boolean skipAlnum = false;
+
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (inClass) {
+                if (c == '\\')
+                    i++;
+                else if (c == ']')
+                    inClass = false;
+                continue;
+            }
+            if (inBraces) {
+                inBraces = c != '}';
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                if (!skipAlnum && depth == 0)
+                    run.append(c);
+                continue;
+            }
+            skipAlnum = false;
+            switch (c) {
+                case '\\' -> {
+                    closeRun(run, runs);
+                    if (i + 1 < regex.length()) {
+                        i++;
+                        skipAlnum = ESCAPES_WITH_ARGUMENT.indexOf(regex.charAt(i)) >= 0;
+                    }
+                }
+                case '?', '*' -> {
+                    dropLast(run);
+                    closeRun(run, runs);
+                }
+                case '{' -> {
+                    // {0,n} rende opzionale il carattere precedente
+                    dropLast(run);
+                    closeRun(run, runs);
+                    inBraces = true;
+                }
+                case '[' -> {
+                    closeRun(run, runs);
+                    inClass = true;
+                }
+                case '(' -> {
+                    closeRun(run, runs);
+                    depth++;
+                }
+                case ')' -> {
+                    closeRun(run, runs);
+                    depth = Math.max(depth - 1, 0);
+                }
+                case '|' -> {
+                    if (depth == 0)
+                        return List.of();
+                    closeRun(run, runs);
+                }
+                default -> closeRun(run, runs);
+            }
+        }
+        closeRun(run, runs);
+
+        Set<String> terms = new LinkedHashSet<>();
+        for (String literal : runs) {
+            String normalized = normalize(literal);
+            // la normalizzazione non introduce separatori, ma per sicurezza considero ogni parola risultante
+            for (String word : WORD_SEPARATOR.split(normalized)) {
+                if (word.length() >= TERM_LENGTH)
+                    terms.add(word);
+            }
+        }
+        List<String> result = new ArrayList<>(terms);
+        result.sort(Comparator.comparingInt(String::length).reversed());
+        return result;
+    }
+
+    /**
+     * Termini da cercare nell'indice per l'espressione regolare: i trigrammi iniziale, finale e centrale delle sequenze
+     * letterali obbligatorie, dalla più lunga, fino a {@value #MAX_QUERY_TERMS}. Trigrammi che non si sovrappongono
+     * sono i più selettivi nell'intersezione.
+     * @param regex espressione regolare sull'oggetto
+     * @return termini da intersecare; vuota se l'espressione non ha sequenze letterali obbligatorie
+     */
+    public static List<String> queryTerms(String regex) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String literal : requiredTerms(regex)) {
+            int last = literal.length() - TERM_LENGTH;
+            terms.add(literal.substring(0, TERM_LENGTH));
+            terms.add(literal.substring(last));
+            terms.add(literal.substring(last / 2, last / 2 + TERM_LENGTH));
+        }
+        return terms.stream().limit(MAX_QUERY_TERMS).toList();
+    }
+
+    static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    private static void dropLast(StringBuilder run) {
+        if (run.length() > 0)
+            run.setLength(run.length() - 1);
+    }
+
+    private static void closeRun(StringBuilder run, List<String> runs) {
+        if (run.length() > 0) {
+            runs.add(run.toString());
+            run.setLength(0);
+        }
+    }
+}
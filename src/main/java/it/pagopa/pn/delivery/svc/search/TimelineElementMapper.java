@@ -0,0 +1,17 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatusHistoryElement;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.TimelineElement;
+import it.pagopa.pn.delivery.utils.MapStructConfig;
+import org.mapstruct.Mapper;
+
+/**
+ * Conversione di timeline e storico degli stati letti da delivery-push nel modello esposto
+ */
+@Mapper(config = MapStructConfig.class)
+public interface TimelineElementMapper {
+
+    TimelineElement toTimelineElement(it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.TimelineElement source);
+
+    NotificationStatusHistoryElement toStatusHistoryElement(it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.NotificationStatusHistoryElement source);
+}
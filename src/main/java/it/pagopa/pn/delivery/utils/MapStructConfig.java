@@ -0,0 +1,20 @@
+package it.pagopa.pn.delivery.utils;
+
+import org.mapstruct.Builder;
+import org.mapstruct.MapperConfig;
+import org.mapstruct.MappingConstants;
+import org.mapstruct.ReportingPolicy;
+
+/**
+ * Configurazione comune dei mapper generati a compile time.
+ * <p>
+ * Le proprietà di destinazione senza corrispondenza restano nulle, come con {@link ModelMapperConfig} in modalità
+ * STRICT; i builder lombok dei DTO generati non vengono usati perché non ereditano le proprietà delle superclassi.
+ */
+@MapperConfig(
+        componentModel = MappingConstants.ComponentModel.SPRING,
+        unmappedTargetPolicy = ReportingPolicy.IGNORE,
+        builder = @Builder(disableBuilder = true)
+)
+public interface MapStructConfig {
+}
@@ -0,0 +1,85 @@
+package it.pagopa.pn.delivery.utils;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.slf4j.MDC;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Propagazione del contesto MDC (traceId) della richiesta ai thread che eseguono elaborazioni per suo conto
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class MdcUtils {
+
+    /**
+     * Sottometto un task all'executor riportando il contesto MDC del chiamante nel thread che lo esegue.
+     * Se l'executor non è disponibile il task viene eseguito subito nel thread chiamante.
+     * @param executor executor su cui eseguire il task, può essere null
+     * @param task task da eseguire
+     * @return future del risultato
+     */
+    public static <T> Future<T> submit(ExecutorService executor, Callable<T> task) {
+        if (executor == null) {
+            FutureTask<T> inline = new FutureTask<>(task);
+            inline.run();
+            return inline;
+        }
+
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        return executor.submit(() -> call(context, task));
+    }
+
+    /**
+     * Task che viene eseguito con il contesto MDC presente al momento della chiamata
+     * @param task task da eseguire
+     * @return task con il contesto MDC del chiamante
+     */
+    public static Runnable wrap(Runnable task) {
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        return () -> run(context, task);
+    }
+
+    /**
+     * Eseguo il task con il contesto MDC indicato, ripristinando al termine quello del thread
+     * @param context contesto MDC, null per nessun contesto
+     * @param task task da eseguire
+     */
+    public static void run(Map<String, String> context, Runnable task) {
+        Map<String, String> previousContext = MDC.getCopyOfContextMap();
+        setContext(context);
+        try {
+            task.run();
+        } finally {
+            setContext(previousContext);
+        }
+    }
+
+    /**
+     * Eseguo il task con il contesto MDC indicato, ripristinando al termine quello del thread
+     * @param context contesto MDC, null per nessun contesto
+     * @param task task da eseguire
+     * @return risultato del task
+     * @throws Exception eccezione sollevata dal task
+     */
+    public static <T> T call(Map<String, String> context, Callable<T> task) throws Exception {
+        Map<String, String> previousContext = MDC.getCopyOfContextMap();
+        setContext(context);
+        try {
+            return task.call();
+        } finally {
+            setContext(previousContext);
+        }
+    }
+
+    private static void setContext(Map<String, String> context) {
+        if (context == null)
+            MDC.clear();
+        else
+            MDC.setContextMap(context);
+    }
+}
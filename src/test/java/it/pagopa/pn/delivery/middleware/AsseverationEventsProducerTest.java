@@ -1,6 +1,7 @@
 package it.pagopa.pn.delivery.middleware;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import it.pagopa.pn.delivery.PnDeliveryConfigs;
 import it.pagopa.pn.delivery.middleware.asseverationeventsproducer.SqsAsseverationEventsProducer;
 import it.pagopa.pn.delivery.models.AsseverationEvent;
@@ -39,7 +40,7 @@ class AsseverationEventsProducerTest {
                 .build();
 
         Mockito.when( sqsClient.getQueueUrl( Mockito.any( software.amazon.awssdk.services.sqs.model.GetQueueUrlRequest.class ))).thenReturn( response );
-        asseverationEventsProducer = new SqsAsseverationEventsProducer(sqsClient, objectMapper, cfg);
+        asseverationEventsProducer = new SqsAsseverationEventsProducer(sqsClient, objectMapper, cfg, new SimpleMeterRegistry());
     }
 
     @ExtendWith(MockitoExtension.class)
@@ -1,6 +1,7 @@
 package it.pagopa.pn.delivery.middleware;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import it.pagopa.pn.api.dto.events.NotificationViewDelegateInfo;
 import it.pagopa.pn.api.dto.events.PnDeliveryNotificationViewedEvent;
 import it.pagopa.pn.delivery.PnDeliveryConfigs;
@@ -37,7 +38,7 @@ class NotificationViewedProducerTest {
                 .build();
 
         Mockito.when( sqsClient.getQueueUrl( Mockito.any( software.amazon.awssdk.services.sqs.model.GetQueueUrlRequest.class ))).thenReturn( response );
-        notificationViewedProducer = new SqsNotificationViewedProducer( sqsClient, objectMapper, cfg );
+        notificationViewedProducer = new SqsNotificationViewedProducer( sqsClient, objectMapper, cfg, new SimpleMeterRegistry() );
     }
 
     @ExtendWith(MockitoExtension.class)
@@ -1,6 +1,7 @@
 package it.pagopa.pn.delivery.middleware;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import it.pagopa.pn.api.dto.events.PnDeliveryPaymentEvent;
 import it.pagopa.pn.delivery.PnDeliveryConfigs;
 import it.pagopa.pn.delivery.middleware.paymenteventsproducer.SqsPaymentEventsProducer;
@@ -38,7 +39,7 @@ class PaymentEventsProducerTest {
                 .build();
 
         Mockito.when( sqsClient.getQueueUrl( Mockito.any( software.amazon.awssdk.services.sqs.model.GetQueueUrlRequest.class ))).thenReturn( response );
-        paymentEventsProducer = new SqsPaymentEventsProducer( sqsClient, objectMapper, cfg );
+        paymentEventsProducer = new SqsPaymentEventsProducer( sqsClient, objectMapper, cfg, new SimpleMeterRegistry() );
     }
 
     @ExtendWith(MockitoExtension.class)
@@ -0,0 +1,231 @@
+package it.pagopa.pn.delivery.middleware.batchproducer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.pagopa.pn.api.dto.events.StandardEventHeader;
+import it.pagopa.pn.commons.exceptions.PnInternalException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.models.AsseverationEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+class SqsMessageBatcherTest {
+
+    private static final String QUEUE_NAME = "local-asseveration-inputs";
+
+    private SqsClient sqsClient;
+    private PnDeliveryConfigs cfg;
+    private SqsMessageBatcher<AsseverationEvent> batcher;
+
+    @BeforeEach
+    void setup() {
+        sqsClient = Mockito.mock(SqsClient.class);
+        when(sqsClient.getQueueUrl(any(GetQueueUrlRequest.class))).thenReturn(GetQueueUrlResponse.builder().queueUrl("queueUrl").build());
+        cfg = Mockito.mock(PnDeliveryConfigs.class);
+        when(cfg.getSqsBatchLinger()).thenReturn(Duration.ofMillis(50));
+        when(cfg.getSqsBatchBufferSize()).thenReturn(100);
+        when(cfg.getSqsBatchBufferTimeout()).thenReturn(Duration.ofMillis(100));
+        when(cfg.getSqsBatchMaxAttempts()).thenReturn(2);
+        when(cfg.getSqsBatchAckTimeout()).thenReturn(Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (batcher != null)
+            batcher.close();
+    }
+
+    @Test
+    void sendsBatchesOfTenEntries() throws Exception {
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> succeeded(invocation.getArgument(0)));
+        batcher = newBatcher();
+
+        batcher.send(events(25));
+
+        ArgumentCaptor<SendMessageBatchRequest> requests = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        Mockito.verify(sqsClient, Mockito.times(3)).sendMessageBatch(requests.capture());
+        Assertions.assertEquals(List.of(10, 10, 5), requests.getAllValues().stream().map(request -> request.entries().size()).collect(Collectors.toList()));
+        SendMessageBatchRequestEntry entry = requests.getAllValues().get(0).entries().get(0);
+        Assertions.assertEquals("queueUrl", requests.getAllValues().get(0).queueUrl());
+        Assertions.assertEquals("IUN_0", entry.messageAttributes().get("iun").stringValue());
+        Assertions.assertEquals("ASSEVERATION_EVENT", entry.messageAttributes().get("eventType").stringValue());
+        Assertions.assertTrue(entry.messageBody().contains("\"iun\":\"IUN_0\""));
+    }
+
+    @Test
+    void retriesOnlyFailedEntries() throws Exception {
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenAnswer(invocation -> {
+                    SendMessageBatchRequest request = invocation.getArgument(0);
+                    return SendMessageBatchResponse.builder()
+                            .successful(request.entries().stream()
+                                    .filter(entry -> !entry.id().equals("1"))
+                                    .map(entry -> SendMessageBatchResultEntry.builder().id(entry.id()).build())
+                                    .collect(Collectors.toList()))
+                            .failed(BatchResultErrorEntry.builder().id("1").code("InternalError").senderFault(false).build())
+                            .build();
+                })
+                .thenAnswer(invocation -> succeeded(invocation.getArgument(0)));
+        batcher = newBatcher();
+
+        batcher.send(events(3));
+
+        ArgumentCaptor<SendMessageBatchRequest> requests = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        Mockito.verify(sqsClient, Mockito.times(2)).sendMessageBatch(requests.capture());
+        List<SendMessageBatchRequestEntry> retried = requests.getAllValues().get(1).entries();
+        Assertions.assertEquals(1, retried.size());
+        Assertions.assertTrue(retried.get(0).messageBody().contains("\"iun\":\"IUN_1\""));
+    }
+
+    @Test
+    void senderFaultIsNotRetried() {
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenReturn(SendMessageBatchResponse.builder()
+                .failed(BatchResultErrorEntry.builder().id("0").code("InvalidMessageContents").senderFault(true).build())
+                .build());
+        batcher = newBatcher();
+        List<AsseverationEvent> events = events(1);
+
+        Assertions.assertThrows(PnInternalException.class, () -> batcher.send(events));
+        Mockito.verify(sqsClient, Mockito.times(1)).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    @Test
+    void requestErrorsAreRetriedUpToMaxAttempts() {
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenThrow(SqsException.builder().message("unavailable").build());
+        batcher = newBatcher();
+        CompletableFuture<Void> ack = batcher.submit(events(1).get(0));
+
+        ExecutionException exc = Assertions.assertThrows(ExecutionException.class, () -> ack.get(5, TimeUnit.SECONDS));
+        Assertions.assertInstanceOf(SqsException.class, exc.getCause());
+        Mockito.verify(sqsClient, Mockito.times(2)).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    @Test
+    void fullBufferRejectsMessages() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return succeeded(invocation.getArgument(0));
+        });
+        when(cfg.getSqsBatchBufferSize()).thenReturn(10);
+        when(cfg.getSqsBatchSenders()).thenReturn(1);
+        batcher = newBatcher();
+        List<AsseverationEvent> events = events(21);
+
+        // il primo lotto occupa l'unico thread di invio, i successivi 10 messaggi riempiono il buffer
+        List<CompletableFuture<Void>> acks = new ArrayList<>();
+        for (AsseverationEvent event : events.subList(0, 20)) {
+            acks.add(batcher.submit(event));
+        }
+        AsseverationEvent last = events.get(20);
+        Assertions.assertThrows(PnInternalException.class, () -> batcher.submit(last));
+
+        release.countDown();
+        CompletableFuture.allOf(acks.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void sendsBatchesConcurrently() {
+        // ogni richiesta attende che l'altra sia in corso: con un solo lotto alla volta l'invio andrebbe in timeout
+        CountDownLatch inFlight = new CountDownLatch(2);
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+            inFlight.countDown();
+            inFlight.await(5, TimeUnit.SECONDS);
+            return succeeded(invocation.getArgument(0));
+        });
+        when(cfg.getSqsBatchSenders()).thenReturn(2);
+        when(cfg.getSqsBatchAckTimeout()).thenReturn(Duration.ofSeconds(2));
+        batcher = newBatcher();
+
+        batcher.send(events(20));
+
+        Assertions.assertEquals(0, inFlight.getCount());
+        Mockito.verify(sqsClient, Mockito.times(2)).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    @Test
+    void sendTimeoutDropsQueuedMessages() {
+        CountDownLatch release = new CountDownLatch(1);
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return succeeded(invocation.getArgument(0));
+        });
+        when(cfg.getSqsBatchSenders()).thenReturn(1);
+        when(cfg.getSqsBatchAckTimeout()).thenReturn(Duration.ofMillis(200));
+        batcher = newBatcher();
+        List<AsseverationEvent> events = events(15);
+
+        // il primo lotto resta in corso oltre il timeout, gli altri 5 messaggi restano accodati
+        Assertions.assertThrows(PnInternalException.class, () -> batcher.send(events));
+        release.countDown();
+        batcher.close();
+
+        // i messaggi accodati non vengono inviati dopo che il chiamante ha ricevuto l'errore
+        Mockito.verify(sqsClient, Mockito.times(1)).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    @Test
+    void closeSendsQueuedMessages() throws Exception {
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> succeeded(invocation.getArgument(0)));
+        when(cfg.getSqsBatchLinger()).thenReturn(Duration.ofSeconds(10));
+        batcher = newBatcher();
+
+        CompletableFuture<Void> ack = batcher.submitAll(events(3));
+        batcher.close();
+
+        ack.get(1, TimeUnit.SECONDS);
+        Mockito.verify(sqsClient).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    private SqsMessageBatcher<AsseverationEvent> newBatcher() {
+        return new SqsMessageBatcher<>(sqsClient, QUEUE_NAME, new ObjectMapper(), null, null, cfg, new SimpleMeterRegistry());
+    }
+
+    private static SendMessageBatchResponse succeeded(SendMessageBatchRequest request) {
+        return SendMessageBatchResponse.builder()
+                .successful(request.entries().stream()
+                        .map(entry -> SendMessageBatchResultEntry.builder().id(entry.id()).build())
+                        .collect(Collectors.toList()))
+                .build();
+    }
+
+    static List<AsseverationEvent> events(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> AsseverationEvent.builder()
+                        .header(StandardEventHeader.builder()
+                                .iun("IUN_" + i)
+                                .eventId("IUN_" + i + "asseveration_event")
+                                .eventType("ASSEVERATION_EVENT")
+                                .publisher("DELIVERY")
+                                .createdAt(Instant.parse("2023-04-10T10:00:00Z"))
+                                .build())
+                        .payload(AsseverationEvent.Payload.builder()
+                                .iun("IUN_" + i)
+                                .senderPaId("senderPaId")
+                                .noticeCode("302000100000019421")
+                                .creditorTaxId("77777777777")
+                                .build())
+                        .build())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,119 @@
+package it.pagopa.pn.delivery.middleware.batchproducer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.pagopa.pn.delivery.LocalStackTestConfig;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.middleware.asseverationeventsproducer.SqsAsseverationEventsProducer;
+import it.pagopa.pn.delivery.models.AsseverationEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+@Slf4j
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+@Import(LocalStackTestConfig.class)
+class SqsMessageBatcherTestIT {
+
+    private static final int MESSAGES = 200;
+    private static final int CALLERS = 20;
+
+    @Autowired
+    private SqsClient sqsClient;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void batchedSendDeliversAllMessages() throws Exception {
+        //Given
+        String queueName = "local-sqs-batch-test";
+        String queueUrl = sqsClient.createQueue( CreateQueueRequest.builder().queueName( queueName ).build() ).queueUrl();
+        List<AsseverationEvent> events = SqsMessageBatcherTest.events( MESSAGES );
+        SqsAsseverationEventsProducer single = new SqsAsseverationEventsProducer( sqsClient, objectMapper, cfg( queueName, false ), new SimpleMeterRegistry() );
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        //When
+        // come nelle richieste HTTP concorrenti, ogni chiamante invia un messaggio alla volta e ne attende l'esito
+        long singleMillis = sendConcurrently( events, single::push );
+        long batchMillis;
+        try (SqsMessageBatcher<AsseverationEvent> batcher = new SqsMessageBatcher<>( sqsClient, queueName, objectMapper, null, null,
+                cfg( queueName, true ), meterRegistry )) {
+            batchMillis = sendConcurrently( events, event -> batcher.send( List.of( event ) ) );
+        }
+        log.info( "sent {} messages from {} callers: single={}ms batch={}ms", MESSAGES, CALLERS, singleMillis, batchMillis );
+
+        //Then
+        Set<String> singleIuns = new HashSet<>();
+        Set<String> batchIuns = new HashSet<>();
+        int received = 0;
+        while ( received < 2 * MESSAGES ) {
+            List<Message> messages = sqsClient.receiveMessage( ReceiveMessageRequest.builder()
+                    .queueUrl( queueUrl )
+                    .maxNumberOfMessages( 10 )
+                    .messageAttributeNames( "All" )
+                    .waitTimeSeconds( 1 )
+                    .build() ).messages();
+            if ( messages.isEmpty() )
+                break;
+            for ( Message message : messages ) {
+                String iun = message.messageAttributes().get( "iun" ).stringValue();
+                Assertions.assertEquals( "ASSEVERATION_EVENT", message.messageAttributes().get( "eventType" ).stringValue() );
+                Assertions.assertTrue( message.body().contains( iun ) );
+                if ( !singleIuns.add( iun ) )
+                    batchIuns.add( iun );
+                sqsClient.deleteMessage( DeleteMessageRequest.builder().queueUrl( queueUrl ).receiptHandle( message.receiptHandle() ).build() );
+            }
+            received += messages.size();
+        }
+        Assertions.assertEquals( 2 * MESSAGES, received );
+        Assertions.assertEquals( MESSAGES, batchIuns.size() );
+        Assertions.assertEquals( MESSAGES, meterRegistry.get( SqsMessageBatcher.METRIC_MESSAGES ).tag( "result", "sent" ).counter().count() );
+    }
+
+    private static long sendConcurrently(List<AsseverationEvent> events, Consumer<AsseverationEvent> send) throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool( CALLERS );
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> sent = new ArrayList<>();
+            events.forEach( event -> sent.add( callers.submit( () -> send.accept( event ) ) ) );
+            for ( Future<?> future : sent ) {
+                future.get( 30, TimeUnit.SECONDS );
+            }
+            return ( System.nanoTime() - start ) / 1_000_000;
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    private static PnDeliveryConfigs cfg(String queueName, boolean batchEnabled) {
+        PnDeliveryConfigs cfg = Mockito.mock( PnDeliveryConfigs.class );
+        PnDeliveryConfigs.Topics topics = new PnDeliveryConfigs.Topics();
+        topics.setAsseverationEvents( queueName );
+        Mockito.when( cfg.getTopics() ).thenReturn( topics );
+        Mockito.when( cfg.getSqsBatchEnabled() ).thenReturn( batchEnabled );
+        Mockito.when( cfg.getSqsBatchLinger() ).thenReturn( Duration.ofMillis( 20 ) );
+        Mockito.when( cfg.getSqsBatchAckTimeout() ).thenReturn( Duration.ofSeconds( 30 ) );
+        return cfg;
+    }
+}
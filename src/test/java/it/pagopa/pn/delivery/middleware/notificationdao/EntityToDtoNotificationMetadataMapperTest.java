@@ -117,5 +117,34 @@ class EntityToDtoNotificationMetadataMapperTest {
 
     }
 
+    @Test
+    void mapsProjectedRowWithoutTableRow() {
+        NotificationMetadataEntity metadataEntity = NotificationMetadataEntity.builder()
+                .iunRecipientId( IUN_RECIPIENT_ID )
+                .recipientIds( List.of( RECIPIENT_ID ) )
+                .notificationGroup( NOTIFICATION_GROUP )
+                .notificationStatus( NOTIFICATION_STATUS )
+                .sentAt( Instant.parse(SENT_AT) )
+                .build();
+        NotificationDelegationMetadataEntity delegationEntity = NotificationDelegationMetadataEntity.builder()
+                .iunRecipientIdDelegateIdGroupId( IUN + "##" )
+                .recipientIds( List.of( RECIPIENT_ID ) )
+                .notificationStatus( NOTIFICATION_STATUS )
+                .sentAt( Instant.parse(SENT_AT) )
+                .build();
+
+        NotificationSearchRow result = mapper.entity2Dto( metadataEntity );
+        NotificationSearchRow delegatedResult = mapper.entity2Dto( delegationEntity );
+
+        assertEquals( IUN, result.getIun() );
+        assertEquals( SENT_AT, result.getSentAt().toString() );
+        assertNull( result.getSender() );
+        assertNull( result.getSubject() );
+        assertNull( result.getPaProtocolNumber() );
+        assertNull( result.getRequestAcceptedAt() );
+        assertEquals( IUN, delegatedResult.getIun() );
+        assertNull( delegatedResult.getSubject() );
+    }
+
 
 }
@@ -1,7 +1,9 @@
 package it.pagopa.pn.delivery.middleware.notificationdao;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import it.pagopa.pn.commons.exceptions.PnIdConflictException;
 import it.pagopa.pn.commons.exceptions.PnInternalException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
 import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.RecipientType;
 import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.*;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.*;
@@ -13,30 +15,34 @@ import it.pagopa.pn.delivery.models.PageSearchTrunk;
 import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
 import it.pagopa.pn.delivery.svc.search.IndexNameAndPartitions;
 import it.pagopa.pn.delivery.svc.search.PnLastEvaluatedKey;
-import it.pagopa.pn.delivery.utils.ModelMapperConfig;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.function.Executable;
+import org.mapstruct.factory.Mappers;
 import org.mockito.Mockito;
-import org.modelmapper.ModelMapper;
+import org.springframework.util.unit.DataSize;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Predicate;
 
 class NotificationDaoDynamoTest {
 
     private NotificationDaoDynamo dao;
     private EntityToDtoNotificationMapper entity2dto;
-    private ModelMapper modelMapper;
     private PnDataVaultClientImpl pnDataVaultClient;
     private NotificationEntityDao entityDao;
     private NotificationMetadataEntityDao metadataEntityDao;
+    private NotificationDelegationMetadataEntityDao delegationMetadataEntityDao;
+    private DtoToEntityNotificationMapper dto2Entity;
+    private PnDeliveryConfigs cfg;
+    private SimpleMeterRegistry meterRegistry;
 
     private static final String X_PAGOPA_PN_SRC_CH = "sourceChannel";
     public static final String ATTACHMENT_BODY_STR = "Body";
@@ -56,15 +62,125 @@ class NotificationDaoDynamoTest {
 
     @BeforeEach
     void setup() {
-        ModelMapperConfig modelMapperConfig = new ModelMapperConfig();
-        this.modelMapper = modelMapperConfig.modelMapper();
-        DtoToEntityNotificationMapper dto2Entity = new DtoToEntityNotificationMapper(modelMapper);
-        entity2dto = new EntityToDtoNotificationMapper(modelMapper);
+        NotificationRecipientMapper recipientMapper = Mappers.getMapper(NotificationRecipientMapper.class);
+        dto2Entity = new DtoToEntityNotificationMapper(recipientMapper);
+        entity2dto = new EntityToDtoNotificationMapper(recipientMapper);
         entityDao = new EntityDaoMock();
         metadataEntityDao = new MetadataEntityDaoMock();
-        NotificationDelegationMetadataEntityDao delegationMetadataEntityDao = new DelegationMetadataEntityDaoMock();
+        delegationMetadataEntityDao = new DelegationMetadataEntityDaoMock();
         pnDataVaultClient = Mockito.mock( PnDataVaultClientImpl.class );
-        dao = new NotificationDaoDynamo( entityDao, metadataEntityDao, delegationMetadataEntityDao, dto2Entity, entity2dto, pnDataVaultClient);
+        cfg = Mockito.mock( PnDeliveryConfigs.class );
+        meterRegistry = new SimpleMeterRegistry();
+        dao = newDao();
+    }
+
+    private NotificationDaoDynamo newDao() {
+        return new NotificationDaoDynamo( entityDao, metadataEntityDao, delegationMetadataEntityDao, dto2Entity, entity2dto,
+                pnDataVaultClient, cfg, Clock.systemUTC(), meterRegistry );
+    }
+
+    private void enableEntityCache() {
+        Mockito.when( cfg.getNotificationEntityCacheTtl() ).thenReturn( Duration.ofMinutes( 10 ) );
+        Mockito.when( cfg.getNotificationEntityCacheMaxSize() ).thenReturn( DataSize.ofMegabytes( 1 ) );
+        entityDao = Mockito.spy( new EntityDaoMock() );
+        dao = newDao();
+    }
+
+    @Test
+    void repeatedReadsByIunHitTheTableOnce() {
+        enableEntityCache();
+        entityDao.put( newEntity( "IUN_01" ) );
+
+        for ( int i = 0; i < 10; i++ ) {
+            Assertions.assertTrue( dao.getNotificationByIun( "IUN_01", false ).isPresent() );
+        }
+
+        Mockito.verify( entityDao, Mockito.times( 1 ) ).get( Mockito.any( Key.class ) );
+        Assertions.assertEquals( 9, meterRegistry.counter( NotificationEntityCache.METRIC_LOOKUPS, "result", "hit" ).count() );
+        Assertions.assertEquals( 1, meterRegistry.counter( NotificationEntityCache.METRIC_LOOKUPS, "result", "miss" ).count() );
+    }
+
+    @Test
+    void insertedNotificationIsReadWithoutGetItem() throws PnIdConflictException {
+        enableEntityCache();
+        Mockito.when( pnDataVaultClient.ensureRecipientByExternalId( Mockito.any(RecipientType.class), Mockito.anyString() ) ).thenReturn( "opaqueTaxId" );
+        InternalNotification notification = newNotificationWithoutPayments( );
+
+        dao.addNotification( notification );
+        Optional<InternalNotification> saved = dao.getNotificationByIun( notification.getIun(), false );
+
+        Assertions.assertTrue( saved.isPresent() );
+        Assertions.assertEquals( notification.getSubject(), saved.get().getSubject() );
+        Mockito.verify( entityDao, Mockito.never() ).get( Mockito.any( Key.class ) );
+    }
+
+    @Test
+    void missingNotificationIsNotCached() {
+        enableEntityCache();
+
+        Assertions.assertTrue( dao.getNotificationByIun( "IUN_01", false ).isEmpty() );
+        entityDao.put( newEntity( "IUN_01" ) );
+
+        Assertions.assertTrue( dao.getNotificationByIun( "IUN_01", false ).isPresent() );
+        Mockito.verify( entityDao, Mockito.times( 2 ) ).get( Mockito.any( Key.class ) );
+    }
+
+    @Test
+    void recipientsDetailIsNotCached() {
+        enableEntityCache();
+        entityDao.put( newEntity( "IUN_01" ) );
+        BaseRecipientDto recipient = new BaseRecipientDto();
+        recipient.setInternalId( "rec1" );
+        recipient.setTaxId( "firstTaxId" );
+        BaseRecipientDto changed = new BaseRecipientDto();
+        changed.setInternalId( "rec1" );
+        changed.setTaxId( "secondTaxId" );
+        Mockito.when( pnDataVaultClient.getRecipientDenominationByInternalId( Mockito.anyList() ) )
+                .thenReturn( List.of( recipient ) )
+                .thenReturn( List.of( changed ) );
+        Mockito.when( pnDataVaultClient.getNotificationAddressesByIun( Mockito.anyString() ) )
+                .thenReturn( List.of( new NotificationRecipientAddressesDto().denomination( "denomination" ) ) );
+
+        Assertions.assertEquals( "firstTaxId", dao.getNotificationByIun( "IUN_01" ).get().getRecipients().get(0).getTaxId() );
+        Assertions.assertEquals( "secondTaxId", dao.getNotificationByIun( "IUN_01" ).get().getRecipients().get(0).getTaxId() );
+        Assertions.assertNull( entityDao.get( Key.builder().partitionValue( "IUN_01" ).build() ).get().getRecipients().get(0).getDenomination() );
+        Mockito.verify( entityDao, Mockito.times( 2 ) ).get( Mockito.any( Key.class ) );
+    }
+
+    @Test
+    void bulkReadReadsOnlyMissingNotificationsWithOneBatch() {
+        enableEntityCache();
+        entityDao.put( newEntity( "IUN_01" ) );
+        entityDao.put( newEntity( "IUN_02" ) );
+        entityDao.put( newEntity( "IUN_03" ) );
+        dao.getNotificationByIun( "IUN_01", false );
+
+        Map<String, InternalNotification> notifications = dao.getNotificationsByIun( List.of( "IUN_03", "IUN_01", "IUN_02", "IUN_04", "IUN_03" ) );
+
+        Assertions.assertEquals( List.of( "IUN_03", "IUN_01", "IUN_02" ), new ArrayList<>( notifications.keySet() ) );
+        Mockito.verify( entityDao ).batchGetItems( List.of(
+                Key.builder().partitionValue( "IUN_03" ).build(),
+                Key.builder().partitionValue( "IUN_02" ).build(),
+                Key.builder().partitionValue( "IUN_04" ).build() ) );
+        Mockito.verify( pnDataVaultClient, Mockito.never() ).getRecipientDenominationByInternalId( Mockito.anyList() );
+
+        dao.getNotificationsByIun( List.of( "IUN_02", "IUN_03" ) );
+        Mockito.verify( entityDao, Mockito.times( 1 ) ).batchGetItems( Mockito.anyList() );
+    }
+
+    private static NotificationEntity newEntity( String iun ) {
+        return NotificationEntity.builder()
+                .iun( iun )
+                .subject( "subject" )
+                .sentAt( Instant.now() )
+                .senderPaId( "sender-pa-id" )
+                .notificationFeePolicy( NotificationFeePolicy.FLAT_RATE )
+                .physicalCommunicationType( FullSentNotification.PhysicalCommunicationTypeEnum.AR_REGISTERED_LETTER )
+                .recipients( List.of( NotificationRecipientEntity.builder()
+                        .recipientType( RecipientTypeEntity.PF )
+                        .recipientId( "rec1" )
+                        .build() ) )
+                .build();
     }
 
     @Test
@@ -144,6 +260,25 @@ class NotificationDaoDynamoTest {
     }
 
 
+    @Test
+    void insertWithUsedIdempotenceTokenFailsBeforeDataVault() {
+
+        // GIVEN
+        InternalNotification notification = newNotificationWithoutPayments( );
+        notification.setIdempotenceToken( "idempotenceToken" );
+        entityDao.put( NotificationEntity.builder()
+                .iun( "pa_02##protocol_01##idempotenceToken" )
+                .requestId( "SVVOXzAx" )
+                .build() );
+
+        // WHEN
+        Executable todo = () -> this.dao.addNotification( notification );
+
+        // THEN
+        Assertions.assertThrows( PnIdConflictException.class, todo );
+        Mockito.verifyNoInteractions( pnDataVaultClient );
+    }
+
     @Test
     void insertSuccessWithPaymentsFlat() throws PnIdConflictException {
 
@@ -179,22 +314,6 @@ class NotificationDaoDynamoTest {
         Assertions.assertThrows(PnInternalException.class, todo);
     }
 
-    @Test
-    void regExpMatchTest() {
-
-        Predicate<String> predicate = this.dao.buildRegexpPredicate("Test");
-        //boolean b = Pattern.compile("^Test$").matcher("Subject Test").matches();
-
-        Assertions.assertTrue(predicate.test("Test"));
-        Assertions.assertFalse(predicate.test("Subject Test"));
-
-        Predicate<String> predicate2 = this.dao.buildRegexpPredicate(".*Test");
-
-        Assertions.assertTrue(predicate2.test("Test"));
-        Assertions.assertTrue(predicate2.test("Subject Test"));
-
-    }
-
     @Test
     void searchByIUN(){
 
@@ -279,6 +398,24 @@ class NotificationDaoDynamoTest {
         public void delete(Key key) {
             storage.remove( key );
         }
+
+        @Override
+        public List<NotificationEntity> batchGetItems(List<Key> keys) {
+            return keys.stream()
+                    .map( storage::get )
+                    .filter( Objects::nonNull )
+                    .toList();
+        }
+
+        @Override
+        public void checkIdempotenceToken(String senderPaId, String paProtocolNumber, String idempotenceToken) throws PnIdConflictException {
+            String controlIdempotenceToken = senderPaId + "##" + paProtocolNumber + "##" + idempotenceToken;
+            if ( storage.containsKey( Key.builder().partitionValue( controlIdempotenceToken ).build() ) ) {
+                Map<String,String> keyValueConflicts = new HashMap<>();
+                keyValueConflicts.put( "controlIdempotenceToken", controlIdempotenceToken );
+                throw new PnIdConflictException( keyValueConflicts );
+            }
+        }
     }
 
     private static class MetadataEntityDaoMock implements NotificationMetadataEntityDao {
@@ -312,6 +449,11 @@ class NotificationDaoDynamoTest {
         public PageSearchTrunk<NotificationMetadataEntity> searchByIun(InputSearchNotificationDto inputSearchNotificationDto, String partitionValue, String sentAt) {
             return new PageSearchTrunk<NotificationMetadataEntity>(List.of(NotificationMetadataEntity.builder().build()), new ConcurrentHashMap<>());
         }
+
+        @Override
+        public List<NotificationMetadataEntity> batchGetItems(List<Key> keys) {
+            return Collections.emptyList();
+        }
     }
 
     private static class DelegationMetadataEntityDaoMock implements NotificationDelegationMetadataEntityDao {
@@ -0,0 +1,116 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationEntity;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Optional;
+
+class NotificationEntityCacheTest {
+
+    private Clock clock;
+    private SimpleMeterRegistry meterRegistry;
+    private int loads;
+
+    @BeforeEach
+    void setup() {
+        clock = Mockito.mock(Clock.class);
+        Mockito.when(clock.millis()).thenReturn(0L);
+        meterRegistry = new SimpleMeterRegistry();
+        loads = 0;
+    }
+
+    @Test
+    void notificationIsServedFromCacheUntilExpiration() {
+        NotificationEntityCache cache = new NotificationEntityCache(Duration.ofMinutes(1), 1_000_000, clock, meterRegistry);
+
+        cache.get("IUN_01", () -> load("IUN_01"));
+        Mockito.when(clock.millis()).thenReturn(59_000L);
+        Assertions.assertEquals("IUN_01", cache.get("IUN_01", () -> load("IUN_01")).orElseThrow().getIun());
+        Assertions.assertEquals(1, loads);
+
+        Mockito.when(clock.millis()).thenReturn(60_000L);
+        cache.get("IUN_01", () -> load("IUN_01"));
+        Assertions.assertEquals(2, loads);
+        Assertions.assertEquals(1, meterRegistry.counter(NotificationEntityCache.METRIC_LOOKUPS, "result", "hit").count());
+        Assertions.assertEquals(2, meterRegistry.counter(NotificationEntityCache.METRIC_LOOKUPS, "result", "miss").count());
+    }
+
+    @Test
+    void missingNotificationIsNotCached() {
+        NotificationEntityCache cache = new NotificationEntityCache(Duration.ofMinutes(1), 1_000_000, clock, meterRegistry);
+
+        Assertions.assertTrue(cache.get("IUN_01", () -> { loads++; return Optional.empty(); }).isEmpty());
+        cache.get("IUN_01", () -> load("IUN_01"));
+
+        Assertions.assertEquals(2, loads);
+        Assertions.assertEquals(1, cache.size());
+    }
+
+    @Test
+    void leastRecentlyUsedNotificationsAreEvictedOverMaxWeight() {
+        long entityWeight = NotificationEntityCache.weigh(entity("IUN_01"));
+        NotificationEntityCache cache = new NotificationEntityCache(Duration.ofMinutes(1), entityWeight * 2, clock, meterRegistry);
+
+        cache.put(entity("IUN_01"));
+        cache.put(entity("IUN_02"));
+        cache.lookup("IUN_01");
+        cache.put(entity("IUN_03"));
+
+        Assertions.assertNotNull(cache.lookup("IUN_01"));
+        Assertions.assertNull(cache.lookup("IUN_02"));
+        Assertions.assertNotNull(cache.lookup("IUN_03"));
+        Assertions.assertEquals(entityWeight * 2, cache.weight());
+        Assertions.assertEquals(entityWeight * 2, meterRegistry.get(NotificationEntityCache.METRIC_WEIGHT).gauge().value());
+    }
+
+    @Test
+    void notificationHeavierThanMaxWeightIsNotCached() {
+        NotificationEntity entity = entity("IUN_01");
+        NotificationEntityCache cache = new NotificationEntityCache(Duration.ofMinutes(1), NotificationEntityCache.weigh(entity) - 1, clock, meterRegistry);
+
+        cache.put(entity);
+
+        Assertions.assertEquals(0, cache.size());
+        Assertions.assertEquals(0, cache.weight());
+    }
+
+    @Test
+    void replacedNotificationIsWeightedOnce() {
+        NotificationEntityCache cache = new NotificationEntityCache(Duration.ofMinutes(1), 1_000_000, clock, meterRegistry);
+
+        cache.put(entity("IUN_01"));
+        cache.put(entity("IUN_01"));
+
+        Assertions.assertEquals(NotificationEntityCache.weigh(entity("IUN_01")), cache.weight());
+    }
+
+    @Test
+    void zeroTtlDisablesCache() {
+        NotificationEntityCache cache = new NotificationEntityCache(Duration.ZERO, 1_000_000, clock, meterRegistry);
+
+        cache.get("IUN_01", () -> load("IUN_01"));
+        cache.get("IUN_01", () -> load("IUN_01"));
+
+        Assertions.assertFalse(cache.isEnabled());
+        Assertions.assertEquals(2, loads);
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    private Optional<NotificationEntity> load(String iun) {
+        loads++;
+        return Optional.of(entity(iun));
+    }
+
+    private static NotificationEntity entity(String iun) {
+        return NotificationEntity.builder()
+                .iun(iun)
+                .subject("subject")
+                .build();
+    }
+}
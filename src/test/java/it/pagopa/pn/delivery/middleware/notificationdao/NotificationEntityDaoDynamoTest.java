@@ -0,0 +1,200 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import it.pagopa.pn.commons.exceptions.PnIdConflictException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationFeePolicy;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+class NotificationEntityDaoDynamoTest {
+
+    private static final String CONTROL_IDEMPOTENCE_TOKEN = "pa_02##protocol_01##idempotenceToken";
+
+    // ordine delle scritture nella transazione: notifica, controllo idempotenza, 3 costi, 2 QR
+    private static final int WRITES = 7;
+
+    private DynamoDbClient dynamoDbClient;
+    private NotificationEntityDaoDynamo entityDao;
+
+    @BeforeEach
+    void setup() {
+        dynamoDbClient = Mockito.mock( DynamoDbClient.class );
+        PnDeliveryConfigs cfg = Mockito.mock( PnDeliveryConfigs.class );
+        PnDeliveryConfigs.NotificationDao notificationDao = new PnDeliveryConfigs.NotificationDao();
+        notificationDao.setTableName( "Notifications" );
+        PnDeliveryConfigs.NotificationCostDao notificationCostDao = new PnDeliveryConfigs.NotificationCostDao();
+        notificationCostDao.setTableName( "NotificationsCost" );
+        PnDeliveryConfigs.NotificationQRDao notificationQRDao = new PnDeliveryConfigs.NotificationQRDao();
+        notificationQRDao.setTableName( "NotificationsQR" );
+        when( cfg.getNotificationDao() ).thenReturn( notificationDao );
+        when( cfg.getNotificationCostDao() ).thenReturn( notificationCostDao );
+        when( cfg.getNotificationQRDao() ).thenReturn( notificationQRDao );
+
+        DynamoDbEnhancedClient enhancedClient = DynamoDbEnhancedClient.builder().dynamoDbClient( dynamoDbClient ).build();
+        entityDao = new NotificationEntityDaoDynamo( enhancedClient, cfg );
+    }
+
+    @Test
+    void putSuccess() throws PnIdConflictException {
+        entityDao.putIfAbsent( newNotification() );
+
+        ArgumentCaptor<TransactWriteItemsRequest> request = ArgumentCaptor.forClass( TransactWriteItemsRequest.class );
+        Mockito.verify( dynamoDbClient ).transactWriteItems( request.capture() );
+        Assertions.assertEquals( WRITES, request.getValue().transactItems().size() );
+    }
+
+    @Test
+    void duplicatedIun() {
+        PnIdConflictException exc = putCanceledAt( 0 );
+
+        assertConflicts( Map.of( NotificationEntityDaoDynamo.DUPLICATED_IUN, "IUN_01" ), exc );
+    }
+
+    @Test
+    void duplicatedIdempotenceToken() {
+        PnIdConflictException exc = putCanceledAt( 1 );
+
+        assertConflicts( Map.of( NotificationEntityDaoDynamo.DUPLICATED_IDEMPOTENCE_TOKEN, CONTROL_IDEMPOTENCE_TOKEN ), exc );
+    }
+
+    @Test
+    void duplicatedNoticeCode() {
+        PnIdConflictException exc = putCanceledAt( 4 );
+
+        assertConflicts( Map.of( NotificationEntityDaoDynamo.DUPLICATED_NOTICE_CODE, "77777777777##002720356512737953" ), exc );
+    }
+
+    @Test
+    void duplicatedAlternativeNoticeCode() {
+        PnIdConflictException exc = putCanceledAt( 3 );
+
+        assertConflicts( Map.of( NotificationEntityDaoDynamo.DUPLICATED_NOTICE_CODE, "creditorTaxId##noticeCode_opt" ), exc );
+    }
+
+    @Test
+    void duplicatedAarQrCode() {
+        PnIdConflictException exc = putCanceledAt( 5 );
+
+        ArgumentCaptor<TransactWriteItemsRequest> request = ArgumentCaptor.forClass( TransactWriteItemsRequest.class );
+        Mockito.verify( dynamoDbClient ).transactWriteItems( request.capture() );
+        String aarQrCodeValue = request.getValue().transactItems().get( 5 ).put().item().get( "aarQRCodeValue" ).s();
+        assertConflicts( Map.of( NotificationEntityDaoDynamo.DUPLICATED_AAR_QR_CODE, aarQrCodeValue ), exc );
+    }
+
+    @Test
+    void duplicatedIunAndIdempotenceToken() {
+        PnIdConflictException exc = putCanceledAt( 0, 1 );
+
+        assertConflicts( Map.of(
+                NotificationEntityDaoDynamo.DUPLICATED_IUN, "IUN_01",
+                NotificationEntityDaoDynamo.DUPLICATED_IDEMPOTENCE_TOKEN, CONTROL_IDEMPOTENCE_TOKEN ), exc );
+    }
+
+    @Test
+    void canceledWithoutDuplicatesIsRethrown() {
+        when( dynamoDbClient.transactWriteItems( any( TransactWriteItemsRequest.class ) ) ).thenThrow( TransactionCanceledException.builder()
+                .cancellationReasons( reasons( i -> i == 0 ? "TransactionConflict" : "None" ) )
+                .build() );
+        NotificationEntity notification = newNotification();
+
+        Assertions.assertThrows( TransactionCanceledException.class, () -> entityDao.putIfAbsent( notification ) );
+        Mockito.verify( dynamoDbClient, Mockito.never() ).getItem( any( GetItemRequest.class ) );
+    }
+
+    @Test
+    void usedIdempotenceTokenIsConflict() {
+        when( dynamoDbClient.getItem( any( GetItemRequest.class ) ) ).thenReturn( GetItemResponse.builder()
+                .item( Map.of(
+                        NotificationEntity.FIELD_IUN, AttributeValue.builder().s( CONTROL_IDEMPOTENCE_TOKEN ).build(),
+                        NotificationEntity.FIELD_REQUEST_ID, AttributeValue.builder().s( "SVVOXzAx" ).build() ) )
+                .build() );
+
+        PnIdConflictException exc = Assertions.assertThrows( PnIdConflictException.class,
+                () -> entityDao.checkIdempotenceToken( "pa_02", "protocol_01", "idempotenceToken" ) );
+
+        assertConflicts( Map.of( NotificationEntityDaoDynamo.DUPLICATED_IDEMPOTENCE_TOKEN, CONTROL_IDEMPOTENCE_TOKEN ), exc );
+        ArgumentCaptor<GetItemRequest> request = ArgumentCaptor.forClass( GetItemRequest.class );
+        Mockito.verify( dynamoDbClient ).getItem( request.capture() );
+        Assertions.assertTrue( request.getValue().consistentRead() );
+        Assertions.assertEquals( CONTROL_IDEMPOTENCE_TOKEN, request.getValue().key().get( NotificationEntity.FIELD_IUN ).s() );
+    }
+
+    @Test
+    void unusedIdempotenceTokenIsAccepted() {
+        when( dynamoDbClient.getItem( any( GetItemRequest.class ) ) ).thenReturn( GetItemResponse.builder().build() );
+
+        Assertions.assertDoesNotThrow( () -> entityDao.checkIdempotenceToken( "pa_02", "protocol_01", "idempotenceToken" ) );
+    }
+
+    private PnIdConflictException putCanceledAt(Integer... duplicatedIndexes) {
+        List<Integer> duplicated = List.of( duplicatedIndexes );
+        when( dynamoDbClient.transactWriteItems( any( TransactWriteItemsRequest.class ) ) ).thenThrow( TransactionCanceledException.builder()
+                .cancellationReasons( reasons( i -> duplicated.contains( i ) ? "ConditionalCheckFailed" : "None" ) )
+                .build() );
+        NotificationEntity notification = newNotification();
+
+        PnIdConflictException exc = Assertions.assertThrows( PnIdConflictException.class, () -> entityDao.putIfAbsent( notification ) );
+        // la diagnosi usa solo i motivi di annullamento, senza altre letture
+        Mockito.verify( dynamoDbClient, Mockito.never() ).getItem( any( GetItemRequest.class ) );
+        return exc;
+    }
+
+    private static void assertConflicts(Map<String, String> expected, PnIdConflictException exc) {
+        Assertions.assertEquals( new HashSet<>( new PnIdConflictException( expected ).getProblem().getErrors() ),
+                new HashSet<>( exc.getProblem().getErrors() ) );
+    }
+
+    private static List<CancellationReason> reasons(IntFunction<String> code) {
+        return IntStream.range( 0, WRITES )
+                .mapToObj( i -> CancellationReason.builder().code( code.apply( i ) ).build() )
+                .collect( Collectors.toList() );
+    }
+
+    private static NotificationEntity newNotification() {
+        NotificationRecipientEntity recipient = NotificationRecipientEntity.builder()
+                .recipientType( RecipientTypeEntity.PF )
+                .recipientId( "recipientTaxId" )
+                .payment( NotificationPaymentInfoEntity.builder()
+                        .creditorTaxId( "creditorTaxId" )
+                        .noticeCode( "noticeCode" )
+                        .noticeCodeAlternative( "noticeCode_opt" )
+                        .build() )
+                .build();
+        NotificationRecipientEntity otherRecipient = NotificationRecipientEntity.builder()
+                .recipientType( RecipientTypeEntity.PF )
+                .recipientId( "fakeRecipientId" )
+                .payment( NotificationPaymentInfoEntity.builder()
+                        .creditorTaxId( "77777777777" )
+                        .noticeCode( "002720356512737953" )
+                        .build() )
+                .build();
+        return NotificationEntity.builder()
+                .iun( "IUN_01" )
+                .idempotenceToken( "idempotenceToken" )
+                .paNotificationId( "protocol_01" )
+                .subject( "Subject 01" )
+                .senderPaId( "pa_02" )
+                .sentAt( Instant.parse( "2023-04-10T10:00:00Z" ) )
+                .notificationFeePolicy( NotificationFeePolicy.FLAT_RATE )
+                .recipients( List.of( recipient, otherRecipient ) )
+                .build();
+    }
+}
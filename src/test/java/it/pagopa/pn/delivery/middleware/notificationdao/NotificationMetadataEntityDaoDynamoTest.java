@@ -16,7 +16,9 @@ import software.amazon.awssdk.enhanced.dynamodb.Key;
 
 import java.time.Instant;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -134,6 +136,14 @@ class NotificationMetadataEntityDaoDynamoTest {
             res.setResults( Collections.singletonList(  getResult ) );
             return res;
         }
+
+        @Override
+        public List<NotificationMetadataEntity> batchGetItems(List<Key> keys) {
+            return keys.stream()
+                    .map( storage::get )
+                    .filter( Objects::nonNull )
+                    .toList();
+        }
     }
 
 }
\ No newline at end of file
@@ -688,6 +688,52 @@ class NotificationMetadataEntityDaoDynamoTestIT {
     }
 
 
+    @Test
+    void searchForOneMonthAsyncReadsOnlySearchAttributes() {
+        //Given
+        NotificationMetadataEntity metadataEntity = newNotificationMetadata();
+        InputSearchNotificationDto inputSearch = new InputSearchNotificationDto().toBuilder()
+                .bySender( false )
+                .startDate( Instant.parse( "2022-05-01T00:00:00.00Z" ) )
+                .endDate( Instant.parse( "2022-05-30T00:00:00.00Z" ) )
+                .senderReceiverId( OPAQUE_TAX_ID_R1 )
+                .size( 10 )
+                .build();
+
+        try {
+            notificationMetadataEntityDao.put( metadataEntity );
+
+            //When
+            PageSearchTrunk<NotificationMetadataEntity> result = notificationMetadataEntityDao.searchForOneMonthAsync(
+                    inputSearch,
+                    NotificationMetadataEntity.INDEX_RECIPIENT_ID,
+                    metadataEntity.getRecipientIdCreationMonth(),
+                    inputSearch.getSize(),
+                    null
+            ).join();
+
+            //Then
+            NotificationMetadataEntity row = result.getResults().stream()
+                    .filter( r -> metadataEntity.getIunRecipientId().equals( r.getIunRecipientId() ) )
+                    .findFirst()
+                    .orElseThrow();
+            Assertions.assertEquals( metadataEntity.getSentAt(), row.getSentAt() );
+            Assertions.assertEquals( metadataEntity.getRecipientIdCreationMonth(), row.getRecipientIdCreationMonth() );
+            Assertions.assertEquals( metadataEntity.getRecipientIds(), row.getRecipientIds() );
+            Assertions.assertEquals( metadataEntity.getNotificationStatus(), row.getNotificationStatus() );
+            Assertions.assertEquals( metadataEntity.getNotificationGroup(), row.getNotificationGroup() );
+            Assertions.assertEquals( Map.of( "subject", "multa", "acceptedAt", ACCEPTED_DATE ), row.getTableRow() );
+            Assertions.assertNull( row.getSenderId() );
+            Assertions.assertNull( row.getSenderIdRecipientId() );
+        } finally {
+            notificationMetadataEntityDao.delete(Key.builder()
+                    .partitionValue(metadataEntity.getIunRecipientId())
+                    .sortValue(metadataEntity.getSentAt().toString())
+                    .build());
+        }
+    }
+
+
     private NotificationMetadataEntity newNotificationMetadata() {
         Map<String,String> tableRowMap = new HashMap<>();
         tableRowMap.put( "iun", IUN );
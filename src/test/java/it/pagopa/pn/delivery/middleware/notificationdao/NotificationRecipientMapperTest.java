@@ -0,0 +1,108 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.*;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.*;
+import it.pagopa.pn.delivery.utils.ModelMapperConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mapstruct.factory.Mappers;
+import org.modelmapper.ModelMapper;
+
+class NotificationRecipientMapperTest {
+
+    private final NotificationRecipientMapper mapper = Mappers.getMapper(NotificationRecipientMapper.class);
+    private final ModelMapper modelMapper = new ModelMapperConfig().modelMapper();
+
+    @Test
+    void toDtoIsEquivalentToModelMapper() {
+        NotificationRecipientEntity entity = NotificationRecipientEntity.builder()
+                .recipientType(RecipientTypeEntity.PF)
+                .recipientId("PF-4fc75df3-0913-407e-bdaa-e50329708b7d")
+                .denomination("Ada Lovelace")
+                .digitalDomicile(NotificationDigitalAddressEntity.builder()
+                        .type(DigitalAddressTypeEntity.PEC)
+                        .address("address@pec.it")
+                        .build())
+                .physicalAddress(NotificationPhysicalAddressEntity.builder()
+                        .at("at")
+                        .address("address")
+                        .addressDetails("addressDetails")
+                        .zip("83100")
+                        .municipality("municipality")
+                        .municipalityDetails("municipalityDetails")
+                        .province("province")
+                        .foreignState("foreignState")
+                        .build())
+                .payment(NotificationPaymentInfoEntity.builder()
+                        .noticeCode("302000100000019421")
+                        .noticeCodeAlternative("302000100000019422")
+                        .creditorTaxId("77777777777")
+                        .pagoPaForm(paymentAttachmentEntity("pagoPaForm"))
+                        .f24flatRate(paymentAttachmentEntity("f24flatRate"))
+                        .build())
+                .build();
+
+        NotificationRecipient dto = mapper.toDto(entity);
+
+        Assertions.assertEquals(modelMapper.map(entity, NotificationRecipient.class), dto);
+        Assertions.assertEquals(entity.getRecipientId(), dto.getInternalId());
+        Assertions.assertNull(dto.getTaxId());
+    }
+
+    @Test
+    void toEntityIsEquivalentToModelMapper() {
+        NotificationRecipient dto = NotificationRecipient.builder()
+                .recipientType(NotificationRecipient.RecipientTypeEnum.PG)
+                .taxId("12345678901")
+                .internalId("PG-internal")
+                .denomination("Denomination")
+                .digitalDomicile(NotificationDigitalAddress.builder()
+                        .type(NotificationDigitalAddress.TypeEnum.PEC)
+                        .address("address@pec.it")
+                        .build())
+                .physicalAddress(NotificationPhysicalAddress.builder()
+                        .address("address")
+                        .zip("00100")
+                        .municipality("municipality")
+                        .province("RM")
+                        .build())
+                .payment(NotificationPaymentInfo.builder()
+                        .noticeCode("302000100000019421")
+                        .creditorTaxId("77777777777")
+                        .pagoPaForm(paymentAttachment("pagoPaForm"))
+                        .f24standard(paymentAttachment("f24standard"))
+                        .build())
+                .build();
+
+        NotificationRecipientEntity entity = mapper.toEntity(dto);
+
+        Assertions.assertEquals(modelMapper.map(dto, NotificationRecipientEntity.class), entity);
+        Assertions.assertEquals(dto.getTaxId(), entity.getRecipientId());
+    }
+
+    @Test
+    void nullSectionsAreKeptNull() {
+        NotificationRecipientEntity entity = NotificationRecipientEntity.builder()
+                .recipientType(RecipientTypeEntity.PF)
+                .recipientId("PF-internal")
+                .build();
+
+        Assertions.assertEquals(modelMapper.map(entity, NotificationRecipient.class), mapper.toDto(entity));
+    }
+
+    private static PaymentAttachmentEntity paymentAttachmentEntity(String key) {
+        return PaymentAttachmentEntity.builder()
+                .contentType("application/pdf")
+                .digests(AttachmentDigestsEntity.builder().sha256("sha256_" + key).build())
+                .ref(AttachmentRefEntity.builder().key(key).versionToken("v1").build())
+                .build();
+    }
+
+    private static NotificationPaymentAttachment paymentAttachment(String key) {
+        return NotificationPaymentAttachment.builder()
+                .contentType("application/pdf")
+                .digests(NotificationAttachmentDigests.builder().sha256("sha256_" + key).build())
+                .ref(NotificationAttachmentBodyRef.builder().key(key).versionToken("v1").build())
+                .build();
+    }
+}
@@ -0,0 +1,89 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationStatusCounterEntity;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import software.amazon.awssdk.core.pagination.sync.SdkIterable;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchGetItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchGetResultPageIterable;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationStatusCounterEntity.FIELD_TTL;
+import static org.mockito.ArgumentMatchers.any;
+
+class NotificationStatusCounterEntityDaoDynamoTest {
+
+    private static final String TABLE_NAME = "NotificationsStatusCounter";
+
+    private DynamoDbEnhancedClient dynamoDbEnhancedClient;
+    private DynamoDbClient dynamoDbClient;
+    private NotificationStatusCounterEntityDaoDynamo dao;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() {
+        dynamoDbEnhancedClient = Mockito.mock(DynamoDbEnhancedClient.class);
+        dynamoDbClient = Mockito.mock(DynamoDbClient.class);
+        DynamoDbTable<NotificationStatusCounterEntity> table = Mockito.mock(DynamoDbTable.class);
+        Mockito.when(table.tableName()).thenReturn(TABLE_NAME);
+        Mockito.when(table.tableSchema()).thenReturn(TableSchema.fromClass(NotificationStatusCounterEntity.class));
+        Mockito.when(dynamoDbEnhancedClient.table(Mockito.eq(TABLE_NAME), any(TableSchema.class))).thenReturn(table);
+
+        PnDeliveryConfigs cfg = Mockito.mock(PnDeliveryConfigs.class);
+        PnDeliveryConfigs.NotificationStatusCounterDao counterDao = new PnDeliveryConfigs.NotificationStatusCounterDao();
+        counterDao.setTableName(TABLE_NAME);
+        Mockito.when(cfg.getNotificationStatusCounterDao()).thenReturn(counterDao);
+        dao = new NotificationStatusCounterEntityDaoDynamo(dynamoDbEnhancedClient, dynamoDbClient, cfg);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void batchGetItemsSplitsKeysInChunksOfOneHundred() {
+        BatchGetResultPageIterable pages = Mockito.mock(BatchGetResultPageIterable.class);
+        SdkIterable<NotificationStatusCounterEntity> found = () -> List.of(
+                NotificationStatusCounterEntity.builder().counterKey("senderId##202303##ACCEPTED").count(1L).build()).iterator();
+        Mockito.when(pages.resultsForTable(any())).thenReturn(found);
+        Mockito.when(dynamoDbEnhancedClient.batchGetItem(any(BatchGetItemEnhancedRequest.class))).thenReturn(pages);
+        List<Key> keys = IntStream.range(0, 132)
+                .mapToObj(i -> Key.builder().partitionValue("senderId##2023##" + i).build())
+                .toList();
+
+        List<NotificationStatusCounterEntity> counters = dao.batchGetItems(keys);
+
+        ArgumentCaptor<BatchGetItemEnhancedRequest> requests = ArgumentCaptor.forClass(BatchGetItemEnhancedRequest.class);
+        Mockito.verify(dynamoDbEnhancedClient, Mockito.times(2)).batchGetItem(requests.capture());
+        Assertions.assertEquals(List.of(100, 32), requests.getAllValues().stream()
+                .map(request -> request.readBatches().get(0).keysAndAttributes().keys().size())
+                .toList());
+        Assertions.assertEquals(2, counters.size());
+    }
+
+    @Test
+    void moveCountersSetsMarkerExpiration() {
+        boolean moved = dao.moveCounters("IUN##IUN", "ACCEPTED", "DELIVERED", 1700000000L,
+                List.of("senderId##202303##ACCEPTED"), List.of("senderId##202303##DELIVERED"));
+
+        ArgumentCaptor<TransactWriteItemsRequest> request = ArgumentCaptor.forClass(TransactWriteItemsRequest.class);
+        Mockito.verify(dynamoDbClient).transactWriteItems(request.capture());
+        Assertions.assertTrue(moved);
+        Update marker = request.getValue().transactItems().get(0).update();
+        Assertions.assertEquals("SET #status = :next, #ttl = :ttl", marker.updateExpression());
+        Assertions.assertEquals(FIELD_TTL, marker.expressionAttributeNames().get("#ttl"));
+        Assertions.assertEquals("1700000000", marker.expressionAttributeValues().get(":ttl").n());
+        // i contatori non scadono
+        Assertions.assertFalse(request.getValue().transactItems().get(1).update().updateExpression().contains("#ttl"));
+    }
+}
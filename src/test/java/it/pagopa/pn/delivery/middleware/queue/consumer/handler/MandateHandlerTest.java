@@ -6,7 +6,10 @@ import it.pagopa.pn.api.dto.events.PnMandateEvent;
 import java.util.function.Consumer;
 
 import it.pagopa.pn.commons.exceptions.PnInternalException;
+import it.pagopa.pn.delivery.pnclient.mandate.PnMandateClientImpl;
 import it.pagopa.pn.delivery.svc.NotificationDelegatedService;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -32,6 +35,9 @@ class MandateHandlerTest {
     @MockBean
     private NotificationDelegatedService notificationDelegatedService;
 
+    @MockBean
+    private PnMandateClientImpl mandateClient;
+
     /**
      * Method under test: {@link MandateHandler#pnDeliveryAcceptedMandateConsumer()}
      */
@@ -131,5 +137,38 @@ class MandateHandlerTest {
         Message<PnMandateEvent.Payload> message = new GenericMessage<>(payload);
         assertThrows(PnInternalException.class, () -> consumer.accept(message));
     }
-}
 
+    /**
+     * Method under test: {@link MandateHandler#pnDeliveryAcceptedMandateConsumer()}
+     */
+    @Test
+    void testPnDeliveryAcceptedMandateConsumerInvalidatesMandatesFirst() {
+        PnMandateEvent.Payload payload = PnMandateEvent.Payload.builder()
+                .mandateId("mandateId")
+                .delegatorId("delegatorId")
+                .delegateId("delegateId")
+                .build();
+
+        mandateHandler.pnDeliveryAcceptedMandateConsumer().accept(new GenericMessage<>(payload));
+
+        InOrder inOrder = Mockito.inOrder(mandateClient, notificationDelegatedService);
+        inOrder.verify(mandateClient).invalidateMandates("delegatorId", "delegateId");
+        inOrder.verify(notificationDelegatedService).handleAcceptedMandate(payload, EventType.MANDATE_ACCEPTED);
+    }
+
+    /**
+     * Method under test: {@link MandateHandler#pnDeliveryRevokedMandateConsumer()}
+     */
+    @Test
+    void testPnDeliveryRevokedMandateConsumerInvalidatesMandates() {
+        PnMandateEvent.Payload payload = PnMandateEvent.Payload.builder()
+                .mandateId("mandateId")
+                .delegatorId("delegatorId")
+                .delegateId("delegateId")
+                .build();
+
+        mandateHandler.pnDeliveryRevokedMandateConsumer().accept(new GenericMessage<>(payload));
+
+        Mockito.verify(mandateClient).invalidateMandates("delegatorId", "delegateId");
+    }
+}
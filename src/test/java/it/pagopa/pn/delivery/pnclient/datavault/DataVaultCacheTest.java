@@ -0,0 +1,128 @@
+package it.pagopa.pn.delivery.pnclient.datavault;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class DataVaultCacheTest {
+
+    private Clock clock;
+    private MeterRegistry meterRegistry;
+    private DataVaultCache<String> cache;
+
+    @BeforeEach
+    void setup() {
+        clock = Mockito.mock(Clock.class);
+        Mockito.when(clock.millis()).thenReturn(1000L);
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new DataVaultCache<>("test", Duration.ofSeconds(10), 2, clock, meterRegistry);
+    }
+
+    @Test
+    void concurrentMissesLoadOnce() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(() -> cache.get("key", () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                await(release);
+                return "value";
+            }));
+            Assertions.assertTrue(loading.await(5, TimeUnit.SECONDS));
+            Future<String> second = executor.submit(() -> cache.get("key", () -> {
+                loads.incrementAndGet();
+                return "other";
+            }));
+            // il secondo chiamante attende la lettura in corso
+            while (count("coalesced") < 1) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            Assertions.assertEquals("value", first.get(5, TimeUnit.SECONDS));
+            Assertions.assertEquals("value", second.get(5, TimeUnit.SECONDS));
+            Assertions.assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void getAllLoadsOnlyMissingKeysInOneCall() {
+        cache.put("a", "A");
+        AtomicInteger loads = new AtomicInteger();
+
+        Map<String, String> values = cache.getAll(List.of("a", "b", "c", "b"), misses -> {
+            loads.incrementAndGet();
+            Assertions.assertEquals(List.of("b", "c"), misses);
+            return Map.of("b", "B");
+        });
+
+        Assertions.assertEquals(Map.of("a", "A", "b", "B"), values);
+        Assertions.assertEquals(1, loads.get());
+        Assertions.assertEquals(1.0, count("hit"));
+        Assertions.assertEquals(2.0, count("miss"));
+    }
+
+    @Test
+    void expiredValuesAreReloaded() {
+        cache.get("key", () -> "old");
+        Mockito.when(clock.millis()).thenReturn(11000L);
+
+        Assertions.assertEquals("new", cache.get("key", () -> "new"));
+    }
+
+    @Test
+    void failuresAreNotCached() {
+        Assertions.assertThrows(IllegalStateException.class, () -> cache.get("key", () -> {
+            throw new IllegalStateException("data vault error");
+        }));
+
+        Assertions.assertEquals("value", cache.get("key", () -> "value"));
+    }
+
+    @Test
+    void leastRecentlyUsedValuesAreEvicted() {
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.get("a", () -> "reloaded");
+        cache.put("c", "C");
+
+        Assertions.assertEquals("A", cache.get("a", () -> "reloaded"));
+        Assertions.assertEquals("reloaded", cache.get("b", () -> "reloaded"));
+    }
+
+    @Test
+    void disabledCacheAlwaysLoads() {
+        DataVaultCache<String> disabled = new DataVaultCache<>("disabled", Duration.ZERO, 2, clock, meterRegistry);
+        disabled.get("key", () -> "old");
+
+        Assertions.assertEquals("new", disabled.get("key", () -> "new"));
+    }
+
+    private double count(String result) {
+        var counter = meterRegistry.find(DataVaultCache.METRIC_LOOKUPS).tag("result", result).counter();
+        return counter != null ? counter.count() : 0;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package it.pagopa.pn.delivery.pnclient.datavault;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import it.pagopa.pn.delivery.PnDeliveryConfigs;
 import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.AddressDto;
 import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.BaseRecipientDto;
@@ -9,6 +10,7 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -18,6 +20,8 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.DefaultUriBuilderFactory;
 
+import java.time.Clock;
+import java.time.Duration;
 import java.util.List;
 import java.util.UUID;
 
@@ -39,7 +43,7 @@ class PnDataVaultClientImplTest {
         this.cfg = Mockito.mock( PnDeliveryConfigs.class );
         Mockito.when( cfg.getDataVaultBaseUrl() ).thenReturn( "http://localhost:8080" );
 //        Mockito.when((restTemplate.getUriTemplateHandler())).thenReturn(new DefaultUriBuilderFactory());
-        this.dataVaultClient = new PnDataVaultClientImpl( restTemplate, cfg );
+        this.dataVaultClient = new PnDataVaultClientImpl( restTemplate, cfg, Clock.systemUTC(), new SimpleMeterRegistry() );
     }
 
     @Test
@@ -97,6 +101,21 @@ class PnDataVaultClientImplTest {
         assertEquals(1, result.size());
     }
 
+    @Test
+    void getNotificationAddressesByIunPassesNullThrough() {
+        //Given
+        ResponseEntity<List<NotificationRecipientAddressesDto>> response = ResponseEntity.ok().build();
+
+        //When
+        Mockito.when( restTemplate.exchange( Mockito.any(RequestEntity.class),Mockito.any(ParameterizedTypeReference.class)))
+                .thenReturn(response);
+
+        List<NotificationRecipientAddressesDto> result =  dataVaultClient.getNotificationAddressesByIun (UUID.randomUUID().toString());
+
+        //Then
+        assertNull(result);
+    }
+
     @Test
     void getNotificationAddressesByIun() {
         //Given
@@ -115,4 +134,65 @@ class PnDataVaultClientImplTest {
         assertNotNull(result);
         assertEquals(1, result.size());
     }
-}
\ No newline at end of file
+
+    @Test
+    void ensureRecipientByExternalIdIsCached() {
+        //Given
+        PnDataVaultClientImpl cachedClient = cachedClient();
+        ResponseEntity<String > response = ResponseEntity.ok( "PF-internalId" );
+        Mockito.when( restTemplate.exchange( Mockito.any(RequestEntity.class),Mockito.any(ParameterizedTypeReference.class)))
+                .thenReturn(response);
+
+        //When
+        String first = cachedClient.ensureRecipientByExternalId( RecipientType.PF, "RSSMRA85T10A562S" );
+        String second = cachedClient.ensureRecipientByExternalId( RecipientType.PF, "RSSMRA85T10A562S" );
+
+        //Then
+        assertEquals( "PF-internalId", first );
+        assertEquals( first, second );
+        Mockito.verify( restTemplate, Mockito.times( 1 ) ).exchange( Mockito.any(RequestEntity.class),Mockito.any(ParameterizedTypeReference.class));
+    }
+
+    @Test
+    void getRecipientDenominationByInternalIdReadsOnlyMisses() {
+        //Given
+        PnDataVaultClientImpl cachedClient = cachedClient();
+        String cachedId = "PF-cached";
+        String missingId = "PF-missing";
+        Mockito.when( restTemplate.exchange( Mockito.any(RequestEntity.class),Mockito.any(ParameterizedTypeReference.class)))
+                .thenReturn( ResponseEntity.ok( List.of( recipient( cachedId, "RSSMRA85T10A562S" ) ) ) )
+                .thenReturn( ResponseEntity.ok( List.of( recipient( missingId, "VRDGPP80A01H501U" ) ) ) );
+        cachedClient.getRecipientDenominationByInternalId( List.of( cachedId ) );
+
+        //When
+        List<BaseRecipientDto> result = cachedClient.getRecipientDenominationByInternalId( List.of( cachedId, missingId ) );
+        String internalId = cachedClient.ensureRecipientByExternalId( RecipientType.PF, "VRDGPP80A01H501U" );
+
+        //Then
+        assertEquals( List.of( cachedId, missingId ), result.stream().map( BaseRecipientDto::getInternalId ).toList() );
+        ArgumentCaptor<RequestEntity> captor = ArgumentCaptor.forClass( RequestEntity.class );
+        Mockito.verify( restTemplate, Mockito.times( 2 ) ).exchange( captor.capture(),Mockito.any(ParameterizedTypeReference.class));
+        String secondUrl = captor.getAllValues().get( 1 ).getUrl().toString();
+        assertTrue( secondUrl.contains( missingId ) );
+        assertFalse( secondUrl.contains( cachedId ) );
+        // l'associazione inversa letta con la denominazione evita la chiamata di ensure
+        assertEquals( missingId, internalId );
+    }
+
+    private PnDataVaultClientImpl cachedClient() {
+        PnDeliveryConfigs cachedCfg = Mockito.mock( PnDeliveryConfigs.class );
+        Mockito.when( cachedCfg.getDataVaultBaseUrl() ).thenReturn( "http://localhost:8080" );
+        Mockito.when( cachedCfg.getDataVaultCacheIdTtl() ).thenReturn( Duration.ofHours( 1 ) );
+        Mockito.when( cachedCfg.getDataVaultCacheDenominationTtl() ).thenReturn( Duration.ofMinutes( 1 ) );
+        return new PnDataVaultClientImpl( restTemplate, cachedCfg, Clock.systemUTC(), new SimpleMeterRegistry() );
+    }
+
+    private static BaseRecipientDto recipient(String internalId, String taxId) {
+        BaseRecipientDto recipient = new BaseRecipientDto();
+        recipient.setInternalId( internalId );
+        recipient.setTaxId( taxId );
+        recipient.setRecipientType( RecipientType.PF );
+        recipient.setDenomination( "denominazione" );
+        return recipient;
+    }
+}
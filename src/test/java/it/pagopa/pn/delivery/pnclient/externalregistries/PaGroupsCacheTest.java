@@ -0,0 +1,140 @@
+package it.pagopa.pn.delivery.pnclient.externalregistries;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.pagopa.pn.delivery.generated.openapi.clients.externalregistries.model.PaGroup;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+class PaGroupsCacheTest {
+
+    private static final String SENDER_ID = "senderId";
+
+    private Clock clock;
+    private ExecutorService refreshExecutor;
+    private List<List<PaGroup>> responses;
+    private int loads;
+    private PaGroupsCache cache;
+
+    @BeforeEach
+    void setup() {
+        clock = Mockito.mock(Clock.class);
+        Mockito.when(clock.millis()).thenReturn(0L);
+        refreshExecutor = Mockito.mock(ExecutorService.class);
+        responses = new ArrayList<>();
+        loads = 0;
+        Function<String, List<PaGroup>> loader = senderId -> {
+            loads++;
+            return responses.remove(0);
+        };
+        cache = new PaGroupsCache(loader, Duration.ofSeconds(60), Duration.ofSeconds(600), Duration.ofSeconds(30),
+                clock, new SimpleMeterRegistry(), refreshExecutor);
+    }
+
+    @Test
+    void freshGroupsAreServedFromCache() {
+        responses.add(List.of(group("g1", "first")));
+
+        cache.get(SENDER_ID);
+        Mockito.when(clock.millis()).thenReturn(59_000L);
+        PaGroups groups = cache.get(SENDER_ID);
+
+        Assertions.assertEquals("first", groups.get("g1").getName());
+        Assertions.assertEquals(1, loads);
+        Mockito.verifyNoInteractions(refreshExecutor);
+    }
+
+    @Test
+    void staleGroupsAreServedWhileRefreshing() {
+        responses.add(List.of(group("g1", "first")));
+        responses.add(List.of(group("g1", "second")));
+        cache.get(SENDER_ID);
+
+        Mockito.when(clock.millis()).thenReturn(61_000L);
+        PaGroups stale = cache.get(SENDER_ID);
+
+        Assertions.assertEquals("first", stale.get("g1").getName());
+        ArgumentCaptor<Runnable> refresh = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.verify(refreshExecutor).execute(refresh.capture());
+        refresh.getValue().run();
+        Assertions.assertEquals("second", cache.get(SENDER_ID).get("g1").getName());
+        Assertions.assertEquals(2, loads);
+    }
+
+    @Test
+    void failedRefreshKeepsStaleGroups() {
+        responses.add(List.of(group("g1", "first")));
+        cache.get(SENDER_ID);
+        Mockito.when(clock.millis()).thenReturn(61_000L);
+
+        cache.get(SENDER_ID);
+        ArgumentCaptor<Runnable> refresh = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.verify(refreshExecutor).execute(refresh.capture());
+        // nessuna risposta disponibile: il loader fallisce
+        Assertions.assertDoesNotThrow(() -> refresh.getValue().run());
+
+        Assertions.assertEquals("first", cache.get(SENDER_ID).get("g1").getName());
+    }
+
+    @Test
+    void rejectedRefreshServesStaleGroups() {
+        responses.add(List.of(group("g1", "first")));
+        cache.get(SENDER_ID);
+        Mockito.when(clock.millis()).thenReturn(61_000L);
+        Mockito.doThrow(new RejectedExecutionException()).when(refreshExecutor).execute(Mockito.any());
+
+        Assertions.assertEquals("first", cache.get(SENDER_ID).get("g1").getName());
+    }
+
+    @Test
+    void expiredGroupsAreReadSynchronously() {
+        responses.add(List.of(group("g1", "first")));
+        responses.add(List.of(group("g1", "second")));
+        cache.get(SENDER_ID);
+
+        Mockito.when(clock.millis()).thenReturn(600_000L);
+
+        Assertions.assertEquals("second", cache.get(SENDER_ID).get("g1").getName());
+        Mockito.verifyNoInteractions(refreshExecutor);
+    }
+
+    @Test
+    void senderWithoutGroupsIsCachedForNegativeTtl() {
+        responses.add(List.of());
+        responses.add(List.of(group("g1", "first")));
+
+        Assertions.assertTrue(cache.get(SENDER_ID).isEmpty());
+        Mockito.when(clock.millis()).thenReturn(29_000L);
+        Assertions.assertTrue(cache.get(SENDER_ID).isEmpty());
+        Assertions.assertEquals(1, loads);
+
+        Mockito.when(clock.millis()).thenReturn(30_000L);
+        Assertions.assertEquals("first", cache.get(SENDER_ID).get("g1").getName());
+        Assertions.assertEquals(2, loads);
+    }
+
+    @Test
+    void failuresAreNotCached() {
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> cache.get(SENDER_ID));
+
+        responses.add(List.of(group("g1", "first")));
+        Assertions.assertEquals("first", cache.get(SENDER_ID).get("g1").getName());
+    }
+
+    private static PaGroup group(String id, String name) {
+        PaGroup group = new PaGroup();
+        group.setId(id);
+        group.setName(name);
+        return group;
+    }
+}
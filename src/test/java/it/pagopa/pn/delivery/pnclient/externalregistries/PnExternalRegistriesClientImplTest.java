@@ -1,5 +1,8 @@
 package it.pagopa.pn.delivery.pnclient.externalregistries;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import it.pagopa.pn.delivery.PnDeliveryConfigs;
 import it.pagopa.pn.delivery.exception.PnNotFoundException;
 import it.pagopa.pn.delivery.generated.openapi.clients.externalregistries.model.PaGroup;
@@ -18,8 +21,14 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.DefaultUriBuilderFactory;
 
+import java.time.Clock;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 
 class PnExternalRegistriesClientImplTest {
@@ -41,7 +50,8 @@ class PnExternalRegistriesClientImplTest {
         this.cfg = Mockito.mock( PnDeliveryConfigs.class );
         Mockito.when( cfg.getExternalRegistriesBaseUrl() ).thenReturn( "http://localhost:8080" );
 //        Mockito.when((restTemplate.getUriTemplateHandler())).thenReturn(new DefaultUriBuilderFactory());
-        this.externalRegistriesClient = new PnExternalRegistriesClientImpl( restTemplate, cfg );
+        this.externalRegistriesClient = new PnExternalRegistriesClientImpl( restTemplate, cfg, Clock.systemUTC(),
+                new SimpleMeterRegistry(), Mockito.mock( ExecutorService.class ) );
     }
 
     @ExtendWith(MockitoExtension.class)
@@ -102,4 +112,57 @@ class PnExternalRegistriesClientImplTest {
         Assertions.assertTrue( groups.isEmpty() );
     }
 
+    @ExtendWith(MockitoExtension.class)
+    @Test
+    void concurrentSearchesReadGroupsOnce() throws Exception {
+        int searches = 8;
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        PnDeliveryConfigs cachedCfg = Mockito.mock( PnDeliveryConfigs.class );
+        Mockito.when( cachedCfg.getExternalRegistriesBaseUrl() ).thenReturn( "http://localhost:8080" );
+        Mockito.when( cachedCfg.getPaGroupsCacheRefreshAfter() ).thenReturn( Duration.ofMinutes( 1 ) );
+        Mockito.when( cachedCfg.getPaGroupsCacheTtl() ).thenReturn( Duration.ofMinutes( 10 ) );
+        Mockito.when( cachedCfg.getPaGroupsCacheNegativeTtl() ).thenReturn( Duration.ofMinutes( 1 ) );
+        PnExternalRegistriesClientImpl cachedClient = new PnExternalRegistriesClientImpl( restTemplate, cachedCfg, Clock.systemUTC(),
+                meterRegistry, Mockito.mock( ExecutorService.class ) );
+
+        PaGroup group = new PaGroup();
+        group.setId( "123456789" );
+        group.setName( "amministrazione" );
+        Mockito.when( restTemplate.exchange(  Mockito.any(RequestEntity.class), Mockito.any(ParameterizedTypeReference.class)))
+                .thenAnswer( invocation -> {
+                    // la risposta arriva quando tutte le ricerche hanno chiesto i gruppi
+                    awaitMisses( meterRegistry, searches );
+                    return ResponseEntity.ok( List.of( group ) );
+                } );
+
+        // When
+        ExecutorService executor = Executors.newFixedThreadPool( searches );
+        List<Future<PaGroups>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < searches; i++) {
+                results.add( executor.submit( () -> cachedClient.getPaGroups( SENDER_ID ) ) );
+            }
+            for (Future<PaGroups> result : results) {
+                Assertions.assertEquals( "amministrazione", result.get( 5, TimeUnit.SECONDS ).get( "123456789" ).getName() );
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Then
+        Mockito.verify( restTemplate, Mockito.times( 1 ) ).exchange( Mockito.any(RequestEntity.class), Mockito.any(ParameterizedTypeReference.class));
+        Assertions.assertEquals( 1, cachedClient.getGroups( SENDER_ID ).size() );
+        Mockito.verify( restTemplate, Mockito.times( 1 ) ).exchange( Mockito.any(RequestEntity.class), Mockito.any(ParameterizedTypeReference.class));
+    }
+
+    private static void awaitMisses(MeterRegistry meterRegistry, int misses) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while ( System.currentTimeMillis() < deadline ) {
+            Counter counter = meterRegistry.find( PaGroupsCache.METRIC_LOOKUPS ).tag( "result", "miss" ).counter();
+            if ( counter != null && counter.count() >= misses )
+                return;
+            Thread.sleep( 5 );
+        }
+    }
+
 }
@@ -0,0 +1,105 @@
+package it.pagopa.pn.delivery.pnclient.mandate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.pagopa.pn.delivery.generated.openapi.clients.mandate.model.InternalMandateDto;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class MandateCacheTest {
+
+    private Clock clock;
+    private MandateCache cache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setup() {
+        clock = Mockito.mock(Clock.class);
+        Mockito.when(clock.millis()).thenReturn(0L);
+        cache = new MandateCache(Duration.ofSeconds(30), 2, clock, new SimpleMeterRegistry());
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void mandatesAreServedFromCacheUntilExpired() {
+        get("key", "delegator", "delegate");
+        Mockito.when(clock.millis()).thenReturn(29_000L);
+        get("key", "delegator", "delegate");
+        Assertions.assertEquals(1, loads.get());
+
+        Mockito.when(clock.millis()).thenReturn(30_000L);
+        get("key", "delegator", "delegate");
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidationRemovesEntriesOfDelegatorAndDelegate() {
+        get("byDelegate", "delegator", "delegate");
+        get("other", "otherDelegator", "otherDelegate");
+
+        cache.invalidate(null, "delegate");
+
+        Assertions.assertNull(cache.lookup("byDelegate"));
+        Assertions.assertNotNull(cache.lookup("other"));
+    }
+
+    @Test
+    void invalidationWithoutIdsClearsCache() {
+        get("key", "delegator", "delegate");
+
+        cache.invalidate(null, null);
+
+        Assertions.assertNull(cache.lookup("key"));
+    }
+
+    @Test
+    void readStartedBeforeInvalidationIsNotStored() {
+        cache.get("key", List.of(MandateCache.delegateOwner("delegate")), () -> {
+            // l'evento arriva durante la lettura
+            cache.invalidate("delegator", "delegate");
+            return List.of(mandate("delegator", "delegate"));
+        });
+
+        Assertions.assertNull(cache.lookup("key"));
+    }
+
+    @Test
+    void leastRecentlyUsedEntriesAreEvicted() {
+        get("a", "delegator", "delegate");
+        get("b", "delegator", "delegate");
+        cache.lookup("a");
+        get("c", "delegator", "delegate");
+
+        Assertions.assertNotNull(cache.lookup("a"));
+        Assertions.assertNull(cache.lookup("b"));
+    }
+
+    @Test
+    void disabledCacheAlwaysLoads() {
+        MandateCache disabled = new MandateCache(Duration.ZERO, 2, clock, new SimpleMeterRegistry());
+        disabled.get("key", List.of(), () -> List.of(mandate("delegator", "delegate")));
+
+        Assertions.assertNull(disabled.lookup("key"));
+    }
+
+    private List<InternalMandateDto> get(String key, String delegator, String delegate) {
+        return cache.get(key, List.of(MandateCache.delegatorOwner(delegator)), () -> {
+            loads.incrementAndGet();
+            return List.of(mandate(delegator, delegate));
+        });
+    }
+
+    private static InternalMandateDto mandate(String delegator, String delegate) {
+        InternalMandateDto mandate = new InternalMandateDto();
+        mandate.setMandateId("mandateId");
+        mandate.setDelegator(delegator);
+        mandate.setDelegate(delegate);
+        return mandate;
+    }
+}
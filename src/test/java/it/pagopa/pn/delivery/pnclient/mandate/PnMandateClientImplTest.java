@@ -1,5 +1,6 @@
 package it.pagopa.pn.delivery.pnclient.mandate;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import it.pagopa.pn.delivery.PnDeliveryConfigs;
 import it.pagopa.pn.delivery.generated.openapi.clients.mandate.model.CxTypeAuthFleet;
 import it.pagopa.pn.delivery.generated.openapi.clients.mandate.model.DelegateType;
@@ -17,12 +18,13 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.DefaultUriBuilderFactory;
 
+import java.time.Clock;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
 
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class PnMandateClientImplTest {
@@ -44,7 +46,8 @@ class PnMandateClientImplTest {
     void setup() {
         this.cfg = mock(PnDeliveryConfigs.class);
         when(cfg.getMandateBaseUrl()).thenReturn("http://localhost:8080");
-        this.mandateClient = new PnMandateClientImpl(restTemplate, cfg);
+        when(cfg.getMandateCacheTtl()).thenReturn(Duration.ofSeconds(30));
+        this.mandateClient = new PnMandateClientImpl(restTemplate, cfg, Clock.systemUTC(), new SimpleMeterRegistry());
     }
 
     @Test
@@ -120,4 +123,57 @@ class PnMandateClientImplTest {
         Assertions.assertNotNull(result);
     }
 
+    @Test
+    void mandatesByDelegateAreReadOnceUntilInvalidated() {
+        ResponseEntity<List<InternalMandateDto>> response = ResponseEntity.ok(List.of(mandate(MANDATE_ID)));
+        when(restTemplate.exchange(any(RequestEntity.class), any(ParameterizedTypeReference.class)))
+                .thenReturn(response);
+
+        mandateClient.listMandatesByDelegate(DELEGATE, MANDATE_ID, CxTypeAuthFleet.PF, List.of("g2", "g1"));
+        List<InternalMandateDto> cached = mandateClient.listMandatesByDelegate(DELEGATE, MANDATE_ID, CxTypeAuthFleet.PF, List.of("g1", "g2"));
+
+        Assertions.assertEquals(1, cached.size());
+        verify(restTemplate, times(1)).exchange(any(RequestEntity.class), any(ParameterizedTypeReference.class));
+
+        // l'evento sulla delega riguarda il delegante: anche le letture per delegato vengono invalidate
+        mandateClient.invalidateMandates(DELEGATOR, null);
+        mandateClient.listMandatesByDelegate(DELEGATE, MANDATE_ID, CxTypeAuthFleet.PF, List.of("g1", "g2"));
+
+        verify(restTemplate, times(2)).exchange(any(RequestEntity.class), any(ParameterizedTypeReference.class));
+    }
+
+    @Test
+    void mandatesByDelegatorsReadOnlyMissingDelegators() {
+        MandateByDelegatorRequestDto first = new MandateByDelegatorRequestDto();
+        first.setMandateId(MANDATE_ID);
+        first.setDelegatorId(DELEGATOR);
+        MandateByDelegatorRequestDto second = new MandateByDelegatorRequestDto();
+        second.setMandateId("mandate_id_2");
+        second.setDelegatorId("delegator_2");
+
+        when(restTemplate.exchange(any(RequestEntity.class), any(ParameterizedTypeReference.class)))
+                .thenReturn(ResponseEntity.ok(List.of(mandate(MANDATE_ID))))
+                .thenReturn(ResponseEntity.ok(List.of(mandate("mandate_id_2"))));
+
+        List<InternalMandateDto> firstResult = mandateClient.listMandatesByDelegators(DelegateType.PG, null, List.of(first));
+        List<InternalMandateDto> secondResult = mandateClient.listMandatesByDelegators(DelegateType.PG, null, List.of(first, second));
+
+        Assertions.assertEquals(1, firstResult.size());
+        Assertions.assertEquals(2, secondResult.size());
+        verify(restTemplate, times(2)).exchange(any(RequestEntity.class), any(ParameterizedTypeReference.class));
+
+        List<InternalMandateDto> cached = mandateClient.listMandatesByDelegators(DelegateType.PG, null, List.of(second, first));
+        Assertions.assertEquals(2, cached.size());
+        verify(restTemplate, times(2)).exchange(any(RequestEntity.class), any(ParameterizedTypeReference.class));
+    }
+
+    private static InternalMandateDto mandate(String mandateId) {
+        InternalMandateDto internalMandateDto = new InternalMandateDto();
+        internalMandateDto.setDelegate(DELEGATE);
+        internalMandateDto.setDelegator(DELEGATOR);
+        internalMandateDto.mandateId(mandateId);
+        internalMandateDto.setDatefrom(MANDATE_DATE_FROM);
+        return internalMandateDto;
+    }
+
 }
@@ -10,6 +10,7 @@ import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
 import it.pagopa.pn.delivery.models.ResultPaginationDto;
 import it.pagopa.pn.delivery.svc.NotificationAttachmentService;
 import it.pagopa.pn.delivery.svc.NotificationQRService;
+import it.pagopa.pn.delivery.svc.NotificationStatusCounterService;
 import it.pagopa.pn.delivery.svc.search.NotificationRetrieverService;
 import it.pagopa.pn.delivery.utils.PnDeliveryRestConstants;
 import org.junit.jupiter.api.Test;
@@ -58,6 +59,9 @@ class NotificationSearchControllerTest {
     @MockBean
     private NotificationQRService qrService;
 
+    @MockBean
+    private NotificationStatusCounterService statusCounterService;
+
 
     @MockBean
     private PnDeliveryConfigs cfg;
@@ -10,6 +10,7 @@ import it.pagopa.pn.delivery.models.InternalAuthHeader;
 import it.pagopa.pn.delivery.models.InternalNotification;
 import it.pagopa.pn.delivery.models.ResultPaginationDto;
 import it.pagopa.pn.delivery.svc.*;
+import it.pagopa.pn.delivery.svc.search.NotificationExportService;
 import it.pagopa.pn.delivery.svc.search.NotificationRetrieverService;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.jupiter.api.Test;
@@ -19,10 +20,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Mono;
 
+import java.io.ByteArrayInputStream;
 import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.util.Arrays;
@@ -84,6 +87,9 @@ class PnInternalNotificationsControllerTest {
     @MockBean
     private PaymentEventsService paymentEventsService;
 
+    @MockBean
+    private NotificationExportService exportService;
+
     @MockBean
     private PnDeliveryConfigs cfg;
 
@@ -177,6 +183,62 @@ class PnInternalNotificationsControllerTest {
         Mockito.verify(retrieveSvc).searchNotification(eq(searchDto), any(), any());
     }
 
+    @Test
+    void exportNotificationsPrivateBySender() {
+        //Given
+        byte[] exportBody = new byte[] { 0x1f, (byte) 0x8b };
+        Mockito.when(exportService.exportNotifications(any(InputSearchNotificationDto.class), any()))
+                .thenReturn(new ByteArrayInputStream(exportBody));
+
+        //Then
+        webTestClient.get()
+                .uri(uriBuilder ->
+                        uriBuilder
+                                .path( "/delivery-private/search/export")
+                                .queryParam("senderId", SENDER_ID)
+                                .queryParam("startDate", START_DATE)
+                                .queryParam("endDate", END_DATE)
+                                .queryParam("status", STATUS)
+                                .queryParam("fromKey", NEXT_PAGES_KEY)
+                                .build())
+                .accept(MediaType.ALL)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .expectHeader().contentType("application/x-ndjson")
+                .expectBody(byte[].class).isEqualTo(exportBody);
+
+        InputSearchNotificationDto searchDto = new InputSearchNotificationDto().toBuilder()
+                .bySender(true)
+                .senderReceiverId(SENDER_ID)
+                .startDate(Instant.parse(START_DATE))
+                .endDate(Instant.parse(END_DATE))
+                .statuses(List.of(STATUS))
+                .build();
+
+        Mockito.verify(exportService).exportNotifications(searchDto, NEXT_PAGES_KEY);
+    }
+
+    @Test
+    void exportNotificationsPrivateBySenderAndRecipientFailure() {
+        webTestClient.get()
+                .uri(uriBuilder ->
+                        uriBuilder
+                                .path( "/delivery-private/search/export")
+                                .queryParam("senderId", SENDER_ID)
+                                .queryParam("recipientId", RECIPIENT_ID)
+                                .queryParam("startDate", START_DATE)
+                                .queryParam("endDate", END_DATE)
+                                .build())
+                .accept(MediaType.ALL)
+                .exchange()
+                .expectStatus()
+                .is5xxServerError();
+
+        Mockito.verifyNoInteractions(exportService);
+    }
+
     @Test
     void searchNotificationsPrivate() {
         //Given
@@ -170,6 +170,49 @@ class PnNotificationInputControllerTest {
 				.isEqualTo(HttpStatus.CONFLICT);
 	}
 
+	@Test
+	void postBulkPartialResults() {
+		// Given
+		NewNotificationRequest first = newNotificationRequest();
+		NewNotificationRequest second = newNotificationRequest();
+		NewNotificationsRequest request = new NewNotificationsRequest();
+		request.setNotifications( List.of( first, second ) );
+		NewNotificationResponse savedNotification = NewNotificationResponse.builder()
+				.notificationRequestId( Base64Utils.encodeToString(IUN.getBytes(StandardCharsets.UTF_8)) )
+				.paProtocolNumber( first.getPaProtocolNumber() )
+				.build();
+		PnIdConflictException conflict = new PnIdConflictException( Map.of( "noticeCode", "duplicatedNoticeCode" ) );
+
+		// When
+		Mockito.when( deliveryService.receiveNotifications(
+						Mockito.anyString(),
+						Mockito.anyList(),
+						Mockito.anyString(),
+						Mockito.isNull())
+				).thenReturn( List.of(
+						new NotificationReceiverService.NewNotificationResult( savedNotification, null ),
+						new NotificationReceiverService.NewNotificationResult( null, conflict ) ) );
+
+		// Then
+		webTestClient.post()
+				.uri("/delivery/requests/bulk")
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.body(Mono.just(request), NewNotificationsRequest.class)
+				.header(PnDeliveryRestConstants.CX_ID_HEADER, PA_ID)
+				.header(PnDeliveryRestConstants.UID_HEADER, "asdasd")
+				.header(PnDeliveryRestConstants.CX_TYPE_HEADER, "PA"  )
+				.header(PnDeliveryRestConstants.SOURCE_CHANNEL_HEADER, X_PAGOPA_PN_SRC_CH)
+				.exchange()
+				.expectStatus().isAccepted()
+				.expectBody()
+				.jsonPath( "$.results[0].response.notificationRequestId" ).isEqualTo( savedNotification.getNotificationRequestId() )
+				.jsonPath( "$.results[1].paProtocolNumber" ).isEqualTo( second.getPaProtocolNumber() )
+				.jsonPath( "$.results[1].error.status" ).isEqualTo( 409 );
+
+		Mockito.verify( deliveryService ).receiveNotifications( PA_ID, List.of( first, second ), X_PAGOPA_PN_SRC_CH, null );
+	}
+
 	@Test
 	void postFailureBindExc() {
 		// Given
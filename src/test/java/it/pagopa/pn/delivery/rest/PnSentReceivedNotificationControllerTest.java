@@ -14,6 +14,7 @@ import it.pagopa.pn.delivery.models.InternalNotification;
 import it.pagopa.pn.delivery.svc.NotificationAttachmentService;
 import it.pagopa.pn.delivery.svc.NotificationAttachmentService.InternalAttachmentWithFileKey;
 import it.pagopa.pn.delivery.svc.NotificationQRService;
+import it.pagopa.pn.delivery.svc.NotificationStatusCounterService;
 import it.pagopa.pn.delivery.svc.search.NotificationRetrieverService;
 import it.pagopa.pn.delivery.utils.PnDeliveryRestConstants;
 import org.apache.commons.codec.digest.DigestUtils;
@@ -67,6 +68,7 @@ class PnSentReceivedNotificationControllerTest {
 	private static final NotificationStatus STATUS = NotificationStatus.IN_VALIDATION;
 	private static final String RECIPIENT_ID = "CGNNMO80A01H501M";
 	public static final List<String> GROUPS = List.of("Group1", "Group2");
+	private static final String ETAG = "\"0123456789abcdef0123456789abcdef\"";
 
 	@Autowired
     WebTestClient webTestClient;
@@ -80,6 +82,9 @@ class PnSentReceivedNotificationControllerTest {
 	@MockBean
 	private NotificationQRService qrService;
 
+	@MockBean
+	private NotificationStatusCounterService statusCounterService;
+
 	@MockBean
 	private PnDeliveryConfigs cfg;
 
@@ -92,7 +97,7 @@ class PnSentReceivedNotificationControllerTest {
 		InternalNotification notification = newNotification();
 		
 		// When
-		Mockito.when( svc.getNotificationInformationWithSenderIdCheck( anyString(), anyString(), anyList() ) ).thenReturn( notification );
+		Mockito.when( svc.getVersionedNotificationWithSenderIdCheck( anyString(), anyString(), anyList(), isNull() ) ).thenReturn( new NotificationRetrieverService.VersionedNotification( notification, ETAG ) );
 				
 		// Then		
 		webTestClient.get()
@@ -107,9 +112,36 @@ class PnSentReceivedNotificationControllerTest {
 			.exchange()
 			.expectStatus()
 			.isOk()
+			.expectHeader().valueEquals( HttpHeaders.ETAG, ETAG )
 			.expectBody(FullSentNotification.class);
 		
-		Mockito.verify( svc ).getNotificationInformationWithSenderIdCheck(IUN, PA_ID, GROUPS);
+		Mockito.verify( svc ).getVersionedNotificationWithSenderIdCheck(IUN, PA_ID, GROUPS, null);
+	}
+
+	@Test
+	void getSentNotificationNotModified() {
+		// When
+		Mockito.when( svc.getVersionedNotificationWithSenderIdCheck( anyString(), anyString(), anyList(), anyString() ) )
+				.thenReturn( new NotificationRetrieverService.VersionedNotification( null, ETAG ) );
+
+		// Then
+		webTestClient.get()
+				.uri( "/delivery/notifications/sent/" + IUN  )
+				.accept( MediaType.ALL )
+				.header(HttpHeaders.ACCEPT, "application/json")
+				.header(HttpHeaders.IF_NONE_MATCH, ETAG )
+				.header( PnDeliveryRestConstants.CX_ID_HEADER, PA_ID )
+				.header(PnDeliveryRestConstants.UID_HEADER, "asdasd")
+				.header(PnDeliveryRestConstants.CX_TYPE_HEADER, CX_TYPE_PF)
+				.header(PnDeliveryRestConstants.CX_GROUPS_HEADER, GROUPS.get( 0 ) )
+				.header(PnDeliveryRestConstants.CX_GROUPS_HEADER,  GROUPS.get( 1 ) )
+				.exchange()
+				.expectStatus()
+				.isNotModified()
+				.expectHeader().valueEquals( HttpHeaders.ETAG, ETAG )
+				.expectBody().isEmpty();
+
+		Mockito.verify( svc ).getVersionedNotificationWithSenderIdCheck(IUN, PA_ID, GROUPS, ETAG);
 	}
 
 	@Test
@@ -119,7 +151,7 @@ class PnSentReceivedNotificationControllerTest {
 		notification.setNotificationStatus( NotificationStatus.IN_VALIDATION );
 
 		// When
-		Mockito.when( svc.getNotificationInformationWithSenderIdCheck( anyString(), anyString(), anyList() ) ).thenReturn( notification );
+		Mockito.when( svc.getVersionedNotificationWithSenderIdCheck( anyString(), anyString(), anyList(), isNull() ) ).thenReturn( new NotificationRetrieverService.VersionedNotification( notification, ETAG ) );
 
 		// Then
 		webTestClient.get()
@@ -135,10 +167,46 @@ class PnSentReceivedNotificationControllerTest {
 				.expectStatus()
 				.isNotFound();
 
-		Mockito.verify( svc ).getNotificationInformationWithSenderIdCheck(IUN, PA_ID, GROUPS);
+		Mockito.verify( svc ).getVersionedNotificationWithSenderIdCheck(IUN, PA_ID, GROUPS, null);
 	}
 
 
+	@Test
+	void getSentNotificationDetailsPartialResults() {
+		// Given
+		String otherIun = "BBBB-BBBB-BBBB-202301-C-1";
+		SentNotificationDetailsRequest request = new SentNotificationDetailsRequest();
+		request.setIuns( List.of( IUN, otherIun ) );
+
+		// When
+		Mockito.when( svc.getNotificationsInformationWithSenderIdCheck( anyList(), anyString(), anyList() ) ).thenReturn( List.of(
+				new NotificationRetrieverService.NotificationResult( IUN, newNotification(), null ),
+				new NotificationRetrieverService.NotificationResult( otherIun, null, new PnNotificationNotFoundException( "Notification not found for iun=" + otherIun ) )
+		) );
+
+		// Then
+		webTestClient.post()
+				.uri( "/delivery/notifications/sent/details" )
+				.accept( MediaType.APPLICATION_JSON )
+				.contentType( MediaType.APPLICATION_JSON )
+				.header( PnDeliveryRestConstants.CX_ID_HEADER, PA_ID )
+				.header(PnDeliveryRestConstants.UID_HEADER, "asdasd")
+				.header(PnDeliveryRestConstants.CX_TYPE_HEADER, CX_TYPE_PA)
+				.header(PnDeliveryRestConstants.CX_GROUPS_HEADER, GROUPS.get( 0 ) )
+				.header(PnDeliveryRestConstants.CX_GROUPS_HEADER,  GROUPS.get( 1 ) )
+				.body( Mono.just( request ), SentNotificationDetailsRequest.class )
+				.exchange()
+				.expectStatus()
+				.isOk()
+				.expectBody()
+				.jsonPath( "$.results[0].iun" ).isEqualTo( IUN )
+				.jsonPath( "$.results[0].notification.iun" ).isEqualTo( "IUN_01" )
+				.jsonPath( "$.results[1].iun" ).isEqualTo( otherIun )
+				.jsonPath( "$.results[1].error.status" ).isEqualTo( 404 );
+
+		Mockito.verify( svc ).getNotificationsInformationWithSenderIdCheck( List.of( IUN, otherIun ), PA_ID, GROUPS );
+	}
+
 	@Test
 	void getSentNotificationNotFoundCauseREFUSED() {
 		// Given
@@ -146,7 +214,7 @@ class PnSentReceivedNotificationControllerTest {
 		notification.setNotificationStatus( NotificationStatus.REFUSED );
 
 		// When
-		Mockito.when( svc.getNotificationInformationWithSenderIdCheck( anyString(), anyString(), anyList() ) ).thenReturn( notification );
+		Mockito.when( svc.getVersionedNotificationWithSenderIdCheck( anyString(), anyString(), anyList(), isNull() ) ).thenReturn( new NotificationRetrieverService.VersionedNotification( notification, ETAG ) );
 
 		// Then
 		webTestClient.get()
@@ -162,7 +230,7 @@ class PnSentReceivedNotificationControllerTest {
 				.expectStatus()
 				.isNotFound();
 
-		Mockito.verify( svc ).getNotificationInformationWithSenderIdCheck(IUN, PA_ID, GROUPS);
+		Mockito.verify( svc ).getVersionedNotificationWithSenderIdCheck(IUN, PA_ID, GROUPS, null);
 	}
 
 
@@ -321,8 +389,8 @@ class PnSentReceivedNotificationControllerTest {
 		InternalAuthHeader internalAuthHeader = new InternalAuthHeader(CX_TYPE_PF, CX_ID, UID, List.of("asdasd"));
 
 		// When
-		Mockito.when(svc.getNotificationAndNotifyViewedEvent(Mockito.anyString(), Mockito.any(InternalAuthHeader.class), eq(null)))
-				.thenReturn( notification );
+		Mockito.when(svc.getVersionedNotificationAndNotifyViewedEvent(Mockito.anyString(), Mockito.any(InternalAuthHeader.class), eq(null), isNull()))
+				.thenReturn( new NotificationRetrieverService.VersionedNotification( notification, ETAG ) );
 
 		// Then
 		webTestClient.get()
@@ -338,14 +406,41 @@ class PnSentReceivedNotificationControllerTest {
 				.isOk()
 				.expectBody(FullReceivedNotification.class);
 
-		Mockito.verify(svc).getNotificationAndNotifyViewedEvent(IUN, internalAuthHeader, null);
+		Mockito.verify(svc).getVersionedNotificationAndNotifyViewedEvent(IUN, internalAuthHeader, null, null);
+	}
+
+	@Test
+	void getReceivedNotificationNotModified() {
+		// Given
+		InternalAuthHeader internalAuthHeader = new InternalAuthHeader(CX_TYPE_PF, CX_ID, UID, List.of("asdasd"));
+
+		// When
+		Mockito.when(svc.getVersionedNotificationAndNotifyViewedEvent(Mockito.anyString(), Mockito.any(InternalAuthHeader.class), eq(null), anyString()))
+				.thenReturn( new NotificationRetrieverService.VersionedNotification( null, ETAG ) );
+
+		// Then
+		webTestClient.get()
+				.uri( "/delivery/notifications/received/" + IUN  )
+				.accept( MediaType.ALL )
+				.header(HttpHeaders.ACCEPT, "application/json")
+				.header(HttpHeaders.IF_NONE_MATCH, ETAG )
+				.header( PnDeliveryRestConstants.CX_ID_HEADER, CX_ID)
+				.header(PnDeliveryRestConstants.UID_HEADER, UID)
+				.header(PnDeliveryRestConstants.CX_TYPE_HEADER, CX_TYPE_PF)
+				.header(PnDeliveryRestConstants.CX_GROUPS_HEADER, "asdasd" )
+				.exchange()
+				.expectStatus()
+				.isNotModified()
+				.expectHeader().valueEquals( HttpHeaders.ETAG, ETAG );
+
+		Mockito.verify(svc).getVersionedNotificationAndNotifyViewedEvent(IUN, internalAuthHeader, null, ETAG);
 	}
 
 	@Test
 	void getReceivedNotificationFailure() {
 
 		// When
-		Mockito.when( svc.getNotificationAndNotifyViewedEvent( Mockito.anyString(), Mockito.any( InternalAuthHeader.class ), eq( null )) )
+		Mockito.when( svc.getVersionedNotificationAndNotifyViewedEvent( Mockito.anyString(), Mockito.any( InternalAuthHeader.class ), eq( null ), isNull()) )
 				.thenThrow(new PnNotificationNotFoundException("test"));
 
 		// Then
@@ -369,8 +464,8 @@ class PnSentReceivedNotificationControllerTest {
 		InternalAuthHeader internalAuthHeader = new InternalAuthHeader(CX_TYPE_PF, CX_ID, UID, List.of("asdasd"));
 
 		// When
-		Mockito.when(svc.getNotificationAndNotifyViewedEvent(anyString(), any(InternalAuthHeader.class), anyString()))
-				.thenReturn(notification);
+		Mockito.when(svc.getVersionedNotificationAndNotifyViewedEvent(anyString(), any(InternalAuthHeader.class), anyString(), isNull()))
+				.thenReturn(new NotificationRetrieverService.VersionedNotification( notification, ETAG ));
 
 		// Then
 		webTestClient.get()
@@ -390,7 +485,7 @@ class PnSentReceivedNotificationControllerTest {
 				.isOk()
 				.expectBody(FullReceivedNotification.class);
 
-		Mockito.verify(svc).getNotificationAndNotifyViewedEvent(IUN, internalAuthHeader, MANDATE_ID);
+		Mockito.verify(svc).getVersionedNotificationAndNotifyViewedEvent(IUN, internalAuthHeader, MANDATE_ID, null);
 	}
 
 	@Test
@@ -841,6 +936,57 @@ class PnSentReceivedNotificationControllerTest {
 
 	}
 
+	@Test
+	void countSentNotificationSuccess() {
+		// When
+		NotificationStatusCountResponse response = NotificationStatusCountResponse.builder()
+				.counts( List.of( NotificationStatusCount.builder()
+						.month( "2023-03" )
+						.status( NotificationStatus.ACCEPTED )
+						.count( 5L )
+						.build() ) )
+				.build();
+		Mockito.when( statusCounterService.countByMonthAndStatus( PA_ID, "2023-02", "2023-03", List.of( NotificationStatus.ACCEPTED ) ) )
+				.thenReturn( response );
+
+		webTestClient.get()
+				.uri(uriBuilder ->
+						uriBuilder
+								.path( "/delivery/notifications/sent/count" )
+								.queryParam( "startMonth", "2023-02" )
+								.queryParam( "endMonth", "2023-03" )
+								.queryParam( "status", "ACCEPTED" )
+								.build())
+				.header( PnDeliveryRestConstants.CX_ID_HEADER, PA_ID )
+				.header(PnDeliveryRestConstants.UID_HEADER, "asdasd")
+				.header(PnDeliveryRestConstants.CX_TYPE_HEADER, CX_TYPE_PA)
+				.exchange()
+				.expectStatus()
+				.isOk()
+				.expectBody( NotificationStatusCountResponse.class )
+				.isEqualTo( response );
+	}
+
+	@Test
+	void countReceivedNotificationWithGroupsFailure() {
+		webTestClient.get()
+				.uri(uriBuilder ->
+						uriBuilder
+								.path( "/delivery/notifications/received/count" )
+								.queryParam( "startMonth", "2023-02" )
+								.queryParam( "endMonth", "2023-03" )
+								.build())
+				.header( PnDeliveryRestConstants.CX_ID_HEADER, CX_ID )
+				.header(PnDeliveryRestConstants.UID_HEADER, "asdasd")
+				.header(PnDeliveryRestConstants.CX_TYPE_HEADER, "PG")
+				.header(PnDeliveryRestConstants.CX_GROUPS_HEADER, "asdasd" )
+				.exchange()
+				.expectStatus()
+				.isBadRequest();
+
+		Mockito.verifyNoInteractions( statusCounterService );
+	}
+
 	@Test
 	void searchSentNotificationValidationFailure() {
 		// When
@@ -30,6 +30,7 @@ class PnReceivedIONotificationsControllerTest {
     private static final String USER_ID = "USER_ID";
     private static final String PA_ID = "PA_ID";
     private static final String X_PAGOPA_PN_SRC_CH = "sourceChannel";
+    private static final String ETAG = "\"0123456789abcdef0123456789abcdef\"";
 
     @Autowired
     WebTestClient webTestClient;
@@ -54,8 +55,8 @@ class PnReceivedIONotificationsControllerTest {
         System.out.println(expectedValueJson);
 
         // When
-        Mockito.when( svc.getNotificationAndNotifyViewedEvent( Mockito.anyString(), Mockito.any( InternalAuthHeader.class ), eq( null )) )
-                .thenReturn( notification );
+        Mockito.when( svc.getVersionedNotificationAndNotifyViewedEvent( Mockito.anyString(), Mockito.any( InternalAuthHeader.class ), eq( null ), isNull()) )
+                .thenReturn( new NotificationRetrieverService.VersionedNotification( notification, ETAG ) );
 
         // Then
         webTestClient.get()
@@ -67,17 +68,40 @@ class PnReceivedIONotificationsControllerTest {
                 .exchange()
                 .expectStatus()
                 .isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, ETAG)
                 .expectBody()
                 .json(expectedValueJson);
 
-        Mockito.verify(svc).getNotificationAndNotifyViewedEvent(IUN, new InternalAuthHeader("PF", "IO-" + USER_ID, USER_ID, null), null);
+        Mockito.verify(svc).getVersionedNotificationAndNotifyViewedEvent(IUN, new InternalAuthHeader("PF", "IO-" + USER_ID, USER_ID, null), null, null);
+    }
+
+    @Test
+    void getReceivedNotificationNotModified() {
+        // When
+        Mockito.when( svc.getVersionedNotificationAndNotifyViewedEvent( Mockito.anyString(), Mockito.any( InternalAuthHeader.class ), eq( null ), anyString()) )
+                .thenReturn( new NotificationRetrieverService.VersionedNotification( null, ETAG ) );
+
+        // Then
+        webTestClient.get()
+                .uri( "/delivery/notifications/received/" + IUN  )
+                .header(HttpHeaders.ACCEPT, "application/io+json")
+                .header(HttpHeaders.IF_NONE_MATCH, ETAG)
+                .header("x-pagopa-pn-cx-id", "IO-" +USER_ID )
+                .header("x-pagopa-pn-cx-type", "PF" )
+                .header("x-pagopa-pn-uid", USER_ID )
+                .exchange()
+                .expectStatus()
+                .isNotModified()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, ETAG);
+
+        Mockito.verify(ioMapper, Mockito.never()).mapToThirdPartMessage(any());
     }
 
     @Test
     void getReceivedNotificationFailure() {
 
         // When
-        Mockito.when(svc.getNotificationAndNotifyViewedEvent(Mockito.anyString(), Mockito.any(InternalAuthHeader.class), eq(null)))
+        Mockito.when(svc.getVersionedNotificationAndNotifyViewedEvent(Mockito.anyString(), Mockito.any(InternalAuthHeader.class), eq(null), isNull()))
                 .thenThrow(new PnNotificationNotFoundException("test"));
 
         // Then
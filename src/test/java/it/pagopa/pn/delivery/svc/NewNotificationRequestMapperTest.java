@@ -0,0 +1,83 @@
+package it.pagopa.pn.delivery.svc;
+
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.*;
+import it.pagopa.pn.delivery.models.InternalNotification;
+import it.pagopa.pn.delivery.utils.ModelMapperConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mapstruct.factory.Mappers;
+import org.modelmapper.ModelMapper;
+
+import java.util.List;
+
+class NewNotificationRequestMapperTest {
+
+    private final NewNotificationRequestMapper mapper = Mappers.getMapper(NewNotificationRequestMapper.class);
+    private final ModelMapper modelMapper = new ModelMapperConfig().modelMapper();
+
+    @Test
+    void internalNotificationIsEquivalentToModelMapper() {
+        NewNotificationRequest request = newNotificationRequest();
+
+        InternalNotification mapped = mapper.toInternalNotification(request);
+
+        Assertions.assertEquals(modelMapper.map(request, InternalNotification.class), mapped);
+        Assertions.assertEquals("abstract", mapped.getAbstract());
+        Assertions.assertEquals(FullSentNotification.PhysicalCommunicationTypeEnum.REGISTERED_LETTER_890, mapped.getPhysicalCommunicationType());
+        Assertions.assertEquals(request.getRecipients(), mapped.getRecipients());
+        Assertions.assertNull(mapped.getSenderPaId());
+        Assertions.assertNull(mapped.getSourceChannel());
+    }
+
+    @Test
+    void internalNotificationIsNotCopiedByModelMapper() {
+        // la conversione InternalNotification -> InternalNotification della lettura era un'identita'
+        InternalNotification notification = mapper.toInternalNotification(newNotificationRequest());
+        notification.setIun("IUN_01");
+
+        Assertions.assertEquals(notification, modelMapper.map(notification, InternalNotification.class));
+    }
+
+    private static NewNotificationRequest newNotificationRequest() {
+        return NewNotificationRequest.builder()
+                .idempotenceToken("idempotenceToken")
+                .paProtocolNumber("paProtocolNumber")
+                .subject("subject")
+                ._abstract("abstract")
+                .senderDenomination("Comune di Milano")
+                .senderTaxId("01199250158")
+                .group("group1")
+                .taxonomyCode("010101P")
+                .amount(2000)
+                .paymentExpirationDate("2023-12-31")
+                .notificationFeePolicy(NotificationFeePolicy.FLAT_RATE)
+                .physicalCommunicationType(NewNotificationRequest.PhysicalCommunicationTypeEnum.REGISTERED_LETTER_890)
+                .documents(List.of(NotificationDocument.builder()
+                        .contentType("application/pdf")
+                        .title("title")
+                        .docIdx("0")
+                        .digests(NotificationAttachmentDigests.builder().sha256("sha256").build())
+                        .ref(NotificationAttachmentBodyRef.builder().key("key").versionToken("v1").build())
+                        .build()))
+                .recipients(List.of(NotificationRecipient.builder()
+                        .recipientType(NotificationRecipient.RecipientTypeEnum.PF)
+                        .taxId("LVLDAA85T50G702B")
+                        .denomination("Ada Lovelace")
+                        .digitalDomicile(NotificationDigitalAddress.builder()
+                                .type(NotificationDigitalAddress.TypeEnum.PEC)
+                                .address("address@pec.it")
+                                .build())
+                        .physicalAddress(NotificationPhysicalAddress.builder()
+                                .address("address")
+                                .zip("83100")
+                                .municipality("municipality")
+                                .province("province")
+                                .build())
+                        .payment(NotificationPaymentInfo.builder()
+                                .noticeCode("302000100000019421")
+                                .creditorTaxId("77777777777")
+                                .build())
+                        .build()))
+                .build();
+    }
+}
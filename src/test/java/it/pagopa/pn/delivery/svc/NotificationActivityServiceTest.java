@@ -0,0 +1,168 @@
+package it.pagopa.pn.delivery.svc;
+
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.middleware.notificationdao.NotificationActivityEntityDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationDelegationMetadataEntity;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.svc.search.IndexNameAndPartitions;
+import it.pagopa.pn.delivery.svc.search.PnLastEvaluatedKey;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.Map;
+
+class NotificationActivityServiceTest {
+
+    private static final String SENDER_ID = "senderId";
+    private static final String RECIPIENT_ID = "recipientId";
+    private static final String DELEGATE_ID = "delegateId";
+    private static final String GROUP = "group1";
+
+    private NotificationActivityEntityDao notificationActivityEntityDao;
+    private PnDeliveryConfigs cfg;
+    private NotificationActivityService notificationActivityService;
+
+    @BeforeEach
+    void setup() {
+        notificationActivityEntityDao = Mockito.mock(NotificationActivityEntityDao.class);
+        cfg = Mockito.mock(PnDeliveryConfigs.class);
+        Mockito.when(cfg.getSearchActivityIndexSince()).thenReturn("2022-01");
+        notificationActivityService = new NotificationActivityService(notificationActivityEntityDao, cfg);
+    }
+
+    @Test
+    void markActiveMetadata() {
+        NotificationMetadataEntity metadata = NotificationMetadataEntity.builder()
+                .senderIdCreationMonth(SENDER_ID + "##202303")
+                .recipientIdCreationMonth(RECIPIENT_ID + "##202303")
+                .build();
+
+        notificationActivityService.markActive(metadata);
+
+        Mockito.verify(notificationActivityEntityDao).markMonthActive("senderId##" + SENDER_ID + "##", 2023, 3);
+        Mockito.verify(notificationActivityEntityDao).markMonthActive("recipientId##" + RECIPIENT_ID + "##", 2023, 3);
+    }
+
+    @Test
+    void markActiveWritesEachMonthOnce() {
+        NotificationMetadataEntity first = NotificationMetadataEntity.builder()
+                .senderIdCreationMonth(SENDER_ID + "##202303")
+                .recipientIdCreationMonth(RECIPIENT_ID + "##202303")
+                .build();
+        NotificationMetadataEntity otherRecipient = NotificationMetadataEntity.builder()
+                .senderIdCreationMonth(SENDER_ID + "##202303")
+                .recipientIdCreationMonth("otherRecipientId##202303")
+                .build();
+
+        notificationActivityService.markActive(first);
+        notificationActivityService.markActive(otherRecipient);
+        notificationActivityService.markActive(first);
+
+        // il mese del mittente è già marcato dall'istanza e non viene riscritto
+        Mockito.verify(notificationActivityEntityDao, Mockito.times(1)).markMonthActive("senderId##" + SENDER_ID + "##", 2023, 3);
+        Mockito.verify(notificationActivityEntityDao, Mockito.times(1)).markMonthActive("recipientId##" + RECIPIENT_ID + "##", 2023, 3);
+        Mockito.verify(notificationActivityEntityDao, Mockito.times(1)).markMonthActive("recipientId##otherRecipientId##", 2023, 3);
+    }
+
+    @Test
+    void markActiveRetriesMonthAfterWriteFailure() {
+        NotificationMetadataEntity metadata = NotificationMetadataEntity.builder()
+                .senderIdCreationMonth(SENDER_ID + "##202303")
+                .build();
+        Mockito.doThrow(new IllegalStateException("dynamo unavailable")).doNothing()
+                .when(notificationActivityEntityDao).markMonthActive(Mockito.anyString(), Mockito.anyInt(), Mockito.anyInt());
+
+        Assertions.assertThrows(IllegalStateException.class, () -> notificationActivityService.markActive(metadata));
+        notificationActivityService.markActive(metadata);
+
+        Mockito.verify(notificationActivityEntityDao, Mockito.times(2)).markMonthActive("senderId##" + SENDER_ID + "##", 2023, 3);
+    }
+
+    @Test
+    void markActiveDelegationMetadata() {
+        NotificationDelegationMetadataEntity entity = NotificationDelegationMetadataEntity.builder()
+                .delegateIdCreationMonth(DELEGATE_ID + "##202212")
+                .delegateIdGroupIdCreationMonth(DELEGATE_ID + "##" + GROUP + "##202212")
+                .build();
+
+        notificationActivityService.markActive(List.of(entity, entity));
+
+        Mockito.verify(notificationActivityEntityDao, Mockito.times(1)).markMonthActive("delegateId##" + DELEGATE_ID + "##", 2022, 12);
+        Mockito.verify(notificationActivityEntityDao, Mockito.times(1)).markMonthActive("delegateId_groupId##" + DELEGATE_ID + "##" + GROUP + "##", 2022, 12);
+    }
+
+    @Test
+    void retainActivePartitions() {
+        // 2023: gennaio e marzo attivi
+        Mockito.when(notificationActivityEntityDao.getMonthBitmaps("senderId##" + SENDER_ID + "##", 2021, 2023))
+                .thenReturn(Map.of(2023, 0b101));
+
+        IndexNameAndPartitions result = notificationActivityService.retainActivePartitions(senderPartitions(), null);
+
+        // i mesi precedenti al 2022-01 non sono coperti dal riepilogo e vengono mantenuti
+        Assertions.assertEquals(List.of(
+                SENDER_ID + "##202303",
+                SENDER_ID + "##202301",
+                SENDER_ID + "##202112"), result.getPartitions());
+        Assertions.assertEquals(IndexNameAndPartitions.SearchIndexEnum.INDEX_BY_SENDER, result.getIndexName());
+    }
+
+    @Test
+    void retainActivePartitionsKeepsLastEvaluatedPartition() {
+        Mockito.when(notificationActivityEntityDao.getMonthBitmaps(Mockito.anyString(), Mockito.anyInt(), Mockito.anyInt()))
+                .thenReturn(Map.of());
+        PnLastEvaluatedKey lastEvaluatedKey = new PnLastEvaluatedKey();
+        lastEvaluatedKey.setExternalLastEvaluatedKey(SENDER_ID + "##202302");
+
+        IndexNameAndPartitions result = notificationActivityService.retainActivePartitions(senderPartitions(), lastEvaluatedKey);
+
+        Assertions.assertEquals(List.of(
+                SENDER_ID + "##202302",
+                SENDER_ID + "##202112"), result.getPartitions());
+    }
+
+    @Test
+    void retainActivePartitionsOnError() {
+        Mockito.when(notificationActivityEntityDao.getMonthBitmaps(Mockito.anyString(), Mockito.anyInt(), Mockito.anyInt()))
+                .thenThrow(new RuntimeException("dynamo unavailable"));
+        IndexNameAndPartitions input = senderPartitions();
+
+        IndexNameAndPartitions result = notificationActivityService.retainActivePartitions(input, null);
+
+        Assertions.assertSame(input, result);
+    }
+
+    @Test
+    void retainActivePartitionsDisabled() {
+        Mockito.when(cfg.getSearchActivityIndexSince()).thenReturn(null);
+        notificationActivityService = new NotificationActivityService(notificationActivityEntityDao, cfg);
+        IndexNameAndPartitions input = senderPartitions();
+
+        IndexNameAndPartitions result = notificationActivityService.retainActivePartitions(input, null);
+
+        Assertions.assertSame(input, result);
+        Mockito.verifyNoInteractions(notificationActivityEntityDao);
+    }
+
+    @Test
+    void retainActivePartitionsNotMonthlyIndex() {
+        IndexNameAndPartitions input = new IndexNameAndPartitions(IndexNameAndPartitions.SearchIndexEnum.INDEX_WITH_BOTH_IDS,
+                List.of(SENDER_ID + "##" + RECIPIENT_ID));
+
+        IndexNameAndPartitions result = notificationActivityService.retainActivePartitions(input, null);
+
+        Assertions.assertSame(input, result);
+        Mockito.verifyNoInteractions(notificationActivityEntityDao);
+    }
+
+    private static IndexNameAndPartitions senderPartitions() {
+        return new IndexNameAndPartitions(IndexNameAndPartitions.SearchIndexEnum.INDEX_BY_SENDER, List.of(
+                SENDER_ID + "##202303",
+                SENDER_ID + "##202302",
+                SENDER_ID + "##202301",
+                SENDER_ID + "##202112"));
+    }
+}
@@ -15,7 +15,10 @@ import java.util.List;
 import java.util.Optional;
 
 import it.pagopa.pn.api.dto.events.NotificationViewDelegateInfo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import it.pagopa.pn.commons.configs.MVPParameterConsumer;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.middleware.notificationdao.NotificationViewedEntityDao;
 import it.pagopa.pn.delivery.models.InternalAuthHeader;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -75,7 +78,8 @@ class NotificationAttachmentServiceTest {
     notificationViewedProducer = Mockito.mock(NotificationViewedProducer.class);
     mvpParameterConsumer = Mockito.mock(MVPParameterConsumer.class);
     attachmentService = new NotificationAttachmentService(pnSafeStorageClient, notificationDao,
-        checkAuthComponent, notificationViewedProducer, mvpParameterConsumer);
+        checkAuthComponent, new NotificationViewedService(notificationViewedProducer, Mockito.mock(NotificationViewedEntityDao.class),
+            Mockito.mock(PnDeliveryConfigs.class), new SimpleMeterRegistry()), mvpParameterConsumer);
   }
 
   @Test
@@ -1,6 +1,7 @@
 package it.pagopa.pn.delivery.svc;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyList;
@@ -53,6 +54,9 @@ class NotificationDelegatedServiceTest {
     @MockBean
     private PnMandateClientImpl pnMandateClientImpl;
 
+    @MockBean
+    private NotificationActivityService notificationActivityService;
+
     /**
      * Method under test: {@link NotificationDelegatedService#handleAcceptedMandate(PnMandateEvent.Payload, EventType)}
      */
@@ -173,6 +177,37 @@ class NotificationDelegatedServiceTest {
         verify(notificationDelegationMetadataEntityDao, times(2)).batchPutItems(anyList());
     }
 
+    @Test
+    @DisplayName("Test mandate attributes copied on delegation entries")
+    void computeDelegationMetadataEntriesCopiesMandateAttributes() {
+        Instant dateFrom = Instant.parse("2023-01-01T00:00:00Z");
+        Instant dateTo = Instant.parse("2023-12-31T23:59:59Z");
+        InternalMandateDto internalMandateDto = new InternalMandateDto();
+        internalMandateDto.setMandateId(MANDATE_ID);
+        internalMandateDto.setDelegator(DELEGATOR_ID);
+        internalMandateDto.setDelegate(DELEGATE_ID);
+        internalMandateDto.setDatefrom(dateFrom.toString());
+        internalMandateDto.setDateto(dateTo.toString());
+        internalMandateDto.setVisibilityIds(List.of("senderId"));
+        when(pnMandateClientImpl.listMandatesByDelegator(any(), any(), any(), any(), any(), any()))
+                .thenReturn(List.of(internalMandateDto));
+        NotificationMetadataEntity metadata = NotificationMetadataEntity.builder()
+                .iunRecipientId("IUN##" + DELEGATOR_ID)
+                .recipientId(DELEGATOR_ID)
+                .senderId("senderId")
+                .sentAt(Instant.parse("2023-03-01T00:00:00Z"))
+                .build();
+
+        List<NotificationDelegationMetadataEntity> entries = notificationDelegatedService.computeDelegationMetadataEntries(metadata);
+
+        assertEquals(1, entries.size());
+        NotificationDelegationMetadataEntity entry = entries.get(0);
+        assertEquals(dateFrom, entry.getMandateValidFrom());
+        assertEquals(dateTo, entry.getMandateValidTo());
+        assertEquals(List.of("senderId"), entry.getMandateVisibilityIds());
+        assertEquals(NotificationDelegationMetadataEntity.MANDATE_ATTRIBUTES_VERSION, entry.getMandateVersion());
+    }
+
     @Test
     void deleteNotificationDelegatedSuccessTest() {
         NotificationDelegationMetadataEntity entity = NotificationDelegationMetadataEntity
@@ -8,21 +8,27 @@ import it.pagopa.pn.commons.exceptions.PnIdConflictException;
 import it.pagopa.pn.commons.exceptions.PnInternalException;
 import it.pagopa.pn.commons.exceptions.PnValidationException;
 import it.pagopa.pn.commons.utils.ValidateUtils;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.exception.PnBadRequestException;
 import it.pagopa.pn.delivery.exception.PnInvalidInputException;
+import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.RecipientType;
 import it.pagopa.pn.delivery.generated.openapi.clients.externalregistries.model.PaGroup;
 import it.pagopa.pn.delivery.generated.openapi.clients.externalregistries.model.PaGroupStatus;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.*;
 import it.pagopa.pn.delivery.middleware.NotificationDao;
 import it.pagopa.pn.delivery.models.InternalNotification;
+import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
+import it.pagopa.pn.delivery.pnclient.externalregistries.PaGroups;
 import it.pagopa.pn.delivery.pnclient.externalregistries.PnExternalRegistriesClientImpl;
 import it.pagopa.pn.delivery.utils.NotificationDaoMock;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.function.Executable;
 import org.mockito.ArgumentCaptor;
+import org.mapstruct.factory.Mappers;
 import org.mockito.Mockito;
-import org.modelmapper.ModelMapper;
 import org.springframework.util.Base64Utils;
 
 import javax.validation.Validation;
@@ -30,12 +36,17 @@ import javax.validation.ValidatorFactory;
 import java.io.ByteArrayInputStream;
 import java.nio.charset.StandardCharsets;
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -69,10 +80,12 @@ class NotificationReceiverTest {
 	private NotificationDao notificationDao;
 	private NotificationReceiverService deliveryService;
 	private FileStorage fileStorage;
-	private ModelMapper modelMapper;
+	private NewNotificationRequestMapper newNotificationRequestMapper;
 	private MVPParameterConsumer mvpParameterConsumer;
 	private ValidateUtils validateUtils;
 	private PnExternalRegistriesClientImpl pnExternalRegistriesClient;
+	private PnDataVaultClientImpl pnDataVaultClient;
+	private ExecutorService submitExecutor;
 
 	@BeforeEach
 	public void setup() {
@@ -80,23 +93,36 @@ class NotificationReceiverTest {
 
 		notificationDao = Mockito.spy( new NotificationDaoMock() );
 		fileStorage = Mockito.mock( FileStorage.class );
-		modelMapper = new ModelMapper();
+		newNotificationRequestMapper = Mappers.getMapper(NewNotificationRequestMapper.class);
 		mvpParameterConsumer = Mockito.mock( MVPParameterConsumer.class );
 		pnExternalRegistriesClient = Mockito.mock( PnExternalRegistriesClientImpl.class );
 		validateUtils = Mockito.mock( ValidateUtils.class );
+		pnDataVaultClient = Mockito.mock( PnDataVaultClientImpl.class );
+		submitExecutor = Executors.newFixedThreadPool( 4 );
+		PnDeliveryConfigs cfg = Mockito.mock( PnDeliveryConfigs.class );
+		Mockito.when( cfg.getSubmitBulkMaxConcurrency() ).thenReturn( 2 );
 
 		// - Separate Tests
 		ValidatorFactory factory = Validation.buildDefaultValidatorFactory();
 		NotificationReceiverValidator validator = new NotificationReceiverValidator( factory.getValidator(), mvpParameterConsumer, validateUtils);
 
 		Mockito.when( validateUtils.validate( Mockito.anyString() ) ).thenReturn( true );
+		Mockito.when( pnExternalRegistriesClient.getPaGroups( Mockito.anyString() ) ).thenReturn( PaGroups.EMPTY );
 
 		deliveryService = new NotificationReceiverService(
 				clock,
 				notificationDao,
 				validator,
-				modelMapper,
-				pnExternalRegistriesClient);
+				newNotificationRequestMapper,
+				pnExternalRegistriesClient,
+				pnDataVaultClient,
+				cfg,
+				submitExecutor);
+	}
+
+	@AfterEach
+	void tearDown() {
+		submitExecutor.shutdownNow();
 	}
 
 	@Test
@@ -106,8 +132,8 @@ class NotificationReceiverTest {
 		// Given
 		NewNotificationRequest notification = newNotificationWithPaymentsDeliveryMode( );
 
-		Mockito.when( pnExternalRegistriesClient.getGroups( Mockito.anyString() ) )
-				.thenReturn( List.of(new PaGroup().id("Group_1").status(PaGroupStatus.ACTIVE)));
+		Mockito.when( pnExternalRegistriesClient.getPaGroups( Mockito.anyString() ) )
+				.thenReturn( PaGroups.of( List.of(new PaGroup().id("Group_1").status(PaGroupStatus.ACTIVE)) ));
 
 		// When
 		FileData fileData = FileData.builder()
@@ -138,8 +164,8 @@ class NotificationReceiverTest {
 		//InternalNotification notification = newNotificationWithPaymentsFlat( );
 		NewNotificationRequest notificationRequest = newNotificationRequest();
 
-		Mockito.when( pnExternalRegistriesClient.getGroups( Mockito.anyString() ) )
-				.thenReturn( List.of(new PaGroup().id("group1").status(PaGroupStatus.ACTIVE)));
+		Mockito.when( pnExternalRegistriesClient.getPaGroups( Mockito.anyString() ) )
+				.thenReturn( PaGroups.of( List.of(new PaGroup().id("group1").status(PaGroupStatus.ACTIVE)) ));
 
 		// When
 		FileData fileData = FileData.builder()
@@ -164,8 +190,8 @@ class NotificationReceiverTest {
 		//InternalNotification notification = newNotificationWithoutPayments( );
 		NewNotificationRequest notificationRequest = newNotificationRequest();
 
-		Mockito.when( pnExternalRegistriesClient.getGroups( Mockito.anyString() ) )
-				.thenReturn( List.of(new PaGroup().id("group1").status(PaGroupStatus.ACTIVE)));
+		Mockito.when( pnExternalRegistriesClient.getPaGroups( Mockito.anyString() ) )
+				.thenReturn( PaGroups.of( List.of(new PaGroup().id("group1").status(PaGroupStatus.ACTIVE)) ));
 
 		FileData fileData = FileData.builder()
 				.content( new ByteArrayInputStream(ATTACHMENT_BODY_STR.getBytes(StandardCharsets.UTF_8)) )
@@ -201,8 +227,8 @@ class NotificationReceiverTest {
 				.thenReturn( fileData );
 		Mockito.when( mvpParameterConsumer.isMvp( Mockito.anyString() ) ).thenReturn( false );
 
-		Mockito.when( pnExternalRegistriesClient.getGroups( Mockito.anyString() ) )
-				.thenReturn( List.of(new PaGroup().id("group1").status(PaGroupStatus.ACTIVE)));
+		Mockito.when( pnExternalRegistriesClient.getPaGroups( Mockito.anyString() ) )
+				.thenReturn( PaGroups.of( List.of(new PaGroup().id("group1").status(PaGroupStatus.ACTIVE)) ));
 
 		//InternalNotification notification = newNotificationWithoutPayments();
 		NewNotificationRequest newNotificationRequest = newNotificationRequest();
@@ -224,8 +250,8 @@ class NotificationReceiverTest {
 		NewNotificationRequest newNotificationRequest = newNotificationRequest();
 		newNotificationRequest.setGroup("group1");
 
-		Mockito.when( pnExternalRegistriesClient.getGroups( Mockito.anyString() ) )
-				.thenReturn( List.of(new PaGroup().id("group1").status(PaGroupStatus.ACTIVE)));
+		Mockito.when( pnExternalRegistriesClient.getPaGroups( Mockito.anyString() ) )
+				.thenReturn( PaGroups.of( List.of(new PaGroup().id("group1").status(PaGroupStatus.ACTIVE)) ));
 
 		// When
 		NewNotificationResponse response = deliveryService.receiveNotification( PAID, newNotificationRequest, X_PAGOPA_PN_SRC_CH, X_PAGOPA_PN_CX_GROUPS );
@@ -240,8 +266,8 @@ class NotificationReceiverTest {
 		NewNotificationRequest newNotificationRequest = newNotificationRequest();
 		newNotificationRequest.setGroup(null);
 
-		Mockito.when( pnExternalRegistriesClient.getGroups( Mockito.anyString() ) )
-				.thenReturn( List.of(new PaGroup().id("group1").status(PaGroupStatus.ACTIVE)));
+		Mockito.when( pnExternalRegistriesClient.getPaGroups( Mockito.anyString() ) )
+				.thenReturn( PaGroups.of( List.of(new PaGroup().id("group1").status(PaGroupStatus.ACTIVE)) ));
 
 		// When
 		NewNotificationResponse response = deliveryService.receiveNotification( PAID, newNotificationRequest, X_PAGOPA_PN_SRC_CH, X_PAGOPA_PN_CX_GROUPS_EMPTY );
@@ -296,8 +322,8 @@ class NotificationReceiverTest {
 		newNotificationRequest.setGroup( "group_1" );
 
 		// When
-		Mockito.when( pnExternalRegistriesClient.getGroups( Mockito.anyString() ) )
-				.thenReturn( List.of(new PaGroup().id("group_1").status(PaGroupStatus.SUSPENDED)));
+		Mockito.when( pnExternalRegistriesClient.getPaGroups( Mockito.anyString() ) )
+				.thenReturn( PaGroups.of( List.of(new PaGroup().id("group_1").status(PaGroupStatus.SUSPENDED)) ));
 
 		Executable todo = () -> deliveryService.receiveNotification( PAID, newNotificationRequest, X_PAGOPA_PN_SRC_CH, X_PAGOPA_PN_CX_GROUPS_EMPTY );
 
@@ -348,8 +374,8 @@ class NotificationReceiverTest {
 
 		NewNotificationRequest notification = newNotificationWithPaymentsDeliveryMode( );
 
-		Mockito.when( pnExternalRegistriesClient.getGroups( Mockito.anyString() ) )
-				.thenReturn( List.of(new PaGroup().id("Group_1").status(PaGroupStatus.ACTIVE)));
+		Mockito.when( pnExternalRegistriesClient.getPaGroups( Mockito.anyString() ) )
+				.thenReturn( PaGroups.of( List.of(new PaGroup().id("Group_1").status(PaGroupStatus.ACTIVE)) ));
 
 		// When
 		FileData fileData = FileData.builder()
@@ -378,8 +404,8 @@ class NotificationReceiverTest {
 
 		NewNotificationRequest notification = newNotificationWithPaymentsDeliveryMode( );
 
-		Mockito.when( pnExternalRegistriesClient.getGroups( Mockito.anyString() ) )
-				.thenReturn( List.of(new PaGroup().id("Group_1").status(PaGroupStatus.ACTIVE)));
+		Mockito.when( pnExternalRegistriesClient.getPaGroups( Mockito.anyString() ) )
+				.thenReturn( PaGroups.of( List.of(new PaGroup().id("Group_1").status(PaGroupStatus.ACTIVE)) ));
 
 		// When
 		FileData fileData = FileData.builder()
@@ -401,6 +427,92 @@ class NotificationReceiverTest {
 				.addNotification( Mockito.any( InternalNotification.class ));
 	}
 
+	@Test
+	void bulkReturnsOneResultForEachRequest() throws PnIdConflictException {
+		// Given
+		Mockito.when( pnExternalRegistriesClient.getPaGroups( Mockito.anyString() ) )
+				.thenReturn( PaGroups.of( List.of(new PaGroup().id("group1").status(PaGroupStatus.ACTIVE)) ));
+		Mockito.when( mvpParameterConsumer.isMvp( Mockito.anyString() ) ).thenReturn( false );
+		NewNotificationRequest valid = newNotificationRequest();
+		NewNotificationRequest invalid = newNotificationRequest();
+		invalid.setPaProtocolNumber( "paProtocolNumber2" );
+		invalid.setSenderDenomination( null );
+		NewNotificationRequest repeated = newNotificationRequest();
+
+		// When
+		List<NotificationReceiverService.NewNotificationResult> results = deliveryService.receiveNotifications(
+				X_PAGOPA_PN_CX_ID, List.of( valid, invalid, repeated ), X_PAGOPA_PN_SRC_CH, X_PAGOPA_PN_CX_GROUPS_EMPTY );
+
+		// Then
+		Assertions.assertEquals( 3, results.size() );
+		Assertions.assertNull( results.get( 0 ).error() );
+		assertEquals( valid.getPaProtocolNumber(), results.get( 0 ).response().getPaProtocolNumber() );
+		Assertions.assertInstanceOf( PnInvalidInputException.class, results.get( 1 ).error() );
+		Assertions.assertInstanceOf( PnIdConflictException.class, results.get( 2 ).error() );
+		Mockito.verify( notificationDao, Mockito.times( 1 ) ).addNotification( Mockito.any( InternalNotification.class ) );
+	}
+
+	@Test
+	void bulkResolvesEachRecipientOnceAndKeepsIdempotencePerItem() throws PnIdConflictException {
+		// Given
+		Mockito.when( pnExternalRegistriesClient.getPaGroups( Mockito.anyString() ) )
+				.thenReturn( PaGroups.of( List.of(new PaGroup().id("group1").status(PaGroupStatus.ACTIVE)) ));
+		Mockito.when( mvpParameterConsumer.isMvp( Mockito.anyString() ) ).thenReturn( false );
+		Mockito.doThrow( new PnIdConflictException( Map.of( "Duplicated notification for senderPaId##paProtocolNumber##idempotenceToken", "paId##paProtocolNumber0##null" ) ) )
+				.when( notificationDao )
+				.addNotification( Mockito.argThat( notification -> "paProtocolNumber0".equals( notification.getPaProtocolNumber() ) ) );
+		List<NewNotificationRequest> requests = IntStream.range( 0, 5 )
+				.mapToObj( i -> {
+					NewNotificationRequest request = newNotificationRequest();
+					request.setPaProtocolNumber( "paProtocolNumber" + i );
+					return request;
+				})
+				.collect( Collectors.toList() );
+
+		// When
+		List<NotificationReceiverService.NewNotificationResult> results = deliveryService.receiveNotifications(
+				X_PAGOPA_PN_CX_ID, requests, X_PAGOPA_PN_SRC_CH, X_PAGOPA_PN_CX_GROUPS_EMPTY );
+
+		// Then
+		Assertions.assertInstanceOf( PnIdConflictException.class, results.get( 0 ).error() );
+		for ( int i = 1; i < requests.size(); i++ ) {
+			assertEquals( "paProtocolNumber" + i, results.get( i ).response().getPaProtocolNumber() );
+		}
+		Mockito.verify( pnDataVaultClient, Mockito.times( 1 ) ).ensureRecipientByExternalId( RecipientType.PF, "LVLDAA85T50G702B" );
+		Mockito.verify( notificationDao, Mockito.times( 5 ) ).addNotification( Mockito.any( InternalNotification.class ) );
+	}
+
+	@Test
+	void bulkFailsEachNotificationWhenSubmitExecutorIsShutDown() throws PnIdConflictException {
+		// Given
+		submitExecutor.shutdown();
+		List<NewNotificationRequest> requests = List.of( newNotificationRequest(), newNotificationRequest() );
+
+		// When
+		List<NotificationReceiverService.NewNotificationResult> results = Assertions.assertTimeoutPreemptively( Duration.ofSeconds( 5 ),
+				() -> deliveryService.receiveNotifications( X_PAGOPA_PN_CX_ID, requests, X_PAGOPA_PN_SRC_CH, X_PAGOPA_PN_CX_GROUPS_EMPTY ) );
+
+		// Then
+		Assertions.assertEquals( 2, results.size() );
+		results.forEach( result -> Assertions.assertInstanceOf( PnInternalException.class, result.error() ) );
+		Mockito.verify( notificationDao, Mockito.never() ).addNotification( Mockito.any( InternalNotification.class ) );
+	}
+
+	@Test
+	void bulkRejectsTooManyNotifications() {
+		// Given
+		List<NewNotificationRequest> requests = IntStream.range( 0, NotificationReceiverService.MAX_BULK_NOTIFICATIONS + 1 )
+				.mapToObj( i -> newNotificationRequest() )
+				.collect( Collectors.toList() );
+
+		// When
+		Executable todo = () -> deliveryService.receiveNotifications( X_PAGOPA_PN_CX_ID, requests, X_PAGOPA_PN_SRC_CH, X_PAGOPA_PN_CX_GROUPS_EMPTY );
+
+		// Then
+		Assertions.assertThrows( PnBadRequestException.class, todo );
+		Mockito.verifyNoInteractions( pnDataVaultClient );
+	}
+
 	private NewNotificationRequest newNotificationRequest() {
 		return NewNotificationRequest.builder()
 				.senderTaxId( "01199250158" )
@@ -0,0 +1,179 @@
+package it.pagopa.pn.delivery.svc;
+
+import it.pagopa.pn.commons.exceptions.PnInternalException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.exception.PnBadRequestException;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatus;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatusCount;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatusCountResponse;
+import it.pagopa.pn.delivery.middleware.notificationdao.NotificationStatusCounterEntityDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationStatusCounterEntity;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+class NotificationStatusCounterServiceTest {
+
+    private static final String IUN = "IUN";
+    private static final String MARKER_KEY = "IUN##IUN";
+    private static final Instant NOW = Instant.parse("2023-03-14T10:00:00Z");
+    private static final long MARKER_TTL = NOW.plus(Duration.ofDays(30)).getEpochSecond();
+
+    private NotificationStatusCounterEntityDao notificationStatusCounterEntityDao;
+    private NotificationStatusCounterService service;
+
+    @BeforeEach
+    void setup() {
+        notificationStatusCounterEntityDao = Mockito.mock(NotificationStatusCounterEntityDao.class);
+        PnDeliveryConfigs cfg = Mockito.mock(PnDeliveryConfigs.class);
+        Mockito.when(cfg.getNotificationStatusCounterMarkerTtl()).thenReturn(Duration.ofDays(30));
+        service = new NotificationStatusCounterService(notificationStatusCounterEntityDao, cfg, Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    @Test
+    void updateCountersFirstStatusOnlyIncrements() {
+        Mockito.when(notificationStatusCounterEntityDao.getCountedStatus(MARKER_KEY)).thenReturn(Optional.empty());
+        Mockito.when(notificationStatusCounterEntityDao.moveCounters(Mockito.anyString(), Mockito.any(), Mockito.anyString(), Mockito.anyLong(), Mockito.anyList(), Mockito.anyList()))
+                .thenReturn(true);
+
+        service.updateCounters(IUN, NotificationStatus.ACCEPTED, metadata("recipient1", "recipient2"));
+
+        Mockito.verify(notificationStatusCounterEntityDao).moveCounters(MARKER_KEY, null, "ACCEPTED", MARKER_TTL, List.of(),
+                List.of("senderId##202303##ACCEPTED", "recipient1##202303##ACCEPTED", "recipient2##202303##ACCEPTED"));
+    }
+
+    @Test
+    void updateCountersMovesFromCountedStatus() {
+        Mockito.when(notificationStatusCounterEntityDao.getCountedStatus(MARKER_KEY)).thenReturn(Optional.of("ACCEPTED"));
+        Mockito.when(notificationStatusCounterEntityDao.moveCounters(Mockito.anyString(), Mockito.any(), Mockito.anyString(), Mockito.anyLong(), Mockito.anyList(), Mockito.anyList()))
+                .thenReturn(true);
+
+        service.updateCounters(IUN, NotificationStatus.DELIVERED, metadata("recipient1"));
+
+        Mockito.verify(notificationStatusCounterEntityDao).moveCounters(MARKER_KEY, "ACCEPTED", "DELIVERED", MARKER_TTL,
+                List.of("senderId##202303##ACCEPTED", "recipient1##202303##ACCEPTED"),
+                List.of("senderId##202303##DELIVERED", "recipient1##202303##DELIVERED"));
+    }
+
+    @Test
+    void updateCountersIgnoresRepeatedStatus() {
+        Mockito.when(notificationStatusCounterEntityDao.getCountedStatus(MARKER_KEY)).thenReturn(Optional.of("DELIVERED"));
+
+        service.updateCounters(IUN, NotificationStatus.DELIVERED, metadata("recipient1"));
+
+        Mockito.verify(notificationStatusCounterEntityDao, Mockito.never())
+                .moveCounters(Mockito.anyString(), Mockito.any(), Mockito.anyString(), Mockito.anyLong(), Mockito.anyList(), Mockito.anyList());
+    }
+
+    @Test
+    void updateCountersRereadsMarkerOnConflict() {
+        // un aggiornamento concorrente ha già conteggiato lo stato tra la lettura e la transazione
+        Mockito.when(notificationStatusCounterEntityDao.getCountedStatus(MARKER_KEY))
+                .thenReturn(Optional.of("ACCEPTED"), Optional.of("DELIVERED"));
+        Mockito.when(notificationStatusCounterEntityDao.moveCounters(Mockito.anyString(), Mockito.any(), Mockito.anyString(), Mockito.anyLong(), Mockito.anyList(), Mockito.anyList()))
+                .thenReturn(false);
+
+        service.updateCounters(IUN, NotificationStatus.DELIVERED, metadata("recipient1"));
+
+        Mockito.verify(notificationStatusCounterEntityDao, Mockito.times(1))
+                .moveCounters(Mockito.anyString(), Mockito.any(), Mockito.anyString(), Mockito.anyLong(), Mockito.anyList(), Mockito.anyList());
+    }
+
+    @Test
+    void updateCountersFailsAfterMaxAttempts() {
+        Mockito.when(notificationStatusCounterEntityDao.getCountedStatus(MARKER_KEY)).thenReturn(Optional.of("ACCEPTED"));
+        Mockito.when(notificationStatusCounterEntityDao.moveCounters(Mockito.anyString(), Mockito.any(), Mockito.anyString(), Mockito.anyLong(), Mockito.anyList(), Mockito.anyList()))
+                .thenReturn(false);
+        List<NotificationMetadataEntity> metadata = metadata("recipient1");
+
+        Assertions.assertThrows(PnInternalException.class, () -> service.updateCounters(IUN, NotificationStatus.DELIVERED, metadata));
+    }
+
+    @Test
+    void countByMonthAndStatusReadsAllCountersAtOnce() {
+        Mockito.when(notificationStatusCounterEntityDao.batchGetItems(Mockito.anyList())).thenReturn(List.of(
+                NotificationStatusCounterEntity.builder().counterKey("senderId##202303##ACCEPTED").count(5L).build(),
+                NotificationStatusCounterEntity.builder().counterKey("senderId##202302##VIEWED").count(2L).build()));
+
+        NotificationStatusCountResponse response = service.countByMonthAndStatus("senderId", "2023-02", "2023-03",
+                List.of(NotificationStatus.ACCEPTED, NotificationStatus.VIEWED));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Key>> captor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(notificationStatusCounterEntityDao).batchGetItems(captor.capture());
+        Assertions.assertEquals(List.of("senderId##202303##ACCEPTED", "senderId##202303##VIEWED", "senderId##202302##ACCEPTED", "senderId##202302##VIEWED"),
+                captor.getValue().stream().map(key -> key.partitionKeyValue().s()).toList());
+        Assertions.assertEquals(List.of(
+                count("2023-03", NotificationStatus.ACCEPTED, 5L),
+                count("2023-03", NotificationStatus.VIEWED, 0L),
+                count("2023-02", NotificationStatus.ACCEPTED, 0L),
+                count("2023-02", NotificationStatus.VIEWED, 2L)), response.getCounts());
+    }
+
+    @Test
+    void countByMonthAndStatusReadsTwelveMonthsOfAllStatuses() {
+        // 12 mesi per tutti gli stati superano le 100 chiavi di una BatchGetItem: il dao le legge in più richieste
+        Mockito.when(notificationStatusCounterEntityDao.batchGetItems(Mockito.anyList())).thenReturn(List.of(
+                NotificationStatusCounterEntity.builder().counterKey("senderId##202204##ACCEPTED").count(3L).build()));
+
+        NotificationStatusCountResponse response = service.countByMonthAndStatus("senderId", "2022-04", "2023-03", null);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Key>> captor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(notificationStatusCounterEntityDao).batchGetItems(captor.capture());
+        int expected = 12 * NotificationStatus.values().length;
+        Assertions.assertTrue(expected > 100);
+        Assertions.assertEquals(expected, captor.getValue().size());
+        Assertions.assertEquals(expected, response.getCounts().size());
+        Assertions.assertEquals(count("2022-04", NotificationStatus.ACCEPTED, 3L), response.getCounts().stream()
+                .filter(counted -> counted.getMonth().equals("2022-04") && counted.getStatus() == NotificationStatus.ACCEPTED)
+                .findFirst().orElseThrow());
+    }
+
+    @Test
+    void countByMonthAndStatusDefaultsToAllStatuses() {
+        NotificationStatusCountResponse response = service.countByMonthAndStatus("senderId", "2023-03", "2023-03", null);
+
+        Assertions.assertEquals(NotificationStatus.values().length, response.getCounts().size());
+    }
+
+    @Test
+    void countByMonthAndStatusRejectsInvalidMonths() {
+        List<NotificationStatus> statuses = List.of(NotificationStatus.ACCEPTED);
+
+        Assertions.assertThrows(PnBadRequestException.class, () -> service.countByMonthAndStatus("senderId", "2023-13", "2023-03", statuses));
+        Assertions.assertThrows(PnBadRequestException.class, () -> service.countByMonthAndStatus("senderId", "2023-03", "2023-02", statuses));
+        Assertions.assertThrows(PnBadRequestException.class, () -> service.countByMonthAndStatus("senderId", "2022-03", "2023-03", statuses));
+        Assertions.assertDoesNotThrow(() -> service.countByMonthAndStatus("senderId", "2022-04", "2023-03", statuses));
+    }
+
+    private static NotificationStatusCount count(String month, NotificationStatus status, long count) {
+        return NotificationStatusCount.builder()
+                .month(month)
+                .status(status)
+                .count(count)
+                .build();
+    }
+
+    private static List<NotificationMetadataEntity> metadata(String... recipientIds) {
+        return Arrays.stream(recipientIds)
+                .map(recipientId -> NotificationMetadataEntity.builder()
+                        .iunRecipientId(IUN + "##" + recipientId)
+                        .senderIdCreationMonth("senderId##202303")
+                        .recipientIdCreationMonth(recipientId + "##202303")
+                        .build())
+                .toList();
+    }
+}
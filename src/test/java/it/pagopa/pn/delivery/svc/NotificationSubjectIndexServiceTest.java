@@ -0,0 +1,227 @@
+package it.pagopa.pn.delivery.svc;
+
+import it.pagopa.pn.commons.exceptions.PnInternalException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.exception.PnBadRequestException;
+import it.pagopa.pn.delivery.middleware.notificationdao.NotificationMetadataEntityDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.NotificationSubjectIndexEntityDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationSubjectTokenEntity;
+import it.pagopa.pn.delivery.models.PageSearchTrunk;
+import it.pagopa.pn.delivery.svc.search.IndexNameAndPartitions;
+import it.pagopa.pn.delivery.svc.search.IndexNameAndPartitions.SearchIndexEnum;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.regex.Pattern;
+
+class NotificationSubjectIndexServiceTest {
+
+    private static final String SENDER_PARTITION = "senderId##202303";
+    private static final String RECIPIENT_PARTITION = "recipientId##202303";
+    private static final Instant START = Instant.parse("2023-03-01T00:00:00Z");
+    private static final Instant END = Instant.parse("2023-03-31T00:00:00Z");
+
+    private NotificationSubjectIndexEntityDao notificationSubjectIndexEntityDao;
+    private NotificationMetadataEntityDao notificationMetadataEntityDao;
+    private NotificationSubjectIndexService service;
+
+    @BeforeEach
+    void setup() {
+        notificationSubjectIndexEntityDao = Mockito.mock(NotificationSubjectIndexEntityDao.class);
+        notificationMetadataEntityDao = Mockito.mock(NotificationMetadataEntityDao.class);
+        PnDeliveryConfigs cfg = Mockito.mock(PnDeliveryConfigs.class);
+        Mockito.when(cfg.getSearchSubjectIndexSince()).thenReturn("2023-02");
+        service = new NotificationSubjectIndexService(notificationSubjectIndexEntityDao, notificationMetadataEntityDao, cfg);
+    }
+
+    @Test
+    void indexSubjectWritesSenderAndRecipientPostings() {
+        Mockito.when(notificationSubjectIndexEntityDao.batchPutItems(Mockito.anyList())).thenReturn(Collections.emptyList());
+
+        service.indexSubject(metadata("IUN##recipientId", "2023-03-10T10:00:00Z", "Multa"));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<NotificationSubjectTokenEntity>> captor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(notificationSubjectIndexEntityDao).batchPutItems(captor.capture());
+        List<NotificationSubjectTokenEntity> items = captor.getValue();
+        // mul, ult, lta per ognuna delle due partizioni
+        Assertions.assertEquals(6, items.size());
+        Assertions.assertTrue(items.contains(NotificationSubjectTokenEntity.of("senderId##" + SENDER_PARTITION, "mul",
+                Instant.parse("2023-03-10T10:00:00Z"), "IUN##recipientId")));
+        Assertions.assertTrue(items.contains(NotificationSubjectTokenEntity.of("recipientId##" + RECIPIENT_PARTITION, "lta",
+                Instant.parse("2023-03-10T10:00:00Z"), "IUN##recipientId")));
+    }
+
+    @Test
+    void indexSubjectFailsOnUnprocessedItems() {
+        Mockito.when(notificationSubjectIndexEntityDao.batchPutItems(Mockito.anyList()))
+                .thenReturn(List.of(new NotificationSubjectTokenEntity()));
+        NotificationMetadataEntity metadata = metadata("IUN##recipientId", "2023-03-10T10:00:00Z", "Multa");
+
+        Assertions.assertThrows(PnInternalException.class, () -> service.indexSubject(metadata));
+    }
+
+    @Test
+    void retainIndexedPartitions() {
+        IndexNameAndPartitions indexNameAndPartitions = new IndexNameAndPartitions(SearchIndexEnum.INDEX_BY_SENDER,
+                List.of("senderId##202303", "senderId##202302", "senderId##202301"));
+
+        IndexNameAndPartitions result = service.retainIndexedPartitions(indexNameAndPartitions);
+
+        Assertions.assertEquals(List.of("senderId##202303", "senderId##202302"), result.getPartitions());
+    }
+
+    @Test
+    void candidatesIntersectTermsPageByPage() {
+        stubPostings(
+                posting("mul", "IUN1##r", "2023-03-12T10:00:00Z"),
+                posting("mul", "IUN2##r", "2023-03-11T10:00:00Z"),
+                posting("mul", "IUN3##r", "2023-03-10T10:00:00Z"),
+                posting("mul", "IUN4##r", "2023-03-09T10:00:00Z"),
+                posting("tar", "IUN2##r", "2023-03-11T10:00:00Z"),
+                posting("tar", "IUN4##r", "2023-03-09T10:00:00Z"),
+                posting("tar", "IUN5##r", "2023-03-08T10:00:00Z"));
+
+        List<NotificationSubjectIndexService.Candidate> candidates = service.candidates(SearchIndexEnum.INDEX_BY_SENDER, SENDER_PARTITION,
+                List.of("mul", "tar"), START, END, null, 1).next(10);
+
+        Assertions.assertEquals(List.of(
+                new NotificationSubjectIndexService.Candidate("IUN2##r", Instant.parse("2023-03-11T10:00:00Z")),
+                new NotificationSubjectIndexService.Candidate("IUN4##r", Instant.parse("2023-03-09T10:00:00Z"))), candidates);
+    }
+
+    @Test
+    void candidatesReadOnlyTheRequiredPostings() {
+        stubPostings(
+                posting("mul", "IUN1##r", "2023-03-12T10:00:00Z"),
+                posting("mul", "IUN2##r", "2023-03-11T10:00:00Z"),
+                posting("mul", "IUN3##r", "2023-03-10T10:00:00Z"),
+                posting("tar", "IUN2##r", "2023-03-11T10:00:00Z"),
+                posting("tar", "IUN3##r", "2023-03-10T10:00:00Z"));
+
+        List<NotificationSubjectIndexService.Candidate> candidates = service.candidates(SearchIndexEnum.INDEX_BY_SENDER, SENDER_PARTITION,
+                List.of("mul", "tar"), START, END, null, 1).next(1);
+
+        Assertions.assertEquals(List.of(new NotificationSubjectIndexService.Candidate("IUN2##r", Instant.parse("2023-03-11T10:00:00Z"))), candidates);
+        // IUN3 non viene letta finché non servono altre candidate
+        Mockito.verify(notificationSubjectIndexEntityDao, Mockito.times(2)).searchByTerm(Mockito.anyString(), Mockito.eq("mul"),
+                Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyInt());
+        Mockito.verify(notificationSubjectIndexEntityDao, Mockito.times(1)).searchByTerm(Mockito.anyString(), Mockito.eq("tar"),
+                Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyInt());
+    }
+
+    @Test
+    void candidatesResumeAfterCursor() {
+        stubPostings(
+                posting("mul", "IUN1##r", "2023-03-12T10:00:00Z"),
+                posting("mul", "IUN2##r", "2023-03-11T10:00:00Z"),
+                posting("mul", "IUN3##r", "2023-03-10T10:00:00Z"),
+                posting("tar", "IUN1##r", "2023-03-12T10:00:00Z"),
+                posting("tar", "IUN3##r", "2023-03-10T10:00:00Z"));
+        NotificationSubjectIndexService.Candidate startAfter = new NotificationSubjectIndexService.Candidate("IUN1##r", Instant.parse("2023-03-12T10:00:00Z"));
+
+        List<NotificationSubjectIndexService.Candidate> candidates = service.candidates(SearchIndexEnum.INDEX_BY_SENDER, SENDER_PARTITION,
+                List.of("mul", "tar"), START, END, startAfter, 10).next(10);
+
+        Assertions.assertEquals(List.of(new NotificationSubjectIndexService.Candidate("IUN3##r", Instant.parse("2023-03-10T10:00:00Z"))), candidates);
+        Mockito.verify(notificationSubjectIndexEntityDao).searchByTerm("senderId##" + SENDER_PARTITION, "mul", START, END, Map.of(
+                NotificationSubjectTokenEntity.FIELD_PARTITION_KEY, AttributeValue.builder().s("senderId##" + SENDER_PARTITION).build(),
+                NotificationSubjectTokenEntity.FIELD_TERM_KEY, AttributeValue.builder().s("mul##2023-03-12T10:00:00Z##IUN1##r").build()), 10);
+    }
+
+    @Test
+    void candidatesOfCursorBeforeStartDate() {
+        NotificationSubjectIndexService.Candidate startAfter = new NotificationSubjectIndexService.Candidate("IUN1##r", Instant.parse("2023-02-12T10:00:00Z"));
+
+        List<NotificationSubjectIndexService.Candidate> candidates = service.candidates(SearchIndexEnum.INDEX_BY_SENDER, SENDER_PARTITION,
+                List.of("mul"), START, END, startAfter, 10).next(10);
+
+        Assertions.assertTrue(candidates.isEmpty());
+        Mockito.verifyNoInteractions(notificationSubjectIndexEntityDao);
+    }
+
+    @Test
+    void readMetadataKeepsCandidateOrder() {
+        NotificationMetadataEntity first = metadata("IUN2##r", "2023-03-12T10:00:00Z", "Multa");
+        NotificationMetadataEntity second = metadata("IUN3##r", "2023-03-11T10:00:00Z", "Multa");
+        Mockito.when(notificationMetadataEntityDao.batchGetItems(Mockito.anyList())).thenReturn(List.of(second, first));
+
+        List<NotificationMetadataEntity> result = service.readMetadata(List.of(
+                new NotificationSubjectIndexService.Candidate("IUN2##r", first.getSentAt()),
+                new NotificationSubjectIndexService.Candidate("IUN9##r", first.getSentAt()),
+                new NotificationSubjectIndexService.Candidate("IUN3##r", second.getSentAt())));
+
+        Assertions.assertEquals(List.of(first, second), result);
+        Mockito.verify(notificationMetadataEntityDao).batchGetItems(List.of(
+                Key.builder().partitionValue("IUN2##r").sortValue("2023-03-12T10:00:00Z").build(),
+                Key.builder().partitionValue("IUN9##r").sortValue("2023-03-12T10:00:00Z").build(),
+                Key.builder().partitionValue("IUN3##r").sortValue("2023-03-11T10:00:00Z").build()));
+    }
+
+    @Test
+    void subjectPatternMatchesWholeSubject() {
+        Pattern pattern = service.subjectPattern("Test");
+
+        Assertions.assertTrue(pattern.matcher("Test").matches());
+        Assertions.assertFalse(pattern.matcher("Subject Test").matches());
+
+        Pattern pattern2 = service.subjectPattern(".*Test");
+
+        Assertions.assertTrue(pattern2.matcher("Test").matches());
+        Assertions.assertTrue(pattern2.matcher("Subject Test").matches());
+        Assertions.assertSame(pattern2, service.subjectPattern(".*Test"));
+    }
+
+    @Test
+    void subjectPatternRejectsInvalidExpressions() {
+        Assertions.assertThrows(PnBadRequestException.class, () -> service.subjectPattern("Multa("));
+        Assertions.assertThrows(PnBadRequestException.class, () -> service.subjectPattern(".*"));
+        Assertions.assertThrows(PnBadRequestException.class, () -> service.subjectPattern("Multa|Sanzione"));
+    }
+
+    private void stubPostings(NotificationSubjectTokenEntity... postings) {
+        // query between sul termine e sulle date, in ordine decrescente a partire dalla exclusiveStartKey
+        Mockito.when(notificationSubjectIndexEntityDao.searchByTerm(Mockito.anyString(), Mockito.anyString(), Mockito.any(), Mockito.any(),
+                        Mockito.any(), Mockito.anyInt()))
+                .thenAnswer(invocation -> {
+                    Map<String, AttributeValue> startKey = invocation.getArgument(4);
+                    int size = invocation.getArgument(5);
+                    List<NotificationSubjectTokenEntity> matching = Arrays.stream(postings)
+                            .filter(posting -> posting.getPartitionKey().equals(invocation.getArgument(0))
+                                    && posting.getTermKey().startsWith(invocation.getArgument(1) + NotificationSubjectTokenEntity.KEY_SEPARATOR)
+                                    && !posting.getSentAt().isBefore(invocation.getArgument(2))
+                                    && !posting.getSentAt().isAfter(invocation.getArgument(3))
+                                    && (startKey == null || posting.getTermKey().compareTo(startKey.get(NotificationSubjectTokenEntity.FIELD_TERM_KEY).s()) < 0))
+                            .sorted(Comparator.comparing(NotificationSubjectTokenEntity::getTermKey).reversed())
+                            .toList();
+                    List<NotificationSubjectTokenEntity> page = matching.subList(0, Math.min(size, matching.size()));
+                    Map<String, AttributeValue> lastEvaluatedKey = matching.size() > size
+                            ? Map.of(NotificationSubjectTokenEntity.FIELD_PARTITION_KEY, AttributeValue.builder().s(page.get(size - 1).getPartitionKey()).build(),
+                                    NotificationSubjectTokenEntity.FIELD_TERM_KEY, AttributeValue.builder().s(page.get(size - 1).getTermKey()).build())
+                            : null;
+                    return new PageSearchTrunk<>(page, lastEvaluatedKey);
+                });
+    }
+
+    private static NotificationSubjectTokenEntity posting(String term, String iunRecipientId, String sentAt) {
+        return NotificationSubjectTokenEntity.of("senderId##" + SENDER_PARTITION, term, Instant.parse(sentAt), iunRecipientId);
+    }
+
+    private static NotificationMetadataEntity metadata(String iunRecipientId, String sentAt, String subject) {
+        return NotificationMetadataEntity.builder()
+                .iunRecipientId(iunRecipientId)
+                .sentAt(Instant.parse(sentAt))
+                .senderIdCreationMonth(SENDER_PARTITION)
+                .recipientIdCreationMonth(RECIPIENT_PARTITION)
+                .tableRow(Map.of("subject", subject))
+                .build();
+    }
+}
@@ -0,0 +1,135 @@
+package it.pagopa.pn.delivery.svc;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.pagopa.pn.api.dto.events.NotificationViewDelegateInfo;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.middleware.NotificationViewedProducer;
+import it.pagopa.pn.delivery.middleware.notificationdao.NotificationViewedEntityDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationViewedEntity;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+class NotificationViewedServiceTest {
+
+    private static final String IUN = "KSAU-CKOB-OFKR-202304-O-1";
+    private static final Instant NOW = Instant.parse("2023-04-10T10:00:00Z");
+
+    private NotificationViewedProducer producer;
+    private NotificationViewedEntityDao dao;
+    private PnDeliveryConfigs cfg;
+    private NotificationViewedService svc;
+
+    @BeforeEach
+    void setup() {
+        producer = Mockito.mock(NotificationViewedProducer.class);
+        dao = Mockito.mock(NotificationViewedEntityDao.class);
+        cfg = Mockito.mock(PnDeliveryConfigs.class);
+        when(cfg.getNotificationViewedDedupTtl()).thenReturn(Duration.ofDays(30));
+        when(cfg.getNotificationViewedRecentSetMaxEntries()).thenReturn(2);
+        svc = new NotificationViewedService(producer, dao, cfg, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void firstViewIsSentAndMarked() {
+        when(dao.putIfFirstView(any())).thenReturn(true);
+
+        svc.notifyViewed(IUN, NOW, 1, null);
+
+        ArgumentCaptor<NotificationViewedEntity> marker = ArgumentCaptor.forClass(NotificationViewedEntity.class);
+        Mockito.verify(dao).putIfFirstView(marker.capture());
+        Assertions.assertEquals(IUN + "##1##-", marker.getValue().getViewKey());
+        Assertions.assertEquals(NOW.plus(Duration.ofDays(30)).getEpochSecond(), marker.getValue().getTtl());
+        Mockito.verify(producer).sendNotificationViewed(IUN, NOW, 1, null);
+    }
+
+    @Test
+    void recentViewIsNotSentAgain() {
+        when(dao.putIfFirstView(any())).thenReturn(true);
+
+        svc.notifyViewed(IUN, NOW, 0, null);
+        svc.notifyViewed(IUN, NOW.plusSeconds(10), 0, null);
+
+        Mockito.verify(dao, Mockito.times(1)).putIfFirstView(any());
+        Mockito.verify(producer, Mockito.times(1)).sendNotificationViewed(any(), any(), Mockito.anyInt(), any());
+    }
+
+    @Test
+    void viewRegisteredByAnotherInstanceIsNotSent() {
+        when(dao.putIfFirstView(any())).thenReturn(false);
+
+        svc.notifyViewed(IUN, NOW, 0, null);
+        svc.notifyViewed(IUN, NOW, 0, null);
+
+        Mockito.verify(dao, Mockito.times(1)).putIfFirstView(any());
+        Mockito.verifyNoInteractions(producer);
+    }
+
+    @Test
+    void delegateViewIsSentSeparately() {
+        when(dao.putIfFirstView(any())).thenReturn(true);
+        NotificationViewDelegateInfo delegateInfo = NotificationViewDelegateInfo.builder()
+                .delegateType(NotificationViewDelegateInfo.DelegateType.PF)
+                .mandateId("mandateId")
+                .internalId("PF-delegate")
+                .build();
+
+        svc.notifyViewed(IUN, NOW, 0, null);
+        svc.notifyViewed(IUN, NOW, 0, delegateInfo);
+
+        Mockito.verify(producer).sendNotificationViewed(IUN, NOW, 0, null);
+        Mockito.verify(producer).sendNotificationViewed(IUN, NOW, 0, delegateInfo);
+    }
+
+    @Test
+    void sendFailureRemovesMarker() {
+        when(dao.putIfFirstView(any())).thenReturn(true);
+        Mockito.doThrow(new IllegalStateException("sqs")).when(producer).sendNotificationViewed(any(), any(), Mockito.anyInt(), any());
+
+        Assertions.assertThrows(IllegalStateException.class, () -> svc.notifyViewed(IUN, NOW, 0, null));
+
+        Mockito.verify(dao).delete(Key.builder().partitionValue(IUN + "##0##-").build());
+        Assertions.assertEquals(0, svc.recentSize());
+    }
+
+    @Test
+    void markerErrorSendsEvent() {
+        when(dao.putIfFirstView(any())).thenThrow(new IllegalStateException("dynamo"));
+
+        svc.notifyViewed(IUN, NOW, 0, null);
+
+        Mockito.verify(producer).sendNotificationViewed(IUN, NOW, 0, null);
+    }
+
+    @Test
+    void recentSetIsBounded() {
+        when(dao.putIfFirstView(any())).thenReturn(true);
+
+        for (int i = 0; i < 5; i++) {
+            svc.notifyViewed(IUN, NOW, i, null);
+        }
+
+        Assertions.assertEquals(2, svc.recentSize());
+    }
+
+    @Test
+    void disabledSendsEveryView() {
+        when(cfg.getNotificationViewedDedupTtl()).thenReturn(Duration.ZERO);
+        svc = new NotificationViewedService(producer, dao, cfg, new SimpleMeterRegistry());
+
+        svc.notifyViewed(IUN, NOW, 0, null);
+        svc.notifyViewed(IUN, NOW, 0, null);
+
+        Mockito.verify(producer, Mockito.times(2)).sendNotificationViewed(IUN, NOW, 0, null);
+        Mockito.verifyNoInteractions(dao);
+    }
+}
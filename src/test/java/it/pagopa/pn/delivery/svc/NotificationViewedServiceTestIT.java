@@ -0,0 +1,73 @@
+package it.pagopa.pn.delivery.svc;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.pagopa.pn.delivery.LocalStackTestConfig;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.middleware.NotificationViewedProducer;
+import it.pagopa.pn.delivery.middleware.notificationdao.NotificationViewedEntityDao;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+@ExtendWith(SpringExtension.class)
+@TestPropertySource(properties = {
+        "pn.delivery.notification-viewed-dao.table-name=NotificationsViewed"
+})
+@SpringBootTest
+@Import(LocalStackTestConfig.class)
+class NotificationViewedServiceTestIT {
+
+    private static final String IUN = "KSAU-CKOB-OFKR-202304-O-1";
+    private static final int INSTANCES = 3;
+    private static final int VIEWS = 30;
+
+    @Autowired
+    private NotificationViewedEntityDao notificationViewedEntityDao;
+
+    @Test
+    void oneEventForConcurrentViews() throws Exception {
+        //Given
+        NotificationViewedProducer producer = Mockito.mock( NotificationViewedProducer.class );
+        PnDeliveryConfigs cfg = Mockito.mock( PnDeliveryConfigs.class );
+        Mockito.when( cfg.getNotificationViewedDedupTtl() ).thenReturn( Duration.ofDays( 1 ) );
+        Mockito.when( cfg.getNotificationViewedRecentSetMaxEntries() ).thenReturn( 100 );
+        // istanze distinte, ciascuna con le proprie visualizzazioni in memoria
+        List<NotificationViewedService> instances = new ArrayList<>();
+        for (int i = 0; i < INSTANCES; i++) {
+            instances.add( new NotificationViewedService( producer, notificationViewedEntityDao, cfg, new SimpleMeterRegistry() ) );
+        }
+        Instant when = Instant.now();
+
+        //When
+        ExecutorService executor = Executors.newFixedThreadPool( VIEWS );
+        CountDownLatch start = new CountDownLatch( 1 );
+        List<Future<?>> views = new ArrayList<>();
+        for (int i = 0; i < VIEWS; i++) {
+            NotificationViewedService instance = instances.get( i % INSTANCES );
+            views.add( executor.submit( () -> {
+                start.await();
+                instance.notifyViewed( IUN, when, 0, null );
+                return null;
+            } ) );
+        }
+        start.countDown();
+        for (Future<?> view : views) {
+            view.get( 30, TimeUnit.SECONDS );
+        }
+        executor.shutdown();
+
+        //Then
+        Mockito.verify( producer, Mockito.times( 1 ) ).sendNotificationViewed( IUN, when, 0, null );
+    }
+}
@@ -3,6 +3,7 @@ package it.pagopa.pn.delivery.svc;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 
+import java.time.Clock;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -10,6 +11,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.*;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.jupiter.api.BeforeEach;
@@ -83,7 +85,8 @@ class ReceivedNotificationsDocumentTest {
 		this.entityDao = Mockito.mock(NotificationEntityDao.class);
 		this.entity2DtoMapper = Mockito.mock(EntityToDtoNotificationMapper.class);
 		this.pnDataVaultClient = Mockito.mock(PnDataVaultClientImpl.class);
-		this.notificationDao = new NotificationDaoDynamo(entityDao, null, null, null, entity2DtoMapper, pnDataVaultClient);
+		this.notificationDao = new NotificationDaoDynamo(entityDao, null, null, null, entity2DtoMapper, pnDataVaultClient,
+				Mockito.mock(PnDeliveryConfigs.class), Clock.systemUTC(), new SimpleMeterRegistry());
 	}
 
 	@Test
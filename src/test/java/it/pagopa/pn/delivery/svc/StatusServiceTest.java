@@ -7,15 +7,18 @@ import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationRecipie
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatus;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.RequestUpdateStatusDto;
 import it.pagopa.pn.delivery.middleware.notificationdao.NotificationDelegationMetadataEntityDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationDelegationMetadataEntity;
 import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
 import it.pagopa.pn.delivery.middleware.NotificationDao;
 import it.pagopa.pn.delivery.middleware.notificationdao.NotificationMetadataEntityDao;
 import it.pagopa.pn.delivery.models.InternalNotification;
 import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
+import it.pagopa.pn.delivery.svc.search.NotificationTimelineCache;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -40,12 +43,20 @@ class StatusServiceTest {
     private NotificationDelegatedService notificationDelegatedService;
     @Mock
     private PnDataVaultClientImpl dataVaultClient;
+    @Mock
+    private NotificationActivityService notificationActivityService;
+    @Mock
+    private NotificationSubjectIndexService notificationSubjectIndexService;
+    @Mock
+    private NotificationStatusCounterService notificationStatusCounterService;
+    @Mock
+    private NotificationTimelineCache notificationTimelineCache;
     
     private StatusService statusService;
 
     @BeforeEach
     public void setup() {
-        statusService = new StatusService(notificationDao, notificationMetadataEntityDao, notificationDelegationMetadataEntityDao, notificationDelegatedService, dataVaultClient);
+        statusService = new StatusService(notificationDao, notificationMetadataEntityDao, notificationDelegationMetadataEntityDao, notificationDelegatedService, dataVaultClient, notificationActivityService, notificationSubjectIndexService, notificationStatusCounterService, notificationTimelineCache);
     }
 
     @ExtendWith(MockitoExtension.class)
@@ -81,6 +92,90 @@ class StatusServiceTest {
         assertDoesNotThrow(() -> statusService.updateStatus(dto));
         
         Mockito.verify(notificationMetadataEntityDao).put(Mockito.any(NotificationMetadataEntity.class));
+        Mockito.verify(notificationSubjectIndexService, Mockito.never()).indexSubject(Mockito.any());
+        Mockito.verify(notificationTimelineCache).invalidate(iun);
+        // i mesi di mittente e destinatario sono marcati all'accettazione, ad ogni cambio di stato solo quelli delle deleghe
+        Mockito.verify(notificationActivityService, Mockito.never()).markActive(Mockito.any(NotificationMetadataEntity.class));
+        Mockito.verify(notificationActivityService, Mockito.times(1)).markActive(Mockito.<Collection<NotificationDelegationMetadataEntity>>any());
+    }
+
+    @ExtendWith(MockitoExtension.class)
+    @Test
+    void updateStatusAcceptedIndexesSubject() {
+
+        String iun = "202109-eb10750e-e876-4a5a-8762-c4348d679d35";
+
+        // WHEN
+        Optional<InternalNotification> notification = Optional.of(new InternalNotification(FullSentNotification.builder()
+                .iun(iun)
+                .sentAt( OffsetDateTime.parse("2021-09-16T15:00:00.00Z") )
+                .subject( "Subject" )
+                .paProtocolNumber( "123" )
+                .senderPaId( "PAID" )
+                .senderDenomination( "senderDenomination" )
+                .notificationStatus( NotificationStatus.IN_VALIDATION )
+                .recipients( Collections.singletonList(NotificationRecipient.builder()
+                        .taxId( "CodiceFiscale" )
+                        .recipientType( NotificationRecipient.RecipientTypeEnum.PF )
+                        .build()) )
+                .build(), List.of( "recipientId" ), X_PAGOPA_PN_SRC_CH));
+        Mockito.when(notificationDao.getNotificationByIun(iun)).thenReturn(notification);
+        Mockito.when( dataVaultClient.ensureRecipientByExternalId( RecipientType.PF, "CodiceFiscale" ) )
+                .thenReturn( "CodiceFiscale" );
+
+        RequestUpdateStatusDto dto = RequestUpdateStatusDto.builder()
+                .iun(iun)
+                .nextStatus(NotificationStatus.ACCEPTED)
+                .timestamp( OffsetDateTime.now() )
+                .build();
+
+        assertDoesNotThrow(() -> statusService.updateStatus(dto));
+
+        // l'indice per oggetto viene scritto prima della riga di metadati
+        InOrder inOrder = Mockito.inOrder(notificationSubjectIndexService, notificationMetadataEntityDao);
+        inOrder.verify(notificationSubjectIndexService).indexSubject(Mockito.argThat(metadata -> "Subject".equals(metadata.getTableRow().get("subject"))));
+        inOrder.verify(notificationMetadataEntityDao).put(Mockito.any(NotificationMetadataEntity.class));
+        Mockito.verify(notificationActivityService, Mockito.times(1)).markActive(Mockito.any(NotificationMetadataEntity.class));
+        Mockito.verify(notificationActivityService, Mockito.times(1)).markActive(Mockito.<Collection<NotificationDelegationMetadataEntity>>any());
+    }
+
+    @ExtendWith(MockitoExtension.class)
+    @Test
+    void updateStatusUpdatesCountersAfterMetadata() {
+
+        String iun = "202109-eb10750e-e876-4a5a-8762-c4348d679d35";
+
+        // WHEN
+        Optional<InternalNotification> notification = Optional.of(new InternalNotification(FullSentNotification.builder()
+                .iun(iun)
+                .sentAt( OffsetDateTime.parse("2021-09-16T15:00:00.00Z") )
+                .subject( "Subject" )
+                .paProtocolNumber( "123" )
+                .senderPaId( "PAID" )
+                .senderDenomination( "senderDenomination" )
+                .notificationStatus( NotificationStatus.ACCEPTED )
+                .recipients( Collections.singletonList(NotificationRecipient.builder()
+                        .taxId( "CodiceFiscale" )
+                        .recipientType( NotificationRecipient.RecipientTypeEnum.PF )
+                        .build()) )
+                .build(), List.of( "recipientId" ), X_PAGOPA_PN_SRC_CH));
+        Mockito.when(notificationDao.getNotificationByIun(iun)).thenReturn(notification);
+        Mockito.when( dataVaultClient.ensureRecipientByExternalId( RecipientType.PF, "CodiceFiscale" ) )
+                .thenReturn( "CodiceFiscale" );
+
+        RequestUpdateStatusDto dto = RequestUpdateStatusDto.builder()
+                .iun(iun)
+                .nextStatus(NotificationStatus.DELIVERED)
+                .timestamp( OffsetDateTime.now() )
+                .build();
+
+        assertDoesNotThrow(() -> statusService.updateStatus(dto));
+
+        // i contatori vengono aggiornati dopo le righe di metadati
+        InOrder inOrder = Mockito.inOrder(notificationMetadataEntityDao, notificationStatusCounterService);
+        inOrder.verify(notificationMetadataEntityDao).put(Mockito.any(NotificationMetadataEntity.class));
+        inOrder.verify(notificationStatusCounterService).updateCounters(Mockito.eq(iun), Mockito.eq(NotificationStatus.DELIVERED),
+                Mockito.argThat(metadata -> metadata.size() == 1 && "PAID##202109".equals(metadata.get(0).getSenderIdCreationMonth())));
     }
 
     @ExtendWith(MockitoExtension.class)
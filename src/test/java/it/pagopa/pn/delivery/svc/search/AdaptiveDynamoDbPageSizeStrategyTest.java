@@ -0,0 +1,117 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+class AdaptiveDynamoDbPageSizeStrategyTest {
+
+    private static final int REQUIRED_SIZE = 31;
+    private static final String INDEX = "senderId";
+
+    private PnDeliveryConfigs cfg;
+    private SimpleMeterRegistry meterRegistry;
+    private AtomicLong clock;
+    private AdaptiveDynamoDbPageSizeStrategy strategy;
+
+    @BeforeEach
+    void setup() {
+        cfg = Mockito.mock(PnDeliveryConfigs.class);
+        Mockito.when(cfg.getSearchPageSizeSketchSlots()).thenReturn(64);
+        Mockito.when(cfg.getSearchPageSizeDecayHalfLife()).thenReturn(Duration.ofMinutes(10));
+        meterRegistry = new SimpleMeterRegistry();
+        clock = new AtomicLong(1_000_000L);
+        strategy = new AdaptiveDynamoDbPageSizeStrategy(cfg, meterRegistry, clock::get);
+    }
+
+    @Test
+    void initialPageSizeWithoutObservations() {
+        DynamoDbPageSizeStrategy.SearchShape filtered = DynamoDbPageSizeStrategy.SearchShape.of(INDEX, "sender1", "status");
+        DynamoDbPageSizeStrategy.SearchShape notFiltered = DynamoDbPageSizeStrategy.SearchShape.of(INDEX, "sender1");
+
+        Assertions.assertEquals(REQUIRED_SIZE * DynamoDbPageSizeStrategy.FILTER_EXPRESSION_APPLIED_MULTIPLIER, strategy.initialPageSize(filtered, REQUIRED_SIZE));
+        Assertions.assertEquals(REQUIRED_SIZE, strategy.initialPageSize(notFiltered, REQUIRED_SIZE));
+    }
+
+    @Test
+    void initialPageSizeGrowsForSelectiveFilters() {
+        DynamoDbPageSizeStrategy.SearchShape shape = DynamoDbPageSizeStrategy.SearchShape.of(INDEX, "sender1", "status");
+        for (int i = 0; i < 5; i++)
+            strategy.recordPage(shape, 200, 2, true);
+
+        Assertions.assertEquals(NotificationSearchMultiPage.MAX_DYNAMO_SIZE, strategy.initialPageSize(shape, REQUIRED_SIZE));
+    }
+
+    @Test
+    void initialPageSizeShrinksForNotSelectiveFilters() {
+        DynamoDbPageSizeStrategy.SearchShape shape = DynamoDbPageSizeStrategy.SearchShape.of(INDEX, "sender1", "group");
+        for (int i = 0; i < 5; i++)
+            strategy.recordPage(shape, 124, 120, true);
+
+        int pageSize = strategy.initialPageSize(shape, REQUIRED_SIZE);
+        Assertions.assertTrue(pageSize >= REQUIRED_SIZE);
+        Assertions.assertTrue(pageSize < REQUIRED_SIZE * DynamoDbPageSizeStrategy.FILTER_EXPRESSION_APPLIED_MULTIPLIER);
+    }
+
+    @Test
+    void exhaustedPartitionsAreNotObserved() {
+        DynamoDbPageSizeStrategy.SearchShape shape = DynamoDbPageSizeStrategy.SearchShape.of(INDEX, "sender1", "status");
+        for (int i = 0; i < 5; i++)
+            strategy.recordPage(shape, 200, 2, false);
+
+        Assertions.assertEquals(REQUIRED_SIZE * DynamoDbPageSizeStrategy.FILTER_EXPRESSION_APPLIED_MULTIPLIER, strategy.initialPageSize(shape, REQUIRED_SIZE));
+    }
+
+    @Test
+    void otherOwnerUsesAggregatedObservations() {
+        DynamoDbPageSizeStrategy.SearchShape shape = DynamoDbPageSizeStrategy.SearchShape.of(INDEX, "sender1", "status");
+        for (int i = 0; i < 5; i++)
+            strategy.recordPage(shape, 200, 2, true);
+
+        DynamoDbPageSizeStrategy.SearchShape otherOwner = DynamoDbPageSizeStrategy.SearchShape.of(INDEX, "sender2", "status");
+        Assertions.assertEquals(NotificationSearchMultiPage.MAX_DYNAMO_SIZE, strategy.initialPageSize(otherOwner, REQUIRED_SIZE));
+
+        DynamoDbPageSizeStrategy.SearchShape otherFilters = DynamoDbPageSizeStrategy.SearchShape.of(INDEX, "sender1", "status", "group");
+        Assertions.assertEquals(REQUIRED_SIZE * DynamoDbPageSizeStrategy.FILTER_EXPRESSION_APPLIED_MULTIPLIER, strategy.initialPageSize(otherFilters, REQUIRED_SIZE));
+    }
+
+    @Test
+    void observationsDecay() {
+        DynamoDbPageSizeStrategy.SearchShape shape = DynamoDbPageSizeStrategy.SearchShape.of(INDEX, "sender1", "status");
+        for (int i = 0; i < 5; i++)
+            strategy.recordPage(shape, 200, 2, true);
+
+        clock.addAndGet(Duration.ofMinutes(30).toNanos());
+
+        Assertions.assertEquals(REQUIRED_SIZE * DynamoDbPageSizeStrategy.FILTER_EXPRESSION_APPLIED_MULTIPLIER, strategy.initialPageSize(shape, REQUIRED_SIZE));
+    }
+
+    @Test
+    void disabledStrategyUsesFixedMultiplier() {
+        Mockito.when(cfg.getSearchPageSizeAdaptive()).thenReturn(false);
+        strategy = new AdaptiveDynamoDbPageSizeStrategy(cfg, meterRegistry, clock::get);
+        DynamoDbPageSizeStrategy.SearchShape shape = DynamoDbPageSizeStrategy.SearchShape.of(INDEX, "sender1", "status");
+        for (int i = 0; i < 5; i++)
+            strategy.recordPage(shape, 200, 2, true);
+
+        Assertions.assertEquals(REQUIRED_SIZE * DynamoDbPageSizeStrategy.FILTER_EXPRESSION_APPLIED_MULTIPLIER, strategy.initialPageSize(shape, REQUIRED_SIZE));
+    }
+
+    @Test
+    void metricsAreRecorded() {
+        DynamoDbPageSizeStrategy.SearchShape shape = DynamoDbPageSizeStrategy.SearchShape.of(INDEX, "sender1", "status");
+        strategy.recordPage(shape, 200, 2, true);
+        strategy.recordPage(shape, 200, 2, false);
+        strategy.initialPageSize(shape, REQUIRED_SIZE);
+
+        Assertions.assertEquals(2.0, meterRegistry.get("pn.delivery.search.dynamo.pages").tag("filters", "status").counter().count());
+        Assertions.assertEquals(1, meterRegistry.get("pn.delivery.search.dynamo.selectivity").summary().count());
+        Assertions.assertEquals(1, meterRegistry.get("pn.delivery.search.dynamo.initial-page-size").tag("source", "fixed").summary().count());
+    }
+}
@@ -44,7 +44,7 @@ class NotificationDelegatedSearchMultiPageTest {
 
     @BeforeEach
     void setup() {
-        notificationDao = mock(NotificationDao.class);
+        notificationDao = mock(NotificationDao.class, CALLS_REAL_METHODS);
         cfg = mock(PnDeliveryConfigs.class);
         entityToDtoMapper = mock(EntityToDtoNotificationMetadataMapper.class);
         dataVaultClient = mock(PnDataVaultClientImpl.class);
@@ -95,6 +95,52 @@ class NotificationDelegatedSearchMultiPageTest {
         verify(entityToDtoMapper).entity2Dto(pst.getResults().get(0));
     }
 
+    @Test
+    void testCheckMandateWithStoredAttributes() {
+        Instant validFrom = Instant.now().minus(100, ChronoUnit.DAYS);
+        PageSearchTrunk<NotificationDelegationMetadataEntity> pst = new PageSearchTrunk<>();
+        pst.setResults(List.of(
+                withMandateAttributes(generateNotificationDelegationMetadataEntity("N1", "m1", "s1", "r1", null), validFrom, List.of("s1")),
+                withMandateAttributes(generateNotificationDelegationMetadataEntity("N2", "m1", "s2", "r1", null), validFrom, List.of("s1")),
+                withMandateAttributes(generateNotificationDelegationMetadataEntity("N3", "m1", "s1", "r1", Instant.now().minus(200, ChronoUnit.DAYS)), validFrom, List.of("s1")),
+                generateNotificationDelegationMetadataEntity("N4", "m2", "s1", "r2", null)
+        ));
+        when(notificationDao.searchDelegatedForOneMonth(any(), any(), any(), anyInt(), any()))
+                .thenReturn(pst).thenReturn(new PageSearchTrunk<>());
+        when(cfg.getMaxPageSize()).thenReturn(1);
+        InternalMandateDto mandate2 = new InternalMandateDto();
+        mandate2.setMandateId("m2");
+        mandate2.setDelegator("r2");
+        mandate2.setDelegate(DELEGATE_ID);
+        when(mandateClient.listMandatesByDelegators(eq(DelegateType.PG), any(), anyList()))
+                .thenReturn(List.of(mandate2));
+
+        ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> result = searchMultiPage.searchNotificationMetadata();
+
+        assertEquals(2, result.getResultsPage().size());
+        verify(entityToDtoMapper).entity2Dto(pst.getResults().get(0));
+        verify(entityToDtoMapper).entity2Dto(pst.getResults().get(3));
+        // solo la riga senza attributi della delega viene verificata sul servizio delle deleghe
+        verify(mandateClient).listMandatesByDelegators(eq(DelegateType.PG), any(),
+                argThat(request -> request.size() == 1 && "m2".equals(request.get(0).getMandateId())));
+    }
+
+    @Test
+    void testCheckMandateSkipsMandateServiceWhenAttributesAreCurrent() {
+        PageSearchTrunk<NotificationDelegationMetadataEntity> pst = new PageSearchTrunk<>();
+        pst.setResults(List.of(
+                withMandateAttributes(generateNotificationDelegationMetadataEntity("N1", "m1", "s1", "r1", null), null, null)
+        ));
+        when(notificationDao.searchDelegatedForOneMonth(any(), any(), any(), anyInt(), any()))
+                .thenReturn(pst).thenReturn(new PageSearchTrunk<>());
+        when(cfg.getMaxPageSize()).thenReturn(1);
+
+        ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> result = searchMultiPage.searchNotificationMetadata();
+
+        assertEquals(1, result.getResultsPage().size());
+        verify(mandateClient, never()).listMandatesByDelegators(any(), any(), anyList());
+    }
+
     @Test
     void testMultiPageSearch() {
         List<NotificationDelegationMetadataEntity> listTrunk1 = List.of(
@@ -222,4 +268,11 @@ class NotificationDelegatedSearchMultiPageTest {
                 .build();
     }
 
+    private NotificationDelegationMetadataEntity withMandateAttributes(NotificationDelegationMetadataEntity entity, Instant validFrom, List<String> visibilityIds) {
+        entity.setMandateValidFrom(validFrom);
+        entity.setMandateVisibilityIds(visibilityIds);
+        entity.setMandateVersion(NotificationDelegationMetadataEntity.MANDATE_ATTRIBUTES_VERSION);
+        return entity;
+    }
+
 }
\ No newline at end of file
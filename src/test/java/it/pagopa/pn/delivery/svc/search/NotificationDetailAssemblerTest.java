@@ -0,0 +1,386 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.pagopa.pn.commons.exceptions.PnInternalException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.exception.PnDeliveryExceptionCodes;
+import it.pagopa.pn.delivery.exception.PnNotificationNotFoundException;
+import it.pagopa.pn.delivery.generated.openapi.clients.externalregistries.model.PaymentInfo;
+import it.pagopa.pn.delivery.generated.openapi.clients.externalregistries.model.PaymentStatus;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.FullSentNotification;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationRecipient;
+import it.pagopa.pn.delivery.middleware.NotificationDao;
+import it.pagopa.pn.delivery.models.InternalNotification;
+import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
+import it.pagopa.pn.delivery.pnclient.deliverypush.PnDeliveryPushClientImpl;
+import it.pagopa.pn.delivery.pnclient.externalregistries.PnExternalRegistriesClientImpl;
+import org.junit.jupiter.api.*;
+import org.mapstruct.factory.Mappers;
+import org.mockito.Mockito;
+import org.mockserver.integration.ClientAndServer;
+import org.mockserver.model.Delay;
+import org.mockserver.model.MediaType;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockserver.integration.ClientAndServer.startClientAndServer;
+import static org.mockserver.model.HttpRequest.request;
+import static org.mockserver.model.HttpResponse.response;
+
+/**
+ * Le dipendenze del dettaglio sono simulate con mock-server e una latenza per ciascuna:
+ * la durata del dettaglio deve essere vicina alla latenza massima e non alla somma.
+ */
+class NotificationDetailAssemblerTest {
+
+    private static final String IUN = "KSAU-CKOB-OFKR-202302-M-1";
+    private static final String SENDER_ID = "senderId";
+    private static final String INTERNAL_ID = "PF-internalId-0";
+    private static final long STAGE_LATENCY_MILLIS = 400;
+
+    private static ClientAndServer mockServer;
+
+    private PnDeliveryConfigs cfg;
+    private NotificationDao notificationDao;
+    private MeterRegistry meterRegistry;
+    private ExecutorService executor;
+    private NotificationDetailAssembler assembler;
+
+    @BeforeAll
+    static void startMockServer() {
+        mockServer = startClientAndServer();
+    }
+
+    @AfterAll
+    static void stopMockServer() {
+        mockServer.stop();
+    }
+
+    @BeforeEach
+    void setup() {
+        mockServer.reset();
+        String baseUrl = "http://localhost:" + mockServer.getLocalPort();
+        cfg = Mockito.mock(PnDeliveryConfigs.class);
+        Mockito.when(cfg.getDataVaultBaseUrl()).thenReturn(baseUrl);
+        Mockito.when(cfg.getDeliveryPushBaseUrl()).thenReturn(baseUrl);
+        Mockito.when(cfg.getExternalRegistriesBaseUrl()).thenReturn(baseUrl);
+        Mockito.when(cfg.getDetailDataVaultTimeout()).thenReturn(Duration.ofSeconds(5));
+        Mockito.when(cfg.getDetailTimelineTimeout()).thenReturn(Duration.ofSeconds(5));
+        Mockito.when(cfg.getDetailGroupsTimeout()).thenReturn(Duration.ofSeconds(5));
+        Mockito.when(cfg.getDetailPaymentInfoTimeout()).thenReturn(Duration.ofSeconds(5));
+
+        notificationDao = Mockito.mock(NotificationDao.class);
+        Mockito.when(notificationDao.getNotificationByIun(IUN, false)).thenAnswer(invocation -> Optional.of(newNotification()));
+
+        meterRegistry = new SimpleMeterRegistry();
+        executor = Executors.newFixedThreadPool(8);
+        RestTemplate restTemplate = new RestTemplate();
+        ExecutorService paGroupsRefreshExecutor = Mockito.mock(ExecutorService.class);
+        assembler = new NotificationDetailAssembler(
+                notificationDao,
+                new PnDataVaultClientImpl(restTemplate, cfg, Clock.systemUTC(), meterRegistry),
+                new PnDeliveryPushClientImpl(restTemplate, cfg),
+                new PnExternalRegistriesClientImpl(restTemplate, cfg, Clock.systemUTC(), meterRegistry, paGroupsRefreshExecutor),
+                new NotificationTimelineCache(Mappers.getMapper(TimelineElementMapper.class), cfg, Clock.systemUTC(), meterRegistry),
+                cfg,
+                meterRegistry,
+                executor);
+    }
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void latencyIsTheSlowestStageNotTheSum() {
+        mockAllStages(STAGE_LATENCY_MILLIS);
+        // prima chiamata per aprire le connessioni
+        assembler.assemble(IUN, true, SENDER_ID, notification -> {});
+
+        long startedAt = System.nanoTime();
+        NotificationDetailAssembler.NotificationDetail detail = assembler.assemble(IUN, true, SENDER_ID, notification -> {});
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+        // quattro letture da 400ms: in sequenza almeno 1600ms
+        Assertions.assertTrue(elapsedMillis >= STAGE_LATENCY_MILLIS, "elapsed " + elapsedMillis);
+        Assertions.assertTrue(elapsedMillis < 3 * STAGE_LATENCY_MILLIS, "elapsed " + elapsedMillis);
+
+        NotificationRecipient recipient = detail.notification().getRecipients().get(0);
+        Assertions.assertEquals("RSSMRA80A01H501U", recipient.getTaxId());
+        Assertions.assertEquals("Mario Rossi", recipient.getDenomination());
+        Assertions.assertEquals("mario.rossi@pec.it", recipient.getDigitalDomicile().getAddress());
+        Assertions.assertEquals("ACCEPTED", detail.timeline().status().getValue());
+        Assertions.assertEquals("Gruppo 1", detail.groups().get("group-1").getName());
+
+        for (String stage : List.of(NotificationDetailAssembler.STAGE_ENTITY, NotificationDetailAssembler.STAGE_DENOMINATIONS,
+                NotificationDetailAssembler.STAGE_ADDRESSES, NotificationDetailAssembler.STAGE_TIMELINE, NotificationDetailAssembler.STAGE_GROUPS)) {
+            Assertions.assertEquals(2, stageTimer(stage, "success").count(), stage);
+        }
+    }
+
+    @Test
+    void stageTimeoutFailsDetailWithoutWaitingOtherStages() {
+        mockDenominations(50);
+        mockAddresses(50);
+        mockTimeline(3000);
+        mockGroups(50);
+        Mockito.when(cfg.getDetailTimelineTimeout()).thenReturn(Duration.ofMillis(300));
+
+        long startedAt = System.nanoTime();
+        PnInternalException exc = Assertions.assertThrows(PnInternalException.class,
+                () -> assembler.assemble(IUN, true, SENDER_ID, notification -> {}));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+        Assertions.assertEquals(PnDeliveryExceptionCodes.ERROR_CODE_DELIVERY_NOTIFICATION_DETAIL_TIMEOUT,
+                exc.getProblem().getErrors().get(0).getCode());
+        Assertions.assertTrue(elapsedMillis < 2000, "elapsed " + elapsedMillis);
+        Assertions.assertEquals(1, stageTimer(NotificationDetailAssembler.STAGE_TIMELINE, "timeout").count());
+    }
+
+    @Test
+    void rejectedStageFailsWithStageTimeout() {
+        mockAllStages(50);
+        executor.shutdown();
+
+        PnInternalException exc = Assertions.assertThrows(PnInternalException.class,
+                () -> assembler.assemble(IUN, true, SENDER_ID, notification -> {}));
+
+        Assertions.assertEquals(PnDeliveryExceptionCodes.ERROR_CODE_DELIVERY_NOTIFICATION_DETAIL_TIMEOUT,
+                exc.getProblem().getErrors().get(0).getCode());
+        Assertions.assertEquals(1, stageTimer(NotificationDetailAssembler.STAGE_DENOMINATIONS, "timeout").count());
+        // la lettura rifiutata non viene eseguita dal thread della richiesta
+        Assertions.assertEquals(0, mockServer.retrieveRecordedRequests(request()).length);
+    }
+
+    @Test
+    void failedStageCancelsSlowerStages() {
+        mockDenominations(3000);
+        mockServer.when(request().withMethod("GET").withPath(".*/notifications/" + IUN + "/addresses"))
+                .respond(response().withStatusCode(500));
+        mockTimeline(3000);
+        mockGroups(3000);
+
+        long startedAt = System.nanoTime();
+        Assertions.assertThrows(RuntimeException.class, () -> assembler.assemble(IUN, true, SENDER_ID, notification -> {}));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+        Assertions.assertTrue(elapsedMillis < 2000, "elapsed " + elapsedMillis);
+        Assertions.assertEquals(1, stageTimer(NotificationDetailAssembler.STAGE_ADDRESSES, "failure").count());
+    }
+
+    @Test
+    void slowGroupsDoNotFailDetail() {
+        mockDenominations(50);
+        mockAddresses(50);
+        mockTimeline(50);
+        mockGroups(3000);
+        Mockito.when(cfg.getDetailGroupsTimeout()).thenReturn(Duration.ofMillis(300));
+
+        long startedAt = System.nanoTime();
+        NotificationDetailAssembler.NotificationDetail detail = assembler.assemble(IUN, true, SENDER_ID, notification -> {});
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+        Assertions.assertTrue(detail.groups().isEmpty());
+        Assertions.assertEquals("RSSMRA80A01H501U", detail.notification().getRecipients().get(0).getTaxId());
+        Assertions.assertTrue(elapsedMillis < 2000, "elapsed " + elapsedMillis);
+    }
+
+    @Test
+    void entityCheckRunsBeforeOtherStages() {
+        mockAllStages(50);
+
+        Assertions.assertThrows(PnNotificationNotFoundException.class, () -> assembler.assemble(IUN, true, SENDER_ID, notification -> {
+            throw new PnNotificationNotFoundException("not the sender");
+        }));
+
+        Assertions.assertEquals(0, mockServer.retrieveRecordedRequests(request()).length);
+    }
+
+    @Test
+    void paymentInfosAreReadInParallel() {
+        mockServer.when(request().withMethod("GET").withPath(".*/paymentinfo/.*"))
+                .respond(response().withStatusCode(200).withContentType(MediaType.APPLICATION_JSON)
+                        .withBody("{\"status\":\"SUCCEEDED\"}").withDelay(Delay.milliseconds(STAGE_LATENCY_MILLIS)));
+        List<NotificationDetailAssembler.PaymentNotice> notices = List.of(
+                new NotificationDetailAssembler.PaymentNotice("77777777777", "302000100000019421"),
+                new NotificationDetailAssembler.PaymentNotice("77777777777", "302000100000019422"),
+                new NotificationDetailAssembler.PaymentNotice("77777777777", "302000100000019423"));
+        assembler.getPaymentInfos(IUN, notices.subList(0, 1));
+
+        long startedAt = System.nanoTime();
+        List<PaymentInfo> paymentInfos = assembler.getPaymentInfos(IUN, notices);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+        Assertions.assertEquals(3, paymentInfos.size());
+        paymentInfos.forEach(paymentInfo -> Assertions.assertEquals(PaymentStatus.SUCCEEDED, paymentInfo.getStatus()));
+        Assertions.assertTrue(elapsedMillis < 3 * STAGE_LATENCY_MILLIS, "elapsed " + elapsedMillis);
+    }
+
+    @Test
+    void paymentInfoTimeoutReturnsNull() {
+        mockServer.when(request().withMethod("GET").withPath(".*/paymentinfo/.*"))
+                .respond(response().withStatusCode(200).withContentType(MediaType.APPLICATION_JSON)
+                        .withBody("{\"status\":\"SUCCEEDED\"}").withDelay(Delay.milliseconds(3000)));
+        Mockito.when(cfg.getDetailPaymentInfoTimeout()).thenReturn(Duration.ofMillis(300));
+
+        List<PaymentInfo> paymentInfos = assembler.getPaymentInfos(IUN,
+                List.of(new NotificationDetailAssembler.PaymentNotice("77777777777", "302000100000019421")));
+
+        Assertions.assertEquals(Collections.singletonList(null), paymentInfos);
+    }
+
+    @Test
+    void bulkReadsSharedDataOnceAndReturnsPartialResults() {
+        String failingIun = "KSAU-CKOB-OFKR-202302-M-2";
+        String otherSenderIun = "KSAU-CKOB-OFKR-202302-M-3";
+        String missingIun = "KSAU-CKOB-OFKR-202302-M-4";
+        mockNotifications(IUN, failingIun, otherSenderIun);
+        mockDenominations(50);
+        mockServer.when(request().withMethod("GET").withPath(".*/notifications/" + failingIun + "/addresses"))
+                .respond(response().withStatusCode(500));
+        mockServer.when(request().withMethod("GET").withPath(".*/notifications/.*/addresses"))
+                .respond(response().withStatusCode(200).withContentType(MediaType.APPLICATION_JSON)
+                        .withBody("[{\"denomination\":\"Mario Rossi\",\"digitalAddress\":{\"value\":\"mario.rossi@pec.it\"}}]"));
+        mockServer.when(request().withMethod("GET").withPath(".*/history"))
+                .respond(response().withStatusCode(200).withContentType(MediaType.APPLICATION_JSON).withBody(historyBody()));
+        mockGroups(50);
+
+        List<NotificationDetailAssembler.NotificationDetailResult> results = assembler.assembleAll(
+                List.of(IUN, failingIun, otherSenderIun, missingIun), SENDER_ID, notification -> {
+                    if (notification.getIun().equals(otherSenderIun))
+                        throw new PnNotificationNotFoundException("not the sender");
+                });
+
+        Assertions.assertEquals(List.of(IUN, failingIun, otherSenderIun, missingIun),
+                results.stream().map(NotificationDetailAssembler.NotificationDetailResult::iun).toList());
+        NotificationDetailAssembler.NotificationDetail detail = results.get(0).detail();
+        Assertions.assertNull(results.get(0).error());
+        Assertions.assertEquals("Mario Rossi", detail.notification().getRecipients().get(0).getDenomination());
+        Assertions.assertEquals("mario.rossi@pec.it", detail.notification().getRecipients().get(0).getDigitalDomicile().getAddress());
+        Assertions.assertEquals("ACCEPTED", detail.timeline().status().getValue());
+        Assertions.assertEquals("Gruppo 1", detail.groups().get("group-1").getName());
+        Assertions.assertNotNull(results.get(1).error());
+        Assertions.assertInstanceOf(PnNotificationNotFoundException.class, results.get(2).error());
+        Assertions.assertInstanceOf(PnNotificationNotFoundException.class, results.get(3).error());
+
+        Mockito.verify(notificationDao, Mockito.never()).getNotificationByIun(any(), Mockito.anyBoolean());
+        Assertions.assertEquals(1, mockServer.retrieveRecordedRequests(request().withPath(".*/recipients/internal.*")).length);
+        Assertions.assertEquals(1, mockServer.retrieveRecordedRequests(request().withPath(".*groups.*")).length);
+        Assertions.assertEquals(0, mockServer.retrieveRecordedRequests(request().withPath(".*" + otherSenderIun + ".*")).length);
+    }
+
+    @Test
+    void bulkReadsAreBounded() {
+        List<String> iuns = List.of("KSAU-CKOB-OFKR-202302-M-1", "KSAU-CKOB-OFKR-202302-M-2", "KSAU-CKOB-OFKR-202302-M-3",
+                "KSAU-CKOB-OFKR-202302-M-4", "KSAU-CKOB-OFKR-202302-M-5", "KSAU-CKOB-OFKR-202302-M-6");
+        mockNotifications(iuns.toArray(String[]::new));
+        mockDenominations(0);
+        mockServer.when(request().withMethod("GET").withPath(".*/notifications/.*/addresses"))
+                .respond(response().withStatusCode(200).withContentType(MediaType.APPLICATION_JSON).withBody("[]")
+                        .withDelay(Delay.milliseconds(STAGE_LATENCY_MILLIS)));
+        mockServer.when(request().withMethod("GET").withPath(".*/history"))
+                .respond(response().withStatusCode(200).withContentType(MediaType.APPLICATION_JSON).withBody(historyBody())
+                        .withDelay(Delay.milliseconds(STAGE_LATENCY_MILLIS)));
+        mockGroups(0);
+        Mockito.when(cfg.getDetailBulkMaxConcurrency()).thenReturn(4);
+
+        long startedAt = System.nanoTime();
+        List<NotificationDetailAssembler.NotificationDetailResult> results = assembler.assembleAll(iuns, SENDER_ID, notification -> {});
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+        results.forEach(result -> Assertions.assertNull(result.error(), result.iun()));
+        // 12 letture da 400ms, al più 4 alla volta: almeno 3 turni
+        Assertions.assertTrue(elapsedMillis >= 3 * STAGE_LATENCY_MILLIS, "elapsed " + elapsedMillis);
+    }
+
+    private void mockNotifications(String... iuns) {
+        Mockito.when(notificationDao.getNotificationsByIun(any())).thenAnswer(invocation -> {
+            Map<String, InternalNotification> notifications = new LinkedHashMap<>();
+            for (String iun : iuns)
+                notifications.put(iun, newNotification(iun));
+            return notifications;
+        });
+    }
+
+    private void mockAllStages(long latencyMillis) {
+        mockDenominations(latencyMillis);
+        mockAddresses(latencyMillis);
+        mockTimeline(latencyMillis);
+        mockGroups(latencyMillis);
+    }
+
+    private void mockDenominations(long latencyMillis) {
+        mockServer.when(request().withMethod("GET").withPath(".*/recipients/internal.*"))
+                .respond(response().withStatusCode(200).withContentType(MediaType.APPLICATION_JSON)
+                        .withBody("[{\"internalId\":\"" + INTERNAL_ID + "\",\"taxId\":\"RSSMRA80A01H501U\",\"denomination\":\"Mario Rossi\"}]")
+                        .withDelay(Delay.milliseconds(latencyMillis)));
+    }
+
+    private void mockAddresses(long latencyMillis) {
+        mockServer.when(request().withMethod("GET").withPath(".*/notifications/" + IUN + "/addresses"))
+                .respond(response().withStatusCode(200).withContentType(MediaType.APPLICATION_JSON)
+                        .withBody("[{\"denomination\":\"Mario Rossi\",\"digitalAddress\":{\"value\":\"mario.rossi@pec.it\"}}]")
+                        .withDelay(Delay.milliseconds(latencyMillis)));
+    }
+
+    private void mockTimeline(long latencyMillis) {
+        mockServer.when(request().withMethod("GET").withPath(".*/" + IUN + "/history"))
+                .respond(response().withStatusCode(200).withContentType(MediaType.APPLICATION_JSON)
+                        .withBody(historyBody())
+                        .withDelay(Delay.milliseconds(latencyMillis)));
+    }
+
+    private void mockGroups(long latencyMillis) {
+        mockServer.when(request().withMethod("GET").withPath(".*groups.*"))
+                .respond(response().withStatusCode(200).withContentType(MediaType.APPLICATION_JSON)
+                        .withBody(groupsBody())
+                        .withDelay(Delay.milliseconds(latencyMillis)));
+    }
+
+    private static String historyBody() {
+        return "{\"notificationStatus\":\"ACCEPTED\",\"notificationStatusHistory\":[],\"timeline\":[]}";
+    }
+
+    private static String groupsBody() {
+        return "[{\"id\":\"group-1\",\"name\":\"Gruppo 1\"}]";
+    }
+
+    private Timer stageTimer(String stage, String outcome) {
+        return meterRegistry.find(NotificationDetailAssembler.METRIC_STAGE)
+                .tag("stage", stage)
+                .tag("outcome", outcome)
+                .timer();
+    }
+
+    private static InternalNotification newNotification() {
+        return newNotification(IUN);
+    }
+
+    private static InternalNotification newNotification(String iun) {
+        return new InternalNotification(FullSentNotification.builder()
+                .iun(iun)
+                .senderPaId(SENDER_ID)
+                .group("group-1")
+                .sentAt(OffsetDateTime.parse("2023-02-22T10:11:12.123Z"))
+                .recipients(Collections.singletonList(NotificationRecipient.builder()
+                        .recipientType(NotificationRecipient.RecipientTypeEnum.PF)
+                        .internalId(INTERNAL_ID)
+                        .build()))
+                .build(), Collections.singletonList(INTERNAL_ID), "WEB");
+    }
+}
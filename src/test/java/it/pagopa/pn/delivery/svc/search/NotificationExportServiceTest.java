@@ -0,0 +1,198 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import it.pagopa.pn.commons.exceptions.PnInternalException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.BaseRecipientDto;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationExportRow;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatus;
+import it.pagopa.pn.delivery.middleware.NotificationDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.EntityToDtoNotificationMetadataMapper;
+import it.pagopa.pn.delivery.middleware.notificationdao.NotificationActivityEntityDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
+import it.pagopa.pn.delivery.models.PageSearchTrunk;
+import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
+import it.pagopa.pn.delivery.svc.NotificationActivityService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.GZIPInputStream;
+
+import static org.mockito.ArgumentMatchers.*;
+
+class NotificationExportServiceTest {
+
+    private static final String SENDER_ID = "senderId";
+    private static final String RECIPIENT_INTERNAL_ID = "PF-internalId";
+    private static final String RECIPIENT_TAX_ID = "RSSMRA80A01H501U";
+
+    private NotificationDao notificationDao;
+    private PnDataVaultClientImpl dataVaultClient;
+    private PnLastEvaluatedKeyCodec codec;
+    private ObjectMapper objectMapper;
+    private ExecutorService executor;
+    private NotificationExportService service;
+    private List<String> partitions;
+
+    @BeforeEach
+    void setup() {
+        notificationDao = Mockito.mock(NotificationDao.class);
+        dataVaultClient = Mockito.mock(PnDataVaultClientImpl.class);
+        PnDeliveryConfigs cfg = Mockito.mock(PnDeliveryConfigs.class);
+        Mockito.when(cfg.getSearchCursorMacKey()).thenReturn("test-mac-key");
+        Mockito.when(cfg.getSearchExportPageSize()).thenReturn(2);
+        Mockito.when(cfg.getSearchExportPrefetchPages()).thenReturn(1);
+        codec = new PnLastEvaluatedKeyCodec(cfg);
+        objectMapper = new ObjectMapper().findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        executor = Executors.newCachedThreadPool();
+
+        BaseRecipientDto recipient = new BaseRecipientDto();
+        recipient.setInternalId(RECIPIENT_INTERNAL_ID);
+        recipient.setTaxId(RECIPIENT_TAX_ID);
+        Mockito.when(dataVaultClient.getRecipientDenominationByInternalId(anyList())).thenReturn(List.of(recipient));
+
+        service = new NotificationExportService(notificationDao, new EntityToDtoNotificationMetadataMapper(), dataVaultClient,
+                new NotificationActivityService(Mockito.mock(NotificationActivityEntityDao.class), cfg),
+                codec, objectMapper, executor, cfg);
+        partitions = IndexNameAndPartitions.selectIndexAndPartitions(searchDto()).getPartitions();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void exportAllPartitionsInSearchOrder() throws IOException {
+        // prima partizione su due pagine, seconda su una
+        mockPartition(partitions.get(0), List.of(row(partitions.get(0), "IUN_1"), row(partitions.get(0), "IUN_2")), List.of(row(partitions.get(0), "IUN_3")));
+        mockPartition(partitions.get(1), List.of(row(partitions.get(1), "IUN_4")), null);
+
+        List<NotificationExportRow> rows = readAll(service.exportNotifications(searchDto(), null));
+
+        Assertions.assertEquals(List.of("IUN_1", "IUN_2", "IUN_3", "IUN_4"), rows.stream().map(r -> r.getRow().getIun()).toList());
+        Assertions.assertEquals(List.of(RECIPIENT_TAX_ID), rows.get(0).getRow().getRecipients());
+        PnLastEvaluatedKey lastKey = codec.decode(rows.get(3).getKey());
+        Assertions.assertEquals(partitions.get(1), lastKey.getExternalLastEvaluatedKey());
+        Assertions.assertEquals("IUN_4##" + RECIPIENT_INTERNAL_ID,
+                lastKey.getInternalLastEvaluatedKey().get(NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID).s());
+    }
+
+    @Test
+    void exportResumesFromRowKey() throws IOException {
+        mockPartition(partitions.get(1), List.of(row(partitions.get(1), "IUN_4")), null);
+        PnLastEvaluatedKey fromKey = NotificationSearchMultiPage.lastEvaluatedKeyOf(
+                IndexNameAndPartitions.SearchIndexEnum.INDEX_BY_SENDER, row(partitions.get(1), "IUN_3"));
+
+        List<NotificationExportRow> rows = readAll(service.exportNotifications(searchDto(), codec.encode(fromKey)));
+
+        Assertions.assertEquals(List.of("IUN_4"), rows.stream().map(r -> r.getRow().getIun()).toList());
+        Mockito.verify(notificationDao, Mockito.never()).searchForOneMonthAsync(any(), anyString(), eq(partitions.get(0)), anyInt(), any());
+        Mockito.verify(notificationDao).searchForOneMonthAsync(any(), anyString(), eq(partitions.get(1)), eq(2),
+                argThat(key -> key != null && partitions.get(1).equals(key.getExternalLastEvaluatedKey())));
+    }
+
+    @Test
+    void exportRejectsKeyOfAnotherSearch() {
+        PnLastEvaluatedKey fromKey = NotificationSearchMultiPage.lastEvaluatedKeyOf(
+                IndexNameAndPartitions.SearchIndexEnum.INDEX_BY_SENDER, row("otherSender##202301", "IUN_1"));
+        String encodedKey = codec.encode(fromKey);
+        InputSearchNotificationDto searchDto = searchDto();
+
+        Assertions.assertThrows(PnInternalException.class, () -> service.exportNotifications(searchDto, encodedKey));
+    }
+
+    @Test
+    void exportFailureTruncatesStream() throws IOException {
+        mockPartition(partitions.get(0), List.of(row(partitions.get(0), "IUN_1")), null);
+        Mockito.when(notificationDao.searchForOneMonthAsync(any(), anyString(), eq(partitions.get(1)), anyInt(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new PnInternalException("dynamo error", "TEST")));
+
+        try (InputStream stream = service.exportNotifications(searchDto(), null)) {
+            // il gzip senza trailer segnala al chiamante che l'esportazione non è completa
+            Assertions.assertThrows(IOException.class, () -> readAll(stream));
+        }
+    }
+
+    @Test
+    void exportRejectedWhenExecutorIsFull() {
+        PnDeliveryConfigs cfg = Mockito.mock(PnDeliveryConfigs.class);
+        ExecutorService fullExecutor = Mockito.mock(ExecutorService.class);
+        Mockito.doThrow(new RejectedExecutionException()).when(fullExecutor).execute(any());
+        NotificationExportService rejectingService = new NotificationExportService(notificationDao, new EntityToDtoNotificationMetadataMapper(),
+                dataVaultClient, new NotificationActivityService(Mockito.mock(NotificationActivityEntityDao.class), cfg),
+                codec, objectMapper, fullExecutor, cfg);
+        InputSearchNotificationDto searchDto = searchDto();
+
+        Assertions.assertThrows(PnInternalException.class, () -> rejectingService.exportNotifications(searchDto, null));
+    }
+
+    private void mockPartition(String partition, List<NotificationMetadataEntity> firstPage, List<NotificationMetadataEntity> secondPage) {
+        Mockito.when(notificationDao.searchForOneMonthAsync(any(), anyString(), eq(partition), anyInt(), any()))
+                .thenAnswer(invocation -> {
+                    PnLastEvaluatedKey key = invocation.getArgument(4);
+                    if (secondPage == null)
+                        return CompletableFuture.completedFuture(new PageSearchTrunk<>(firstPage, null));
+                    if (key == null) {
+                        NotificationMetadataEntity last = firstPage.get(firstPage.size() - 1);
+                        return CompletableFuture.completedFuture(new PageSearchTrunk<>(firstPage,
+                                Map.of(NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID, AttributeValue.builder().s(last.getIunRecipientId()).build())));
+                    }
+                    return CompletableFuture.completedFuture(new PageSearchTrunk<>(secondPage, null));
+                });
+    }
+
+    private static List<NotificationExportRow> readAll(InputStream stream) throws IOException {
+        ObjectMapper reader = new ObjectMapper().findAndRegisterModules();
+        List<NotificationExportRow> rows = new ArrayList<>();
+        try (BufferedReader lines = new BufferedReader(new InputStreamReader(new GZIPInputStream(stream), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                rows.add(reader.readValue(line, NotificationExportRow.class));
+            }
+        }
+        return rows;
+    }
+
+    private static InputSearchNotificationDto searchDto() {
+        return new InputSearchNotificationDto().toBuilder()
+                .bySender(true)
+                .senderReceiverId(SENDER_ID)
+                .startDate(Instant.parse("2023-01-10T00:00:00Z"))
+                .endDate(Instant.parse("2023-02-10T00:00:00Z"))
+                .statuses(List.of())
+                .build();
+    }
+
+    private static NotificationMetadataEntity row(String partition, String iun) {
+        return NotificationMetadataEntity.builder()
+                .iunRecipientId(iun + "##" + RECIPIENT_INTERNAL_ID)
+                .senderId(SENDER_ID)
+                .senderIdCreationMonth(partition)
+                .sentAt(Instant.parse("2023-01-20T00:00:00Z"))
+                .recipientIds(List.of(RECIPIENT_INTERNAL_ID))
+                .notificationStatus(NotificationStatus.ACCEPTED.getValue())
+                .tableRow(Map.of("subject", "subject"))
+                .build();
+    }
+}
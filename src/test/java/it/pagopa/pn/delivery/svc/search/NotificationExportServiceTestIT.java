@@ -0,0 +1,162 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.pagopa.pn.commons.abstractions.impl.MiddlewareTypes;
+import it.pagopa.pn.delivery.LocalStackTestConfig;
+import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.BaseRecipientDto;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationExportRow;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatus;
+import it.pagopa.pn.delivery.middleware.notificationdao.NotificationMetadataEntityDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
+import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteResult;
+import software.amazon.awssdk.enhanced.dynamodb.model.WriteBatch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+@ExtendWith(SpringExtension.class)
+@TestPropertySource(properties = {
+        NotificationMetadataEntityDao.IMPLEMENTATION_TYPE_PROPERTY_NAME + "=" + MiddlewareTypes.DYNAMO,
+        "pn.delivery.notification-dao.table-name=Notifications",
+        "pn.delivery.notification-metadata-dao.table-name=NotificationsMetadata",
+        "pn.delivery.search-export-page-size=1000",
+        "pn.delivery.search-export-prefetch-pages=2"
+})
+@SpringBootTest
+@Import(LocalStackTestConfig.class)
+class NotificationExportServiceTestIT {
+
+    private static final String SENDER_ID = "c_export";
+    private static final String PARTITION = SENDER_ID + "##202301";
+    private static final String RECIPIENT_INTERNAL_ID = "PF-export-recipient";
+    private static final int ROWS = 100_000;
+    private static final int DYNAMODB_MAX_BATCH_WRITE_ITEMS = 25;
+
+    @Autowired
+    private NotificationExportService exportService;
+
+    @Autowired
+    private PnLastEvaluatedKeyCodec lastEvaluatedKeyCodec;
+
+    @Autowired
+    private DynamoDbEnhancedClient dynamoDbEnhancedClient;
+
+    @MockBean
+    private PnDataVaultClientImpl dataVaultClient;
+
+    @Test
+    void exportOneHundredThousandRows() throws IOException {
+        //Given
+        insertRows();
+        BaseRecipientDto recipient = new BaseRecipientDto();
+        recipient.setInternalId( RECIPIENT_INTERNAL_ID );
+        recipient.setTaxId( "RSSMRA80A01H501U" );
+        Mockito.when( dataVaultClient.getRecipientDenominationByInternalId( Mockito.anyList() ) ).thenReturn( List.of( recipient ) );
+
+        //When
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+        long count = 0;
+        String previousSentAt = null;
+        String lastKey = null;
+        try (InputStream stream = exportService.exportNotifications( searchDto(), null );
+             BufferedReader lines = new BufferedReader( new InputStreamReader( new GZIPInputStream( stream ), StandardCharsets.UTF_8 ) )) {
+            String line;
+            while ( (line = lines.readLine()) != null ) {
+                NotificationExportRow row = objectMapper.readValue( line, NotificationExportRow.class );
+                String sentAt = row.getRow().getSentAt().toInstant().toString();
+                // stesso ordine della ricerca: dalla notifica più recente
+                Assertions.assertTrue( previousSentAt == null || sentAt.compareTo( previousSentAt ) <= 0 );
+                previousSentAt = sentAt;
+                lastKey = row.getKey();
+                count++;
+            }
+        }
+
+        //Then
+        Assertions.assertEquals( ROWS, count );
+        Assertions.assertEquals( PARTITION, lastEvaluatedKeyCodec.decode( lastKey ).getExternalLastEvaluatedKey() );
+
+        // la ripresa dall'ultima riga non restituisce altre righe
+        try (InputStream stream = exportService.exportNotifications( searchDto(), lastKey );
+             BufferedReader lines = new BufferedReader( new InputStreamReader( new GZIPInputStream( stream ), StandardCharsets.UTF_8 ) )) {
+            Assertions.assertNull( lines.readLine() );
+        }
+    }
+
+    private void insertRows() {
+        DynamoDbTable<NotificationMetadataEntity> table = dynamoDbEnhancedClient.table( "NotificationsMetadata",
+                TableSchema.fromClass( NotificationMetadataEntity.class ) );
+        Instant firstSentAt = Instant.parse( "2023-01-01T00:00:00Z" );
+
+        IntStream.range( 0, ROWS / DYNAMODB_MAX_BATCH_WRITE_ITEMS ).parallel().forEach( batch -> {
+            WriteBatch.Builder<NotificationMetadataEntity> writeBatch = WriteBatch.builder( NotificationMetadataEntity.class )
+                    .mappedTableResource( table );
+            for (int i = batch * DYNAMODB_MAX_BATCH_WRITE_ITEMS; i < (batch + 1) * DYNAMODB_MAX_BATCH_WRITE_ITEMS; i++) {
+                writeBatch.addPutItem( row( i, firstSentAt.plusSeconds( i ) ) );
+            }
+            BatchWriteItemEnhancedRequest request = BatchWriteItemEnhancedRequest.builder()
+                    .writeBatches( writeBatch.build() )
+                    .build();
+            BatchWriteResult result = dynamoDbEnhancedClient.batchWriteItem( request );
+            while ( !result.unprocessedPutItemsForTable( table ).isEmpty() ) {
+                WriteBatch.Builder<NotificationMetadataEntity> retryBatch = WriteBatch.builder( NotificationMetadataEntity.class )
+                        .mappedTableResource( table );
+                result.unprocessedPutItemsForTable( table ).forEach( retryBatch::addPutItem );
+                result = dynamoDbEnhancedClient.batchWriteItem( BatchWriteItemEnhancedRequest.builder()
+                        .writeBatches( retryBatch.build() )
+                        .build() );
+            }
+        } );
+    }
+
+    private static NotificationMetadataEntity row(int index, Instant sentAt) {
+        String iun = String.format( "EXPO-RTTE-STNO-202301-X-%d", index );
+        return NotificationMetadataEntity.builder()
+                .iunRecipientId( iun + "##" + RECIPIENT_INTERNAL_ID )
+                .notificationStatus( NotificationStatus.ACCEPTED.getValue() )
+                .senderId( SENDER_ID )
+                .recipientId( RECIPIENT_INTERNAL_ID )
+                .sentAt( sentAt )
+                .senderIdCreationMonth( PARTITION )
+                .recipientIdCreationMonth( RECIPIENT_INTERNAL_ID + "##202301" )
+                .senderIdRecipientId( SENDER_ID + "##" + RECIPIENT_INTERNAL_ID )
+                .recipientIds( List.of( RECIPIENT_INTERNAL_ID ) )
+                .recipientOne( true )
+                .tableRow( Map.of( "subject", "notifica " + index, "senderDenomination", "Comune di test" ) )
+                .build();
+    }
+
+    private static InputSearchNotificationDto searchDto() {
+        return new InputSearchNotificationDto().toBuilder()
+                .bySender( true )
+                .senderReceiverId( SENDER_ID )
+                .startDate( Instant.parse( "2023-01-01T00:00:00Z" ) )
+                .endDate( Instant.parse( "2023-01-31T23:59:59Z" ) )
+                .statuses( List.of() )
+                .build();
+    }
+}
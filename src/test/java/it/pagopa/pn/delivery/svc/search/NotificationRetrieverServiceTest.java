@@ -1,11 +1,13 @@
 package it.pagopa.pn.delivery.svc.search;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import it.pagopa.pn.api.dto.events.NotificationViewDelegateInfo;
 import it.pagopa.pn.commons.configs.MVPParameterConsumer;
 import it.pagopa.pn.commons.exceptions.PnHttpResponseException;
 import it.pagopa.pn.commons.exceptions.PnInternalException;
 import it.pagopa.pn.commons.exceptions.PnValidationException;
 import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.exception.PnBadRequestException;
 import it.pagopa.pn.delivery.exception.PnForbiddenException;
 import it.pagopa.pn.delivery.exception.PnMandateNotFoundException;
 import it.pagopa.pn.delivery.exception.PnNotFoundException;
@@ -19,6 +21,7 @@ import it.pagopa.pn.delivery.generated.openapi.clients.mandate.model.InternalMan
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.*;
 import it.pagopa.pn.delivery.middleware.NotificationDao;
 import it.pagopa.pn.delivery.middleware.NotificationViewedProducer;
+import it.pagopa.pn.delivery.middleware.notificationdao.NotificationViewedEntityDao;
 import it.pagopa.pn.delivery.models.InputSearchNotificationDelegatedDto;
 import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
 import it.pagopa.pn.delivery.models.InternalAuthHeader;
@@ -26,8 +29,10 @@ import it.pagopa.pn.delivery.models.InternalNotification;
 import it.pagopa.pn.delivery.models.ResultPaginationDto;
 import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
 import it.pagopa.pn.delivery.pnclient.deliverypush.PnDeliveryPushClientImpl;
+import it.pagopa.pn.delivery.pnclient.externalregistries.PaGroups;
 import it.pagopa.pn.delivery.pnclient.externalregistries.PnExternalRegistriesClientImpl;
 import it.pagopa.pn.delivery.pnclient.mandate.PnMandateClientImpl;
+import it.pagopa.pn.delivery.svc.NotificationViewedService;
 import it.pagopa.pn.delivery.utils.RefinementLocalDate;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.Assertions;
@@ -35,7 +40,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.function.Executable;
 import org.mockito.Mockito;
-import org.modelmapper.ModelMapper;
+import org.mapstruct.factory.Mappers;
 
 import java.time.Clock;
 import java.time.Instant;
@@ -44,7 +49,9 @@ import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.IntStream;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
@@ -81,7 +88,6 @@ class NotificationRetrieverServiceTest {
     private PnMandateClientImpl pnMandateClient;
     private PnDataVaultClientImpl dataVaultClient;
     private PnExternalRegistriesClientImpl externalRegistriesClient;
-    private ModelMapper modelMapper;
 
     private NotificationRetrieverService svc;
 
@@ -100,7 +106,7 @@ class NotificationRetrieverServiceTest {
         this.pnMandateClient = Mockito.mock(PnMandateClientImpl.class);
         this.dataVaultClient = Mockito.mock( PnDataVaultClientImpl.class );
         this.externalRegistriesClient = Mockito.mock( PnExternalRegistriesClientImpl.class );
-        this.modelMapper = new ModelMapper();
+        Mockito.when( externalRegistriesClient.getPaGroups( Mockito.anyString() ) ).thenReturn( PaGroups.EMPTY );
         this.notificationSearchFactory = Mockito.mock(NotificationSearchFactory.class);
         this.notificationSearch = Mockito.mock(NotificationSearch.class);
         this.refinementLocalDateUtils = new RefinementLocalDate();
@@ -108,23 +114,27 @@ class NotificationRetrieverServiceTest {
         this.cfg = Mockito.mock( PnDeliveryConfigs.class );
 
         when(notificationSearchFactory.getMultiPageSearch(any(), any())).thenReturn(notificationSearch);
+        when( cfg.getSearchCursorMacKey() ).thenReturn( "test-mac-key" );
         when( cfg.getMaxDocumentsAvailableDays() ).thenReturn( "120" );
         when( cfg.getMaxFirstNoticeCodeDays() ).thenReturn( "5" );
         when( cfg.getMaxSecondNoticeCodeDays() ).thenReturn( "60" );
 
         this.svc = new NotificationRetrieverService(
                 clock,
-                notificationViewedProducer,
+                new NotificationViewedService(notificationViewedProducer, Mockito.mock(NotificationViewedEntityDao.class), cfg, new SimpleMeterRegistry()),
                 notificationDao,
-                pnDeliveryPushClient,
                 pnMandateClient,
                 dataVaultClient,
                 externalRegistriesClient,
-                modelMapper,
                 notificationSearchFactory,
                 refinementLocalDateUtils,
                 mvpParameterConsumer,
-                cfg);
+                cfg,
+                new SearchPageCache(cfg, clock, new SimpleMeterRegistry(), null),
+                new PnLastEvaluatedKeyCodec(cfg),
+                new NotificationDetailAssembler(notificationDao, dataVaultClient, pnDeliveryPushClient,
+                        externalRegistriesClient, new NotificationTimelineCache(Mappers.getMapper(TimelineElementMapper.class), cfg, clock, new SimpleMeterRegistry()),
+                        cfg, new SimpleMeterRegistry(), null));
     }
 
     @Test
@@ -143,7 +153,7 @@ class NotificationRetrieverServiceTest {
 
         //When
         when(notificationSearch.searchNotificationMetadata()).thenReturn(results);
-        when( externalRegistriesClient.getGroups( Mockito.anyString() )).thenReturn( groups );
+        when( externalRegistriesClient.getPaGroups( Mockito.anyString() )).thenReturn( PaGroups.of( groups ) );
 
         ResultPaginationDto<NotificationSearchRow, String> result = svc.searchNotification(inputSearch, "PF", null);
 
@@ -437,7 +447,7 @@ class NotificationRetrieverServiceTest {
                         .status(it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.NotificationStatus.ACCEPTED)
                         .activeFrom( OffsetDateTime.ofInstant( Instant.parse( "2022-06-11T00:00:00.00Z" ), ZoneOffset.UTC ) )) );
         //When
-        when( notificationDao.getNotificationByIun( Mockito.anyString() )).thenReturn( Optional.of( notification ) );
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() )).thenReturn( Optional.of( notification ) );
         when( mvpParameterConsumer.isMvp( Mockito.anyString() ) ).thenReturn( true );
         when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), any(OffsetDateTime.class) ) ).thenReturn( timelineStatusHistoryDto );
 
@@ -469,7 +479,7 @@ class NotificationRetrieverServiceTest {
         // When
         when( notificationDao.getRequestId( Mockito.anyString(), Mockito.anyString(), Mockito.anyString() ) ).thenReturn( Optional.of( REQUEST_ID ) );
 
-        when( notificationDao.getNotificationByIun( Mockito.anyString() )).thenReturn( Optional.of( notification ) );
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() )).thenReturn( Optional.of( notification ) );
         when( mvpParameterConsumer.isMvp( Mockito.anyString() ) ).thenReturn( true );
         when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), any(OffsetDateTime.class) ) ).thenReturn( timelineStatusHistoryDto );
 
@@ -508,7 +518,7 @@ class NotificationRetrieverServiceTest {
                         .status(it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.NotificationStatus.ACCEPTED)
                         .activeFrom( OffsetDateTime.ofInstant( Instant.parse( "2022-06-11T00:00:00.00Z" ), ZoneOffset.UTC ) )) );
 
-        when( notificationDao.getNotificationByIun( Mockito.anyString() ) ).thenReturn( Optional.of( notification ) );
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() ) ).thenReturn( Optional.of( notification ) );
         when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), any(OffsetDateTime.class) ) ).thenReturn( timelineStatusHistoryDto );
 
         InternalNotification result = svc.getNotificationInformationWithSenderIdCheck( IUN, SENDER_ID, GROUPS );
@@ -523,7 +533,7 @@ class NotificationRetrieverServiceTest {
     void getNotificationInformationByWrongSenderIdFailure() {
         InternalNotification notification = getNewInternalNotification();
 
-        when( notificationDao.getNotificationByIun( Mockito.anyString() ) ).thenReturn( Optional.of( notification ) );
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() ) ).thenReturn( Optional.of( notification ) );
 
         Executable todo = () ->  svc.getNotificationInformationWithSenderIdCheck( IUN, WRONG_SENDER_ID, GROUPS );
         Assertions.assertThrows( PnNotificationNotFoundException.class, todo );
@@ -534,7 +544,7 @@ class NotificationRetrieverServiceTest {
         InternalNotification notification = getNewInternalNotification();
         notification.setGroup( "fakeGroup" );
 
-        when( notificationDao.getNotificationByIun( Mockito.anyString() ) ).thenReturn( Optional.of( notification ) );
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() ) ).thenReturn( Optional.of( notification ) );
 
         Executable todo = () ->  svc.getNotificationInformationWithSenderIdCheck( IUN, SENDER_ID, GROUPS );
         Assertions.assertThrows( PnNotificationNotFoundException.class, todo );
@@ -557,7 +567,7 @@ class NotificationRetrieverServiceTest {
                         .status(it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.NotificationStatus.ACCEPTED)
                         .activeFrom( OffsetDateTime.ofInstant( Instant.parse( "2022-06-11T00:00:00.00Z" ), ZoneOffset.UTC ) )) );
 
-        when( notificationDao.getNotificationByIun( Mockito.anyString() ) ).thenReturn( Optional.of( notification ) );
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() ) ).thenReturn( Optional.of( notification ) );
         when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), any(OffsetDateTime.class) ) ).thenReturn( timelineStatusHistoryDto );
         when( mvpParameterConsumer.isMvp( Mockito.anyString() ) ).thenReturn( true );
 
@@ -612,7 +622,7 @@ class NotificationRetrieverServiceTest {
         //Given
 
         //When
-        when( notificationDao.getNotificationByIun( Mockito.anyString() )).thenReturn( Optional.empty() );
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() )).thenReturn( Optional.empty() );
         Executable todo = () -> svc.getNotificationInformation( IUN );
 
         //Then
@@ -627,8 +637,8 @@ class NotificationRetrieverServiceTest {
         List<PaGroup> groups = getGroups();
 
         //When
-        when( notificationDao.getNotificationByIun( Mockito.anyString() )).thenReturn( Optional.of( notification ) );
-        when( externalRegistriesClient.getGroups( Mockito.anyString() )).thenReturn( groups );
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() )).thenReturn( Optional.of( notification ) );
+        when( externalRegistriesClient.getPaGroups( Mockito.anyString() )).thenReturn( PaGroups.of( groups ) );
         when( mvpParameterConsumer.isMvp( Mockito.anyString() ) ).thenReturn( true );
 
         InternalNotification result = svc.getNotificationInformation( IUN, false, true, SENDER_ID);
@@ -646,8 +656,8 @@ class NotificationRetrieverServiceTest {
         List<PaGroup> groups = getGroups();
 
         //When
-        when( notificationDao.getNotificationByIun( Mockito.anyString() )).thenReturn( Optional.of( notification ) );
-        when( externalRegistriesClient.getGroups( Mockito.anyString() )).thenReturn( groups );
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() )).thenReturn( Optional.of( notification ) );
+        when( externalRegistriesClient.getPaGroups( Mockito.anyString() )).thenReturn( PaGroups.of( groups ) );
         when( mvpParameterConsumer.isMvp( Mockito.anyString() ) ).thenReturn( true );
 
         InternalNotification result = svc.getNotificationInformation( IUN, false, true, SENDER_ID);
@@ -720,7 +730,7 @@ class NotificationRetrieverServiceTest {
 
 
         //When
-        when( notificationDao.getNotificationByIun( Mockito.anyString() )).thenReturn( Optional.of( internalNotification ) );
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() )).thenReturn( Optional.of( internalNotification ) );
         when( clock.instant() ).thenReturn( Instant.parse( nowTestInstant ) );
         when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), any(OffsetDateTime.class) ) ).thenReturn( timelineStatusHistoryDto );
 
@@ -731,6 +741,113 @@ class NotificationRetrieverServiceTest {
         Assertions.assertTrue( internalNotificationResult.getDocumentsAvailable() );
     }
 
+    @Test
+    void getVersionedNotificationWithSenderIdCheckNotModified() {
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() ) ).thenAnswer( invocation -> Optional.of( getNewInternalNotification() ) );
+        when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), any(OffsetDateTime.class) ) ).thenReturn( getAcceptedTimeline() );
+
+        NotificationRetrieverService.VersionedNotification current = svc.getVersionedNotificationWithSenderIdCheck( IUN, SENDER_ID, GROUPS, null );
+        Assertions.assertNotNull( current.notification() );
+        Mockito.clearInvocations( dataVaultClient );
+
+        NotificationRetrieverService.VersionedNotification result = svc.getVersionedNotificationWithSenderIdCheck( IUN, SENDER_ID, GROUPS, "W/" + current.etag() );
+
+        Assertions.assertTrue( result.notModified() );
+        Assertions.assertEquals( current.etag(), result.etag() );
+        Mockito.verifyNoInteractions( dataVaultClient );
+    }
+
+    @Test
+    void getVersionedNotificationWithSenderIdCheckModified() {
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() ) ).thenAnswer( invocation -> Optional.of( getNewInternalNotification() ) );
+        when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), any(OffsetDateTime.class) ) ).thenReturn( getAcceptedTimeline() );
+
+        NotificationRetrieverService.VersionedNotification result = svc.getVersionedNotificationWithSenderIdCheck( IUN, SENDER_ID, GROUPS, "\"stale\"" );
+
+        Assertions.assertFalse( result.notModified() );
+        Assertions.assertEquals( IUN, result.notification().getIun() );
+        Assertions.assertEquals( svc.getVersionedNotificationWithSenderIdCheck( IUN, SENDER_ID, GROUPS, null ).etag(), result.etag() );
+    }
+
+    @Test
+    void getVersionedNotificationWithWrongSenderIdFailure() {
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() ) ).thenAnswer( invocation -> Optional.of( getNewInternalNotification() ) );
+        when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), any(OffsetDateTime.class) ) ).thenReturn( getAcceptedTimeline() );
+
+        Executable todo = () -> svc.getVersionedNotificationWithSenderIdCheck( IUN, WRONG_SENDER_ID, GROUPS, "*" );
+
+        Assertions.assertThrows( PnNotificationNotFoundException.class, todo );
+    }
+
+    @Test
+    void getVersionedNotificationAndViewEventNotModified() {
+        String nowTestInstant = "2022-06-17T13:00:00.00Z";
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() ) ).thenAnswer( invocation -> Optional.of( getNewInternalNotification() ) );
+        when( clock.instant() ).thenReturn( Instant.parse( nowTestInstant ) );
+        when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), any(OffsetDateTime.class) ) ).thenReturn( getAcceptedTimeline() );
+
+        NotificationRetrieverService.VersionedNotification current = svc.getVersionedNotificationAndNotifyViewedEvent( IUN, INTERNAL_AUTH_HEADER, null, null );
+        Assertions.assertNotNull( current.notification() );
+        Mockito.clearInvocations( dataVaultClient, notificationViewedProducer );
+
+        NotificationRetrieverService.VersionedNotification result = svc.getVersionedNotificationAndNotifyViewedEvent( IUN, INTERNAL_AUTH_HEADER, null, current.etag() );
+
+        Assertions.assertTrue( result.notModified() );
+        Assertions.assertEquals( current.etag(), result.etag() );
+        Mockito.verifyNoInteractions( dataVaultClient );
+        // la lettura viene comunque registrata
+        Mockito.verify( notificationViewedProducer ).sendNotificationViewed( IUN, Instant.parse( nowTestInstant ), 0, null );
+    }
+
+    @Test
+    void getNotificationsWithSenderIdCheckPartialResults() {
+        String missingIun = "IUN_MISSING";
+        when( notificationDao.getNotificationsByIun( Mockito.anyCollection() ) ).thenAnswer( invocation -> Map.of( IUN, getNewInternalNotification() ) );
+        when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), any(OffsetDateTime.class) ) ).thenReturn( getAcceptedTimeline() );
+
+        List<NotificationRetrieverService.NotificationResult> results = svc.getNotificationsInformationWithSenderIdCheck( List.of( IUN, missingIun, IUN ), SENDER_ID, GROUPS );
+
+        Assertions.assertEquals( 2, results.size() );
+        Assertions.assertEquals( IUN, results.get( 0 ).iun() );
+        Assertions.assertNull( results.get( 0 ).error() );
+        Assertions.assertEquals( NotificationStatus.ACCEPTED, results.get( 0 ).notification().getNotificationStatus() );
+        Assertions.assertEquals( missingIun, results.get( 1 ).iun() );
+        Assertions.assertInstanceOf( PnNotificationNotFoundException.class, results.get( 1 ).error() );
+        Mockito.verify( notificationDao ).getNotificationsByIun( List.of( IUN, missingIun ) );
+    }
+
+    @Test
+    void getNotificationsWithWrongSenderIdFailure() {
+        when( notificationDao.getNotificationsByIun( Mockito.anyCollection() ) ).thenAnswer( invocation -> Map.of( IUN, getNewInternalNotification() ) );
+
+        List<NotificationRetrieverService.NotificationResult> results = svc.getNotificationsInformationWithSenderIdCheck( List.of( IUN ), WRONG_SENDER_ID, GROUPS );
+
+        Assertions.assertInstanceOf( PnNotificationNotFoundException.class, results.get( 0 ).error() );
+        Mockito.verifyNoInteractions( pnDeliveryPushClient, dataVaultClient );
+    }
+
+    @Test
+    void getNotificationsWithTooManyIunsFailure() {
+        List<String> iuns = IntStream.rangeClosed( 0, NotificationRetrieverService.MAX_BULK_DETAIL_IUNS ).mapToObj( i -> IUN + i ).toList();
+
+        Executable todo = () -> svc.getNotificationsInformationWithSenderIdCheck( iuns, SENDER_ID, GROUPS );
+
+        Assertions.assertThrows( PnBadRequestException.class, todo );
+        Mockito.verifyNoInteractions( notificationDao );
+    }
+
+    private NotificationHistoryResponse getAcceptedTimeline() {
+        return new NotificationHistoryResponse()
+                .timeline( Collections.singletonList( new it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.TimelineElement()
+                        .elementId( "elementId" )
+                        .category( it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.TimelineElementCategory.REQUEST_ACCEPTED )
+                        .timestamp( OffsetDateTime.ofInstant( Instant.parse( "2022-06-10T00:00:00.00Z" ), ZoneOffset.UTC ) ) ) )
+                .notificationStatus( it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.NotificationStatus.ACCEPTED )
+                .notificationStatusHistory( Collections.singletonList( new it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.NotificationStatusHistoryElement()
+                        .status( it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.NotificationStatus.ACCEPTED )
+                        .activeFrom( OffsetDateTime.ofInstant( Instant.parse( "2022-06-11T00:00:00.00Z" ), ZoneOffset.UTC ) ) ) );
+    }
+
     @Test
     void getNotificationAndViewEventByDelegateSuccess() {
         //Given
@@ -770,7 +887,7 @@ class NotificationRetrieverServiceTest {
         //When
         when( pnMandateClient.listMandatesByDelegate(Mockito.anyString(), Mockito.anyString(), eq(CxTypeAuthFleet.PF), any()))
                 .thenReturn( mandateResult );
-        when( notificationDao.getNotificationByIun( Mockito.anyString() )).thenReturn( Optional.of( internalNotification ) );
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() )).thenReturn( Optional.of( internalNotification ) );
         when( clock.instant() ).thenReturn( Instant.parse( nowTestInstant ) );
         when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), any(OffsetDateTime.class) ) ).thenReturn( timelineStatusHistoryDto );
 
@@ -820,7 +937,7 @@ class NotificationRetrieverServiceTest {
 
         //When
         Mockito.when( pnMandateClient.listMandatesByDelegate( Mockito.anyString(), Mockito.anyString(), any(), any() ) ).thenReturn( mandateResult );
-        Mockito.when( notificationDao.getNotificationByIun( Mockito.anyString() )).thenReturn( Optional.of( internalNotification ) );
+        Mockito.when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() )).thenReturn( Optional.of( internalNotification ) );
         Mockito.when( clock.instant() ).thenReturn( Instant.parse( nowTestInstant ) );
         Mockito.when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), Mockito.any(OffsetDateTime.class) ) ).thenReturn( timelineStatusHistoryDto );
 
@@ -862,7 +979,7 @@ class NotificationRetrieverServiceTest {
 
         //When
         Mockito.when( pnMandateClient.listMandatesByDelegate( Mockito.anyString(), Mockito.anyString(), any(), any() ) ).thenReturn( mandateResult );
-        Mockito.when( notificationDao.getNotificationByIun( Mockito.anyString() )).thenReturn( Optional.of( internalNotification ) );
+        Mockito.when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() )).thenReturn( Optional.of( internalNotification ) );
         Mockito.when( clock.instant() ).thenReturn( Instant.parse( nowTestInstant ) );
         Mockito.when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), Mockito.any(OffsetDateTime.class) ) ).thenReturn( timelineStatusHistoryDto );
 
@@ -908,7 +1025,7 @@ class NotificationRetrieverServiceTest {
 
         //When
         Mockito.when( pnMandateClient.listMandatesByDelegate( Mockito.anyString(), Mockito.anyString(), any(), any() ) ).thenReturn( mandateResult );
-        Mockito.when( notificationDao.getNotificationByIun( Mockito.anyString() )).thenReturn( Optional.of( internalNotification ) );
+        Mockito.when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() )).thenReturn( Optional.of( internalNotification ) );
         Mockito.when( clock.instant() ).thenReturn( Instant.parse( nowTestInstant ) );
         Mockito.when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), Mockito.any(OffsetDateTime.class) ) ).thenReturn( timelineStatusHistoryDto );
 
@@ -936,7 +1053,7 @@ class NotificationRetrieverServiceTest {
 
 
         //When
-        when( notificationDao.getNotificationByIun( Mockito.anyString() )).thenReturn( Optional.of( internalNotification ) );
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() )).thenReturn( Optional.of( internalNotification ) );
         when( clock.instant() ).thenReturn( Instant.parse( nowTestInstant ) );
         when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), any(OffsetDateTime.class) ) ).thenReturn( timelineStatusHistoryDto );
 
@@ -967,7 +1084,7 @@ class NotificationRetrieverServiceTest {
 
 
         //When
-        when( notificationDao.getNotificationByIun( Mockito.anyString() )).thenReturn( Optional.of( internalNotification ) );
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() )).thenReturn( Optional.of( internalNotification ) );
         when( clock.instant() ).thenReturn( Instant.now() );
         when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), any(OffsetDateTime.class) ) ).thenReturn( timelineStatusHistoryDto );
 
@@ -998,7 +1115,7 @@ class NotificationRetrieverServiceTest {
                         .activeFrom( OffsetDateTime.ofInstant( Instant.parse( "2022-01-11T00:00:00.00Z" ), ZoneOffset.UTC ) )) );
 
         //When
-        when( notificationDao.getNotificationByIun( Mockito.anyString() )).thenReturn( Optional.of( internalNotification ) );
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() )).thenReturn( Optional.of( internalNotification ) );
         when( mvpParameterConsumer.isMvp( Mockito.anyString() ) ).thenReturn( true );
         when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), any(OffsetDateTime.class) ) ).thenReturn( timelineStatusHistoryDto );
         when( clock.instant() ).thenReturn( Instant.parse( "2022-01-15T00:00:00.00Z" ) );
@@ -1036,7 +1153,7 @@ class NotificationRetrieverServiceTest {
                 .status( PaymentStatus.SUCCEEDED );
 
         //When
-        when( notificationDao.getNotificationByIun( Mockito.anyString() )).thenReturn( Optional.of( internalNotification ) );
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() )).thenReturn( Optional.of( internalNotification ) );
         when( mvpParameterConsumer.isMvp( Mockito.anyString() ) ).thenReturn( true );
         when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), any(OffsetDateTime.class) ) ).thenReturn( timelineStatusHistoryDto );
         when( clock.instant() ).thenReturn( Instant.parse( "2022-02-11T00:00:00.00Z" ) );
@@ -1075,7 +1192,7 @@ class NotificationRetrieverServiceTest {
                 .status( PaymentStatus.REQUIRED );
 
         //When
-        when( notificationDao.getNotificationByIun( Mockito.anyString() )).thenReturn( Optional.of( internalNotification ) );
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() )).thenReturn( Optional.of( internalNotification ) );
         when( mvpParameterConsumer.isMvp( Mockito.anyString() ) ).thenReturn( true );
         when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), any(OffsetDateTime.class) ) ).thenReturn( timelineStatusHistoryDto );
         when( clock.instant() ).thenReturn( Instant.parse( nowTestInstant ) );
@@ -1115,7 +1232,7 @@ class NotificationRetrieverServiceTest {
                 .status( PaymentStatus.REQUIRED );
 
         //When
-        when( notificationDao.getNotificationByIun( Mockito.anyString() )).thenReturn( Optional.of( internalNotification ) );
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() )).thenReturn( Optional.of( internalNotification ) );
         when( mvpParameterConsumer.isMvp( Mockito.anyString() ) ).thenReturn( true );
         when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), any(OffsetDateTime.class) ) ).thenReturn( timelineStatusHistoryDto );
         when( clock.instant() ).thenReturn( Instant.parse( nowTestInstant ) );
@@ -1155,7 +1272,7 @@ class NotificationRetrieverServiceTest {
                 .status( PaymentStatus.REQUIRED );
 
         //When
-        when( notificationDao.getNotificationByIun( Mockito.anyString() )).thenReturn( Optional.of( internalNotification ) );
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() )).thenReturn( Optional.of( internalNotification ) );
         when( mvpParameterConsumer.isMvp( Mockito.anyString() ) ).thenReturn( true );
         when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), any(OffsetDateTime.class) ) ).thenReturn( timelineStatusHistoryDto );
         when( clock.instant() ).thenReturn( Instant.parse( nowTestInstant ) );
@@ -1190,7 +1307,7 @@ class NotificationRetrieverServiceTest {
                         .activeFrom( OffsetDateTime.ofInstant( Instant.parse( "2022-01-11T00:00:00.00Z" ), ZoneOffset.UTC ) )) );
 
         //When
-        when( notificationDao.getNotificationByIun( Mockito.anyString() )).thenReturn( Optional.of( internalNotification ) );
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() )).thenReturn( Optional.of( internalNotification ) );
         when( mvpParameterConsumer.isMvp( Mockito.anyString() ) ).thenReturn( true );
         when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), any(OffsetDateTime.class) ) ).thenReturn( timelineStatusHistoryDto );
         when( clock.instant() ).thenReturn( Instant.parse( "2022-05-11T00:00:00.00Z" ) );
@@ -1224,7 +1341,7 @@ class NotificationRetrieverServiceTest {
                         .activeFrom( OffsetDateTime.ofInstant( Instant.parse( "2022-01-11T00:00:00.00Z" ), ZoneOffset.UTC ) )) );
 
         //When
-        when( notificationDao.getNotificationByIun( Mockito.anyString() )).thenReturn( Optional.of( internalNotification ) );
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() )).thenReturn( Optional.of( internalNotification ) );
         when( mvpParameterConsumer.isMvp( Mockito.anyString() ) ).thenReturn( true );
         when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), any(OffsetDateTime.class) ) ).thenReturn( timelineStatusHistoryDto );
         when( clock.instant() ).thenReturn( Instant.parse( "2022-03-11T00:00:00.00Z" ) );
@@ -1255,7 +1372,7 @@ class NotificationRetrieverServiceTest {
                         .activeFrom( OffsetDateTime.ofInstant( Instant.parse( "2022-06-11T00:00:00.00Z" ), ZoneOffset.UTC ) )) );
 
         //When
-        when( notificationDao.getNotificationByIun( Mockito.anyString() )).thenReturn( Optional.of( internalNotification ) );
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() )).thenReturn( Optional.of( internalNotification ) );
         when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), any(OffsetDateTime.class) ) ).thenReturn( timelineStatusHistoryDto );
 
         InternalNotification internalNotificationResult = svc.getNotificationAndNotifyViewedEvent(IUN, INTERNAL_AUTH_HEADER, null);
@@ -1284,7 +1401,7 @@ class NotificationRetrieverServiceTest {
                         .activeFrom( OffsetDateTime.ofInstant( Instant.parse( "2022-03-01T11:00:00.00Z" ), ZoneOffset.UTC ) )) );
 
         //When
-        when( notificationDao.getNotificationByIun( Mockito.anyString() )).thenReturn( Optional.of( internalNotification ) );
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() )).thenReturn( Optional.of( internalNotification ) );
         when( clock.instant() ).thenReturn( Instant.parse( nowTestInstant ) );
         when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), any(OffsetDateTime.class) ) ).thenReturn( timelineStatusHistoryDto );
 
@@ -1313,7 +1430,7 @@ class NotificationRetrieverServiceTest {
                         .activeFrom( OffsetDateTime.ofInstant( Instant.parse( "2022-03-01T11:00:00.00Z" ), ZoneOffset.UTC ) )) );
 
         //When
-        when( notificationDao.getNotificationByIun( Mockito.anyString() )).thenReturn( Optional.of( internalNotification ) );
+        when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() )).thenReturn( Optional.of( internalNotification ) );
         when( clock.instant() ).thenReturn( Instant.parse( nowTestInstant ) );
         when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), any(OffsetDateTime.class) ) ).thenReturn( timelineStatusHistoryDto );
 
@@ -1349,7 +1466,7 @@ class NotificationRetrieverServiceTest {
                         .activeFrom( OffsetDateTime.ofInstant( Instant.parse( "2022-01-11T00:00:00.00Z" ), ZoneOffset.UTC ) )) );
 
         //When
-        Mockito.when( notificationDao.getNotificationByIun( Mockito.anyString() )).thenReturn( Optional.of( internalNotification ) );
+        Mockito.when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() )).thenReturn( Optional.of( internalNotification ) );
         Mockito.when( mvpParameterConsumer.isMvp( Mockito.anyString() ) ).thenReturn( true );
         Mockito.when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), Mockito.any(OffsetDateTime.class) ) ).thenReturn( timelineStatusHistoryDto );
         Mockito.when( clock.instant() ).thenReturn( Instant.parse( "2022-01-15T00:00:00.00Z" ) );
@@ -1395,7 +1512,7 @@ class NotificationRetrieverServiceTest {
                         .activeFrom( OffsetDateTime.ofInstant( Instant.parse( "2022-01-11T00:00:00.00Z" ), ZoneOffset.UTC ) )) );
 
         //When
-        Mockito.when( notificationDao.getNotificationByIun( Mockito.anyString() )).thenReturn( Optional.of( internalNotification ) );
+        Mockito.when( notificationDao.getNotificationByIun( Mockito.anyString(), Mockito.anyBoolean() )).thenReturn( Optional.of( internalNotification ) );
         Mockito.when( mvpParameterConsumer.isMvp( Mockito.anyString() ) ).thenReturn( true );
         Mockito.when( pnDeliveryPushClient.getTimelineAndStatusHistory( Mockito.anyString(), Mockito.anyInt(), Mockito.any(OffsetDateTime.class) ) ).thenReturn( timelineStatusHistoryDto );
         Mockito.when( clock.instant() ).thenReturn( Instant.parse( "2022-01-15T00:00:00.00Z" ) );
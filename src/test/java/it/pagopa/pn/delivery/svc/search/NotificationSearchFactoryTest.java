@@ -8,6 +8,11 @@ import it.pagopa.pn.delivery.models.InputSearchNotificationDelegatedDto;
 import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
 import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
 import it.pagopa.pn.delivery.pnclient.mandate.PnMandateClientImpl;
+import it.pagopa.pn.delivery.middleware.notificationdao.NotificationActivityEntityDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.NotificationMetadataEntityDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.NotificationSubjectIndexEntityDao;
+import it.pagopa.pn.delivery.svc.NotificationActivityService;
+import it.pagopa.pn.delivery.svc.NotificationSubjectIndexService;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -15,6 +20,7 @@ import org.mockito.Mockito;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.concurrent.Executors;
 
 class NotificationSearchFactoryTest {
 
@@ -46,7 +52,13 @@ class NotificationSearchFactoryTest {
         cfg = Mockito.mock(PnDeliveryConfigs.class);
         dataVaultClient = Mockito.mock(PnDataVaultClientImpl.class);
         mandateClient = Mockito.mock(PnMandateClientImpl.class);
-        notificationSearchFactory = new NotificationSearchFactory(notificationDao, entityToDto, cfg, dataVaultClient, mandateClient);
+        notificationSearchFactory = buildFactory();
+    }
+
+    private NotificationSearchFactory buildFactory() {
+        return new NotificationSearchFactory(notificationDao, entityToDto, cfg, dataVaultClient, mandateClient, Executors.newSingleThreadExecutor(), DynamoDbPageSizeStrategy.fixedMultiplier(),
+                new NotificationActivityService(Mockito.mock(NotificationActivityEntityDao.class), cfg),
+                new NotificationSubjectIndexService(Mockito.mock(NotificationSubjectIndexEntityDao.class), Mockito.mock(NotificationMetadataEntityDao.class), cfg));
     }
 
     @Test
@@ -124,6 +136,44 @@ class NotificationSearchFactoryTest {
         Assertions.assertEquals(NotificationSearchMultiPageByPFOrPG.class, result.getClass());
     }
 
+    @Test
+    void getMultiPageSearchBySubject() {
+        Mockito.when( cfg.getSearchSubjectIndexSince() ).thenReturn( "2021-01" );
+        notificationSearchFactory = buildFactory();
+        InputSearchNotificationDto inputSearchNotificationDto = new InputSearchNotificationDto().toBuilder()
+                .bySender( true )
+                .startDate( Instant.parse( START_DATE ) )
+                .endDate( Instant.parse( END_DATE ) )
+                .senderReceiverId( "senderId" )
+                .subjectRegExp( ".*Multa.*" )
+                .size( 10 )
+                .build();
+
+        Mockito.when( cfg.getMaxPageSize() ).thenReturn( 4 );
+
+        NotificationSearch result = notificationSearchFactory.getMultiPageSearch(inputSearchNotificationDto, null);
+
+        Assertions.assertEquals(NotificationSearchMultiPageBySubject.class, result.getClass());
+    }
+
+    @Test
+    void getMultiPageSearchSubjectIndexDisabled() {
+        InputSearchNotificationDto inputSearchNotificationDto = new InputSearchNotificationDto().toBuilder()
+                .bySender( true )
+                .startDate( Instant.parse( START_DATE ) )
+                .endDate( Instant.parse( END_DATE ) )
+                .senderReceiverId( "senderId" )
+                .subjectRegExp( ".*Multa.*" )
+                .size( 10 )
+                .build();
+
+        Mockito.when( cfg.getMaxPageSize() ).thenReturn( 4 );
+
+        NotificationSearch result = notificationSearchFactory.getMultiPageSearch(inputSearchNotificationDto, null);
+
+        Assertions.assertEquals(NotificationSearchMultiPageByPFOrPG.class, result.getClass());
+    }
+
     @Test
     void getMultiPageSearchExact() {
         InputSearchNotificationDto inputSearchNotificationDto = new InputSearchNotificationDto().toBuilder()
@@ -37,7 +37,7 @@ class NotificationSearchMultiPageByPFAndPGOnlyTest {
 
     @BeforeEach
     void setup() {
-        this.notificationDao = Mockito.mock(NotificationDao.class);
+        this.notificationDao = Mockito.mock(NotificationDao.class, Mockito.CALLS_REAL_METHODS);
         this.cfg = Mockito.mock( PnDeliveryConfigs.class );
         this.entityToDtoNotificationMetadataMapper = Mockito.mock(EntityToDtoNotificationMetadataMapper.class);
         this.dataVaultClient = Mockito.mock( PnDataVaultClientImpl.class );
@@ -411,4 +411,229 @@ class NotificationSearchMultiPageByPFAndPGOnlyTest {
         Assertions.assertFalse(result.isMoreResult());
     }
 
+
+    @Test
+    void searchNotificationMetadataStopsAtRequiredSize() {
+        Instant now = Instant.now();
+        this.inputSearchNotificationDto = new InputSearchNotificationDto().toBuilder()
+                .bySender( true )
+                .senderReceiverId( "senderId" )
+                .startDate( Instant.now().minus(500, ChronoUnit.DAYS) )
+                .endDate( Instant.now() )
+                .filterId("externalId")
+                .opaqueFilterIdPF( "internalIdPF123" )
+                .opaqueFilterIdPG( "internalIdPG123" )
+                .size( PAGE_SIZE )
+                .build();
+        IndexNameAndPartitions indexNameAndPartitions = IndexNameAndPartitions.selectIndexAndPartitions(inputSearchNotificationDto);
+        String partitionPF = indexNameAndPartitions.getPartitions().get(0);
+        String partitionPG = indexNameAndPartitions.getPartitions().get(1);
+
+        // entrambe le partizioni hanno altre pagine, che non devono essere lette
+        PageSearchTrunk<NotificationMetadataEntity> entityResultPF = new PageSearchTrunk<>();
+        entityResultPF.setResults(new ArrayList<>());
+        PageSearchTrunk<NotificationMetadataEntity> entityResultPG = new PageSearchTrunk<>();
+        entityResultPG.setResults(new ArrayList<>());
+        for(int i = 0;i<20;i++)
+        {
+            entityResultPF.getResults().add( NotificationMetadataEntity.builder()
+                    .senderIdRecipientId( partitionPF )
+                    .iunRecipientId("IUN"+i+"##internalIdPF123" )
+                    .notificationStatus( NotificationStatus.VIEWED.getValue() )
+                    .senderId( "senderId" )
+                    .sentAt(now.minus( Duration.ofDays( 2L*i ) ))
+                    .recipientIds(List.of( "internalIdPF123" ) )
+                    .build() );
+            entityResultPG.getResults().add( NotificationMetadataEntity.builder()
+                    .senderIdRecipientId( partitionPG )
+                    .iunRecipientId("IUN"+i+"##internalIdPG123" )
+                    .notificationStatus( NotificationStatus.VIEWED.getValue() )
+                    .senderId( "senderId" )
+                    .sentAt(now.minus( Duration.ofDays( 2L*i + 1 ) ))
+                    .recipientIds(List.of( "internalIdPG123" ) )
+                    .build() );
+        }
+        entityResultPF.setLastEvaluatedKey(Map.of(NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID, AttributeValue.builder().s("IUN19##internalIdPF123").build()));
+        entityResultPG.setLastEvaluatedKey(Map.of(NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID, AttributeValue.builder().s("IUN19##internalIdPG123").build()));
+
+        Mockito.when(notificationDao.searchForOneMonth(inputSearchNotificationDto, indexNameAndPartitions.getIndexName().getValue(), partitionPF, 124, null))
+                .thenReturn(entityResultPF);
+        Mockito.when(notificationDao.searchForOneMonth(inputSearchNotificationDto, indexNameAndPartitions.getIndexName().getValue(), partitionPG, 124, null))
+                .thenReturn(entityResultPG);
+        Mockito.when( cfg.getMaxPageSize() ).thenReturn( 3 );
+
+        this.notificationSearchMultiPageByPFAndPGOnly = new NotificationSearchMultiPageByPFAndPGOnly(notificationDao, entityToDtoNotificationMetadataMapper, inputSearchNotificationDto, null, cfg, dataVaultClient, indexNameAndPartitions);
+        ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> result = notificationSearchMultiPageByPFAndPGOnly.searchNotificationMetadata();
+
+        Assertions.assertNotNull( result );
+        Assertions.assertEquals(PAGE_SIZE, result.getResultsPage().size());
+        Assertions.assertEquals(3, result.getNextPagesKey().size());
+        Assertions.assertTrue(result.isMoreResult());
+        Mockito.verify(notificationDao, Mockito.times(2)).searchForOneMonth(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyInt(), Mockito.any());
+
+        // la prima pagina termina con la riga PG IUN4 (ordine PF0, PG0, PF1, ...), la posizione in PF è IUN4
+        PnLastEvaluatedKey firstKey = result.getNextPagesKey().get(0);
+        Assertions.assertEquals(partitionPG, firstKey.getExternalLastEvaluatedKey());
+        Assertions.assertEquals("IUN4##internalIdPG123", firstKey.getInternalLastEvaluatedKey().get(NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID).s());
+        Assertions.assertNotNull(firstKey.getOtherPartitionLastEvaluatedKey());
+        Assertions.assertEquals(partitionPF, firstKey.getOtherPartitionLastEvaluatedKey().getExternalLastEvaluatedKey());
+        Assertions.assertEquals("IUN4##internalIdPF123", firstKey.getOtherPartitionLastEvaluatedKey().getInternalLastEvaluatedKey().get(NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID).s());
+    }
+
+    @Test
+    void searchNotificationMetadataResumesBothPartitions() {
+        Instant now = Instant.now();
+        this.inputSearchNotificationDto = new InputSearchNotificationDto().toBuilder()
+                .bySender( true )
+                .senderReceiverId( "senderId" )
+                .startDate( Instant.now().minus(500, ChronoUnit.DAYS) )
+                .endDate( Instant.now() )
+                .filterId("externalId")
+                .opaqueFilterIdPF( "internalIdPF123" )
+                .opaqueFilterIdPG( "internalIdPG123" )
+                .size( PAGE_SIZE )
+                .build();
+        IndexNameAndPartitions indexNameAndPartitions = IndexNameAndPartitions.selectIndexAndPartitions(inputSearchNotificationDto);
+        String partitionPF = indexNameAndPartitions.getPartitions().get(0);
+        String partitionPG = indexNameAndPartitions.getPartitions().get(1);
+
+        PnLastEvaluatedKey lastEvaluatedKeyPF = new PnLastEvaluatedKey();
+        lastEvaluatedKeyPF.setExternalLastEvaluatedKey(partitionPF);
+        lastEvaluatedKeyPF.setInternalLastEvaluatedKey(Map.of(NotificationMetadataEntity.FIELD_SENDER_ID_RECIPIENT_ID, AttributeValue.builder().s(partitionPF).build() ,
+                NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID,  AttributeValue.builder().s("IUN4##internalIdPF123").build() ,
+                NotificationMetadataEntity.FIELD_SENT_AT, AttributeValue.builder().s(now.minus(Duration.ofDays( 8 )).toString()).build()));
+        PnLastEvaluatedKey lastEvaluatedKey = new PnLastEvaluatedKey();
+        lastEvaluatedKey.setExternalLastEvaluatedKey(partitionPG);
+        lastEvaluatedKey.setInternalLastEvaluatedKey(Map.of(NotificationMetadataEntity.FIELD_SENDER_ID_RECIPIENT_ID, AttributeValue.builder().s(partitionPG).build() ,
+                NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID,  AttributeValue.builder().s("IUN4##internalIdPG123").build() ,
+                NotificationMetadataEntity.FIELD_SENT_AT, AttributeValue.builder().s(now.minus(Duration.ofDays( 9 )).toString()).build()));
+        lastEvaluatedKey.setOtherPartitionLastEvaluatedKey(lastEvaluatedKeyPF);
+
+        PageSearchTrunk<NotificationMetadataEntity> entityResultPF = new PageSearchTrunk<>();
+        entityResultPF.setResults(new ArrayList<>());
+        PageSearchTrunk<NotificationMetadataEntity> entityResultPG = new PageSearchTrunk<>();
+        entityResultPG.setResults(new ArrayList<>());
+        for(int i = 5;i<8;i++)
+        {
+            entityResultPF.getResults().add( NotificationMetadataEntity.builder()
+                    .senderIdRecipientId( partitionPF )
+                    .iunRecipientId("IUN"+i+"##internalIdPF123" )
+                    .notificationStatus( NotificationStatus.VIEWED.getValue() )
+                    .senderId( "senderId" )
+                    .sentAt(now.minus( Duration.ofDays( 2L*i ) ))
+                    .recipientIds(List.of( "internalIdPF123" ) )
+                    .build() );
+            entityResultPG.getResults().add( NotificationMetadataEntity.builder()
+                    .senderIdRecipientId( partitionPG )
+                    .iunRecipientId("IUN"+i+"##internalIdPG123" )
+                    .notificationStatus( NotificationStatus.VIEWED.getValue() )
+                    .senderId( "senderId" )
+                    .sentAt(now.minus( Duration.ofDays( 2L*i + 1 ) ))
+                    .recipientIds(List.of( "internalIdPG123" ) )
+                    .build() );
+        }
+        entityResultPF.setLastEvaluatedKey(null);
+        entityResultPG.setLastEvaluatedKey(null);
+
+        // ogni partizione riprende dalla propria posizione
+        Mockito.when(notificationDao.searchForOneMonth(inputSearchNotificationDto, indexNameAndPartitions.getIndexName().getValue(), partitionPF, 124, lastEvaluatedKeyPF))
+                .thenReturn(entityResultPF);
+        Mockito.when(notificationDao.searchForOneMonth(inputSearchNotificationDto, indexNameAndPartitions.getIndexName().getValue(), partitionPG, 124, lastEvaluatedKey))
+                .thenReturn(entityResultPG);
+        Mockito.when( cfg.getMaxPageSize() ).thenReturn( 3 );
+
+        this.notificationSearchMultiPageByPFAndPGOnly = new NotificationSearchMultiPageByPFAndPGOnly(notificationDao, entityToDtoNotificationMetadataMapper, inputSearchNotificationDto, lastEvaluatedKey, cfg, dataVaultClient, indexNameAndPartitions);
+        ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> result = notificationSearchMultiPageByPFAndPGOnly.searchNotificationMetadata();
+
+        Assertions.assertNotNull( result );
+        Assertions.assertEquals(6, result.getResultsPage().size());
+        Assertions.assertEquals(0, result.getNextPagesKey().size());
+        Assertions.assertFalse(result.isMoreResult());
+    }
+
+
+    @Test
+    void searchNotificationMetadataKeepsOtherPartitionRowsWithSameSentAt() {
+        Instant now = Instant.now();
+        IndexNameAndPartitions indexNameAndPartitions = senderRecipientPartitions();
+        String partitionPF = indexNameAndPartitions.getPartitions().get(0);
+        String partitionPG = indexNameAndPartitions.getPartitions().get(1);
+
+        // ordine: PG0, PF0 (a parità di sentAt viene preso prima PF), PG1
+        NotificationMetadataEntity rowPF0 = row(partitionPF, "IUN_PF0##internalIdPF123", now);
+        NotificationMetadataEntity rowPG0 = row(partitionPG, "IUN_PG0##internalIdPG123", now.plus(Duration.ofDays(1)));
+        NotificationMetadataEntity rowPG1 = row(partitionPG, "IUN_PG1##internalIdPG123", now);
+        Mockito.when(notificationDao.searchForOneMonth(Mockito.any(), Mockito.any(), Mockito.eq(partitionPF), Mockito.anyInt(), Mockito.any()))
+                .thenReturn(page(rowPF0), page());
+        Mockito.when(notificationDao.searchForOneMonth(Mockito.any(), Mockito.any(), Mockito.eq(partitionPG), Mockito.anyInt(), Mockito.any()))
+                .thenReturn(page(rowPG0, rowPG1), page(rowPG1));
+
+        // la pagina termina sulla riga PF0, la riga PG1 con lo stesso sentAt non è stata restituita
+        NotificationSearchMultiPageByPFAndPGOnly firstPage = new NotificationSearchMultiPageByPFAndPGOnly(notificationDao, entityToDtoNotificationMetadataMapper, inputSearchNotificationDto, null, cfg, dataVaultClient, indexNameAndPartitions);
+        Assertions.assertEquals(List.of(rowPG0, rowPF0), firstPage.getDataRead(2, 124));
+        PnLastEvaluatedKey lastEvaluatedKey = firstPage.getPnLastEvaluatedKey(rowPF0);
+        Assertions.assertEquals("IUN_PG0##internalIdPG123", lastEvaluatedKey.getOtherPartitionLastEvaluatedKey().getInternalLastEvaluatedKey().get(NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID).s());
+
+        NotificationSearchMultiPageByPFAndPGOnly secondPage = new NotificationSearchMultiPageByPFAndPGOnly(notificationDao, entityToDtoNotificationMetadataMapper, inputSearchNotificationDto, lastEvaluatedKey, cfg, dataVaultClient, indexNameAndPartitions);
+        Assertions.assertEquals(List.of(rowPG1), secondPage.getDataRead(PAGE_SIZE, 124));
+    }
+
+    @Test
+    void searchNotificationMetadataReadsUnmergedPartitionFromStart() {
+        Instant now = Instant.now();
+        IndexNameAndPartitions indexNameAndPartitions = senderRecipientPartitions();
+        String partitionPF = indexNameAndPartitions.getPartitions().get(0);
+        String partitionPG = indexNameAndPartitions.getPartitions().get(1);
+
+        NotificationMetadataEntity rowPF0 = row(partitionPF, "IUN_PF0##internalIdPF123", now);
+        NotificationMetadataEntity rowPG0 = row(partitionPG, "IUN_PG0##internalIdPG123", now);
+        NotificationMetadataEntity rowPG1 = row(partitionPG, "IUN_PG1##internalIdPG123", now.minus(Duration.ofDays(1)));
+        Mockito.when(notificationDao.searchForOneMonth(Mockito.any(), Mockito.any(), Mockito.eq(partitionPF), Mockito.anyInt(), Mockito.any()))
+                .thenReturn(page(rowPF0), page());
+        Mockito.when(notificationDao.searchForOneMonth(Mockito.any(), Mockito.any(), Mockito.eq(partitionPG), Mockito.anyInt(), Mockito.any()))
+                .thenReturn(page(rowPG0, rowPG1));
+
+        // la prima pagina contiene solo PF0: la partizione PG non ha ancora restituito righe
+        NotificationSearchMultiPageByPFAndPGOnly firstPage = new NotificationSearchMultiPageByPFAndPGOnly(notificationDao, entityToDtoNotificationMetadataMapper, inputSearchNotificationDto, null, cfg, dataVaultClient, indexNameAndPartitions);
+        Assertions.assertEquals(List.of(rowPF0), firstPage.getDataRead(1, 124));
+        PnLastEvaluatedKey lastEvaluatedKey = firstPage.getPnLastEvaluatedKey(rowPF0);
+        Assertions.assertEquals(partitionPG, lastEvaluatedKey.getOtherPartitionLastEvaluatedKey().getExternalLastEvaluatedKey());
+        Assertions.assertTrue(lastEvaluatedKey.getOtherPartitionLastEvaluatedKey().getInternalLastEvaluatedKey().isEmpty());
+
+        NotificationSearchMultiPageByPFAndPGOnly secondPage = new NotificationSearchMultiPageByPFAndPGOnly(notificationDao, entityToDtoNotificationMetadataMapper, inputSearchNotificationDto, lastEvaluatedKey, cfg, dataVaultClient, indexNameAndPartitions);
+        Assertions.assertEquals(List.of(rowPG0, rowPG1), secondPage.getDataRead(PAGE_SIZE, 124));
+        // entrambe le pagine leggono la partizione PG dall'inizio
+        Mockito.verify(notificationDao, Mockito.times(2)).searchForOneMonth(inputSearchNotificationDto, indexNameAndPartitions.getIndexName().getValue(), partitionPG, 124, null);
+    }
+
+    private IndexNameAndPartitions senderRecipientPartitions() {
+        this.inputSearchNotificationDto = new InputSearchNotificationDto().toBuilder()
+                .bySender( true )
+                .senderReceiverId( "senderId" )
+                .startDate( Instant.now().minus(500, ChronoUnit.DAYS) )
+                .endDate( Instant.now() )
+                .filterId("externalId")
+                .opaqueFilterIdPF( "internalIdPF123" )
+                .opaqueFilterIdPG( "internalIdPG123" )
+                .size( PAGE_SIZE )
+                .build();
+        return IndexNameAndPartitions.selectIndexAndPartitions(inputSearchNotificationDto);
+    }
+
+    private static NotificationMetadataEntity row(String partition, String iunRecipientId, Instant sentAt) {
+        return NotificationMetadataEntity.builder()
+                .senderIdRecipientId( partition )
+                .iunRecipientId( iunRecipientId )
+                .notificationStatus( NotificationStatus.VIEWED.getValue() )
+                .senderId( "senderId" )
+                .sentAt( sentAt )
+                .recipientIds( List.of( iunRecipientId.substring( iunRecipientId.indexOf( "##" ) + 2 ) ) )
+                .build();
+    }
+
+    private static PageSearchTrunk<NotificationMetadataEntity> page(NotificationMetadataEntity... rows) {
+        PageSearchTrunk<NotificationMetadataEntity> page = new PageSearchTrunk<>();
+        page.setResults(new ArrayList<>(List.of(rows)));
+        return page;
+    }
 }
@@ -1,6 +1,7 @@
 package it.pagopa.pn.delivery.svc.search;
 
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import it.pagopa.pn.commons.exceptions.PnInternalException;
 import it.pagopa.pn.delivery.PnDeliveryConfigs;
 import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.BaseRecipientDto;
@@ -19,12 +20,16 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.function.Executable;
 import org.mockito.Mockito;
 
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 class NotificationSearchMultiPageByPFOrPGTest {
 
@@ -39,7 +44,7 @@ class NotificationSearchMultiPageByPFOrPGTest {
 
     @BeforeEach
     void setup() {
-        this.notificationDao = Mockito.mock(NotificationDao.class);
+        this.notificationDao = Mockito.mock(NotificationDao.class, Mockito.CALLS_REAL_METHODS);
         this.cfg = Mockito.mock( PnDeliveryConfigs.class );
         this.entityToDtoNotificationMetadataMapper = Mockito.mock(EntityToDtoNotificationMetadataMapper.class);
         this.dataVaultClient = Mockito.mock( PnDataVaultClientImpl.class );
@@ -422,4 +427,109 @@ class NotificationSearchMultiPageByPFOrPGTest {
         Assertions.assertEquals(3, result.getNextPagesKey().size());
         Assertions.assertTrue(result.isMoreResult());
     }
+
+    @Test
+    void searchNotificationMetadataParallelSameResultOfSequential() {
+        IndexNameAndPartitions indexNameAndPartitions = IndexNameAndPartitions.selectIndexAndPartitions(inputSearchNotificationDto);
+        List<String> partitions = indexNameAndPartitions.getPartitions();
+        Instant now = Instant.now();
+
+        Mockito.when(notificationDao.searchForOneMonth(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyInt(), Mockito.any()))
+                .thenAnswer(invocation -> {
+                    int partitionIndex = partitions.indexOf(invocation.getArgument(2, String.class));
+                    PageSearchTrunk<NotificationMetadataEntity> res = new PageSearchTrunk<>();
+                    res.setResults(new ArrayList<>());
+                    // solo le prime 5 partizioni contengono dati, 7 righe per ogni mese
+                    for (int i = 0; partitionIndex < 5 && i < 7; i++) {
+                        res.getResults().add(NotificationMetadataEntity.builder()
+                                .iunRecipientId("IUN" + partitionIndex + "_" + i + "##internalId")
+                                .notificationStatus(NotificationStatus.VIEWED.getValue())
+                                .senderId("SenderId")
+                                .senderIdCreationMonth(invocation.getArgument(2, String.class))
+                                .sentAt(now.minus(partitionIndex * 31L + i, ChronoUnit.DAYS))
+                                .recipientIds(List.of("internalId"))
+                                .build());
+                    }
+                    return res;
+                });
+        Mockito.when( cfg.getMaxPageSize() ).thenReturn( 3 );
+
+        ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> sequentialResult = notificationSearchMultiPageByPFOrPG.searchNotificationMetadata();
+
+        Mockito.when( cfg.getSearchPartitionsFanOut() ).thenReturn( 4 );
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            NotificationSearchMultiPageByPFOrPG parallelSearch = new NotificationSearchMultiPageByPFOrPG(notificationDao, entityToDtoNotificationMetadataMapper, inputSearchNotificationDto, null, cfg, dataVaultClient, indexNameAndPartitions, executor, DynamoDbPageSizeStrategy.fixedMultiplier());
+            ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> parallelResult = parallelSearch.searchNotificationMetadata();
+
+            Assertions.assertEquals(sequentialResult.isMoreResult(), parallelResult.isMoreResult());
+            Assertions.assertTrue(parallelResult.isMoreResult());
+            Assertions.assertEquals(PAGE_SIZE, parallelResult.getResultsPage().size());
+            Assertions.assertEquals(3, parallelResult.getNextPagesKey().size());
+            for (int i = 0; i < sequentialResult.getNextPagesKey().size(); i++) {
+                Assertions.assertEquals(sequentialResult.getNextPagesKey().get(i).serializeInternalLastEvaluatedKey(),
+                        parallelResult.getNextPagesKey().get(i).serializeInternalLastEvaluatedKey());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void searchNotificationMetadataParallelException() {
+        Mockito.when(notificationDao.searchForOneMonth(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyInt(), Mockito.any()))
+                .thenThrow(new PnInternalException("dynamo error", "TEST"));
+        Mockito.when( cfg.getMaxPageSize() ).thenReturn( 3 );
+        Mockito.when( cfg.getSearchPartitionsFanOut() ).thenReturn( 4 );
+
+        IndexNameAndPartitions indexNameAndPartitions = IndexNameAndPartitions.selectIndexAndPartitions(inputSearchNotificationDto);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            NotificationSearchMultiPageByPFOrPG parallelSearch = new NotificationSearchMultiPageByPFOrPG(notificationDao, entityToDtoNotificationMetadataMapper, inputSearchNotificationDto, null, cfg, dataVaultClient, indexNameAndPartitions, executor, DynamoDbPageSizeStrategy.fixedMultiplier());
+            Assertions.assertThrows(PnInternalException.class, parallelSearch::searchNotificationMetadata);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void searchNotificationMetadataNextPageFromCache() throws Exception {
+        PageSearchTrunk<NotificationMetadataEntity> rrr = new PageSearchTrunk<>();
+        rrr.setResults(new ArrayList<>());
+        for(int i = 0;i<25;i++)
+        {
+            rrr.getResults().add( NotificationMetadataEntity.builder()
+                    .iunRecipientId("IUN##internalId"+i )
+                    .notificationStatus( NotificationStatus.VIEWED.getValue() )
+                    .senderId( "SenderId" )
+                    .senderIdCreationMonth( "SenderId##202301" )
+                    .sentAt(Instant.now().minusSeconds(i))
+                    .recipientIds(List.of( "internalId"+i ) )
+                    .build() );
+        }
+        Mockito.when(notificationDao.searchForOneMonth(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyInt(), Mockito.any()))
+                .thenReturn(rrr).thenReturn(new PageSearchTrunk<>());
+        Mockito.when( cfg.getMaxPageSize() ).thenReturn( 3 );
+        Mockito.when( cfg.getSearchPageCacheTtl() ).thenReturn( Duration.ofMinutes(1) );
+        SearchPageCache searchPageCache = new SearchPageCache(cfg, Clock.systemUTC(), new SimpleMeterRegistry(), null);
+
+        notificationSearchMultiPageByPFOrPG.usePageCache( searchPageCache.scope( "callerId", inputSearchNotificationDto, null ) );
+        ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> firstPage = notificationSearchMultiPageByPFOrPG.searchNotificationMetadata();
+        Assertions.assertEquals(2, firstPage.getNextPagesKey().size());
+
+        // il cursore arriva dal client serializzato
+        PnLastEvaluatedKey cursor = PnLastEvaluatedKey.deserializeInternalLastEvaluatedKey( firstPage.getNextPagesKey().get(0).serializeInternalLastEvaluatedKey() );
+        IndexNameAndPartitions indexNameAndPartitions = IndexNameAndPartitions.selectIndexAndPartitions(inputSearchNotificationDto);
+        NotificationSearchMultiPageByPFOrPG nextPageSearch = new NotificationSearchMultiPageByPFOrPG(notificationDao, entityToDtoNotificationMetadataMapper, inputSearchNotificationDto, cursor, cfg, dataVaultClient, indexNameAndPartitions);
+        nextPageSearch.usePageCache( searchPageCache.scope( "callerId", inputSearchNotificationDto, null ) );
+        Mockito.clearInvocations(notificationDao);
+
+        ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> secondPage = nextPageSearch.searchNotificationMetadata();
+
+        Mockito.verifyNoInteractions(notificationDao);
+        Assertions.assertEquals(PAGE_SIZE, secondPage.getResultsPage().size());
+        Assertions.assertEquals(1, secondPage.getNextPagesKey().size());
+        Assertions.assertEquals(firstPage.getNextPagesKey().get(1).serializeInternalLastEvaluatedKey(), secondPage.getNextPagesKey().get(0).serializeInternalLastEvaluatedKey());
+        Assertions.assertFalse(secondPage.isMoreResult());
+    }
 }
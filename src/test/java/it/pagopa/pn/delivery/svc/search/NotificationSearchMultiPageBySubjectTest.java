@@ -0,0 +1,156 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationSearchRow;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatus;
+import it.pagopa.pn.delivery.middleware.NotificationDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.EntityToDtoNotificationMetadataMapper;
+import it.pagopa.pn.delivery.middleware.notificationdao.NotificationMetadataEntityDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.NotificationSubjectIndexEntityDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationSubjectTokenEntity;
+import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
+import it.pagopa.pn.delivery.models.PageSearchTrunk;
+import it.pagopa.pn.delivery.models.ResultPaginationDto;
+import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
+import it.pagopa.pn.delivery.svc.NotificationSubjectIndexService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.time.Instant;
+import java.util.*;
+
+class NotificationSearchMultiPageBySubjectTest {
+
+    private static final String MARCH = "senderId##202303";
+    private static final String FEBRUARY = "senderId##202302";
+
+    private NotificationSubjectIndexEntityDao notificationSubjectIndexEntityDao;
+    private PnDeliveryConfigs cfg;
+    private EntityToDtoNotificationMetadataMapper entityToDto;
+    private PnDataVaultClientImpl dataVaultClient;
+    private NotificationSubjectIndexService subjectIndexService;
+    private final Map<Key, NotificationMetadataEntity> storage = new HashMap<>();
+    private final List<NotificationSubjectTokenEntity> postings = new ArrayList<>();
+
+    @BeforeEach
+    void setup() {
+        notificationSubjectIndexEntityDao = Mockito.mock(NotificationSubjectIndexEntityDao.class);
+        NotificationMetadataEntityDao notificationMetadataEntityDao = Mockito.mock(NotificationMetadataEntityDao.class);
+        cfg = Mockito.mock(PnDeliveryConfigs.class);
+        entityToDto = Mockito.mock(EntityToDtoNotificationMetadataMapper.class);
+        dataVaultClient = Mockito.mock(PnDataVaultClientImpl.class);
+        Mockito.when(cfg.getSearchSubjectIndexSince()).thenReturn("2023-01");
+        Mockito.when(cfg.getMaxPageSize()).thenReturn(1);
+        Mockito.when(entityToDto.entity2Dto(Mockito.any(NotificationMetadataEntity.class)))
+                .thenAnswer(invocation -> NotificationSearchRow.builder()
+                        .iun(invocation.getArgument(0, NotificationMetadataEntity.class).getIunRecipientId())
+                        .recipients(Collections.emptyList())
+                        .build());
+        Mockito.when(notificationMetadataEntityDao.batchGetItems(Mockito.anyList()))
+                .thenAnswer(invocation -> invocation.<List<Key>>getArgument(0).stream()
+                        .map(storage::get)
+                        .filter(Objects::nonNull)
+                        .toList());
+        Mockito.when(notificationSubjectIndexEntityDao.searchByTerm(Mockito.anyString(), Mockito.anyString(), Mockito.any(), Mockito.any(),
+                        Mockito.any(), Mockito.anyInt()))
+                .thenAnswer(invocation -> {
+                    Map<String, AttributeValue> startKey = invocation.getArgument(4);
+                    int size = invocation.getArgument(5);
+                    List<NotificationSubjectTokenEntity> matching = postings.stream()
+                            .filter(posting -> posting.getPartitionKey().equals(invocation.getArgument(0))
+                                    && posting.getTermKey().startsWith(invocation.getArgument(1) + NotificationSubjectTokenEntity.KEY_SEPARATOR)
+                                    && (startKey == null || posting.getTermKey().compareTo(startKey.get(NotificationSubjectTokenEntity.FIELD_TERM_KEY).s()) < 0))
+                            .sorted(Comparator.comparing(NotificationSubjectTokenEntity::getTermKey).reversed())
+                            .toList();
+                    List<NotificationSubjectTokenEntity> page = matching.subList(0, Math.min(size, matching.size()));
+                    Map<String, AttributeValue> lastEvaluatedKey = matching.size() > size
+                            ? Map.of(NotificationSubjectTokenEntity.FIELD_TERM_KEY, AttributeValue.builder().s(page.get(size - 1).getTermKey()).build())
+                            : null;
+                    return new PageSearchTrunk<>(page, lastEvaluatedKey);
+                });
+        subjectIndexService = new NotificationSubjectIndexService(notificationSubjectIndexEntityDao, notificationMetadataEntityDao, cfg);
+
+        // marzo: una riga valida, una con oggetto diverso solo per maiuscole, una non principale di una multidestinatario
+        store(MARCH, "IUN1##r1", "2023-03-20T10:00:00Z", "Multa 2023", true, NotificationStatus.ACCEPTED);
+        store(MARCH, "IUN2##r1", "2023-03-15T10:00:00Z", "Pagamento multa", true, NotificationStatus.ACCEPTED);
+        store(MARCH, "IUN3##r2", "2023-03-10T10:00:00Z", "Multa condominio", false, NotificationStatus.ACCEPTED);
+        // febbraio: una riga valida e una con stato non richiesto
+        store(FEBRUARY, "IUN4##r1", "2023-02-20T10:00:00Z", "Multa vecchia", true, NotificationStatus.DELIVERED);
+        store(FEBRUARY, "IUN5##r1", "2023-02-10T10:00:00Z", "Multa annullata", true, NotificationStatus.CANCELLED);
+    }
+
+    @Test
+    void searchBySubjectPagesThroughPartitions() {
+        InputSearchNotificationDto input = input();
+
+        ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> firstPage = search(input, null).searchNotificationMetadata();
+
+        Assertions.assertEquals(List.of("IUN1##r1"), firstPage.getResultsPage().stream().map(NotificationSearchRow::getIun).toList());
+        Assertions.assertTrue(firstPage.isMoreResult());
+        PnLastEvaluatedKey nextKey = firstPage.getNextPagesKey().get(0);
+        Assertions.assertEquals(MARCH, nextKey.getExternalLastEvaluatedKey());
+
+        ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> secondPage = search(input, nextKey).searchNotificationMetadata();
+
+        Assertions.assertEquals(List.of("IUN4##r1"), secondPage.getResultsPage().stream().map(NotificationSearchRow::getIun).toList());
+        Assertions.assertFalse(secondPage.isMoreResult());
+        // la seconda pagina riprende le occorrenze di marzo dopo l'ultima riga restituita
+        Mockito.verify(notificationSubjectIndexEntityDao).searchByTerm(Mockito.eq("senderId##" + MARCH), Mockito.eq("mul"), Mockito.any(), Mockito.any(),
+                Mockito.eq(Map.of(
+                        NotificationSubjectTokenEntity.FIELD_PARTITION_KEY, AttributeValue.builder().s("senderId##" + MARCH).build(),
+                        NotificationSubjectTokenEntity.FIELD_TERM_KEY, AttributeValue.builder().s("mul##2023-03-20T10:00:00Z##IUN1##r1").build())),
+                Mockito.anyInt());
+    }
+
+    @Test
+    void searchBySubjectReadsOnlyCandidates() {
+        InputSearchNotificationDto input = input().toBuilder().subjectRegExp("Pagamento.*").build();
+
+        ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> page = search(input, null).searchNotificationMetadata();
+
+        Assertions.assertEquals(List.of("IUN2##r1"), page.getResultsPage().stream().map(NotificationSearchRow::getIun).toList());
+        for (String term : List.of("pag", "nto", "ame"))
+            Mockito.verify(notificationSubjectIndexEntityDao).searchByTerm(Mockito.eq("senderId##" + MARCH), Mockito.eq(term), Mockito.any(), Mockito.any(),
+                    Mockito.isNull(), Mockito.anyInt());
+    }
+
+    private NotificationSearchMultiPageBySubject search(InputSearchNotificationDto input, PnLastEvaluatedKey lastEvaluatedKey) {
+        IndexNameAndPartitions indexNameAndPartitions = new IndexNameAndPartitions(IndexNameAndPartitions.SearchIndexEnum.INDEX_BY_SENDER, List.of(MARCH, FEBRUARY));
+        return new NotificationSearchMultiPageBySubject(Mockito.mock(NotificationDao.class), entityToDto, input, lastEvaluatedKey, cfg, dataVaultClient,
+                indexNameAndPartitions, subjectIndexService);
+    }
+
+    private static InputSearchNotificationDto input() {
+        return new InputSearchNotificationDto().toBuilder()
+                .bySender(true)
+                .senderReceiverId("senderId")
+                .startDate(Instant.parse("2023-02-01T00:00:00Z"))
+                .endDate(Instant.parse("2023-03-31T00:00:00Z"))
+                .statuses(List.of(NotificationStatus.ACCEPTED, NotificationStatus.DELIVERED))
+                .subjectRegExp("Multa.*")
+                .size(1)
+                .build();
+    }
+
+    private void store(String partition, String iunRecipientId, String sentAt, String subject, boolean recipientOne, NotificationStatus status) {
+        NotificationMetadataEntity entity = NotificationMetadataEntity.builder()
+                .iunRecipientId(iunRecipientId)
+                .sentAt(Instant.parse(sentAt))
+                .senderId("senderId")
+                .recipientId(iunRecipientId.substring(iunRecipientId.indexOf("##") + 2))
+                .recipientOne(recipientOne)
+                .notificationStatus(status.getValue())
+                .senderIdCreationMonth(partition)
+                .tableRow(Map.of("subject", subject))
+                .build();
+        storage.put(Key.builder().partitionValue(iunRecipientId).sortValue(sentAt).build(), entity);
+
+        SubjectTerms.indexTerms(subject).forEach(term ->
+                postings.add(NotificationSubjectTokenEntity.of("senderId##" + partition, term, entity.getSentAt(), iunRecipientId)));
+    }
+}
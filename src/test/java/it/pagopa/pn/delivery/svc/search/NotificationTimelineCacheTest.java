@@ -0,0 +1,196 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.NotificationHistoryResponse;
+import it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.NotificationStatus;
+import it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.NotificationStatusHistoryElement;
+import it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.TimelineElement;
+import it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.TimelineElementCategory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mapstruct.factory.Mappers;
+import org.mockito.Mockito;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+class NotificationTimelineCacheTest {
+
+    private static final String IUN = "IUN_01";
+    private static final Instant SENT_AT = Instant.parse("2023-01-10T10:00:00Z");
+
+    private Clock clock;
+    private PnDeliveryConfigs cfg;
+    private SimpleMeterRegistry meterRegistry;
+    private List<NotificationHistoryResponse> responses;
+    private int loads;
+
+    @BeforeEach
+    void setup() {
+        clock = Mockito.mock(Clock.class);
+        Mockito.when(clock.millis()).thenReturn(0L);
+        cfg = Mockito.mock(PnDeliveryConfigs.class);
+        Mockito.when(cfg.getTimelineCacheRefreshAfter()).thenReturn(Duration.ofSeconds(10));
+        Mockito.when(cfg.getTimelineCacheTtl()).thenReturn(Duration.ofMinutes(10));
+        meterRegistry = new SimpleMeterRegistry();
+        responses = new ArrayList<>();
+        loads = 0;
+    }
+
+    @Test
+    void freshTimelineIsServedWithoutCallingDeliveryPush() {
+        NotificationTimelineCache cache = newCache();
+        responses.add(response(NotificationStatus.ACCEPTED, element("e1", 1), element("e2", 2)));
+
+        NotificationTimelineCache.Timeline first = cache.get(IUN, this::load);
+        Mockito.when(clock.millis()).thenReturn(9_000L);
+        NotificationTimelineCache.Timeline second = cache.get(IUN, this::load);
+
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals(1, loads);
+        Assertions.assertEquals(List.of("e1", "e2"), elementIds(second));
+        Assertions.assertEquals("ACCEPTED", second.status().getValue());
+        Assertions.assertEquals(1, lookups("hit"));
+    }
+
+    @Test
+    void unchangedTimelineIsRevalidatedWithoutMapping() {
+        NotificationTimelineCache cache = newCache();
+        responses.add(response(NotificationStatus.ACCEPTED, element("e1", 1)));
+        responses.add(response(NotificationStatus.ACCEPTED, element("e1", 1)));
+
+        NotificationTimelineCache.Timeline first = cache.get(IUN, this::load);
+        Mockito.when(clock.millis()).thenReturn(11_000L);
+        NotificationTimelineCache.Timeline second = cache.get(IUN, this::load);
+
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals(2, loads);
+        Assertions.assertEquals(1, lookups("unchanged"));
+        Assertions.assertEquals(1, elements("mapped"));
+    }
+
+    @Test
+    void onlyNewElementsAreMapped() {
+        NotificationTimelineCache cache = newCache();
+        responses.add(response(NotificationStatus.ACCEPTED, element("e1", 1), element("e2", 2)));
+        // delivery-push non garantisce l'ordine degli elementi
+        responses.add(response(NotificationStatus.DELIVERING, element("e3", 3), element("e1", 1), element("e2", 2)));
+
+        NotificationTimelineCache.Timeline first = cache.get(IUN, this::load);
+        Mockito.when(clock.millis()).thenReturn(11_000L);
+        NotificationTimelineCache.Timeline second = cache.get(IUN, this::load);
+
+        Assertions.assertNotEquals(first.version(), second.version());
+        Assertions.assertEquals(List.of("e1", "e2", "e3"), elementIds(second));
+        Assertions.assertSame(first.elements().get(0), second.elements().get(0));
+        Assertions.assertSame(first.elements().get(1), second.elements().get(1));
+        Assertions.assertEquals("DELIVERING", second.status().getValue());
+        Assertions.assertEquals(1, lookups("delta"));
+        Assertions.assertEquals(3, elements("mapped"));
+        Assertions.assertEquals(2, elements("reused"));
+    }
+
+    @Test
+    void statusUpdateMakesTimelineStale() {
+        NotificationTimelineCache cache = newCache();
+        responses.add(response(NotificationStatus.ACCEPTED, element("e1", 1)));
+        responses.add(response(NotificationStatus.DELIVERING, element("e1", 1), element("e2", 2)));
+
+        cache.get(IUN, this::load);
+        cache.invalidate(IUN);
+        NotificationTimelineCache.Timeline timeline = cache.get(IUN, this::load);
+
+        Assertions.assertEquals(2, loads);
+        Assertions.assertEquals(List.of("e1", "e2"), elementIds(timeline));
+        Assertions.assertEquals(1, elements("reused"));
+    }
+
+    @Test
+    void timelineReadDuringStatusUpdateIsNotFresh() {
+        NotificationTimelineCache cache = newCache();
+        responses.add(response(NotificationStatus.ACCEPTED, element("e1", 1)));
+        responses.add(response(NotificationStatus.DELIVERING, element("e1", 1), element("e2", 2)));
+
+        cache.get(IUN, () -> {
+            cache.invalidate(IUN);
+            return load();
+        });
+        NotificationTimelineCache.Timeline timeline = cache.get(IUN, this::load);
+
+        Assertions.assertEquals(2, loads);
+        Assertions.assertEquals(List.of("e1", "e2"), elementIds(timeline));
+    }
+
+    @Test
+    void expiredTimelineIsMappedAgain() {
+        NotificationTimelineCache cache = newCache();
+        responses.add(response(NotificationStatus.ACCEPTED, element("e1", 1)));
+        responses.add(response(NotificationStatus.ACCEPTED, element("e1", 1)));
+
+        cache.get(IUN, this::load);
+        Mockito.when(clock.millis()).thenReturn(600_000L);
+        cache.get(IUN, this::load);
+
+        Assertions.assertEquals(2, lookups("miss"));
+        Assertions.assertEquals(2, elements("mapped"));
+    }
+
+    @Test
+    void zeroTtlDisablesCache() {
+        Mockito.when(cfg.getTimelineCacheTtl()).thenReturn(Duration.ZERO);
+        NotificationTimelineCache cache = newCache();
+        responses.add(response(NotificationStatus.ACCEPTED, element("e1", 1)));
+        responses.add(response(NotificationStatus.ACCEPTED, element("e1", 1)));
+
+        cache.get(IUN, this::load);
+        NotificationTimelineCache.Timeline timeline = cache.get(IUN, this::load);
+
+        Assertions.assertEquals(2, loads);
+        Assertions.assertEquals(List.of("e1"), elementIds(timeline));
+    }
+
+    private NotificationTimelineCache newCache() {
+        return new NotificationTimelineCache(Mappers.getMapper(TimelineElementMapper.class), cfg, clock, meterRegistry);
+    }
+
+    private NotificationHistoryResponse load() {
+        loads++;
+        return responses.remove(0);
+    }
+
+    private double lookups(String result) {
+        return meterRegistry.counter(NotificationTimelineCache.METRIC_LOOKUPS, "result", result).count();
+    }
+
+    private double elements(String result) {
+        return meterRegistry.counter(NotificationTimelineCache.METRIC_ELEMENTS, "result", result).count();
+    }
+
+    private static List<String> elementIds(NotificationTimelineCache.Timeline timeline) {
+        return timeline.elements().stream()
+                .map(it.pagopa.pn.delivery.generated.openapi.server.v1.dto.TimelineElement::getElementId)
+                .toList();
+    }
+
+    private static TimelineElement element(String elementId, int minutesAfterSent) {
+        return new TimelineElement()
+                .elementId(elementId)
+                .category(TimelineElementCategory.REQUEST_ACCEPTED)
+                .timestamp(SENT_AT.plusSeconds(60L * minutesAfterSent).atOffset(ZoneOffset.UTC));
+    }
+
+    private static NotificationHistoryResponse response(NotificationStatus status, TimelineElement... elements) {
+        return new NotificationHistoryResponse()
+                .timeline(List.of(elements))
+                .notificationStatus(status)
+                .notificationStatusHistory(List.of(new NotificationStatusHistoryElement()
+                        .status(status)
+                        .activeFrom(SENT_AT.atOffset(ZoneOffset.UTC))));
+    }
+}
@@ -0,0 +1,84 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.*;
+import it.pagopa.pn.delivery.models.InternalNotification;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+class NotificationVersionTest {
+
+    private static final String VIEW = "sender";
+
+    @Test
+    void versionIsStableAndQuoted() {
+        String etag = NotificationVersion.of(notification(), VIEW);
+
+        Assertions.assertEquals(etag, NotificationVersion.of(notification(), VIEW));
+        Assertions.assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+    }
+
+    @Test
+    void versionChangesWithTimelineAndView() {
+        InternalNotification notification = notification();
+        String etag = NotificationVersion.of(notification, VIEW);
+
+        Assertions.assertNotEquals(etag, NotificationVersion.of(notification, "recipient:0"));
+
+        notification.getTimeline().add(TimelineElement.builder()
+                .elementId("SEND_DIGITAL_DOMICILE.IUN_01.RECINDEX_0")
+                .timestamp(OffsetDateTime.parse("2023-01-11T10:15:30Z"))
+                .build());
+        Assertions.assertNotEquals(etag, NotificationVersion.of(notification, VIEW));
+    }
+
+    @Test
+    void versionIgnoresGroupLabelsAndDenominations() {
+        InternalNotification notification = notification();
+        String etag = NotificationVersion.of(notification, VIEW);
+
+        notification.setGroup("Gruppo 1");
+        notification.getRecipients().get(0).setDenomination("Ada Lovelace");
+
+        Assertions.assertEquals(etag, NotificationVersion.of(notification, VIEW));
+    }
+
+    @Test
+    void matchesIfNoneMatch() {
+        String etag = NotificationVersion.of(notification(), VIEW);
+
+        Assertions.assertTrue(NotificationVersion.matches(etag, etag));
+        Assertions.assertTrue(NotificationVersion.matches("W/" + etag, etag));
+        Assertions.assertTrue(NotificationVersion.matches("\"other\", " + etag, etag));
+        Assertions.assertTrue(NotificationVersion.matches("*", etag));
+        Assertions.assertFalse(NotificationVersion.matches("\"other\"", etag));
+        Assertions.assertFalse(NotificationVersion.matches(" ", etag));
+        Assertions.assertFalse(NotificationVersion.matches(null, etag));
+    }
+
+    private static InternalNotification notification() {
+        return new InternalNotification(FullSentNotification.builder()
+                .iun("IUN_01")
+                .senderPaId("senderId")
+                .notificationStatus(NotificationStatus.ACCEPTED)
+                .documentsAvailable(true)
+                .timeline(new ArrayList<>(List.of(TimelineElement.builder()
+                        .elementId("REQUEST_ACCEPTED.IUN_01")
+                        .timestamp(OffsetDateTime.parse("2023-01-10T10:15:30Z"))
+                        .build())))
+                .notificationStatusHistory(List.of(NotificationStatusHistoryElement.builder()
+                        .status(NotificationStatus.ACCEPTED)
+                        .activeFrom(OffsetDateTime.parse("2023-01-10T10:15:30Z"))
+                        .build()))
+                .recipients(List.of(NotificationRecipient.builder()
+                        .internalId("PF-internal")
+                        .payment(NotificationPaymentInfo.builder()
+                                .noticeCode("302000100000019421")
+                                .build())
+                        .build()))
+                .build(), List.of("PF-internal"), "sourceChannel");
+    }
+}
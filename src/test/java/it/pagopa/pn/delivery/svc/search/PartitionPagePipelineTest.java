@@ -0,0 +1,159 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import it.pagopa.pn.delivery.models.PageSearchTrunk;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+class PartitionPagePipelineTest {
+
+    private static final List<String> PARTITIONS = List.of("sender##202303", "sender##202302", "sender##202301");
+
+    private ExecutorService dynamoExecutor;
+    private ExecutorService continuationExecutor;
+
+    @BeforeEach
+    void setup() {
+        dynamoExecutor = Executors.newFixedThreadPool(4);
+        continuationExecutor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dynamoExecutor.shutdownNow();
+        continuationExecutor.shutdownNow();
+    }
+
+    @Test
+    void readsPartitionsInOrderWithAsyncPages() throws Exception {
+        // 3 pagine da 2 righe per partizione, completate da un altro thread con ritardi decrescenti
+        AtomicInteger queries = new AtomicInteger();
+        PartitionPagePipeline<String> pipeline = new PartitionPagePipeline<>(
+                (partition, pageSize, key) -> {
+                    queries.incrementAndGet();
+                    int page = key == null ? 0 : Integer.parseInt(key.getInternalLastEvaluatedKey().get("page").s());
+                    long delay = 30L - PARTITIONS.indexOf(partition) * 10L;
+                    return CompletableFuture.supplyAsync(() -> page(partition, page, 2, page < 2),
+                            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, dynamoExecutor));
+                },
+                (pageSize, page) -> {},
+                continuationExecutor);
+
+        PartitionPagePipeline.Result<String> result = pipeline.readPartitions(PARTITIONS, 0, null, 100, 2, 3)
+                .get(5, TimeUnit.SECONDS);
+
+        List<String> expected = new ArrayList<>();
+        PARTITIONS.forEach(partition -> IntStream.range(0, 6).forEach(i -> expected.add(partition + "#" + i)));
+        Assertions.assertEquals(expected, result.rows());
+        Assertions.assertEquals(9, result.queryCount());
+        Assertions.assertEquals(9, queries.get());
+        Assertions.assertEquals(PARTITIONS.get(2), result.lastPartition());
+    }
+
+    @Test
+    void stopsWhenRequiredSizeReached() throws Exception {
+        AtomicInteger queries = new AtomicInteger();
+        PartitionPagePipeline<String> pipeline = new PartitionPagePipeline<>(
+                (partition, pageSize, key) -> {
+                    queries.incrementAndGet();
+                    int page = key == null ? 0 : Integer.parseInt(key.getInternalLastEvaluatedKey().get("page").s());
+                    return CompletableFuture.completedFuture(page(partition, page, 5, true));
+                },
+                (pageSize, page) -> {},
+                null);
+
+        PartitionPagePipeline.Result<String> result = pipeline.readPartitions(PARTITIONS, 0, null, 11, 5, 1)
+                .get(5, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(15, result.rows().size());
+        Assertions.assertEquals(3, queries.get());
+        Assertions.assertEquals(PARTITIONS.get(0), result.lastPartition());
+    }
+
+    @Test
+    void resumesFromStartKey() throws Exception {
+        List<PnLastEvaluatedKey> keys = new ArrayList<>();
+        PartitionPagePipeline<String> pipeline = new PartitionPagePipeline<>(
+                (partition, pageSize, key) -> {
+                    keys.add(key);
+                    return CompletableFuture.completedFuture(page(partition, 0, 1, false));
+                },
+                (pageSize, page) -> {},
+                null);
+        PnLastEvaluatedKey startKey = pageKey(PARTITIONS.get(1), 4);
+
+        PartitionPagePipeline.Result<String> result = pipeline.readPartitions(PARTITIONS, 1, startKey, 10, 5, 2)
+                .get(5, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(List.of(PARTITIONS.get(1) + "#0", PARTITIONS.get(2) + "#0"), result.rows());
+        Assertions.assertSame(startKey, keys.get(0));
+        Assertions.assertNull(keys.get(1));
+    }
+
+    @Test
+    void propagatesQueryFailure() {
+        IllegalStateException failure = new IllegalStateException("dynamo unavailable");
+        PartitionPagePipeline<String> pipeline = new PartitionPagePipeline<>(
+                (partition, pageSize, key) -> PARTITIONS.get(1).equals(partition)
+                        ? CompletableFuture.supplyAsync(() -> { throw failure; }, dynamoExecutor)
+                        : CompletableFuture.supplyAsync(() -> page(partition, 0, 1, false), dynamoExecutor),
+                (pageSize, page) -> {},
+                continuationExecutor);
+
+        CompletableFuture<PartitionPagePipeline.Result<String>> future = pipeline.readPartitions(PARTITIONS, 0, null, 10, 5, 2);
+
+        ExecutionException exc = Assertions.assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        Assertions.assertSame(failure, exc.getCause());
+    }
+
+    @Test
+    void manyEmptyPagesDoNotGrowTheStack() throws Exception {
+        // pagine già completate: il ciclo le elabora senza ricorsione
+        int pages = 50_000;
+        AtomicInteger listened = new AtomicInteger();
+        PartitionPagePipeline<String> pipeline = new PartitionPagePipeline<>(
+                (partition, pageSize, key) -> {
+                    int page = key == null ? 0 : Integer.parseInt(key.getInternalLastEvaluatedKey().get("page").s());
+                    return CompletableFuture.completedFuture(page(partition, page, 0, page < pages - 1));
+                },
+                (pageSize, page) -> listened.incrementAndGet(),
+                null);
+
+        PartitionPagePipeline.Result<String> result = pipeline.readPartitions(List.of(PARTITIONS.get(0)), 0, null, 10, 5, 1)
+                .get(30, TimeUnit.SECONDS);
+
+        Assertions.assertTrue(result.rows().isEmpty());
+        Assertions.assertEquals(pages, result.queryCount());
+        Assertions.assertEquals(pages, listened.get());
+    }
+
+    private static PageSearchTrunk<String> page(String partition, int page, int rows, boolean hasMore) {
+        PageSearchTrunk<String> trunk = new PageSearchTrunk<>();
+        List<String> results = new ArrayList<>();
+        IntStream.range(0, rows).forEach(i -> results.add(partition + "#" + (page * rows + i)));
+        trunk.setResults(results);
+        if (hasMore)
+            trunk.setLastEvaluatedKey(pageKey(partition, page + 1).getInternalLastEvaluatedKey());
+        return trunk;
+    }
+
+    private static PnLastEvaluatedKey pageKey(String partition, int page) {
+        PnLastEvaluatedKey key = new PnLastEvaluatedKey();
+        key.setExternalLastEvaluatedKey(partition);
+        key.setInternalLastEvaluatedKey(Map.of("page", AttributeValue.builder().s(String.valueOf(page)).build()));
+        return key;
+    }
+}
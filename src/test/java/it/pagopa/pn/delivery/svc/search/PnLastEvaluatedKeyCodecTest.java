@@ -0,0 +1,211 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import it.pagopa.pn.commons.exceptions.PnInternalException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationDelegationMetadataEntity;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+class PnLastEvaluatedKeyCodecTest {
+
+    private static final String SENT_AT = "2023-03-14T10:15:30.123456789Z";
+
+    private PnDeliveryConfigs cfg;
+    private PnLastEvaluatedKeyCodec codec;
+
+    @BeforeEach
+    void setup() {
+        cfg = Mockito.mock(PnDeliveryConfigs.class);
+        Mockito.when(cfg.getSearchCursorMacKey()).thenReturn("test-mac-key");
+        codec = new PnLastEvaluatedKeyCodec(cfg);
+    }
+
+    @Test
+    void roundTripSender() {
+        PnLastEvaluatedKey key = key("senderId##202303", Map.of(
+                NotificationMetadataEntity.FIELD_SENDER_ID_CREATION_MONTH, "senderId##202303",
+                NotificationMetadataEntity.FIELD_SENT_AT, SENT_AT,
+                NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID, "KWKU-JHXN-HJXM-202303-T-1##PF-4fc75df3-0913-407e-bdaa-e50329708b7d"));
+
+        assertRoundTrip(key);
+    }
+
+    @Test
+    void roundTripReceiver() {
+        PnLastEvaluatedKey key = key("PF-4fc75df3-0913-407e-bdaa-e50329708b7d##202212", Map.of(
+                NotificationMetadataEntity.FIELD_RECIPIENT_ID_CREATION_MONTH, "PF-4fc75df3-0913-407e-bdaa-e50329708b7d##202212",
+                NotificationMetadataEntity.FIELD_SENT_AT, "2022-12-31T23:59:59Z",
+                NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID, "KWKU-JHXN-HJXM-202212-T-1##PF-4fc75df3-0913-407e-bdaa-e50329708b7d"));
+
+        assertRoundTrip(key);
+    }
+
+    @Test
+    void roundTripSenderRecipient() {
+        PnLastEvaluatedKey key = key("senderId##recipientId", Map.of(
+                NotificationMetadataEntity.FIELD_SENDER_ID_RECIPIENT_ID, "senderId##recipientId",
+                NotificationMetadataEntity.FIELD_SENT_AT, SENT_AT,
+                NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID, "IUN##recipientId"));
+
+        assertRoundTrip(key);
+    }
+
+    @Test
+    void roundTripDelegateGroup() {
+        PnLastEvaluatedKey key = key("delegateId##group1##202303", Map.of(
+                NotificationDelegationMetadataEntity.FIELD_DELEGATE_ID_GROUP_ID_CREATION_MONTH, "delegateId##group1##202303",
+                NotificationDelegationMetadataEntity.FIELD_SENT_AT, SENT_AT,
+                NotificationDelegationMetadataEntity.FIELD_IUN_RECIPIENT_ID_DELEGATE_ID_GROUP_ID, "IUN##recipientId##delegateId##group1"));
+
+        assertRoundTrip(key);
+    }
+
+    @Test
+    void roundTripKeepsValuesNotDerivable() {
+        // sentAt non in formato canonico e mese della partizione diverso da quello di sentAt
+        PnLastEvaluatedKey key = key("otherExternalKey", Map.of(
+                NotificationMetadataEntity.FIELD_SENDER_ID_CREATION_MONTH, "senderId##202302",
+                NotificationMetadataEntity.FIELD_SENT_AT, "2023-03-14T10:15:30.000Z",
+                NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID, "IUN##recipientId"));
+
+        assertRoundTrip(key);
+    }
+
+    @Test
+    void roundTripWithOtherPartition() {
+        PnLastEvaluatedKey key = key("senderId##recipientIdPF", Map.of(
+                NotificationMetadataEntity.FIELD_SENDER_ID_RECIPIENT_ID, "senderId##recipientIdPF",
+                NotificationMetadataEntity.FIELD_SENT_AT, SENT_AT,
+                NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID, "IUN1##recipientIdPF"));
+        key.setOtherPartitionLastEvaluatedKey(key("senderId##recipientIdPG", Map.of(
+                NotificationMetadataEntity.FIELD_SENDER_ID_RECIPIENT_ID, "senderId##recipientIdPG",
+                NotificationMetadataEntity.FIELD_SENT_AT, "2023-03-13T10:15:30Z",
+                NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID, "IUN2##recipientIdPG")));
+
+        PnLastEvaluatedKey decoded = codec.decode(codec.encode(key));
+
+        assertKeyEquals(key, decoded);
+        assertKeyEquals(key.getOtherPartitionLastEvaluatedKey(), decoded.getOtherPartitionLastEvaluatedKey());
+    }
+
+    @Test
+    void roundTripGeneric() {
+        PnLastEvaluatedKey key = key("externalKey", Map.of("attr1", "value1", "attr2", "value2"));
+
+        assertRoundTrip(key);
+    }
+
+    @Test
+    void legacyTokenAccepted() {
+        Mockito.when(cfg.getSearchCursorAcceptLegacy()).thenReturn(true);
+        PnLastEvaluatedKeyCodec legacyCodec = new PnLastEvaluatedKeyCodec(cfg);
+        PnLastEvaluatedKey key = key("senderId##202303", Map.of(
+                NotificationMetadataEntity.FIELD_SENDER_ID_CREATION_MONTH, "senderId##202303",
+                NotificationMetadataEntity.FIELD_SENT_AT, SENT_AT,
+                NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID, "IUN##recipientId"));
+
+        assertKeyEquals(key, legacyCodec.decode(key.serializeInternalLastEvaluatedKey()));
+    }
+
+    @Test
+    void legacyTokenRefusedWhenDisabled() {
+        Mockito.when(cfg.getSearchCursorAcceptLegacy()).thenReturn(false);
+        PnLastEvaluatedKeyCodec strictCodec = new PnLastEvaluatedKeyCodec(cfg);
+        String legacyToken = key("externalKey", Map.of("attr1", "value1")).serializeInternalLastEvaluatedKey();
+
+        Assertions.assertThrows(PnInternalException.class, () -> strictCodec.decode(legacyToken));
+    }
+
+    @Test
+    void legacyTokenAcceptedByDefault() {
+        PnLastEvaluatedKey key = key("externalKey", Map.of("attr1", "value1"));
+
+        assertKeyEquals(key, codec.decode(key.serializeInternalLastEvaluatedKey()));
+    }
+
+    @Test
+    void invalidLegacyTokensRefused() {
+        Map<String, String> tooManyAttributes = new HashMap<>();
+        for (int i = 0; i < 9; i++)
+            tooManyAttributes.put("attr" + i, "value" + i);
+        String tooMany = key("externalKey", tooManyAttributes).serializeInternalLastEvaluatedKey();
+        String tooLong = key("externalKey", Map.of("attr1", "v".repeat(1100))).serializeInternalLastEvaluatedKey();
+        String noAttributes = legacyToken("{\"ek\":\"externalKey\"}");
+        String notJson = legacyToken("{\"ek\":");
+
+        Assertions.assertThrows(PnInternalException.class, () -> codec.decode(tooMany));
+        Assertions.assertThrows(PnInternalException.class, () -> codec.decode(tooLong));
+        Assertions.assertThrows(PnInternalException.class, () -> codec.decode(noAttributes));
+        Assertions.assertThrows(PnInternalException.class, () -> codec.decode(notJson));
+    }
+
+    @Test
+    void missingMacKeyRefused() {
+        Mockito.when(cfg.getSearchCursorMacKey()).thenReturn(" ");
+
+        Assertions.assertThrows(PnInternalException.class, () -> new PnLastEvaluatedKeyCodec(cfg));
+    }
+
+    @Test
+    void tamperedTokenRefused() {
+        String token = codec.encode(key("externalKey", Map.of("attr1", "value1")));
+        byte[] bytes = Base64.getUrlDecoder().decode(token);
+        bytes[3] ^= 1;
+        String tampered = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        Assertions.assertThrows(PnInternalException.class, () -> codec.decode(tampered));
+    }
+
+    @Test
+    void tokenSignedWithOtherKeyRefused() {
+        Mockito.when(cfg.getSearchCursorMacKey()).thenReturn("other-mac-key");
+        String token = new PnLastEvaluatedKeyCodec(cfg).encode(key("externalKey", Map.of("attr1", "value1")));
+
+        Assertions.assertThrows(PnInternalException.class, () -> codec.decode(token));
+    }
+
+    @Test
+    void malformedTokensRefused() {
+        String token = codec.encode(key("externalKey", Map.of("attr1", "value1")));
+
+        Assertions.assertThrows(PnInternalException.class, () -> codec.decode(token.substring(0, 10)));
+        Assertions.assertThrows(PnInternalException.class, () -> codec.decode("fakeNextPageKey"));
+        Assertions.assertThrows(PnInternalException.class, () -> codec.decode("not base64 !"));
+        Assertions.assertThrows(PnInternalException.class, () -> codec.decode("A".repeat(PnLastEvaluatedKeyCodec.MAX_TOKEN_LENGTH + 1)));
+    }
+
+    private void assertRoundTrip(PnLastEvaluatedKey key) {
+        String token = codec.encode(key);
+
+        assertKeyEquals(key, codec.decode(token));
+        Assertions.assertTrue(token.length() < key.serializeInternalLastEvaluatedKey().length(),
+                "binary cursor should be shorter than the legacy one");
+    }
+
+    private static void assertKeyEquals(PnLastEvaluatedKey expected, PnLastEvaluatedKey actual) {
+        Assertions.assertEquals(expected.getExternalLastEvaluatedKey(), actual.getExternalLastEvaluatedKey());
+        Assertions.assertEquals(expected.getInternalLastEvaluatedKey(), actual.getInternalLastEvaluatedKey());
+    }
+
+    private static String legacyToken(String json) {
+        return Base64.getUrlEncoder().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static PnLastEvaluatedKey key(String externalKey, Map<String, String> internalKey) {
+        PnLastEvaluatedKey key = new PnLastEvaluatedKey();
+        key.setExternalLastEvaluatedKey(externalKey);
+        Map<String, AttributeValue> values = new HashMap<>();
+        internalKey.forEach((name, value) -> values.put(name, AttributeValue.builder().s(value).build()));
+        key.setInternalLastEvaluatedKey(values);
+        return key;
+    }
+}
@@ -3,8 +3,10 @@ package it.pagopa.pn.delivery.svc.search;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.springframework.util.Base64Utils;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 class PnLastEvaluatedKeyTest {
@@ -27,4 +29,48 @@ class PnLastEvaluatedKeyTest {
         Assertions.assertEquals(lastEvaluatedKeyToSerialize.getExternalLastEvaluatedKey(), deserializedLEK.getExternalLastEvaluatedKey());
         Assertions.assertEquals(lastEvaluatedKeyToSerialize.getInternalLastEvaluatedKey(), deserializedLEK.getInternalLastEvaluatedKey());
     }
+
+    @Test
+    void deserializeSerializelLastEvaluatedKeyWithOtherPartition() throws JsonProcessingException {
+        //Given
+        PnLastEvaluatedKey otherPartitionKey = new PnLastEvaluatedKey();
+        otherPartitionKey.setExternalLastEvaluatedKey( "SenderId##recipientPG" );
+        otherPartitionKey.setInternalLastEvaluatedKey(
+                Map.of( "KEY", AttributeValue.builder()
+                        .s( "VALUE_PG" )
+                .build() )  );
+        PnLastEvaluatedKey lastEvaluatedKeyToSerialize = new PnLastEvaluatedKey();
+        lastEvaluatedKeyToSerialize.setExternalLastEvaluatedKey( "SenderId##recipientPF" );
+        lastEvaluatedKeyToSerialize.setInternalLastEvaluatedKey(
+                Map.of( "KEY", AttributeValue.builder()
+                        .s( "VALUE_PF" )
+                .build() )  );
+        lastEvaluatedKeyToSerialize.setOtherPartitionLastEvaluatedKey( otherPartitionKey );
+
+        //When
+        String serializedLEK = lastEvaluatedKeyToSerialize.serializeInternalLastEvaluatedKey();
+        PnLastEvaluatedKey deserializedLEK = PnLastEvaluatedKey.deserializeInternalLastEvaluatedKey( serializedLEK );
+
+        //Then
+        Assertions.assertEquals(lastEvaluatedKeyToSerialize.getExternalLastEvaluatedKey(), deserializedLEK.getExternalLastEvaluatedKey());
+        Assertions.assertEquals(lastEvaluatedKeyToSerialize.getInternalLastEvaluatedKey(), deserializedLEK.getInternalLastEvaluatedKey());
+        Assertions.assertNotNull(deserializedLEK.getOtherPartitionLastEvaluatedKey());
+        Assertions.assertEquals(otherPartitionKey.getExternalLastEvaluatedKey(), deserializedLEK.getOtherPartitionLastEvaluatedKey().getExternalLastEvaluatedKey());
+        Assertions.assertEquals(otherPartitionKey.getInternalLastEvaluatedKey(), deserializedLEK.getOtherPartitionLastEvaluatedKey().getInternalLastEvaluatedKey());
+    }
+
+    @Test
+    void deserializeLegacyLastEvaluatedKey() throws JsonProcessingException {
+        //Given
+        String legacyJson = "{\"ek\":\"SenderId##creationMonth\",\"ik\":{\"KEY\":\"VALUE\"}}";
+        String serializedLEK = Base64Utils.encodeToUrlSafeString( legacyJson.getBytes( StandardCharsets.UTF_8 ) );
+
+        //When
+        PnLastEvaluatedKey deserializedLEK = PnLastEvaluatedKey.deserializeInternalLastEvaluatedKey( serializedLEK );
+
+        //Then
+        Assertions.assertEquals("SenderId##creationMonth", deserializedLEK.getExternalLastEvaluatedKey());
+        Assertions.assertEquals("VALUE", deserializedLEK.getInternalLastEvaluatedKey().get("KEY").s());
+        Assertions.assertNull(deserializedLEK.getOtherPartitionLastEvaluatedKey());
+    }
 }
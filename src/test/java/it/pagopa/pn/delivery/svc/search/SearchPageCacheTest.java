@@ -0,0 +1,179 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatus;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+class SearchPageCacheTest {
+
+    private static final int PAGE_SIZE = 10;
+    private static final int REQUIRED_SIZE = PAGE_SIZE * 3 + 1;
+    private static final String CALLER_ID = "callerId";
+
+    private static final Function<NotificationMetadataEntity, PnLastEvaluatedKey> KEY_OF = row -> {
+        PnLastEvaluatedKey key = new PnLastEvaluatedKey();
+        key.setExternalLastEvaluatedKey("senderId##202301");
+        key.setInternalLastEvaluatedKey(Map.of(NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID,
+                AttributeValue.builder().s(row.getIunRecipientId()).build()));
+        return key;
+    };
+
+    private PnDeliveryConfigs cfg;
+    private Clock clock;
+    private SimpleMeterRegistry meterRegistry;
+    private InputSearchNotificationDto searchDto;
+
+    @BeforeEach
+    void setup() {
+        cfg = Mockito.mock(PnDeliveryConfigs.class);
+        Mockito.when(cfg.getSearchPageCacheTtl()).thenReturn(Duration.ofSeconds(30));
+        clock = Mockito.mock(Clock.class);
+        Mockito.when(clock.millis()).thenReturn(1_000L);
+        meterRegistry = new SimpleMeterRegistry();
+        searchDto = InputSearchNotificationDto.builder()
+                .senderReceiverId("senderId")
+                .bySender(true)
+                .startDate(Instant.parse("2023-01-01T00:00:00Z"))
+                .endDate(Instant.parse("2023-01-31T00:00:00Z"))
+                .statuses(List.of(NotificationStatus.VIEWED, NotificationStatus.ACCEPTED))
+                .size(PAGE_SIZE)
+                .build();
+    }
+
+    @Test
+    void disabledWithoutTtl() {
+        Mockito.when(cfg.getSearchPageCacheTtl()).thenReturn(null);
+        SearchPageCache cache = new SearchPageCache(cfg, clock, meterRegistry, null);
+
+        Assertions.assertFalse(cache.isEnabled());
+        Assertions.assertNull(cache.scope(CALLER_ID, searchDto, null));
+    }
+
+    @Test
+    void lastPageServedFromCache() {
+        SearchPageCache.Scope scope = new SearchPageCache(cfg, clock, meterRegistry, null).scope(CALLER_ID, searchDto, null);
+        List<NotificationMetadataEntity> rows = rows(0, 25);
+
+        scope.store(rows, true, PAGE_SIZE, KEY_OF);
+
+        SearchPageCache.CachedRows cached = scope.lookup(KEY_OF.apply(rows.get(PAGE_SIZE - 1)), REQUIRED_SIZE);
+        Assertions.assertNotNull(cached);
+        Assertions.assertEquals(rows.subList(PAGE_SIZE, 25), cached.rows());
+        Assertions.assertTrue(cached.lastPage());
+        Assertions.assertEquals(1.0, meterRegistry.get("pn.delivery.search.page-cache").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void partialRowsAreNotServed() {
+        SearchPageCache.Scope scope = new SearchPageCache(cfg, clock, meterRegistry, null).scope(CALLER_ID, searchDto, null);
+        List<NotificationMetadataEntity> rows = rows(0, REQUIRED_SIZE);
+
+        scope.store(rows, false, PAGE_SIZE, KEY_OF);
+
+        Assertions.assertNull(scope.lookup(KEY_OF.apply(rows.get(PAGE_SIZE - 1)), REQUIRED_SIZE));
+        Assertions.assertNull(scope.lookup(null, REQUIRED_SIZE));
+        Assertions.assertEquals(1.0, meterRegistry.get("pn.delivery.search.page-cache").tag("result", "partial").counter().count());
+    }
+
+    @Test
+    void expiredRowsAreNotServed() {
+        SearchPageCache.Scope scope = new SearchPageCache(cfg, clock, meterRegistry, null).scope(CALLER_ID, searchDto, null);
+        List<NotificationMetadataEntity> rows = rows(0, 25);
+        scope.store(rows, true, PAGE_SIZE, KEY_OF);
+
+        Mockito.when(clock.millis()).thenReturn(1_000L + Duration.ofSeconds(30).toMillis());
+
+        Assertions.assertNull(scope.lookup(KEY_OF.apply(rows.get(PAGE_SIZE - 1)), REQUIRED_SIZE));
+        Assertions.assertEquals(1.0, meterRegistry.get("pn.delivery.search.page-cache").tag("result", "expired").counter().count());
+    }
+
+    @Test
+    void otherCallerOrFilterDoNotShareRows() {
+        SearchPageCache cache = new SearchPageCache(cfg, clock, meterRegistry, null);
+        List<NotificationMetadataEntity> rows = rows(0, 25);
+        cache.scope(CALLER_ID, searchDto, null).store(rows, true, PAGE_SIZE, KEY_OF);
+        PnLastEvaluatedKey cursor = KEY_OF.apply(rows.get(PAGE_SIZE - 1));
+
+        Assertions.assertNull(cache.scope("otherCaller", searchDto, null).lookup(cursor, REQUIRED_SIZE));
+        InputSearchNotificationDto otherFilter = searchDto.toBuilder().groups(List.of("group1")).build();
+        Assertions.assertNull(cache.scope(CALLER_ID, otherFilter, null).lookup(cursor, REQUIRED_SIZE));
+
+        // l'ordine dei filtri e il cursore richiesto non fanno parte della chiave
+        InputSearchNotificationDto sameFilter = searchDto.toBuilder()
+                .statuses(List.of(NotificationStatus.ACCEPTED, NotificationStatus.VIEWED))
+                .nextPagesKey(cursor.serializeInternalLastEvaluatedKey())
+                .build();
+        Assertions.assertNotNull(cache.scope(CALLER_ID, sameFilter, null).lookup(cursor, REQUIRED_SIZE));
+    }
+
+    @Test
+    void readAheadFillsFollowingPages() {
+        Mockito.when(cfg.getSearchPageCacheReadAhead()).thenReturn(true);
+        AtomicInteger reads = new AtomicInteger();
+        SearchPageCache.Scope scope = new SearchPageCache(cfg, clock, meterRegistry, null).scope(CALLER_ID, searchDto,
+                (cursor, requiredSize) -> {
+                    reads.incrementAndGet();
+                    return rows(REQUIRED_SIZE, 20);
+                });
+        List<NotificationMetadataEntity> rows = rows(0, REQUIRED_SIZE);
+
+        long expiresAt = scope.store(rows, false, PAGE_SIZE, KEY_OF);
+        scope.readAhead(rows, expiresAt, PAGE_SIZE, REQUIRED_SIZE, KEY_OF);
+        // la lettura anticipata dalla stessa posizione non viene ripetuta
+        scope.readAhead(rows, expiresAt, PAGE_SIZE, REQUIRED_SIZE, KEY_OF);
+
+        Assertions.assertEquals(1, reads.get());
+        SearchPageCache.CachedRows cached = scope.lookup(KEY_OF.apply(rows.get(PAGE_SIZE * 3 - 1)), REQUIRED_SIZE);
+        Assertions.assertNotNull(cached);
+        Assertions.assertEquals(1 + 20, cached.rows().size());
+        Assertions.assertTrue(cached.lastPage());
+
+        SearchPageCache.CachedRows firstCursor = scope.lookup(KEY_OF.apply(rows.get(PAGE_SIZE - 1)), REQUIRED_SIZE);
+        Assertions.assertNotNull(firstCursor);
+        Assertions.assertEquals(REQUIRED_SIZE - PAGE_SIZE + 20, firstCursor.rows().size());
+        Assertions.assertEquals(expiresAt, firstCursor.expiresAt());
+    }
+
+    @Test
+    void readAheadFailureIsIgnored() {
+        Mockito.when(cfg.getSearchPageCacheReadAhead()).thenReturn(true);
+        SearchPageCache.Scope scope = new SearchPageCache(cfg, clock, meterRegistry, null).scope(CALLER_ID, searchDto,
+                (cursor, requiredSize) -> {
+                    throw new IllegalStateException("dynamo unavailable");
+                });
+        List<NotificationMetadataEntity> rows = rows(0, REQUIRED_SIZE);
+
+        long expiresAt = scope.store(rows, false, PAGE_SIZE, KEY_OF);
+        Assertions.assertDoesNotThrow(() -> scope.readAhead(rows, expiresAt, PAGE_SIZE, REQUIRED_SIZE, KEY_OF));
+
+        Assertions.assertNull(scope.lookup(KEY_OF.apply(rows.get(PAGE_SIZE - 1)), REQUIRED_SIZE));
+        Assertions.assertEquals(1.0, meterRegistry.get("pn.delivery.search.page-cache.read-ahead").tag("result", "failed").counter().count());
+    }
+
+    private static List<NotificationMetadataEntity> rows(int from, int count) {
+        List<NotificationMetadataEntity> rows = new ArrayList<>();
+        IntStream.range(from, from + count).forEach(i -> rows.add(NotificationMetadataEntity.builder()
+                .iunRecipientId("IUN_" + i + "##internalId")
+                .senderIdCreationMonth("senderId##202301")
+                .sentAt(Instant.parse("2023-01-31T00:00:00Z").minusSeconds(i))
+                .build()));
+        return rows;
+    }
+}
@@ -0,0 +1,80 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+class SubjectTermsTest {
+
+    @Test
+    void indexTermsAreNormalizedTrigrams() {
+        Set<String> terms = SubjectTerms.indexTerms("Multa Città");
+
+        Assertions.assertEquals(Set.of("mul", "ult", "lta", "cit", "itt", "tta"), terms);
+    }
+
+    @Test
+    void indexTermsOfLongWord() {
+        Set<String> terms = SubjectTerms.indexTerms("Contravvenzione");
+
+        Assertions.assertTrue(terms.contains("con"));
+        Assertions.assertTrue(terms.contains("one"));
+        Assertions.assertTrue(terms.size() <= "contravvenzione".length() - SubjectTerms.TERM_LENGTH + 1);
+        Assertions.assertTrue(terms.stream().allMatch(term -> term.length() == SubjectTerms.TERM_LENGTH));
+    }
+
+    @Test
+    void indexTermsOfEmptySubject() {
+        Assertions.assertTrue(SubjectTerms.indexTerms(null).isEmpty());
+        Assertions.assertTrue(SubjectTerms.indexTerms("a b").isEmpty());
+    }
+
+    @Test
+    void requiredTermsOfLiterals() {
+        Assertions.assertEquals(List.of("multa", "test"), SubjectTerms.requiredTerms(".*Multa.*Test"));
+        Assertions.assertEquals(List.of("citta"), SubjectTerms.requiredTerms("Città.*"));
+    }
+
+    @Test
+    void requiredTermsSkipOptionalParts() {
+        // il carattere seguito da ?, * o {0,n} può mancare
+        Assertions.assertEquals(List.of("mult"), SubjectTerms.requiredTerms("Multa?"));
+        Assertions.assertEquals(List.of("mult"), SubjectTerms.requiredTerms("Multa{0,2}"));
+        // gruppi e classi non producono termini
+        Assertions.assertEquals(List.of("verbale"), SubjectTerms.requiredTerms("(Multa|Sanzione) verbale"));
+        Assertions.assertEquals(List.of("ulta"), SubjectTerms.requiredTerms("[Mm]ulta"));
+        // gli escape con argomento non sono letterali
+        Assertions.assertEquals(List.of("multa"), SubjectTerms.requiredTerms("\\p{L}+ multa\\d\\x41BC"));
+    }
+
+    @Test
+    void requiredTermsOfTopLevelAlternative() {
+        Assertions.assertTrue(SubjectTerms.requiredTerms("Multa|Sanzione").isEmpty());
+    }
+
+    @Test
+    void requiredTermsTooShort() {
+        Assertions.assertTrue(SubjectTerms.requiredTerms(".*ab.*").isEmpty());
+    }
+
+    @Test
+    void queryTermsAreSpreadOverLongestLiteral() {
+        Assertions.assertEquals(List.of("pag", "nto", "ame"), SubjectTerms.queryTerms("Pagamento.*"));
+        Assertions.assertEquals(List.of("mul", "lta", "ult"), SubjectTerms.queryTerms(".*Multa.*Test"));
+        // una sequenza corta non basta, i termini mancanti vengono dalle sequenze successive
+        Assertions.assertEquals(List.of("tar", "ari", "202"), SubjectTerms.queryTerms("Tari 2023"));
+        Assertions.assertTrue(SubjectTerms.queryTerms(".*ab.*").isEmpty());
+    }
+
+    @Test
+    void queryTermsAreIndexTerms() {
+        Set<String> indexTerms = SubjectTerms.indexTerms("Avviso di pagamento TARI 2023");
+
+        List<String> queryTerms = SubjectTerms.queryTerms(".*gamento TARI.*");
+
+        Assertions.assertEquals(SubjectTerms.MAX_QUERY_TERMS, queryTerms.size());
+        Assertions.assertTrue(indexTerms.containsAll(queryTerms), queryTerms::toString);
+    }
+}
@@ -0,0 +1,66 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.*;
+import it.pagopa.pn.delivery.utils.ModelMapperConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mapstruct.factory.Mappers;
+import org.modelmapper.ModelMapper;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+class TimelineElementMapperTest {
+
+    private final TimelineElementMapper mapper = Mappers.getMapper(TimelineElementMapper.class);
+    private final ModelMapper modelMapper = new ModelMapperConfig().modelMapper();
+
+    @Test
+    void timelineElementIsEquivalentToModelMapper() {
+        TimelineElement element = new TimelineElement()
+                .elementId("REQUEST_REFUSED.IUN_01")
+                .timestamp(OffsetDateTime.parse("2023-01-10T10:15:30+01:00"))
+                .category(TimelineElementCategory.REQUEST_REFUSED)
+                .legalFactsIds(List.of(new LegalFactsId()
+                        .category(LegalFactCategory.SENDER_ACK)
+                        .key("safestorage://PN_LEGAL_FACTS-0002-9G2S-RK3M-JI62-JK9E")))
+                .details(new TimelineElementDetails()
+                        .recIndex(1)
+                        .errors(List.of("FILE_NOTFOUND", "FILE_SHA_ERROR")));
+
+        it.pagopa.pn.delivery.generated.openapi.server.v1.dto.TimelineElement mapped = mapper.toTimelineElement(element);
+
+        Assertions.assertEquals(
+                modelMapper.map(element, it.pagopa.pn.delivery.generated.openapi.server.v1.dto.TimelineElement.class),
+                mapped);
+        Assertions.assertEquals(element.getTimestamp(), mapped.getTimestamp());
+        Assertions.assertEquals(1, mapped.getDetails().getRecIndex());
+    }
+
+    @Test
+    void timelineElementWithoutDetailsIsEquivalentToModelMapper() {
+        TimelineElement element = new TimelineElement()
+                .elementId("REQUEST_ACCEPTED.IUN_01")
+                .timestamp(OffsetDateTime.parse("2023-01-10T10:15:30Z"))
+                .category(TimelineElementCategory.REQUEST_ACCEPTED);
+
+        Assertions.assertEquals(
+                modelMapper.map(element, it.pagopa.pn.delivery.generated.openapi.server.v1.dto.TimelineElement.class),
+                mapper.toTimelineElement(element));
+    }
+
+    @Test
+    void statusHistoryElementIsEquivalentToModelMapper() {
+        NotificationStatusHistoryElement element = new NotificationStatusHistoryElement()
+                .status(NotificationStatus.DELIVERING)
+                .activeFrom(OffsetDateTime.parse("2023-01-10T10:15:30Z"))
+                .relatedTimelineElements(List.of("e1", "e2"));
+
+        it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatusHistoryElement mapped = mapper.toStatusHistoryElement(element);
+
+        Assertions.assertEquals(
+                modelMapper.map(element, it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatusHistoryElement.class),
+                mapped);
+        Assertions.assertEquals(element.getActiveFrom(), mapped.getActiveFrom());
+    }
+}
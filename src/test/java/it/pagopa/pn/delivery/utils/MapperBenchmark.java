@@ -0,0 +1,132 @@
+package it.pagopa.pn.delivery.utils;
+
+import it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.LegalFactCategory;
+import it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.LegalFactsId;
+import it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.TimelineElement;
+import it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.TimelineElementCategory;
+import it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.TimelineElementDetails;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.*;
+import it.pagopa.pn.delivery.middleware.notificationdao.NotificationRecipientMapper;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.*;
+import it.pagopa.pn.delivery.models.InternalNotification;
+import it.pagopa.pn.delivery.svc.NewNotificationRequestMapper;
+import it.pagopa.pn.delivery.svc.search.TimelineElementMapper;
+import org.mapstruct.factory.Mappers;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Confronto tra i mapper generati a compile time e ModelMapper sulle conversioni dei percorsi di lettura e invio.
+ * Non viene eseguito dai test: si lancia con il main dopo mvn test-compile, con il classpath di test.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MapperBenchmark {
+
+    private ModelMapper modelMapper;
+    private TimelineElementMapper timelineElementMapper;
+    private NotificationRecipientMapper recipientMapper;
+    private NewNotificationRequestMapper newNotificationRequestMapper;
+
+    private TimelineElement timelineElement;
+    private NotificationRecipientEntity recipientEntity;
+    private NewNotificationRequest newNotificationRequest;
+
+    @Setup
+    public void setup() {
+        modelMapper = new ModelMapperConfig().modelMapper();
+        timelineElementMapper = Mappers.getMapper( TimelineElementMapper.class );
+        recipientMapper = Mappers.getMapper( NotificationRecipientMapper.class );
+        newNotificationRequestMapper = Mappers.getMapper( NewNotificationRequestMapper.class );
+
+        timelineElement = new TimelineElement()
+                .elementId( "SEND_DIGITAL_DOMICILE.IUN_01.RECINDEX_0" )
+                .timestamp( OffsetDateTime.parse( "2023-01-10T10:15:30Z" ) )
+                .category( TimelineElementCategory.REQUEST_ACCEPTED )
+                .legalFactsIds( List.of( new LegalFactsId()
+                        .category( LegalFactCategory.SENDER_ACK )
+                        .key( "safestorage://PN_LEGAL_FACTS-0002-9G2S-RK3M-JI62-JK9E" ) ) )
+                .details( new TimelineElementDetails().recIndex( 0 ) );
+
+        recipientEntity = NotificationRecipientEntity.builder()
+                .recipientType( RecipientTypeEntity.PF )
+                .recipientId( "PF-4fc75df3-0913-407e-bdaa-e50329708b7d" )
+                .digitalDomicile( NotificationDigitalAddressEntity.builder()
+                        .type( DigitalAddressTypeEntity.PEC )
+                        .address( "address@pec.it" )
+                        .build() )
+                .physicalAddress( NotificationPhysicalAddressEntity.builder()
+                        .address( "address" )
+                        .zip( "83100" )
+                        .municipality( "municipality" )
+                        .province( "province" )
+                        .build() )
+                .payment( NotificationPaymentInfoEntity.builder()
+                        .noticeCode( "302000100000019421" )
+                        .creditorTaxId( "77777777777" )
+                        .build() )
+                .build();
+
+        newNotificationRequest = NewNotificationRequest.builder()
+                .paProtocolNumber( "paProtocolNumber" )
+                .subject( "subject" )
+                .senderDenomination( "Comune di Milano" )
+                .senderTaxId( "01199250158" )
+                .notificationFeePolicy( NotificationFeePolicy.FLAT_RATE )
+                .physicalCommunicationType( NewNotificationRequest.PhysicalCommunicationTypeEnum.REGISTERED_LETTER_890 )
+                .documents( List.of( NotificationDocument.builder()
+                        .contentType( "application/pdf" )
+                        .digests( NotificationAttachmentDigests.builder().sha256( "sha256" ).build() )
+                        .ref( NotificationAttachmentBodyRef.builder().key( "key" ).versionToken( "v1" ).build() )
+                        .build() ) )
+                .recipients( List.of( recipientMapper.toDto( recipientEntity ).taxId( "LVLDAA85T50G702B" ) ) )
+                .build();
+    }
+
+    @Benchmark
+    public Object timelineElementModelMapper() {
+        return modelMapper.map( timelineElement, it.pagopa.pn.delivery.generated.openapi.server.v1.dto.TimelineElement.class );
+    }
+
+    @Benchmark
+    public Object timelineElementMapStruct() {
+        return timelineElementMapper.toTimelineElement( timelineElement );
+    }
+
+    @Benchmark
+    public Object recipientModelMapper() {
+        return modelMapper.map( recipientEntity, NotificationRecipient.class );
+    }
+
+    @Benchmark
+    public Object recipientMapStruct() {
+        return recipientMapper.toDto( recipientEntity );
+    }
+
+    @Benchmark
+    public Object newNotificationRequestModelMapper() {
+        return modelMapper.map( newNotificationRequest, InternalNotification.class );
+    }
+
+    @Benchmark
+    public Object newNotificationRequestMapStruct() {
+        return newNotificationRequestMapper.toInternalNotification( newNotificationRequest );
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner( new OptionsBuilder()
+                .include( MapperBenchmark.class.getSimpleName() )
+                .build() ).run();
+    }
+}
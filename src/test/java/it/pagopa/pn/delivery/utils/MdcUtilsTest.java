@@ -0,0 +1,65 @@
+package it.pagopa.pn.delivery.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+class MdcUtilsTest {
+
+    private static final String TRACE_ID = "trace_id";
+
+    @AfterEach
+    void tearDown() {
+        MDC.clear();
+    }
+
+    @Test
+    void submitPropagatesCallerContext() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            MDC.put(TRACE_ID, "caller");
+
+            String traceId = MdcUtils.submit(executor, () -> MDC.get(TRACE_ID)).get(5, TimeUnit.SECONDS);
+
+            Assertions.assertEquals("caller", traceId);
+            // il thread dell'executor non conserva il contesto del chiamante
+            MDC.clear();
+            Assertions.assertNull(MdcUtils.submit(executor, () -> MDC.get(TRACE_ID)).get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void submitWithoutExecutorRunsInline() throws Exception {
+        Thread caller = Thread.currentThread();
+
+        Assertions.assertSame(caller, MdcUtils.submit(null, Thread::currentThread).get());
+    }
+
+    @Test
+    void runRestoresPreviousContext() {
+        MDC.put(TRACE_ID, "previous");
+
+        MdcUtils.run(Map.of(TRACE_ID, "task"), () -> Assertions.assertEquals("task", MDC.get(TRACE_ID)));
+
+        Assertions.assertEquals("previous", MDC.get(TRACE_ID));
+    }
+
+    @Test
+    void wrapCapturesContextAtCreation() {
+        MDC.put(TRACE_ID, "creation");
+        Runnable task = MdcUtils.wrap(() -> Assertions.assertEquals("creation", MDC.get(TRACE_ID)));
+        MDC.clear();
+
+        task.run();
+
+        Assertions.assertNull(MDC.get(TRACE_ID));
+    }
+}
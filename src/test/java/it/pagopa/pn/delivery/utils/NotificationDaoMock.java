@@ -37,6 +37,11 @@ public class NotificationDaoMock implements NotificationDao {
         return Optional.empty();
     }
 
+    @Override
+    public Optional<InternalNotification> getNotificationByIun(String iun, boolean withRecipientsDetail) {
+        return Optional.empty();
+    }
+
     @Override
     public Optional<String> getRequestId(String senderId, String paProtocolNumber, String idempotenceToken) {
         return Optional.empty();
@@ -171,6 +171,50 @@ aws --profile default --region us-east-1 --endpoint-url=http://localstack:4566 \
         }
     ]"
 
+aws --profile default --region us-east-1 --endpoint-url=http://localstack:4566 \
+    dynamodb create-table \
+    --table-name NotificationsActivity \
+    --attribute-definitions \
+        AttributeName=activityKey,AttributeType=S \
+        AttributeName=year,AttributeType=N \
+    --key-schema \
+        AttributeName=activityKey,KeyType=HASH \
+        AttributeName=year,KeyType=RANGE \
+    --provisioned-throughput \
+        ReadCapacityUnits=10,WriteCapacityUnits=5
+
+aws --profile default --region us-east-1 --endpoint-url=http://localstack:4566 \
+    dynamodb create-table \
+    --table-name NotificationsSubjectIndex \
+    --attribute-definitions \
+        AttributeName=partitionKey,AttributeType=S \
+        AttributeName=termKey,AttributeType=S \
+    --key-schema \
+        AttributeName=partitionKey,KeyType=HASH \
+        AttributeName=termKey,KeyType=RANGE \
+    --provisioned-throughput \
+        ReadCapacityUnits=10,WriteCapacityUnits=5
+
+aws --profile default --region us-east-1 --endpoint-url=http://localstack:4566 \
+    dynamodb create-table \
+    --table-name NotificationsStatusCounter \
+    --attribute-definitions \
+        AttributeName=counterKey,AttributeType=S \
+    --key-schema \
+        AttributeName=counterKey,KeyType=HASH \
+    --provisioned-throughput \
+        ReadCapacityUnits=10,WriteCapacityUnits=5
+
+aws --profile default --region us-east-1 --endpoint-url=http://localstack:4566 \
+    dynamodb create-table \
+    --table-name NotificationsViewed \
+    --attribute-definitions \
+        AttributeName=viewKey,AttributeType=S \
+    --key-schema \
+        AttributeName=viewKey,KeyType=HASH \
+    --provisioned-throughput \
+        ReadCapacityUnits=10,WriteCapacityUnits=5
+
 aws --profile default --region us-east-1 --endpoint-url=http://localstack:4566 \
     ssm put-parameter \
     --name "MapTaxIdWhiteList" \